@@ -244,6 +244,34 @@ public class ARQ
     // Hash table: GROUP BY, MINUS, SERVICE, VALUES, and hash joins <br/>
     public static final Symbol spillToDiskThreshold = ARQConstants.allocSymbol("spillToDiskThreshold") ;
     
+    /**
+     * Context key controlling whether the main query engine evaluates joins and left joins
+     * that are not streamed by substitution as hash joins on their common variables.
+     * Default is "true".  The hash table spills to disk as set by {@linkplain #spillToDiskThreshold}.
+     */
+    public static final Symbol hashJoin = ARQConstants.allocSymbol("hashJoin") ;
+    
+    /**
+     * Context key controlling whether the main query engine evaluates the arms of a UNION,
+     * and the two sides of a join, in parallel on a shared pool of threads.
+     * The dataset must support concurrent readers. Default is "false".
+     */
+    public static final Symbol parallelExecution = ARQConstants.allocSymbol("parallelExecution") ;
+    
+    /**
+     * Dataset context key : set to "true" by a dataset that must not be read from more than
+     * one thread at a time, such as the view of a write transaction.
+     * {@link #parallelExecution} does not apply to such a dataset.
+     */
+    public static final Symbol singleThreadedDataset = ARQConstants.allocSymbol("singleThreadedDataset") ;
+    
+    /**
+     * Context key controlling whether the main query engine passes solutions through
+     * filter, extend (BIND) and project in blocks, held by column, rather than one binding at a time.
+     * Default is "false".
+     */
+    public static final Symbol blockExecution = ARQConstants.allocSymbol("blockExecution") ;
+    
     // Optimizer controls.
     
     /** 
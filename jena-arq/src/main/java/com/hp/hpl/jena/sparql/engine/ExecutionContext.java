@@ -20,6 +20,7 @@ package com.hp.hpl.jena.sparql.engine;
 
 import java.util.ArrayList ;
 import java.util.Collection ;
+import java.util.Collections ;
 import java.util.Iterator ;
 
 import com.hp.hpl.jena.graph.Graph ;
@@ -64,9 +65,10 @@ public class ExecutionContext implements FunctionEnv
     {
         this.context = params ;
         this.dataset = dataset ;
-        this.openIterators = new ArrayList<QueryIterator>() ;
+        // Synchronized : parts of a query may be evaluated on other threads.
+        this.openIterators = Collections.synchronizedList(new ArrayList<QueryIterator>()) ;
         if ( TrackAllIterators )
-            this.allIterators  = new ArrayList<QueryIterator>() ;
+            this.allIterators  = Collections.synchronizedList(new ArrayList<QueryIterator>()) ;
         this.activeGraph = activeGraph ;
         this.executor = factory ;
     }
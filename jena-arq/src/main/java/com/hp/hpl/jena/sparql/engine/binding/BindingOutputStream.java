@@ -155,7 +155,8 @@ public class BindingOutputStream implements Sink<Binding>
             if ( ! binding.contains(v) )
                 return true ;
         }
-        return false ;
+        // Any variables not in the current VARS?
+        return binding.size() != vars.size() ;
     }
 
 
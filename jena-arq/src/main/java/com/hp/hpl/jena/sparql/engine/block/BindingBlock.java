@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.block;
+
+import java.util.ArrayList ;
+import java.util.Arrays ;
+import java.util.Iterator ;
+import java.util.List ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.sparql.ARQInternalErrorException ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.engine.binding.BindingBase ;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory ;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap ;
+
+/** A block of solutions, held by column: one array of values for each variable,
+ *  with null for "unbound".  Operations on a block work on all its rows in one call
+ *  and a {@link Row} is a view of one row as a {@link Binding}, so steps over a block
+ *  do not create a new binding for each solution.
+ */
+public class BindingBlock
+{
+    /** Number of rows in a block unless otherwise given */ 
+    public static final int DefaultSize = 256 ;
+    
+    private final int capacity ;
+    // Few variables : lookup is by scanning the list.
+    private List<Var> vars = new ArrayList<Var>() ;
+    private List<Node[]> columns = new ArrayList<Node[]>() ;
+    private int size = 0 ;
+    
+    public BindingBlock()
+    { this(DefaultSize) ; }
+
+    public BindingBlock(int capacity)
+    {
+        if ( capacity <= 0 )
+            throw new IllegalArgumentException("BindingBlock capacity: "+capacity) ;
+        this.capacity = capacity ;
+    }
+    
+    /** Number of rows */
+    public int size()                   { return size ; }
+    
+    public int capacity()               { return capacity ; }
+    
+    public boolean isEmpty()            { return size == 0 ; }
+
+    public boolean isFull()             { return size == capacity ; }
+
+    /** The variables with a column in this block.  A variable may be unbound in some, or all, rows. */
+    public List<Var> getVars()          { return vars ; }
+    
+    /** Column number for a variable, or -1 */
+    public int column(Var var)          { return vars.indexOf(var) ; }
+    
+    /** Column number for a variable, adding an empty column if there is none */ 
+    public int addColumn(Var var)
+    {
+        int idx = column(var) ;
+        if ( idx >= 0 )
+            return idx ;
+        vars.add(var) ;
+        columns.add(new Node[capacity]) ;
+        return vars.size()-1 ;
+    }
+    
+    public Node get(int row, int col)               { return columns.get(col)[row] ; }
+
+    public void set(int row, int col, Node value)   { columns.get(col)[row] = value ; }
+
+    /** Add a row, with the values of a binding (including those of the parent bindings) */
+    public void add(Binding binding)
+    {
+        if ( isFull() )
+            throw new ARQInternalErrorException("BindingBlock is full") ;
+        for ( Iterator<Var> iter = binding.vars() ; iter.hasNext() ; )
+        {
+            Var v = iter.next() ;
+            columns.get(addColumn(v))[size] = binding.get(v) ;
+        }
+        size++ ;
+    }
+    
+    /** A row, as a new binding */
+    public Binding binding(int row)
+    {
+        BindingMap b = BindingFactory.create() ;
+        for ( int i = 0 ; i < vars.size() ; i++ )
+        {
+            Node n = columns.get(i)[row] ;
+            if ( n != null )
+                b.add(vars.get(i), n) ;
+        }
+        return b ;
+    }
+    
+    /** Keep the rows marked, in the same order, and remove the others */
+    public void retain(boolean[] keep)
+    {
+        int j = 0 ;
+        for ( int i = 0 ; i < size ; i++ )
+        {
+            if ( ! keep[i] )
+                continue ;
+            if ( i != j )
+            {
+                for ( Node[] col : columns )
+                    col[j] = col[i] ;
+            }
+            j++ ;
+        }
+        for ( Node[] col : columns )
+            Arrays.fill(col, j, size, null) ;
+        size = j ;
+    }
+    
+    /** Keep only the columns of the given variables */
+    public void project(List<Var> projectVars)
+    {
+        List<Var> vars2 = new ArrayList<Var>(projectVars.size()) ;
+        List<Node[]> columns2 = new ArrayList<Node[]>(projectVars.size()) ;
+        for ( Var v : projectVars )
+        {
+            int idx = column(v) ;
+            if ( idx < 0 || vars2.contains(v) )
+                continue ;
+            vars2.add(v) ;
+            columns2.add(columns.get(idx)) ;
+        }
+        vars = vars2 ;
+        columns = columns2 ;
+    }
+    
+    /** A reusable view of the rows of this block */ 
+    public Row row()        { return new Row() ; }
+    
+    /** A view of one row of the block as a binding.  It changes when the block
+     *  changes and when moved to another row, so it must not be kept. 
+     */
+    public final class Row extends BindingBase
+    {
+        private int row = 0 ;
+        
+        private Row() { super(null) ; }
+        
+        public void setRow(int row)         { this.row = row ; }
+        
+        public int getRow()                 { return row ; }
+        
+        @Override
+        protected Iterator<Var> vars1()
+        {
+            List<Var> x = new ArrayList<Var>(vars.size()) ;
+            for ( int i = 0 ; i < vars.size() ; i++ )
+            {
+                if ( columns.get(i)[row] != null )
+                    x.add(vars.get(i)) ;
+            }
+            return x.iterator() ;
+        }
+
+        @Override
+        protected int size1()
+        {
+            int x = 0 ;
+            for ( Node[] col : columns )
+            {
+                if ( col[row] != null )
+                    x++ ;
+            }
+            return x ;
+        }
+
+        @Override
+        protected boolean isEmpty1()        { return size1() == 0 ; }
+
+        @Override
+        protected boolean contains1(Var var) { return get1(var) != null ; }
+
+        @Override
+        protected Node get1(Var var)
+        {
+            int idx = column(var) ;
+            if ( idx < 0 )
+                return null ;
+            return columns.get(idx)[row] ;
+        }
+    }
+}
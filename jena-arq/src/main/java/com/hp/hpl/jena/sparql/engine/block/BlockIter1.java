@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.block;
+
+/** A block iterator that changes each block of its input iterator in place. */
+public abstract class BlockIter1 extends BlockIterBase
+{
+    private final BlockIterator input ;
+    
+    protected BlockIter1(BlockIterator input)
+    {
+        this.input = input ;
+    }
+    
+    protected BlockIterator getInput() { return input ; }
+    
+    /** Process the rows of one block : rows may be removed, columns added or removed. */
+    protected abstract void processBlock(BindingBlock block) ;
+    
+    @Override
+    protected final BindingBlock moveToNextBlock()
+    {
+        while ( input.hasNext() )
+        {
+            BindingBlock block = input.next() ;
+            processBlock(block) ;
+            if ( ! block.isEmpty() )
+                return block ;
+        }
+        return null ;
+    }
+    
+    @Override
+    protected void closeIterator()
+    { input.close() ; }
+    
+    @Override
+    public void cancel()
+    { input.cancel() ; }
+}
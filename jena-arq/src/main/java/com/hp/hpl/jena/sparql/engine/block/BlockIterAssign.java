@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.block;
+
+import java.util.List ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.core.VarExprList ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+
+/** Extend each solution of a block by (var, expression) : the block form of
+ *  {@link com.hp.hpl.jena.sparql.engine.iterator.QueryIterAssign}.
+ *  The values are written into a column of the block. */
+public class BlockIterAssign extends BlockIter1
+{
+    private final VarExprList exprs ;
+    private final ExecutionContext execCxt ;
+    
+    public BlockIterAssign(BlockIterator input, VarExprList exprs, ExecutionContext execCxt)
+    {
+        super(input) ;
+        this.exprs = exprs ;
+        this.execCxt = execCxt ;
+    }
+    
+    @Override
+    protected void processBlock(BindingBlock block)
+    {
+        List<Var> vars = exprs.getVars() ;
+        int[] cols = new int[vars.size()] ;
+        for ( int k = 0 ; k < cols.length ; k++ )
+            cols[k] = block.addColumn(vars.get(k)) ;
+
+        boolean[] keep = new boolean[block.size()] ;
+        boolean all = true ;
+        BindingBlock.Row row = block.row() ;
+        for ( int i = 0 ; i < block.size() ; i++ )
+        {
+            row.setRow(i) ;
+            keep[i] = true ;
+            for ( int k = 0 ; k < cols.length ; k++ )
+            {
+                // Later expressions see earlier assignments ("let*").
+                Node n = exprs.get(vars.get(k), row, execCxt) ;
+                if ( n == null )
+                    // Expression failed to evaluate - no assignment
+                    continue ;
+                Node n2 = block.get(i, cols[k]) ;
+                if ( n2 == null )
+                {
+                    block.set(i, cols[k], n) ;
+                    continue ;
+                }
+                // Already has a value; must be sameValueAs
+                if ( ! n2.sameValueAs(n) )
+                {
+                    keep[i] = false ;
+                    all = false ;
+                    break ;
+                }
+            }
+        }
+        if ( ! all )
+            block.retain(keep) ;
+    }
+}
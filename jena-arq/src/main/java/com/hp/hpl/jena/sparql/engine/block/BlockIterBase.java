@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.block;
+
+import java.util.NoSuchElementException ;
+
+import com.hp.hpl.jena.sparql.util.Utils ;
+
+/** Base class for block iterators : subclasses produce the next block or null at the end. */
+public abstract class BlockIterBase implements BlockIterator
+{
+    private BindingBlock slot = null ;
+    private boolean finished = false ;
+    private boolean closed = false ;
+    
+    /** The next block with at least one row, or null for no more blocks. */
+    protected abstract BindingBlock moveToNextBlock() ;
+    
+    /** Release any resources */
+    protected abstract void closeIterator() ;
+    
+    @Override
+    public final boolean hasNext()
+    {
+        if ( finished )
+            return false ;
+        if ( slot != null )
+            return true ;
+        slot = moveToNextBlock() ;
+        if ( slot == null )
+            finished = true ;
+        return slot != null ;
+    }
+
+    @Override
+    public final BindingBlock next()
+    {
+        if ( ! hasNext() )
+            throw new NoSuchElementException(Utils.className(this)) ;
+        BindingBlock b = slot ;
+        slot = null ;
+        return b ;
+    }
+
+    @Override
+    public final void remove()
+    { throw new UnsupportedOperationException(Utils.className(this)+".remove") ; }
+
+    @Override
+    public final void close()
+    {
+        if ( closed )
+            return ;
+        closed = true ;
+        finished = true ;
+        slot = null ;
+        closeIterator() ;
+    }
+}
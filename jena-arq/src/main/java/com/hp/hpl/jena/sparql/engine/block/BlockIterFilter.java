@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.block;
+
+import org.apache.jena.atlas.logging.Log ;
+
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.expr.Expr ;
+import com.hp.hpl.jena.sparql.expr.ExprException ;
+
+/** Filter blocks of solutions by a constraint : the block form of
+ *  {@link com.hp.hpl.jena.sparql.engine.iterator.QueryIterFilterExpr}. */
+public class BlockIterFilter extends BlockIter1
+{
+    private final Expr expr ;
+    private final ExecutionContext execCxt ;
+    
+    public BlockIterFilter(BlockIterator input, Expr expr, ExecutionContext execCxt)
+    {
+        super(input) ;
+        this.expr = expr ;
+        this.execCxt = execCxt ;
+    }
+    
+    @Override
+    protected void processBlock(BindingBlock block)
+    {
+        boolean[] keep = new boolean[block.size()] ;
+        boolean all = true ;
+        BindingBlock.Row row = block.row() ;
+        for ( int i = 0 ; i < block.size() ; i++ )
+        {
+            row.setRow(i) ;
+            keep[i] = accept(row) ;
+            all = all && keep[i] ;
+        }
+        if ( ! all )
+            block.retain(keep) ;
+    }
+
+    private boolean accept(Binding binding)
+    {
+        try {
+            return expr.isSatisfied(binding, execCxt) ;
+        } catch (ExprException ex)
+        { // Some evaluation exception
+            Log.warn(this, "Expression Exception in "+expr, ex) ;
+            return false ;
+        }
+        catch (Exception ex)
+        {
+            Log.warn(this, "General exception in "+expr, ex) ;
+            return false ;
+        }
+    }
+}
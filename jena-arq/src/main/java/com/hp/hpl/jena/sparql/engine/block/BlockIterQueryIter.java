@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.block;
+
+import com.hp.hpl.jena.sparql.engine.QueryIterator ;
+
+/** Read a {@link QueryIterator} into blocks. */
+public class BlockIterQueryIter extends BlockIterBase
+{
+    private final QueryIterator input ;
+    private final int blockSize ;
+    
+    public BlockIterQueryIter(QueryIterator input)
+    { this(input, BindingBlock.DefaultSize) ; }
+
+    public BlockIterQueryIter(QueryIterator input, int blockSize)
+    {
+        this.input = input ;
+        this.blockSize = blockSize ;
+    }
+    
+    @Override
+    protected BindingBlock moveToNextBlock()
+    {
+        if ( ! input.hasNext() )
+            return null ;
+        BindingBlock block = new BindingBlock(blockSize) ;
+        while ( ! block.isFull() && input.hasNext() )
+            block.add(input.nextBinding()) ;
+        return block ;
+    }
+
+    @Override
+    protected void closeIterator()
+    { input.close() ; }
+
+    @Override
+    public void cancel()
+    { input.cancel() ; }
+}
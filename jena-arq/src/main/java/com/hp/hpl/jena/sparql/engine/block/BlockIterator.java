@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.block;
+
+import java.util.Iterator ;
+
+import org.apache.jena.atlas.lib.Closeable ;
+
+/** An iterator over blocks of solutions : the block-at-a-time form of a
+ *  {@link com.hp.hpl.jena.sparql.engine.QueryIterator}.  Blocks are not empty.
+ *  A block belongs to the caller once returned by {@code next()}.
+ */
+public interface BlockIterator extends Iterator<BindingBlock>, Closeable
+{
+    /** Cancellation of the query execution is happening */
+    public void cancel() ;
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.block;
+
+import com.hp.hpl.jena.query.ARQ ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.QueryIterator ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter ;
+
+/** A {@link QueryIterator} over the rows of a {@link BlockIterator}.
+ *  A sequence of block steps stays in block form : {@link #blocks}
+ *  takes the block iterator back out of one of these that has not been read from.
+ */
+public class QueryIterBlocks extends QueryIter
+{
+    /** Whether to evaluate filter, extend and project a block at a time. */ 
+    public static boolean isEnabled(ExecutionContext execCxt)
+    {
+        return execCxt.getContext().isTrue(ARQ.blockExecution) ;
+    }
+    
+    /** The solutions of a QueryIterator as blocks. */
+    public static BlockIterator blocks(QueryIterator qIter)
+    {
+        if ( qIter instanceof QueryIterBlocks )
+            return ((QueryIterBlocks)qIter).asBlocks() ;
+        return new BlockIterQueryIter(qIter) ;
+    }
+    
+    private final BlockIterator input ;
+    private BindingBlock block = null ;
+    private int row = 0 ;
+    private boolean started = false ;
+    
+    public QueryIterBlocks(BlockIterator input, ExecutionContext execCxt)
+    {
+        super(execCxt) ;
+        this.input = input ;
+    }
+
+    private BlockIterator asBlocks()
+    {
+        if ( started )
+            return new BlockIterQueryIter(this) ;
+        // Pass through the blocks; close and cancel this iterator so it is tracked. 
+        final QueryIterBlocks qIter = this ;
+        return new BlockIterator() {
+            @Override public boolean hasNext()      { return input.hasNext() ; }
+            @Override public BindingBlock next()    { return input.next() ; }
+            @Override public void remove()          { input.remove() ; }
+            @Override public void close()           { qIter.close() ; }
+            @Override public void cancel()          { qIter.cancel() ; }
+        } ;
+    }
+    
+    @Override
+    protected boolean hasNextBinding()
+    {
+        started = true ;
+        while ( block == null || row >= block.size() )
+        {
+            block = null ;
+            if ( ! input.hasNext() )
+                return false ;
+            block = input.next() ;
+            row = 0 ;
+        }
+        return true ;
+    }
+
+    @Override
+    protected Binding moveToNextBinding()
+    {
+        return block.binding(row++) ;
+    }
+
+    @Override
+    protected void closeIterator()
+    {
+        block = null ;
+        input.close() ;
+    }
+
+    @Override
+    protected void requestCancel()
+    {
+        input.cancel() ;
+    }
+}
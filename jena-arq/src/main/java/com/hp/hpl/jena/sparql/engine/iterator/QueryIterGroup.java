@@ -23,10 +23,16 @@ import java.util.Collection ;
 import java.util.Iterator ;
 import java.util.List ;
 
+import org.apache.jena.atlas.data.BagFactory ;
+import org.apache.jena.atlas.data.DataBag ;
+import org.apache.jena.atlas.data.ThresholdPolicy ;
+import org.apache.jena.atlas.data.ThresholdPolicyFactory ;
 import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.iterator.IteratorConcat ;
 import org.apache.jena.atlas.iterator.IteratorDelayedInitialization ;
 import org.apache.jena.atlas.lib.MultiMap ;
 import org.apache.jena.atlas.lib.Pair ;
+import org.openjena.riot.SerializationFactoryFinder ;
 
 import com.hp.hpl.jena.graph.Node ;
 import com.hp.hpl.jena.sparql.core.Var ;
@@ -40,9 +46,22 @@ import com.hp.hpl.jena.sparql.expr.ExprAggregator ;
 import com.hp.hpl.jena.sparql.expr.NodeValue ;
 import com.hp.hpl.jena.sparql.expr.aggregate.Accumulator ;
 
+/** GROUP BY and aggregation by hashing on the group key.
+ * <p>
+ * The groups and their accumulators are kept in memory until the number of groups passes
+ * the spill threshold of the context ({@link com.hp.hpl.jena.query.ARQ#spillToDiskThreshold}).
+ * After that, rows of groups already in memory are still accumulated there, while rows of
+ * any other group are written to disk, partitioned by the hash of the group key.
+ * Each partition is then aggregated in turn, spilling again if need be.
+ */
 public class QueryIterGroup extends QueryIterPlainWrapper
 {
+    private static final int NumPartitions = 16 ;
+    // Levels of partitioning, after which a partition is aggregated in memory whatever its size.
+    private static final int MaxLevels = 4 ;
+    
 	private final QueryIterator embeddedIterator;
+	private final List<DataBag<Binding>> bags = new ArrayList<DataBag<Binding>>() ;
 
 	public QueryIterGroup(QueryIterator qIter, 
                           VarExprList groupVars,
@@ -51,7 +70,7 @@ public class QueryIterGroup extends QueryIterPlainWrapper
     {
         super(null, execCxt) ;
         this.embeddedIterator = qIter;
-        Iterator<Binding> iter = calc(qIter, groupVars, aggregators, execCxt) ;
+        Iterator<Binding> iter = calc(qIter, groupVars, aggregators, bags, execCxt) ;
         setIterator(iter) ;
     }
 
@@ -62,6 +81,21 @@ public class QueryIterGroup extends QueryIterPlainWrapper
 	    super.requestCancel() ;
 	}
 	
+	@Override
+	protected void closeIterator()
+	{
+	    super.closeIterator() ;
+	    for ( DataBag<Binding> bag : bags )
+	        bag.close() ;
+	    bags.clear() ;
+	}
+	
+	/** Whether any groups were written to disk */
+	public boolean isSpilled()
+	{
+	    return ! bags.isEmpty() ;
+	}
+	
     // Phase 1 : Consume the input iterator, assigning groups (keys) 
     //           and push rows through the aggregator function. 
     
@@ -72,111 +106,185 @@ public class QueryIterGroup extends QueryIterPlainWrapper
     
     private static Iterator<Binding> calc(final QueryIterator iter, 
                                           final VarExprList groupVarExpr, final List<ExprAggregator> aggregators,
+                                          final List<DataBag<Binding>> bags, 
                                           final ExecutionContext execCxt)
     {
         return new IteratorDelayedInitialization<Binding>() {
             @Override
             protected Iterator<Binding> initializeIterator() {
+                return aggregate(iter, groupVarExpr, aggregators, bags, 0, execCxt) ;
+            }
+        };
+    }
+    
+    private static Iterator<Binding> aggregate(Iterator<Binding> iter, 
+                                               final VarExprList groupVarExpr, final List<ExprAggregator> aggregators,
+                                               final List<DataBag<Binding>> bags, final int level,
+                                               final ExecutionContext execCxt)
+    {
+        boolean noAggregators =  ( aggregators == null || aggregators.size() == 0 ) ;
+        
+        // Phase 1 : assign bindings to buckets by key and pump through the aggregrators.
+        MultiMap<Binding, Pair<Var, Accumulator>> accumulators = MultiMap.createMapList() ;
+        ThresholdPolicy<Binding> policy = ( level < MaxLevels ) 
+            ? ThresholdPolicyFactory.<Binding>policyFromContext(execCxt.getContext())
+            : ThresholdPolicyFactory.<Binding>never() ;
+        // Rows of groups not in memory, once spilling. 
+        List<DataBag<Binding>> partitions = null ;
 
-                boolean noAggregators =  ( aggregators == null || aggregators.size() == 0 ) ;
-                
-                // Phase 1 : assign bindings to buckets by key and pump through the aggregrators.
-                MultiMap<Binding, Pair<Var, Accumulator>> accumulators = MultiMap.createMapList() ;
+        for ( ; iter.hasNext() ; )
+        {
+            Binding b = iter.next() ;
+            Binding key = genKey(groupVarExpr, b, execCxt) ;
 
-                for ( ; iter.hasNext() ; )
+            Collection<Pair<Var, Accumulator>> accs = accumulators.get(key) ;
+            if ( accs == null )
+            {
+                if ( partitions != null )
+                {
+                    partitions.get(partition(key, level)).add(b) ;
+                    continue ;
+                }
+                
+                if ( noAggregators )
+                    // Put in a dummy to remember the input.
+                    accumulators.put(key, placeholder ) ;
+                else
                 {
-                    Binding b = iter.nextBinding() ;
-                    Binding key = genKey(groupVarExpr, b, execCxt) ;
-
-                    if ( noAggregators )
-                    {
-                        // Put in a dummy to remember the input.
-                        accumulators.put(key, placeholder ) ;
-                        continue ;
-                    }
-
-                    Collection<Pair<Var, Accumulator>> accs = accumulators.get(key) ;
                     // Create if does not exist.
-                    if ( accs == null )
+                    for ( ExprAggregator agg : aggregators )
                     {
-                        for ( ExprAggregator agg : aggregators )
-                        {
-                            Accumulator x = agg.getAggregator().createAccumulator() ;
-                            Var v = agg.getVar() ;
-                            accumulators.put(key, Pair.create(v, x)) ;
-                        }
-                        accs = accumulators.get(key) ;
+                        Accumulator x = agg.getAggregator().createAccumulator() ;
+                        Var v = agg.getVar() ;
+                        accumulators.put(key, Pair.create(v, x)) ;
                     }
-
-                    // Do the per-accumulator calculation.
-                    for ( Pair<Var, Accumulator> pair : accs )
-                        pair.getRight().accumulate(b, execCxt) ;
                 }
+                accs = accumulators.get(key) ;
+                policy.increment(key) ;
+                if ( policy.isThresholdExceeded() )
+                    partitions = newPartitions(bags) ;
+            }
+            
+            if ( noAggregators )
+                continue ;
 
-                // Phase 2 : Empty input
-                // has as iter.hasNext false at start.
+            // Do the per-accumulator calculation.
+            for ( Pair<Var, Accumulator> pair : accs )
+                pair.getRight().accumulate(b, execCxt) ;
+        }
 
-                // If there are no binding from the input stage, two things can happen.
-                //   If there are no aggregators, there are no groups.
-                //   If there are aggregators, then they may have a default value. 
+        // Phase 2 : Empty input
+        // has as iter.hasNext false at start.
 
-                if ( accumulators.isEmpty() )
-                {
-                    if ( noAggregators )
-                    {
-                        // No rows to group, no aggregators.
-                        // ==> No result rows.
-                        return Iter.nullIterator() ;
-                    }
-                    
-                    BindingMap binding = BindingFactory.create() ;
+        // If there are no binding from the input stage, two things can happen.
+        //   If there are no aggregators, there are no groups.
+        //   If there are aggregators, then they may have a default value. 
+        // A partition is never empty of groups.
 
-                    for ( Iterator<ExprAggregator> aggIter = aggregators.iterator() ; aggIter.hasNext() ; )
-                    {
-                        ExprAggregator agg = aggIter.next();
-                        Var v = agg.getVar() ;
-                        Node value = agg.getAggregator().getValueEmpty() ;
-                        if ( value != null )
-                            binding.add(v, value) ;
-                    }
-                        
-                    if ( binding == null )
-                        // This does not happen if there are any aggregators. 
-                        return Iter.nullIterator() ;
-                    // cast to get the static type inference to work.
-                    return Iter.singletonIter((Binding)binding) ;
-                }
+        if ( accumulators.isEmpty() )
+        {
+            if ( noAggregators || level > 0 )
+            {
+                // No rows to group, no aggregators.
+                // ==> No result rows.
+                return Iter.nullIterator() ;
+            }
+            
+            BindingMap binding = BindingFactory.create() ;
 
-                // Phase 2 : There was input and so there are some groups.
-                // For each bucket, get binding, add aggregator values to the binding.
-                // We used AccNull so there are always accumulators. 
-                
-                if ( noAggregators )
-                    // We used placeholder so there are always the key. 
-                    return accumulators.keys().iterator() ;
+            for ( Iterator<ExprAggregator> aggIter = aggregators.iterator() ; aggIter.hasNext() ; )
+            {
+                ExprAggregator agg = aggIter.next();
+                Var v = agg.getVar() ;
+                Node value = agg.getAggregator().getValueEmpty() ;
+                if ( value != null )
+                    binding.add(v, value) ;
+            }
                 
-                List<Binding> results = new ArrayList<Binding>() ;
+            if ( binding == null )
+                // This does not happen if there are any aggregators. 
+                return Iter.nullIterator() ;
+            // cast to get the static type inference to work.
+            return Iter.singletonIter((Binding)binding) ;
+        }
 
-                for ( Binding k : accumulators.keys() )
+        // Phase 2 : There was input and so there are some groups.
+        // For each bucket, get binding, add aggregator values to the binding.
+        // We used AccNull so there are always accumulators. 
+        
+        Iterator<Binding> results ;
+        if ( noAggregators )
+            // We used placeholder so there are always the key. 
+            results = accumulators.keys().iterator() ;
+        else
+        {
+            List<Binding> x = new ArrayList<Binding>() ;
+    
+            for ( Binding k : accumulators.keys() )
+            {
+                Collection<Pair<Var, Accumulator>> accs = accumulators.get(k) ;
+                BindingMap b = BindingFactory.create(k) ;
+                
+                for ( Pair<Var, Accumulator> pair : accs )
                 {
-                    Collection<Pair<Var, Accumulator>> accs = accumulators.get(k) ;
-                    BindingMap b = BindingFactory.create(k) ;
-                    
-                    for ( Pair<Var, Accumulator> pair : accs )
-                    {
-                        Var v = pair.getLeft() ;
-                        NodeValue value = pair.getRight().getValue() ;
-                        Node n = (value==null) ? null : value.asNode() ;
-                        if ( v == null || n == null )
-                        {} 
-                        else
-                            b.add(v, n) ;
-                    }
-                    results.add(b) ;
+                    Var v = pair.getLeft() ;
+                    NodeValue value = pair.getRight().getValue() ;
+                    Node n = (value==null) ? null : value.asNode() ;
+                    if ( v == null || n == null )
+                    {} 
+                    else
+                        b.add(v, n) ;
                 }
-                return results.iterator() ;
+                x.add(b) ;
             }
-        };
+            results = x.iterator() ;
+        }
+        
+        if ( partitions == null )
+            return results ;
+        
+        // Then the groups on disk, one partition at a time. 
+        IteratorConcat<Binding> all = new IteratorConcat<Binding>() ;
+        all.add(results) ;
+        for ( final DataBag<Binding> bag : partitions )
+        {
+            all.add(new IteratorDelayedInitialization<Binding>() {
+                @Override
+                protected Iterator<Binding> initializeIterator() {
+                    Iterator<Binding> rows = bag.iterator() ;
+                    Iterator<Binding> x = aggregate(rows, groupVarExpr, aggregators, bags, level+1, execCxt) ;
+                    // Aggregation consumes the rows of the partition.  
+                    Iter.close(rows) ;
+                    bag.close() ;
+                    return x ;
+                }
+            }) ;
+        }
+        return all ;
+    }
+    
+    private static List<DataBag<Binding>> newPartitions(List<DataBag<Binding>> bags)
+    {
+        List<DataBag<Binding>> partitions = new ArrayList<DataBag<Binding>>(NumPartitions) ;
+        for ( int i = 0 ; i < NumPartitions ; i++ )
+        {
+            // Once spilling, everything goes to disk.
+            DataBag<Binding> bag = BagFactory.newDefaultBag(ThresholdPolicyFactory.<Binding>count(0), 
+                                                            SerializationFactoryFinder.bindingSerializationFactory()) ;
+            partitions.add(bag) ;
+            bags.add(bag) ;
+        }
+        return partitions ;
+    }
+    
+    // A different spread of the keys at each level.
+    private static int partition(Binding key, int level)
+    {
+        int h = key.hashCode() ^ (level*0x9e3779b9) ;
+        h ^= (h >>> 16) ;
+        h *= 0x85ebca6b ;
+        h ^= (h >>> 13) ;
+        return (h & 0x7fffffff) % NumPartitions ;
     }
     
     static private Binding genKey(VarExprList vars, Binding binding, ExecutionContext execCxt) 
@@ -20,6 +20,7 @@ package com.hp.hpl.jena.sparql.engine.main ;
 
 import java.util.ArrayList ;
 import java.util.Iterator ;
+import java.util.LinkedHashSet ;
 import java.util.List ;
 import java.util.Set ;
 
@@ -36,14 +37,19 @@ import com.hp.hpl.jena.sparql.algebra.op.* ;
 import com.hp.hpl.jena.sparql.core.BasicPattern ;
 import com.hp.hpl.jena.sparql.core.Quad ;
 import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.core.VarExprList ;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
 import com.hp.hpl.jena.sparql.engine.QueryIterator ;
 import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.engine.block.* ;
 import com.hp.hpl.jena.sparql.engine.iterator.* ;
 import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterGraph ;
+import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterHashJoin ;
+import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterHashLeftJoin ;
 import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterJoin ;
 import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterLeftJoin ;
 import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterOptionalIndex ;
+import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterParallel ;
 import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterService ;
 import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterUnion ;
 import com.hp.hpl.jena.sparql.expr.Expr ;
@@ -222,11 +228,35 @@ public class OpExecutor
             QueryIterator qIter = new QueryIterJoin(left, right, execCxt) ;
             return qIter ;
         }
-        QueryIterator left = exec(opJoin.getLeft(), input) ;
-        QueryIterator right = exec(opJoin.getRight(), root()) ;
+        QueryIterator left ;
+        QueryIterator right ;
+        if ( QueryIterParallel.isEnabled(execCxt) ) {
+            // The sides are independent : evaluate them at the same time.
+            left = new QueryIterParallel(opJoin.getLeft(), input, execCxt) ;
+            right = new QueryIterParallel(opJoin.getRight(), root(), execCxt) ;
+        } else {
+            left = exec(opJoin.getLeft(), input) ;
+            right = exec(opJoin.getRight(), root()) ;
+        }
+        List<Var> joinVars = hashJoinVars(opJoin.getLeft(), opJoin.getRight()) ;
+        if ( joinVars != null )
+            return new QueryIterHashJoin(left, right, joinVars, execCxt) ;
         QueryIterator qIter = new QueryIterJoin(left, right, execCxt) ;
         return qIter ;
     }
+    
+    /** The variables to hash a join on : those certainly defined by both sides.
+     *  Null for a nested loop join.
+     */
+    protected List<Var> hashJoinVars(Op left, Op right) {
+        if ( ! execCxt.getContext().isTrueOrUndef(ARQ.hashJoin) )
+            return null ;
+        Set<Var> vars = new LinkedHashSet<Var>(VarFinder.fixed(left)) ;
+        vars.retainAll(VarFinder.fixed(right)) ;
+        if ( vars.isEmpty() )
+            return null ;
+        return new ArrayList<Var>(vars) ;
+    }
 
     // Pass iterator from one step directly into the next.
     protected QueryIterator execute(OpSequence opSequence, QueryIterator input) {
@@ -240,8 +270,18 @@ public class OpExecutor
     }
 
     protected QueryIterator execute(OpLeftJoin opLeftJoin, QueryIterator input) {
-        QueryIterator left = exec(opLeftJoin.getLeft(), input) ;
-        QueryIterator right = exec(opLeftJoin.getRight(), root()) ;
+        QueryIterator left ;
+        QueryIterator right ;
+        if ( QueryIterParallel.isEnabled(execCxt) ) {
+            left = new QueryIterParallel(opLeftJoin.getLeft(), input, execCxt) ;
+            right = new QueryIterParallel(opLeftJoin.getRight(), root(), execCxt) ;
+        } else {
+            left = exec(opLeftJoin.getLeft(), input) ;
+            right = exec(opLeftJoin.getRight(), root()) ;
+        }
+        List<Var> joinVars = hashJoinVars(opLeftJoin.getLeft(), opLeftJoin.getRight()) ;
+        if ( joinVars != null )
+            return new QueryIterHashLeftJoin(left, right, joinVars, opLeftJoin.getExprs(), execCxt) ;
         QueryIterator qIter = new QueryIterLeftJoin(left, right, opLeftJoin.getExprs(), execCxt) ;
         return qIter ;
     }
@@ -278,6 +318,15 @@ public class OpExecutor
 
     protected QueryIterator execute(OpUnion opUnion, QueryIterator input) {
         List<Op> x = flattenUnion(opUnion) ;
+        if ( input instanceof QueryIterRoot && QueryIterParallel.isEnabled(execCxt) ) {
+            // One evaluation of each arm : run them side by side.
+            // (Otherwise each arm is evaluated for each input binding.)
+            List<QueryIterator> inputs = new ArrayList<QueryIterator>(x.size()) ;
+            for ( int i = 0 ; i < x.size() ; i++ )
+                inputs.add(root()) ;
+            input.close() ;
+            return new QueryIterParallel(x, inputs, execCxt) ;
+        }
         QueryIterator cIter = new QueryIterUnion(input, x, execCxt) ;
         return cIter ;
     }
@@ -307,6 +356,13 @@ public class OpExecutor
         Op base = opFilter.getSubOp() ;
         QueryIterator qIter = exec(base, input) ;
 
+        if (QueryIterBlocks.isEnabled(execCxt)) {
+            BlockIterator blocks = QueryIterBlocks.blocks(qIter) ;
+            for (Expr expr : exprs)
+                blocks = new BlockIterFilter(blocks, expr, execCxt) ;
+            return new QueryIterBlocks(blocks, execCxt) ;
+        }
+        
         for (Expr expr : exprs)
             qIter = new QueryIterFilterExpr(qIter, expr, execCxt) ;
         return qIter ;
@@ -396,6 +452,10 @@ public class OpExecutor
 
         if (input instanceof QueryIterRoot) {
             QueryIterator qIter = exec(opProject.getSubOp(), input) ;
+            if (QueryIterBlocks.isEnabled(execCxt)) {
+                BlockIterator blocks = new BlockIterProject(QueryIterBlocks.blocks(qIter), opProject.getVars()) ;
+                return new QueryIterBlocks(blocks, execCxt) ;
+            }
             qIter = new QueryIterProject(qIter, opProject.getVars(), execCxt) ;
             return qIter ;
         }
@@ -430,6 +490,8 @@ public class OpExecutor
 
     protected QueryIterator execute(OpAssign opAssign, QueryIterator input) {
         QueryIterator qIter = exec(opAssign.getSubOp(), input) ;
+        if (QueryIterBlocks.isEnabled(execCxt))
+            return assignBlocks(qIter, opAssign.getVarExprList()) ;
         qIter = new QueryIterAssign(qIter, opAssign.getVarExprList(), execCxt, false) ;
         return qIter ;
     }
@@ -439,10 +501,17 @@ public class OpExecutor
         // the query so we can use QueryIterAssign knowing that it behaves
         // the same as extend. The boolean should only be a check.
         QueryIterator qIter = exec(opExtend.getSubOp(), input) ;
+        if (QueryIterBlocks.isEnabled(execCxt))
+            return assignBlocks(qIter, opExtend.getVarExprList()) ;
         qIter = new QueryIterAssign(qIter, opExtend.getVarExprList(), execCxt, true) ;
         return qIter ;
     }
 
+    private QueryIterator assignBlocks(QueryIterator qIter, VarExprList exprs) {
+        BlockIterator blocks = new BlockIterAssign(QueryIterBlocks.blocks(qIter), exprs, execCxt) ;
+        return new QueryIterBlocks(blocks, execCxt) ;
+    }
+
     public static QueryIterator createRootQueryIterator(ExecutionContext execCxt) {
         return QueryIterRoot.create(execCxt) ;
     }
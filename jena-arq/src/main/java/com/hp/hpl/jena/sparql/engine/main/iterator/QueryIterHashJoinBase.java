@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.main.iterator;
+
+import java.util.* ;
+
+import org.apache.jena.atlas.data.BagFactory ;
+import org.apache.jena.atlas.data.DataBag ;
+import org.apache.jena.atlas.data.ThresholdPolicy ;
+import org.apache.jena.atlas.data.ThresholdPolicyFactory ;
+import org.apache.jena.atlas.iterator.Iter ;
+import org.openjena.riot.SerializationFactoryFinder ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.query.ARQ ;
+import com.hp.hpl.jena.sparql.algebra.Algebra ;
+import com.hp.hpl.jena.sparql.algebra.JoinType ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.QueryIterator ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter2 ;
+import com.hp.hpl.jena.sparql.expr.ExprList ;
+
+/** Join or LeftJoin by building a hash table of the right hand side, keyed on the 
+ *  values of the join variables, and streaming the left hand side through it.
+ *  <p>
+ *  If the right hand side passes the spill threshold of the context 
+ *  ({@link ARQ#spillToDiskThreshold}), both sides are written to disk, partitioned
+ *  by the hash of the key, and then joined one partition at a time.
+ *  <p>
+ *  The join variables only choose the hashing; compatibility is always checked
+ *  on the whole binding.  Rows that do not bind all the join variables are kept in memory
+ *  and compared with every row of the other side.
+ */
+public class QueryIterHashJoinBase extends QueryIter2
+{
+    private static final int NumPartitions = 16 ;
+    
+    private final JoinType joinType ;
+    private final ExprList exprs ;
+    private final Var[] joinVars ;
+    private final ThresholdPolicy<Binding> policy ;
+    
+    private boolean built = false ;
+    // Build side : by key, and rows without a complete key. 
+    private Map<List<Node>, List<Binding>> table = new HashMap<List<Node>, List<Binding>>() ;
+    private List<Binding> looseRight = new ArrayList<Binding>() ;
+    
+    // Spilled : both sides by partition, and left rows without a complete key.  
+    private List<DataBag<Binding>> leftBags = null ;
+    private List<DataBag<Binding>> rightBags = null ;
+    private List<Binding> looseLeft = null ;
+    private BitSet looseLeftMatched = null ;
+    private int partition = 0 ;
+    private Iterator<Binding> probe = null ;
+    
+    private Iterator<Binding> current = Iter.nullIterator() ;
+    
+    protected QueryIterHashJoinBase(QueryIterator left, QueryIterator right, List<Var> joinVars, 
+                                    JoinType joinType, ExprList exprs, ExecutionContext execCxt)
+    {
+        super(left, right, execCxt) ;
+        this.joinType = joinType ;
+        this.exprs = exprs ;
+        this.joinVars = joinVars.toArray(new Var[joinVars.size()]) ;
+        this.policy = ThresholdPolicyFactory.policyFromContext(execCxt.getContext()) ;
+    }
+    
+    /** Whether the join has been written to disk */
+    public boolean isSpilled()
+    {
+        return rightBags != null ;
+    }
+    
+    @Override
+    protected boolean hasNextBinding()
+    {
+        if ( ! built )
+        {
+            build() ;
+            built = true ;
+        }
+        while ( ! current.hasNext() )
+        {
+            if ( isSpilled() )
+            {
+                if ( ! nextSpilled() )
+                    return false ;
+                continue ;
+            }
+            if ( table.isEmpty() && looseRight.isEmpty() && joinType == JoinType.PLAIN )
+                // No rows on the right - no matches.
+                return false ;
+            if ( ! getLeft().hasNext() )
+                return false ;
+            Binding b = getLeft().nextBinding() ;
+            List<Binding> out = new ArrayList<Binding>() ;
+            int count = probe(b, key(b), true, out) ;
+            if ( count == 0 && joinType == JoinType.LEFT )
+                out.add(b) ;
+            current = out.iterator() ;
+        }
+        return true ;
+    }
+
+    @Override
+    protected Binding moveToNextBinding()
+    {
+        return current.next() ;
+    }
+    
+    // ---- Build
+    
+    private void build()
+    {
+        QueryIterator right = getRight() ;
+        while ( right.hasNext() )
+        {
+            Binding b = right.nextBinding() ;
+            List<Node> k = key(b) ;
+            if ( k == null )
+            {
+                looseRight.add(b) ;
+                continue ;
+            }
+            if ( isSpilled() )
+            {
+                rightBags.get(partition(k)).add(b) ;
+                continue ;
+            }
+            List<Binding> x = table.get(k) ;
+            if ( x == null )
+            {
+                x = new ArrayList<Binding>(2) ;
+                table.put(k, x) ;
+            }
+            x.add(b) ;
+            policy.increment(b) ;
+            if ( policy.isThresholdExceeded() )
+                spill() ;
+        }
+        
+        if ( ! isSpilled() )
+            return ;
+        
+        // Partition the left side to match.
+        QueryIterator left = getLeft() ;
+        looseLeft = new ArrayList<Binding>() ;
+        while ( left.hasNext() )
+        {
+            Binding b = left.nextBinding() ;
+            List<Node> k = key(b) ;
+            if ( k == null )
+                looseLeft.add(b) ;
+            else
+                leftBags.get(partition(k)).add(b) ;
+        }
+        looseLeftMatched = new BitSet(looseLeft.size()) ;
+    }
+    
+    private void spill()
+    {
+        leftBags = newBags() ;
+        rightBags = newBags() ;
+        for ( Map.Entry<List<Node>, List<Binding>> e : table.entrySet() )
+        {
+            DataBag<Binding> bag = rightBags.get(partition(e.getKey())) ;
+            for ( Binding b : e.getValue() )
+                bag.add(b) ;
+        }
+        table = null ;
+    }
+    
+    private List<DataBag<Binding>> newBags()
+    {
+        List<DataBag<Binding>> bags = new ArrayList<DataBag<Binding>>(NumPartitions) ;
+        for ( int i = 0 ; i < NumPartitions ; i++ )
+            // Once spilling, everything goes to disk.
+            bags.add(BagFactory.newDefaultBag(ThresholdPolicyFactory.<Binding>count(0), 
+                                              SerializationFactoryFinder.bindingSerializationFactory())) ;
+        return bags ;
+    }
+    
+    // ---- Probe
+    
+    /** Next step of a spilled join : next left row of the current partition, 
+     * or the next partition, or the left rows without a complete key.
+     * Returns false when there is no more to do. */
+    private boolean nextSpilled()
+    {
+        if ( probe != null && probe.hasNext() )
+        {
+            Binding b = probe.next() ;
+            List<Binding> out = new ArrayList<Binding>() ;
+            int count = probe(b, key(b), true, out) ;
+            if ( count == 0 && joinType == JoinType.LEFT )
+                out.add(b) ;
+            current = out.iterator() ;
+            return true ;
+        }
+        if ( probe != null )
+        {
+            Iter.close(probe) ;
+            probe = null ;
+        }
+        if ( partition < NumPartitions )
+        {
+            // Load the next partition of the right side.
+            int p = partition++ ;
+            table = new HashMap<List<Node>, List<Binding>>() ;
+            DataBag<Binding> rightBag = rightBags.get(p) ;
+            for ( Binding b : rightBag )
+            {
+                List<Node> k = key(b) ;
+                List<Binding> x = table.get(k) ;
+                if ( x == null )
+                {
+                    x = new ArrayList<Binding>(2) ;
+                    table.put(k, x) ;
+                }
+                x.add(b) ;
+            }
+            rightBag.close() ;
+            // Left rows without a complete key join with every partition.
+            List<Binding> out = new ArrayList<Binding>() ;
+            for ( int i = 0 ; i < looseLeft.size() ; i++ )
+            {
+                if ( probe(looseLeft.get(i), null, false, out) > 0 )
+                    looseLeftMatched.set(i) ;
+            }
+            current = out.iterator() ;
+            probe = leftBags.get(p).iterator() ;
+            return true ;
+        }
+        if ( looseLeft != null )
+        {
+            // Finally, left rows without a complete key against right rows without one. 
+            table = Collections.emptyMap() ;
+            List<Binding> out = new ArrayList<Binding>() ;
+            for ( int i = 0 ; i < looseLeft.size() ; i++ )
+            {
+                Binding b = looseLeft.get(i) ;
+                int count = probe(b, null, true, out) ;
+                if ( count == 0 && ! looseLeftMatched.get(i) && joinType == JoinType.LEFT )
+                    out.add(b) ;
+            }
+            looseLeft = null ;
+            current = out.iterator() ;
+            return true ;
+        }
+        return false ;
+    }
+    
+    /** Join a left row with the current table (all of it if key is null) and,
+     * optionally, the right rows without a complete key. Returns the number of results. */
+    private int probe(Binding b, List<Node> key, boolean withLoose, List<Binding> out)
+    {
+        int count = 0 ;
+        if ( key != null )
+        {
+            List<Binding> x = table.get(key) ;
+            if ( x != null )
+                count += join(b, x, out) ;
+        }
+        else
+        {
+            for ( List<Binding> x : table.values() )
+                count += join(b, x, out) ;
+        }
+        if ( withLoose )
+            count += join(b, looseRight, out) ;
+        return count ;
+    }
+    
+    private int join(Binding left, List<Binding> rows, List<Binding> out)
+    {
+        int count = 0 ;
+        for ( Binding right : rows )
+        {
+            Binding r = Algebra.merge(left, right) ;
+            if ( r == null )
+                continue ;
+            // This does the conditional part. Theta-join.
+            if ( exprs == null || exprs.isSatisfied(r, getExecContext()) )
+            {
+                count++ ;
+                out.add(r) ;
+            }
+        }
+        return count ;
+    }
+    
+    private List<Node> key(Binding b)
+    {
+        Node[] k = new Node[joinVars.length] ;
+        for ( int i = 0 ; i < joinVars.length ; i++ )
+        {
+            k[i] = b.get(joinVars[i]) ;
+            if ( k[i] == null )
+                return null ;
+        }
+        return Arrays.asList(k) ;
+    }
+    
+    private static int partition(List<Node> key)
+    {
+        // Spread the hash : HashMap would do the same inside each partition.
+        int h = key.hashCode() ;
+        h ^= (h >>> 16) ;
+        h *= 0x85ebca6b ;
+        h ^= (h >>> 13) ;
+        return (h & 0x7fffffff) % NumPartitions ;
+    }
+    
+    @Override
+    protected void closeSubIterator()
+    {
+        if ( probe != null )
+            Iter.close(probe) ;
+        closeBags(leftBags) ;
+        closeBags(rightBags) ;
+    }
+
+    @Override
+    protected void requestSubCancel()
+    { }
+    
+    private static void closeBags(List<DataBag<Binding>> bags)
+    {
+        if ( bags == null )
+            return ;
+        for ( DataBag<Binding> bag : bags )
+            bag.close() ;
+    }
+}
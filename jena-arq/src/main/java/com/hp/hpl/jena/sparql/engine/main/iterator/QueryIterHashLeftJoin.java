@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.main.iterator;
+
+import java.util.List ;
+
+import com.hp.hpl.jena.sparql.algebra.JoinType ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.QueryIterator ;
+import com.hp.hpl.jena.sparql.expr.ExprList ;
+
+/** Left join by hashing the RHS on the join variables - the LHS is streamed */
+public class QueryIterHashLeftJoin extends QueryIterHashJoinBase
+{
+    public QueryIterHashLeftJoin(QueryIterator left, QueryIterator right, List<Var> joinVars, ExprList exprs, ExecutionContext qCxt)
+    {
+        super(left, right, joinVars, JoinType.LEFT, exprs, qCxt) ;
+    }
+}
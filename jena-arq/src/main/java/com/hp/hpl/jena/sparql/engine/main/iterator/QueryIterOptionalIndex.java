@@ -19,6 +19,7 @@
 package com.hp.hpl.jena.sparql.engine.main.iterator;
 
 import org.apache.jena.atlas.io.IndentedWriter ;
+import org.apache.jena.atlas.iterator.Filter ;
 
 import com.hp.hpl.jena.sparql.algebra.Op ;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
@@ -36,16 +37,30 @@ import com.hp.hpl.jena.sparql.util.Utils ;
 public class QueryIterOptionalIndex extends QueryIterRepeatApply
 {
     private Op op ;
+    private Filter<Binding> mayMatch ;
 
     public QueryIterOptionalIndex(QueryIterator input, Op op, ExecutionContext context)
+    {
+        this(input, op, null, context) ;
+    }
+
+    /** Optional index join, where the right-hand side is only executed for bindings
+     *  that pass the "mayMatch" test. Other bindings are passed through unchanged.
+     *  The test must only reject bindings for which the right-hand side has no matches. 
+     */
+    public QueryIterOptionalIndex(QueryIterator input, Op op, Filter<Binding> mayMatch, ExecutionContext context)
     {
         super(input, context) ;
         this.op = op ;
+        this.mayMatch = mayMatch ;
     }
 
     @Override
     protected QueryIterator nextStage(Binding binding)
     {
+        if ( mayMatch != null && ! mayMatch.accept(binding) )
+            return QueryIterSingleton.create(binding, getExecContext()) ;
+        
         Op op2 = QC.substitute(op, binding) ;
         QueryIterator thisStep = QueryIterSingleton.create(binding, getExecContext()) ;
         
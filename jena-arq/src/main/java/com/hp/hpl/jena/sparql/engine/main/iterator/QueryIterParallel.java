@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.main.iterator;
+
+import java.util.ArrayList ;
+import java.util.Iterator ;
+import java.util.List ;
+
+import org.apache.jena.atlas.io.IndentedWriter ;
+import org.apache.jena.atlas.iterator.IteratorParallel ;
+import org.apache.jena.atlas.lib.Closeable ;
+
+import com.hp.hpl.jena.query.ARQ ;
+import com.hp.hpl.jena.sparql.algebra.Op ;
+import com.hp.hpl.jena.sparql.core.DatasetGraph ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.QueryIterator ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter ;
+import com.hp.hpl.jena.sparql.engine.main.QC ;
+import com.hp.hpl.jena.sparql.serializer.SerializationContext ;
+import com.hp.hpl.jena.sparql.util.Utils ;
+
+/** Evaluate a number of sub-operations, each against its own input, on a shared, bounded
+ * pool of threads and merge the results through a bounded queue (see {@link IteratorParallel}).
+ * The order of the results is not defined.
+ * <p>
+ * A branch that has not started on the pool by the time its results are needed is evaluated
+ * on the calling thread instead, and parallel evaluation is not nested within a pool thread,
+ * so a busy pool does not block a query.  The dataset must support concurrent readers;
+ * a dataset that does not sets {@link ARQ#singleThreadedDataset} in its context.
+ * <p>
+ * Closing or cancelling this iterator cancels all the branches; close waits for
+ * the pool threads to finish with them.
+ * @see ARQ#parallelExecution
+ */
+public class QueryIterParallel extends QueryIter
+{
+    /** Whether to evaluate in parallel : set in the context, not already on a pool thread
+     *  and the dataset supports concurrent readers.
+     */
+    public static boolean isEnabled(ExecutionContext execCxt)
+    {
+        return execCxt.getContext().isTrue(ARQ.parallelExecution) && ! IteratorParallel.isPoolThread()
+            && ! isSingleThreaded(execCxt.getDataset()) ;
+    }
+    
+    private static boolean isSingleThreaded(DatasetGraph dsg)
+    {
+        return dsg != null && dsg.getContext() != null && dsg.getContext().isTrue(ARQ.singleThreadedDataset) ;
+    }
+    
+    private final List<Op> ops ;
+    private final IteratorParallel<Binding> iterator ;
+    
+    public QueryIterParallel(Op op, QueryIterator input, ExecutionContext execCxt)
+    {
+        this(listOne(op), listOne(input), execCxt) ;
+    }
+    
+    public QueryIterParallel(List<Op> ops, List<QueryIterator> inputs, ExecutionContext execCxt)
+    {
+        super(execCxt) ;
+        if ( ops.size() != inputs.size() )
+            throw new IllegalArgumentException("Different numbers of operations and inputs: "+ops.size()+" and "+inputs.size()) ;
+        this.ops = ops ;
+        List<Branch> branches = new ArrayList<Branch>(ops.size()) ;
+        for ( int i = 0 ; i < ops.size() ; i++ )
+            branches.add(new Branch(ops.get(i), inputs.get(i))) ;
+        iterator = new IteratorParallel<Binding>(branches) {
+            @Override
+            protected void cancelSource(Iterator<Binding> source)
+            { ((Branch)source).cancel() ; }
+        } ;
+    }
+    
+    private static <T> List<T> listOne(T item)
+    {
+        List<T> x = new ArrayList<T>(1) ;
+        x.add(item) ;
+        return x ;
+    }
+
+    @Override
+    protected boolean hasNextBinding()
+    {
+        return iterator.hasNext() ;
+    }
+
+    @Override
+    protected Binding moveToNextBinding()
+    {
+        return iterator.next() ;
+    }
+    
+    @Override
+    protected void closeIterator()
+    {
+        iterator.close() ;
+    }
+
+    @Override
+    protected void requestCancel()
+    {
+        iterator.cancel() ;
+    }
+    
+    @Override
+    public void output(IndentedWriter out, SerializationContext sCxt)
+    { 
+        out.println(Utils.className(this)) ;
+        out.incIndent() ;
+        for ( Op op : ops )
+            op.output(out, sCxt) ;
+        out.decIndent() ;
+        out.ensureStartOfLine() ;
+    }
+    
+    /** One sub-operation and its input : evaluated when first used, on the thread that uses it. */
+    private class Branch implements Iterator<Binding>, Closeable
+    {
+        private final Op op ;
+        private final QueryIterator input ;
+        private volatile QueryIterator qIter = null ;
+        private volatile boolean cancelled = false ;
+        
+        Branch(Op op, QueryIterator input)
+        {
+            this.op = op ;
+            this.input = input ;
+        }
+        
+        private QueryIterator qIter()
+        {
+            if ( qIter == null )
+            {
+                qIter = QC.execute(op, input, getExecContext()) ;
+                if ( cancelled )
+                    qIter.cancel() ;
+            }
+            return qIter ;
+        }
+        
+        @Override
+        public boolean hasNext()        { return qIter().hasNext() ; }
+
+        @Override
+        public Binding next()           { return qIter().nextBinding() ; }
+
+        @Override
+        public void remove()            { throw new UnsupportedOperationException("QueryIterParallel.Branch.remove") ; }
+        
+        void cancel()
+        {
+            cancelled = true ;
+            QueryIterator x = qIter ;
+            if ( x != null )
+                x.cancel() ;
+        }
+
+        @Override
+        public void close()
+        {
+            if ( qIter != null )
+                qIter.close() ;
+            else
+                input.close() ;
+        }
+    }
+}
@@ -60,6 +60,8 @@ public final class StatsMatcher
     public static final String STATS    = "stats" ; 
     public static final String META     = "meta" ; 
     public static final String COUNT    = "count" ;
+    /** Characteristic sets (predicates that occur together on a subject) - not used for matching */
+    public static final String CHARSETS = "charsets" ;
     public static final Item OTHER      = Item.createSymbol("other") ;
     private static double NOMATCH       = -1 ;
     
@@ -128,6 +130,8 @@ public final class StatsMatcher
         {
             Item elt = list.car() ;
             list = list.cdr();
+            if ( elt.isTagged(CHARSETS) )
+                continue ;
             onePattern(elt) ;
         }
     }
@@ -159,7 +159,8 @@ public class DefaultDataBag<E> extends AbstractDataBag<E>
         closeWriter();
         
         // Create a new reader
-        if (policy.isThresholdExceeded())
+        // The policy may be exceeded without anything spilled (i.e. a zero count policy)
+        if (spilled)
         {
             File spillFile = getSpillFiles().get(0);
             
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.jena.atlas.iterator;
+
+import java.util.ArrayList ;
+import java.util.Iterator ;
+import java.util.List ;
+import java.util.NoSuchElementException ;
+import java.util.concurrent.* ;
+import java.util.concurrent.atomic.AtomicBoolean ;
+import java.util.concurrent.atomic.AtomicInteger ;
+
+import org.apache.jena.atlas.AtlasException ;
+import org.apache.jena.atlas.lib.Closeable ;
+
+/** Iterate over a number of iterators at once, each on a thread of a shared, bounded pool,
+ * merging their items through a bounded queue.  The order of the items is not defined.
+ * <p>
+ * A source that has not started on the pool by the time its items are needed is
+ * iterated on the calling thread instead, so a busy pool does not block the consumer.
+ * Code running on a pool thread should not start further parallel iteration : see {@link #isPoolThread()}.
+ * <p>
+ * An exception from a source is rethrown to the consumer.
+ * {@link #close()} stops the sources, waits for the pool threads to finish with them,
+ * and closes them.
+ */
+public class IteratorParallel<T> implements Iterator<T>, Closeable
+{
+    private static final int QueueSize = 1000 ;
+    // Wait for space in the queue this long before checking for cancellation.
+    private static final long OfferWait = 100 ;
+    
+    // Marks the end of a source.
+    private static final Object endMarker = new Object() ;
+    
+    private static final ThreadLocal<Boolean> poolThread = new ThreadLocal<Boolean>() ;
+    private static ThreadPoolExecutor pool = null ;
+    
+    private static synchronized ExecutorService pool()
+    {
+        if ( pool == null )
+        {
+            int n = Runtime.getRuntime().availableProcessors() ;
+            final AtomicInteger counter = new AtomicInteger(0) ;
+            ThreadFactory factory = new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "Atlas-parallel-"+counter.incrementAndGet()) ;
+                    t.setDaemon(true) ;
+                    return t ;
+                }
+            } ;
+            pool = new ThreadPoolExecutor(n, n, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), factory) ;
+            pool.allowCoreThreadTimeOut(true) ;
+        }
+        return pool ;
+    }
+    
+    /** Whether the current thread is one of the pool threads */
+    public static boolean isPoolThread()
+    {
+        return poolThread.get() != null ;
+    }
+    
+    private final List<Source> sources = new ArrayList<Source>() ;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(QueueSize) ;
+    // Sources that have not finished, excluding the one running here.
+    private int running ;
+    // A source being iterated on this thread.
+    private volatile Iterator<T> local = null ;
+    private Object slot = null ;
+    private boolean finished = false ;
+    private volatile boolean cancelled = false ;
+    private volatile Throwable error = null ;
+    
+    public IteratorParallel(List<? extends Iterator<T>> iterators)
+    {
+        for ( Iterator<T> iter : iterators )
+            sources.add(new Source(iter)) ;
+        running = sources.size() ;
+        ExecutorService executor = pool() ;
+        for ( Source source : sources )
+            source.future = executor.submit(source) ;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if ( slot != null )
+            return true ;
+        if ( finished )
+            return false ;
+        for ( ;; )
+        {
+            Object x = queue.poll() ;
+            if ( x == null && local == null )
+            {
+                // Nothing waiting : take over a source that has not started.
+                Source source = claimUnstarted() ;
+                if ( source != null )
+                {
+                    running-- ;
+                    local = source.iterator ;
+                }
+            }
+            if ( x == null && local != null )
+            {
+                if ( local.hasNext() )
+                {
+                    slot = local.next() ;
+                    return true ;
+                }
+                Iter.close(local) ;
+                local = null ;
+                continue ;
+            }
+            if ( x == null )
+            {
+                if ( running == 0 )
+                {
+                    close() ;
+                    return false ;
+                }
+                try { x = queue.take() ; }
+                catch (InterruptedException ex) { throw new AtlasException(ex) ; }
+            }
+            if ( x == endMarker )
+            {
+                running-- ;
+                checkError() ;
+                continue ;
+            }
+            slot = x ;
+            return true ;
+        }
+    }
+
+    @Override
+    public T next()
+    {
+        if ( ! hasNext() )
+            throw new NoSuchElementException("IteratorParallel") ;
+        @SuppressWarnings("unchecked")
+        T item = (T)slot ;
+        slot = null ;
+        return item ;
+    }
+
+    @Override
+    public void remove()
+    { throw new UnsupportedOperationException("IteratorParallel.remove") ; }
+    
+    private Source claimUnstarted()
+    {
+        for ( Source source : sources )
+        {
+            if ( source.claimed.compareAndSet(false, true) )
+            {
+                source.future.cancel(false) ;
+                return source ;
+            }
+        }
+        return null ;
+    }
+
+    private void checkError()
+    {
+        Throwable th = error ;
+        if ( th == null )
+            return ;
+        if ( th instanceof RuntimeException )
+            throw (RuntimeException)th ;
+        if ( th instanceof Error )
+            throw (Error)th ;
+        throw new AtlasException(th) ;
+    }
+    
+    /** Ask the sources to stop. Can be called from any thread.  The iterator must still be closed. */
+    public void cancel()
+    {
+        cancelled = true ;
+        for ( Source source : sources )
+        {
+            if ( source.started )
+                cancelSource(source.iterator) ;
+        }
+        Iterator<T> iter = local ;
+        if ( iter != null )
+            cancelSource(iter) ;
+    }
+    
+    /** Called, possibly from another thread, to stop a source that has started. */ 
+    protected void cancelSource(Iterator<T> iterator) {}
+    
+    @Override
+    public void close()
+    {
+        if ( finished )
+            return ;
+        finished = true ;
+        cancelled = true ;
+        slot = null ;
+        for ( Source source : sources )
+        {
+            if ( source.claimed.compareAndSet(false, true) )
+            {
+                // Never started.
+                source.future.cancel(false) ;
+                Iter.close(source.iterator) ;
+            }
+            else if ( source.started )
+                cancelSource(source.iterator) ;
+        }
+        if ( local != null )
+            Iter.close(local) ;
+        local = null ;
+        // Wait for the pool threads.
+        for ( Source source : sources )
+        {
+            try { source.future.get() ; }
+            catch (CancellationException ex) {}
+            catch (InterruptedException ex) {}
+            catch (ExecutionException ex) {}
+        }
+        queue.clear() ;
+    }
+    
+    /** One iterator, to be run once, on the pool or by the consumer. */
+    private class Source implements Runnable
+    {
+        final Iterator<T> iterator ;
+        final AtomicBoolean claimed = new AtomicBoolean(false) ;
+        // Running on the pool.
+        volatile boolean started = false ;
+        Future<?> future = null ;
+        
+        Source(Iterator<T> iterator)
+        {
+            this.iterator = iterator ;
+        }
+        
+        @Override
+        public void run()
+        {
+            if ( ! claimed.compareAndSet(false, true) )
+                return ;
+            started = true ;
+            poolThread.set(Boolean.TRUE) ;
+            try { produce() ; }
+            finally { poolThread.remove() ; }
+        }
+
+        private void produce()
+        {
+            try {
+                if ( cancelled )
+                    cancelSource(iterator) ;
+                while ( ! cancelled && iterator.hasNext() )
+                    send(iterator.next()) ;
+            } catch (Throwable th)
+            {
+                if ( ! cancelled && error == null )
+                    error = th ;
+            } finally
+            {
+                Iter.close(iterator) ;
+                send(endMarker) ;
+            }
+        }
+        
+        private void send(Object item)
+        {
+            try {
+                while ( ! queue.offer(item, OfferWait, TimeUnit.MILLISECONDS) )
+                {
+                    if ( cancelled )
+                        return ;
+                }
+            } catch (InterruptedException ex) {}
+        }
+    }
+}
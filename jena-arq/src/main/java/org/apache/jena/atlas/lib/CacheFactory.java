@@ -49,6 +49,15 @@ public class CacheFactory
         return createCacheWithGetter(cache, getter) ;
     }
 
+    /** Create a cache which has space for up to a certain number of objects
+     *  and which is safe for concurrent use.  Lookups do not lock.
+     *  The cache returns null for a cache miss.
+     */
+    public static <Key, Value> Cache<Key, Value> createConcurrentCache(int maxSize)
+    {
+        return new CacheConcurrent<Key, Value>(maxSize) ;
+    }
+
     /** Create a null cache */
     public static <Key, Value> Cache<Key, Value> createNullCache()
     {
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.atlas.lib.cache;
+
+import java.util.Iterator ;
+import java.util.Queue ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.ConcurrentLinkedQueue ;
+import java.util.concurrent.atomic.AtomicInteger ;
+
+import org.apache.jena.atlas.lib.ActionKeyValue ;
+import org.apache.jena.atlas.lib.Cache ;
+
+/**
+ * A bounded cache that is safe for concurrent use.
+ * Lookups do not take a lock; entries are marked as recently used.
+ * When the cache grows beyond its size, entries are evicted in
+ * insertion order, giving recently used entries a second chance (CLOCK).
+ * Only eviction is serialized.
+ */
+public class CacheConcurrent<K,V> implements Cache<K,V>
+{
+    private final int maxSize ;
+    private final ConcurrentHashMap<K, Entry<K,V>> map ;
+    // Eviction order.  May contain entries no longer in the map ("stale") - these are skipped.
+    private final Queue<Entry<K,V>> queue = new ConcurrentLinkedQueue<Entry<K,V>>() ;
+    private final AtomicInteger size = new AtomicInteger(0) ;
+    private final AtomicInteger stale = new AtomicInteger(0) ;
+    private final Object evictLock = new Object() ;
+    private volatile ActionKeyValue<K,V> dropHandler = null ;
+
+    public CacheConcurrent(int maxSize)
+    {
+        this.maxSize = Math.max(1, maxSize) ;
+        this.map = new ConcurrentHashMap<K, Entry<K,V>>(Math.min(this.maxSize, 1024)) ;
+    }
+
+    @Override
+    public boolean containsKey(K key)
+    {
+        return map.containsKey(key) ;
+    }
+
+    @Override
+    public V get(K key)
+    {
+        Entry<K,V> e = map.get(key) ;
+        if ( e == null )
+            return null ;
+        // Avoid writing a shared cache line if already marked. 
+        if ( ! e.referenced )
+            e.referenced = true ;
+        return e.value ;
+    }
+
+    @Override
+    public V put(K key, V thing)
+    {
+        if ( thing == null )
+        {
+            Entry<K,V> e = map.remove(key) ;
+            if ( e == null )
+                return null ;
+            removed() ;
+            return e.value ;
+        }
+        
+        Entry<K,V> e = new Entry<K,V>(key, thing) ;
+        Entry<K,V> old = map.putIfAbsent(key, e) ;
+        if ( old != null )
+        {
+            V v = old.value ;
+            old.value = thing ;
+            old.referenced = true ;
+            return v ;
+        }
+        queue.add(e) ;
+        if ( size.incrementAndGet() > maxSize )
+            evict(e) ;
+        return null ;
+    }
+
+    @Override
+    public boolean remove(K key)
+    {
+        Entry<K,V> e = map.remove(key) ;
+        if ( e == null )
+            return false ;
+        removed() ;
+        return true ;
+    }
+
+    @Override
+    public Iterator<K> keys()
+    {
+        return map.keySet().iterator() ;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return map.isEmpty() ;
+    }
+
+    @Override
+    public void clear()
+    {
+        synchronized(evictLock)
+        {
+            map.clear() ;
+            queue.clear() ;
+            size.set(0) ;
+            stale.set(0) ;
+        }
+    }
+
+    @Override
+    public long size()
+    {
+        return size.get() ;
+    }
+
+    /** Callback for entries when dropped from the cache */
+    @Override
+    public void setDropHandler(ActionKeyValue<K,V> dropHandler)
+    {
+        this.dropHandler = dropHandler ;
+    }
+    
+    private void removed()
+    {
+        size.decrementAndGet() ;
+        // Purge the eviction queue from time to time when entries are removed explicitly.
+        if ( stale.incrementAndGet() > maxSize )
+        {
+            synchronized(evictLock)
+            {
+                if ( stale.get() <= maxSize )
+                    return ;
+                Iterator<Entry<K,V>> iter = queue.iterator() ;
+                while ( iter.hasNext() )
+                {
+                    Entry<K,V> e = iter.next() ;
+                    if ( map.get(e.key) != e )
+                        iter.remove() ;
+                }
+                stale.set(0) ;
+            }
+        }
+    }
+
+    // The entry just added is not a candidate. 
+    private void evict(Entry<K,V> added)
+    {
+        synchronized(evictLock)
+        {
+            while ( size.get() > maxSize )
+            {
+                Entry<K,V> e = queue.poll() ;
+                if ( e == null )
+                    return ;
+                if ( map.get(e.key) != e )
+                    continue ;
+                if ( e.referenced || e == added )
+                {
+                    // Second chance.
+                    e.referenced = false ;
+                    queue.add(e) ;
+                    continue ;
+                }
+                if ( map.remove(e.key, e) )
+                {
+                    size.decrementAndGet() ;
+                    ActionKeyValue<K,V> handler = dropHandler ;
+                    if ( handler != null )
+                        handler.apply(e.key, e.value) ;
+                }
+            }
+        }
+    }
+
+    private static final class Entry<K,V>
+    {
+        final K key ;
+        volatile V value ;
+        volatile boolean referenced = false ;
+        Entry(K key, V value) { this.key = key ; this.value = value ; }
+    }
+}
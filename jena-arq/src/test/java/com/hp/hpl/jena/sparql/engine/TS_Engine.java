@@ -22,15 +22,25 @@ import org.junit.runner.RunWith ;
 import org.junit.runners.Suite ;
 
 import com.hp.hpl.jena.sparql.engine.binding.TestBindingStreams ;
+import com.hp.hpl.jena.sparql.engine.block.TestBindingBlock ;
+import com.hp.hpl.jena.sparql.engine.block.TestQueryIterBlocks ;
 import com.hp.hpl.jena.sparql.engine.http.TestQueryEngineHTTP ;
 import com.hp.hpl.jena.sparql.engine.http.TestService ;
+import com.hp.hpl.jena.sparql.engine.iterator.TestQueryIterGroup ;
 import com.hp.hpl.jena.sparql.engine.iterator.TestQueryIterSort ;
+import com.hp.hpl.jena.sparql.engine.main.iterator.TestQueryIterHashJoin ;
+import com.hp.hpl.jena.sparql.engine.main.iterator.TestQueryIterParallel ;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses( {
         TestBindingStreams.class
       , TestTableLib.class
       , TestQueryIterSort.class
+      , TestQueryIterGroup.class
+      , TestQueryIterHashJoin.class
+      , TestQueryIterParallel.class
+      , TestBindingBlock.class
+      , TestQueryIterBlocks.class
       , TestService.class
       , TestQueryEngineHTTP.class
       , TestQueryEngineMultiThreaded.class
@@ -91,6 +91,8 @@ public class TestBindingStreams extends BaseTest
     @Test public void bindingStream_50()        { testWriteRead(b12) ; }
     @Test public void bindingStream_51()        { testWriteRead(b0) ; }
     @Test public void bindingStream_52()        { testWriteRead(pmap, b12,x10,b19) ; }
+    // Later rows have more variables.
+    @Test public void bindingStream_53()        { testWriteRead(b10,b12,b02,b19) ; }
     
     @Test public void bindingStream_60()              { testWriteRead(bb1) ; }
     
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.block;
+
+import java.util.ArrayList ;
+import java.util.Arrays ;
+import java.util.HashSet ;
+import java.util.List ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.sse.SSE ;
+import com.hp.hpl.jena.sparql.sse.builders.BuilderBinding ;
+
+public class TestBindingBlock extends BaseTest
+{
+    static Binding b1 = build("(?a 1) (?b 2)") ;
+    static Binding b2 = build("(?a 3)") ;
+    static Binding b3 = build("(?b 4) (?c 5)") ;
+    static Binding b4 = build("") ;
+    
+    static Var a = Var.alloc("a") ;
+    static Var b = Var.alloc("b") ;
+    static Var c = Var.alloc("c") ;
+    
+    private static Binding build(String string)
+    {
+        return BuilderBinding.build(SSE.parse("(binding "+string+")")) ;
+    }
+    
+    private static BindingBlock block(Binding... bindings)
+    {
+        BindingBlock block = new BindingBlock(4) ;
+        for ( Binding x : bindings )
+            block.add(x) ;
+        return block ;
+    }
+    
+    private static List<Binding> rows(BindingBlock block)
+    {
+        List<Binding> x = new ArrayList<Binding>() ;
+        for ( int i = 0 ; i < block.size() ; i++ )
+            x.add(block.binding(i)) ;
+        return x ;
+    }
+    
+    @Test public void bindingBlock_01()
+    {
+        BindingBlock block = block(b1, b2, b3, b4) ;
+        assertEquals(4, block.size()) ;
+        assertTrue(block.isFull()) ;
+        assertEquals(new HashSet<Var>(Arrays.asList(a, b, c)), new HashSet<Var>(block.getVars())) ;
+        assertEquals(Arrays.asList(b1, b2, b3, b4), rows(block)) ;
+    }
+    
+    @Test(expected=Exception.class)
+    public void bindingBlock_02()
+    {
+        BindingBlock block = block(b1, b2, b3, b4) ;
+        block.add(b1) ;
+    }
+
+    @Test public void bindingBlock_03()
+    {
+        BindingBlock block = block(b1, b2, b3, b4) ;
+        block.retain(new boolean[]{false, true, true, false}) ;
+        assertEquals(2, block.size()) ;
+        assertEquals(Arrays.asList(b2, b3), rows(block)) ;
+        // Cleared
+        assertNull(block.get(2, block.column(b))) ;
+    }
+    
+    @Test public void bindingBlock_04()
+    {
+        BindingBlock block = block(b1, b2, b3) ;
+        block.project(Arrays.asList(c, b)) ;
+        assertEquals(Arrays.asList(c, b), block.getVars()) ;
+        assertEquals(-1, block.column(a)) ;
+        List<Binding> x = rows(block) ;
+        assertEquals(build("(?b 2)"), x.get(0)) ;
+        assertEquals(build(""), x.get(1)) ;
+        assertEquals(b3, x.get(2)) ;
+    }
+    
+    @Test public void bindingBlock_05()
+    {
+        BindingBlock block = block(b1, b2, b3) ;
+        BindingBlock.Row row = block.row() ;
+        row.setRow(0) ;
+        assertEquals(b1, row) ;
+        assertEquals(2, row.size()) ;
+        assertFalse(row.contains(c)) ;
+        row.setRow(2) ;
+        assertEquals(b3, row) ;
+        assertNull(row.get(a)) ;
+        assertEquals(b3.get(c), row.get(c)) ;
+    }
+
+    @Test public void bindingBlock_06()
+    {
+        BindingBlock block = block(b2) ;
+        int col = block.addColumn(c) ;
+        assertEquals(col, block.addColumn(c)) ;
+        assertEquals(b2, block.binding(0)) ;
+        block.set(0, col, SSE.parseNode("'x'")) ;
+        assertEquals(build("(?a 3) (?c 'x')"), block.binding(0)) ;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.block;
+
+import java.util.ArrayList ;
+import java.util.List ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Graph ;
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.NodeFactory ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.query.* ;
+import com.hp.hpl.jena.sparql.core.DatasetGraph ;
+import com.hp.hpl.jena.sparql.core.DatasetGraphFactory ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.QueryIterator ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory ;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper ;
+import com.hp.hpl.jena.sparql.engine.main.QC ;
+import com.hp.hpl.jena.sparql.expr.Expr ;
+import com.hp.hpl.jena.sparql.graph.GraphFactory ;
+import com.hp.hpl.jena.sparql.resultset.ResultSetCompare ;
+import com.hp.hpl.jena.sparql.sse.SSE ;
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
+
+public class TestQueryIterBlocks extends BaseTest
+{
+    private static final String PREFIX = "PREFIX : <http://example/> " ; 
+    private static final DatasetGraph dsg = data(1000) ;
+    
+    // :sN :p N ; :q N%7 ; :r N%10 (N even)
+    private static DatasetGraph data(int N)
+    {
+        Graph graph = GraphFactory.createDefaultGraph() ;
+        Node p = NodeFactory.createURI("http://example/p") ;
+        Node q = NodeFactory.createURI("http://example/q") ;
+        Node r = NodeFactory.createURI("http://example/r") ;
+        for ( int i = 0 ; i < N ; i++ )
+        {
+            Node s = NodeFactory.createURI("http://example/s"+i) ;
+            graph.add(new Triple(s, p, NodeFactoryExtra.intToNode(i))) ;
+            graph.add(new Triple(s, q, NodeFactoryExtra.intToNode(i%7))) ;
+            if ( i%2 == 0 )
+                graph.add(new Triple(s, r, NodeFactoryExtra.intToNode(i%10))) ;
+        }
+        return DatasetGraphFactory.create(graph) ;
+    }
+    
+    private static ResultSetRewindable exec(String queryString, boolean blocks)
+    {
+        Query query = QueryFactory.create(PREFIX+queryString) ;
+        QueryExecution qExec = QueryExecutionFactory.create(query, DatasetFactory.create(dsg)) ;
+        qExec.getContext().set(ARQ.blockExecution, blocks) ;
+        try {
+            return ResultSetFactory.makeRewindable(qExec.execSelect()) ;
+        } finally { qExec.close() ; }
+    }
+    
+    private static void test(String queryString)
+    {
+        ResultSetRewindable expected = exec(queryString, false) ;
+        ResultSetRewindable results = exec(queryString, true) ;
+        assertEquals(expected.size(), results.size()) ;
+        expected.reset() ;
+        // Filter, extend and project keep the order.
+        assertTrue(ResultSetCompare.equalsByTermAndOrder(expected, results)) ;
+    }
+    
+    @Test public void blocks_filter_01()    { test("SELECT * { ?s :p ?o FILTER(?o < 300) }") ; }
+
+    @Test public void blocks_filter_02()    { test("SELECT * { ?s :p ?o FILTER(?o < 300) FILTER(?o > 100) }") ; }
+
+    @Test public void blocks_filter_03()    { test("SELECT * { ?s :p ?o OPTIONAL { ?s :r ?r } FILTER(!bound(?r)) }") ; }
+
+    // Evaluation errors.
+    @Test public void blocks_filter_04()    { test("SELECT * { ?s :p ?o OPTIONAL { ?s :r ?r } FILTER(?r > 3) }") ; }
+
+    @Test public void blocks_filter_05()    { test("SELECT * { ?s :p ?o FILTER(?o < 0) }") ; }
+
+    @Test public void blocks_extend_01()    { test("SELECT * { ?s :p ?o BIND(?o+1 AS ?z) }") ; }
+
+    @Test public void blocks_extend_02()    { test("SELECT * { ?s :p ?o OPTIONAL { ?s :r ?r } BIND(?r*2 AS ?z) BIND(?z+?o AS ?w) }") ; }
+
+    @Test public void blocks_extend_03()    { test("SELECT ?s (?o*2 AS ?x) { ?s :p ?o ; :q ?q }") ; }
+
+    @Test public void blocks_project_01()   { test("SELECT ?s { ?s :p ?o }") ; }
+
+    @Test public void blocks_project_02()   { test("SELECT ?o ?s { ?s :p ?o ; :q ?q BIND(?o+?q AS ?z) FILTER(?z > 500) }") ; }
+
+    @Test public void blocks_project_03()   { test("SELECT * { { SELECT ?s { ?s :q 3 } } ?s :p ?o }") ; }
+
+    @Test public void blocks_order_01()     { test("SELECT ?s ?z { ?s :p ?o BIND(-?o AS ?z) } ORDER BY ?z LIMIT 20") ; }
+
+    private static ExecutionContext execCxt()
+    {
+        Context context = new Context() ;
+        return new ExecutionContext(context, dsg.getDefaultGraph(), dsg, QC.getFactory(context)) ;
+    }
+    
+    private static QueryIterator input(int N, ExecutionContext execCxt)
+    {
+        List<Binding> x = new ArrayList<Binding>() ;
+        for ( int i = 0 ; i < N ; i++ )
+            x.add(BindingFactory.binding(Var.alloc("x"), NodeFactoryExtra.intToNode(i))) ;
+        return new QueryIterPlainWrapper(x.iterator(), execCxt) ;
+    }
+    
+    @Test public void blocks_iter_01()
+    {
+        // Steps are joined up in block form.
+        ExecutionContext execCxt = execCxt() ;
+        Expr expr = SSE.parseExpr("(>= ?x 100)") ;
+        QueryIterator qIter1 = new QueryIterBlocks(new BlockIterFilter(QueryIterBlocks.blocks(input(1000, execCxt)), expr, execCxt), execCxt) ;
+        BlockIterator blocks = QueryIterBlocks.blocks(qIter1) ;
+        QueryIterator qIter2 = new QueryIterBlocks(new BlockIterFilter(blocks, SSE.parseExpr("(< ?x 150)"), execCxt), execCxt) ;
+        int count = 0 ;
+        while ( qIter2.hasNext() )
+        {
+            qIter2.next() ;
+            count++ ;
+        }
+        qIter2.close() ;
+        assertEquals(50, count) ;
+        assertFalse(execCxt.listOpenIterators().hasNext()) ;
+    }
+
+    @Test public void blocks_iter_02()
+    {
+        ExecutionContext execCxt = execCxt() ;
+        QueryIterator qIter = new QueryIterBlocks(QueryIterBlocks.blocks(input(1000, execCxt)), execCxt) ;
+        qIter.next() ;
+        qIter.close() ;
+        assertFalse(execCxt.listOpenIterators().hasNext()) ;
+    }
+    
+    @Test(expected=QueryCancelledException.class)
+    public void blocks_iter_03()
+    {
+        ExecutionContext execCxt = execCxt() ;
+        QueryIterator qIter = new QueryIterBlocks(QueryIterBlocks.blocks(input(1000, execCxt)), execCxt) ;
+        qIter.next() ;
+        qIter.cancel() ;
+        qIter.next() ;
+    }
+}
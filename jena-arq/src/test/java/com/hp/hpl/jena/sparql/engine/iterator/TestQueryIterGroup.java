@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.iterator;
+
+import java.util.ArrayList ;
+import java.util.Collections ;
+import java.util.List ;
+import java.util.Random ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Graph ;
+import com.hp.hpl.jena.query.ARQ ;
+import com.hp.hpl.jena.sparql.core.DatasetGraph ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.core.VarExprList ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.QueryIterator ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory ;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap ;
+import com.hp.hpl.jena.sparql.engine.main.OpExecutorFactory ;
+import com.hp.hpl.jena.sparql.expr.ExprAggregator ;
+import com.hp.hpl.jena.sparql.expr.ExprVar ;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggregatorFactory ;
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
+
+public class TestQueryIterGroup extends BaseTest
+{
+    private static final Var x = Var.alloc("x") ;
+    private static final Var y = Var.alloc("y") ;
+    private static final Var c = Var.alloc("c") ;
+    private static final Var s = Var.alloc("s") ;
+    private static final Var d = Var.alloc("d") ;
+    
+    private static List<Binding> rows(int N, int range)
+    {
+        Random random = new Random(N+range) ;
+        List<Binding> rows = new ArrayList<Binding>() ;
+        for ( int i = 0 ; i < N ; i++ )
+        {
+            BindingMap b = BindingFactory.create() ;
+            // Some rows are in the unbound group.
+            if ( random.nextInt(20) != 0 )
+                b.add(x, NodeFactoryExtra.intToNode(random.nextInt(range))) ;
+            b.add(y, NodeFactoryExtra.intToNode(random.nextInt(5))) ;
+            rows.add(b) ;
+        }
+        return rows ;
+    }
+    
+    private static List<ExprAggregator> aggregators()
+    {
+        List<ExprAggregator> aggregators = new ArrayList<ExprAggregator>() ;
+        aggregators.add(new ExprAggregator(c, AggregatorFactory.createCount(false))) ;
+        aggregators.add(new ExprAggregator(s, AggregatorFactory.createSum(false, new ExprVar(y)))) ;
+        aggregators.add(new ExprAggregator(d, AggregatorFactory.createCountExpr(true, new ExprVar(y)))) ;
+        return aggregators ;
+    }
+
+    private static ExecutionContext execCxt(long threshold)
+    {
+        Context context = new Context() ;
+        if ( threshold >= 0 )
+            context.set(ARQ.spillToDiskThreshold, threshold) ;
+        return new ExecutionContext(context, (Graph)null, (DatasetGraph)null, (OpExecutorFactory)null) ;
+    }
+    
+    private static List<String> strings(QueryIterator qIter)
+    {
+        List<String> x = new ArrayList<String>() ;
+        while ( qIter.hasNext() )
+            x.add(qIter.nextBinding().toString()) ;
+        qIter.close() ;
+        Collections.sort(x) ;
+        return x ;
+    }
+    
+    private static QueryIterGroup group(List<Binding> rows, List<ExprAggregator> aggregators, ExecutionContext execCxt)
+    {
+        VarExprList groupVars = new VarExprList() ;
+        groupVars.add(x) ;
+        return new QueryIterGroup(new QueryIterPlainWrapper(rows.iterator(), execCxt), groupVars, aggregators, execCxt) ;
+    }
+    
+    private static void test(int N, int range, List<ExprAggregator> aggregators, long threshold, boolean spills)
+    {
+        List<Binding> rows = rows(N, range) ;
+        List<String> expected = strings(group(rows, aggregators, execCxt(-1))) ;
+        
+        QueryIterGroup qIter = group(rows, aggregators, execCxt(threshold)) ;
+        qIter.hasNext() ;
+        assertEquals(spills, qIter.isSpilled()) ;
+        List<String> results = strings(qIter) ;
+        assertEquals(expected, results) ;
+        assertFalse(qIter.isSpilled()) ;
+    }
+    
+    @Test public void group_01()    { test(100, 20, aggregators(), -1, false) ; }
+    @Test public void group_02()    { test(100, 20, aggregators(), 1000, false) ; }
+    @Test public void group_03()    { test(0, 20, aggregators(), 1, false) ; }
+    @Test public void group_04()    { test(0, 20, null, 1, false) ; }
+    
+    // Spill to disk.
+    @Test public void group_spill_01()  { test(100, 20, aggregators(), 5, true) ; }
+    @Test public void group_spill_02()  { test(1000, 500, aggregators(), 10, true) ; }
+    @Test public void group_spill_03()  { test(1000, 500, null, 10, true) ; }
+    // Every level spills, down to the last.
+    @Test public void group_spill_04()  { test(2000, 2000, aggregators(), 1, true) ; }
+}
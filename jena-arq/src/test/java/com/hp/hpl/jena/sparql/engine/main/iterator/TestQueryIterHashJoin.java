@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.main.iterator;
+
+import java.util.ArrayList ;
+import java.util.Arrays ;
+import java.util.Collections ;
+import java.util.List ;
+import java.util.Random ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Graph ;
+import com.hp.hpl.jena.query.ARQ ;
+import com.hp.hpl.jena.sparql.algebra.JoinType ;
+import com.hp.hpl.jena.sparql.algebra.TableFactory ;
+import com.hp.hpl.jena.sparql.core.DatasetGraph ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.QueryIterator ;
+import com.hp.hpl.jena.sparql.engine.TableJoin ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory ;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap ;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper ;
+import com.hp.hpl.jena.sparql.engine.main.OpExecutorFactory ;
+import com.hp.hpl.jena.sparql.expr.ExprList ;
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.sparql.util.ExprUtils ;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
+
+public class TestQueryIterHashJoin extends BaseTest
+{
+    private static final Var x = Var.alloc("x") ;
+    private static final Var y = Var.alloc("y") ;
+    private static final Var z = Var.alloc("z") ;
+    private static final List<Var> joinVars = Arrays.asList(x) ;
+    
+    // Rows bind ?x (mostly) and one other variable.
+    private static List<Binding> rows(Random random, int N, Var other, int range)
+    {
+        List<Binding> rows = new ArrayList<Binding>() ;
+        for ( int i = 0 ; i < N ; i++ )
+        {
+            BindingMap b = BindingFactory.create() ;
+            if ( random.nextInt(20) != 0 )
+                b.add(x, NodeFactoryExtra.intToNode(random.nextInt(range))) ;
+            b.add(other, NodeFactoryExtra.intToNode(random.nextInt(5))) ;
+            rows.add(b) ;
+        }
+        return rows ;
+    }
+    
+    private static ExecutionContext execCxt(long threshold)
+    {
+        Context context = new Context() ;
+        if ( threshold >= 0 )
+            context.set(ARQ.spillToDiskThreshold, threshold) ;
+        return new ExecutionContext(context, (Graph)null, (DatasetGraph)null, (OpExecutorFactory)null) ;
+    }
+    
+    private static QueryIterator iter(List<Binding> rows, ExecutionContext execCxt)
+    {
+        return new QueryIterPlainWrapper(rows.iterator(), execCxt) ;
+    }
+    
+    private static List<String> strings(QueryIterator qIter)
+    {
+        List<String> x = new ArrayList<String>() ;
+        while ( qIter.hasNext() )
+            x.add(qIter.nextBinding().toString()) ;
+        qIter.close() ;
+        Collections.sort(x) ;
+        return x ;
+    }
+    
+    private static void test(int leftSize, int rightSize, int range, JoinType joinType, String condition, long threshold, boolean spills)
+    {
+        Random random = new Random(leftSize+rightSize+range) ;
+        List<Binding> left = rows(random, leftSize, y, range) ;
+        List<Binding> right = rows(random, rightSize, z, range) ;
+        ExprList exprs = ( condition == null ) ? null : new ExprList(ExprUtils.parse(condition)) ;
+        
+        ExecutionContext execCxt = execCxt(threshold) ;
+        List<String> expected = strings(TableJoin.joinWorker(iter(left, execCxt), TableFactory.create(iter(right, execCxt)), joinType, exprs, execCxt)) ;
+        
+        QueryIterHashJoinBase qIter = ( joinType == JoinType.PLAIN )
+            ? new QueryIterHashJoin(iter(left, execCxt), iter(right, execCxt), joinVars, execCxt)
+            : new QueryIterHashLeftJoin(iter(left, execCxt), iter(right, execCxt), joinVars, exprs, execCxt) ;
+        qIter.hasNext() ;
+        assertEquals(spills, qIter.isSpilled()) ;
+        assertEquals(expected, strings(qIter)) ;
+    }
+    
+    @Test public void hashJoin_01()     { test(100, 100, 20, JoinType.PLAIN, null, -1, false) ; }
+    @Test public void hashJoin_02()     { test(100, 100, 20, JoinType.LEFT, null, -1, false) ; }
+    @Test public void hashJoin_03()     { test(100, 100, 20, JoinType.LEFT, "?y < ?z", -1, false) ; }
+    @Test public void hashJoin_04()     { test(10, 0, 20, JoinType.PLAIN, null, -1, false) ; }
+    @Test public void hashJoin_05()     { test(10, 0, 20, JoinType.LEFT, null, -1, false) ; }
+    @Test public void hashJoin_06()     { test(0, 10, 20, JoinType.LEFT, null, -1, false) ; }
+    
+    // Spill to disk.
+    @Test public void hashJoin_10()     { test(500, 500, 100, JoinType.PLAIN, null, 50, true) ; }
+    @Test public void hashJoin_11()     { test(500, 500, 100, JoinType.LEFT, null, 50, true) ; }
+    @Test public void hashJoin_12()     { test(500, 500, 100, JoinType.LEFT, "?y < ?z", 50, true) ; }
+    @Test public void hashJoin_13()     { test(500, 10, 1000, JoinType.LEFT, null, 1000, false) ; }
+    // Few keys : some partitions are empty.
+    @Test public void hashJoin_14()     { test(100, 100, 3, JoinType.LEFT, null, 5, true) ; }
+}
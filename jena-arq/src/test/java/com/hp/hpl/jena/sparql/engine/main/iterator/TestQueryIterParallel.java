@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.sparql.engine.main.iterator;
+
+import java.util.ArrayList ;
+import java.util.Collections ;
+import java.util.Iterator ;
+import java.util.List ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Graph ;
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.NodeFactory ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.query.* ;
+import com.hp.hpl.jena.sparql.algebra.Op ;
+import com.hp.hpl.jena.sparql.core.DatasetGraph ;
+import com.hp.hpl.jena.sparql.core.DatasetGraphFactory ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.QueryIterator ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper ;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRoot ;
+import com.hp.hpl.jena.sparql.engine.main.QC ;
+import com.hp.hpl.jena.sparql.graph.GraphFactory ;
+import com.hp.hpl.jena.sparql.sse.SSE ;
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
+
+public class TestQueryIterParallel extends BaseTest
+{
+    private static final String PREFIX = "PREFIX : <http://example/> " ; 
+    private static final DatasetGraph dsg = data(3000) ;
+    
+    // :sN :p N ; :q N%7 ; :r N%10 (N even)
+    private static DatasetGraph data(int N)
+    {
+        Graph graph = GraphFactory.createDefaultGraph() ;
+        Node p = NodeFactory.createURI("http://example/p") ;
+        Node q = NodeFactory.createURI("http://example/q") ;
+        Node r = NodeFactory.createURI("http://example/r") ;
+        for ( int i = 0 ; i < N ; i++ )
+        {
+            Node s = NodeFactory.createURI("http://example/s"+i) ;
+            graph.add(new Triple(s, p, NodeFactoryExtra.intToNode(i))) ;
+            graph.add(new Triple(s, q, NodeFactoryExtra.intToNode(i%7))) ;
+            if ( i%2 == 0 )
+                graph.add(new Triple(s, r, NodeFactoryExtra.intToNode(i%10))) ;
+        }
+        return DatasetGraphFactory.create(graph) ;
+    }
+    
+    private static List<String> exec(String queryString, boolean parallel)
+    {
+        Query query = QueryFactory.create(PREFIX+queryString) ;
+        QueryExecution qExec = QueryExecutionFactory.create(query, DatasetFactory.create(dsg)) ;
+        qExec.getContext().set(ARQ.parallelExecution, parallel) ;
+        List<String> x = new ArrayList<String>() ;
+        try {
+            ResultSet rs = qExec.execSelect() ;
+            while ( rs.hasNext() )
+                x.add(rs.nextBinding().toString()) ;
+        } finally { qExec.close() ; }
+        Collections.sort(x) ;
+        return x ;
+    }
+    
+    private static void test(String queryString)
+    {
+        List<String> expected = exec(queryString, false) ;
+        List<String> results = exec(queryString, true) ;
+        assertFalse(expected.isEmpty()) ;
+        assertEquals(expected, results) ;
+    }
+    
+    private static ExecutionContext execCxt()
+    {
+        return execCxt(true) ;
+    }
+
+    private static ExecutionContext execCxt(boolean parallel)
+    {
+        Context context = new Context() ;
+        context.set(ARQ.parallelExecution, parallel) ;
+        return new ExecutionContext(context, dsg.getDefaultGraph(), dsg, QC.getFactory(context)) ;
+    }
+    
+    private static List<String> execOp(Op op, boolean parallel)
+    {
+        ExecutionContext execCxt = execCxt(parallel) ;
+        QueryIterator qIter = QC.execute(op, QueryIterRoot.create(execCxt), execCxt) ;
+        List<String> x = new ArrayList<String>() ;
+        while ( qIter.hasNext() )
+            x.add(qIter.nextBinding().toString()) ;
+        qIter.close() ;
+        Collections.sort(x) ;
+        return x ;
+    }
+    
+    private static void testOp(String opString)
+    {
+        Op op = SSE.parseOp("(prefix ((: <http://example/>)) "+opString+")") ;
+        List<String> expected = execOp(op, false) ;
+        List<String> results = execOp(op, true) ;
+        assertFalse(expected.isEmpty()) ;
+        assertEquals(expected, results) ;
+    }
+
+    @Test public void parallel_union_01()
+    { test("SELECT * { { ?s :p ?o } UNION { ?s :q ?o } }") ; }
+
+    @Test public void parallel_union_02()
+    { test("SELECT * { { ?s :p ?o } UNION { ?s :q ?o } UNION { ?s :r ?o } UNION { ?s :q 3 } }") ; }
+
+    // Nested, and with empty arms.
+    @Test public void parallel_union_03()
+    { test("SELECT * { { ?s :p ?o } UNION { { ?s :q ?o } UNION { ?s :r 99 } } UNION { ?s :nothing ?o } }") ; }
+
+    @Test public void parallel_union_04()
+    { test("SELECT (count(*) AS ?c) { ?s :r 4 { ?s :p ?o } UNION { ?s :q ?o } }") ; }
+
+    // Joins are tested on the algebra : the optimizer turns many joins into sequences.
+    @Test public void parallel_join_01()
+    { testOp("(join (bgp (?s :r 4)) (bgp (?s :q ?o)))") ; }
+
+    @Test public void parallel_join_02()
+    { testOp("(leftjoin (bgp (?s :q 3)) (bgp (?s :r ?o)))") ; }
+
+    @Test public void parallel_join_03()
+    { testOp("(join (bgp (?s :q 3)) (bgp (?s2 :p 8)))") ; }
+
+    @Test public void parallel_join_04()
+    { testOp("(join (union (bgp (?s :r 4)) (bgp (?s :r 6))) (leftjoin (bgp (?s :q ?o)) (bgp (?s :r ?r))))") ; }
+
+    @Test public void parallel_enabled_01()
+    {
+        assertTrue(QueryIterParallel.isEnabled(execCxt(true))) ;
+        assertFalse(QueryIterParallel.isEnabled(execCxt(false))) ;
+    }
+    
+    @Test public void parallel_enabled_02()
+    {
+        // A dataset that does not support concurrent readers.
+        DatasetGraph dsg1 = DatasetGraphFactory.create(dsg.getDefaultGraph()) ;
+        dsg1.getContext().set(ARQ.singleThreadedDataset, true) ;
+        Context context = new Context() ;
+        context.set(ARQ.parallelExecution, true) ;
+        ExecutionContext execCxt = new ExecutionContext(context, dsg1.getDefaultGraph(), dsg1, QC.getFactory(context)) ;
+        assertFalse(QueryIterParallel.isEnabled(execCxt)) ;
+    }
+
+    @Test public void parallel_close_01()
+    {
+        ExecutionContext execCxt = execCxt() ;
+        List<Op> ops = new ArrayList<Op>() ;
+        List<QueryIterator> inputs = new ArrayList<QueryIterator>() ;
+        for ( int i = 0 ; i < 4 ; i++ )
+        {
+            ops.add(SSE.parseOp("(bgp (?s <http://example/p> ?o))")) ;
+            inputs.add(QueryIterRoot.create(execCxt)) ;
+        }
+        QueryIterator qIter = new QueryIterParallel(ops, inputs, execCxt) ;
+        assertTrue(qIter.hasNext()) ;
+        qIter.nextBinding() ;
+        qIter.close() ;
+        // Closing waits for the branches, which close their iterators.
+        assertFalse(execCxt.listOpenIterators().hasNext()) ;
+    }
+    
+    @Test(expected=QueryCancelledException.class)
+    public void parallel_cancel_01()
+    {
+        ExecutionContext execCxt = execCxt() ;
+        Op op = SSE.parseOp("(bgp (?s <http://example/p> ?o))") ;
+        QueryIterator qIter = new QueryIterParallel(op, QueryIterRoot.create(execCxt), execCxt) ;
+        try {
+            assertTrue(qIter.hasNext()) ;
+            qIter.cancel() ;
+            qIter.hasNext() ;
+        } finally { qIter.close() ; }
+    }
+
+    @Test(expected=QueryExecException.class)
+    public void parallel_error_01()
+    {
+        ExecutionContext execCxt = execCxt() ;
+        Iterator<Binding> bad = new Iterator<Binding>() {
+            @Override public boolean hasNext()  { throw new QueryExecException("Bad input") ; }
+            @Override public Binding next()     { return null ; }
+            @Override public void remove()      {}
+        } ;
+        Op op = SSE.parseOp("(bgp (?s <http://example/p> ?o))") ;
+        QueryIterator qIter = new QueryIterParallel(op, new QueryIterPlainWrapper(bad, execCxt), execCxt) ;
+        try {
+            while ( qIter.hasNext() )
+                qIter.nextBinding() ;
+        } finally { qIter.close() ; }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.jena.atlas.iterator;
+
+import java.util.* ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.junit.Test ;
+
+public class TestIteratorParallel extends BaseTest
+{
+    private static List<Integer> ints(int start, int finish)
+    {
+        List<Integer> x = new ArrayList<Integer>() ;
+        for ( int i = start ; i < finish ; i++ )
+            x.add(i) ;
+        return x ;
+    }
+    
+    private static List<Iterator<Integer>> sources(int n, int size)
+    {
+        List<Iterator<Integer>> x = new ArrayList<Iterator<Integer>>() ;
+        for ( int i = 0 ; i < n ; i++ )
+            x.add(ints(i*size, (i+1)*size).iterator()) ;
+        return x ;
+    }
+    
+    @Test public void iterParallel_01()
+    {
+        IteratorParallel<Integer> iter = new IteratorParallel<Integer>(new ArrayList<Iterator<Integer>>()) ;
+        assertFalse(iter.hasNext()) ;
+        iter.close() ;
+    }
+
+    @Test public void iterParallel_02()     { test(1, 10) ; }
+    
+    @Test public void iterParallel_03()     { test(4, 0) ; }
+
+    @Test public void iterParallel_04()     { test(8, 5000) ; }
+
+    @Test public void iterParallel_05()
+    {
+        // Stop part way through.
+        IteratorParallel<Integer> iter = new IteratorParallel<Integer>(sources(8, 5000)) ;
+        for ( int i = 0 ; i < 10 ; i++ )
+            iter.next() ;
+        iter.close() ;
+        assertFalse(iter.hasNext()) ;
+    }
+    
+    @Test(expected=IllegalStateException.class)
+    public void iterParallel_06()
+    {
+        List<Iterator<Integer>> sources = sources(4, 1000) ;
+        Iterator<Integer> bad = new IteratorSlotted<Integer>() {
+            @Override protected Integer moveToNext()    { throw new IllegalStateException() ; }
+            @Override protected boolean hasMore()       { return true ; }
+        } ;
+        sources.add(bad) ;
+        IteratorParallel<Integer> iter = new IteratorParallel<Integer>(sources) ;
+        try { Iter.count(iter) ; }
+        finally { iter.close() ; }
+    }
+
+    private static void test(int n, int size)
+    {
+        IteratorParallel<Integer> iter = new IteratorParallel<Integer>(sources(n, size)) ;
+        List<Integer> x = Iter.toList(iter) ;
+        iter.close() ;
+        assertEquals(n*size, x.size()) ;
+        Collections.sort(x) ;
+        assertEquals(ints(0, n*size), x) ;
+    }
+}
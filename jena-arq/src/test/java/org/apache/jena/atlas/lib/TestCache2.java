@@ -80,4 +80,50 @@ public class TestCache2 extends BaseTest
     }
 
 
+
+    // Concurrent cache : stays bounded, recently used entries survive.
+    @Test public void cacheConcurrent_1()
+    {
+        Cache<Integer, String> cache = CacheFactory.createConcurrentCache(10) ;
+        cache.put(0, "0") ;
+        for ( int i = 1 ; i < 100 ; i++ )
+        {
+            cache.get(0) ;
+            cache.put(i, Integer.toString(i)) ;
+            assertTrue(cache.size() <= 10) ;
+        }
+        assertEquals("0", cache.get(0)) ;
+        assertEquals("99", cache.get(99)) ;
+    }
+
+    @Test public void cacheConcurrent_2() throws InterruptedException
+    {
+        final Cache<Integer, Integer> cache = CacheFactory.createConcurrentCache(50) ;
+        final int[] errors = new int[1] ;
+        Thread[] threads = new Thread[4] ;
+        for ( int t = 0 ; t < threads.length ; t++ )
+        {
+            final int base = t ;
+            threads[t] = new Thread() {
+                @Override public void run()
+                {
+                    for ( int i = 0 ; i < 10000 ; i++ )
+                    {
+                        int k = (i*31+base) % 200 ;
+                        Integer v = cache.get(k) ;
+                        if ( v != null && v.intValue() != k )
+                            synchronized(errors) { errors[0]++ ; }
+                        if ( v == null )
+                            cache.put(k, k) ;
+                        if ( i % 17 == 0 )
+                            cache.remove(k) ;
+                    }
+                }
+            } ;
+        }
+        for ( Thread t : threads ) t.start() ;
+        for ( Thread t : threads ) t.join() ;
+        assertEquals(0, errors[0]) ;
+        assertTrue(cache.size() <= 50) ;
+    }
 }
@@ -96,6 +96,39 @@ public class TDB {
      */
     public static final Symbol  transactionJournalWriteBlockMode = SystemTDB.allocSymbol("transactionJournalWriteBlockMode") ;
 
+    /**
+     * A boolean Symbol that allows several write transactions to be active at
+     * the same time. Each writer works on its own journal view; at commit, the
+     * blocks it read or wrote are checked against the blocks written by writers
+     * that committed since it began and, if they overlap, the commit fails
+     * with a {@link com.hp.hpl.jena.tdb.transaction.TransactionAbort} - unless
+     * the writer only added and deleted (did not read), when its changes are made
+     * again on top of the other commits. New nodes are given ids from the shared
+     * node table so writers adding new terms do not conflict over ids.
+     * Read when the transaction manager for a location is created. Default: false.
+     */
+    public static final Symbol  transactionConcurrentWriters     = SystemTDB.allocSymbol("transactionConcurrentWriters") ;
+
+    /**
+     * Symbol for the group commit window, in milliseconds. When set, a writer
+     * is released when its commit record has been written to the journal, and
+     * the journal sync covers the commits of all writers that finish within
+     * the window. 0 means no wait; unset or negative means each commit syncs
+     * the journal itself (concurrent writers always use group commit).
+     * Read when the transaction manager for a location is created.
+     */
+    public static final Symbol  transactionGroupCommitWindow     = SystemTDB.allocSymbol("transactionGroupCommitWindow") ;
+
+    /**
+     * A boolean Symbol to write committed transactions back to the database
+     * files from a background thread, one transaction at a time, as soon as
+     * no active transaction started before the commit. Otherwise, committed
+     * transactions are written back in a batch when there are no active
+     * transactions at all. Read when the transaction manager for a location
+     * is created. Default: false.
+     */
+    public static final Symbol  transactionBackgroundReplay      = SystemTDB.allocSymbol("transactionBackgroundReplay") ;
+
     public static Context getContext() {
         return ARQ.getContext() ;
     }
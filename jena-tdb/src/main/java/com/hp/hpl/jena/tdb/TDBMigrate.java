@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb;
+
+import java.util.Iterator ;
+import java.util.Map ;
+
+import com.hp.hpl.jena.query.ReadWrite ;
+import com.hp.hpl.jena.sparql.core.Quad ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.setup.DatasetBuilderStd ;
+import com.hp.hpl.jena.tdb.setup.SystemParams ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.store.DatasetPrefixesTDB ;
+import com.hp.hpl.jena.tdb.sys.Names ;
+import com.hp.hpl.jena.tdb.transaction.DatasetGraphTxn ;
+
+/**
+ * Copy a database into a new database with different storage formats,
+ * for example, a different node table encoding.  The formats recorded for
+ * an existing database can not be changed in place because NodeIds are
+ * positions in the node table.
+ */
+
+public class TDBMigrate
+{
+    /** Copy the database at the source location to a new database at the destination,
+     *  created with the given system parameters. 
+     */
+    public static void migrate(Location source, Location destination, SystemParams params)
+    {
+        if ( destination.exists(Names.indexId2Node, Names.extNodeData) )
+            throw new TDBException("Destination is not empty: "+destination) ;
+        
+        StoreConnection sConn = StoreConnection.make(source) ;
+        DatasetGraphTxn dsgSrc = sConn.begin(ReadWrite.READ, "migrate") ;
+        DatasetGraphTDB dsgDst = DatasetBuilderStd.stdBuilder().build(destination, params) ;
+        try {
+            Iterator<Quad> iter = dsgSrc.find() ;
+            for ( ; iter.hasNext() ; )
+                dsgDst.add(iter.next()) ;
+            
+            DatasetPrefixesTDB prefixes = dsgSrc.getView().getPrefixes() ;
+            for ( String graphName : prefixes.graphNames() )
+            {
+                Map<String, String> pmap = prefixes.readPrefixMap(graphName) ;
+                for ( Map.Entry<String, String> e : pmap.entrySet() )
+                    dsgDst.getPrefixes().insertPrefix(graphName, e.getKey(), e.getValue()) ;
+            }
+            dsgDst.sync() ;
+        } finally {
+            dsgSrc.end() ;
+            dsgDst.close() ;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.base.block;
+
+/** Choice of block cache for direct mode files */
+public enum BlockCacheType
+{
+    /** Synchronized LRU cache ({@link BlockMgrCache}) */
+    lru,
+    /** Lock-free reads over lock-striped CLOCK replacement ({@link BlockMgrCacheStriped}) */
+    striped,
+    /** File I/O through a fixed size off-heap buffer pool ({@link com.hp.hpl.jena.tdb.base.file.BlockAccessPooled}),
+     * in place of a heap cache.  Used whatever the file mode. */
+    pooled ;
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.base.block;
+
+import java.nio.ByteBuffer ;
+
+/** Transform between the bytes of a block as used in-memory and as stored.
+ *  Blocks are fixed size in both forms, the in-memory (decoded) form usually being larger.
+ */
+public interface BlockCodec
+{
+    /** Size of a block as used in-memory */
+    public int decodedBlockSize() ;
+    
+    /** Size of a block as stored */
+    public int encodedBlockSize() ;
+    
+    /** Encode the in-memory bytes of a block (decodedBlockSize) into space for storage (encodedBlockSize) */
+    public void encode(ByteBuffer decoded, ByteBuffer encoded) ;
+    
+    /** Decode the stored bytes of a block (encodedBlockSize) into in-memory space (decodedBlockSize) */
+    public void decode(ByteBuffer encoded, ByteBuffer decoded) ;
+}
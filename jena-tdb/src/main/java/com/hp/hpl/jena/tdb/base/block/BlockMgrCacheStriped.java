@@ -0,0 +1,497 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.base.block;
+
+import java.util.ArrayList ;
+import java.util.Iterator ;
+import java.util.LinkedHashMap ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.atomic.AtomicLong ;
+
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+/** Caching block manager where reads do not take a global lock.
+ * <p>
+ * The read cache is split into a number of stripes by block id.  A cache hit
+ * is a lookup in a concurrent map and marking the entry as recently used;
+ * only a miss takes the lock for its stripe, to insert the block and, if the
+ * stripe is full, to choose a victim by CLOCK (second chance) replacement.
+ * Reading a missing block from the underlying BlockMgr is done outside any lock.
+ * <p>
+ * The write-behind cache of dirty blocks and all the update operations are
+ * synchronized, as in {@link BlockMgrCache} - there is only ever one writer (MRSW).
+ * Readers look in the write cache without locking.
+ */
+public class BlockMgrCacheStriped extends BlockMgrWrapper
+{
+    private static Logger log = LoggerFactory.getLogger(BlockMgrCacheStriped.class) ;
+    
+    public static boolean globalLogging = false ;           // Also enable the logging level. 
+    private boolean logging = false ;                       // Also enable the logging level. 
+    private final String indexName ; 
+    
+    // Read cache : null for no read caching.
+    private final Stripe[] stripes ;
+    private final int stripeMask ;
+
+    // Delayed dirty writes.  May be present, may not.
+    // writeCache is for lock-free lookup by readers; writeOrder is the LRU order for spilling.
+    // Both are only changed inside synchronized operations. 
+    private final int writeSlots ;
+    private final Map<Long, Block> writeCache ;
+    private final LinkedHashMap<Long, Block> writeOrder ;
+
+    // ---- stats
+    private final AtomicLong cacheWriteHits = new AtomicLong(0) ;
+    private final AtomicLong cacheWriteMisses = new AtomicLong(0) ;
+    
+    static BlockMgr create(String indexName, int readSlots, int writeSlots, int numStripes, BlockMgr blockMgr)
+    {
+        if ( readSlots < 0 && writeSlots < 0 )
+            return blockMgr ;
+        return new BlockMgrCacheStriped(indexName, readSlots, writeSlots, numStripes, blockMgr) ;
+    }
+    
+    private BlockMgrCacheStriped(String indexName, int readSlots, int writeSlots, int numStripes, BlockMgr blockMgr)
+    {
+        super(blockMgr) ;
+        this.indexName = String.format("%-12s", indexName) ;
+        if ( readSlots <= 0 )
+        {
+            stripes = null ;
+            stripeMask = 0 ;
+        }
+        else
+        {
+            // Power of two, and no more stripes than slots.
+            int n = 1 ;
+            while ( n < numStripes && 2*n <= readSlots )
+                n = 2*n ;
+            stripes = new Stripe[n] ;
+            stripeMask = n-1 ;
+            int perStripe = (readSlots+n-1)/n ;
+            for ( int i = 0 ; i < n ; i++ )
+                stripes[i] = new Stripe(perStripe) ;
+        }
+        
+        this.writeSlots = writeSlots ;
+        if ( writeSlots <= 0 )
+        {
+            writeCache = null ;
+            writeOrder = null ;
+        }
+        else
+        {
+            writeCache = new ConcurrentHashMap<Long, Block>() ;
+            writeOrder = new LinkedHashMap<Long, Block>(16, 0.75f, true) ;
+        }
+    }
+
+    @Override
+    public Block getRead(long id)
+    {
+        // A Block may be in the read cache or the write cache.
+        // It can be just in the write cache because the read cache is finite.
+        Stripe stripe = stripe(id) ;
+        if ( stripe != null )
+        {
+            Block blk = stripe.get(id) ;
+            if ( blk != null )
+            {
+                log("Hit(r->r) : %d", id) ;
+                return blk ;
+            }
+        }
+        
+        if ( writeCache != null )
+        {
+            // Might still be in the dirty blocks.
+            Block blk = writeCache.get(id) ;
+            if ( blk != null )
+            {
+                cacheWriteHits.incrementAndGet() ;
+                log("Hit(r->w) : %d", id) ;
+                return blk ;
+            }
+        }
+        
+        log("Miss/r: %d", id) ;
+        Block blk = super.getRead(id) ;
+        if ( stripe != null )
+            // Another reader may have put the block in first - use that one.
+            blk = stripe.putIfAbsent(id, blk) ;
+        return blk ;
+    }
+    
+    @Override
+    public Block getReadIterator(long id)
+    {
+        // And don't pass down "iterator" calls.
+        return getRead(id) ; 
+    }
+    
+    @Override
+    synchronized
+    public Block allocate(int blockSize)
+    {
+        return super.allocate(blockSize) ;
+    }
+
+    @Override
+    synchronized
+    public Block getWrite(long id)
+    {
+        Block blk = null ;
+        if ( writeCache != null )
+            blk = writeOrder.get(id) ;
+        if ( blk != null )
+        {
+            cacheWriteHits.incrementAndGet() ;
+            log("Hit(w->w) : %d", id) ;
+            return blk ;
+        }
+        
+        // A requested block may be in the read cache. Promote it.
+        Stripe stripe = stripe(id) ;
+        if ( stripe != null )
+        {
+            blk = stripe.get(id) ;
+            if ( blk != null )
+            {
+                log("Hit(w->r) : %d", id) ;
+                return promote(blk) ;
+            }
+        }
+        
+        cacheWriteMisses.incrementAndGet() ;
+        log("Miss/w: %d", id) ;
+        blk = super.getWrite(id) ;
+        if ( writeCache != null )
+            writeCachePut(id, blk) ;
+        return blk ;
+    }
+
+    @Override
+    synchronized
+    public Block promote(Block block)
+    {
+        long id = block.getId() ;
+        Stripe stripe = stripe(id) ;
+        if ( stripe != null )
+            stripe.remove(id) ;
+        Block block2 = super.promote(block) ;
+        if ( writeCache != null )
+            writeCachePut(id, block2) ;
+        return block ;
+    }
+    
+    @Override
+    synchronized
+    public void write(Block block)
+    {
+        long id = block.getId() ;
+        log("WriteCache : %d", id) ;
+        if ( writeCache != null )
+            writeCachePut(id, block) ;
+        super.write(block) ;
+    }
+    
+    @Override
+    synchronized
+    public void overwrite(Block block)
+    {
+        long id = block.getId() ;
+        // It can be a read block (by the transaction), now being written for real (enacting a transaction).
+        super.overwrite(block) ;
+        // Keep read cache up-to-date. 
+        Stripe stripe = stripe(id) ;
+        if ( stripe != null )
+            stripe.put(id, block) ;
+    }
+
+    @Override
+    synchronized
+    public void free(Block block)
+    {
+        long id = block.getId() ;
+        log("Free  : %d", id) ;
+        Stripe stripe = stripe(id) ;
+        if ( stripe != null && stripe.remove(id) )
+            log.warn("Freeing block from read cache") ;
+        if ( writeCache != null )
+        {
+            writeCache.remove(id) ;
+            writeOrder.remove(id) ;
+        }
+        super.free(block) ;
+    }
+
+    @Override
+    synchronized
+    public void sync()
+    {
+        _sync(false) ;
+    }
+    
+    @Override
+    synchronized
+    public void syncForce()
+    {
+        _sync(true) ;
+    }
+    
+    @Override
+    synchronized
+    public void close()
+    {
+        if ( writeCache != null )
+            log("close (%d blocks)", writeCache.size()) ;
+        syncFlush() ;
+        super.close() ;
+    }
+
+    /** Number of reads satisfied by the read cache */ 
+    public long getCacheReadHits()
+    {
+        long x = 0 ;
+        if ( stripes != null )
+            for ( Stripe s : stripes ) x += s.hits.get() ;
+        return x ;
+    }
+    
+    /** Number of reads and writes satisfied by the write cache */ 
+    public long getCacheWriteHits()     { return cacheWriteHits.get() ; }
+
+    /** Number of requests that went to the underlying BlockMgr */ 
+    public long getCacheMisses()
+    {
+        long x = cacheWriteMisses.get() ;
+        if ( stripes != null )
+            for ( Stripe s : stripes ) x += s.misses.get() ;
+        return x ;
+    }
+    
+    /** Number of blocks in the read cache */
+    public int getReadCacheSize()
+    {
+        int x = 0 ;
+        if ( stripes != null )
+            for ( Stripe s : stripes ) x += s.map.size() ;
+        return x ;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CacheStriped:"+super.blockMgr.toString() ; 
+    }
+
+    private Stripe stripe(long id)
+    {
+        if ( stripes == null )
+            return null ;
+        // Spread the bits - ids are dense so the low bits are the useful ones anyway.
+        int h = (int)(id ^ (id >>> 32)) ;
+        h ^= (h >>> 16) ;
+        return stripes[h & stripeMask] ;
+    }
+
+    private void writeCachePut(long id, Block block)
+    {
+        writeCache.put(id, block) ;
+        writeOrder.put(id, block) ;
+        if ( writeOrder.size() <= writeSlots )
+            return ;
+        // Spill the least recently used dirty block.
+        Iterator<Map.Entry<Long, Block>> iter = writeOrder.entrySet().iterator() ;
+        Map.Entry<Long, Block> e = iter.next() ;
+        iter.remove() ;
+        Long dropId = e.getKey() ;
+        writeCache.remove(dropId) ;
+        log("Cache spill: write block: %d", dropId) ;
+        // Force the block to be written by sending it to the wrapped BlockMgr
+        super.write(e.getValue()) ;
+    }
+    
+    private void _sync(boolean force)
+    {
+        log("H=%d, M=%d, W=%d", getCacheReadHits(), getCacheMisses(), getCacheWriteHits()) ;
+        boolean somethingWritten = syncFlush() ;
+        if ( force )
+        {
+            log("syncForce underlying BlockMgr") ;
+            super.syncForce() ;
+        }
+        else if ( somethingWritten )
+        {
+            log("sync underlying BlockMgr") ;
+            super.sync() ;
+        }
+        else
+            log("Empty sync") ;
+    }
+
+    private boolean syncFlush()
+    {
+        if ( writeCache == null || writeOrder.isEmpty() ) return false ;
+        log("Flush (write cache : %d blocks)", writeOrder.size()) ;
+        List<Block> blocks = new ArrayList<Block>(writeOrder.values()) ;
+        for ( Block block : blocks )
+        {
+            long id = block.getId() ;
+            // This pushes the block to the BlockMgr being cached.
+            super.write(block) ;
+            writeOrder.remove(id) ;
+            // Move it into the read cache before it leaves the write cache
+            // so concurrent readers always find it somewhere.
+            Stripe stripe = stripe(id) ;
+            if ( stripe != null )
+                stripe.put(id, block) ;
+            writeCache.remove(id) ;
+        }
+        super.sync() ;
+        return true ;
+    }
+
+    private void log(String fmt, Object... args)
+    { 
+        if ( ! logging && ! globalLogging ) return ;
+        String msg = String.format(fmt, args) ;
+        log.debug(indexName+" : "+msg) ;
+    }
+
+    /** One stripe of the read cache : a concurrent map for lookups,
+     *  and a ring of entries, changed under the stripe lock, for CLOCK replacement.
+     */ 
+    private static final class Stripe
+    {
+        final ConcurrentHashMap<Long, Entry> map ;
+        final Entry[] ring ;
+        int size = 0 ;
+        int hand = 0 ;
+        final AtomicLong hits = new AtomicLong(0) ;
+        final AtomicLong misses = new AtomicLong(0) ;
+        
+        Stripe(int capacity)
+        {
+            map = new ConcurrentHashMap<Long, Entry>(2*capacity) ;
+            ring = new Entry[capacity] ;
+        }
+        
+        Block get(long id)
+        {
+            Entry e = map.get(id) ;
+            if ( e == null )
+                return null ;
+            // Avoid a write to a shared cache line if already marked.
+            if ( ! e.referenced )
+                e.referenced = true ;
+            hits.incrementAndGet() ;
+            return e.block ;
+        }
+
+        synchronized Block putIfAbsent(long id, Block block)
+        {
+            misses.incrementAndGet() ;
+            Entry e = map.get(id) ;
+            if ( e != null )
+                return e.block ;
+            insert(id, block) ;
+            return block ;
+        }
+        
+        synchronized void put(long id, Block block)
+        {
+            Entry e = map.get(id) ;
+            if ( e == null )
+            {
+                insert(id, block) ;
+                return ;
+            }
+            Entry e2 = new Entry(id, block, e.slot) ;
+            ring[e.slot] = e2 ;
+            map.put(id, e2) ;
+        }
+        
+        synchronized boolean remove(long id)
+        {
+            Entry e = map.remove(id) ;
+            if ( e == null )
+                return false ;
+            // Move the last entry into the hole.
+            int last = size-1 ;
+            if ( e.slot != last )
+            {
+                Entry e2 = ring[last] ;
+                e2.slot = e.slot ;
+                ring[e.slot] = e2 ;
+            }
+            ring[last] = null ;
+            size-- ;
+            if ( hand >= size )
+                hand = 0 ;
+            return true ;
+        }
+
+        private void insert(long id, Block block)
+        {
+            int slot ;
+            if ( size < ring.length )
+                slot = size++ ;
+            else
+            {
+                // CLOCK : clear the referenced bits until an unreferenced entry is found. 
+                for ( ;; )
+                {
+                    Entry victim = ring[hand] ;
+                    if ( ! victim.referenced )
+                    {
+                        map.remove(victim.id) ;
+                        slot = hand ;
+                        break ;
+                    }
+                    victim.referenced = false ;
+                    hand = (hand+1) % ring.length ;
+                }
+                hand = (hand+1) % ring.length ;
+            }
+            Entry e = new Entry(id, block, slot) ;
+            ring[slot] = e ;
+            map.put(id, e) ;
+        }
+    }
+
+    private static final class Entry
+    {
+        final long id ;
+        final Block block ;
+        volatile boolean referenced = false ;
+        int slot ;      // Only used under the stripe lock.
+        
+        Entry(long id, Block block, int slot)
+        {
+            this.id = id ;
+            this.block = block ;
+            this.slot = slot ;
+        }
+    }
+}
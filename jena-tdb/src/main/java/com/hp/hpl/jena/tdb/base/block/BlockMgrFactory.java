@@ -22,9 +22,12 @@ import org.apache.jena.atlas.lib.FileOps ;
 
 import com.hp.hpl.jena.tdb.TDBException ;
 import com.hp.hpl.jena.tdb.base.file.BlockAccess ;
+import com.hp.hpl.jena.tdb.base.file.BlockAccessCodec ;
 import com.hp.hpl.jena.tdb.base.file.BlockAccessDirect ;
 import com.hp.hpl.jena.tdb.base.file.BlockAccessMapped ;
 import com.hp.hpl.jena.tdb.base.file.BlockAccessMem ;
+import com.hp.hpl.jena.tdb.base.file.BlockAccessPooled ;
+import com.hp.hpl.jena.tdb.base.file.BufferPool ;
 import com.hp.hpl.jena.tdb.base.file.FileSet ;
 import com.hp.hpl.jena.tdb.sys.SystemTDB ;
 
@@ -51,11 +54,77 @@ public class BlockMgrFactory
     }
     
     public static BlockMgr create(FileSet fileSet, String ext, int blockSize, int readBlockCacheSize, int writeBlockCacheSize)
+    {
+        return create(fileSet, ext, blockSize, readBlockCacheSize, writeBlockCacheSize, SystemTDB.blockCacheType()) ;
+    }
+    
+    public static BlockMgr create(FileSet fileSet, String ext, int blockSize, int readBlockCacheSize, int writeBlockCacheSize, BlockCacheType cacheType)
+    {
+        return create(fileSet, ext, blockSize, readBlockCacheSize, writeBlockCacheSize, cacheType, null) ;
+    }
+    
+    /** Create a block manager ; the pool is used by a "pooled" cache (null for the system pool) */
+    public static BlockMgr create(FileSet fileSet, String ext, int blockSize, int readBlockCacheSize, int writeBlockCacheSize, BlockCacheType cacheType, BufferPool pool)
     {
         if ( fileSet.isMem() )
             return createMem(fileSet.filename(ext), blockSize) ;
         else
-            return createFile(fileSet.filename(ext), blockSize, readBlockCacheSize, writeBlockCacheSize) ;
+            return createFile(fileSet.filename(ext), blockSize, readBlockCacheSize, writeBlockCacheSize, cacheType, pool) ;
+    }
+    
+    /** Create a block manager for blocks that are stored encoded by the codec.
+     *  The blocks are the decoded size in-memory and in the cache.
+     */
+    public static BlockMgr create(FileSet fileSet, String ext, BlockCodec codec, int readBlockCacheSize, int writeBlockCacheSize, BlockCacheType cacheType)
+    {
+        return create(fileSet, ext, codec, readBlockCacheSize, writeBlockCacheSize, cacheType, null) ;
+    }
+    
+    /** Create a block manager for blocks that are stored encoded by the codec.
+     *  The pool is used by a "pooled" cache (null for the system pool). 
+     */
+    public static BlockMgr create(FileSet fileSet, String ext, BlockCodec codec, int readBlockCacheSize, int writeBlockCacheSize, BlockCacheType cacheType, BufferPool pool)
+    {
+        String filename = fileSet.filename(ext) ;
+        int blockSize = codec.encodedBlockSize() ;
+        if ( cacheType == null )
+            cacheType = SystemTDB.blockCacheType() ;
+        BlockAccess file ;
+        if ( fileSet.isMem() )
+            file = new BlockAccessMem(filename, blockSize) ;
+        else if ( cacheType == BlockCacheType.pooled )
+        {
+            file = new BlockAccessPooled(filename, blockSize, pool(pool)) ;
+            // The pool holds encoded blocks ; cache decoded blocks in the heap as for other files.
+            cacheType = BlockCacheType.lru ;
+        }
+        else
+        {
+            switch ( SystemTDB.fileMode() )
+            {
+                case mapped:
+                    file = new BlockAccessMapped(filename, blockSize) ;
+                    break ;
+                case direct:
+                    file = new BlockAccessDirect(filename, blockSize) ;
+                    break ;
+                default:
+                    throw new TDBException("Unknown file mode: "+SystemTDB.fileMode()) ;
+            }
+        }
+        file = new BlockAccessCodec(file, codec) ;
+        BlockMgr blockMgr = wrapFileAccess(file, codec.decodedBlockSize()) ;
+        if ( fileSet.isMem() )
+            return track(blockMgr) ;
+        // Always cache, even when memory mapped, to avoid decoding on every access.
+        // Keep about the same space for the cache as for blocks of the stored size.  
+        int ratio = Math.max(1, codec.decodedBlockSize()/blockSize) ;
+        if ( readBlockCacheSize > 0 )
+            readBlockCacheSize = Math.max(1, readBlockCacheSize/ratio) ;
+        if ( writeBlockCacheSize > 0 )
+            writeBlockCacheSize = Math.max(1, writeBlockCacheSize/ratio) ;
+        blockMgr = cache(FileOps.basename(filename), readBlockCacheSize, writeBlockCacheSize, cacheType, blockMgr) ;
+        return track(blockMgr) ;
     }
     
     /** Create an in-memory block manager */ 
@@ -74,12 +143,28 @@ public class BlockMgrFactory
     /** Create a BlockMgr backed by a file */
     public static BlockMgr createFile(String filename, int blockSize, int readBlockCacheSize, int writeBlockCacheSize)
     {
+        return createFile(filename, blockSize, readBlockCacheSize, writeBlockCacheSize, SystemTDB.blockCacheType()) ;
+    }
+    
+    /** Create a BlockMgr backed by a file, with the given choice of cache if in direct mode */
+    public static BlockMgr createFile(String filename, int blockSize, int readBlockCacheSize, int writeBlockCacheSize, BlockCacheType cacheType)
+    {
+        return createFile(filename, blockSize, readBlockCacheSize, writeBlockCacheSize, cacheType, null) ;
+    }
+    
+    /** Create a BlockMgr backed by a file, with the given choice of cache if in direct mode,
+     *  or using the buffer pool (null for the system pool) whatever the file mode if the cache is "pooled". 
+     */
+    public static BlockMgr createFile(String filename, int blockSize, int readBlockCacheSize, int writeBlockCacheSize, BlockCacheType cacheType, BufferPool pool)
+    {
+        if ( cacheType == BlockCacheType.pooled )
+            return createPooledFile(filename, blockSize, pool) ;
         switch ( SystemTDB.fileMode() )
         {
             case mapped:
                 return createMMapFile(filename, blockSize) ;
             case direct:
-                return createStdFile(filename, blockSize, readBlockCacheSize, writeBlockCacheSize) ;
+                return createStdFile(filename, blockSize, readBlockCacheSize, writeBlockCacheSize, cacheType) ;
         }
         throw new TDBException("Unknown file mode: "+SystemTDB.fileMode()) ;
     }        
@@ -92,18 +177,46 @@ public class BlockMgrFactory
         return track(blockMgr) ;
     }
     
+    /** Create a Block Manager using file I/O through a buffer pool (null for the system pool), with no heap cache */
+    public static BlockMgr createPooledFile(String filename, int blockSize, BufferPool pool)
+    {
+        BlockAccess file = new BlockAccessPooled(filename, blockSize, pool(pool)) ;
+        BlockMgr blockMgr =  wrapFileAccess(file, blockSize) ;
+        return track(blockMgr) ;
+    }
+    
+    private static BufferPool pool(BufferPool pool)
+    {
+        return ( pool != null ) ? pool : BufferPool.get() ;
+    }
+    
     /** Create a Block Manager using direct access (and a cache) */
     public static BlockMgr createStdFile(String filename, int blockSize, int readBlockCacheSize, int writeBlockCacheSize)
+    {
+        return createStdFile(filename, blockSize, readBlockCacheSize, writeBlockCacheSize, SystemTDB.blockCacheType()) ;
+    }
+    
+    /** Create a Block Manager using direct access and the given kind of cache */
+    public static BlockMgr createStdFile(String filename, int blockSize, int readBlockCacheSize, int writeBlockCacheSize, BlockCacheType cacheType)
     {
         BlockAccess file = new BlockAccessDirect(filename, blockSize) ;
         BlockMgr blockMgr =  wrapFileAccess(file, blockSize) ;
-
-        String fn = FileOps.basename(filename) ;
-        
-        blockMgr = BlockMgrCache.create(fn, readBlockCacheSize, writeBlockCacheSize, blockMgr) ;
+        blockMgr = cache(FileOps.basename(filename), readBlockCacheSize, writeBlockCacheSize, cacheType, blockMgr) ;
         return track(blockMgr) ;
     }
     
+    private static BlockMgr cache(String fn, int readBlockCacheSize, int writeBlockCacheSize, BlockCacheType cacheType, BlockMgr blockMgr)
+    {
+        switch ( cacheType )
+        {
+            case lru:
+                return BlockMgrCache.create(fn, readBlockCacheSize, writeBlockCacheSize, blockMgr) ;
+            case striped:
+                return BlockMgrCacheStriped.create(fn, readBlockCacheSize, writeBlockCacheSize, SystemTDB.BlockCacheStripes, blockMgr) ;
+        }
+        return blockMgr ;
+    }
+    
     /** Create a Block Manager using direct access, no caching, no nothing. */
     public static BlockMgr createStdFileNoCache(String filename, int blockSize)
     {
@@ -86,6 +86,7 @@ public class BlockMgrFileAccess extends BlockMgrBase
     public void release(Block block)
     { 
         //check(block) ;
+        file.release(block) ;
     }
 
     @Override
@@ -107,6 +108,7 @@ public class BlockMgrFileAccess extends BlockMgrBase
     {
         //syncNeeded = true ;
         // We do nothing about free blocks currently.
+        file.release(block) ;
     }
 
     @Override
@@ -27,9 +27,9 @@ import java.util.Deque ;
 final
 public class BlockMgrFreeChain extends BlockMgrWrapper
 {
-    // Could keep Pair<Integer, ByteBuffer>
-    //List<Block> freeBlocks = new ArrayList<Block>() ;
-    private final Deque<Block> freeBlocks = new ArrayDeque<Block>();
+    // Keep the ids, not the blocks : a freed block is released and its
+    // space may be reused (e.g. a buffer pool frame) until the id is allocated again.
+    private final Deque<Long> freeBlocks = new ArrayDeque<Long>();
     
     public BlockMgrFreeChain(BlockMgr blockMgr)
     {
@@ -41,7 +41,8 @@ public class BlockMgrFreeChain extends BlockMgrWrapper
     {
         if ( ! freeBlocks.isEmpty() )
         {
-            Block block = freeBlocks.removeFirst() ;
+            Long id = freeBlocks.removeFirst() ;
+            Block block = super.getWrite(id) ;
             block.getByteBuffer().position(0) ;
             return block ;
         }
@@ -51,23 +52,21 @@ public class BlockMgrFreeChain extends BlockMgrWrapper
     @Override
     public void free(Block block)
     {
-        freeBlocks.add(block) ;
+        freeBlocks.add(block.getId()) ;
+        super.release(block) ;
     }
 
     @Override
     public boolean valid(int id)
     {
-        for ( Block blk : freeBlocks ) 
-        {
-            if ( blk.getId() == id )
-                return true ; 
-        }
+        if ( isFree(id) )
+            return true ; 
         return super.valid(id) ;
     }
     
     private boolean isFree(int id)
     {
-        return freeBlocks.contains(id) ; 
+        return freeBlocks.contains(Long.valueOf(id)) ; 
     }
 
     @Override
@@ -107,6 +107,29 @@ public class RecordBuffer extends BufferBase
         return factory.buildFrom(bb, idx) ;
     }
 
+    // Access to the key bytes in place, without creating a Record.
+    // No bounds checking : careful use only!
+
+    /** Compare the key in slot idx with the key of the record */
+    public int compareKey(int idx, Record k)
+    {
+        return compare(idx, k.getKey()) ;
+    }
+    
+    /** Get the long at byte offset "offset" in the key of slot idx */
+    public long getLong(int idx, int offset)
+    {
+        return bb.getLong(idx*slotLen+offset) ;
+    }
+    
+    /** Copy the key of slot idx into "key" */
+    public void getKey(int idx, byte[] key)
+    {
+        int x = idx*slotLen ;
+        for ( int i = 0 ; i < key.length ; i++ )
+            key[i] = bb.get(x+i) ;
+    }
+
     // No bounds checking : careful use only!
     void _set(int idx, Record rec)
     {
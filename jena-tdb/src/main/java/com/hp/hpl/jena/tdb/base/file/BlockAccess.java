@@ -42,6 +42,9 @@ public interface BlockAccess extends Sync, Closeable
     
     public void overwrite(Block block) ;
     
+    /** The caller has finished with a block from {@link #read} or {@link #allocate} */
+    public void release(Block block) ;
+    
     public boolean isEmpty() ; 
     
     public boolean valid(long id) ;
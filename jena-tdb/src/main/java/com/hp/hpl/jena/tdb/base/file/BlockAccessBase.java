@@ -63,6 +63,10 @@ public abstract class BlockAccessBase implements BlockAccess
     }
 
     protected abstract Logger getLog()  ;
+    
+    @Override
+    public void release(Block block) { }
+    
     @Override
     final public boolean isEmpty() { return isEmpty ; }
     
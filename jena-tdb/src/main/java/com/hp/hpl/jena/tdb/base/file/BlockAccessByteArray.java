@@ -102,6 +102,10 @@ public class BlockAccessByteArray implements BlockAccess
         write(block) ;
     }    
 
+    @Override
+    public void release(Block block)
+    { }
+
     @Override
     public boolean isEmpty()
     {
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.base.file;
+
+import java.nio.ByteBuffer ;
+
+import com.hp.hpl.jena.tdb.base.block.Block ;
+import com.hp.hpl.jena.tdb.base.block.BlockCodec ;
+
+/** Block access where blocks are stored encoded by a {@link BlockCodec}.
+ *  Blocks read are decoded into fresh space and blocks are encoded on write,
+ *  so the underlying storage is never shared with the caller.
+ */
+public class BlockAccessCodec implements BlockAccess
+{
+    private final BlockAccess other ;
+    private final BlockCodec codec ;
+
+    public BlockAccessCodec(BlockAccess other, BlockCodec codec)
+    {
+        this.other = other ;
+        this.codec = codec ;
+    }
+    
+    @Override
+    public Block allocate(int size)
+    {
+        if ( size > 0 && size != codec.decodedBlockSize() )
+            throw new FileException("Fixed blocksize only: request= "+size+" / fixed size="+codec.decodedBlockSize()) ;
+        Block block = other.allocate(codec.encodedBlockSize()) ;
+        other.release(block) ;
+        return new Block(block.getId(), ByteBuffer.allocate(codec.decodedBlockSize())) ;
+    }
+
+    @Override
+    public Block read(long id)
+    {
+        Block block = other.read(id) ;
+        ByteBuffer bb = ByteBuffer.allocate(codec.decodedBlockSize()) ;
+        try {
+            codec.decode(block.getByteBuffer(), bb) ;
+        } finally { other.release(block) ; }
+        return new Block(id, bb) ;
+    }
+
+    @Override
+    public void write(Block block)
+    {
+        // Always a copy into the underlying storage.
+        other.overwrite(encode(block)) ;
+    }
+
+    @Override
+    public void overwrite(Block block)
+    {
+        other.overwrite(encode(block)) ;
+    }
+    
+    @Override
+    public void release(Block block)
+    {
+        // The underlying block was released when it was decoded.
+    }
+    
+    private Block encode(Block block)
+    {
+        ByteBuffer bb = ByteBuffer.allocate(codec.encodedBlockSize()) ;
+        codec.encode(block.getByteBuffer(), bb) ;
+        return new Block(block.getId(), bb) ;
+    }
+
+    @Override
+    public boolean isEmpty()            { return other.isEmpty() ; }
+
+    @Override
+    public boolean valid(long id)       { return other.valid(id) ; }
+
+    @Override
+    public String getLabel()            { return other.getLabel() ; }
+
+    @Override
+    public void sync()                  { other.sync() ; }
+
+    @Override
+    public void close()                 { other.close() ; }
+    
+    @Override
+    public String toString()            { return "Codec:"+other ; }
+}
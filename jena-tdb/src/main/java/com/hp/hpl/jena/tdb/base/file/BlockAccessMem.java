@@ -94,6 +94,10 @@ public class BlockAccessMem implements BlockAccess
         write(block) ;
     }
     
+    @Override
+    public void release(Block block)
+    { }
+    
     private void _write(Block block)
     {
         if ( safeModeThisMgr )
@@ -0,0 +1,341 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.base.file;
+
+import static java.lang.String.format ;
+
+import java.io.IOException ;
+import java.nio.ByteBuffer ;
+import java.nio.channels.FileChannel ;
+import java.util.ArrayList ;
+import java.util.HashMap ;
+import java.util.IdentityHashMap ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.concurrent.atomic.AtomicLong ;
+
+import org.apache.jena.atlas.lib.FileOps ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+import com.hp.hpl.jena.tdb.base.block.Block ;
+
+/** Block access by file I/O through a {@link BufferPool} of off-heap frames,
+ * in place of memory mapping or a heap cache of blocks.
+ * <p>
+ * A read is served from the pool if the block is there, otherwise it is read from the file
+ * into a frame.  The caller gets a block over the frame itself, as with the mapped buffers
+ * of {@link BlockAccessMapped}, and the frame stays pinned until the block is released.
+ * If every frame is pinned, the block is read into heap space instead, and that space is
+ * shared by all the callers of the block until they have all released it.
+ * When a miss is for the block after the previous miss, as in a scan along
+ * the leaves of a B+Tree, the following blocks are read into the pool by the same I/O.
+ * Writes go to the file and update the pool if the block is there.
+ */
+public class BlockAccessPooled extends BlockAccessBase
+{
+    private static Logger log = LoggerFactory.getLogger(BlockAccessPooled.class) ;
+
+    private final BufferPool pool ;
+    private final int fileNo ;
+    private final int readAhead ;
+    // Not synchronized - only a hint.
+    private volatile long lastMiss = -2 ;
+    private final AtomicLong fileReads = new AtomicLong(0) ;
+    // Blocks handed out over a frame, and the frame they pin.
+    private final Map<Block, BufferPool.Frame> pinned = new IdentityHashMap<Block, BufferPool.Frame>() ;
+    // Blocks handed out in heap space, and the space for each id.
+    private final Map<Block, Overflow> unpooled = new IdentityHashMap<Block, Overflow>() ;
+    private final Map<Long, Overflow> overflow = new HashMap<Long, Overflow>() ;
+    
+    private static final class Overflow
+    {
+        final ByteBuffer buffer ;
+        int count = 0 ;
+        Overflow(ByteBuffer buffer) { this.buffer = buffer ; }
+    }
+    
+    public BlockAccessPooled(String filename, int blockSize, BufferPool pool)
+    {
+        super(filename, blockSize) ;
+        if ( blockSize > pool.getFrameSize() )
+            throw new FileException(format("Block size (%d) larger than buffer pool frames (%d)", blockSize, pool.getFrameSize())) ;
+        this.pool = pool ;
+        this.fileNo = pool.register() ;
+        this.readAhead = pool.getReadAhead() ;
+    }
+
+    @Override
+    public Block allocate(int blkSize)
+    {
+        if ( blkSize > 0 && blkSize != this.blockSize )
+            throw new FileException("Fixed blocksize only: request= "+blkSize+"fixed size="+this.blockSize) ;
+        int x = allocateId() ;
+        BufferPool.Frame frame = pool.acquireIfAbsent(fileNo, x) ;
+        if ( frame == null )
+            return share(x, new Overflow(ByteBuffer.allocate(blockSize))) ;
+        // Fresh blocks are zero, as heap blocks are.
+        ByteBuffer bb = frameBuffer(frame) ;
+        while ( bb.hasRemaining() )
+            bb.put((byte)0) ;
+        pool.loaded(frame) ;
+        return pin(x, frame) ;
+    }
+    
+    @Override
+    public Block read(long id)
+    {
+        check(id) ;
+        checkIfClosed() ;
+        synchronized(pinned)
+        {
+            // Already out in heap space.
+            Overflow x = overflow.get(id) ;
+            if ( x != null )
+                return share(id, x) ;
+        }
+        BufferPool.Frame frame = pool.acquire(fileNo, id) ;
+        if ( frame == null )
+        {
+            // Every frame is pinned.
+            ByteBuffer bb = ByteBuffer.allocate(blockSize) ;
+            fileReads.incrementAndGet() ;
+            readByteBuffer(id, bb) ;
+            return share(id, new Overflow(bb)) ;
+        }
+        // If loading fails, the frame has been given back to the pool.
+        if ( ! frame.loaded )
+            load(id, frame) ;
+        return pin(id, frame) ;
+    }
+    
+    private Block pin(long id, BufferPool.Frame frame)
+    {
+        Block block = new Block(id, frameBuffer(frame).slice()) ;
+        synchronized(pinned) { pinned.put(block, frame) ; }
+        return block ;
+    }
+    
+    private Block share(long id, Overflow x)
+    {
+        Block block = new Block(id, x.buffer.duplicate()) ;
+        block.getByteBuffer().rewind() ;
+        synchronized(pinned)
+        {
+            x.count++ ;
+            overflow.put(id, x) ;
+            unpooled.put(block, x) ;
+        }
+        return block ;
+    }
+    
+    @Override
+    public void release(Block block)
+    {
+        BufferPool.Frame frame ;
+        // Releasing twice does nothing.
+        synchronized(pinned)
+        {
+            frame = pinned.remove(block) ;
+            Overflow x = unpooled.remove(block) ;
+            if ( x != null && --x.count == 0 )
+                overflow.remove(block.getId()) ;
+        }
+        if ( frame != null )
+            pool.release(frame) ;
+    }
+    
+    /** Number of blocks handed out and not yet released. */
+    public int getPinnedBlocks()
+    {
+        synchronized(pinned) { return pinned.size()+unpooled.size() ; }
+    }
+    
+    private void load(long id, BufferPool.Frame frame)
+    {
+        List<BufferPool.Frame> ahead = new ArrayList<BufferPool.Frame>() ;
+        if ( readAhead > 1 && id == lastMiss+1 )
+        {
+            for ( long x = id+1 ; x < id+readAhead && x < numFileBlocks ; x++ )
+            {
+                BufferPool.Frame f = pool.acquireIfAbsent(fileNo, x) ;
+                if ( f == null )
+                    break ;
+                ahead.add(f) ;
+            }
+        }
+        // The next block after the run continues the sequence.
+        lastMiss = id+ahead.size() ;
+        try {
+            if ( ahead.isEmpty() )
+            {
+                fileReads.incrementAndGet() ;
+                readByteBuffer(id, frameBuffer(frame)) ;
+            }
+            else
+                readFrames(id, frame, ahead) ;
+        } catch (RuntimeException ex)
+        {
+            pool.failed(frame) ;
+            for ( BufferPool.Frame f : ahead )
+                pool.failed(f) ;
+            throw ex ;
+        }
+        pool.loaded(frame) ;
+        for ( BufferPool.Frame f : ahead )
+        {
+            pool.loaded(f) ;
+            pool.release(f) ;
+        }
+    }
+    
+    // One scattering read into the frames for a run of blocks.
+    // The channel position is not used by any other operation.
+    private synchronized void readFrames(long id, BufferPool.Frame first, List<BufferPool.Frame> ahead)
+    {
+        ByteBuffer[] dsts = new ByteBuffer[1+ahead.size()] ;
+        dsts[0] = frameBuffer(first) ;
+        for ( int i = 0 ; i < ahead.size() ; i++ )
+            dsts[i+1] = frameBuffer(ahead.get(i)) ;
+        long len = (long)dsts.length*blockSize ;
+        try {
+            FileChannel channel = file.channel() ;
+            channel.position(filePosition(id)) ;
+            fileReads.incrementAndGet() ;
+            long total = 0 ;
+            while ( total < len )
+            {
+                long x = channel.read(dsts) ;
+                if ( x < 0 )
+                    break ;
+                total += x ;
+            }
+            if ( total != len )
+                throw new FileException(format("get: short read (%d, not %d)", total, len)) ;   
+        } catch (IOException ex)
+        { throw new FileException("BlockAccessPooled", ex) ; }
+    }
+    
+    private void readByteBuffer(long id, ByteBuffer dst)
+    {
+        try {
+            int len = file.channel().read(dst, filePosition(id)) ;
+            if ( len != blockSize )
+                throw new FileException(format("get: short read (%d, not %d)", len, blockSize)) ;   
+        } catch (IOException ex)
+        { throw new FileException("BlockAccessPooled", ex) ; }
+    }
+    
+    // The first blockSize bytes of a frame.
+    private ByteBuffer frameBuffer(BufferPool.Frame frame)
+    {
+        ByteBuffer bb = frame.buffer.duplicate() ;
+        bb.position(0) ;
+        bb.limit(blockSize) ;
+        return bb ;
+    }
+    
+    private final long filePosition(long id)
+    {
+        return id*blockSize ;
+    }
+
+    @Override
+    public void write(Block block)
+    {
+        check(block) ;
+        checkIfClosed() ;
+        ByteBuffer bb = block.getByteBuffer() ;
+        bb.limit(bb.capacity()) ;   // It shouldn't have been changed.
+        bb.rewind() ;
+        try {
+            int len = file.channel().write(bb, filePosition(block.getId())) ;
+            if ( len != blockSize )
+                throw new FileException(format("write: short write (%d, not %d)", len, blockSize)) ;   
+        } catch (IOException ex)
+        { throw new FileException("BlockAccessPooled", ex) ; }
+        bb.rewind() ;
+        // A block over a frame has been changed in place.
+        boolean inPlace ;
+        synchronized(pinned)
+        {
+            inPlace = pinned.containsKey(block) ;
+            Overflow x = overflow.get(block.getId()) ;
+            if ( x != null && ! unpooled.containsKey(block) )
+            {
+                x.buffer.duplicate().put(bb) ;
+                bb.rewind() ;
+            }
+        }
+        if ( ! inPlace )
+        {
+            // Keep the pool copy, if any, up to date.  There is only ever one writer (MRSW).
+            BufferPool.Frame frame = pool.lookup(fileNo, block.getId()) ;
+            if ( frame != null )
+            {
+                try {
+                    frameBuffer(frame).put(bb) ;
+                } finally { pool.release(frame) ; }
+                bb.rewind() ;
+            }
+        }
+        writeNotification(block) ;
+    }
+    
+    @Override
+    public void overwrite(Block block)
+    {
+        overwriteNotification(block) ;
+        write(block) ;
+    }
+
+    /** Number of reads from the file, counting a read-ahead as one. */
+    public long getFileReads()  { return fileReads.get() ; }
+    
+    @Override
+    public void sync()
+    {
+        force() ;
+    }
+
+    @Override
+    protected void _close()
+    { 
+        super.force() ;
+        synchronized(pinned)
+        {
+            for ( BufferPool.Frame frame : pinned.values() )
+                pool.release(frame) ;
+            pinned.clear() ;
+            unpooled.clear() ;
+            overflow.clear() ;
+        }
+        pool.drop(fileNo) ;
+    }
+
+    @Override
+    protected Logger getLog()
+    {
+        return log ;
+    }
+    
+    @Override
+    public String toString() { return "Pooled:"+FileOps.basename(file.filename) ; }
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.base.file;
+
+import java.nio.ByteBuffer ;
+import java.util.HashMap ;
+import java.util.Map ;
+
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+/** A fixed amount of off-heap memory, divided into frames of one block each, shared by
+ * the {@link BlockAccessPooled} files of a database.
+ * <p>
+ * All the memory is allocated when the pool is created, outside the Java heap, so the
+ * space used for block buffers does not grow with the size of the database.
+ * A frame is pinned while a block is read into it and while a caller holds the block,
+ * and is not reused while pinned.  An unpinned frame is chosen for reuse by CLOCK (second chance)
+ * replacement.  The bookkeeping is done under the pool lock; file I/O is done outside
+ * it, on pinned frames.
+ */
+public final class BufferPool
+{
+    private static Logger log = LoggerFactory.getLogger(BufferPool.class) ;
+    
+    private static BufferPool systemPool = null ;
+    
+    /** The pool for block managers not built with one of their own, 
+     * of {@link SystemTDB#BufferPoolSize} megabytes of {@link SystemTDB#BlockSize} frames.
+     */
+    public static synchronized BufferPool get()
+    {
+        if ( systemPool == null )
+            systemPool = create(SystemTDB.BufferPoolSize, SystemTDB.BufferPoolReadAhead) ;
+        return systemPool ;
+    }
+    
+    /** Create a pool of the given size, in megabytes, of {@link SystemTDB#BlockSize} frames */
+    public static BufferPool create(int sizeMegabytes, int readAhead)
+    {
+        long size = 1024L*1024L*sizeMegabytes ;
+        return new BufferPool((int)Math.max(1, size/SystemTDB.BlockSize), SystemTDB.BlockSize, readAhead) ;
+    }
+    
+    /*package*/ static final class Frame
+    {
+        final ByteBuffer buffer ;
+        long key = -1 ;
+        int pins = 0 ;
+        boolean referenced = false ;
+        boolean loaded = false ;
+        
+        Frame(ByteBuffer buffer) { this.buffer = buffer ; }
+    }
+    
+    private final int frameSize ;
+    private final int readAhead ;
+    private final Frame[] frames ;
+    private final Map<Long, Frame> table = new HashMap<Long, Frame>() ;
+    private int hand = 0 ;
+    private int nextFile = 0 ;
+    
+    // ---- stats
+    private long hits = 0 ;
+    private long misses = 0 ;
+    private long waits = 0 ;
+    
+    /** A pool of numFrames frames of frameSize bytes.  Files read ahead up to readAhead
+     * blocks when they see sequential reads (0 or 1 for no read-ahead).
+     */
+    public BufferPool(int numFrames, int frameSize, int readAhead)
+    {
+        if ( numFrames <= 0 || frameSize <= 0 )
+            throw new FileException("BufferPool: Bad size: "+numFrames+" frames of "+frameSize+" bytes") ;
+        this.frameSize = frameSize ;
+        this.readAhead = readAhead ;
+        this.frames = new Frame[numFrames] ;
+        // Allocate in slabs of less than 2G.
+        int perSlab = Integer.MAX_VALUE/frameSize ;
+        int i = 0 ;
+        while ( i < numFrames )
+        {
+            int n = Math.min(perSlab, numFrames-i) ;
+            ByteBuffer slab = ByteBuffer.allocateDirect(n*frameSize) ;
+            for ( int j = 0 ; j < n ; j++ )
+            {
+                slab.limit((j+1)*frameSize) ;
+                slab.position(j*frameSize) ;
+                frames[i+j] = new Frame(slab.slice()) ;
+            }
+            i += n ;
+        }
+        log.debug(String.format("Buffer pool: %d frames of %d bytes", numFrames, frameSize)) ;
+    }
+    
+    public int getFrameSize()               { return frameSize ; }
+    public int getReadAhead()               { return readAhead ; }
+    public int getNumFrames()               { return frames.length ; }
+    public synchronized long getHits()      { return hits ; }
+    public synchronized long getMisses()    { return misses ; }
+    
+    /** Number of blocks of any file currently held */ 
+    public synchronized int size()          { return table.size() ; }
+
+    /** Number of frames currently pinned */ 
+    public synchronized int getPinned()
+    {
+        int x = 0 ;
+        for ( Frame f : frames )
+            if ( f.pins > 0 ) x++ ;
+        return x ;
+    }
+
+    /*package*/ synchronized int register()
+    {
+        return nextFile++ ;
+    }
+    
+    /** Forget the blocks of a file (which must not be pinned) */
+    /*package*/ synchronized void drop(int fileNo)
+    {
+        for ( Frame f : frames )
+        {
+            if ( f.key != -1 && fileOf(f.key) == fileNo )
+            {
+                table.remove(f.key) ;
+                f.key = -1 ;
+                f.loaded = false ;
+                f.referenced = false ;
+            }
+        }
+    }
+    
+    /** Pin the frame for a block.  If the frame is not loaded, the caller
+     *  must fill it and then call {@link #loaded} or {@link #failed}.  
+     *  Returns null if every frame is pinned.
+     */
+    /*package*/ synchronized Frame acquire(int fileNo, long id)
+    {
+        long key = key(fileNo, id) ;
+        for ( ;; )
+        {
+            Frame f = table.get(key) ;
+            if ( f == null )
+                break ;
+            if ( f.loaded )
+            {
+                hits++ ;
+                f.pins++ ;
+                f.referenced = true ;
+                return f ;
+            }
+            // Another thread is reading this block - wait for it.
+            waits++ ;
+            try { wait() ; } catch (InterruptedException ex) { throw new FileException("BufferPool: interrupted", ex) ; }
+        }
+        misses++ ;
+        return claim(key) ;
+    }
+    
+    /** Pin an empty frame for a block that is not already in the pool, for read-ahead.
+     *  Returns null if the block is present or no frame is free.
+     */
+    /*package*/ synchronized Frame acquireIfAbsent(int fileNo, long id)
+    {
+        long key = key(fileNo, id) ;
+        if ( table.containsKey(key) )
+            return null ;
+        return claim(key) ;
+    }
+    
+    /** The frame of a block, if it is in the pool and loaded, pinned ; else null */
+    /*package*/ synchronized Frame lookup(int fileNo, long id)
+    {
+        Frame f = table.get(key(fileNo, id)) ;
+        if ( f == null || ! f.loaded )
+            return null ;
+        f.pins++ ;
+        return f ;
+    }
+    
+    /*package*/ synchronized void loaded(Frame frame)
+    {
+        frame.loaded = true ;
+        notifyAll() ;
+    }
+    
+    /** Reading into the frame failed : the frame is freed and unpinned. */
+    /*package*/ synchronized void failed(Frame frame)
+    {
+        table.remove(frame.key) ;
+        frame.key = -1 ;
+        frame.loaded = false ;
+        frame.pins-- ;
+        notifyAll() ;
+    }
+    
+    /*package*/ synchronized void release(Frame frame)
+    {
+        frame.pins-- ;
+    }
+    
+    // Inside the lock.
+    private Frame claim(long key)
+    {
+        Frame f = victim() ;
+        if ( f == null )
+            return null ;
+        if ( f.key != -1 )
+            table.remove(f.key) ;
+        f.key = key ;
+        f.loaded = false ;
+        f.referenced = true ;
+        f.pins = 1 ;
+        table.put(key, f) ;
+        return f ;
+    }
+    
+    // CLOCK : skip pinned frames, give referenced frames a second chance.
+    private Frame victim()
+    {
+        for ( int i = 0 ; i < 2*frames.length ; i++ )
+        {
+            Frame f = frames[hand] ;
+            hand = ( hand+1 == frames.length ) ? 0 : hand+1 ;
+            if ( f.pins > 0 )
+                continue ;
+            if ( f.referenced )
+            {
+                f.referenced = false ;
+                continue ;
+            }
+            return f ;
+        }
+        return null ;
+    }
+    
+    private static long key(int fileNo, long id)    { return ((long)fileNo)<<32 | id ; }
+    private static int fileOf(long key)             { return (int)(key>>>32) ; }
+    
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("BufferPool[%d x %d bytes] hits=%d misses=%d waits=%d", frames.length, frameSize, hits, misses, waits) ;
+    }
+}
@@ -42,8 +42,8 @@ public class PlainFilePersistent extends PlainFile
     PlainFilePersistent(String filename)
     {
         file = FileBase.create(filename) ;
-        //long filesize = file.out.length() ;
-        //if ( channel.size() == 0 ) {}
+        // Map the existing contents, if any.
+        filesize = file.size() ;
         byteBuffer = allocateBuffer(filesize) ;
     }
     
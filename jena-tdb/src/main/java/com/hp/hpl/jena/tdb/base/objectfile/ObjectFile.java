@@ -20,6 +20,7 @@ package com.hp.hpl.jena.tdb.base.objectfile;
 
 import java.nio.ByteBuffer ;
 import java.util.Iterator ;
+import java.util.List ;
 
 import com.hp.hpl.jena.tdb.base.block.Block ;
 
@@ -51,6 +52,10 @@ public interface ObjectFile extends Sync, Closeable
     /** Write out the buffer - return the accessor number */ 
     public long write(ByteBuffer buffer) ;
 
+    /** Write out the buffers, in order, as one append where possible -
+     * return the accessor numbers, in the same order as the buffers. */ 
+    public long[] write(List<ByteBuffer> buffers) ;
+
     /** Read a buffer at the accessor number. */
     public ByteBuffer read(long id) ;
     
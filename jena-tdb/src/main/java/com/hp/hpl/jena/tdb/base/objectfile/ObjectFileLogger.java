@@ -20,6 +20,7 @@ package com.hp.hpl.jena.tdb.base.objectfile;
 
 import java.nio.ByteBuffer ;
 import java.util.Iterator ;
+import java.util.List ;
 
 import org.apache.jena.atlas.lib.Pair ;
 import org.slf4j.Logger ;
@@ -70,6 +71,13 @@ public class ObjectFileLogger implements ObjectFile
         return other.write(buffer) ;
     }
 
+    @Override
+    public long[] write(List<ByteBuffer> buffers)
+    {
+        info("write("+buffers.size()+" buffers)") ;
+        return other.write(buffers) ;
+    }
+
     @Override
     public void reposition(long id)
     {
@@ -23,6 +23,7 @@ import static com.hp.hpl.jena.tdb.sys.SystemTDB.SizeOfInt ;
 
 import java.nio.ByteBuffer ;
 import java.util.Iterator ;
+import java.util.List ;
 
 import org.apache.jena.atlas.iterator.Iter ;
 import org.apache.jena.atlas.iterator.IteratorSlotted ;
@@ -131,6 +132,62 @@ public class ObjectFileStorage implements ObjectFile
         return loc ;
     }
     
+    @Override
+    public long[] write(List<ByteBuffer> buffers)
+    {
+        if ( logging )
+            log("W*%d", buffers.size()) ;
+        
+        if ( inAllocWrite )
+            Log.fatal(this, "In the middle of an alloc-write") ;
+        
+        long[] ids = new long[buffers.size()] ;
+        long spaceNeeded = 0 ;
+        for ( ByteBuffer bb : buffers )
+            spaceNeeded += bb.limit() - bb.position() + SizeOfInt ;
+        
+        if ( writeBuffer != null && spaceNeeded <= writeBuffer.capacity() )
+        {
+            // All fit in the write buffer - flush at most once, then append.
+            if ( writeBuffer.position()+spaceNeeded > writeBuffer.capacity() )
+                flushOutputBuffer() ;
+            for ( int i = 0 ; i < ids.length ; i++ )
+            {
+                ByteBuffer bb = buffers.get(i) ;
+                ids[i] = writeBuffer.position()+filesize ;
+                writeBuffer.putInt(bb.limit() - bb.position()) ;
+                writeBuffer.put(bb) ;
+            }
+            return ids ;
+        }
+        
+        if ( spaceNeeded > Integer.MAX_VALUE )
+        {
+            for ( int i = 0 ; i < ids.length ; i++ )
+                ids[i] = write(buffers.get(i)) ;
+            return ids ;
+        }
+        
+        // Larger than the write buffer: lay out the length-prefixed
+        // objects in one buffer and append that with a single file write. 
+        flushOutputBuffer() ;
+        ByteBuffer block = ByteBuffer.allocate((int)spaceNeeded) ;
+        long location = file.position() ;
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            ByteBuffer bb = buffers.get(i) ;
+            ids[i] = location+block.position() ;
+            block.putInt(bb.limit() - bb.position()) ;
+            block.put(bb) ;
+        }
+        block.flip() ;
+        int x = file.write(block) ;
+        if ( x != spaceNeeded )
+            throw new FileException() ;
+        filesize = filesize+x ;
+        return ids ;
+    }
+    
     private long rawWrite(ByteBuffer bb)
     {
         if ( logging ) 
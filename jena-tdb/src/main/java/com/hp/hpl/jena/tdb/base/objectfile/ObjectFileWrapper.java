@@ -20,6 +20,7 @@ package com.hp.hpl.jena.tdb.base.objectfile;
 
 import java.nio.ByteBuffer ;
 import java.util.Iterator ;
+import java.util.List ;
 
 import com.hp.hpl.jena.tdb.base.block.Block ;
 
@@ -48,6 +49,9 @@ public class ObjectFileWrapper implements ObjectFile
     @Override
     public long write(ByteBuffer buffer)            { return other.write(buffer) ; }
     
+    @Override
+    public long[] write(List<ByteBuffer> buffers)   { return other.write(buffers) ; }
+    
     @Override
     public void reposition(long id)                 { other.reposition(id) ; }
 
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.base.record;
+
+import org.apache.jena.atlas.lib.Closeable ;
+
+/** A cursor over a sequence of records that reads keys where they are stored,
+ *  rather than creating a {@link Record} for each one.  The cursor is positioned
+ *  before the first record; call {@link #advance} to move to each record in turn.
+ *  Key accessors are only valid until the next call of {@link #advance} or {@link #close}. 
+ */
+public interface RecordCursor extends Closeable
+{
+    /** Move to the next record; return false, and release any resources, if there isn't one. */
+    public boolean advance() ;
+    
+    /** The long at byte offset "offset" of the key of the current record */
+    public long getKeyLong(int offset) ;
+    
+    /** Copy the key of the current record into "key", which must be the key length. */
+    public void getKey(byte[] key) ;
+    
+    /** Create a Record for the current record. */
+    public Record getRecord() ;
+    
+    /** Reposition the cursor to the records between fromRec (inclusive) and toRec (exclusive),
+     *  which must be after the end of the current range, reusing the current position
+     *  instead of searching the index from the top.  Returns false, leaving the cursor closed,
+     *  if that is not possible; a new cursor is then needed.
+     */
+    public boolean seek(Record fromRec, Record toRec) ;
+    
+    /** Finish with the cursor early. Safe to call more than once. */
+    @Override
+    public void close() ;
+}
@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.base.recordbuffer;
+
+import static com.hp.hpl.jena.tdb.base.recordbuffer.RecordBufferPage.LINK ;
+import static com.hp.hpl.jena.tdb.base.recordbuffer.RecordBufferPageBase.COUNT ;
+
+import java.nio.ByteBuffer ;
+
+import com.hp.hpl.jena.tdb.base.StorageException ;
+import com.hp.hpl.jena.tdb.base.block.BlockCodec ;
+import com.hp.hpl.jena.tdb.base.buffer.RecordBuffer ;
+import com.hp.hpl.jena.tdb.base.record.RecordException ;
+import com.hp.hpl.jena.tdb.base.record.RecordFactory ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+/** Compressed storage for record blocks (B+Tree leaves) of key-only records made of longs
+ *  (i.e. tuples of NodeIds).  In-memory, the block is a normal {@link RecordBufferPage},
+ *  with space for {@link #Expansion} times as many records as an uncompressed block.
+ *  <p>
+ *  As stored, each record is one byte, the number of leading columns the same
+ *  as the previous record, then the varint of the difference of the first
+ *  differing column, then the varints of the remaining columns.  The first record
+ *  is relative to a record of all zeros.
+ *  <p>
+ *  Removing records never makes the encoding longer, and adding a record makes it
+ *  at most {@link #worstCase()} longer, so a B+Tree keeps leaves within the stored block
+ *  by splitting when there is less than that amount of space left. 
+ */
+public final class RecordBlockCodec implements BlockCodec
+{
+    /** Records in a decoded block compared to an uncompressed block */
+    public static final int Expansion = 4 ;
+    
+    // Count and link.
+    private static final int HEADER = LINK+SystemTDB.SizeOfInt ;
+    private static final int SizeOfLong = SystemTDB.SizeOfLong ;
+    private static final int MaxVarint = 10 ;
+    
+    private final int blockSize ;
+    private final int columns ;
+    private final int recordLength ;
+    private final int maxRecords ;
+    private final int space ;
+    private final int worstCase ;
+    
+    /** Can records from this factory be compressed? */
+    public static boolean canCompress(RecordFactory factory)
+    {
+        return factory.valueLength() == 0 && factory.keyLength() > 0 && factory.keyLength()%SizeOfLong == 0 ;
+    }
+
+    /** Codec for stored blocks of blockSize holding records from the factory */
+    public RecordBlockCodec(RecordFactory factory, int blockSize)
+    {
+        if ( ! canCompress(factory) )
+            throw new RecordException("Records can not be compressed: "+factory) ;
+        this.blockSize = blockSize ;
+        this.recordLength = factory.recordLength() ;
+        this.columns = recordLength/SizeOfLong ;
+        this.maxRecords = Expansion*RecordBufferPage.calcRecordSize(factory, blockSize) ;
+        this.space = blockSize-HEADER ;
+        this.worstCase = 1+columns*MaxVarint ;
+    }
+
+    @Override
+    public int decodedBlockSize()   { return HEADER+maxRecords*recordLength ; }
+
+    @Override
+    public int encodedBlockSize()   { return blockSize ; }
+    
+    /** The maximum number of bytes one record adds to the encoding */ 
+    public int worstCase()          { return worstCase ; }
+    
+    /** The number of bytes to encode the records (excluding the block header) */
+    public int encodedLength(RecordBuffer rBuff)
+    {
+        int len = 0 ;
+        for ( int i = 0 ; i < rBuff.size() ; i++ )
+            len += encodedLength(rBuff, i) ;
+        return len ;
+    }
+    
+    /** Is there space to add any record? */ 
+    public boolean hasRoom(RecordBuffer rBuff)
+    {
+        return encodedLength(rBuff)+worstCase <= space ;
+    }
+
+    /** Will the records fit, with room for another, when joined with another block of minimum size? */ 
+    public boolean isMinSize(RecordBuffer rBuff)
+    {
+        return encodedLength(rBuff) <= (space-worstCase)/2 ;
+    }
+
+    /** Index of the last record of the lower part when splitting the block in two parts
+     *  of about the same encoded length, each leaving room in a block of maxSize records.  
+     */
+    public int splitIndex(RecordBuffer rBuff)
+    {
+        int N = rBuff.size() ;
+        int half = encodedLength(rBuff)/2 ;
+        int len = 0 ;
+        int idx = 0 ;
+        for ( ; idx < N-2 ; idx++ )
+        {
+            len += encodedLength(rBuff, idx) ;
+            if ( len >= half )
+                break ;
+        }
+        // Both parts must have space for one more record.
+        int maxSize = rBuff.maxSize() ;
+        idx = Math.min(idx, maxSize-2) ;
+        idx = Math.max(idx, N-maxSize) ;
+        return idx ;
+    }
+
+    // Bytes for record idx, given the one before.
+    private int encodedLength(RecordBuffer rBuff, int idx)
+    {
+        int p = 0 ;
+        if ( idx > 0 )
+        {
+            while ( p < columns-1 && rBuff.getLong(idx, p*SizeOfLong) == rBuff.getLong(idx-1, p*SizeOfLong) )
+                p++ ;
+        }
+        else
+        {
+            while ( p < columns-1 && rBuff.getLong(idx, p*SizeOfLong) == 0 )
+                p++ ;
+        }
+        long prev = ( idx > 0 ) ? rBuff.getLong(idx-1, p*SizeOfLong) : 0 ;
+        int len = 1+varintLength(rBuff.getLong(idx, p*SizeOfLong)-prev) ;
+        for ( int c = p+1 ; c < columns ; c++ )
+            len += varintLength(rBuff.getLong(idx, c*SizeOfLong)) ;
+        return len ;
+    }
+
+    @Override
+    public void encode(ByteBuffer decoded, ByteBuffer encoded)
+    {
+        int count = decoded.getInt(COUNT) ;
+        if ( count < 0 || count > maxRecords )
+            throw new StorageException("RecordBlockCodec: bad record count: "+count) ;
+        encoded.putInt(COUNT, count) ;
+        encoded.putInt(LINK, decoded.getInt(LINK)) ;
+        
+        ByteBuffer dst = encoded.duplicate() ;
+        dst.position(HEADER) ;
+        long[] prev = new long[columns] ;
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            int x = HEADER+i*recordLength ;
+            int p = 0 ;
+            while ( p < columns-1 && decoded.getLong(x+p*SizeOfLong) == prev[p] )
+                p++ ;
+            if ( dst.remaining() < worstCase && dst.remaining() < encodedLength(decoded, x, p, prev) )
+                throw new StorageException("RecordBlockCodec: records do not fit in the block") ;
+            dst.put((byte)p) ;
+            long v = decoded.getLong(x+p*SizeOfLong) ;
+            putVarint(dst, v-prev[p]) ;
+            prev[p] = v ;
+            for ( int c = p+1 ; c < columns ; c++ )
+            {
+                v = decoded.getLong(x+c*SizeOfLong) ;
+                putVarint(dst, v) ;
+                prev[c] = v ;
+            }
+        }
+        // Clear the rest.
+        while ( dst.hasRemaining() )
+            dst.put((byte)0) ;
+    }
+    
+    private int encodedLength(ByteBuffer decoded, int x, int p, long[] prev)
+    {
+        int len = 1+varintLength(decoded.getLong(x+p*SizeOfLong)-prev[p]) ;
+        for ( int c = p+1 ; c < columns ; c++ )
+            len += varintLength(decoded.getLong(x+c*SizeOfLong)) ;
+        return len ;
+    }
+
+    @Override
+    public void decode(ByteBuffer encoded, ByteBuffer decoded)
+    {
+        int count = encoded.getInt(COUNT) ;
+        if ( count < 0 || count > maxRecords )
+            throw new StorageException("RecordBlockCodec: bad record count: "+count) ;
+        decoded.putInt(COUNT, count) ;
+        decoded.putInt(LINK, encoded.getInt(LINK)) ;
+        
+        ByteBuffer src = encoded.duplicate() ;
+        src.position(HEADER) ;
+        long[] prev = new long[columns] ;
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            int p = src.get() ;
+            if ( p < 0 || p >= columns )
+                throw new StorageException("RecordBlockCodec: bad record encoding: block corrupted?") ;
+            prev[p] = prev[p]+getVarint(src) ;
+            for ( int c = p+1 ; c < columns ; c++ )
+                prev[c] = getVarint(src) ;
+            int x = HEADER+i*recordLength ;
+            for ( int c = 0 ; c < columns ; c++ )
+                decoded.putLong(x+c*SizeOfLong, prev[c]) ;
+        }
+    }
+    
+    // Unsigned varints.
+    
+    private static int varintLength(long v)
+    {
+        int bits = 64-Long.numberOfLeadingZeros(v) ;
+        return ( bits == 0 ) ? 1 : (bits+6)/7 ;
+    }
+    
+    private static void putVarint(ByteBuffer bb, long v)
+    {
+        while ( (v & ~0x7FL) != 0 )
+        {
+            bb.put((byte)((v & 0x7F) | 0x80)) ;
+            v = v >>> 7 ;
+        }
+        bb.put((byte)v) ;
+    }
+    
+    private static long getVarint(ByteBuffer bb)
+    {
+        long v = 0 ;
+        for ( int shift = 0 ; shift < 64 ; shift += 7 )
+        {
+            byte b = bb.get() ;
+            v |= (long)(b & 0x7F) << shift ;
+            if ( (b & 0x80) == 0 )
+                return v ;
+        }
+        throw new StorageException("RecordBlockCodec: bad varint: block corrupted?") ;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return String.format("RecordBlockCodec[block=%d, records=%d, columns=%d]", blockSize, maxRecords, columns) ;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.base.recordbuffer;
+
+import static org.apache.jena.atlas.lib.Alg.decodeIndex ;
+
+import java.util.Iterator ;
+import java.util.NoSuchElementException ;
+
+import org.apache.jena.atlas.iterator.NullIterator ;
+
+import com.hp.hpl.jena.tdb.base.StorageException ;
+import com.hp.hpl.jena.tdb.base.block.BlockException ;
+import com.hp.hpl.jena.tdb.base.buffer.RecordBuffer ;
+import com.hp.hpl.jena.tdb.base.record.Record ;
+import com.hp.hpl.jena.tdb.base.record.RecordCursor ;
+
+/** Cursor over a range of records in a chain of record buffer pages.
+ *  Like {@link RecordRangeIterator} but keys are read from the page's
+ *  ByteBuffer, which is the block buffer (memory mapped or cached),
+ *  so no Record is created for each slot.
+ */
+final public
+class RecordRangeCursor implements RecordCursor
+{
+    /** Cursor over a range of fromRec (inclusive) to toRec (exclusive) */
+    public static RecordCursor cursor(int pageId, Record fromRec, Record toRec, RecordBufferPageMgr pageMgr)
+    {
+        if ( ! pageMgr.valid(pageId) )
+            throw new BlockException("RecordRangeCursor.cursor -- No such block (pageId="+pageId+", fromRec="+fromRec+", toRec="+toRec+ ")") ;
+        return new RecordRangeCursor(pageId, fromRec, toRec, pageMgr) ;
+    }
+    
+    private RecordBufferPage currentPage ;      // Set null when finished.
+    private RecordBuffer records ;
+    private int currentIdx ;                    // Slot of the next record.
+    private int slotIdx = -1 ;                  // Slot of the current record.
+    
+    private final RecordBufferPageMgr pageMgr ;
+    private Record maxRec ;
+    // The page the cursor was on, kept after the cursor closes, for seek.
+    private int pageId = -1 ;
+    // Block managers track active iterators (e.g. for transactions).
+    // This cursor registers itself using a stand-in iterator.
+    private final Iterator<Record> tracker = new NullIterator<Record>() ;
+    private boolean tracking = false ;
+    
+    private long countRecords = 0 ;
+    private long countBlocks = 0 ;
+
+    private RecordRangeCursor(int id, Record fromRec, Record toRec, RecordBufferPageMgr pageMgr)
+    {
+        currentIdx = 0 ;
+        this.pageMgr = pageMgr;
+        this.maxRec = toRec ;
+        
+        if ( toRec != null && fromRec != null && Record.keyLE(toRec, fromRec) )
+        {
+            currentPage = null ;
+            return ;
+        }
+
+        pageMgr.getBlockMgr().beginIterator(tracker) ;
+        tracking = true ;
+        currentPage = pageMgr.getReadIterator(id) ;
+        pageId = id ;
+        records = currentPage.getRecordBuffer() ;
+        if ( currentPage.getCount() == 0 )
+        {
+            // Empty page.
+            close() ;
+            return ;
+        }
+            
+        if ( fromRec != null )
+        {
+            currentIdx = records.find(fromRec) ;
+            if ( currentIdx < 0 )
+                currentIdx = decodeIndex(currentIdx) ;
+        }
+    }
+
+    @Override
+    public boolean advance()
+    {
+        slotIdx = -1 ;
+        if ( currentPage == null )
+            return false ;
+        while ( currentIdx >= currentPage.getCount() )
+        {
+            // Move to next.
+            int link = currentPage.getLink() ;
+            if ( link < 0 )
+            {
+                close() ;
+                return false ;
+            }
+            RecordBufferPage nextPage = pageMgr.getReadIterator(link) ;
+            RecordBuffer nextRecords = nextPage.getRecordBuffer() ;
+            // Check currentPage -> nextPage is strictly increasing keys.
+            // Once per block so the cost of creating a Record is acceptable. 
+            if ( nextPage.getCount() > 0 && records.compareKey(currentPage.getCount()-1, nextRecords.getLow()) >= 0 )
+            {
+                pageMgr.release(nextPage) ;
+                throw new StorageException("RecordRangeCursor: records not strictly increasing: "+records.getHigh()+" // "+nextRecords.getLow()) ;
+            }
+            pageMgr.release(currentPage) ;
+            currentPage = nextPage ;
+            pageId = link ;
+            records = nextRecords ;
+            countBlocks++ ;
+            currentIdx = 0 ;
+        }
+        
+        if ( maxRec != null && records.compareKey(currentIdx, maxRec) >= 0 )
+        {
+            close() ;
+            return false ;
+        }
+        slotIdx = currentIdx ;
+        currentIdx++ ;
+        countRecords++ ;
+        return true ;
+    }
+
+    @Override
+    public long getKeyLong(int offset)
+    {
+        check() ;
+        return records.getLong(slotIdx, offset) ;
+    }
+
+    @Override
+    public void getKey(byte[] key)
+    {
+        check() ;
+        records.getKey(slotIdx, key) ;
+    }
+
+    @Override
+    public Record getRecord()
+    {
+        check() ;
+        return records.get(slotIdx) ;
+    }
+
+    @Override
+    public boolean seek(Record fromRec, Record toRec)
+    {
+        // Only forward, from the end of a bounded range.
+        if ( pageId < 0 || fromRec == null || maxRec == null || Record.keyLT(fromRec, maxRec) )
+        {
+            close() ;
+            return false ;
+        }
+        close() ;
+        maxRec = toRec ;
+        if ( toRec != null && Record.keyLE(toRec, fromRec) )
+            // Empty range.
+            return true ;
+        
+        // All records before the current page are before the end of the
+        // previous range, so the start is in this page or a later one.
+        // Look in this page and the next; otherwise search from the top.
+        pageMgr.getBlockMgr().beginIterator(tracker) ;
+        tracking = true ;
+        int id = pageId ;
+        for ( int i = 0 ; i < 2 ; i++ )
+        {
+            RecordBufferPage page = pageMgr.getReadIterator(id) ;
+            RecordBuffer rb = page.getRecordBuffer() ;
+            int count = page.getCount() ;
+            if ( count > 0 && rb.compareKey(count-1, fromRec) >= 0 )
+            {
+                currentPage = page ;
+                records = rb ;
+                pageId = id ;
+                currentIdx = rb.find(fromRec) ;
+                if ( currentIdx < 0 )
+                    currentIdx = decodeIndex(currentIdx) ;
+                return true ;
+            }
+            int link = page.getLink() ;
+            pageMgr.release(page) ;
+            if ( link < 0 )
+            {
+                // No more records: empty range.
+                pageId = id ;
+                close() ;
+                return true ;
+            }
+            id = link ;
+        }
+        pageId = -1 ;
+        close() ;
+        return false ;
+    }
+    
+    private void check()
+    {
+        if ( slotIdx < 0 )
+            throw new NoSuchElementException("RecordRangeCursor: not positioned on a record") ;
+    }
+    
+    @Override
+    public void close()
+    {
+        if ( currentPage != null )
+            pageMgr.release(currentPage) ;
+        currentPage = null ;
+        records = null ;
+        currentIdx = -99 ;
+        slotIdx = -1 ;
+        if ( tracking )
+            pageMgr.getBlockMgr().endIterator(tracker) ;
+        tracking = false ;
+    }
+
+    final public long getCountRecords()     { return countRecords ; }
+
+    final public long getCountBlocks()      { return countBlocks ; }
+}
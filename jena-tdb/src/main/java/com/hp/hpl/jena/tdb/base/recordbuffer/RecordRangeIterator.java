@@ -103,16 +103,18 @@ class RecordRangeIterator implements Iterator<Record>, Closeable
                 return false ;
             }
             
-            if ( currentPage != null )
-                pageMgr.release(currentPage) ;
-            
             RecordBufferPage nextPage = pageMgr.getReadIterator(link) ;
             // Check currentPage -> nextPage is strictly increasing keys. 
             Record r1 = currentPage.getRecordBuffer().getHigh() ;
             Record r2 = nextPage.getRecordBuffer().getLow() ;
+            // Release after the last use : the space of a released page may be reused.
+            pageMgr.release(currentPage) ;
+            currentPage = nextPage ;
             if ( Record.keyGE(r1, r2) )
+            {
+                close() ;
                 throw new StorageException("RecordRangeIterator: records not strictly increasing: "+r1+" // "+r2) ;
-            currentPage = nextPage ;
+            }
             countBlocks++ ;
             currentIdx = 0 ;
         }
@@ -21,6 +21,7 @@ package com.hp.hpl.jena.tdb.index;
 import java.util.Iterator;
 
 import com.hp.hpl.jena.tdb.base.record.Record;
+import com.hp.hpl.jena.tdb.base.record.RecordCursor ;
 
 
 public interface RangeIndex extends Index
@@ -28,6 +29,12 @@ public interface RangeIndex extends Index
     /** Return records between min (inclusive) and max (exclusive), based on the record keys */
     public Iterator<Record> iterator(Record recordMin, Record recordMax) ;
     
+    /** Return a cursor over the records between min (inclusive) and max (exclusive), based on the record keys.
+     *  Null for min or max means unbounded.  The cursor reads the keys in place and must be closed
+     *  if not run to the end.
+     */
+    public RecordCursor cursor(Record recordMin, Record recordMax) ;
+    
     /** Return the record containing the least key - may or may not have the associated value */
     public Record minKey() ;
 
@@ -23,6 +23,7 @@ import java.util.Iterator ;
 import org.slf4j.Logger ;
 
 import com.hp.hpl.jena.tdb.base.record.Record ;
+import com.hp.hpl.jena.tdb.base.record.RecordCursor ;
 
 public final class RangeIndexLogger extends RangeIndexWrapper
 {
@@ -70,4 +71,11 @@ public final class RangeIndexLogger extends RangeIndexWrapper
         log.info("iterator("+minRec+", "+maxRec+")") ;
         return super.iterator(minRec, maxRec) ;
     }
+
+    @Override
+    public RecordCursor cursor(Record minRec, Record maxRec)
+    {
+        log.info("cursor("+minRec+", "+maxRec+")") ;
+        return super.cursor(minRec, maxRec) ;
+    }
 }
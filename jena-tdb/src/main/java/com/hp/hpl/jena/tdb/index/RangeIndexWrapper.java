@@ -21,6 +21,7 @@ package com.hp.hpl.jena.tdb.index;
 import java.util.Iterator ;
 
 import com.hp.hpl.jena.tdb.base.record.Record ;
+import com.hp.hpl.jena.tdb.base.record.RecordCursor ;
 import com.hp.hpl.jena.tdb.base.record.RecordFactory ;
 import com.hp.hpl.jena.tdb.index.RangeIndex ;
 
@@ -68,6 +69,10 @@ public class RangeIndexWrapper implements RangeIndex
     public Iterator<Record> iterator(Record minRec, Record maxRec)
     { return rIndex.iterator(minRec, maxRec) ; }
     
+    @Override
+    public RecordCursor cursor(Record minRec, Record maxRec)
+    { return rIndex.cursor(minRec, maxRec) ; }
+    
     @Override
     public boolean isEmpty()
     { return rIndex.isEmpty() ; }
@@ -21,10 +21,15 @@ package com.hp.hpl.jena.tdb.index;
 import static com.hp.hpl.jena.tdb.sys.SystemTDB.SizeOfNodeId;
 import static java.lang.String.format;
 
+import java.util.ArrayList ;
+import java.util.Comparator ;
 import java.util.Iterator;
+import java.util.List ;
+import java.util.NoSuchElementException ;
 
 import org.apache.jena.atlas.iterator.* ;
 import org.apache.jena.atlas.lib.Bytes ;
+import org.apache.jena.atlas.lib.Closeable ;
 import org.apache.jena.atlas.lib.ColumnMap ;
 import org.apache.jena.atlas.lib.Tuple ;
 
@@ -32,7 +37,9 @@ import org.apache.jena.atlas.lib.Tuple ;
 
 import com.hp.hpl.jena.tdb.TDBException;
 import com.hp.hpl.jena.tdb.base.record.Record;
+import com.hp.hpl.jena.tdb.base.record.RecordCursor ;
 import com.hp.hpl.jena.tdb.base.record.RecordFactory;
+import com.hp.hpl.jena.tdb.index.bplustree.BPlusTree ;
 import com.hp.hpl.jena.tdb.lib.TupleLib;
 import com.hp.hpl.jena.tdb.store.NodeId;
 
@@ -104,6 +111,47 @@ public class TupleIndexRecord extends TupleIndexBase
         
         // Convert to index order.
         Tuple<NodeId> pattern = colMap.map(patternNaturalOrder) ;
+        Scan scan = scan(pattern) ;
+        
+        // Is it a simple existence test?
+        if ( scan.exact )
+        {
+            if ( index.contains(scan.minRec) )
+                return new SingletonIterator<Tuple<NodeId>>(patternNaturalOrder) ;
+            else
+                return new NullIterator<Tuple<NodeId>>() ;
+        }
+        
+        if ( scan.check != null && ! partialScanAllowed )
+            return null ;
+
+        if ( scan.minRec == null )
+        {
+            if ( ! fullScanAllowed )
+                return null ;
+            //System.out.println("Full scan") ;
+            // Full scan necessary
+            return new TupleCursorIterator(index.cursor(null, null), scan.check) ;
+        }
+        
+        return new TupleCursorIterator(index.cursor(scan.minRec, scan.maxRec), scan.check) ;
+    }
+    
+    /** The key range of the index for a pattern (in index order). */
+    private static final class Scan
+    {
+        // Null for a full scan.
+        Record minRec = null ;
+        Record maxRec = null ;
+        // Slots, in index order, that must be checked on each record.
+        Tuple<NodeId> check = null ;
+        // All slots are set.
+        boolean exact = false ;
+    }
+
+    private Scan scan(Tuple<NodeId> pattern)
+    {
+        Scan scan = new Scan() ;
         
         // Canonical form.
         int numSlots = 0 ;
@@ -135,88 +183,277 @@ public class TupleIndexRecord extends TupleIndexBase
             }
         }
         
-        // Is it a simple existence test?
         if ( numSlots == pattern.size() )
         {
-            if ( index.contains(minRec) )
-                return new SingletonIterator<Tuple<NodeId>>(pattern) ;  
-            else
-                return new NullIterator<Tuple<NodeId>>() ;
+            scan.exact = true ;
+            scan.minRec = minRec ;
+            return scan ;
         }
         
-        Iterator<Record> iter = null ;
-        
+        if ( leadingIdx < numSlots-1 )
+            // Didn't match all defined slots in request.  
+            // Partial or full scan needed.
+            scan.check = pattern ;
+
         if ( leadingIdx < 0 )
+            return scan ;
+        
+        // Adjust the maxRec.
+        NodeId X = pattern.get(leadingIdx) ;
+        // Set the max Record to the leading NodeIds, +1.
+        // Example, SP? inclusive to S(P+1)? exclusive where ? is zero. 
+        Bytes.setLong(X.getId()+1, maxRec.getKey(), leadingIdx*SizeOfNodeId) ;
+        scan.minRec = minRec ;
+        scan.maxRec = maxRec ;
+        return scan ;
+    }
+    
+    /** Divide the find of a pattern into about n finds over consecutive key ranges of the index,
+     *  using the keys of the B+Tree nodes.  Together, the parts find the same tuples as {@link #find}.
+     *  Input pattern in natural order, not index order.
+     *  Returns null if the find is not a range scan of a B+Tree.
+     */
+    public List<ScanPartition> partitions(Tuple<NodeId> patternNaturalOrder, int n)
+    {
+        if ( ! ( index instanceof BPlusTree ) )
+            return null ;
+        Tuple<NodeId> pattern = colMap.map(patternNaturalOrder) ;
+        Scan scan = scan(pattern) ;
+        if ( scan.exact )
+            return null ;
+        List<Record> keys = ((BPlusTree)index).splitKeys(scan.minRec, scan.maxRec, n) ;
+        List<ScanPartition> parts = new ArrayList<ScanPartition>(keys.size()+1) ;
+        Record lo = scan.minRec ;
+        for ( Record key : keys )
         {
-            if ( ! fullScanAllowed )
+            Record k = factory.createKeyOnly(key) ;
+            parts.add(new ScanPartition(lo, k, scan.check)) ;
+            lo = k ;
+        }
+        parts.add(new ScanPartition(lo, scan.maxRec, scan.check)) ;
+        return parts ;
+    }
+    
+    /** One key range of a partitioned find : see {@link TupleIndexRecord#partitions}. */  
+    public final class ScanPartition
+    {
+        private final Record minRec ;
+        private final Record maxRec ;
+        private final Tuple<NodeId> check ;
+        
+        private ScanPartition(Record minRec, Record maxRec, Tuple<NodeId> check)
+        {
+            this.minRec = minRec ;
+            this.maxRec = maxRec ;
+            this.check = check ;
+        }
+        
+        /** Find the matching tuples in this key range (natural order). */  
+        public Iterator<Tuple<NodeId>> find()
+        {
+            return new TupleCursorIterator(index.cursor(minRec, maxRec), check) ;
+        }
+    }
+    
+    /** Find the tuples matching the pattern where the NodeId in "slot" is in the range
+     *  min (inclusive) to max (exclusive), compared as NodeId values.
+     *  Input pattern in natural order, not index order; the slot is a natural order slot.
+     *  The set slots of the pattern must be the leading columns of this index,
+     *  and "slot" must be the column after them; returns null if not.
+     */
+    public Iterator<Tuple<NodeId>> findRange(Tuple<NodeId> patternNaturalOrder, int slot, long min, long max)
+    {
+        int numBound = 0 ;
+        for ( int i = 0 ; i < patternNaturalOrder.size() ; i++ )
+        {
+            if ( ! NodeId.isAny(patternNaturalOrder.get(i)) )
+                numBound++ ;
+        }
+        if ( numBound >= tupleLength || colMap.fetchSlotIdx(numBound) != slot )
+            return null ;
+
+        Record minRec = factory.createKeyOnly() ;
+        Record maxRec = factory.createKeyOnly() ;
+        for ( int i = 0 ; i < numBound ; i++ )
+        {
+            NodeId X = patternNaturalOrder.get(colMap.fetchSlotIdx(i)) ;
+            if ( NodeId.isAny(X) )
+                // Set slots are not the leading columns.
                 return null ;
-            //System.out.println("Full scan") ;
-            // Full scan necessary
-            iter = index.iterator() ;
+            Bytes.setLong(X.getId(), minRec.getKey(), i*SizeOfNodeId) ;
+            Bytes.setLong(X.getId(), maxRec.getKey(), i*SizeOfNodeId) ;
         }
-        else 
+        Bytes.setLong(min, minRec.getKey(), numBound*SizeOfNodeId) ;
+        Bytes.setLong(max, maxRec.getKey(), numBound*SizeOfNodeId) ;
+        return new TupleCursorIterator(index.cursor(minRec, maxRec), null) ;
+    }
+
+    /** Order of patterns (natural order) by the keys of this index, unset slots first. */
+    public final Comparator<Tuple<NodeId>> keyOrder = new Comparator<Tuple<NodeId>>() {
+        @Override
+        public int compare(Tuple<NodeId> pattern1, Tuple<NodeId> pattern2)
         {
-            // Adjust the maxRec.
-            NodeId X = pattern.get(leadingIdx) ;
-            // Set the max Record to the leading NodeIds, +1.
-            // Example, SP? inclusive to S(P+1)? exclusive where ? is zero. 
-            Bytes.setLong(X.getId()+1, maxRec.getKey(), leadingIdx*SizeOfNodeId) ;
-            iter = index.iterator(minRec, maxRec) ;
+            for ( int i = 0 ; i < tupleLength ; i++ )
+            {
+                int j = colMap.fetchSlotIdx(i) ;
+                // Keys compare as unsigned bytes.
+                long x1 = id(pattern1.get(j)) + Long.MIN_VALUE ;
+                long x2 = id(pattern2.get(j)) + Long.MIN_VALUE ;
+                if ( x1 != x2 )
+                    return ( x1 < x2 ) ? -1 : 1 ;
+            }
+            return 0 ;
         }
         
-        Iterator<Tuple<NodeId>> tuples = Iter.map(iter, transformToTuple) ;
+        private long id(NodeId nodeId)
+        {
+            return NodeId.isAny(nodeId) ? 0 : nodeId.getId() ;
+        }
+    } ;
+    
+    /** Create a {@link Prober} for a series of finds on this index. */
+    public Prober prober()
+    {
+        return new Prober() ;
+    }
+    
+    /** A series of finds, one at a time, that share one cursor. When the patterns are
+     *  in {@link #keyOrder}, each find moves the cursor forward from where the last one was,
+     *  usually in the same or the next block, instead of searching from the root of the index. 
+     *  Patterns must set leading columns of the index; others are found as by {@link #find}. 
+     */
+    public final class Prober implements Closeable
+    {
+        private RecordCursor cursor = null ;
         
-        if ( leadingIdx < numSlots-1 )
+        private Prober() {}
+        
+        /** Find the matching tuples. The iterator from the previous find must not be used after this call. */  
+        public Iterator<Tuple<NodeId>> find(Tuple<NodeId> patternNaturalOrder)
         {
-            if ( ! partialScanAllowed )
-                return null ;
-            // Didn't match all defined slots in request.  
-            // Partial or full scan needed.
-            //pattern.unmap(colMap) ;
-            tuples = scan(tuples, patternNaturalOrder) ;
+            Record minRec = factory.createKeyOnly() ;
+            Record maxRec = factory.createKeyOnly() ;
+            int leadingIdx = -1 ;
+            for ( int i = 0 ; i < tupleLength ; i++ )
+            {
+                NodeId X = patternNaturalOrder.get(colMap.fetchSlotIdx(i)) ;
+                if ( NodeId.isAny(X) )
+                    break ;
+                leadingIdx = i ;
+                Bytes.setLong(X.getId(), minRec.getKey(), i*SizeOfNodeId) ;
+                Bytes.setLong(X.getId(), maxRec.getKey(), i*SizeOfNodeId) ;
+            }
+            for ( int i = leadingIdx+1 ; i < tupleLength ; i++ )
+            {
+                if ( ! NodeId.isAny(patternNaturalOrder.get(colMap.fetchSlotIdx(i))) )
+                    // Not a prefix of this index.
+                    return TupleIndexRecord.this.find(patternNaturalOrder) ;
+            }
+            if ( leadingIdx < 0 )
+                return TupleIndexRecord.this.find(patternNaturalOrder) ;
+            
+            NodeId X = patternNaturalOrder.get(colMap.fetchSlotIdx(leadingIdx)) ;
+            Bytes.setLong(X.getId()+1, maxRec.getKey(), leadingIdx*SizeOfNodeId) ;
+            if ( cursor == null || ! cursor.seek(minRec, maxRec) )
+                cursor = index.cursor(minRec, maxRec) ;
+            return new TupleCursorIterator(cursor, null, false) ;
         }
         
-        return tuples ;
+        @Override
+        public void close()
+        {
+            if ( cursor != null )
+                cursor.close() ;
+            cursor = null ;
+        }
     }
     
     @Override
     public Iterator<Tuple<NodeId>> all()
     {
-        Iterator<Record> iter = index.iterator() ;
-        return Iter.map(iter, transformToTuple) ;
+        return new TupleCursorIterator(index.cursor(null, null), null) ;
     }
     
-    private final Transform<Record, Tuple<NodeId>> transformToTuple = new Transform<Record, Tuple<NodeId>>()
+    /** Tuples, in natural order, made directly from the keys of the records of a cursor.
+     *  If there is a pattern (index order), slots that are set in the pattern are checked
+     *  against the key before any tuple is created. 
+     */
+    private final class TupleCursorIterator implements Iterator<Tuple<NodeId>>, Closeable
     {
-        @Override
-        public final Tuple<NodeId> convert(Record item)
+        private final RecordCursor cursor ;
+        private final Tuple<NodeId> pattern ;
+        private final boolean ownsCursor ;
+        private Tuple<NodeId> slot = null ;
+        private boolean finished = false ;
+        
+        TupleCursorIterator(RecordCursor cursor, Tuple<NodeId> pattern)
         {
-            return TupleLib.tuple(item, colMap) ;
+            this(cursor, pattern, true) ;
         }
-    } ; 
-    
-    private Iterator<Tuple<NodeId>> scan(Iterator<Tuple<NodeId>> iter,
-                                         final Tuple<NodeId> pattern)
-    {
-        Filter<Tuple<NodeId>> filter = new Filter<Tuple<NodeId>>()
+        
+        TupleCursorIterator(RecordCursor cursor, Tuple<NodeId> pattern, boolean ownsCursor)
         {
-            @Override
-            public boolean accept(Tuple<NodeId> item)
+            this.cursor = cursor ;
+            this.pattern = pattern ;
+            this.ownsCursor = ownsCursor ;
+        }
+        
+        @Override
+        public boolean hasNext()
+        {
+            if ( slot != null )
+                return true ;
+            if ( finished )
+                return false ;
+            while ( cursor.advance() )
             {
-                // Check on pattern and item (both in natural order)
+                if ( pattern != null && ! matches() )
+                    continue ;
+                NodeId[] nodeIds = new NodeId[tupleLength] ;
                 for ( int i = 0 ; i < tupleLength ; i++ )
-                {
-                    NodeId n = pattern.get(i) ;
-                    // The pattern must be null/Any or match the tuple being tested.
-                    if ( ! NodeId.isAny(n) )
-                        if ( ! item.get(i).equals(n) ) 
-                            return false ;
-                }
+                    nodeIds[colMap.fetchSlotIdx(i)] = NodeId.create(cursor.getKeyLong(i*SizeOfNodeId)) ;
+                slot = Tuple.create(nodeIds) ;
                 return true ;
             }
-        } ;
+            finished = true ;
+            return false ;
+        }
         
-        return Iter.filter(iter, filter) ;
+        private boolean matches()
+        {
+            for ( int i = 0 ; i < tupleLength ; i++ )
+            {
+                NodeId n = pattern.get(i) ;
+                // The pattern must be null/Any or match the key being tested.
+                if ( ! NodeId.isAny(n) && cursor.getKeyLong(i*SizeOfNodeId) != n.getId() )
+                    return false ;
+            }
+            return true ;
+        }
+        
+        @Override
+        public Tuple<NodeId> next()
+        {
+            if ( ! hasNext() )
+                throw new NoSuchElementException() ;
+            Tuple<NodeId> x = slot ;
+            slot = null ;
+            return x ;
+        }
+        
+        @Override
+        public void remove()
+        { throw new UnsupportedOperationException("remove") ; }
+        
+        @Override
+        public void close()
+        {
+            finished = true ;
+            slot = null ;
+            // A shared cursor is closed by its Prober.
+            if ( ownsCursor )
+                cursor.close() ;
+        }
     }
     
     @Override
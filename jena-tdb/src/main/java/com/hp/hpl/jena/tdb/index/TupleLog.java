@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.index;
+
+import java.util.ArrayList ;
+import java.util.List ;
+
+import org.apache.jena.atlas.lib.Tuple ;
+
+import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+
+/** The adds and deletes made to one or more {@link TupleTable}s, in order, so they can
+ *  be made again, for example on top of changes committed by another writer.
+ * <p>
+ * Making the changes again only gives the same outcome if they did not depend on anything
+ * read beforehand, so the storage reports reads ({@link #read}) and any read other than
+ * as part of making a change means the log can not be replayed.  Nor can it if it grows
+ * beyond its maximum size, when recording stops.
+ */
+public class TupleLog
+{
+    private static class Change
+    {
+        final TupleTable table ;
+        final boolean add ;
+        final Tuple<NodeId> tuple ;
+        Change(TupleTable table, boolean add, Tuple<NodeId> tuple)
+        { this.table = table ; this.add = add ; this.tuple = tuple ; }
+    }
+    
+    private final int maxSize ;
+    // null when the log can not be replayed.
+    private List<Change> changes = new ArrayList<Change>() ;
+    // Nesting of changes in progress.
+    private int changing = 0 ;
+    
+    public TupleLog(int maxSize)
+    {
+        this.maxSize = maxSize ;
+    }
+    
+    /*package*/ void startChange()                  { changing++ ; }
+    /*package*/ void finishChange()                 { changing-- ; }
+    
+    /*package*/ void added(TupleTable table, Tuple<NodeId> tuple)       { record(new Change(table, true, tuple)) ; }
+    /*package*/ void deleted(TupleTable table, Tuple<NodeId> tuple)     { record(new Change(table, false, tuple)) ; }
+    
+    private void record(Change change)
+    {
+        if ( changes == null )
+            return ;
+        if ( changes.size() >= maxSize )
+        {
+            invalidate() ;
+            return ;
+        }
+        changes.add(change) ;
+    }
+    
+    /** Note that data has been read.  Outside of a change, this stops the log being replayable. */
+    public void read()
+    {
+        if ( changing == 0 )
+            invalidate() ;
+    }
+    
+    /** The changes can no longer be replayed. */
+    public void invalidate()                        { changes = null ; }
+    
+    public boolean isReplayable()                   { return changes != null ; }
+    
+    /** Make the changes again, in the same order. */
+    public void replay()
+    {
+        if ( changes == null )
+            throw new TDBException("Changes can not be replayed") ;
+        // Replaying records the changes again.
+        List<Change> x = changes ;
+        changes = new ArrayList<Change>(x.size()) ;
+        for ( Change c : x )
+        {
+            if ( c.add )
+                c.table.add(c.tuple) ;
+            else
+                c.table.delete(c.tuple) ;
+        }
+    }
+}
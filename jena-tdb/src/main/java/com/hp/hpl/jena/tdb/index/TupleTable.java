@@ -22,6 +22,7 @@ import static java.lang.String.format ;
 
 import java.util.Iterator ;
 
+import org.apache.jena.atlas.iterator.Iter ;
 import org.apache.jena.atlas.lib.Closeable ;
 import org.apache.jena.atlas.lib.Sync ;
 import org.apache.jena.atlas.lib.Tuple ;
@@ -30,6 +31,7 @@ import org.slf4j.Logger ;
 import org.slf4j.LoggerFactory ;
 
 import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsDelta ;
 import com.hp.hpl.jena.tdb.store.NodeId ;
 import com.hp.hpl.jena.tdb.sys.SystemTDB ;
 
@@ -42,6 +44,14 @@ public class TupleTable implements Sync, Closeable
     private final TupleIndex   scanAllIndex ;   // Use this index if a complete scan is needed.
     private final int tupleLen ;
     private boolean syncNeeded = false ;
+    // Statistics recording: the delta, and the slots of G (or -1), S, P and O in a tuple. 
+    private StatsDelta stats = null ;
+    private int[] statsSlots = null ;
+    // Indexes for the subject and object probes, chosen once.
+    private TupleIndex statsSubjectIndex = null ;
+    private TupleIndex statsObjectIndex = null ;
+    // Log of changes made, or null.
+    private TupleLog changeLog = null ;
     
     public TupleTable(int tupleLen, TupleIndex[] indexes)
     {
@@ -83,12 +93,67 @@ public class TupleTable implements Sync, Closeable
         return indexes[0] ;
     }
 
+    /** Record changes to the statistics in the given delta, or stop recording (null).
+     * Each change (not a duplicate add, nor a delete of a missing tuple) costs two
+     * index range probes, to find whether the subject and the object are new (or gone)
+     * for the predicate.
+     */
+    public void setStats(StatsDelta stats)
+    {
+        this.stats = stats ;
+        if ( stats == null )
+            return ;
+        // Slots from the column order of the primary index.
+        String primary = indexes[0].getName() ;
+        statsSlots = new int[]{ primary.indexOf('G'), primary.indexOf('S'), primary.indexOf('P'), primary.indexOf('O') } ;
+        if ( statsSlots[1] < 0 || statsSlots[2] < 0 || statsSlots[3] < 0 )
+            throw new TDBException("Can't record statistics: primary index is "+primary) ;
+        chooseStatsIndexes() ;
+    }
+    
+    private void chooseStatsIndexes()
+    {
+        statsSubjectIndex = chooseIndex(probePattern(statsSlots[1])) ;
+        statsObjectIndex = chooseIndex(probePattern(statsSlots[3])) ;
+    }
+    
+    // The shape of a probe: slots set are G (if any), P and the given slot.
+    private Tuple<NodeId> probePattern(int slot)
+    {
+        NodeId[] pattern = new NodeId[tupleLen] ;
+        for ( int i = 0 ; i < tupleLen ; i++ )
+            pattern[i] = NodeId.NodeIdAny ;
+        if ( statsSlots[0] >= 0 )
+            pattern[statsSlots[0]] = NodeId.NodeDoesNotExist ;
+        pattern[statsSlots[2]] = NodeId.NodeDoesNotExist ;
+        pattern[slot] = NodeId.NodeDoesNotExist ;
+        return Tuple.create(pattern) ;
+    }
+    
+    public StatsDelta getStats()            { return stats ; }
+    
+    /** Record adds and deletes in the given log, or stop recording (null). */
+    public void setChangeLog(TupleLog changeLog)    { this.changeLog = changeLog ; }
+    
+    public TupleLog getChangeLog()                  { return changeLog ; }
+    
     /** Insert a tuple - return true if it was really added, false if it was a duplicate */
     public boolean add(Tuple<NodeId> t) 
     { 
         if ( tupleLen != t.size() )
             throw new TDBException(format("Mismatch: inserting tuple of length %d into a table of tuples of length %d", t.size(), tupleLen)) ;
-
+        if ( changeLog == null )
+            return add$(t) ;
+        changeLog.startChange() ;
+        try {
+            boolean rc = add$(t) ;
+            changeLog.added(this, t) ;
+            return rc ;
+        } finally { changeLog.finishChange() ; }
+    }
+    
+    private boolean add$(Tuple<NodeId> t) 
+    {
         for ( int i = 0 ; i < indexes.length ; i++ )
         {
             if ( indexes[i] == null ) continue ;
@@ -105,8 +170,34 @@ public class TupleTable implements Sync, Closeable
             }
             syncNeeded = true ;
         }
+        if ( stats != null )
+        {
+            // After the insert: new if t is the only match.
+            boolean newSubject = count(t, statsSlots[1], statsSubjectIndex, 2) == 1 ;
+            boolean newObject = count(t, statsSlots[3], statsObjectIndex, 2) == 1 ;
+            stats.added(t.get(statsSlots[2]), t.get(statsSlots[3]), newSubject, newObject) ;
+        }
         return true ;
     }
+    
+    /** Count, up to the limit, the tuples with the same graph and predicate as t, and the same value in the slot */ 
+    private int count(Tuple<NodeId> t, int slot, TupleIndex index, int limit)
+    {
+        NodeId[] pattern = new NodeId[tupleLen] ;
+        for ( int i = 0 ; i < tupleLen ; i++ )
+            pattern[i] = NodeId.NodeIdAny ;
+        if ( statsSlots[0] >= 0 )
+            pattern[statsSlots[0]] = t.get(statsSlots[0]) ;
+        pattern[statsSlots[2]] = t.get(statsSlots[2]) ;
+        pattern[slot] = t.get(slot) ;
+        Iterator<Tuple<NodeId>> iter = index.find(Tuple.create(pattern)) ;
+        try {
+            int n = 0 ;
+            for ( ; n < limit && iter.hasNext() ; n++ )
+                iter.next() ;
+            return n ;
+        } finally { Iter.close(iter) ; }
+    }
 
     protected void duplicate(Tuple<NodeId> t)
     { }
@@ -137,7 +228,18 @@ public class TupleTable implements Sync, Closeable
     { 
         if ( tupleLen != t.size() )
             throw new TDBException(format("Mismatch: deleting tuple of length %d from a table of tuples of length %d", t.size(), tupleLen)) ;
-
+        if ( changeLog == null )
+            return delete$(t) ;
+        changeLog.startChange() ;
+        try {
+            boolean rc = delete$(t) ;
+            changeLog.deleted(this, t) ;
+            return rc ;
+        } finally { changeLog.finishChange() ; }
+    }
+    
+    private boolean delete$(Tuple<NodeId> t) 
+    {
         boolean rc = false ;
         for ( int i = 0 ; i < indexes.length ; i++ )
         {
@@ -147,6 +249,13 @@ public class TupleTable implements Sync, Closeable
             if ( rc ) 
                 syncNeeded = true ;
         }
+        if ( rc && stats != null )
+        {
+            // After the delete: gone if there is no other match.
+            boolean lastSubject = count(t, statsSlots[1], statsSubjectIndex, 1) == 0 ;
+            boolean lastObject = count(t, statsSlots[3], statsObjectIndex, 1) == 0 ;
+            stats.deleted(t.get(statsSlots[2]), t.get(statsSlots[3]), lastSubject, lastObject) ;
+        }
         return rc ;
 
     }
@@ -174,7 +283,12 @@ public class TupleTable implements Sync, Closeable
 
         if ( numSlots == 0 )
             return scanAllIndex.all() ;
-        
+        return chooseIndex(pattern).find(pattern) ;
+    }
+    
+    /** The index used to find tuples matching a pattern with at least one slot set. */
+    public TupleIndex chooseIndex(Tuple<NodeId> pattern)
+    {
         int indexNumSlots = 0 ;
         TupleIndex index = null ;
         for ( int i = 0 ; i < indexes.length ; i++ )
@@ -194,11 +308,11 @@ public class TupleTable implements Sync, Closeable
         if ( index == null )
             // No index at all.  Scan.
             index = indexes[0] ;
-        return index.find(pattern) ;
+        return index ;
     }
     
     @Override
-    final public void close()
+    public void close()
     {
         for ( TupleIndex idx : indexes )
         {
@@ -241,6 +355,10 @@ public class TupleTable implements Sync, Closeable
             if ( idx != null )
                 idx.clear() ;
         }
+        if ( stats != null )
+            stats.invalidate() ;
+        if ( changeLog != null )
+            changeLog.invalidate() ;
         syncNeeded = true ;
     }
     
@@ -264,6 +382,8 @@ public class TupleTable implements Sync, Closeable
         if ( index != null && index.getTupleLength() != tupleLen )
             throw new TDBException("Incompatible index: "+index.getMapping()) ;
         indexes[i] = index ;
+        if ( stats != null )
+            chooseStatsIndexes() ;
     }
 
     /** Number of indexes on this tuple table */
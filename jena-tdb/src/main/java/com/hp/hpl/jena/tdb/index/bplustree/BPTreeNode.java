@@ -26,6 +26,10 @@ import static com.hp.hpl.jena.tdb.index.bplustree.BPlusTreeParams.CheckingTree ;
 import static com.hp.hpl.jena.tdb.index.bplustree.BPlusTreeParams.DumpTree ;
 import static java.lang.String.format ;
 import static org.apache.jena.atlas.lib.Alg.decodeIndex ;
+
+import java.util.ArrayList ;
+import java.util.List ;
+
 import org.apache.jena.atlas.io.IndentedLineBuffer ;
 import org.apache.jena.atlas.io.IndentedWriter ;
 import org.slf4j.Logger ;
@@ -296,6 +300,49 @@ public final class BPTreeNode extends BPTreePage
 
 
 
+    /** Keys of the tree nodes, in order, strictly between fromRec and toRec (null for unbounded).
+     *  The keys come from one level of the tree : the highest level with at least n keys in the range,
+     *  or the lowest level of tree nodes.  Records Buffer Pages are not read.
+     */ 
+    static List<Record> splitKeys(BPTreeNode root, Record fromRec, Record toRec, int n)
+    {
+        List<Record> keys = new ArrayList<Record>() ;
+        List<BPTreeNode> level = new ArrayList<BPTreeNode>() ;
+        level.add(root) ;
+        for ( ;; )
+        {
+            keys.clear() ;
+            List<BPTreeNode> below = new ArrayList<BPTreeNode>() ;
+            for ( BPTreeNode node : level )
+            {
+                for ( int i = 0 ; i <= node.count ; i++ )
+                {
+                    // The subtree at ptrs[i] lies between records[i-1] and records[i].
+                    Record lo = ( i == 0 ) ? null : node.records.get(i-1) ;
+                    Record hi = ( i == node.count ) ? null : node.records.get(i) ;
+                    if ( lo != null && ( fromRec == null || keyLT(fromRec, lo) ) && ( toRec == null || keyLT(lo, toRec) ) )
+                        keys.add(lo) ;
+                    if ( node.isLeaf || keys.size() >= n )
+                        continue ;
+                    if ( ( hi == null || fromRec == null || ! keyLT(hi, fromRec) ) && ( lo == null || toRec == null || keyLT(lo, toRec) ) )
+                        below.add((BPTreeNode)node.get(i, READ)) ;
+                }
+            }
+            for ( BPTreeNode node : level )
+            {
+                if ( ! node.isRoot() )
+                    node.release() ;
+            }
+            if ( keys.size() >= n || below.isEmpty() )
+            {
+                for ( BPTreeNode node : below )
+                    node.release() ;
+                return keys ;
+            }
+            level = below ;
+        }
+    }
+    
     @Override
     protected Record maxRecord()
     {
@@ -679,8 +726,6 @@ public final class BPTreeNode extends BPTreePage
 
         left.write() ;
         right.write() ;
-        left.release() ;
-        right.release() ;
         root.write() ;
 
         if ( CheckingTree )
@@ -692,6 +737,8 @@ public final class BPTreeNode extends BPTreePage
                 left.internalCheckNode() ;
                 right.internalCheckNode() ;
             }
+        left.release() ;
+        right.release() ;
     }
 
     // ============ DELETE
@@ -921,7 +968,11 @@ public final class BPTreeNode extends BPTreePage
         // Depending on whether there is a gap or not.
         if ( CheckingNode )
         {
-            if ( isLeaf )
+            if ( isLeaf && bpTree.getLeafCodec() != null )
+            {
+                // Compressed data blocks are merged by size, not number of records.  
+            }
+            else if ( isLeaf )
             {
                 // If two data blocks, then the split key is not inlcuded (it's alread ythere, with it value)
                 // Size is N+N and max could be odd so N+N and N+N+1 are possible. 
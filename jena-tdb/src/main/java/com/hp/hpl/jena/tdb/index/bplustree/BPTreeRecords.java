@@ -29,6 +29,7 @@ import com.hp.hpl.jena.tdb.base.StorageException ;
 import com.hp.hpl.jena.tdb.base.block.Block ;
 import com.hp.hpl.jena.tdb.base.buffer.RecordBuffer ;
 import com.hp.hpl.jena.tdb.base.record.Record ;
+import com.hp.hpl.jena.tdb.base.recordbuffer.RecordBlockCodec ;
 import com.hp.hpl.jena.tdb.base.recordbuffer.RecordBufferPage ;
 
 /** B+Tree wrapper over a block of records in a RecordBufferPage.
@@ -71,7 +72,11 @@ public final class BPTreeRecords extends BPTreePage
     @Override
     public boolean isFull()
     {
-        return ( rBuff.size() >= rBuff.maxSize() ) ;
+        if ( rBuff.size() >= rBuff.maxSize() )
+            return true ;
+        // Compressed: full if there may not be space for another record.
+        RecordBlockCodec codec = bpTree.getLeafCodec() ;
+        return codec != null && ! codec.hasRoom(rBuff) ;
     }
     
     @Override
@@ -85,7 +90,11 @@ public final class BPTreeRecords extends BPTreePage
     {
         // 50% packing minimum.
         // If of max length 5 (i.e. odd), min size is 2.  Integer division works.  
-        return ( rBuff.size() <= rBuff.maxSize()/2 ) ;
+        if ( rBuff.size() > rBuff.maxSize()/2 )
+            return false ;
+        // Compressed: it must also be possible to merge with another block of minimum size.
+        RecordBlockCodec codec = bpTree.getLeafCodec() ;
+        return codec == null || codec.isMinSize(rBuff) ;
    }
 
     @Override
@@ -165,10 +174,19 @@ public final class BPTreeRecords extends BPTreePage
     @Override final
     public Record getSplitKey()
     {
-        int splitIdx = rBuff.size()/2-1 ;
+        int splitIdx = splitIndex() ;
         Record r = rBuff.get(splitIdx) ;
         return r ;
     }
+    
+    private int splitIndex()
+    {
+        RecordBlockCodec codec = bpTree.getLeafCodec() ;
+        if ( codec != null )
+            // Split by compressed size, not number of records.
+            return codec.splitIndex(rBuff) ;
+        return rBuff.size()/2-1 ;
+    }
 
     /** Split: place old high half in 'other'. Return the new (upper) BPTreeRecords(BPTreePage).
      * Split is the high end of the low page.
@@ -182,7 +200,7 @@ public final class BPTreeRecords extends BPTreePage
         BPTreeRecords other = create(rBuffPage.getLink()) ;
         rBuffPage.setLink(other.getId()) ;
         
-        int splitIdx = rBuff.size()/2-1 ;
+        int splitIdx = splitIndex() ;
         Record r = rBuff.get(splitIdx) ;                // Only need key for checking later.
         
         int moveLen =  rBuff.size()-(splitIdx+1) ;      // Number to move.
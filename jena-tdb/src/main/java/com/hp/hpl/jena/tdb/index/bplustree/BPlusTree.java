@@ -21,7 +21,10 @@ package com.hp.hpl.jena.tdb.index.bplustree;
 import static com.hp.hpl.jena.tdb.index.bplustree.BPlusTreeParams.CheckingNode ;
 import static com.hp.hpl.jena.tdb.index.bplustree.BPlusTreeParams.CheckingTree ;
 
+import java.util.ArrayList ;
 import java.util.Iterator ;
+import java.util.List ;
+import java.util.NoSuchElementException ;
 
 import org.apache.jena.atlas.io.IndentedWriter ;
 import org.apache.jena.atlas.iterator.Iter ;
@@ -33,9 +36,12 @@ import com.hp.hpl.jena.tdb.base.block.BlockMgr ;
 import com.hp.hpl.jena.tdb.base.block.BlockMgrFactory ;
 import com.hp.hpl.jena.tdb.base.block.BlockMgrTracker ;
 import com.hp.hpl.jena.tdb.base.record.Record ;
+import com.hp.hpl.jena.tdb.base.record.RecordCursor ;
 import com.hp.hpl.jena.tdb.base.record.RecordFactory ;
+import com.hp.hpl.jena.tdb.base.recordbuffer.RecordBlockCodec ;
 import com.hp.hpl.jena.tdb.base.recordbuffer.RecordBufferPage ;
 import com.hp.hpl.jena.tdb.base.recordbuffer.RecordBufferPageMgr ;
+import com.hp.hpl.jena.tdb.base.recordbuffer.RecordRangeCursor ;
 import com.hp.hpl.jena.tdb.base.recordbuffer.RecordRangeIterator ;
 import com.hp.hpl.jena.tdb.index.RangeIndex ;
 
@@ -129,6 +135,7 @@ public class BPlusTree implements Iterable<Record>, RangeIndex
     private BPTreeNodeMgr nodeManager ; 
     private BPTreeRecordsMgr recordsMgr; 
     private BPlusTreeParams bpTreeParams ;
+    private RecordBlockCodec leafCodec ;
     
     /** Create the in-memory structures to correspond to
      * the supplied block managers for the persistent storage.
@@ -137,7 +144,16 @@ public class BPlusTree implements Iterable<Record>, RangeIndex
      */
     public static BPlusTree create(BPlusTreeParams params, BlockMgr blkMgrNodes, BlockMgr blkMgrLeaves)
     { 
-        BPlusTree bpt = attach(params, blkMgrNodes, blkMgrLeaves) ;
+        return create(params, blkMgrNodes, blkMgrLeaves, null) ;
+    }
+    
+    /** Create a B+Tree where the leaves are stored compressed by the codec
+     * (the leaves block manager must use the same codec).  The codec may be null
+     * for uncompressed leaves.
+     */
+    public static BPlusTree create(BPlusTreeParams params, BlockMgr blkMgrNodes, BlockMgr blkMgrLeaves, RecordBlockCodec leafCodec)
+    { 
+        BPlusTree bpt = attach(params, blkMgrNodes, blkMgrLeaves, leafCodec) ;
         bpt.createIfAbsent() ;
         return bpt ;
     }
@@ -149,7 +165,13 @@ public class BPlusTree implements Iterable<Record>, RangeIndex
      */
     public static BPlusTree attach(BPlusTreeParams params, BlockMgr blkMgrNodes, BlockMgr blkMgrRecords)
     { 
-        return new BPlusTree(params, blkMgrNodes, blkMgrRecords) ;
+        return attach(params, blkMgrNodes, blkMgrRecords, null) ;
+    }
+    
+    /** Attach to an existing B+Tree with leaves stored compressed by the codec (may be null). */ 
+    public static BPlusTree attach(BPlusTreeParams params, BlockMgr blkMgrNodes, BlockMgr blkMgrRecords, RecordBlockCodec leafCodec)
+    { 
+        return new BPlusTree(params, blkMgrNodes, blkMgrRecords, leafCodec) ;
     }
 
     /** (Testing mainly) Make an in-memory B+Tree, with copy-in, copy-out block managers */
@@ -188,13 +210,14 @@ public class BPlusTree implements Iterable<Record>, RangeIndex
         mgr1 = BlockMgrTracker.track(mgr1) ;
         mgr2 = BlockMgrTracker.track(mgr2) ;
 
-        return BPlusTree.attach(bpTree.getParams(), mgr1, mgr2) ;
+        return BPlusTree.attach(bpTree.getParams(), mgr1, mgr2, bpTree.getLeafCodec()) ;
     }
 
-    private BPlusTree(BPlusTreeParams params, BlockMgr blkMgrNodes, BlockMgr blkMgrRecords)
+    private BPlusTree(BPlusTreeParams params, BlockMgr blkMgrNodes, BlockMgr blkMgrRecords, RecordBlockCodec leafCodec)
     {
         // Consistency checks.
         this.bpTreeParams = params ;
+        this.leafCodec = leafCodec ;
         this.nodeManager = new BPTreeNodeMgr(this, blkMgrNodes) ;
         RecordBufferPageMgr recordPageMgr = new RecordBufferPageMgr(params.getRecordFactory(), blkMgrRecords) ;
         recordsMgr = new BPTreeRecordsMgr(this, recordPageMgr) ;
@@ -263,6 +286,9 @@ public class BPlusTree implements Iterable<Record>, RangeIndex
     /** Get the parameters describing this B+Tree */
     public BPlusTreeParams getParams()     { return bpTreeParams ; } 
 
+    /** The codec for compressed leaves, or null if the leaves are not compressed */
+    public RecordBlockCodec getLeafCodec() { return leafCodec ; } 
+
     /** Only use for careful manipulation of structures */
     public BPTreeNodeMgr getNodeManager()          { return nodeManager ; }
     /** Only use for careful manipulation of structures */
@@ -388,6 +414,56 @@ public class BPlusTree implements Iterable<Record>, RangeIndex
         return iterator(node, null, null) ; 
     }
     
+    @Override
+    public RecordCursor cursor(Record fromRec, Record toRec)
+    {
+        startReadBlkMgr() ;
+        BPTreeNode root = getRoot() ;
+        RecordCursor cursor = cursor(root, fromRec, toRec) ;
+        releaseRoot(root) ;
+        finishReadBlkMgr() ;
+        // As for iterator(fromRec, toRec), this ends the read to find the start. 
+        return cursor ;
+    }
+    
+    private static RecordCursor cursor(BPTreeNode node, Record fromRec, Record toRec)
+    { 
+        int id = BPTreeNode.recordsPageId(node, fromRec) ; 
+        if ( id < 0 )
+            return RecordCursorEmpty ;
+        RecordBufferPageMgr pageMgr = node.getBPlusTree().getRecordsMgr().getRecordBufferPageMgr() ;
+        return RecordRangeCursor.cursor(id, fromRec, toRec, pageMgr) ;
+    }
+    
+    /** Split points for dividing the range fromRec (inclusive) to toRec (exclusive)
+     *  into about n parts, taken from the keys of the tree nodes.  Null for unbounded.
+     *  Returns up to n-1 keys, in order, strictly inside the range; parts need not be of equal size.
+     */
+    public List<Record> splitKeys(Record fromRec, Record toRec, int n)
+    {
+        startReadBlkMgr() ;
+        BPTreeNode root = getRoot() ;
+        List<Record> keys = BPTreeNode.splitKeys(root, fromRec, toRec, n-1) ;
+        releaseRoot(root) ;
+        finishReadBlkMgr() ;
+        if ( keys.size() <= n-1 )
+            return keys ;
+        // Evenly spaced choice.
+        List<Record> x = new ArrayList<Record>(n-1) ;
+        for ( int i = 1 ; i < n ; i++ )
+            x.add(keys.get((int)((long)i*keys.size()/n))) ;
+        return x ;
+    }
+    
+    private static final RecordCursor RecordCursorEmpty = new RecordCursor() {
+        @Override public boolean advance()              { return false ; }
+        @Override public long getKeyLong(int offset)    { throw new NoSuchElementException() ; }
+        @Override public void getKey(byte[] key)        { throw new NoSuchElementException() ; }
+        @Override public Record getRecord()             { throw new NoSuchElementException() ; }
+        @Override public boolean seek(Record fromRec, Record toRec) { return false ; }
+        @Override public void close()                   {}
+    } ;
+    
     // Internal calls.
     private void startReadBlkMgr()
     {
@@ -23,6 +23,8 @@ import org.apache.jena.atlas.logging.Log ;
 import org.slf4j.Logger;
 
 import com.hp.hpl.jena.tdb.TDBException;
+import com.hp.hpl.jena.tdb.base.file.FileSet ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
 import com.hp.hpl.jena.tdb.base.file.MetaFile;
 import com.hp.hpl.jena.tdb.base.record.RecordFactory;
 import com.hp.hpl.jena.tdb.sys.Names;
@@ -44,6 +46,10 @@ public class BPlusTreeParams
     public static final String ParamKeyLength      = NS+".keyLength" ;
     public static final String ParamValueLength    = NS+".valueLength" ;
     public static final String ParamBlockSize      = NS+".blockSize" ;
+    
+    /** Leaf layout names, recorded in the location metadata */
+    public static final String LeafLayoutFixed      = "fixed" ;
+    public static final String LeafLayoutCompressed = "compressed" ;
 
     public static void checkAll()
     { 
@@ -127,6 +133,39 @@ public class BPlusTreeParams
                              ) ;
     }
 
+    /** Are the leaves of the B+Tree for this FileSet compressed?  As recorded in the location metadata. */ 
+    public static boolean isCompressedLeaves(FileSet fileSet)
+    {
+        Location location = fileSet.getLocation() ;
+        if ( location == null )
+            return false ;
+        String x = location.getMetaFile().getProperty(leafLayoutKey(fileSet), LeafLayoutFixed) ;
+        return LeafLayoutCompressed.equals(x) ;
+    }
+    
+    /** Set the leaf layout for a new B+Tree.  An existing B+Tree keeps the layout it was created with. */ 
+    public static void initLeafLayout(FileSet fileSet, boolean compressed)
+    {
+        Location location = fileSet.getLocation() ;
+        if ( location == null || ! compressed )
+            // Fixed is the default when not recorded.
+            return ;
+        MetaFile mf = location.getMetaFile() ;
+        String key = leafLayoutKey(fileSet) ;
+        if ( mf.hasProperty(key) )
+            return ;
+        if ( ! location.isMem() && fileSet.exists(Names.bptExtRecords) )
+            // Existing B+Tree, before layouts were recorded.
+            return ;
+        mf.setProperty(key, LeafLayoutCompressed) ;
+        mf.flush() ;
+    }
+    
+    private static String leafLayoutKey(FileSet fileSet)
+    {
+        return Names.kBPlusTreeLayout+"."+fileSet.getBasename() ;
+    }
+    
     public static BPlusTreeParams readMeta(MetaFile mf)
     {
         try {
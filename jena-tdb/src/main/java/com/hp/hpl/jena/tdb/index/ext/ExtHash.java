@@ -122,12 +122,12 @@ public final class ExtHash implements Index
         this.recordFactory = recordFactory ; 
         
         hashBucketMgr = new HashBucketMgr(recordFactory, blockMgrHashBuckets) ;
-        hashBucketMgr.valid(0) ;
         
         // Did it exist?
         if ( hashBucketMgr.valid(0) )
         {
-            
+            // The dictionary is always a power of two in length.
+            bitLen = Integer.numberOfTrailingZeros(dictionary.capacity()) ;
         }
         else
         {
@@ -285,8 +285,9 @@ public final class ExtHash implements Index
     {
         if ( logging() ) log(">> get(%s)", key) ;
         int blockId = bucketId(key, bitLen) ;
-        HashBucket bucket = hashBucketMgr.get(blockId) ;
+        HashBucket bucket = hashBucketMgr.getRead(blockId) ;
         Record value = bucket.find(key) ;
+        hashBucketMgr.release(bucket) ;
         if ( logging() ) log("<< get(%s) -> %s", key.getKey(), value) ;
         return value ;
     }
@@ -336,8 +337,10 @@ public final class ExtHash implements Index
     { 
        if ( dictionary.limit() == 1 )
        {
-           HashBucket b = hashBucketMgr.get(1) ;
-           return b.isEmpty() ;
+           HashBucket b = hashBucketMgr.getRead(dictionary.get(0)) ;
+           boolean empty = b.isEmpty() ;
+           hashBucketMgr.release(b) ;
+           return empty ;
        }
        // No idea.
        return false ;
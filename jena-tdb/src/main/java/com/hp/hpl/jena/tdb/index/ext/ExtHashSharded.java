@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.index.ext;
+
+import java.util.Arrays ;
+import java.util.Iterator ;
+import java.util.concurrent.locks.ReadWriteLock ;
+import java.util.concurrent.locks.ReentrantReadWriteLock ;
+
+import org.apache.jena.atlas.iterator.IteratorConcat ;
+
+import com.hp.hpl.jena.sparql.util.Utils ;
+import com.hp.hpl.jena.tdb.base.block.BlockMgr ;
+import com.hp.hpl.jena.tdb.base.block.BlockMgrFactory ;
+import com.hp.hpl.jena.tdb.base.file.FileFactory ;
+import com.hp.hpl.jena.tdb.base.file.FileSet ;
+import com.hp.hpl.jena.tdb.base.file.PlainFile ;
+import com.hp.hpl.jena.tdb.base.record.Record ;
+import com.hp.hpl.jena.tdb.base.record.RecordFactory ;
+import com.hp.hpl.jena.tdb.index.Index ;
+import com.hp.hpl.jena.tdb.sys.Names ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+/** An index split over a number of extendible hash tables ("shards").
+ *  A record goes to the shard chosen by a hash of its key so each lookup
+ *  is one dictionary slot and one bucket read in one shard.
+ *  <p>
+ *  Each shard has its own read-write lock: lookups may run concurrently with
+ *  each other, and with updates to other shards.
+ *  Iteration is not protected against concurrent update.  
+ */
+
+public final class ExtHashSharded implements Index
+{
+    private final ExtHash[] shards ;
+    private final ReadWriteLock[] locks ;
+    private final RecordFactory recordFactory ;
+
+    /** Create (or open) a sharded hash index.
+     *  Shard i is the pair of files with basename "<i>basename</i>-i".
+     *  The number of shards must be the same each time the index is opened.
+     */
+    public static ExtHashSharded create(FileSet fileset, RecordFactory recordFactory, int numShards, int blockSize)
+    {
+        if ( numShards <= 0 )
+            throw new IllegalArgumentException("ExtHashSharded: number of shards must be positive: "+numShards) ;
+        ExtHash[] shards = new ExtHash[numShards] ;
+        for ( int i = 0 ; i < numShards ; i++ )
+        {
+            if ( fileset.isMem() )
+            {
+                shards[i] = ExtHash.createMem(recordFactory, blockSize) ;
+                continue ;
+            }
+            FileSet fs = new FileSet(fileset.getLocation(), fileset.getBasename()+"-"+i) ;
+            PlainFile dictionary = FileFactory.createPlainFileDisk(fs.filename(Names.extHashExt)) ;
+            // Bucket pages are memory mapped in mapped file mode.
+            BlockMgr buckets = BlockMgrFactory.create(fs, Names.extHashBucketExt, blockSize,
+                                                      SystemTDB.BlockReadCacheSize, SystemTDB.BlockWriteCacheSize) ;
+            shards[i] = new ExtHash(dictionary, recordFactory, buckets) ;
+        }
+        return new ExtHashSharded(recordFactory, shards) ;
+    }
+    
+    public ExtHashSharded(RecordFactory recordFactory, ExtHash[] shards)
+    {
+        this.recordFactory = recordFactory ;
+        this.shards = shards ;
+        this.locks = new ReadWriteLock[shards.length] ;
+        for ( int i = 0 ; i < shards.length ; i++ )
+            locks[i] = new ReentrantReadWriteLock() ;
+    }
+    
+    public int getNumShards()   { return shards.length ; }
+    
+    private int shard(Record record)
+    {
+        // Any spread of keys will do; node table keys are already hashes.
+        int h = Arrays.hashCode(record.getKey()) ;
+        return (h & 0x7FFFFFFF) % shards.length ;
+    }
+    
+    @Override
+    public Record find(Record record)
+    {
+        int i = shard(record) ;
+        locks[i].readLock().lock() ;
+        try { return shards[i].find(record) ; }
+        finally { locks[i].readLock().unlock() ; }
+    }
+
+    @Override
+    public boolean contains(Record record)
+    {
+        return find(record) != null ;
+    }
+
+    @Override
+    public boolean add(Record record)
+    {
+        int i = shard(record) ;
+        locks[i].writeLock().lock() ;
+        try { return shards[i].add(record) ; }
+        finally { locks[i].writeLock().unlock() ; }
+    }
+
+    @Override
+    public boolean delete(Record record)
+    {
+        int i = shard(record) ;
+        locks[i].writeLock().lock() ;
+        try { return shards[i].delete(record) ; }
+        finally { locks[i].writeLock().unlock() ; }
+    }
+
+    @Override
+    public Iterator<Record> iterator()
+    {
+        IteratorConcat<Record> iter = new IteratorConcat<Record>() ;
+        for ( ExtHash shard : shards )
+            iter.add(shard.iterator()) ;
+        return iter ;
+    }
+
+    @Override
+    public RecordFactory getRecordFactory()
+    { return recordFactory ; }
+
+    @Override
+    public boolean isEmpty()
+    {
+        for ( ExtHash shard : shards )
+        {
+            if ( ! shard.isEmpty() )
+                return false ;
+        }
+        return true ;
+    }
+
+    @Override
+    public void clear()
+    { throw new UnsupportedOperationException("Index("+Utils.classShortName(this.getClass())+").clear") ; }
+
+    @Override
+    public void check()
+    {
+        for ( ExtHash shard : shards )
+            shard.check() ;
+    }
+
+    @Override
+    public long size()
+    {
+        long size = 0 ;
+        for ( ExtHash shard : shards )
+            size += shard.size() ;
+        return size ;
+    }
+
+    @Override
+    public void sync()
+    {
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            locks[i].writeLock().lock() ;
+            try { shards[i].sync() ; }
+            finally { locks[i].writeLock().unlock() ; }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        for ( ExtHash shard : shards )
+            shard.close() ;
+    }
+}
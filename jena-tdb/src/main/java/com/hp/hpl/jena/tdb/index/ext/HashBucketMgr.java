@@ -58,9 +58,9 @@ public class HashBucketMgr extends PageBlockMgr<HashBucket>
         page.getBackingBlock().setModified(true) ;
         return page ;
     }
-    // [TxTDB:PATCH-UP]
+    /** Read-only access to a bucket: does not mark the block as modified */
     @Override
-    public HashBucket getRead(int id)        { return _get(id) ; }
+    public HashBucket getRead(int id)        { return super.getRead(id) ; }
     
     // [TxTDB:PATCH-UP]
     //@Override
@@ -55,7 +55,15 @@ public class NodeLib
     final private static char MarkerChar = '_' ;
     final private static char[] invalidIRIChars = { MarkerChar , ' ' } ; 
     
+    /** The default node encoding */ 
+    public static Nodec nodec() { return nodec ; }
+    
     public static long encodeStore(Node node, ObjectFile file)
+    {
+        return encodeStore(node, file, nodec) ;
+    }
+    
+    public static long encodeStore(Node node, ObjectFile file, Nodec nodec)
     {
         // Buffer pool?
         
@@ -75,15 +83,26 @@ public class NodeLib
     }
     
     public static Node fetchDecode(long id, ObjectFile file)
+    {
+        return fetchDecode(id, file, nodec) ;
+    }
+    
+    public static Node fetchDecode(long id, ObjectFile file, Nodec nodec)
     {
         ByteBuffer bb = file.read(id) ;
         if ( bb == null )
             return null ;
-        return decode(bb) ;
+        return decode(bb, nodec) ;
     }
     
     /** Encode a node - pref use encodeStore */
     public static ByteBuffer encode(Node node)
+    {
+        return encode(node, nodec) ;
+    }
+    
+    /** Encode a node with the given encoding */
+    public static ByteBuffer encode(Node node, Nodec nodec)
     {
         int maxSize = nodec.maxSize(node) ;
         ByteBuffer bb = ByteBuffer.allocate(maxSize) ;
@@ -95,6 +114,11 @@ public class NodeLib
     
     /** Decode a node - pref use fetchDecode */
     public static Node decode(ByteBuffer bb)
+    {
+        return decode(bb, nodec) ;
+    }
+    
+    public static Node decode(ByteBuffer bb, Nodec nodec)
     {
         bb.position(0) ;
         Node n = nodec.decode(bb, null) ;
@@ -39,4 +39,8 @@ public class TDBSystemInfo implements TDBSystemInfoMBean
     public int getBlockReadCacheSize()      { return params.readCacheSize ; }
     @Override
     public int getBlockWriteCacheSize()     { return params.writeCacheSize ; }
+    @Override
+    public String getBlockCacheType()       { return params.blockCacheType.name() ; }
+    @Override
+    public int getBufferPoolSize()          { return params.bufferPoolSize ; }
 }
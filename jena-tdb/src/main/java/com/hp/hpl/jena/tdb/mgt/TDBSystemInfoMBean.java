@@ -51,4 +51,10 @@ public interface TDBSystemInfoMBean
 
    /** Size of read block cache (32 bit systems only).  Increase JVM size as necessary. Per file. */
    public int getBlockReadCacheSize() ;
+
+   /** Kind of block cache used for direct mode files ("lru", "striped" or "pooled") */
+   public String getBlockCacheType() ;
+
+   /** Size, in megabytes, of the off-heap buffer pool of a "pooled" block cache */
+   public int getBufferPoolSize() ;
 }
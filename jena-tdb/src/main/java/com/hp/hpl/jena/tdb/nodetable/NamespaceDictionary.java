@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.nodetable;
+
+import java.nio.ByteBuffer ;
+import java.util.ArrayList ;
+import java.util.HashMap ;
+import java.util.Iterator ;
+import java.util.List ;
+import java.util.Map ;
+
+import org.apache.jena.atlas.io.BlockUTF8 ;
+import org.apache.jena.atlas.lib.Closeable ;
+import org.apache.jena.atlas.lib.Pair ;
+import org.apache.jena.atlas.lib.Sync ;
+
+import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.base.objectfile.ObjectFile ;
+
+/** The namespaces of the IRIs of a node table, numbered in the order they were added.
+ *  The dictionary is held in memory and appended to an object file.
+ *  <p>
+ *  The file is append-only so a namespace added by a transaction that aborts is
+ *  harmless. Sync this before the node data that uses the namespaces.
+ */
+public final class NamespaceDictionary implements Sync, Closeable
+{
+    private final ObjectFile file ;
+    private final int maxSize ;
+    private final List<String> namespaces = new ArrayList<String>() ;
+    private final Map<String, Integer> ids = new HashMap<String, Integer>() ;
+    private boolean syncNeeded = false ;
+    
+    public NamespaceDictionary(ObjectFile file, int maxSize)
+    {
+        this.file = file ;
+        this.maxSize = maxSize ;
+        Iterator<Pair<Long, ByteBuffer>> iter = file.all() ;
+        for ( ; iter.hasNext() ; )
+        {
+            String ns = BlockUTF8.toString(iter.next().cdr()) ;
+            ids.put(ns, namespaces.size()) ;
+            namespaces.add(ns) ;
+        }
+    }
+    
+    /** The id of a namespace, adding it if there is space. Returns -1 if there is not. */  
+    public synchronized int getAllocateId(String ns)
+    {
+        Integer x = ids.get(ns) ;
+        if ( x != null )
+            return x ;
+        if ( namespaces.size() >= maxSize )
+            return -1 ;
+        ByteBuffer bb = ByteBuffer.allocate(3*ns.length()) ;
+        BlockUTF8.fromChars(ns, bb) ;
+        bb.flip() ;
+        file.write(bb) ;
+        syncNeeded = true ;
+        int id = namespaces.size() ;
+        ids.put(ns, id) ;
+        namespaces.add(ns) ;
+        return id ;
+    }
+    
+    /** The namespace for an id */
+    public synchronized String getNamespace(int id)
+    {
+        if ( id < 0 || id >= namespaces.size() )
+            throw new TDBException("No such namespace: "+id+" : "+file.getLabel()) ;
+        return namespaces.get(id) ;
+    }
+    
+    public synchronized int size()
+    {
+        return namespaces.size() ;
+    }
+    
+    @Override
+    public synchronized void sync()
+    {
+        if ( syncNeeded )
+        {
+            file.sync() ;
+            syncNeeded = false ;
+        }
+    }
+    
+    @Override
+    public synchronized void close()
+    {
+        file.close() ;
+    }
+    
+    @Override
+    public String toString() { return "NamespaceDictionary("+file.getLabel()+")" ; }
+}
@@ -19,6 +19,7 @@
 package com.hp.hpl.jena.tdb.nodetable;
 
 import java.util.Iterator ;
+import java.util.List ;
 
 import org.apache.jena.atlas.lib.Closeable ;
 import org.apache.jena.atlas.lib.Pair ;
@@ -37,6 +38,11 @@ public interface NodeTable extends Sync, Closeable
     /** Store the node in the node table (if not already present) and return the allocated Id. */
     public NodeId getAllocateNodeId(Node node) ;
     
+    /** Store the nodes in the node table (if not already present) and return the allocated Ids,
+     *  in the same order as the nodes.  Equivalent to calling {@link #getAllocateNodeId(Node)}
+     *  for each node but allows a table to do the work as one unit. */
+    public NodeId[] getAllocateNodeIds(List<Node> nodes) ;
+    
     /** Look up node and return the NodeId - return NodeId.NodeDoesNotExist if not found */
     public NodeId getNodeIdForNode(Node node) ;
     
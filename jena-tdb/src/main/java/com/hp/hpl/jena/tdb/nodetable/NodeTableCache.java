@@ -18,7 +18,9 @@
 
 package com.hp.hpl.jena.tdb.nodetable;
 
+import java.util.ArrayList ;
 import java.util.Iterator ;
+import java.util.List ;
 
 import org.apache.jena.atlas.iterator.Iter ;
 import org.apache.jena.atlas.lib.Cache ;
@@ -82,6 +84,39 @@ public class NodeTableCache implements NodeTable
     @Override
     public NodeId getAllocateNodeId(Node node)  { return _idForNode(node, true) ; }
 
+    /** Find the NodeIds for nodes, allocating as necessary; cache misses go to the base table as one batch */ 
+    @Override
+    public NodeId[] getAllocateNodeIds(List<Node> nodes)
+    {
+        NodeId[] nodeIds = new NodeId[nodes.size()] ;
+        synchronized (lock)
+        {
+            List<Node> misses = new ArrayList<Node>() ;
+            for ( int i = 0 ; i < nodeIds.length ; i++ )
+            {
+                Node node = nodes.get(i) ;
+                if ( node == Node.ANY )
+                    nodeIds[i] = NodeId.NodeIdAny ;
+                else
+                    nodeIds[i] = cacheLookup(node) ;
+                if ( nodeIds[i] == null )
+                    misses.add(node) ;
+            }
+            if ( misses.isEmpty() )
+                return nodeIds ;
+            
+            NodeId[] x = baseTable.getAllocateNodeIds(misses) ;
+            for ( int i = 0, j = 0 ; i < nodeIds.length ; i++ )
+            {
+                if ( nodeIds[i] != null )
+                    continue ;
+                nodeIds[i] = x[j++] ;
+                cacheUpdate(nodes.get(i), nodeIds[i]) ;
+            }
+        }
+        return nodeIds ;
+    }
+
     // ---- The worker functions
     // NodeId ==> Node
     private Node _retrieveNodeByNodeId(NodeId id)
@@ -254,6 +289,8 @@ public class NodeTableCache implements NodeTable
         
     }
     
+    public NodeTable getBaseNodeTable() { return baseTable ; }
+
     @Override
     public String toString() { return "Cache("+baseTable.toString()+")" ; }
 }
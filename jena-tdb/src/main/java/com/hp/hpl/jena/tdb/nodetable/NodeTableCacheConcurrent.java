@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.nodetable;
+
+import java.util.ArrayList ;
+import java.util.Iterator ;
+import java.util.List ;
+import java.util.concurrent.atomic.AtomicLong ;
+
+import org.apache.jena.atlas.lib.Cache ;
+import org.apache.jena.atlas.lib.CacheFactory ;
+import org.apache.jena.atlas.lib.Pair ;
+import org.apache.jena.atlas.logging.Log ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+
+/** Cache wrapper around a NodeTable, for concurrent readers.
+ * Assumes all access goes through this wrapper.
+ * <p>
+ * Unlike {@link NodeTableCache}, there is no lock around the caches: lookups in
+ * either direction go to bounded concurrent caches, and on a miss, to the
+ * base table (which has its own synchronization).  Entries in the two caches are
+ * never wrong, only possibly missing, because the Node-NodeId mapping does not change
+ * once allocated.
+ * <p>
+ * Nodes found not to be in the table are remembered in a separate miss cache and
+ * removed from it when the node is allocated through this wrapper - this is how
+ * {@link com.hp.hpl.jena.tdb.transaction.NodeTableTrans} adds nodes at commit.
+ * A lookup that races with an allocation does not leave a stale miss behind.
+ */ 
+public class NodeTableCacheConcurrent implements NodeTable
+{
+    private volatile Cache<Node, NodeId> node2id_Cache = null ;
+    private volatile Cache<NodeId, Node> id2node_Cache = null ;
+    
+    // "Known unknowns".
+    private volatile Cache<Node, Node> notPresent = null ;
+    // Changed after every allocation of a new node. 
+    private final AtomicLong allocations = new AtomicLong(0) ;
+    private volatile NodeTable baseTable ;
+
+    public static NodeTable create(NodeTable nodeTable, int nodeToIdCacheSize, int idToNodeCacheSize, int nodeMissesCacheSize)
+    {
+        if ( nodeToIdCacheSize <= 0 && idToNodeCacheSize <= 0 )
+            return nodeTable ;
+        return new NodeTableCacheConcurrent(nodeTable, nodeToIdCacheSize, idToNodeCacheSize, nodeMissesCacheSize) ;
+    }
+
+    private NodeTableCacheConcurrent(NodeTable baseTable, int nodeToIdCacheSize, int idToNodeCacheSize, int nodeMissesCacheSize)
+    {
+        this.baseTable = baseTable ;
+        if ( nodeToIdCacheSize > 0) 
+            node2id_Cache = CacheFactory.createConcurrentCache(nodeToIdCacheSize) ;
+        if ( idToNodeCacheSize > 0)
+            id2node_Cache = CacheFactory.createConcurrentCache(idToNodeCacheSize) ;
+        if ( nodeMissesCacheSize > 0 )
+            notPresent = CacheFactory.createConcurrentCache(nodeMissesCacheSize) ;
+    }
+
+    /** Get the Node for this NodeId, or null if none */
+    @Override
+    public Node getNodeForNodeId(NodeId id)
+    {
+        if ( NodeId.isDoesNotExist(id) )
+            return null ;
+        if ( NodeId.isAny(id) )
+            return null ;
+        Cache<NodeId, Node> cache = id2node_Cache ;
+        if ( cache != null )
+        {
+            Node n = cache.get(id) ;
+            if ( n != null )
+                return n ;
+        }
+        Node n = baseTable.getNodeForNodeId(id) ;
+        if ( n != null )
+            cacheUpdate(n, id) ;
+        return n ;
+    }
+
+    /** Find the NodeId for a node, or return NodeId.NodeDoesNotExist */ 
+    @Override
+    public NodeId getNodeIdForNode(Node node)
+    {
+        if ( node == Node.ANY )
+            return NodeId.NodeIdAny ;
+        NodeId nodeId = cacheLookup(node) ;
+        if ( nodeId != null )
+            return nodeId ;
+        
+        Cache<Node, Node> misses = notPresent ;
+        if ( misses != null && misses.containsKey(node) )
+            return NodeId.NodeDoesNotExist ;
+        
+        long epoch = allocations.get() ;
+        nodeId = baseTable.getNodeIdForNode(node) ;
+        if ( NodeId.isDoesNotExist(nodeId) )
+        {
+            if ( misses != null )
+            {
+                misses.put(node, node) ;
+                // An allocation may have happened since the base table was looked at,
+                // and its removal from the miss cache been done before the put above.
+                if ( allocations.get() != epoch )
+                    misses.remove(node) ;
+            }
+            return nodeId ;
+        }
+        cacheUpdate(node, nodeId) ;
+        return nodeId ;
+    }
+
+    /** Find the NodeId for a node, allocating a new NodeId if the Node does not yet have a NodeId */ 
+    @Override
+    public NodeId getAllocateNodeId(Node node)
+    {
+        if ( node == Node.ANY )
+            return NodeId.NodeIdAny ;
+        NodeId nodeId = cacheLookup(node) ;
+        if ( nodeId != null )
+            return nodeId ;
+        nodeId = baseTable.getAllocateNodeId(node) ;
+        cacheUpdate(node, nodeId) ;
+        // Order matters : count the allocation, then clear the miss cache. 
+        allocations.incrementAndGet() ;
+        Cache<Node, Node> misses = notPresent ;
+        if ( misses != null )
+            misses.remove(node) ;
+        return nodeId ;
+    }
+
+    /** Find the NodeIds for nodes, allocating as necessary; cache misses go to the base table as one batch */ 
+    @Override
+    public NodeId[] getAllocateNodeIds(List<Node> nodes)
+    {
+        NodeId[] nodeIds = new NodeId[nodes.size()] ;
+        List<Node> unknown = new ArrayList<Node>() ;
+        for ( int i = 0 ; i < nodeIds.length ; i++ )
+        {
+            Node node = nodes.get(i) ;
+            nodeIds[i] = ( node == Node.ANY ) ? NodeId.NodeIdAny : cacheLookup(node) ;
+            if ( nodeIds[i] == null )
+                unknown.add(node) ;
+        }
+        if ( unknown.isEmpty() )
+            return nodeIds ;
+        
+        NodeId[] x = baseTable.getAllocateNodeIds(unknown) ;
+        for ( int i = 0, j = 0 ; i < nodeIds.length ; i++ )
+        {
+            if ( nodeIds[i] == null )
+            {
+                nodeIds[i] = x[j++] ;
+                cacheUpdate(nodes.get(i), nodeIds[i]) ;
+            }
+        }
+        allocations.incrementAndGet() ;
+        Cache<Node, Node> misses = notPresent ;
+        if ( misses != null )
+        {
+            for ( Node node : unknown )
+                misses.remove(node) ;
+        }
+        return nodeIds ;
+    }
+
+    private NodeId cacheLookup(Node node)
+    {
+        Cache<Node, NodeId> cache = node2id_Cache ;
+        if ( cache == null )
+            return null ;
+        return cache.get(node) ; 
+    }
+
+    /** Update the Node->NodeId caches */
+    private void cacheUpdate(Node node, NodeId id)
+    {
+        if ( NodeId.isDoesNotExist(id) )
+            return ;
+        if ( id == NodeId.NodeIdAny )
+        {
+            Log.warn(this, "Attempt to cache NodeIdAny - ignored") ;
+            return ;
+        }
+        Cache<Node, NodeId> n2id = node2id_Cache ;
+        Cache<NodeId, Node> id2n = id2node_Cache ;
+        if ( n2id != null )
+            n2id.put(node, id) ;
+        if ( id2n != null )
+            id2n.put(id, node) ;
+    }
+
+    @Override
+    public NodeId allocOffset()
+    {
+        return baseTable.allocOffset() ;
+    }
+    
+    @Override
+    public boolean isEmpty()
+    {
+        Cache<Node, NodeId> n2id = node2id_Cache ;
+        if ( n2id != null && ! n2id.isEmpty() )
+            return false ;
+        // Write through.
+        return baseTable.isEmpty() ;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if ( baseTable == null )
+            // Already closed (NodeTables can be shared so .close via two routes).
+            return ;
+        baseTable.close() ;
+        node2id_Cache = null ;
+        id2node_Cache = null ;
+        notPresent = null ;
+        baseTable = null ;
+    }
+
+    @Override
+    public void sync() { baseTable.sync() ; }
+    
+    @Override
+    public Iterator<Pair<NodeId, Node>> all()
+    {
+        return baseTable.all() ;
+    }
+    
+    public NodeTable getBaseNodeTable() { return baseTable ; }
+
+    @Override
+    public String toString() { return "CacheConcurrent("+baseTable.toString()+")" ; }
+}
@@ -18,18 +18,29 @@
 
 package com.hp.hpl.jena.tdb.nodetable;
 
+import com.hp.hpl.jena.tdb.TDBException ;
 import com.hp.hpl.jena.tdb.base.file.FileFactory ;
 import com.hp.hpl.jena.tdb.base.file.FileSet ;
 import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.base.file.MetaFile ;
 import com.hp.hpl.jena.tdb.base.objectfile.ObjectFile ;
+import com.hp.hpl.jena.tdb.base.record.RecordFactory ;
 import com.hp.hpl.jena.tdb.index.Index ;
 import com.hp.hpl.jena.tdb.index.IndexBuilder ;
+import com.hp.hpl.jena.tdb.index.IndexType ;
+import com.hp.hpl.jena.tdb.index.ext.ExtHashSharded ;
+import com.hp.hpl.jena.tdb.lib.NodeLib ;
 import com.hp.hpl.jena.tdb.setup.SystemParams ;
 import com.hp.hpl.jena.tdb.sys.Names ;
 import com.hp.hpl.jena.tdb.sys.SystemTDB ;
 
 public class NodeTableFactory
 {
+    /** Node table encoding: Turtle-like term strings ({@link NodecSSE}) */
+    public static final String EncodingSSE      = "sse" ;
+    /** Node table encoding: binary, with a dictionary of IRI namespaces ({@link NodecBinary}) */
+    public static final String EncodingBinary   = "binary" ;
+    
     /** Regular node table */
     @Deprecated
     public static NodeTable create(IndexBuilder indexBuilder, Location location)
@@ -61,28 +72,147 @@ public class NodeTableFactory
         
         if ( fsNodeToId.isMem() )
         {
-            Index nodeToId = indexBuilder.newIndex(FileSet.mem(), SystemTDB.nodeRecordFactory) ;
+            Index nodeToId = isHashIndex(fsNodeToId.getLocation())
+                ? createHashIndex(fsNodeToId, SystemTDB.nodeRecordFactory)
+                : indexBuilder.newIndex(FileSet.mem(), SystemTDB.nodeRecordFactory) ;
             ObjectFile objects = FileFactory.createObjectFileMem(filename) ;
-            NodeTable nodeTable = new NodeTableNative(nodeToId, objects) ;
+            NodeTable nodeTable = new NodeTableNative(nodeToId, objects, createNodec(fsIdToNode)) ;
             
             nodeTable = NodeTableCache.create(nodeTable, 100, 100, 100) ; 
-            nodeTable =  NodeTableInline.create(nodeTable) ;
+            nodeTable =  NodeTableInline.create(nodeTable, fsIdToNode.getLocation()) ;
             
             return nodeTable ;
             
             //return NodeTableIndex.createMem(indexBuilder) ;
         }
         
-        Index nodeToId = indexBuilder.newIndex(fsNodeToId, SystemTDB.nodeRecordFactory) ;
+        Index nodeToId = isHashIndex(fsNodeToId.getLocation())
+            ? createHashIndex(fsNodeToId, SystemTDB.nodeRecordFactory)
+            : indexBuilder.newIndex(fsNodeToId, SystemTDB.nodeRecordFactory) ;
         // Node table.
         ObjectFile objects = FileFactory.createObjectFileDisk(filename);
-        NodeTable nodeTable = new NodeTableNative(nodeToId, objects) ;
-        nodeTable = NodeTableCache.create(nodeTable, nodeToIdCacheSize, idToNodeCacheSize, nodeMissCacheSize) ; 
-        nodeTable = NodeTableInline.create(nodeTable) ;
+        NodeTable nodeTable = new NodeTableNative(nodeToId, objects, createNodec(fsIdToNode)) ;
+        nodeTable = createCache(nodeTable, nodeToIdCacheSize, idToNodeCacheSize, nodeMissCacheSize) ; 
+        nodeTable = NodeTableInline.create(nodeTable, fsIdToNode.getLocation()) ;
         return nodeTable ;
         
     }
 
+    /** The node encoding recorded in the location metadata ({@link #EncodingSSE} if none). */
+    public static String encoding(Location location)
+    {
+        if ( location == null )
+            return EncodingSSE ;
+        return location.getMetaFile().getProperty(Names.kNodeTableEncoding, EncodingSSE) ;
+    }
+    
+    /**
+     * Set the node encoding for a new database at a location. An existing
+     * database keeps the encoding it was created with. Returns the encoding in use.
+     */
+    public static String initEncoding(Location location, String encoding)
+    {
+        if ( location == null )
+            return EncodingSSE ;
+        MetaFile mf = location.getMetaFile() ;
+        if ( mf.hasProperty(Names.kNodeTableEncoding) )
+            return encoding(location) ;
+        if ( encoding.equals(EncodingSSE) )
+            // SSE is the default when not recorded.
+            return encoding ;
+        if ( ! location.isMem() && location.exists(Names.indexId2Node, Names.extNodeData) )
+            // Existing database, before encodings were recorded.
+            return EncodingSSE ;
+        if ( ! encoding.equals(EncodingBinary) )
+            throw new TDBException("Unknown node encoding: "+encoding) ;
+        mf.setProperty(Names.kNodeTableEncoding, encoding) ;
+        mf.flush() ;
+        return encoding ;
+    }
+    
+    /** The encoder/decoder for the nodes of the node table with this FileSet, as recorded for the location. */
+    public static Nodec createNodec(FileSet fsIdToNode)
+    {
+        String encoding = encoding(fsIdToNode.getLocation()) ;
+        if ( encoding.equals(EncodingSSE) )
+            return NodeLib.nodec() ;
+        if ( ! encoding.equals(EncodingBinary) )
+            throw new TDBException("Unknown node encoding: "+encoding) ;
+        String filename = fsIdToNode.filename(Names.extNodeNamespaces) ;
+        ObjectFile file = fsIdToNode.isMem() ? FileFactory.createObjectFileMem(filename) : FileFactory.createObjectFileDisk(filename) ;
+        return new NodecBinary(new NamespaceDictionary(file, SystemTDB.NodeNamespacesMax)) ;
+    }
+
+    /** The kind of node to NodeId index recorded in the location metadata (B+Tree if none). */
+    public static IndexType nodeIndexType(Location location)
+    {
+        if ( location == null )
+            return IndexType.BPlusTree ;
+        String x = location.getMetaFile().getProperty(Names.kNodeTableIndex, SystemTDB.indexTypeBPlusTree) ;
+        IndexType indexType = IndexType.get(x) ;
+        if ( indexType == null )
+            throw new TDBException("Unknown node table index type: "+x) ;
+        return indexType ;
+    }
+    
+    /** The number of shards of a hash node to NodeId index, as recorded in the location metadata. */
+    public static int nodeIndexShards(Location location)
+    {
+        if ( location == null )
+            return SystemTDB.NodeIndexShards ;
+        return location.getMetaFile().getPropertyAsInteger(Names.kNodeTableIndexShards, SystemTDB.NodeIndexShards) ;
+    }
+    
+    /** Whether the node to NodeId index at the location is a sharded extendible hash table. */
+    public static boolean isHashIndex(Location location)
+    {
+        return nodeIndexType(location) == IndexType.ExtHash ;
+    }
+    
+    /**
+     * Set the kind of node to NodeId index for a new database at a location.
+     * An existing database keeps the index it was created with.
+     * Returns the index type in use.
+     */
+    public static IndexType initNodeIndex(Location location, String indexTypeName, int numShards)
+    {
+        IndexType indexType = IndexType.get(indexTypeName) ;
+        if ( indexType == null )
+            throw new TDBException("Unknown node table index type: "+indexTypeName) ;
+        if ( location == null )
+            return IndexType.BPlusTree ;
+        MetaFile mf = location.getMetaFile() ;
+        if ( mf.hasProperty(Names.kNodeTableIndex) )
+            return nodeIndexType(location) ;
+        if ( indexType == IndexType.BPlusTree )
+            // B+Tree is the default when not recorded.
+            return indexType ;
+        if ( ! location.isMem() && location.exists(Names.indexId2Node, Names.extNodeData) )
+            // Existing database, before node index types were recorded.
+            return IndexType.BPlusTree ;
+        if ( numShards <= 0 )
+            throw new TDBException("Bad number of node table index shards: "+numShards) ;
+        mf.setProperty(Names.kNodeTableIndex, indexType.getName()) ;
+        mf.setProperty(Names.kNodeTableIndexShards, numShards) ;
+        mf.flush() ;
+        return indexType ;
+    }
+    
+    /** Create or open the sharded hash node to NodeId index for a FileSet */
+    public static Index createHashIndex(FileSet fsNodeToId, RecordFactory recordFactory)
+    {
+        int blockSize = fsNodeToId.isMem() ? SystemTDB.BlockSizeTestMem : SystemTDB.BlockSize ;
+        return ExtHashSharded.create(fsNodeToId, recordFactory, nodeIndexShards(fsNodeToId.getLocation()), blockSize) ;
+    }
+
+    /** Add the system's choice of cache to a node table (see {@link SystemTDB#concurrentNodeTableCache()}) */
+    public static NodeTable createCache(NodeTable nodeTable, int nodeToIdCacheSize, int idToNodeCacheSize, int nodeMissCacheSize)
+    {
+        if ( SystemTDB.concurrentNodeTableCache() )
+            return NodeTableCacheConcurrent.create(nodeTable, nodeToIdCacheSize, idToNodeCacheSize, nodeMissCacheSize) ;
+        return NodeTableCache.create(nodeTable, nodeToIdCacheSize, idToNodeCacheSize, nodeMissCacheSize) ;
+    }
+
     public static NodeTable createMem(IndexBuilder indexBuilder)
     {
         return create(indexBuilder, FileSet.mem(), FileSet.mem(), 100, 100, 10) ;
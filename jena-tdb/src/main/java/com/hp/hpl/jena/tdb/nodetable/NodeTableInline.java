@@ -18,10 +18,16 @@
 
 package com.hp.hpl.jena.tdb.nodetable;
 
+import java.util.ArrayList ;
+import java.util.List ;
 
 import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.base.file.MetaFile ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
 import com.hp.hpl.jena.tdb.store.NodeId ;
+import com.hp.hpl.jena.tdb.sys.Names ;
 
 /** NodeTable wrapper to handle inline node ids.
  * If a node can be made inline, then the underlying table never sees it.
@@ -33,28 +39,95 @@ public class NodeTableInline extends NodeTableWrapper
 {
     // Stack order: Inline > Cache > Actual
     
+    private final int format ;
+    
+    /** Inline with the original NodeId format ({@link NodeId#FormatV1}) */
     public static NodeTable create(NodeTable nodeTable)
     {
-        return new NodeTableInline(nodeTable) ;
+        return new NodeTableInline(nodeTable, NodeId.FormatV1) ;
+    }
+    
+    /** Inline with the NodeId format of the database at the location. */
+    public static NodeTable create(NodeTable nodeTable, Location location)
+    {
+        return new NodeTableInline(nodeTable, format(location)) ;
     }
     
-    private NodeTableInline(NodeTable nodeTable)
+    private NodeTableInline(NodeTable nodeTable, int format)
     {
         super(nodeTable) ;
+        this.format = format ;
     }
     
+    /** The NodeId format recorded in the location metadata ({@link NodeId#FormatV1} if none). */ 
+    public static int format(Location location)
+    {
+        if ( location == null )
+            return NodeId.FormatV1 ;
+        return location.getMetaFile().getPropertyAsInteger(Names.kNodeTableLayout, NodeId.FormatV1) ;
+    }
+    
+    /**
+     * Set the NodeId format for a new database at a location. An existing
+     * database keeps the format it was created with. Returns the format in use.
+     */
+    public static int initFormat(Location location, int format)
+    {
+        if ( location == null )
+            return NodeId.FormatV1 ;
+        MetaFile mf = location.getMetaFile() ;
+        if ( mf.hasProperty(Names.kNodeTableLayout) )
+            return format(location) ;
+        if ( format == NodeId.FormatV1 )
+            // Format 1 is the default when not recorded.
+            return format ;
+        if ( ! location.isMem() && location.exists(Names.indexId2Node, Names.extNodeData) )
+            // Existing database, before formats were recorded.
+            return NodeId.FormatV1 ;
+        if ( format != NodeId.FormatV2 )
+            throw new TDBException("Unknown NodeId format: "+format) ;
+        mf.setProperty(Names.kNodeTableLayout, format) ;
+        mf.flush() ;
+        return format ;
+    }
+    
+    public int getFormat() { return format ; }
+    
     @Override
     public final NodeId getAllocateNodeId(Node node)
     {
-        NodeId nid = NodeId.inline(node) ;
+        NodeId nid = NodeId.inline(node, format) ;
         if ( nid != null ) return nid ;
         return super.getAllocateNodeId(node) ;
     }
 
+    @Override
+    public final NodeId[] getAllocateNodeIds(List<Node> nodes)
+    {
+        NodeId[] nids = new NodeId[nodes.size()] ;
+        List<Node> stored = new ArrayList<Node>(nodes.size()) ;
+        for ( int i = 0 ; i < nids.length ; i++ )
+        {
+            nids[i] = NodeId.inline(nodes.get(i), format) ;
+            if ( nids[i] == null )
+                stored.add(nodes.get(i)) ;
+        }
+        if ( stored.isEmpty() )
+            return nids ;
+        // Only the nodes that can not be inlined go to the underlying table.
+        NodeId[] x = super.getAllocateNodeIds(stored) ;
+        for ( int i = 0, j = 0 ; i < nids.length ; i++ )
+        {
+            if ( nids[i] == null )
+                nids[i] = x[j++] ;
+        }
+        return nids ;
+    }
+
     @Override
     public final NodeId getNodeIdForNode(Node node)
     {
-        NodeId nid = NodeId.inline(node) ;
+        NodeId nid = NodeId.inline(node, format) ;
         if ( nid != null ) return nid ;
         return super.getNodeIdForNode(node) ;
     }
@@ -23,6 +23,7 @@ import java.util.Iterator ;
 import org.apache.jena.atlas.lib.Pair ;
 
 import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.tdb.lib.NodeLib ;
 import com.hp.hpl.jena.tdb.store.NodeId ;
 
 public class NodeTableLib
@@ -40,4 +41,33 @@ public class NodeTableLib
             System.out.println(nodeId+" "+node) ;
         }
     }
+    
+    /** The encoding of the nodes of a node table, looking through caches and wrappers
+     *  to the {@link NodeTableNative}.  The default encoding if there isn't one.
+     */
+    public static Nodec getNodec(NodeTable nodeTable)
+    {
+        NodeTableNative ntn = getNative(nodeTable) ;
+        return ( ntn == null ) ? NodeLib.nodec() : ntn.getNodec() ;
+    }
+    
+    /** The {@link NodeTableNative} of a node table, looking through caches and wrappers, 
+     *  or null if there isn't one.
+     */
+    public static NodeTableNative getNative(NodeTable nodeTable)
+    {
+        for ( ;; )
+        {
+            if ( nodeTable instanceof NodeTableNative )
+                return (NodeTableNative)nodeTable ;
+            if ( nodeTable instanceof NodeTableWrapper )
+                nodeTable = ((NodeTableWrapper)nodeTable).getBaseNodeTable() ;
+            else if ( nodeTable instanceof NodeTableCache )
+                nodeTable = ((NodeTableCache)nodeTable).getBaseNodeTable() ;
+            else if ( nodeTable instanceof NodeTableCacheConcurrent )
+                nodeTable = ((NodeTableCacheConcurrent)nodeTable).getBaseNodeTable() ;
+            else
+                return null ;
+        }
+    }
 }
@@ -19,6 +19,7 @@
 package com.hp.hpl.jena.tdb.nodetable;
 
 import java.util.Iterator ;
+import java.util.List ;
 
 import org.apache.jena.atlas.lib.Pair ;
 import org.slf4j.Logger ;
@@ -51,6 +52,14 @@ public class NodeTableLogger implements NodeTable
         return nId ;
     }
 
+    @Override
+    public NodeId[] getAllocateNodeIds(List<Node> nodes)
+    {
+        NodeId[] nIds = nodeTable.getAllocateNodeIds(nodes) ;
+        info("getAllocateNodeIds("+nodes.size()+" nodes)") ;
+        return nIds ;
+    }
+
     @Override
     public NodeId getNodeIdForNode(Node node)
     {
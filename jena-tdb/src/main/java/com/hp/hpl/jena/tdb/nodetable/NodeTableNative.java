@@ -21,17 +21,24 @@ package com.hp.hpl.jena.tdb.nodetable;
 import static com.hp.hpl.jena.tdb.lib.NodeLib.setHash ;
 
 import java.nio.ByteBuffer ;
+import java.util.ArrayList ;
+import java.util.HashMap ;
 import java.util.Iterator ;
+import java.util.List ;
+import java.util.Map ;
 
 import org.apache.jena.atlas.iterator.Iter ;
 import org.apache.jena.atlas.iterator.Transform ;
+import org.apache.jena.atlas.lib.Closeable ;
 import org.apache.jena.atlas.lib.Pair ;
+import org.apache.jena.atlas.lib.Sync ;
 
 import com.hp.hpl.jena.graph.Node ;
 import com.hp.hpl.jena.tdb.TDBException ;
 import com.hp.hpl.jena.tdb.base.objectfile.ObjectFile ;
 import com.hp.hpl.jena.tdb.base.record.Record ;
 import com.hp.hpl.jena.tdb.index.Index ;
+import com.hp.hpl.jena.tdb.index.ext.ExtHashSharded ;
 import com.hp.hpl.jena.tdb.lib.NodeLib ;
 import com.hp.hpl.jena.tdb.store.Hash ;
 import com.hp.hpl.jena.tdb.store.NodeId ;
@@ -47,7 +54,19 @@ public class NodeTableNative implements NodeTable
 
     protected ObjectFile objects ;
     protected Index nodeHashToId ;        // hash -> int
+    protected Nodec nodec = NodeLib.nodec() ;
     private boolean syncNeeded = false ;
+    // The index allows lookups concurrently with updates.
+    private boolean concurrentIndex = false ;
+    // Nodes written to the object file but not yet in the index : see reserve(Node).
+    private final Map<Node, Reservation> reserved = new HashMap<Node, Reservation>() ;
+    
+    private static class Reservation
+    {
+        final NodeId id ;
+        int count = 0 ;
+        Reservation(NodeId id) { this.id = id ; }
+    }
     
     // Delayed construction - must call init explicitly.
     protected NodeTableNative() {}
@@ -59,10 +78,19 @@ public class NodeTableNative implements NodeTable
         init(nodeToId, objectFile) ;
     }
     
+    /** A node table with the given encoding of nodes in the object file */
+    public NodeTableNative(Index nodeToId, ObjectFile objectFile, Nodec nodec)
+    {
+        this() ;
+        init(nodeToId, objectFile) ;
+        this.nodec = nodec ;
+    }
+    
     protected void init(Index nodeToId, ObjectFile objectFile)
     {
         this.nodeHashToId = nodeToId ;
         this.objects = objectFile;
+        this.concurrentIndex = ( nodeToId instanceof ExtHashSharded ) ;
     }
 
     // ---- Public interface for Node <==> NodeId
@@ -82,6 +110,10 @@ public class NodeTableNative implements NodeTable
     @Override
     public NodeId getAllocateNodeId(Node node)  { return _idForNode(node, true) ; }
 
+    /** Find the NodeIds for nodes, allocating and writing new nodes as one batch */ 
+    @Override
+    public NodeId[] getAllocateNodeIds(List<Node> nodes)  { return accessIndex(nodes) ; }
+
     // ---- The worker functions
     // Synchronization:
     // accesIndex and readNodeFromTable
@@ -120,11 +152,18 @@ public class NodeTableNative implements NodeTable
     
     protected final NodeId accessIndex(Node node, boolean create)
     {
-        Hash hash = new Hash(nodeHashToId.getRecordFactory().keyLength()) ;
-        setHash(hash, node) ;
-        byte k[] = hash.getBytes() ;        
-        // Key only.
-        Record r = nodeHashToId.getRecordFactory().create(k) ;
+        Record r = hashRecord(node) ;
+        
+        if ( concurrentIndex )
+        {
+            // Lookup without holding the node table lock.
+            // On a miss, check again under the lock before allocating. 
+            Record r2 = nodeHashToId.find(r) ;
+            if ( r2 != null )
+                return NodeId.create(r2.getValue(), 0) ;
+            if ( ! create )
+                return NodeId.NodeDoesNotExist ;
+        }
         
         synchronized (this)  // Pair to readNodeFromTable.
         {
@@ -140,8 +179,10 @@ public class NodeTableNative implements NodeTable
             // Not found.
             if ( ! create )
                 return NodeId.NodeDoesNotExist ;
-            // Write the node, which allocates an id for it.
-            NodeId id = writeNodeToTable(node) ;
+            // Write the node, which allocates an id for it, unless it has been written already.
+            NodeId id = takeReservation(node) ;
+            if ( id == null )
+                id = writeNodeToTable(node) ;
 
             // Update the r record with the new id.
             // r.value := id bytes ; 
@@ -154,6 +195,147 @@ public class NodeTableNative implements NodeTable
         }
     }
     
+    /** The index record, key only, for a node */
+    private Record hashRecord(Node node)
+    {
+        Hash hash = new Hash(nodeHashToId.getRecordFactory().keyLength()) ;
+        setHash(hash, node) ;
+        byte k[] = hash.getBytes() ;        
+        // Key only.
+        return nodeHashToId.getRecordFactory().create(k) ;
+    }
+    
+    /** Batch version of accessIndex(node, true).  Hashing is done before taking the
+     * lock; under the lock, the new nodes are appended to the object file with one write
+     * and then added to the index. */
+    protected final NodeId[] accessIndex(List<Node> nodes)
+    {
+        NodeId[] nodeIds = new NodeId[nodes.size()] ;
+        Record[] records = new Record[nodes.size()] ;
+        for ( int i = 0 ; i < nodeIds.length ; i++ )
+        {
+            Node node = nodes.get(i) ;
+            if ( node == Node.ANY )
+            {
+                nodeIds[i] = NodeId.NodeIdAny ;
+                continue ;
+            }
+            records[i] = hashRecord(node) ;
+            if ( concurrentIndex )
+            {
+                Record r2 = nodeHashToId.find(records[i]) ;
+                if ( r2 != null )
+                    nodeIds[i] = NodeId.create(r2.getValue(), 0) ;
+            }
+        }
+        
+        synchronized (this)  // Pair to readNodeFromTable.
+        {
+            // New nodes, by first position in the batch.
+            Map<Node, Integer> newNodes = new HashMap<Node, Integer>() ;
+            List<Integer> slots = new ArrayList<Integer>() ;
+            List<ByteBuffer> encodings = new ArrayList<ByteBuffer>() ;
+            for ( int i = 0 ; i < nodeIds.length ; i++ )
+            {
+                if ( nodeIds[i] != null )
+                    continue ;
+                Node node = nodes.get(i) ;
+                Record r2 = nodeHashToId.find(records[i]) ;
+                if ( r2 != null )
+                {
+                    nodeIds[i] = NodeId.create(r2.getValue(), 0) ;
+                    continue ;
+                }
+                if ( newNodes.containsKey(node) )
+                    continue ;
+                newNodes.put(node, i) ;
+                NodeId id = takeReservation(node) ;
+                if ( id != null )
+                {
+                    id.toBytes(records[i].getValue(), 0) ;
+                    if ( ! nodeHashToId.add(records[i]) )
+                        throw new TDBException("NodeTableBase::nodeToId - record mysteriously appeared") ;
+                    nodeIds[i] = id ;
+                    continue ;
+                }
+                slots.add(i) ;
+                encodings.add(NodeLib.encode(node, nodec)) ;
+            }
+            if ( slots.isEmpty() )
+                return nodeIds ;
+            
+            syncNeeded = true ;
+            long[] x = getObjects().write(encodings) ;
+            for ( int j = 0 ; j < x.length ; j++ )
+            {
+                int i = slots.get(j) ;
+                NodeId id = NodeId.create(x[j]) ;
+                Record r = records[i] ;
+                id.toBytes(r.getValue(), 0) ;
+                if ( ! nodeHashToId.add(r) )
+                    throw new TDBException("NodeTableBase::nodeToId - record mysteriously appeared") ;
+                nodeIds[i] = id ;
+            }
+            // Repeats of a new node within the batch.
+            for ( int i = 0 ; i < nodeIds.length ; i++ )
+            {
+                if ( nodeIds[i] == null )
+                    nodeIds[i] = nodeIds[newNodes.get(nodes.get(i))] ;
+            }
+            return nodeIds ;
+        }
+    }
+    
+    /** Write a node to the object file, so it has a NodeId, without adding it to the index.
+     *  The node is not found by {@link #getNodeIdForNode} until the next
+     *  {@link #getAllocateNodeId} for it, which adds it to the index with this id.
+     *  Reserving a node that is already reserved returns the same id, so concurrent
+     *  writers that add the same new node agree on its id.
+     *  If the node is already in the index, its id is returned.
+     *  @see #release
+     */
+    public NodeId reserve(Node node)
+    {
+        Record r = hashRecord(node) ;
+        synchronized (this)
+        {
+            Record r2 = nodeHashToId.find(r) ;
+            if ( r2 != null )
+                return NodeId.create(r2.getValue(), 0) ;
+            Reservation x = reserved.get(node) ;
+            if ( x == null )
+            {
+                x = new Reservation(writeNodeToTable(node)) ;
+                reserved.put(node, x) ;
+            }
+            x.count++ ;
+            return x.id ;
+        }
+    }
+    
+    /** Give up one reservation of a node.  When no reservations are left, the node
+     *  stays in the object file but is unused. 
+     *  @see #reserve
+     */
+    public synchronized void release(Node node)
+    {
+        Reservation x = reserved.get(node) ;
+        if ( x == null )
+            // Added to the index, or never reserved.
+            return ;
+        if ( --x.count == 0 )
+            reserved.remove(node) ;
+    }
+    
+    // Synchronized in accessIndex
+    private NodeId takeReservation(Node node)
+    {
+        if ( reserved.isEmpty() )
+            return null ;
+        Reservation x = reserved.remove(node) ;
+        return ( x == null ) ? null : x.id ;
+    }
+    
     // -------- NodeId<->Node
     // Synchronization:
     //   write: in accessIndex
@@ -164,7 +346,7 @@ public class NodeTableNative implements NodeTable
     {
         syncNeeded = true ;
         // Synchronized in accessIndex
-        long x = NodeLib.encodeStore(node, getObjects()) ;
+        long x = NodeLib.encodeStore(node, getObjects(), nodec) ;
         return NodeId.create(x);
     }
     
@@ -175,7 +357,7 @@ public class NodeTableNative implements NodeTable
         {
             if ( id.getId() >= getObjects().length() )
                 return null ;
-            return NodeLib.fetchDecode(id.getId(), getObjects()) ;
+            return NodeLib.fetchDecode(id.getId(), getObjects(), nodec) ;
         }
     }
     // -------- NodeId<->Node
@@ -189,10 +371,13 @@ public class NodeTableNative implements NodeTable
             nodeHashToId.close() ;
             nodeHashToId = null ;
         }
+        reserved.clear() ;
         if ( getObjects() != null )
         {
             getObjects().close() ;
             objects = null ;
+            if ( nodec instanceof Closeable )
+                ((Closeable)nodec).close() ;
         }
     }
 
@@ -217,7 +402,7 @@ public class NodeTableNative implements NodeTable
             public Pair<NodeId, Node> convert(Record item)
             {
                 NodeId id = NodeId.create(item.getValue(), 0) ;
-                Node n = NodeLib.fetchDecode(id.getId(), getObjects()) ;
+                Node n = NodeLib.fetchDecode(id.getId(), getObjects(), nodec) ;
                 return new Pair<NodeId, Node>(id, n) ;
             }};
         return Iter.map(iter, transform) ;
@@ -233,7 +418,7 @@ public class NodeTableNative implements NodeTable
             {
                 NodeId id = NodeId.create(item.car().longValue()) ;
                 ByteBuffer bb = item.cdr();
-                Node n = NodeLib.decode(bb) ;
+                Node n = NodeLib.decode(bb, nodec) ;
                 return new Pair<NodeId, Node>(id, n) ;
             }
         };
@@ -247,6 +432,9 @@ public class NodeTableNative implements NodeTable
         {
             if ( nodeHashToId != null )
                 nodeHashToId.sync() ;
+            // Any dictionary used by the encoding goes before the nodes that use it. 
+            if ( nodec instanceof Sync )
+                ((Sync)nodec).sync() ;
             if ( getObjects() != null )
                 getObjects().sync() ;
             syncNeeded = false ;
@@ -258,6 +446,11 @@ public class NodeTableNative implements NodeTable
         return objects;
     }
     
+    public Nodec getNodec()
+    {
+        return nodec ;
+    }
+    
     @Override
     public String toString() { return objects.getLabel() ; }
 
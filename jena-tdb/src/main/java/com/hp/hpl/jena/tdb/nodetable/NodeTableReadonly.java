@@ -18,6 +18,8 @@
 
 package com.hp.hpl.jena.tdb.nodetable;
 
+import java.util.List ;
+
 import com.hp.hpl.jena.graph.Node ;
 import com.hp.hpl.jena.tdb.TDBException ;
 import com.hp.hpl.jena.tdb.store.NodeId ;
@@ -37,4 +39,13 @@ public class NodeTableReadonly extends NodeTableWrapper
             throw new TDBException("Allocation attempt on NodeTableReadonly") ;
         return nodeId ;
     }
+
+    @Override
+    public NodeId[] getAllocateNodeIds(List<Node> nodes)
+    {
+        NodeId[] nodeIds = new NodeId[nodes.size()] ;
+        for ( int i = 0 ; i < nodeIds.length ; i++ )
+            nodeIds[i] = getAllocateNodeId(nodes.get(i)) ;
+        return nodeIds ;
+    }
 }
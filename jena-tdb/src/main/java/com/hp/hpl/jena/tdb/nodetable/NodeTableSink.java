@@ -19,6 +19,7 @@
 package com.hp.hpl.jena.tdb.nodetable;
 
 import java.util.Iterator ;
+import java.util.List ;
 
 import org.apache.jena.atlas.iterator.Iter ;
 import org.apache.jena.atlas.lib.Pair ;
@@ -56,6 +57,15 @@ public class NodeTableSink implements NodeTable
         return nid ;
     }
 
+    @Override
+    public NodeId[] getAllocateNodeIds(List<Node> nodes)
+    {
+        NodeId[] nids = new NodeId[nodes.size()] ;
+        for ( int i = 0 ; i < nids.length ; i++ )
+            nids[i] = getAllocateNodeId(nodes.get(i)) ;
+        return nids ;
+    }
+
     @Override
     public NodeId allocOffset()
     {
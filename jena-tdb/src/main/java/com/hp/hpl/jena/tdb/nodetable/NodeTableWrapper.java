@@ -19,6 +19,7 @@
 package com.hp.hpl.jena.tdb.nodetable;
 
 import java.util.Iterator ;
+import java.util.List ;
 
 import org.apache.jena.atlas.lib.Pair ;
 
@@ -36,6 +37,8 @@ public class NodeTableWrapper implements NodeTable
         this.nodeTable = nodeTable ;
     }
     
+    public NodeTable getBaseNodeTable() { return nodeTable ; }
+    
     
     @Override
     public NodeId getAllocateNodeId(Node node)
@@ -43,6 +46,12 @@ public class NodeTableWrapper implements NodeTable
         return nodeTable.getAllocateNodeId(node) ;
     }
 
+    @Override
+    public NodeId[] getAllocateNodeIds(List<Node> nodes)
+    {
+        return nodeTable.getAllocateNodeIds(nodes) ;
+    }
+
     @Override
     public NodeId getNodeIdForNode(Node node)
     {
@@ -60,6 +60,13 @@ public class NodeTupleTableConcrete implements NodeTupleTable
         this.tupleTable = new TupleTable(N, indexes) ;
         this.nodeTable = nodeTable ;
     }
+    
+    public NodeTupleTableConcrete(TupleTable tupleTable, NodeTable nodeTable, DatasetControl dsControl)
+    {
+        this.dsPolicy = dsControl ;
+        this.tupleTable = tupleTable ;
+        this.nodeTable = nodeTable ;
+    }
 
     private void startWrite()   { dsPolicy.startUpdate() ; }
 
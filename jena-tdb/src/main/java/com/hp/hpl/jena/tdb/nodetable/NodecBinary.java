@@ -20,37 +20,244 @@ package com.hp.hpl.jena.tdb.nodetable;
 
 import java.nio.ByteBuffer;
 
+import org.apache.jena.atlas.io.BlockUTF8 ;
+import org.apache.jena.atlas.lib.Closeable ;
+import org.apache.jena.atlas.lib.Sync ;
+import org.apache.jena.riot.web.LangTag ;
+
 import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory ;
+import com.hp.hpl.jena.rdf.model.AnonId ;
 import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.tdb.TDBException ;
 
-public class NodecBinary implements Nodec
+/** Binary encoder/decoder for nodes.
+ *  <p>
+ *  An encoding is a one byte code for the kind of node followed by its parts.
+ *  IRIs, including datatypes, are the id of their namespace in a {@link NamespaceDictionary}
+ *  and the local name.  Strings are the length and then UTF-8 bytes (as {@link BlockUTF8}),
+ *  numbers are unsigned varints.  Decoding creates the node directly, with no parsing.
+ */
+public class NodecBinary implements Nodec, Sync, Closeable
 {
-    private static byte codeNull        = 0 ;
-    private static byte codeURI         = 1 ;
-    private static byte codeBNode       = 2 ;
-    private static byte codeLiteral     = 3 ;
-    private static byte codeLiteralLang = 4 ;
-    private static byte codeLiteralDT   = 5 ;
+    private static final byte codeNull        = 0 ;
+    private static final byte codeURI         = 1 ;
+    private static final byte codeBNode       = 2 ;
+    private static final byte codeLiteral     = 3 ;
+    private static final byte codeLiteralLang = 4 ;
+    private static final byte codeLiteralDT   = 5 ;
+    
+    // Namespace ids are stored +1 ; 0 is "no namespace".
+    private static final int NoNamespace      = 0 ;
+    // Shorter namespaces are not worth a dictionary entry.
+    private static final int MinNamespace     = 8 ;
+    private static final int MaxVarint        = 5 ;
+    
+    private final NamespaceDictionary namespaces ;
+    
+    public NodecBinary(NamespaceDictionary namespaces)
+    {
+        this.namespaces = namespaces ;
+    }
+    
+    public NamespaceDictionary getNamespaces() { return namespaces ; }
     
     @Override
     public int maxSize(Node node)
     {
-        return 0 ;
+        if ( node.isURI() )
+            return 1+maxLengthIRI(node.getURI()) ;
+        if ( node.isBlank() )
+            return 1+maxLength(node.getBlankNodeLabel()) ;
+        if ( node.isLiteral() )
+        {
+            int len = 1+maxLength(node.getLiteralLexicalForm()) ;
+            String lang = node.getLiteralLanguage() ;
+            if ( lang != null && ! lang.equals("") )
+                return len+maxLength(lang) ;
+            if ( node.getLiteralDatatypeURI() != null )
+                return len+maxLengthIRI(node.getLiteralDatatypeURI()) ;
+            return len ;
+        }
+        throw new TDBException("Unrecognized node type: "+node) ;
     }
     
     @Override
     public int encode(Node node, ByteBuffer bb, PrefixMapping pmap)
     {
-        return 0 ;
+        if ( node.isURI() )
+        {
+            bb.put(codeURI) ;
+            encodeIRI(node.getURI(), bb) ;
+        }
+        else if ( node.isBlank() )
+        {
+            bb.put(codeBNode) ;
+            encode(node.getBlankNodeLabel(), bb) ;
+        }
+        else if ( node.isLiteral() )
+        {
+            String dt = node.getLiteralDatatypeURI() ;
+            String lang = node.getLiteralLanguage() ;
+            if ( lang != null && ! lang.equals("") )
+            {
+                if ( ! LangTag.check(lang) )
+                    throw new TDBException("bad language tag: "+node) ;
+                bb.put(codeLiteralLang) ;
+                encode(lang, bb) ;
+            }
+            else if ( dt != null )
+            {
+                bb.put(codeLiteralDT) ;
+                encodeIRI(dt, bb) ;
+            }
+            else
+                bb.put(codeLiteral) ;
+            encode(node.getLiteralLexicalForm(), bb) ;
+        }
+        else
+            throw new TDBException("Unrecognized node type: "+node) ;
+        bb.flip() ;
+        return bb.limit() ;
     }
 
     @Override
     public Node decode(ByteBuffer bb, PrefixMapping pmap)
     {
-        return null ;
+        byte code = bb.get() ;
+        switch (code)
+        {
+            case codeURI:
+                return NodeFactory.createURI(decodeIRI(bb)) ;
+            case codeBNode:
+                return NodeFactory.createAnon(new AnonId(decodeString(bb))) ;
+            case codeLiteral:
+                return NodeFactory.createLiteral(decodeString(bb)) ;
+            case codeLiteralLang:
+            {
+                String lang = decodeString(bb) ;
+                return NodeFactory.createLiteral(decodeString(bb), lang, false) ;
+            }
+            case codeLiteralDT:
+            {
+                String dt = decodeIRI(bb) ;
+                return NodeFactory.createLiteral(decodeString(bb), NodeFactory.getType(dt)) ;
+            }
+            case codeNull:
+            default:
+                throw new TDBException("Bad node encoding: code = "+code) ;
+        }
+    }
+    
+    @Override
+    public void sync()      { namespaces.sync() ; }
+
+    @Override
+    public void close()     { namespaces.close() ; }
+    
+    // ---- IRIs
+    
+    private void encodeIRI(String iri, ByteBuffer bb)
+    {
+        int idx = splitIRI(iri) ;
+        int id = ( idx < MinNamespace ) ? -1 : namespaces.getAllocateId(iri.substring(0, idx)) ;
+        if ( id < 0 )
+        {
+            putVarint(bb, NoNamespace) ;
+            encode(iri, bb) ;
+            return ;
+        }
+        putVarint(bb, id+1) ;
+        encode(iri.substring(idx), bb) ;
+    }
+    
+    private String decodeIRI(ByteBuffer bb)
+    {
+        int x = getVarint(bb) ;
+        String local = decodeString(bb) ;
+        if ( x == NoNamespace )
+            return local ;
+        return namespaces.getNamespace(x-1).concat(local) ;
+    }
+    
+    /** Length of the namespace: up to and including the last '#' or '/' */ 
+    private static int splitIRI(String iri)
+    {
+        int idx = Math.max(iri.lastIndexOf('#'), iri.lastIndexOf('/')) ;
+        return idx+1 ;
+    }
+    
+    private static int maxLengthIRI(String iri)
+    {
+        return MaxVarint+maxLength(iri) ;
+    }
+    
+    // ---- Strings
+    
+    private static void encode(String s, ByteBuffer bb)
+    {
+        putVarint(bb, utf8Length(s)) ;
+        BlockUTF8.fromChars(s, bb) ;
+    }
+    
+    private static String decodeString(ByteBuffer bb)
+    {
+        int len = getVarint(bb) ;
+        int start = bb.position() ;
+        if ( len > bb.limit()-start )
+            throw new TDBException("Bad node encoding: string length = "+len) ;
+        ByteBuffer bb2 = bb.duplicate() ;
+        bb2.limit(start+len) ;
+        String s = BlockUTF8.toString(bb2) ;
+        bb.position(start+len) ;
+        return s ;
+    }
+    
+    private static int maxLength(String s)
+    {
+        // Every char is at most 3 bytes by BlockUTF8.
+        return MaxVarint+3*s.length() ;
+    }
+
+    // The number of bytes BlockUTF8 uses for a string.
+    private static int utf8Length(String s)
+    {
+        int len = 0 ;
+        for ( int i = 0 ; i < s.length() ; i++ )
+        {
+            char ch = s.charAt(i) ;
+            if ( ch <= 0x7F )
+                len += 1 ;
+            else if ( ch <= 0x7FF )
+                len += 2 ;
+            else
+                len += 3 ;
+        }
+        return len ;
+    }
+    
+    // ---- Unsigned varints
+    
+    private static void putVarint(ByteBuffer bb, int v)
+    {
+        while ( (v & ~0x7F) != 0 )
+        {
+            bb.put((byte)((v & 0x7F) | 0x80)) ;
+            v = v >>> 7 ;
+        }
+        bb.put((byte)v) ;
     }
     
-    private void encode(String s, ByteBuffer bb, int idx)
+    private static int getVarint(ByteBuffer bb)
     {
+        int v = 0 ;
+        for ( int shift = 0 ; shift < 35 ; shift += 7 )
+        {
+            byte b = bb.get() ;
+            v |= (b & 0x7F) << shift ;
+            if ( (b & 0x80) == 0 )
+                return v ;
+        }
+        throw new TDBException("Bad node encoding: varint") ;
     }
 }
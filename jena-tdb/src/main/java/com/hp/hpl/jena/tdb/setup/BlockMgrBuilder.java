@@ -18,9 +18,13 @@
 
 package com.hp.hpl.jena.tdb.setup;
 
+import com.hp.hpl.jena.tdb.base.block.BlockCodec ;
 import com.hp.hpl.jena.tdb.base.block.BlockMgr ;
 import com.hp.hpl.jena.tdb.base.file.FileSet ;
 
 public interface BlockMgrBuilder {
     BlockMgr buildBlockMgr(FileSet fileSet, String ext, int blockSize) ;
+    
+    /** Block manager for blocks stored encoded by the codec */
+    BlockMgr buildBlockMgr(FileSet fileSet, String ext, BlockCodec codec) ;
 }
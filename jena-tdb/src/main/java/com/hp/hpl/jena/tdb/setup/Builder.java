@@ -23,12 +23,16 @@ import org.apache.jena.atlas.lib.ColumnMap ;
 import org.slf4j.Logger ;
 import org.slf4j.LoggerFactory ;
 
+import com.hp.hpl.jena.tdb.base.block.BlockCacheType ;
+import com.hp.hpl.jena.tdb.base.block.BlockCodec ;
 import com.hp.hpl.jena.tdb.base.block.BlockMgr ;
 import com.hp.hpl.jena.tdb.base.block.BlockMgrFactory ;
+import com.hp.hpl.jena.tdb.base.file.BufferPool ;
 import com.hp.hpl.jena.tdb.base.file.FileFactory ;
 import com.hp.hpl.jena.tdb.base.file.FileSet ;
 import com.hp.hpl.jena.tdb.base.objectfile.ObjectFile ;
 import com.hp.hpl.jena.tdb.base.record.RecordFactory ;
+import com.hp.hpl.jena.tdb.base.recordbuffer.RecordBlockCodec ;
 import com.hp.hpl.jena.tdb.index.Index ;
 import com.hp.hpl.jena.tdb.index.RangeIndex ;
 import com.hp.hpl.jena.tdb.index.TupleIndex ;
@@ -36,9 +40,10 @@ import com.hp.hpl.jena.tdb.index.TupleIndexRecord ;
 import com.hp.hpl.jena.tdb.index.bplustree.BPlusTree ;
 import com.hp.hpl.jena.tdb.index.bplustree.BPlusTreeParams ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
-import com.hp.hpl.jena.tdb.nodetable.NodeTableCache ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTableFactory ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTableInline ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTableNative ;
+import com.hp.hpl.jena.tdb.nodetable.Nodec ;
 import com.hp.hpl.jena.tdb.sys.Names ;
 import com.hp.hpl.jena.tdb.sys.SystemTDB ;
 
@@ -82,11 +87,14 @@ public class Builder
         public NodeTable buildNodeTable(FileSet fsIndex, FileSet fsObjectFile, int sizeNode2NodeIdCache, int sizeNodeId2NodeCache, int sizeNodeMissCacheSize)
         {
             RecordFactory recordFactory = new RecordFactory(SystemTDB.LenNodeHash, SystemTDB.SizeOfNodeId) ;
-            Index idx = indexBuilder.buildIndex(fsIndex, recordFactory) ;
+            Index idx = NodeTableFactory.isHashIndex(fsIndex.getLocation())
+                ? NodeTableFactory.createHashIndex(fsIndex, recordFactory)
+                : indexBuilder.buildIndex(fsIndex, recordFactory) ;
             ObjectFile objectFile = objectFileBuilder.buildObjectFile(fsObjectFile, Names.extNodeData) ;
-            NodeTable nodeTable = new NodeTableNative(idx, objectFile) ;
-            nodeTable = NodeTableCache.create(nodeTable, sizeNode2NodeIdCache, sizeNodeId2NodeCache, sizeNodeMissCacheSize) ;
-            nodeTable = NodeTableInline.create(nodeTable) ;
+            Nodec nodec = NodeTableFactory.createNodec(fsObjectFile) ;
+            NodeTable nodeTable = new NodeTableNative(idx, objectFile, nodec) ;
+            nodeTable = NodeTableFactory.createCache(nodeTable, sizeNode2NodeIdCache, sizeNodeId2NodeCache, sizeNodeMissCacheSize) ;
+            nodeTable = NodeTableInline.create(nodeTable, fsObjectFile.getLocation()) ;
             return nodeTable ;
         }
     }
@@ -163,6 +171,12 @@ public class Builder
                 BPlusTreeParams params = new BPlusTreeParams(order, factory) ;
                 
                 BlockMgr blkMgrNodes = blockMgrBuilderNodes.buildBlockMgr(fileset, Names.bptExtTree, blockSize) ;
+                if ( RecordBlockCodec.canCompress(factory) && BPlusTreeParams.isCompressedLeaves(fileset) )
+                {
+                    RecordBlockCodec leafCodec = new RecordBlockCodec(factory, blockSize) ;
+                    BlockMgr blkMgrRecords = blockMgrBuilderRecords.buildBlockMgr(fileset, Names.bptExtRecords, leafCodec) ;
+                    return BPlusTree.create(params, blkMgrNodes, blkMgrRecords, leafCodec) ;
+                }
                 BlockMgr blkMgrRecords = blockMgrBuilderRecords.buildBlockMgr(fileset, Names.bptExtRecords, blockSize) ;
                 return BPlusTree.create(params, blkMgrNodes, blkMgrRecords) ;
             }
@@ -182,7 +196,17 @@ public class Builder
 
     public static class BlockMgrBuilderStd implements BlockMgrBuilder
     {
-        public BlockMgrBuilderStd() {}
+        private final BlockCacheType cacheType ;
+        private final BufferPool pool ;
+        
+        /** Block managers with the system default cache */
+        public BlockMgrBuilderStd() { this(null) ; }
+        
+        /** Block managers with the given choice of cache (null for the system default) */
+        public BlockMgrBuilderStd(BlockCacheType cacheType) { this(cacheType, null) ; }
+        
+        /** Block managers with the given choice of cache, and buffer pool for a "pooled" cache (null for the system pool) */
+        public BlockMgrBuilderStd(BlockCacheType cacheType, BufferPool pool) { this.cacheType = cacheType ; this.pool = pool ; }
     
         @Override
         public BlockMgr buildBlockMgr(FileSet fileset, String ext, int blockSize)
@@ -192,11 +216,21 @@ public class Builder
             
             int readCacheSize = SystemTDB.BlockReadCacheSize ;
             int writeCacheSize = SystemTDB.BlockWriteCacheSize ;
+            BlockCacheType cType = ( cacheType != null ) ? cacheType : SystemTDB.blockCacheType() ;
             
-            BlockMgr mgr = BlockMgrFactory.create(fileset, ext, blockSize, readCacheSize, writeCacheSize) ;
+            BlockMgr mgr = BlockMgrFactory.create(fileset, ext, blockSize, readCacheSize, writeCacheSize, cType, pool) ;
             return mgr ;
         }
         
+        @Override
+        public BlockMgr buildBlockMgr(FileSet fileset, String ext, BlockCodec codec)
+        {
+            int readCacheSize = SystemTDB.BlockReadCacheSize ;
+            int writeCacheSize = SystemTDB.BlockWriteCacheSize ;
+            BlockCacheType cType = ( cacheType != null ) ? cacheType : SystemTDB.blockCacheType() ;
+            return BlockMgrFactory.create(fileset, ext, codec, readCacheSize, writeCacheSize, cType, pool) ;
+        }
+        
     }
 
 }
@@ -18,6 +18,7 @@
 
 package com.hp.hpl.jena.tdb.setup;
 
+import java.util.Arrays ;
 import java.util.HashMap ;
 import java.util.Map ;
 
@@ -27,18 +28,30 @@ import org.slf4j.Logger ;
 
 import com.hp.hpl.jena.query.ARQ ;
 import com.hp.hpl.jena.sparql.engine.main.QC ;
+import com.hp.hpl.jena.sparql.engine.optimizer.StatsMatcher ;
 import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderLib ;
 import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderTransformation ;
 import com.hp.hpl.jena.sparql.sse.SSEParseException ;
 import com.hp.hpl.jena.tdb.TDB ;
 import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.base.block.BlockCacheType ;
+import com.hp.hpl.jena.tdb.base.block.BlockCodec ;
 import com.hp.hpl.jena.tdb.base.block.BlockMgr ;
 import com.hp.hpl.jena.tdb.base.file.BufferChannel ;
+import com.hp.hpl.jena.tdb.base.file.BufferPool ;
 import com.hp.hpl.jena.tdb.base.file.FileSet ;
 import com.hp.hpl.jena.tdb.base.file.Location ;
 import com.hp.hpl.jena.tdb.index.TupleIndex ;
+import com.hp.hpl.jena.tdb.index.bplustree.BPlusTreeParams ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTableFactory ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTableInline ;
 import com.hp.hpl.jena.tdb.solver.OpExecutorTDB1 ;
+import com.hp.hpl.jena.tdb.solver.stats.ReorderCharacteristicSets ;
+import com.hp.hpl.jena.tdb.solver.stats.Stats ;
+import com.hp.hpl.jena.tdb.solver.stats.ReorderLive ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsLive ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsResults ;
 import com.hp.hpl.jena.tdb.store.* ;
 import com.hp.hpl.jena.tdb.sys.* ;
 
@@ -112,7 +125,7 @@ public class DatasetBuilderStd implements DatasetBuilder
     protected void setStd()
     {
           ObjectFileBuilder objectFileBuilder     = new Builder.ObjectFileBuilderStd() ;
-          BlockMgrBuilder blockMgrBuilder         = new Builder.BlockMgrBuilderStd() ;
+          BlockMgrBuilder blockMgrBuilder         = new BlockMgrBuilderParams() ;
           IndexBuilder indexBuilderNT             = new Builder.IndexBuilderStd(blockMgrBuilder, blockMgrBuilder) ;
           NodeTableBuilder nodeTableBuilder       = new Builder.NodeTableBuilderStd(indexBuilderNT, objectFileBuilder) ;
           
@@ -137,6 +150,10 @@ public class DatasetBuilderStd implements DatasetBuilder
         params = _params ;
         init(location) ;
         DatasetControl policy = createConcurrencyPolicy() ;
+        NodeTableInline.initFormat(location, params.nodeIdFormat) ;
+        NodeTableFactory.initEncoding(location, params.nodeEncoding) ;
+        NodeTableFactory.initNodeIndex(location, params.nodeIndexType, params.nodeIndexShards) ;
+        QuadTable.initUnionIndex(location, params.unionIndex) ;
         
         NodeTable nodeTable = makeNodeTable(location, 
                                             params.indexNode2Id, params.indexId2Node,
@@ -146,10 +163,24 @@ public class DatasetBuilderStd implements DatasetBuilder
         QuadTable quadTable = makeQuadTable(location, nodeTable, policy) ;
         DatasetPrefixesTDB prefixes = makePrefixTable(location, policy) ;
         
-        ReorderTransformation transform = (_transform==null) ? chooseReorderTransformation(location) : _transform ;
+        // Maintained statistics belong to the base dataset; transactions are given them.
+        // Once there is a stats file, they continue to be maintained.
+        StatsLive statsLive = null ;
+        if ( _transform == null && ( params.maintainStats || location.exists(Names.optStatsLive) ) )
+            statsLive = StatsLive.open(location, nodeTable,
+                                       tripleTable.getNodeTupleTable().getTupleTable(),
+                                       quadTable.getNodeTupleTable().getTupleTable()) ;
+        
+        ReorderTransformation transform = _transform ;
+        if ( transform == null )
+            transform = ( statsLive != null && ! location.exists(Names.optNone) ) 
+                ? new ReorderLive(statsLive) : chooseReorderTransformation(location) ;
         
         StorageConfig storageConfig = new StorageConfig(location, params, readonly, blockMgrs, bufferChannels, nodeTables) ;
         DatasetGraphTDB dsg = new DatasetGraphTDB(tripleTable, quadTable, prefixes, transform, storageConfig) ;
+        dsg.setStats(chooseStats(location)) ;
+        if ( statsLive != null )
+            dsg.setStatsLive(statsLive, true) ;
         // TDB does filter placement on BGPs itself.
         dsg.getContext().set(ARQ.optFilterPlacementBGP, false);
         QC.setFactory(dsg.getContext(), OpExecutorTDB1.OpExecFactoryTDB) ;
@@ -198,8 +229,20 @@ public class DatasetBuilderStd implements DatasetBuilder
         TupleIndex quadIndexes[] = makeTupleIndexes(location, primary, indexes) ;
         if ( quadIndexes.length != indexes.length )
             error(log, "Wrong number of quad table tuples indexes: "+quadIndexes.length) ;
-        QuadTable quadTable = new QuadTable(quadIndexes, nodeTable, policy) ;
-        return quadTable ;
+        if ( ! QuadTable.hasUnionIndex(location) )
+            return new QuadTable(quadIndexes, nodeTable, policy) ;
+        
+        // The union of the named graphs, kept as triples alongside the quads. 
+        String[] unionIndexes = params.tripleIndexes ;
+        String[] unionFilenames = new String[unionIndexes.length] ;
+        for ( int i = 0 ; i < unionIndexes.length ; i++ )
+            unionFilenames[i] = Names.unionIndexPrefix+unionIndexes[i] ;
+        TupleIndex unionTupleIndexes[] = makeTupleIndexes(location, params.primaryIndexTriples, unionIndexes, unionFilenames) ;
+        TripleTable unionTable = new TripleTable(unionTupleIndexes, nodeTable, policy) ;
+        TupleTableUnion tupleTable = new TupleTableUnion(quadIndexes, primary,
+                                                         unionTable.getNodeTupleTable().getTupleTable(),
+                                                         params.primaryIndexTriples) ;
+        return new QuadTable(tupleTable, unionTable, nodeTable, policy) ;
     }
 
     protected DatasetPrefixesTDB makePrefixTable(Location location, DatasetControl policy)
@@ -230,6 +273,22 @@ public class DatasetBuilderStd implements DatasetBuilder
         return chooseOptimizer(location) ;
     }
 
+    /** Statistics for the dataset, if there is a stats file, else null */ 
+    protected StatsResults chooseStats(Location location)
+    {
+        if ( location == null || ! location.exists(Names.optStats) )
+            return null ;
+        try {
+            return Stats.read(location.getPath(Names.optStats)) ;
+        } catch (SSEParseException ex) { 
+            log.warn("Error in stats file: "+ex.getMessage()) ;
+            return null ;
+        } catch (TDBException ex) { 
+            log.warn("Error in stats file: "+ex.getMessage()) ;
+            return null ;
+        }
+    }
+
     // ======== Components level
     
 //    // This is not actually used in main dataset builder because it's done inside TripleTable/QuadTable.
@@ -266,6 +325,7 @@ public class DatasetBuilderStd implements DatasetBuilder
         // Commonly,  name == indexOrder.
         // FileSet
         FileSet fs = new FileSet(location, name) ;
+        BPlusTreeParams.initLeafLayout(fs, Arrays.asList(params.compressedIndexes).contains(name)) ;
         ColumnMap colMap = new ColumnMap(primary, indexOrder) ;
         return tupleIndexBuilder.buildTupleIndex(fs, colMap, indexOrder) ;
     }
@@ -310,11 +370,24 @@ public class DatasetBuilderStd implements DatasetBuilder
         if ( location.exists(Names.optStats) )
         {
             try {
-                reorder = ReorderLib.weighted(location.getPath(Names.optStats)) ;
-                log.debug("Statistics-based BGP optimizer") ;  
+                String filename = location.getPath(Names.optStats) ;
+                StatsResults stats = Stats.read(filename) ;
+                if ( stats.getCharacteristicSets().isEmpty() )
+                {
+                    reorder = ReorderLib.weighted(filename) ;
+                    log.debug("Statistics-based BGP optimizer") ;
+                }
+                else
+                {
+                    reorder = new ReorderCharacteristicSets(new StatsMatcher(filename), stats.getCharacteristicSets()) ;
+                    log.debug("Statistics-based BGP optimizer (characteristic sets)") ;
+                }
             } catch (SSEParseException ex) { 
                 log.warn("Error in stats file: "+ex.getMessage()) ;
                 reorder = null ;
+            } catch (TDBException ex) { 
+                log.warn("Error in stats file: "+ex.getMessage()) ;
+                reorder = null ;
             }
         }
 
@@ -375,6 +448,42 @@ public class DatasetBuilderStd implements DatasetBuilder
         
     }
     
+    /** Standard block managers, using the cache choice of the SystemParams of the build.
+     * A "pooled" cache has one buffer pool, of the size in the SystemParams, for all the files
+     * of the database.
+     */
+    class BlockMgrBuilderParams implements BlockMgrBuilder
+    {
+        private BufferPool pool = null ;
+        private SystemParams poolParams = null ;
+        
+        @Override
+        public BlockMgr buildBlockMgr(FileSet fileSet, String ext, int blockSize)
+        {
+            return builder(fileSet).buildBlockMgr(fileSet, ext, blockSize) ;
+        }
+        
+        @Override
+        public BlockMgr buildBlockMgr(FileSet fileSet, String ext, BlockCodec codec)
+        {
+            return builder(fileSet).buildBlockMgr(fileSet, ext, codec) ;
+        }
+        
+        private BlockMgrBuilder builder(FileSet fileSet)
+        {
+            BlockCacheType cacheType = ( params == null ) ? null : params.blockCacheType ;
+            if ( cacheType != BlockCacheType.pooled || fileSet.isMem() )
+                return new Builder.BlockMgrBuilderStd(cacheType) ;
+            // Allocate on first use, once per build.
+            if ( pool == null || poolParams != params )
+            {
+                pool = BufferPool.create(params.bufferPoolSize, params.bufferPoolReadAhead) ;
+                poolParams = params ;
+            }
+            return new Builder.BlockMgrBuilderStd(cacheType, pool) ;
+        }
+    }
+    
     static class BlockMgrBuilderRecorder implements BlockMgrBuilder
     {
         private BlockMgrBuilder builder ;
@@ -394,6 +503,15 @@ public class DatasetBuilderStd implements DatasetBuilder
             recorder.record(ref, blkMgr) ;
             return blkMgr ;
         }
+        
+        @Override
+        public BlockMgr buildBlockMgr(FileSet fileSet, String ext, BlockCodec codec)
+        {
+            BlockMgr blkMgr = builder.buildBlockMgr(fileSet, ext, codec) ;
+            FileRef ref = FileRef.create(fileSet, ext) ;
+            recorder.record(ref, blkMgr) ;
+            return blkMgr ;
+        }
     }
     
     static class Recorder implements RecordBlockMgr, RecordNodeTable
@@ -19,6 +19,7 @@
 package com.hp.hpl.jena.tdb.setup;
 
 import com.hp.hpl.jena.sparql.util.StringUtils ;
+import com.hp.hpl.jena.tdb.base.block.BlockCacheType ;
 import com.hp.hpl.jena.tdb.sys.Names ;
 import com.hp.hpl.jena.tdb.sys.SystemTDB ;
 
@@ -29,9 +30,19 @@ public class SystemParams
     public int      memBlockSize         = SystemTDB.BlockSizeTestMem ;
     public int      readCacheSize        = SystemTDB.BlockReadCacheSize ;
     public int      writeCacheSize       = SystemTDB.BlockWriteCacheSize ;
+    public BlockCacheType blockCacheType = SystemTDB.blockCacheType() ;
+    public int      bufferPoolSize       = SystemTDB.BufferPoolSize ;
+    public int      bufferPoolReadAhead  = SystemTDB.BufferPoolReadAhead ;
     public int      Node2NodeIdCacheSize = SystemTDB.Node2NodeIdCacheSize ;
     public int      NodeId2NodeCacheSize = SystemTDB.NodeId2NodeCacheSize ;
     public int      NodeMissCacheSize    = SystemTDB.NodeMissCacheSize ;
+    public int      nodeIdFormat         = SystemTDB.NodeIdFormat ;
+    public String   nodeEncoding         = SystemTDB.NodeEncoding ;
+    public String   nodeIndexType        = SystemTDB.NodeIndexType ;
+    public int      nodeIndexShards      = SystemTDB.NodeIndexShards ;
+    public String[] compressedIndexes    = SystemTDB.CompressedIndexes ;
+    public boolean  unionIndex           = SystemTDB.UnionIndex ;
+    public boolean  maintainStats        = SystemTDB.MaintainStats ;
 
     public String   indexNode2Id         = Names.indexNode2Id ;
     public String   indexId2Node         = Names.indexId2Node ;
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.solver;
+
+import java.util.ArrayList ;
+import java.util.HashSet ;
+import java.util.List ;
+import java.util.Set ;
+
+import org.apache.jena.atlas.lib.ColumnMap ;
+import org.apache.jena.atlas.lib.Tuple ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.query.ARQ ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.graph.NodeConst ;
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.tdb.index.TupleIndex ;
+import com.hp.hpl.jena.tdb.index.TupleTable ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsResults ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+/** Choose the join algorithm for each step of a basic graph pattern over a TDB table.
+ * <p>
+ * The pattern has already been reordered; the planner only decides how each
+ * step is joined to the ones before it. Step 0 is always a plain index access.
+ * A {@link JoinStrategy#merge} for step 1 means steps 0 and 1 are executed
+ * together as one merge join. Only the first two patterns are merge joined: later
+ * steps join to a stream of bindings that is not in join variable order, so they use
+ * the index nested loop or the hash join.
+ * <p>
+ * The hash join is only chosen if the estimate for its build side is within
+ * {@link #maxBuildSize(Context)}.
+ * <p>
+ * With {@link JoinStrategy#auto}, estimates come from the {@link StatsResults} of the dataset.
+ * If there are no statistics, or the estimate is unknown, the index nested loop is used.
+ */
+public class JoinPlanner
+{
+    /** Relative cost of an index probe (a B+Tree descent) compared to reading one tuple in a scan. */ 
+    private static final int ProbeCost = 50 ;
+    
+    private final StatsResults stats ;
+    private final JoinStrategy requested ;
+    private final long maxBuildSize ;
+
+    public JoinPlanner(StatsResults stats, JoinStrategy requested)
+    {
+        this(stats, requested, SystemTDB.HashJoinMaxBuildSize) ;
+    }
+    
+    public JoinPlanner(StatsResults stats, JoinStrategy requested, long maxBuildSize)
+    {
+        this.stats = stats ;
+        this.requested = ( requested == null ) ? JoinStrategy.auto : requested ;
+        this.maxBuildSize = maxBuildSize ;
+    }
+    
+    /** The largest number of tuples a hash join builds into memory : {@link SystemTDB#HashJoinMaxBuildSize},
+     *  or the spill threshold of the context ({@link ARQ#spillToDiskThreshold}) if that is smaller.
+     */
+    public static long maxBuildSize(Context context)
+    {
+        long max = SystemTDB.HashJoinMaxBuildSize ;
+        Object x = context.get(ARQ.spillToDiskThreshold) ;
+        if ( x instanceof Number )
+        {
+            long threshold = ((Number)x).longValue() ;
+            if ( threshold >= 0 && threshold < max )
+                max = threshold ;
+        }
+        return max ;
+    }
+    
+    /** Choose the join for each pattern (in natural tuple order, triples or quads) */ 
+    public JoinStrategy[] plan(List<Tuple<Node>> patterns, TupleTable table, boolean anyGraphs)
+    {
+        int N = patterns.size() ;
+        JoinStrategy[] plan = new JoinStrategy[N] ;
+        for ( int i = 0 ; i < N ; i++ )
+            plan[i] = JoinStrategy.nested ;
+        if ( N < 2 || requested == JoinStrategy.nested )
+            return plan ;
+        if ( requested == JoinStrategy.auto && stats == null )
+            return plan ;
+        
+        Set<Var> boundVars = new HashSet<Var>() ;
+        vars(patterns.get(0), boundVars) ;
+        long leftEstimate = estimate(patterns.get(0)) ;
+        
+        for ( int i = 1 ; i < N ; i++ )
+        {
+            Tuple<Node> pattern = patterns.get(i) ;
+            List<Var> joinVars = joinVars(pattern, boundVars) ;
+            long rightEstimate = estimate(pattern) ;
+            
+            if ( ! joinVars.isEmpty() )
+                plan[i] = choose(i, patterns, joinVars, leftEstimate, rightEstimate, table, anyGraphs) ;
+            
+            vars(pattern, boundVars) ;
+            if ( leftEstimate >= 0 && rightEstimate >= 0 )
+                leftEstimate = Math.max(leftEstimate, rightEstimate) ;
+            else
+                leftEstimate = -1 ;
+        }
+        return plan ;
+    }
+
+    private JoinStrategy choose(int i, List<Tuple<Node>> patterns, List<Var> joinVars,
+                                long leftEstimate, long rightEstimate, 
+                                TupleTable table, boolean anyGraphs)
+    {
+        // Only steps 0 and 1 both come straight from index scans in join variable order.
+        boolean mergeable = ( i == 1 && ! anyGraphs && joinVars.size() == 1 
+                              && canMerge(patterns.get(0), patterns.get(1), joinVars.get(0), table) ) ;
+        switch (requested)
+        {
+            case hash:      return JoinStrategy.hash ;
+            case merge:     return mergeable ? JoinStrategy.merge : JoinStrategy.nested ;
+            case nested:    return JoinStrategy.nested ;
+            default: break ;
+        }
+        
+        // auto
+        if ( leftEstimate < 0 || rightEstimate < 0 )
+            return JoinStrategy.nested ;
+        if ( leftEstimate < SystemTDB.JoinScanThreshold || rightEstimate < SystemTDB.JoinScanThreshold )
+            return JoinStrategy.nested ;
+        // Cost of probing once per left binding against the cost of a single scan.
+        if ( rightEstimate > leftEstimate*ProbeCost )
+            return JoinStrategy.nested ;
+        if ( mergeable )
+            return JoinStrategy.merge ;
+        if ( rightEstimate <= maxBuildSize )
+            return JoinStrategy.hash ;
+        return JoinStrategy.nested ;
+    }
+    
+    /** Estimate the number of matches for a pattern with only its constants set.
+     *  Returns -1 for "don't know".
+     */ 
+    long estimate(Tuple<Node> pattern)
+    {
+        if ( stats == null )
+            return -1 ;
+        int offset = pattern.size()-3 ;
+        Node s = pattern.get(offset) ;
+        Node p = pattern.get(offset+1) ;
+        Node o = pattern.get(offset+2) ;
+        
+        if ( s.isConcrete() )
+            return 1 ;
+        if ( ! p.isConcrete() )
+            return o.isConcrete() ? -1 : stats.getCount() ;
+        
+        if ( o.isConcrete() )
+        {
+            if ( ! NodeConst.nodeRDFType.equals(p) )
+                // No histograms for objects.
+                return -1 ;
+            Integer tCount = stats.getTypes().get(o) ;
+            return ( tCount == null ) ? 0 : tCount ;
+        }
+        Integer pCount = stats.getPredicates().get(p) ;
+        return ( pCount == null ) ? 0 : pCount ;
+    }
+    
+    /** Can the two patterns be merged on the join variable, with no
+     *  input bindings? Each must have an index that gives its matches
+     *  in join variable order. 
+     */
+    private static boolean canMerge(Tuple<Node> pattern1, Tuple<Node> pattern2, Var joinVar, TupleTable table)
+    {
+        return canScanInOrder(pattern1, joinVar, table) && canScanInOrder(pattern2, joinVar, table) ; 
+    }
+    
+    private static boolean canScanInOrder(Tuple<Node> pattern, Var joinVar, TupleTable table)
+    {
+        NodeId[] ids = new NodeId[pattern.size()] ;
+        int slot = -1 ;
+        for ( int i = 0 ; i < pattern.size() ; i++ )
+        {
+            Node n = pattern.get(i) ;
+            if ( n.isConcrete() )
+            {
+                // Any concrete value will do for choosing the index.
+                ids[i] = NodeId.NodeDoesNotExist ;
+                continue ;
+            }
+            if ( Var.isVar(n) && joinVar.equals(Var.alloc(n)) )
+            {
+                if ( slot >= 0 )
+                    return false ;
+                slot = i ;
+            }
+            ids[i] = null ;
+        }
+        return slot >= 0 && sortedIndex(table, ids, slot) != null ;
+    }
+
+    /** Find an index which, given the pattern, yields tuples sorted by the NodeId in slot "slot".
+     *  That is an index where the concrete slots are the leading columns and the next column is "slot".
+     *  Returns null if there is no such index.
+     */
+    public static TupleIndex sortedIndex(TupleTable table, NodeId[] pattern, int slot)
+    {
+        if ( slot < 0 || ! NodeId.isAny(pattern[slot]) )
+            return null ;
+        int numBound = 0 ;
+        for ( NodeId nId : pattern )
+            if ( ! NodeId.isAny(nId) )
+                numBound++ ;
+        
+        for ( TupleIndex index : table.getIndexes() )
+        {
+            if ( index == null )
+                continue ;
+            ColumnMap colMap = index.getColumnMap() ;
+            boolean ok = true ;
+            for ( int j = 0 ; j < numBound ; j++ )
+            {
+                if ( NodeId.isAny(pattern[colMap.fetchSlotIdx(j)]) )
+                {
+                    ok = false ;
+                    break ;
+                }
+            }
+            if ( ok && colMap.fetchSlotIdx(numBound) == slot )
+                return index ;
+        }
+        return null ;
+    }
+    
+    /** The variables of the pattern that are in the set, in pattern order */ 
+    static List<Var> joinVars(Tuple<Node> pattern, Set<Var> boundVars)
+    {
+        List<Var> x = new ArrayList<Var>() ;
+        for ( Node n : pattern )
+        {
+            if ( ! Var.isVar(n) )
+                continue ;
+            Var v = Var.alloc(n) ;
+            if ( boundVars.contains(v) && ! x.contains(v) )
+                x.add(v) ;
+        }
+        return x ;
+    }
+    
+    static Set<Var> vars(Tuple<Node> pattern, Set<Var> acc)
+    {
+        for ( Node n : pattern )
+        {
+            if ( Var.isVar(n) )
+                acc.add(Var.alloc(n)) ;
+        }
+        return acc ;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.solver;
+
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+/** The way one step of a basic graph pattern is joined to the steps before it. */
+public enum JoinStrategy
+{
+    /** Choose from the dataset statistics */
+    auto,
+    /** Index nested loop : probe the indexes once per incoming binding */
+    nested,
+    /** Hash join : scan the pattern once, build a table on the join variables */
+    hash,
+    /** Merge join : scan two patterns in join variable order and merge them */
+    merge ;
+    
+    /** Get the strategy requested in a context (symbol {@link SystemTDB#symJoinStrategy}) ; default "auto". */
+    public static JoinStrategy get(Context context)
+    {
+        Object x = context.get(SystemTDB.symJoinStrategy) ;
+        if ( x == null )
+            return auto ;
+        if ( x instanceof JoinStrategy )
+            return (JoinStrategy)x ;
+        try { return JoinStrategy.valueOf(x.toString().trim().toLowerCase()) ; }
+        catch (IllegalArgumentException ex)
+        { throw new TDBException("Unrecognized join strategy: "+x) ; }
+    }
+}
@@ -18,6 +18,8 @@
 
 package com.hp.hpl.jena.tdb.solver;
 
+import java.util.Map ;
+
 import org.apache.jena.atlas.iterator.Filter ;
 import org.apache.jena.atlas.lib.Tuple ;
 import org.apache.jena.atlas.logging.Log ;
@@ -36,13 +38,17 @@ import com.hp.hpl.jena.sparql.core.Substitute ;
 import com.hp.hpl.jena.sparql.core.Var ;
 import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
 import com.hp.hpl.jena.sparql.engine.QueryIterator ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterFilterExpr ;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPeek ;
 import com.hp.hpl.jena.sparql.engine.main.OpExecutor ;
 import com.hp.hpl.jena.sparql.engine.main.OpExecutorFactory ;
 import com.hp.hpl.jena.sparql.engine.main.QC ;
 import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterGraph ;
+import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterOptionalIndex ;
 import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderProc ;
 import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderTransformation ;
+import com.hp.hpl.jena.sparql.expr.Expr ;
 import com.hp.hpl.jena.sparql.expr.ExprList ;
 import com.hp.hpl.jena.sparql.mgt.Explain ;
 import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
@@ -135,6 +141,19 @@ public class OpExecutorTDB1 extends OpExecutor
         return super.execute(opFilter, input) ;
         }
 
+    @Override
+    protected QueryIterator execute(OpConditional opCondition, QueryIterator input)
+    {
+        if ( ! isForTDB || ! SemiJoin.isEnabled(execCxt.getContext()) )
+            return super.execute(opCondition, input) ;
+        // Skip the right-hand side for bindings it can't match.
+        Filter<Binding> mayMatch = SemiJoin.mayMatch(opCondition.getRight(), execCxt) ;
+        if ( mayMatch == null )
+            return super.execute(opCondition, input) ;
+        QueryIterator left = exec(opCondition.getLeft(), input) ;
+        return new QueryIterOptionalIndex(left, opCondition.getRight(), mayMatch, execCxt) ;
+    }
+    
     // ---- Triple patterns
     
     @Override
@@ -375,8 +394,35 @@ public class OpExecutorTDB1 extends OpExecutor
             filter = QC2.getFilter(execCxt.getContext()) ;
         }
         
+        @Override
+        public QueryIterator execute(OpFilter opFilter, QueryIterator input)
+        {
+            // (filter (bgp ...)) or (filter (quadpattern ...)) from filter placement:
+            // use index range scans for simple range filters.  
+            Op sub = opFilter.getSubOp() ;
+            if ( ! ( sub instanceof OpBGP ) && ! ( sub instanceof OpQuadPattern ) )
+                return super.execute(opFilter, input) ;
+            if ( ! RangeFilter.isEnabled(execCxt.getContext()) )
+                return super.execute(opFilter, input) ;
+            Map<Var, RangeFilter> ranges = RangeFilter.extract(opFilter.getExprs()) ;
+            if ( ranges.isEmpty() )
+                return super.execute(opFilter, input) ;
+            
+            QueryIterator qIter = ( sub instanceof OpBGP ) 
+                ? execute((OpBGP)sub, input, ranges) 
+                : execute((OpQuadPattern)sub, input, ranges) ;
+            for ( Expr expr : opFilter.getExprs() )
+                qIter = new QueryIterFilterExpr(qIter, expr, execCxt) ;
+            return qIter ;
+        }
+        
         @Override
         public QueryIterator execute(OpBGP opBGP, QueryIterator input)
+        {
+            return execute(opBGP, input, null) ;
+        }
+        
+        private QueryIterator execute(OpBGP opBGP, QueryIterator input, Map<Var, RangeFilter> ranges)
         {
             Graph g = execCxt.getActiveGraph() ;
             
@@ -388,7 +434,7 @@ public class OpExecutorTDB1 extends OpExecutor
                 //return SolverLib.execute((GraphTDB)g, bgp, input, filter, execCxt) ;
                 GraphTDB gtdb = (GraphTDB)g ;
                 Node gn = decideGraphNode(gtdb.getGraphName(), execCxt) ;
-                return SolverLib.execute(gtdb.getDSG(), gn, bgp, input, filter, execCxt) ;
+                return SolverLib.execute(gtdb.getDSG(), gn, bgp, input, filter, planner(gtdb.getDSG()), ranges, execCxt) ;
             }
             Log.warn(this, "Non-GraphTDB passed to OpExecutorPlainTDB") ;
             return super.execute(opBGP, input) ;
@@ -396,6 +442,11 @@ public class OpExecutorTDB1 extends OpExecutor
         
         @Override
         public QueryIterator execute(OpQuadPattern opQuadPattern, QueryIterator input)
+        {
+            return execute(opQuadPattern, input, null) ;
+        }
+        
+        private QueryIterator execute(OpQuadPattern opQuadPattern, QueryIterator input, Map<Var, RangeFilter> ranges)
         {
             Node gn = opQuadPattern.getGraphNode() ;
             gn = decideGraphNode(gn, execCxt) ;
@@ -405,7 +456,7 @@ public class OpExecutorTDB1 extends OpExecutor
                 DatasetGraphTDB ds = (DatasetGraphTDB)execCxt.getDataset() ;
                 Explain.explain("Execute", opQuadPattern.getPattern(), execCxt.getContext()) ;
                 BasicPattern bgp = opQuadPattern.getBasicPattern() ;
-                return SolverLib.execute(ds, gn, bgp, input, filter, execCxt) ;
+                return SolverLib.execute(ds, gn, bgp, input, filter, planner(ds), ranges, execCxt) ;
             }
             // Maybe a TDB named graph inside a non-TDB dataset.
             Graph g = execCxt.getActiveGraph() ;
@@ -416,11 +467,19 @@ public class OpExecutorTDB1 extends OpExecutor
                 BasicPattern bgp = opQuadPattern.getBasicPattern() ;
                 Explain.explain("Execute", bgp, execCxt.getContext()) ;
                 // Don't pass in G -- gn may be different.
-                return SolverLib.execute(((GraphTDB)g).getDSG(), gn, bgp, input, filter, execCxt) ;
+                DatasetGraphTDB ds = ((GraphTDB)g).getDSG() ;
+                return SolverLib.execute(ds, gn, bgp, input, filter, planner(ds), ranges, execCxt) ;
             }
             Log.warn(this, "Non-DatasetGraphTDB passed to OpExecutorPlainTDB") ;
             return super.execute(opQuadPattern, input) ;
         }
+        
+        /** Choose the joins within a BGP from the dataset statistics and the requested strategy */
+        private JoinPlanner planner(DatasetGraphTDB ds)
+        {
+            return new JoinPlanner(ds.getStats(), JoinStrategy.get(execCxt.getContext()), 
+                                   JoinPlanner.maxBuildSize(execCxt.getContext())) ;
+        }
 
     }
 }
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.solver;
+
+import java.math.BigDecimal ;
+import java.util.HashMap ;
+import java.util.List ;
+import java.util.Map ;
+
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.expr.* ;
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.tdb.store.NodeIdRange ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+/** A range restriction on a variable, from the FILTER expressions of a basic graph pattern,
+ *  that can be executed as index range scans over the inline NodeIds.
+ * <p>
+ * Only comparisons of a variable and a constant number or xsd:dateTime 
+ * ({@code ?x > 100}, {@code ?x <= "2012-01-01T00:00:00Z"^^xsd:dateTime}),
+ * possibly combined with {@code &&}, are used. 
+ * The range scans find a superset of the matches; the FILTER is still applied.
+ */
+public class RangeFilter
+{
+    private final Var var ;
+    private NodeValue lower = null ;
+    private boolean lowerInclusive = false ;
+    private NodeValue upper = null ;
+    private boolean upperInclusive = false ;
+    // Bounds that can't be compared.
+    private boolean unusable = false ;
+    private List<NodeIdRange> ranges = null ;
+    
+    /** Is range filtering enabled in this context (symbol {@link SystemTDB#symRangeFilter})? Default: true. */ 
+    public static boolean isEnabled(Context context)
+    {
+        return context.isTrueOrUndef(SystemTDB.symRangeFilter) ;
+    }
+    
+    /** The range restrictions, by variable, of a list of filter expressions (all must be true) */ 
+    public static Map<Var, RangeFilter> extract(ExprList exprs)
+    {
+        Map<Var, RangeFilter> x = new HashMap<Var, RangeFilter>() ;
+        for ( Expr expr : exprs )
+            extract(expr, x) ;
+        return x ;
+    }
+
+    private static void extract(Expr expr, Map<Var, RangeFilter> acc)
+    {
+        if ( expr instanceof E_LogicalAnd )
+        {
+            extract(((E_LogicalAnd)expr).getArg1(), acc) ;
+            extract(((E_LogicalAnd)expr).getArg2(), acc) ;
+            return ;
+        }
+        
+        boolean isLower ;
+        boolean inclusive ;
+        // For "?x op constant"
+        if ( expr instanceof E_GreaterThan )                { isLower = true ; inclusive = false ; }
+        else if ( expr instanceof E_GreaterThanOrEqual )    { isLower = true ; inclusive = true ; }
+        else if ( expr instanceof E_LessThan )              { isLower = false ; inclusive = false ; }
+        else if ( expr instanceof E_LessThanOrEqual )       { isLower = false ; inclusive = true ; }
+        else
+            return ;
+        
+        Expr arg1 = ((ExprFunction2)expr).getArg1() ;
+        Expr arg2 = ((ExprFunction2)expr).getArg2() ;
+        Var var ;
+        NodeValue nv ;
+        if ( arg1.isVariable() && arg2.isConstant() )
+        {
+            var = arg1.asVar() ;
+            nv = arg2.getConstant() ;
+        }
+        else if ( arg2.isVariable() && arg1.isConstant() )
+        {
+            // "constant op ?x"
+            var = arg2.asVar() ;
+            nv = arg1.getConstant() ;
+            isLower = ! isLower ;
+        }
+        else
+            return ;
+        
+        if ( ! nv.isNumber() && ! nv.isDateTime() )
+            return ;
+        
+        RangeFilter range = acc.get(var) ;
+        if ( range == null )
+        {
+            range = new RangeFilter(var) ;
+            acc.put(var, range) ;
+        }
+        if ( isLower )
+            range.addLower(nv, inclusive) ;
+        else
+            range.addUpper(nv, inclusive) ;
+    }
+    
+    private RangeFilter(Var var) { this.var = var ; }
+    
+    public Var getVar() { return var ; }
+    
+    private void addLower(NodeValue nv, boolean inclusive)
+    {
+        if ( lower == null )
+        {
+            lower = nv ;
+            lowerInclusive = inclusive ;
+            return ;
+        }
+        int x = compare(nv, lower) ;
+        if ( x > 0 || ( x == 0 && ! inclusive ) )
+        {
+            lower = nv ;
+            lowerInclusive = inclusive ;
+        }
+    }
+
+    private void addUpper(NodeValue nv, boolean inclusive)
+    {
+        if ( upper == null )
+        {
+            upper = nv ;
+            upperInclusive = inclusive ;
+            return ;
+        }
+        int x = compare(nv, upper) ;
+        if ( x < 0 || ( x == 0 && ! inclusive ) )
+        {
+            upper = nv ;
+            upperInclusive = inclusive ;
+        }
+    }
+    
+    private int compare(NodeValue nv1, NodeValue nv2)
+    {
+        try {
+            int x = NodeValue.compare(nv1, nv2) ;
+            if ( x == Expr.CMP_LESS || x == Expr.CMP_EQUAL || x == Expr.CMP_GREATER )
+                return x ;
+        } catch (ExprEvalException ex) {}
+        unusable = true ;
+        return Expr.CMP_EQUAL ;
+    }
+    
+    /** The NodeId ranges to scan, or null if the range can't be used */ 
+    public List<NodeIdRange> getRanges()
+    {
+        if ( ranges == null && ! unusable )
+            ranges = calcRanges() ;
+        return ranges ;
+    }
+    
+    private List<NodeIdRange> calcRanges()
+    {
+        NodeValue nv = ( lower != null ) ? lower : upper ;
+        if ( nv.isNumber() )
+        {
+            if ( upper != null && ! upper.isNumber() )
+                return null ;
+            BigDecimal lo = ( lower == null ) ? null : decimal(lower, -1) ;
+            BigDecimal hi = ( upper == null ) ? null : decimal(upper, +1) ;
+            // Doubles and floats bounds are widened and inclusive.
+            boolean loInclusive = lowerInclusive || ( lo != null && ! lower.isDecimal() ) ;
+            boolean hiInclusive = upperInclusive || ( hi != null && ! upper.isDecimal() ) ;
+            return NodeIdRange.numeric(lo, loInclusive, hi, hiInclusive) ;
+        }
+        if ( nv.isDateTime() )
+        {
+            if ( upper != null && ! upper.isDateTime() )
+                return null ;
+            return NodeIdRange.dateTime(lower == null ? null : lower.getDateTime(), 
+                                        upper == null ? null : upper.getDateTime()) ;
+        }
+        return null ;
+    }
+    
+    /** The exact value of an integer or decimal.
+     *  Comparisons with doubles and floats are done as doubles or floats, with rounding,
+     *  so widen the bound by two units of least precision (in direction "dir").
+     *  Returns null for no bound (infinities, NaN).
+     */  
+    private static BigDecimal decimal(NodeValue nv, int dir)
+    {
+        if ( nv.isDecimal() )
+            return nv.getDecimal() ;
+        double d = nv.getDouble() ;
+        if ( Double.isNaN(d) || Double.isInfinite(d) )
+            return null ;
+        double ulp = nv.isFloat() ? Math.ulp((float)d) : Math.ulp(d) ;
+        return new BigDecimal(d).add(new BigDecimal(2*ulp*dir)) ;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "RangeFilter["+var+" : "+(lower == null ? "" : lower+(lowerInclusive?" <= ":" < "))
+                +var+(upper == null ? "" : (upperInclusive?" <= ":" < ")+upper)+"]" ;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.solver;
+
+import java.util.* ;
+
+import org.apache.jena.atlas.iterator.Filter ;
+import org.apache.jena.atlas.lib.Tuple ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.sparql.algebra.Op ;
+import com.hp.hpl.jena.sparql.algebra.op.OpBGP ;
+import com.hp.hpl.jena.sparql.algebra.op.OpQuadPattern ;
+import com.hp.hpl.jena.sparql.core.BasicPattern ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTupleTable ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.store.GraphTDB ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+import com.hp.hpl.jena.tdb.store.TripleTable ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+/** Semi-join reduction (sideways information passing) for basic graph patterns.
+ * <p>
+ * A pattern with a single variable, all other slots fixed (e.g. <code>?x rdf:type :C</code>),
+ * only tests the variable once it is bound by an earlier step. Instead, its matches are read once,
+ * into a set of NodeIds, and the earlier step that binds the variable drops the tuples
+ * not in the set. The pattern itself is then not executed, so there is no index probe
+ * per binding, and bindings that would fail are not taken through the intermediate steps.
+ * <p>
+ * For OPTIONAL, {@link #mayMatch} gives a test of the left-hand side bindings
+ * that finds those for which the right-hand side basic graph pattern can't match. 
+ * <p>
+ * Sets are built only if there are at most {@link SystemTDB#SemiJoinMaxSize} matches,
+ * and, for a basic graph pattern, only when it is evaluated at the start of the query, 
+ * not once per binding from an earlier part of the query.
+ */
+public class SemiJoin
+{
+    /** Is semi-join reduction enabled in this context (symbol {@link SystemTDB#symSemiJoin})? Default: false. */ 
+    public static boolean isEnabled(Context context)
+    {
+        return context.isTrue(SystemTDB.symSemiJoin) ;
+    }
+    
+    /** Apply semi-join reduction to the patterns of a basic graph pattern, in execution order.
+     *  Patterns replaced by a semi-join filter are removed from the list.
+     *  Returns the filter to use for each remaining pattern. 
+     */
+    static List<Filter<Tuple<NodeId>>> reduce(NodeTupleTable nodeTupleTable, List<Tuple<Node>> tuples,
+                                              boolean anyGraph, Filter<Tuple<NodeId>> filter, JoinPlanner planner)
+    {
+        List<Filter<Tuple<NodeId>>> filters = new ArrayList<Filter<Tuple<NodeId>>>(tuples.size()) ;
+        for ( int i = 0 ; i < tuples.size() ; i++ )
+            filters.add(filter) ;
+        
+        for ( int j = 1 ; j < tuples.size() ; j++ )
+        {
+            Tuple<Node> pattern = tuples.get(j) ;
+            int slot = singleVarSlot(pattern) ;
+            if ( slot < 0 )
+                continue ;
+            Var var = Var.alloc(pattern.get(slot)) ;
+            // The step that binds the variable.
+            int i = firstStep(tuples, j, var) ;
+            if ( i < 0 )
+                continue ;
+            if ( planner != null )
+            {
+                long estimate = planner.estimate(pattern) ;
+                if ( estimate > SystemTDB.SemiJoinMaxSize )
+                    continue ;
+            }
+            Set<NodeId> values = values(nodeTupleTable, pattern, slot, anyGraph, filter, SystemTDB.SemiJoinMaxSize) ;
+            if ( values == null )
+                continue ;
+            filters.set(i, filter(filters.get(i), slot(tuples.get(i), var), values)) ;
+            tuples.remove(j) ;
+            filters.remove(j) ;
+            j-- ;
+        }
+        return filters ;
+    }
+    
+    /** A test, for the left-hand side bindings of an OPTIONAL, of whether the right-hand side
+     *  can match, or null if there is no such test. The right-hand side must be a basic graph
+     *  pattern or quad pattern over TDB storage. The NodeId sets are built when first needed. 
+     */ 
+    public static Filter<Binding> mayMatch(Op op, ExecutionContext execCxt)
+    {
+        DatasetGraphTDB ds ;
+        Node gn ;
+        BasicPattern bgp ;
+        if ( op instanceof OpBGP && execCxt.getActiveGraph() instanceof GraphTDB )
+        {
+            GraphTDB graph = (GraphTDB)execCxt.getActiveGraph() ;
+            ds = graph.getDSG() ;
+            gn = graph.getGraphName() ;
+            bgp = ((OpBGP)op).getPattern() ;
+        }
+        else if ( op instanceof OpQuadPattern && execCxt.getDataset() instanceof DatasetGraphTDB )
+        {
+            ds = (DatasetGraphTDB)execCxt.getDataset() ;
+            gn = ((OpQuadPattern)op).getGraphNode() ;
+            bgp = ((OpQuadPattern)op).getBasicPattern() ;
+        }
+        else
+            return null ;
+        
+        gn = OpExecutorTDB1.decideGraphNode(gn, execCxt) ;
+        NodeTupleTable ntt = ds.chooseNodeTupleTable(gn) ;
+        TripleTable unionTable = ds.getQuadTable().getUnionTable() ;
+        if ( unionTable != null && Node.ANY.equals(gn) )
+        {
+            ntt = unionTable.getNodeTupleTable() ;
+            gn = null ;
+        }
+        
+        List<Tuple<Node>> tuples = new ArrayList<Tuple<Node>>(bgp.size()) ;
+        for ( Triple triple : bgp )
+        {
+            if ( gn == null )
+                tuples.add(Tuple.createTuple(triple.getSubject(), triple.getPredicate(), triple.getObject())) ;
+            else
+                tuples.add(Tuple.createTuple(gn, triple.getSubject(), triple.getPredicate(), triple.getObject())) ;
+        }
+        return mayMatch(ntt, tuples, Node.ANY.equals(gn), QC2.getFilter(execCxt.getContext())) ;
+    }
+    
+    static Filter<Binding> mayMatch(final NodeTupleTable nodeTupleTable, List<Tuple<Node>> tuples,
+                                    final boolean anyGraph, final Filter<Tuple<NodeId>> filter)
+    {
+        // One pattern for each variable.
+        final Map<Var, Tuple<Node>> patterns = new LinkedHashMap<Var, Tuple<Node>>() ;
+        for ( Tuple<Node> pattern : tuples )
+        {
+            if ( ! hasConstant(pattern, anyGraph) )
+                continue ;
+            for ( Node n : pattern )
+            {
+                if ( ! Var.isVar(n) || slot(pattern, Var.alloc(n)) < 0 )
+                    continue ;
+                Var v = Var.alloc(n) ;
+                if ( ! patterns.containsKey(v) )
+                    patterns.put(v, pattern) ;
+            }
+        }
+        if ( patterns.isEmpty() )
+            return null ;
+        
+        return new Filter<Binding>() {
+            private final NodeTable nodeTable = nodeTupleTable.getNodeTable() ;
+            private final Map<Var, Set<NodeId>> sets = new HashMap<Var, Set<NodeId>>() ;
+            
+            @Override
+            public boolean accept(Binding binding)
+            {
+                for ( Map.Entry<Var, Tuple<Node>> e : patterns.entrySet() )
+                {
+                    Var v = e.getKey() ;
+                    if ( ! binding.contains(v) )
+                        continue ;
+                    Set<NodeId> values = values(v, e.getValue()) ;
+                    if ( values == null )
+                        continue ;
+                    NodeId id = idFor(binding, v) ;
+                    if ( NodeId.isDoesNotExist(id) || ! values.contains(id) )
+                        return false ;
+                }
+                return true ;
+            }
+            
+            private Set<NodeId> values(Var v, Tuple<Node> pattern)
+            {
+                if ( sets.containsKey(v) )
+                    return sets.get(v) ;
+                Set<NodeId> x = SemiJoin.values(nodeTupleTable, pattern, slot(pattern, v), anyGraph, filter, SystemTDB.SemiJoinMaxSize) ;
+                // Null if too large.
+                sets.put(v, x) ;
+                return x ;
+            }
+            
+            private NodeId idFor(Binding binding, Var v)
+            {
+                if ( binding instanceof BindingTDB )
+                {
+                    NodeId id = ((BindingTDB)binding).getBindingId().get(v) ;
+                    if ( id != null )
+                        return id ;
+                }
+                return nodeTable.getNodeIdForNode(binding.get(v)) ;
+            }
+        } ;
+    }
+
+    /** The NodeIds in a slot of the matches of a pattern, or null if there are more than max. */ 
+    static Set<NodeId> values(NodeTupleTable nodeTupleTable, Tuple<Node> pattern, int slot, 
+                              boolean anyGraph, Filter<Tuple<NodeId>> filter, int max)
+    {
+        NodeId ids[] = new NodeId[pattern.size()] ;
+        Var[] vars = new Var[pattern.size()] ;
+        StageMatchTuple.prepare(nodeTupleTable.getNodeTable(), pattern, new BindingNodeId(), ids, vars) ;
+        
+        Set<NodeId> values = new HashSet<NodeId>() ;
+        for ( NodeId id : ids )
+        {
+            if ( NodeId.isDoesNotExist(id) )
+                // No matches.
+                return values ;
+        }
+        
+        Iterator<Tuple<NodeId>> iter = nodeTupleTable.find(Tuple.create(ids)) ;
+        for ( ; iter.hasNext() ; )
+        {
+            Tuple<NodeId> t = iter.next() ;
+            if ( filter != null && ! filter.accept(t) )
+                continue ;
+            values.add(t.get(slot)) ;
+            if ( values.size() > max )
+                return null ;
+        }
+        return values ;
+    }
+    
+    /** Filter tuples by the NodeId in a slot, as well as any other filter */ 
+    static Filter<Tuple<NodeId>> filter(final Filter<Tuple<NodeId>> filter, final int slot, final Set<NodeId> values)
+    {
+        return new Filter<Tuple<NodeId>>() {
+            @Override
+            public boolean accept(Tuple<NodeId> item)
+            {
+                if ( ! values.contains(item.get(slot)) )
+                    return false ;
+                return filter == null || filter.accept(item) ;
+            }
+        } ;
+    }
+    
+    /** The slot of the only variable of a pattern, which must occur once and with all other slots fixed; else -1 */ 
+    private static int singleVarSlot(Tuple<Node> pattern)
+    {
+        int slot = -1 ;
+        for ( int i = 0 ; i < pattern.size() ; i++ )
+        {
+            Node n = pattern.get(i) ;
+            if ( Var.isVar(n) )
+            {
+                if ( slot >= 0 )
+                    return -1 ;
+                slot = i ;
+                continue ;
+            }
+            // Node.ANY for the union graph.
+            if ( ! n.isConcrete() && ! Node.ANY.equals(n) )
+                return -1 ;
+        }
+        return slot ;
+    }
+    
+    /** Index of the first pattern before "before" that uses the variable, or -1. */ 
+    private static int firstStep(List<Tuple<Node>> tuples, int before, Var var)
+    {
+        for ( int i = 0 ; i < before ; i++ )
+        {
+            if ( slot(tuples.get(i), var) >= 0 )
+                return i ;
+        }
+        return -1 ;
+    }
+    
+    /** The slot of a variable in a pattern, if it occurs exactly once ; else -1 */ 
+    private static int slot(Tuple<Node> pattern, Var var)
+    {
+        int slot = -1 ;
+        for ( int i = 0 ; i < pattern.size() ; i++ )
+        {
+            Node n = pattern.get(i) ;
+            if ( Var.isVar(n) && var.equals(Var.alloc(n)) )
+            {
+                if ( slot >= 0 )
+                    return -1 ;
+                slot = i ;
+            }
+        }
+        return slot ;
+    }
+    
+    private static boolean hasConstant(Tuple<Node> pattern, boolean anyGraph)
+    {
+        for ( int i = ( anyGraph ? 1 : 0 ) ; i < pattern.size() ; i++ )
+        {
+            if ( pattern.get(i).isConcrete() )
+                return true ;
+        }
+        return false ;
+    }
+}
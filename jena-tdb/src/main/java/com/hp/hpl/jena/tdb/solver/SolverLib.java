@@ -38,15 +38,24 @@ import com.hp.hpl.jena.sparql.engine.QueryIterator ;
 import com.hp.hpl.jena.sparql.engine.binding.Binding ;
 import com.hp.hpl.jena.sparql.engine.binding.BindingFactory ;
 import com.hp.hpl.jena.sparql.engine.binding.BindingMap ;
+import com.hp.hpl.jena.sparql.engine.binding.BindingRoot ;
 import com.hp.hpl.jena.sparql.engine.iterator.QueryIterNullIterator ;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPeek ;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRoot ;
 import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.index.TupleIndex ;
+import com.hp.hpl.jena.tdb.index.TupleIndexRecord ;
+import com.hp.hpl.jena.tdb.index.TupleIndexRecord.ScanPartition ;
 import com.hp.hpl.jena.tdb.lib.NodeLib ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTupleTable ;
 import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
 import com.hp.hpl.jena.tdb.store.GraphTDB ;
 import com.hp.hpl.jena.tdb.store.NodeId ;
+import com.hp.hpl.jena.tdb.store.TripleTable ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
 import com.hp.hpl.jena.tdb.sys.TDBInternal ;
+import com.hp.hpl.jena.tdb.transaction.NodeTableTrans ;
 
 /** Utilities used within the TDB BGP solver : local TDB store */
 public class SolverLib
@@ -58,9 +67,8 @@ public class SolverLib
                                         QueryIterator input, Filter<Tuple<NodeId>> filter,
                                         ExecutionContext execCxt)
     {
-        // Maybe default graph or named graph.
-        NodeTupleTable ntt = graph.getNodeTupleTable() ;
-        return execute(ntt, graph.getGraphName(), pattern, input, filter, execCxt) ;
+        // Maybe default graph, named graph or the union graph.
+        return execute(graph.getDSG(), graph.getGraphName(), pattern, input, filter, execCxt) ;
     }
     
     /** Non-reordering execution of a quad pattern, given a iterator of bindings as input.
@@ -71,8 +79,38 @@ public class SolverLib
                                         QueryIterator input, Filter<Tuple<NodeId>> filter,
                                         ExecutionContext execCxt)
     {
+        return execute(ds, graphNode, pattern, input, filter, null, execCxt) ;
+    }
+    
+    /** Execution of a quad pattern, given a iterator of bindings as input,
+     *  choosing a join algorithm for each step using the planner.
+     *  A null planner means index nested loops throughout.
+     *  The pattern is not reordered.
+     */ 
+    public static QueryIterator execute(DatasetGraphTDB ds, Node graphNode, BasicPattern pattern,
+                                        QueryIterator input, Filter<Tuple<NodeId>> filter,
+                                        JoinPlanner planner, ExecutionContext execCxt)
+    {
+        return execute(ds, graphNode, pattern, input, filter, planner, null, execCxt) ;
+    }
+    
+    /** Execution of a quad pattern, given a iterator of bindings as input,
+     *  choosing a join algorithm for each step using the planner, and
+     *  using index range scans for variables with a range restriction from a FILTER.
+     *  The filter itself is not applied.
+     *  The pattern is not reordered.
+     */ 
+    public static QueryIterator execute(DatasetGraphTDB ds, Node graphNode, BasicPattern pattern,
+                                        QueryIterator input, Filter<Tuple<NodeId>> filter,
+                                        JoinPlanner planner, Map<Var, RangeFilter> ranges,
+                                        ExecutionContext execCxt)
+    {
+        TripleTable unionTable = ds.getQuadTable().getUnionTable() ;
+        if ( unionTable != null && graphNode != null && ( Quad.isUnionGraph(graphNode) || Node.ANY.equals(graphNode) ) )
+            // The union of named graphs is maintained as triples: no need to remove duplicates.
+            return execute(unionTable.getNodeTupleTable(), null, pattern, input, filter, planner, ranges, execCxt) ;
         NodeTupleTable ntt = ds.chooseNodeTupleTable(graphNode) ;
-        return execute(ntt, graphNode, pattern, input, filter, execCxt) ;
+        return execute(ntt, graphNode, pattern, input, filter, planner, ranges, execCxt) ;
     }
     
     public static Iterator<BindingNodeId> convertToIds(Iterator<Binding> iterBindings, NodeTable nodeTable)
@@ -90,6 +128,7 @@ public class SolverLib
 
     private static QueryIterator execute(NodeTupleTable nodeTupleTable, Node graphNode, BasicPattern pattern, 
                                          QueryIterator input, Filter<Tuple<NodeId>> filter,
+                                         JoinPlanner planner, Map<Var, RangeFilter> ranges,
                                          ExecutionContext execCxt)
     {
         if ( Quad.isUnionGraph(graphNode) )
@@ -115,6 +154,7 @@ public class SolverLib
         Iterator<BindingNodeId> chain = Iter.map(input, SolverLib.convFromBinding(nodeTable)) ;
         List<Abortable> killList = new ArrayList<Abortable>() ;
         
+        List<Tuple<Node>> tuples = new ArrayList<Tuple<Node>>(triples.size()) ;
         for ( Triple triple : triples )
         {
             Tuple<Node> tuple = null ;
@@ -124,10 +164,39 @@ public class SolverLib
             else
                 // 4-tuples.
                 tuple = Tuple.createTuple(graphNode, triple.getSubject(), triple.getPredicate(), triple.getObject()) ;
-            chain = solve(nodeTupleTable, tuple, anyGraph, chain, filter, execCxt) ;
-            chain = makeAbortable(chain, killList) ; 
+            tuples.add(tuple) ;
         }
         
+        // Semi-join reduction : may remove patterns.
+        // Only at the start of the query execution - for each binding of an
+        // earlier part of the query (e.g. the right of an OPTIONAL), the sets
+        // would be read again.
+        List<Filter<Tuple<NodeId>>> filters = null ;
+        if ( SemiJoin.isEnabled(execCxt.getContext()) && isRootInput(input) )
+            filters = SemiJoin.reduce(nodeTupleTable, tuples, anyGraph, filter, planner) ;
+        
+        JoinStrategy[] plan = null ;
+        if ( planner != null )
+            plan = planner.plan(tuples, nodeTupleTable.getTupleTable(), anyGraph) ;
+        
+        IteratorParallel<BindingNodeId> parallel = null ;
+        if ( ! anyGraph && isParallelScan(nodeTupleTable, execCxt) && isRootInput(input)
+             && ( plan == null || plan.length < 2 || plan[1] != JoinStrategy.merge ) )
+        {
+            BindingNodeId root = chain.next() ;
+            // Only when there is exactly one input binding.
+            List<ScanPartition> parts = chain.hasNext() ? null : scanPartitions(nodeTupleTable, tuples.get(0), root, ranges) ;
+            if ( parts != null )
+                parallel = parallelScan(nodeTupleTable, tuples, parts, root, anyGraph, filter, filters, plan, ranges, killList, execCxt) ;
+            else
+                chain = Iter.concat(new SingletonIterator<BindingNodeId>(root), chain) ;
+        }
+        
+        if ( parallel != null )
+            chain = parallel ;
+        else
+            chain = stages(nodeTupleTable, tuples, 0, new HashSet<Var>(), chain, anyGraph, filter, filters, plan, ranges, killList, execCxt) ;
+        
         // DEBUG POINT
         if ( false )
         {
@@ -146,12 +215,162 @@ public class SolverLib
         
         // Need to make sure the bindings here point to parent.
         Iterator<Binding> iterBinding = convertToNodes(chain, nodeTable) ;
+        if ( parallel != null )
+            // Closing stops the threads.
+            iterBinding = new IteratorResourceClosing<Binding>(iterBinding, parallel) ;
         
         // "input" will be closed by QueryIterTDB but is otherwise unused.
         // "killList" will be aborted on timeout.
         return new QueryIterTDB(iterBinding, killList, input, execCxt) ;
     }
     
+    /** Add the steps for the tuples from "start" onwards to the chain. */
+    private static Iterator<BindingNodeId> stages(NodeTupleTable nodeTupleTable, List<Tuple<Node>> tuples, int start, Set<Var> boundVars,
+                                                  Iterator<BindingNodeId> chain, boolean anyGraph, 
+                                                  Filter<Tuple<NodeId>> filter, List<Filter<Tuple<NodeId>>> filters,
+                                                  JoinStrategy[] plan, Map<Var, RangeFilter> ranges,
+                                                  List<Abortable> killList, ExecutionContext execCxt)
+    {
+        for ( int i = start ; i < tuples.size() ; i++ )
+        {
+            Tuple<Node> tuple = tuples.get(i) ;
+            JoinStrategy join = ( plan == null ) ? JoinStrategy.nested : plan[i] ;
+            Filter<Tuple<NodeId>> stepFilter = ( filters == null ) ? filter : filters.get(i) ;
+            
+            if ( i+1 < tuples.size() && plan != null && plan[i+1] == JoinStrategy.merge 
+                 // The merge join has one filter for both patterns.
+                 && stepFilter == filter && ( filters == null || filters.get(i+1) == filter ) )
+            {
+                // This step and the next one are executed together.
+                Tuple<Node> tuple2 = tuples.get(i+1) ;
+                Var joinVar = JoinPlanner.joinVars(tuple2, JoinPlanner.vars(tuple, new HashSet<Var>())).get(0) ;
+                chain = new StageMatchMerge(nodeTupleTable, chain, tuple, tuple2, joinVar, anyGraph, filter, execCxt) ;
+                JoinPlanner.vars(tuple, boundVars) ;
+                JoinPlanner.vars(tuple2, boundVars) ;
+                i++ ;
+            }
+            else if ( join == JoinStrategy.hash && ! JoinPlanner.joinVars(tuple, boundVars).isEmpty() )
+            {
+                List<Var> joinVars = JoinPlanner.joinVars(tuple, boundVars) ;
+                chain = new StageMatchHash(nodeTupleTable, chain, tuple, joinVars, anyGraph, stepFilter, execCxt) ;
+                JoinPlanner.vars(tuple, boundVars) ;
+            }
+            else
+            {
+                RangeFilter range = chooseRange(tuple, boundVars, ranges) ;
+                if ( range != null )
+                    chain = new StageMatchRange(nodeTupleTable, chain, tuple, range.getVar(), range.getRanges(), anyGraph, stepFilter, execCxt) ;
+                else
+                    chain = solve(nodeTupleTable, tuple, anyGraph, chain, stepFilter, execCxt) ;
+                JoinPlanner.vars(tuple, boundVars) ;
+            }
+            chain = makeAbortable(chain, killList) ; 
+        }
+        
+        return chain ;
+    }
+    
+    /** The first step is a scan of an index : divide it into key ranges and
+     *  evaluate the rest of the pattern for each range, in parallel.
+     */
+    private static IteratorParallel<BindingNodeId> parallelScan(NodeTupleTable nodeTupleTable, List<Tuple<Node>> tuples, 
+                                                                List<ScanPartition> parts, BindingNodeId root, boolean anyGraph,
+                                                                Filter<Tuple<NodeId>> filter, List<Filter<Tuple<NodeId>>> filters,
+                                                                JoinStrategy[] plan, Map<Var, RangeFilter> ranges,
+                                                                List<Abortable> killList, ExecutionContext execCxt)
+    {
+        Tuple<Node> tuple = tuples.get(0) ;
+        Filter<Tuple<NodeId>> stepFilter = ( filters == null ) ? filter : filters.get(0) ;
+        NodeId ids[] = new NodeId[tuple.size()] ;
+        Var[] vars = new Var[tuple.size()] ;
+        StageMatchTuple.prepare(nodeTupleTable.getNodeTable(), tuple, root, ids, vars) ;
+        
+        List<Iterator<BindingNodeId>> chains = new ArrayList<Iterator<BindingNodeId>>(parts.size()) ;
+        for ( final ScanPartition part : parts )
+        {
+            // Opened on the thread that runs it.
+            Iterator<Tuple<NodeId>> iterMatches = new IteratorDelayedInitialization<Tuple<NodeId>>() {
+                @Override
+                protected Iterator<Tuple<NodeId>> initializeIterator()
+                { return part.find() ; }
+            } ;
+            if ( stepFilter != null )
+                iterMatches = Iter.filter(iterMatches, stepFilter) ;
+            Iterator<BindingNodeId> chain = StageMatchTuple.bind(iterMatches, root, vars) ;
+            chain = makeAbortable(chain, killList) ;
+            Set<Var> boundVars = JoinPlanner.vars(tuple, new HashSet<Var>()) ;
+            chains.add(stages(nodeTupleTable, tuples, 1, boundVars, chain, anyGraph, filter, filters, plan, ranges, killList, execCxt)) ;
+        }
+        return new IteratorParallel<BindingNodeId>(chains) ;
+    }
+    
+    /** Whether to divide the first index scan of a pattern and run the parts in parallel.
+     *  Not inside a write transaction : the journal views of the indexes and node table
+     *  are not safe for use by other threads.
+     */
+    static boolean isParallelScan(NodeTupleTable nodeTupleTable, ExecutionContext execCxt)
+    {
+        return execCxt.getContext().isTrue(SystemTDB.symParallelScan) && ! IteratorParallel.isPoolThread()
+            && ! NodeTableTrans.isWriteTransaction(nodeTupleTable.getNodeTable()) ;
+    }
+    
+    /** Whether the input is the start of the query execution, possibly after a peek,
+     *  and not a binding from an earlier part of the query.
+     */
+    private static boolean isRootInput(QueryIterator input)
+    {
+        if ( input instanceof QueryIterRoot )
+            return true ;
+        if ( input instanceof QueryIterPeek )
+            return ((QueryIterPeek)input).peek() instanceof BindingRoot ;
+        return false ;
+    }
+    
+    /** The key ranges for a scan of an index for the first pattern, or null if it is
+     *  not a scan that can be divided. 
+     */
+    private static List<ScanPartition> scanPartitions(NodeTupleTable nodeTupleTable, Tuple<Node> tuple, BindingNodeId input, 
+                                                      Map<Var, RangeFilter> ranges)
+    {
+        if ( chooseRange(tuple, new HashSet<Var>(), ranges) != null )
+            return null ;
+        NodeId ids[] = new NodeId[tuple.size()] ;
+        Var[] vars = new Var[tuple.size()] ;
+        StageMatchTuple.prepare(nodeTupleTable.getNodeTable(), tuple, input, ids, vars) ;
+        for ( NodeId nId : ids )
+        {
+            if ( NodeId.isDoesNotExist(nId) )
+                return null ;
+        }
+        Tuple<NodeId> pattern = Tuple.create(ids) ;
+        TupleIndex index = nodeTupleTable.getTupleTable().chooseIndex(pattern) ;
+        if ( ! ( index instanceof TupleIndexRecord ) )
+            return null ;
+        List<ScanPartition> parts = ((TupleIndexRecord)index).partitions(pattern, SystemTDB.ParallelScanPartitions) ;
+        if ( parts == null || parts.size() < 2 )
+            return null ;
+        return parts ;
+    }
+    
+    /** A range restriction for a variable of the pattern that is not bound by earlier steps, or null */
+    private static RangeFilter chooseRange(Tuple<Node> tuple, Set<Var> boundVars, Map<Var, RangeFilter> ranges)
+    {
+        if ( ranges == null || ranges.isEmpty() )
+            return null ;
+        for ( Node n : tuple )
+        {
+            if ( ! Var.isVar(n) )
+                continue ;
+            Var v = Var.alloc(n) ;
+            if ( boundVars.contains(v) )
+                continue ;
+            RangeFilter range = ranges.get(v) ;
+            if ( range != null && range.getRanges() != null )
+                return range ;
+        }
+        return null ;
+    }
+    
     /** Create an abortable iterator, storing it in the killList.
      *  Just return the input iterator if kilList is null. 
      */
@@ -206,6 +425,9 @@ public class SolverLib
                                                  Iterator<BindingNodeId> chain, Filter<Tuple<NodeId>> filter,
                                                  ExecutionContext execCxt)
     {
+        int batchSize = StageMatchBatch.batchSize(execCxt.getContext()) ;
+        if ( batchSize > 1 )
+            return new StageMatchBatch(nodeTupleTable, chain, tuple, anyGraph, filter, batchSize, execCxt) ;
         return new StageMatchTuple(nodeTupleTable, chain, tuple, anyGraph, filter, execCxt) ;
     }
     
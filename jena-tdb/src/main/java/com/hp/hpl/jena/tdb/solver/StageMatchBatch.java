@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.solver;
+
+import java.util.* ;
+
+import org.apache.jena.atlas.iterator.Filter ;
+import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.iterator.IteratorConcat ;
+import org.apache.jena.atlas.lib.Closeable ;
+import org.apache.jena.atlas.lib.Tuple ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.index.TupleIndex ;
+import com.hp.hpl.jena.tdb.index.TupleIndexRecord ;
+import com.hp.hpl.jena.tdb.index.TupleTable ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTupleTable ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+/** Index nested loop join of a stream of bindings with one triple or quad pattern,
+ *  where the index probes are done in batches.
+ * <p>
+ * A batch of incoming bindings is read, and their probes (the pattern with each binding
+ * substituted) are sorted into the key order of the index that will be used.
+ * Bindings with the same probe share it.  The probes are then done in order with one
+ * cursor that moves forward through the index ({@link TupleIndexRecord.Prober}),
+ * so the blocks are accessed in order rather than with a search from the root
+ * for each binding.
+ * <p>
+ * The results for each binding are the same as {@link StageMatchTuple} but the order
+ * is the order of the probes, not the order of the incoming bindings.
+ */
+public class StageMatchBatch implements Iterator<BindingNodeId>, Closeable
+{
+    /** Batch size in this context (symbol {@link SystemTDB#symProbeBatchSize}), or 0 for no batching.
+     *  Default: {@link SystemTDB#ProbeBatchSize} 
+     */
+    public static int batchSize(Context context)
+    {
+        Object x = context.get(SystemTDB.symProbeBatchSize) ;
+        if ( x == null )
+            return SystemTDB.ProbeBatchSize ;
+        if ( x instanceof Number )
+            return ((Number)x).intValue() ;
+        try { return Integer.parseInt(x.toString().trim()) ; }
+        catch (NumberFormatException ex)
+        { throw new TDBException("Bad probe batch size: "+x) ; }
+    }
+    
+    private final NodeTupleTable nodeTupleTable ;
+    private final Iterator<BindingNodeId> input ;
+    private final Tuple<Node> patternTuple ;
+    private final boolean anyGraphs ;
+    private final Filter<Tuple<NodeId>> filter ;
+    private final ExecutionContext execCxt ;
+    private final int batchSize ;
+
+    // The current batch.
+    private Iterator<Probe> probes = null ;
+    private Iterator<BindingNodeId> current = null ;
+    private Map<TupleIndex, TupleIndexRecord.Prober> probers = new HashMap<TupleIndex, TupleIndexRecord.Prober>() ;
+    
+    public StageMatchBatch(NodeTupleTable nodeTupleTable, Iterator<BindingNodeId> input, 
+                           Tuple<Node> tuple, boolean anyGraphs, 
+                           Filter<Tuple<NodeId>> filter, int batchSize,
+                           ExecutionContext execCxt)
+    {
+        this.nodeTupleTable = nodeTupleTable ;
+        this.input = input ;
+        this.patternTuple = tuple ;
+        this.anyGraphs = anyGraphs ;
+        this.filter = filter ;
+        this.batchSize = batchSize ;
+        this.execCxt = execCxt ;
+    }
+    
+    /** One probe of the index, and the incoming bindings that use it. */ 
+    private static class Probe
+    {
+        final Tuple<NodeId> pattern ;
+        final Var[] var ;
+        final TupleIndex index ;
+        final List<BindingNodeId> inputs = new ArrayList<BindingNodeId>(1) ;
+        
+        Probe(Tuple<NodeId> pattern, Var[] var, TupleIndex index)
+        {
+            this.pattern = pattern ;
+            this.var = var ;
+            this.index = index ;
+        }
+    }
+    
+    @Override
+    public boolean hasNext()
+    {
+        for ( ;; )
+        {
+            if ( current != null && current.hasNext() )
+                return true ;
+            current = null ;
+            if ( probes != null && probes.hasNext() )
+            {
+                current = execute(probes.next()) ;
+                continue ;
+            }
+            probes = null ;
+            closeProbers() ;
+            if ( ! input.hasNext() )
+                return false ;
+            probes = nextBatch() ;
+        }
+    }
+
+    @Override
+    public BindingNodeId next()
+    {
+        if ( ! hasNext() )
+            throw new NoSuchElementException("StageMatchBatch") ;
+        return current.next() ;
+    }
+
+    @Override
+    public void remove()
+    { throw new UnsupportedOperationException("remove") ; }
+    
+    @Override
+    public void close()
+    {
+        closeProbers() ;
+        Iter.close(input) ;
+    }
+
+    private void closeProbers()
+    {
+        for ( TupleIndexRecord.Prober prober : probers.values() )
+            prober.close() ;
+        probers.clear() ;
+    }
+    
+    /** Read a batch of bindings and return their probes, in index order. */ 
+    private Iterator<Probe> nextBatch()
+    {
+        TupleTable table = nodeTupleTable.getTupleTable() ;
+        final List<TupleIndex> indexes = Arrays.asList(table.getIndexes()) ;
+        Map<Tuple<NodeId>, Probe> batch = new HashMap<Tuple<NodeId>, Probe>() ;
+        
+        int N = patternTuple.size() ;
+        for ( int count = 0 ; count < batchSize && input.hasNext() ; count++ )
+        {
+            BindingNodeId binding = input.next() ;
+            NodeId ids[] = new NodeId[N] ;
+            Var[] var = new Var[N] ;
+            StageMatchTuple.prepare(nodeTupleTable.getNodeTable(), patternTuple, binding, ids, var) ;
+            if ( unknown(ids) )
+                // No matches.
+                continue ;
+            Tuple<NodeId> pattern = Tuple.create(ids) ;
+            Probe probe = batch.get(pattern) ;
+            if ( probe == null )
+            {
+                TupleIndex index = bound(ids) ? table.chooseIndex(pattern) : null ;
+                probe = new Probe(pattern, var, index) ;
+                batch.put(pattern, probe) ;
+            }
+            probe.inputs.add(binding) ;
+        }
+        
+        List<Probe> x = new ArrayList<Probe>(batch.values()) ;
+        Collections.sort(x, new Comparator<Probe>() {
+            @Override
+            public int compare(Probe probe1, Probe probe2)
+            {
+                int idx1 = indexes.indexOf(probe1.index) ;
+                int idx2 = indexes.indexOf(probe2.index) ;
+                if ( idx1 != idx2 )
+                    return ( idx1 < idx2 ) ? -1 : 1 ;
+                if ( probe1.index instanceof TupleIndexRecord )
+                    return ((TupleIndexRecord)probe1.index).keyOrder.compare(probe1.pattern, probe2.pattern) ;
+                return 0 ;
+            }
+        }) ;
+        return x.iterator() ;
+    }
+    
+    /** The bindings from one probe. */ 
+    private Iterator<BindingNodeId> execute(Probe probe)
+    {
+        Iterator<Tuple<NodeId>> iterMatches = find(probe) ;
+        if ( filter != null )
+            iterMatches = Iter.filter(iterMatches, filter) ;
+        if ( anyGraphs )
+        {
+            // See StageMatchTuple.
+            iterMatches = Iter.operate(iterMatches, StageMatchTuple.quadsToAnyTriples) ;
+            iterMatches = Iter.distinctAdjacent(iterMatches) ;
+        }
+        if ( probe.inputs.size() == 1 )
+            return StageMatchTuple.bind(iterMatches, probe.inputs.get(0), probe.var) ;
+        
+        // Shared by several bindings.
+        List<Tuple<NodeId>> matches = Iter.toList(iterMatches) ;
+        IteratorConcat<BindingNodeId> results = new IteratorConcat<BindingNodeId>() ;
+        for ( BindingNodeId binding : probe.inputs )
+            results.add(StageMatchTuple.bind(matches.iterator(), binding, probe.var)) ;
+        return results ;
+    }
+    
+    private Iterator<Tuple<NodeId>> find(Probe probe)
+    {
+        if ( ! ( probe.index instanceof TupleIndexRecord ) )
+            return nodeTupleTable.find(probe.pattern) ;
+        TupleIndexRecord.Prober prober = probers.get(probe.index) ;
+        if ( prober == null )
+        {
+            prober = ((TupleIndexRecord)probe.index).prober() ;
+            probers.put(probe.index, prober) ;
+        }
+        return prober.find(probe.pattern) ;
+    }
+    
+    private static boolean unknown(NodeId[] ids)
+    {
+        for ( NodeId id : ids )
+        {
+            if ( NodeId.isDoesNotExist(id) )
+                return true ;
+        }
+        return false ;
+    }
+    
+    private static boolean bound(NodeId[] ids)
+    {
+        for ( NodeId id : ids )
+        {
+            if ( ! NodeId.isAny(id) )
+                return true ;
+        }
+        return false ;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.solver;
+
+import java.util.Iterator ;
+import java.util.List ;
+
+import org.apache.jena.atlas.iterator.Filter ;
+import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.iterator.NullIterator ;
+import org.apache.jena.atlas.iterator.RepeatApplyIterator ;
+import org.apache.jena.atlas.iterator.SingletonIterator ;
+import org.apache.jena.atlas.iterator.Transform ;
+import org.apache.jena.atlas.lib.MultiMapToList ;
+import org.apache.jena.atlas.lib.Tuple ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTupleTable ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+
+/** Hash join of a stream of bindings with one triple or quad pattern.
+ * <p>
+ * The pattern is matched once, with only its constants set, and the matches
+ * are held in memory keyed by the NodeIds of the join variables. Each incoming
+ * binding then looks up its partners in the table instead of probing the indexes.
+ * <p>
+ * The table is built on the first incoming binding. If it would exceed
+ * {@link JoinPlanner#maxBuildSize} tuples, or an incoming binding does not
+ * bind all the join variables, execution reverts to the index nested loop of
+ * {@link StageMatchTuple}.
+ */
+public class StageMatchHash extends RepeatApplyIterator<BindingNodeId>
+{
+    private final NodeTupleTable nodeTupleTable ;
+    private final Tuple<Node> patternTuple ;
+    private final boolean anyGraphs ;
+    private final Filter<Tuple<NodeId>> filter ;
+    private final ExecutionContext execCxt ;
+    
+    private final Var[] joinVars ;
+    private final int[] joinSlots ;
+    // All the variable slots of the pattern.
+    private final Var[] var ;
+    
+    private final long maxBuildSize ;
+    private MultiMapToList<Tuple<NodeId>, Tuple<NodeId>> table = null ;
+    private boolean tooLarge = false ;
+    
+    public StageMatchHash(NodeTupleTable nodeTupleTable, Iterator<BindingNodeId> input, 
+                          Tuple<Node> tuple, List<Var> joinVars, boolean anyGraphs, 
+                          Filter<Tuple<NodeId>> filter, 
+                          ExecutionContext execCxt)
+    {
+        super(input) ;
+        this.nodeTupleTable = nodeTupleTable ;
+        this.patternTuple = tuple ;
+        this.anyGraphs = anyGraphs ;
+        this.filter = filter ;
+        this.execCxt = execCxt ;
+        this.maxBuildSize = JoinPlanner.maxBuildSize(execCxt.getContext()) ;
+        this.joinVars = joinVars.toArray(new Var[joinVars.size()]) ;
+        this.joinSlots = new int[this.joinVars.length] ;
+        this.var = new Var[tuple.size()] ;
+        
+        for ( int i = 0 ; i < tuple.size() ; i++ )
+        {
+            Node n = tuple.get(i) ;
+            if ( Var.isVar(n) )
+                var[i] = Var.alloc(n) ;
+        }
+        for ( int j = 0 ; j < this.joinVars.length ; j++ )
+        {
+            joinSlots[j] = -1 ;
+            for ( int i = 0 ; i < var.length ; i++ )
+            {
+                if ( this.joinVars[j].equals(var[i]) )
+                {
+                    joinSlots[j] = i ;
+                    break ;
+                }
+            }
+            if ( joinSlots[j] < 0 )
+                throw new IllegalArgumentException("Join variable not in pattern: "+this.joinVars[j]) ;
+        }
+    }
+
+    @Override
+    protected Iterator<BindingNodeId> makeNextStage(BindingNodeId input)
+    {
+        if ( table == null && ! tooLarge )
+            table = build() ;
+        
+        Tuple<NodeId> key = ( table == null ) ? null : key(input) ;
+        if ( key == null )
+            return nestedLoop(input) ;
+        
+        List<Tuple<NodeId>> matches = table.get(key) ;
+        if ( matches == null )
+            return new NullIterator<BindingNodeId>() ;
+        return StageMatchTuple.bind(matches.iterator(), input, var) ;
+    }
+
+    private Iterator<BindingNodeId> nestedLoop(BindingNodeId input)
+    {
+        return new StageMatchTuple(nodeTupleTable, new SingletonIterator<BindingNodeId>(input), 
+                                   patternTuple, anyGraphs, filter, execCxt) ;
+    }
+    
+    /** Key for the join variables in the binding, or null if one is not bound */  
+    private Tuple<NodeId> key(BindingNodeId binding)
+    {
+        NodeId[] ids = new NodeId[joinVars.length] ;
+        for ( int j = 0 ; j < joinVars.length ; j++ )
+        {
+            NodeId id = binding.get(joinVars[j]) ;
+            if ( id == null )
+                return null ;
+            ids[j] = id ;
+        }
+        return Tuple.create(ids) ;
+    }
+
+    private MultiMapToList<Tuple<NodeId>, Tuple<NodeId>> build()
+    {
+        MultiMapToList<Tuple<NodeId>, Tuple<NodeId>> hashTable = MultiMapToList.create() ;
+        NodeTable nodeTable = nodeTupleTable.getNodeTable() ;
+        NodeId[] ids = new NodeId[patternTuple.size()] ;
+        for ( int i = 0 ; i < patternTuple.size() ; i++ )
+        {
+            Node n = patternTuple.get(i) ;
+            if ( var[i] != null || Node.ANY.equals(n) )
+                ids[i] = NodeId.NodeIdAny ;
+            else
+            {
+                ids[i] = nodeTable.getNodeIdForNode(n) ;
+                if ( NodeId.isDoesNotExist(ids[i]) )
+                    // Nothing matches.
+                    return hashTable ;
+            }
+        }
+        
+        Iterator<Tuple<NodeId>> iter = nodeTupleTable.find(Tuple.create(ids)) ;
+        if ( filter != null )
+            iter = Iter.filter(iter, filter) ;
+        if ( anyGraphs )
+        {
+            // Make triples unique across graphs. 
+            // The table is in-memory anyway so use a full distinct.
+            iter = Iter.map(iter, graphToAny) ;
+            iter = Iter.distinct(iter) ;
+        }
+        
+        long count = 0 ;
+        for ( ; iter.hasNext() ; )
+        {
+            Tuple<NodeId> tuple = iter.next() ;
+            if ( ++count > maxBuildSize )
+            {
+                Iter.close(iter) ;
+                tooLarge = true ;
+                return null ;
+            }
+            NodeId[] k = new NodeId[joinSlots.length] ;
+            for ( int j = 0 ; j < joinSlots.length ; j++ )
+                k[j] = tuple.get(joinSlots[j]) ;
+            hashTable.put(Tuple.create(k), tuple) ;
+        }
+        return hashTable ;
+    }
+    
+    // Copy, with the graph slot set to "any".
+    private static Transform<Tuple<NodeId>, Tuple<NodeId>> graphToAny = new Transform<Tuple<NodeId>, Tuple<NodeId>>() {
+        @Override
+        public Tuple<NodeId> convert(Tuple<NodeId> item)
+        {
+            NodeId[] x = new NodeId[item.size()] ;
+            x[0] = NodeId.NodeIdAny ;
+            for ( int i = 1 ; i < x.length ; i++ )
+                x[i] = item.get(i) ;
+            return Tuple.create(x) ;
+        }
+    } ;
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.solver;
+
+import java.util.ArrayList ;
+import java.util.Iterator ;
+import java.util.List ;
+import java.util.NoSuchElementException ;
+
+import org.apache.jena.atlas.iterator.Filter ;
+import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.iterator.PeekIterator ;
+import org.apache.jena.atlas.iterator.RepeatApplyIterator ;
+import org.apache.jena.atlas.iterator.SingletonIterator ;
+import org.apache.jena.atlas.lib.Tuple ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.tdb.index.TupleIndex ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTupleTable ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+
+/** Merge join of two triple or quad patterns on one shared variable.
+ * <p>
+ * For each incoming binding, both patterns are matched using an index
+ * whose leading columns are the slots that are set, followed by the join variable,
+ * so each index range scan delivers its matches in join variable order.
+ * The two sorted streams are then merged. There is no probing of the indexes
+ * for each match of the first pattern.
+ * <p>
+ * If either pattern has no suitable index for a given incoming binding, the two
+ * patterns are executed as index nested loops by {@link StageMatchTuple}.
+ */
+public class StageMatchMerge extends RepeatApplyIterator<BindingNodeId>
+{
+    private final NodeTupleTable nodeTupleTable ;
+    private final Tuple<Node> patternTuple1 ;
+    private final Tuple<Node> patternTuple2 ;
+    private final Var joinVar ;
+    private final boolean anyGraphs ;
+    private final Filter<Tuple<NodeId>> filter ;
+    private final ExecutionContext execCxt ;
+
+    public StageMatchMerge(NodeTupleTable nodeTupleTable, Iterator<BindingNodeId> input, 
+                           Tuple<Node> tuple1, Tuple<Node> tuple2, Var joinVar, boolean anyGraphs, 
+                           Filter<Tuple<NodeId>> filter, 
+                           ExecutionContext execCxt)
+    {
+        super(input) ;
+        this.nodeTupleTable = nodeTupleTable ;
+        this.patternTuple1 = tuple1 ;
+        this.patternTuple2 = tuple2 ;
+        this.joinVar = joinVar ;
+        this.anyGraphs = anyGraphs ;
+        this.filter = filter ;
+        this.execCxt = execCxt ;
+    }
+
+    @Override
+    protected Iterator<BindingNodeId> makeNextStage(BindingNodeId input)
+    {
+        if ( anyGraphs || input.containsKey(joinVar) )
+            return nestedLoop(input) ;
+        
+        NodeTable nodeTable = nodeTupleTable.getNodeTable() ;
+        int N = patternTuple1.size() ;
+        
+        NodeId[] ids1 = new NodeId[N] ;
+        Var[] var1 = new Var[N] ;
+        StageMatchTuple.prepare(nodeTable, patternTuple1, input, ids1, var1) ;
+        NodeId[] ids2 = new NodeId[N] ;
+        Var[] var2 = new Var[N] ;
+        StageMatchTuple.prepare(nodeTable, patternTuple2, input, ids2, var2) ;
+        
+        int slot1 = slot(var1, joinVar) ;
+        int slot2 = slot(var2, joinVar) ;
+        TupleIndex index1 = JoinPlanner.sortedIndex(nodeTupleTable.getTupleTable(), ids1, slot1) ;
+        TupleIndex index2 = JoinPlanner.sortedIndex(nodeTupleTable.getTupleTable(), ids2, slot2) ;
+        if ( index1 == null || index2 == null )
+            return nestedLoop(input) ;
+        
+        Iterator<Tuple<NodeId>> iter1 = index1.find(Tuple.create(ids1)) ;
+        Iterator<Tuple<NodeId>> iter2 = index2.find(Tuple.create(ids2)) ;
+        if ( filter != null )
+        {
+            iter1 = Iter.filter(iter1, filter) ;
+            iter2 = Iter.filter(iter2, filter) ;
+        }
+        return new IterMergeJoin(input, iter1, slot1, var1, iter2, slot2, var2) ;
+    }
+
+    private Iterator<BindingNodeId> nestedLoop(BindingNodeId input)
+    {
+        Iterator<BindingNodeId> chain = new SingletonIterator<BindingNodeId>(input) ;
+        chain = new StageMatchTuple(nodeTupleTable, chain, patternTuple1, anyGraphs, filter, execCxt) ;
+        return new StageMatchTuple(nodeTupleTable, chain, patternTuple2, anyGraphs, filter, execCxt) ;
+    }
+    
+    /** The slot of the variable (first occurrence, unbound slots only), or -1 */ 
+    private static int slot(Var[] vars, Var v)
+    {
+        for ( int i = 0 ; i < vars.length ; i++ )
+        {
+            if ( v.equals(vars[i]) )
+                return i ;
+        }
+        return -1 ;
+    }
+    
+    /** Compare NodeIds in the order they are held in an index (unsigned). */
+    static int compare(NodeId nodeId1, NodeId nodeId2)
+    {
+        long x1 = nodeId1.getId() + Long.MIN_VALUE ;
+        long x2 = nodeId2.getId() + Long.MIN_VALUE ;
+        if ( x1 < x2 ) return -1 ;
+        if ( x1 > x2 ) return 1 ;
+        return 0 ;
+    }
+    
+    /** Merge two streams of tuples, each in join slot order.
+     *  Each run of equal join values produces the cross product of the two runs.
+     */
+    private static class IterMergeJoin implements Iterator<BindingNodeId>
+    {
+        private final BindingNodeId input ;
+        private final PeekIterator<Tuple<NodeId>> iter1 ;
+        private final int slot1 ;
+        private final Var[] var1 ;
+        private final PeekIterator<Tuple<NodeId>> iter2 ;
+        private final int slot2 ;
+        private final Var[] var2 ;
+        private Iterator<BindingNodeId> current = null ;
+        
+        IterMergeJoin(BindingNodeId input,
+                      Iterator<Tuple<NodeId>> iter1, int slot1, Var[] var1,
+                      Iterator<Tuple<NodeId>> iter2, int slot2, Var[] var2)
+        {
+            this.input = input ;
+            this.iter1 = PeekIterator.create(iter1) ;
+            this.slot1 = slot1 ;
+            this.var1 = var1 ;
+            this.iter2 = PeekIterator.create(iter2) ;
+            this.slot2 = slot2 ;
+            this.var2 = var2 ;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            for ( ;; )
+            {
+                if ( current != null && current.hasNext() )
+                    return true ;
+                current = null ;
+                if ( ! advance() )
+                    return false ;
+            }
+        }
+
+        @Override
+        public BindingNodeId next()
+        {
+            if ( ! hasNext() )
+                throw new NoSuchElementException("IterMergeJoin") ;
+            return current.next() ;
+        }
+        
+        /** Move to the next run of equal join values */
+        private boolean advance()
+        {
+            while ( iter1.hasNext() && iter2.hasNext() )
+            {
+                NodeId x1 = iter1.peek().get(slot1) ;
+                NodeId x2 = iter2.peek().get(slot2) ;
+                int c = compare(x1, x2) ;
+                if ( c < 0 )
+                {
+                    iter1.next() ;
+                    continue ;
+                }
+                if ( c > 0 )
+                {
+                    iter2.next() ;
+                    continue ;
+                }
+                List<Tuple<NodeId>> run1 = run(iter1, slot1, x1) ;
+                List<Tuple<NodeId>> run2 = run(iter2, slot2, x2) ;
+                List<BindingNodeId> results = new ArrayList<BindingNodeId>() ;
+                for ( Tuple<NodeId> t1 : run1 )
+                {
+                    Iterator<BindingNodeId> b1 = StageMatchTuple.bind(new SingletonIterator<Tuple<NodeId>>(t1), input, var1) ;
+                    if ( ! b1.hasNext() )
+                        continue ;
+                    BindingNodeId binding1 = b1.next() ;
+                    Iterator<BindingNodeId> b2 = StageMatchTuple.bind(run2.iterator(), binding1, var2) ;
+                    for ( ; b2.hasNext() ; )
+                        results.add(b2.next()) ;
+                }
+                if ( ! results.isEmpty() )
+                {
+                    current = results.iterator() ;
+                    return true ;
+                }
+            }
+            return false ;
+        }
+        
+        private static List<Tuple<NodeId>> run(PeekIterator<Tuple<NodeId>> iter, int slot, NodeId value)
+        {
+            List<Tuple<NodeId>> x = new ArrayList<Tuple<NodeId>>() ;
+            while ( iter.hasNext() && iter.peek().get(slot).equals(value) )
+                x.add(iter.next()) ;
+            return x ;
+        }
+
+        @Override
+        public void remove()
+        { throw new UnsupportedOperationException("IterMergeJoin.remove") ; }
+    }
+}
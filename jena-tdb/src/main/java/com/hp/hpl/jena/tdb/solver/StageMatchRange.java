@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.solver;
+
+import java.util.Iterator ;
+import java.util.List ;
+import java.util.NoSuchElementException ;
+
+import org.apache.jena.atlas.iterator.Filter ;
+import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.iterator.NullIterator ;
+import org.apache.jena.atlas.iterator.RepeatApplyIterator ;
+import org.apache.jena.atlas.iterator.SingletonIterator ;
+import org.apache.jena.atlas.lib.Tuple ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.tdb.index.TupleIndex ;
+import com.hp.hpl.jena.tdb.index.TupleIndexRecord ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTupleTable ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+import com.hp.hpl.jena.tdb.store.NodeIdRange ;
+
+/** Match a triple or quad pattern where one variable has a {@link RangeFilter}.
+ * <p>
+ * For each incoming binding, the pattern is matched using an index whose leading
+ * columns are the slots that are set, followed by the range variable.
+ * Only the key ranges of the index that can hold values in the range are read,
+ * together with all NodeIds that are not inline values.
+ * The results are a superset of the matches of pattern and filter; the filter
+ * must still be applied.
+ * <p>
+ * If the variable is already bound, or there is no suitable index, the pattern is
+ * executed by {@link StageMatchTuple}.
+ */
+public class StageMatchRange extends RepeatApplyIterator<BindingNodeId>
+{
+    private final NodeTupleTable nodeTupleTable ;
+    private final Tuple<Node> patternTuple ;
+    private final Var var ;
+    private final List<NodeIdRange> ranges ;
+    private final boolean anyGraphs ;
+    private final Filter<Tuple<NodeId>> filter ;
+    private final ExecutionContext execCxt ;
+
+    public StageMatchRange(NodeTupleTable nodeTupleTable, Iterator<BindingNodeId> input, 
+                           Tuple<Node> tuple, Var var, List<NodeIdRange> ranges, boolean anyGraphs, 
+                           Filter<Tuple<NodeId>> filter, 
+                           ExecutionContext execCxt)
+    {
+        super(input) ;
+        this.nodeTupleTable = nodeTupleTable ;
+        this.patternTuple = tuple ;
+        this.var = var ;
+        this.ranges = ranges ;
+        this.anyGraphs = anyGraphs ;
+        this.filter = filter ;
+        this.execCxt = execCxt ;
+    }
+
+    @Override
+    protected Iterator<BindingNodeId> makeNextStage(BindingNodeId input)
+    {
+        if ( input.containsKey(var) )
+            return nestedLoop(input) ;
+        
+        int N = patternTuple.size() ;
+        NodeId[] ids = new NodeId[N] ;
+        Var[] vars = new Var[N] ;
+        StageMatchTuple.prepare(nodeTupleTable.getNodeTable(), patternTuple, input, ids, vars) ;
+        for ( NodeId nId : ids )
+        {
+            if ( NodeId.isDoesNotExist(nId) )
+                return new NullIterator<BindingNodeId>() ;
+        }
+        
+        int slot = slot(vars, var) ;
+        if ( slot < 0 )
+            return nestedLoop(input) ;
+        TupleIndex index = JoinPlanner.sortedIndex(nodeTupleTable.getTupleTable(), ids, slot) ;
+        if ( ! ( index instanceof TupleIndexRecord ) )
+            return nestedLoop(input) ;
+
+        Iterator<Tuple<NodeId>> iterMatches = new IterRanges((TupleIndexRecord)index, Tuple.create(ids), slot, ranges) ;
+        if ( filter != null )
+            iterMatches = Iter.filter(iterMatches, filter) ;
+        if ( anyGraphs )
+        {
+            // The index is X??G : see StageMatchTuple.
+            iterMatches = Iter.operate(iterMatches, StageMatchTuple.quadsToAnyTriples) ;
+            iterMatches = Iter.distinctAdjacent(iterMatches) ;
+        }
+        return StageMatchTuple.bind(iterMatches, input, vars) ;
+    }
+
+    private Iterator<BindingNodeId> nestedLoop(BindingNodeId input)
+    {
+        Iterator<BindingNodeId> chain = new SingletonIterator<BindingNodeId>(input) ;
+        return new StageMatchTuple(nodeTupleTable, chain, patternTuple, anyGraphs, filter, execCxt) ;
+    }
+    
+    /** The slot of the variable if it occurs exactly once, else -1 */ 
+    private static int slot(Var[] vars, Var v)
+    {
+        int slot = -1 ;
+        for ( int i = 0 ; i < vars.length ; i++ )
+        {
+            if ( v.equals(vars[i]) )
+            {
+                if ( slot >= 0 )
+                    return -1 ;
+                slot = i ;
+            }
+        }
+        return slot ;
+    }
+    
+    /** Scan the key ranges, in order.  For ranges with many groups, find each group
+     *  that has any tuples with a probe of the index, rather than trying every group.
+     */
+    private static class IterRanges implements Iterator<Tuple<NodeId>>
+    {
+        private final TupleIndexRecord index ;
+        private final Tuple<NodeId> pattern ;
+        private final int slot ;
+        private final Iterator<NodeIdRange> ranges ;
+        private NodeIdRange range = null ;
+        private long group = 0 ;
+        private Iterator<Tuple<NodeId>> current = null ;
+        
+        IterRanges(TupleIndexRecord index, Tuple<NodeId> pattern, int slot, List<NodeIdRange> ranges)
+        {
+            this.index = index ;
+            this.pattern = pattern ;
+            this.slot = slot ;
+            this.ranges = ranges.iterator() ;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while ( current == null || ! current.hasNext() )
+            {
+                current = nextScan() ;
+                if ( current == null )
+                    return false ;
+            }
+            return true ;
+        }
+        
+        private Iterator<Tuple<NodeId>> nextScan()
+        {
+            for ( ;; )
+            {
+                if ( range == null )
+                {
+                    if ( ! ranges.hasNext() )
+                        return null ;
+                    range = ranges.next() ;
+                    group = 0 ;
+                }
+                long numGroups = range.numGroups() ; 
+                if ( group >= numGroups )
+                {
+                    range = null ;
+                    continue ;
+                }
+                if ( numGroups > 2 )
+                {
+                    // Skip to the next group present.
+                    Iterator<Tuple<NodeId>> probe = index.findRange(pattern, slot, range.groupStart(group), range.groupStart(numGroups)) ;
+                    if ( ! probe.hasNext() )
+                    {
+                        range = null ;
+                        continue ;
+                    }
+                    group = range.group(probe.next().get(slot)) ;
+                }
+                long[] r = range.range(group) ;
+                group++ ;
+                if ( r != null )
+                    return index.findRange(pattern, slot, r[0], r[1]) ;
+            }
+        }
+
+        @Override
+        public Tuple<NodeId> next()
+        {
+            if ( ! hasNext() )
+                throw new NoSuchElementException("IterRanges") ;
+            return current.next() ;
+        }
+
+        @Override
+        public void remove()
+        { throw new UnsupportedOperationException("IterRanges.remove") ; }
+    }
+}
@@ -122,6 +122,15 @@ public class StageMatchTuple extends RepeatApplyIterator<BindingNodeId>
             iterMatches = Iter.distinctAdjacent(iterMatches) ;
         }
         
+        return bind(iterMatches, input, var) ;
+    }
+    
+    /** Map each matching tuple to a binding that extends the input binding
+     *  with the variables in var[] (null for slots that are not newly bound).
+     *  Tuples that disagree with a variable that is already bound are dropped.
+     */
+    static Iterator<BindingNodeId> bind(Iterator<Tuple<NodeId>> iterMatches, final BindingNodeId input, final Var[] var)
+    {
         // Map Tuple<NodeId> to BindingNodeId
         Transform<Tuple<NodeId>, BindingNodeId> binder = new Transform<Tuple<NodeId>, BindingNodeId>()
         {
@@ -137,7 +146,8 @@ public class StageMatchTuple extends RepeatApplyIterator<BindingNodeId>
                     NodeId id = tuple.get(i) ;
                     if ( reject(output, v, id) )
                         return null ;
-                    output.put(v, id) ;
+                    if ( ! output.containsKey(v) )
+                        output.put(v, id) ;
                 }
                 return output ;
             }
@@ -208,7 +218,7 @@ public class StageMatchTuple extends RepeatApplyIterator<BindingNodeId>
     }
     
     // -- Mutating "transform in place"
-    private static Action<Tuple<NodeId>> quadsToAnyTriples = new Action<Tuple<NodeId>>(){
+    static Action<Tuple<NodeId>> quadsToAnyTriples = new Action<Tuple<NodeId>>(){
         @Override
         public void apply(Tuple<NodeId> item)
         { item.tuple()[0] = NodeId.NodeIdAny ; }
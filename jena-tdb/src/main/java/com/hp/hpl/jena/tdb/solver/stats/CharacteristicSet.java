@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.solver.stats;
+
+import java.util.Collection ;
+import java.util.Map ;
+
+import com.hp.hpl.jena.graph.Node ;
+
+/** A characteristic set: a set of predicates that occur together on subjects,
+ *  the number of subjects with exactly that set of predicates, and the number
+ *  of triples for each predicate over those subjects.
+ */
+public class CharacteristicSet
+{
+    private final int count ;
+    private final Map<Node, Integer> predicates ;
+    
+    public CharacteristicSet(int count, Map<Node, Integer> predicates)
+    {
+        this.count = count ;
+        this.predicates = predicates ;
+    }
+    
+    /** Number of subjects */ 
+    public int getCount()                           { return count ; }
+    
+    /** Predicates, with the number of triples for each */
+    public Map<Node, Integer> getPredicates()       { return predicates ; }
+
+    /** Whether subjects with this set have all the predicates */
+    public boolean containsAll(Collection<Node> properties)
+    {
+        return predicates.keySet().containsAll(properties) ;
+    }
+    
+    /** Average number of triples with the predicate for one subject */
+    public double average(Node predicate)
+    {
+        Integer x = predicates.get(predicate) ;
+        if ( x == null )
+            return 0 ;
+        return ((double)x)/count ;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return count+" "+predicates ;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.solver.stats;
+
+import static com.hp.hpl.jena.sparql.engine.optimizer.reorder.PatternElements.VAR ;
+
+import java.util.ArrayList ;
+import java.util.LinkedHashMap ;
+import java.util.List ;
+import java.util.Map ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.optimizer.StatsMatcher ;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.PatternTriple ;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderProc ;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderProcIndexes ;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderTransformationSubstitution ;
+import com.hp.hpl.jena.sparql.sse.Item ;
+
+/** BGP reordering that estimates star-shaped groups of triple patterns
+ *  (same subject, fixed predicates) as a whole, using characteristic sets,
+ *  rather than each triple pattern independently.
+ *  <p>
+ *  The estimate for a star with predicates P is the sum, over the characteristic sets
+ *  that include all of P, of the number of subjects times the average number of
+ *  triples for each predicate in P. A fixed object scales the estimate by the selectivity
+ *  from the predicate weights; a fixed subject divides it by the number of subjects. 
+ *  <p>
+ *  The cheapest star or single triple pattern goes next; a star is
+ *  output as a group, ordered by the predicate weights. Without characteristic sets,
+ *  this is the same as {@link com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderWeighted}. 
+ */
+public class ReorderCharacteristicSets extends ReorderTransformationSubstitution
+{
+    private final StatsMatcher stats ;
+    private final List<CharacteristicSet> charSets ;
+    
+    public ReorderCharacteristicSets(StatsMatcher stats, List<CharacteristicSet> charSets)
+    {
+        this.stats = stats ;
+        this.charSets = charSets ;
+    }
+    
+    @Override
+    protected double weight(PatternTriple pTriple)
+    {
+        return stats.match(pTriple) ;
+    }
+    
+    @Override
+    protected ReorderProc reorder(List<Triple> triples, List<PatternTriple> components)
+    {
+        if ( charSets.isEmpty() )
+            return super.reorder(triples, components) ;
+
+        // Group by subject: triple patterns with a fixed predicate.
+        Map<Node, List<Integer>> stars = new LinkedHashMap<Node, List<Integer>>() ;
+        List<List<Integer>> units = new ArrayList<List<Integer>>() ;
+        for ( int i = 0 ; i < triples.size() ; i++ )
+        {
+            Triple t = triples.get(i) ;
+            if ( ! t.getPredicate().isURI() )
+            {
+                units.add(list(i)) ;
+                continue ;
+            }
+            List<Integer> star = stars.get(t.getSubject()) ;
+            if ( star == null )
+            {
+                star = new ArrayList<Integer>() ;
+                stars.put(t.getSubject(), star) ;
+                units.add(star) ;
+            }
+            star.add(i) ;
+        }
+        
+        int N = triples.size() ;
+        int indexes[] = new int[N] ;
+        int idx = 0 ;
+        while ( ! units.isEmpty() )
+        {
+            // Least estimate; unknown (-1) goes last.
+            int choice = -1 ;
+            double min = Double.MAX_VALUE ;
+            for ( int j = 0 ; j < units.size() ; j++ )
+            {
+                double x = estimate(units.get(j), components) ;
+                if ( x >= 0 && x < min )
+                {
+                    min = x ;
+                    choice = j ;
+                }
+            }
+            if ( choice < 0 )
+                choice = 0 ;
+            
+            List<Integer> unit = units.remove(choice) ;
+            // Within the unit, by weight, updating as variables become bound.
+            while ( ! unit.isEmpty() )
+            {
+                List<PatternTriple> x = new ArrayList<PatternTriple>(unit.size()) ;
+                for ( int i : unit )
+                    x.add(components.get(i)) ;
+                int k = chooseNext(x) ;
+                int i = unit.remove(k) ;
+                indexes[idx++] = i ;
+                update(triples.get(i), components) ;
+                components.set(i, null) ;
+            }
+        }
+        return new ReorderProcIndexes(indexes) ;
+    }
+    
+    private double estimate(List<Integer> unit, List<PatternTriple> components)
+    {
+        if ( unit.size() == 1 )
+            return weight(components.get(unit.get(0))) ;
+        
+        List<Node> predicates = new ArrayList<Node>(unit.size()) ;
+        for ( int i : unit )
+            predicates.add(components.get(i).predicate.getNode()) ;
+        
+        double estimate = 0 ;
+        double subjects = 0 ;
+        for ( CharacteristicSet cs : charSets )
+        {
+            if ( ! cs.containsAll(predicates) )
+                continue ;
+            double x = cs.getCount() ;
+            for ( Node p : predicates )
+                x = x * cs.average(p) ;
+            estimate += x ;
+            subjects += cs.getCount() ;
+        }
+        if ( subjects == 0 )
+            // No subject has all the predicates.
+            return 0 ;
+
+        for ( int i : unit )
+            estimate = estimate * selectivity(components.get(i)) ;
+        
+        // Subject already known (fixed or bound).
+        if ( ! isVar(components.get(unit.get(0)).subject) )
+            estimate = estimate / subjects ;
+        return estimate ;
+    }
+    
+    // Fraction of the triples with the predicate that match the object.
+    private double selectivity(PatternTriple pt)
+    {
+        if ( isVar(pt.object) )
+            return 1 ;
+        Item p = pt.predicate ;
+        double all = stats.match(VAR, p, VAR) ;
+        double some = stats.match(VAR, p, pt.object) ;
+        if ( all <= 0 || some < 0 )
+            return 1 ;
+        return Math.min(1, some/all) ;
+    }
+    
+    private static boolean isVar(Item item)
+    {
+        return item.isNode() && Var.isVar(item.getNode()) ;
+    }
+    
+    private static List<Integer> list(int i)
+    {
+        List<Integer> x = new ArrayList<Integer>(1) ;
+        x.add(i) ;
+        return x ;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.solver.stats;
+
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.PatternTriple ;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderTransformationSubstitution ;
+
+/** Weighted BGP reordering using the current statistics of a dataset.
+ *  Like {@link com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderWeighted}
+ *  but the weights follow changes to the data.
+ */
+public class ReorderLive extends ReorderTransformationSubstitution
+{
+    private final StatsLive stats ;
+    
+    public ReorderLive(StatsLive stats)
+    {
+        this.stats = stats ;
+    }
+    
+    public StatsLive getStats()     { return stats ; }
+    
+    @Override
+    protected double weight(PatternTriple pTriple)
+    {
+        return stats.getMatcher().match(pTriple) ;
+    }
+}
@@ -24,13 +24,17 @@ import static com.hp.hpl.jena.sparql.sse.Item.createTagged ;
 import java.io.FileOutputStream ;
 import java.io.IOException ;
 import java.io.OutputStream ;
+import java.util.ArrayList ;
+import java.util.HashMap ;
 import java.util.Iterator ;
+import java.util.List ;
 import java.util.Map ;
 import java.util.Map.Entry ;
 
 import org.apache.jena.atlas.logging.Log ;
 
 import com.hp.hpl.jena.graph.Graph ;
+import com.hp.hpl.jena.graph.GraphUtil ;
 import com.hp.hpl.jena.graph.Node ;
 import com.hp.hpl.jena.graph.Triple ;
 import com.hp.hpl.jena.sparql.engine.optimizer.StatsMatcher ;
@@ -38,8 +42,10 @@ import com.hp.hpl.jena.sparql.graph.NodeConst ;
 import com.hp.hpl.jena.sparql.sse.Item ;
 import com.hp.hpl.jena.sparql.sse.ItemList ;
 import com.hp.hpl.jena.sparql.sse.ItemWriter ;
+import com.hp.hpl.jena.sparql.sse.SSE ;
 import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
 import com.hp.hpl.jena.sparql.util.Utils ;
+import com.hp.hpl.jena.tdb.TDBException ;
 
 public class Stats
 {
@@ -47,44 +53,112 @@ public class Stats
 
     /** Write statistics */
     static public void write(String filename, StatsResults stats)
-    {
-        write(filename, stats.getPredicates(), stats.getTypes(), stats.getCount()) ;
-    }
-    
-    /** Write statistics */
-    static public void write(OutputStream output, StatsResults stats)
-    {
-        write(output, stats.getPredicates(), stats.getTypes(), stats.getCount()) ;
-    }
-    
-    static private void write(String filename, Map<Node, Integer> predicateStats, Map<Node, Integer> typeStats, long statsTotal)
     {
         // Write out the stats
         try {
             OutputStream statsOut = new FileOutputStream(filename) ;
-            write(statsOut, predicateStats, typeStats, statsTotal) ;
+            write(statsOut, stats) ;
             statsOut.close() ;
         } catch (IOException ex)
         { Log.warn(Stats.class, "Problem when writing stats file", ex) ; }
     }
     
-    static private void write(OutputStream output, Map<Node, Integer> predicateStats, Map<Node, Integer> typeStats, long statsTotal)
+    /** Write statistics */
+    static public void write(OutputStream output, StatsResults stats)
     {
-        Item item = format(predicateStats, typeStats, statsTotal) ;
+        Item item = format(stats) ;
         ItemWriter.write(output, item) ;
     }
     
 
+    /** Read statistics, as written by {@link #write}.
+     * Only the parts of the file that {@link #write} produces are recovered:
+     * the predicate counts, the rdf:type counts, the total count and
+     * the characteristic sets.
+     */
+    static public StatsResults read(String filename)
+    {
+        Item item = SSE.readFile(filename) ;
+        return read(item) ;
+    }
+
+    /** Recover statistics from the SSE form produced by {@link #format}. */
+    static public StatsResults read(Item stats)
+    {
+        Map<Node, Integer> predicates = new HashMap<Node, Integer>() ;
+        Map<Node, Integer> types = new HashMap<Node, Integer>() ;
+        List<CharacteristicSet> charSets = new ArrayList<CharacteristicSet>() ;
+        long count = -1 ;
+        
+        if ( ! stats.isTagged(StatsMatcher.STATS) )
+            throw new TDBException("Not a tagged '"+StatsMatcher.STATS+"'") ;
+        
+        ItemList list = stats.getList().cdr() ;
+        for ( ; ! list.isEmpty() ; list = list.cdr() )
+        {
+            Item elt = list.car() ;
+            if ( elt.isTagged(StatsMatcher.META) )
+            {
+                Item x = Item.find(elt.getList(), StatsMatcher.COUNT) ;
+                if ( x != null )
+                    count = x.getList().get(1).asInteger() ;
+                continue ;
+            }
+            if ( elt.isTagged(StatsMatcher.CHARSETS) )
+            {
+                readCharSets(elt, charSets) ;
+                continue ;
+            }
+            if ( ! elt.isList() || elt.getList().size() != 2 )
+                continue ;
+            Item pat = elt.getList().get(0) ;
+            Item weight = elt.getList().get(1) ;
+            if ( ! weight.isNodeLiteral() )
+                continue ;
+            int w = (int)weight.asInteger() ;
+            if ( pat.isNodeURI() )
+                predicates.put(pat.getNode(), w) ;
+            else if ( pat.isList() && pat.getList().size() == 3 )
+            {
+                // (VAR rdf:type T)
+                Item p = pat.getList().get(1) ;
+                Item o = pat.getList().get(2) ;
+                if ( p.isNode() && NodeConst.nodeRDFType.equals(p.getNode()) && o.isNode() )
+                    types.put(o.getNode(), w) ;
+            }
+        }
+        return new StatsResults(predicates, types, count, charSets) ;
+    }
+    
+    // (charsets (count (<p> n) ...) ...)
+    private static void readCharSets(Item elt, List<CharacteristicSet> charSets)
+    {
+        for ( ItemList list = elt.getList().cdr() ; ! list.isEmpty() ; list = list.cdr() )
+        {
+            ItemList cs = list.car().getList() ;
+            int n = (int)cs.get(0).asInteger() ;
+            Map<Node, Integer> predicates = new HashMap<Node, Integer>() ;
+            for ( Item x : cs.cdr() )
+                predicates.put(x.getList().get(0).getNode(), (int)x.getList().get(1).asInteger()) ;
+            charSets.add(new CharacteristicSet(n, predicates)) ;
+        }
+    }
+
     /** Gather statistics, any graph */
     public static StatsCollector gather(Graph graph)
     {
         StatsCollector stats = new StatsCollector() ;
     
-        Iterator<Triple> iter = graph.find(Node.ANY, Node.ANY, Node.ANY) ;
-        for ( ; iter.hasNext() ; )
+        // Subject by subject, for the characteristic sets.
+        Iterator<Node> subjects = GraphUtil.listSubjects(graph, Node.ANY, Node.ANY) ;
+        for ( ; subjects.hasNext() ; )
         {
-            Triple t = iter.next();
-            stats.record(null, t.getSubject(), t.getPredicate(), t.getObject()) ;
+            Iterator<Triple> iter = graph.find(subjects.next(), Node.ANY, Node.ANY) ;
+            for ( ; iter.hasNext() ; )
+            {
+                Triple t = iter.next();
+                stats.record(null, t.getSubject(), t.getPredicate(), t.getObject()) ;
+            }
         }
         
         return stats ;
@@ -92,10 +166,10 @@ public class Stats
 
     public static Item format(StatsResults stats)
     {
-        return format(stats.getPredicates(), stats.getTypes(), stats.getCount()) ;
+        return format(stats.getPredicates(), stats.getTypes(), stats.getCount(), stats.getCharacteristicSets()) ;
     }
     
-    private static Item format(Map<Node, Integer> predicates, Map<Node, Integer> types, long count)
+    private static Item format(Map<Node, Integer> predicates, Map<Node, Integer> types, long count, List<CharacteristicSet> charSets)
     {
         Item stats = Item.createList() ;
         ItemList statsList = stats.getList() ;
@@ -123,6 +197,20 @@ public class Stats
             addPair(statsList, node, NodeFactoryExtra.intToNode(entry.getValue())) ;
         }
         
+        if ( ! charSets.isEmpty() )
+        {
+            Item cs = createTagged(StatsMatcher.CHARSETS) ;
+            for ( CharacteristicSet c : charSets )
+            {
+                ItemList x = new ItemList() ;
+                x.add(NodeFactoryExtra.intToNode(c.getCount())) ;
+                for ( Entry<Node, Integer> entry : c.getPredicates().entrySet() )
+                    addPair(x, entry.getKey(), NodeFactoryExtra.intToNode(entry.getValue())) ;
+                cs.getList().add(Item.createList(x)) ;
+            }
+            statsList.add(cs) ;
+        }
+        
         // Add a default rule.
         addPair(statsList, StatsMatcher.OTHER, ZERO) ;
         
@@ -19,21 +19,47 @@
 package com.hp.hpl.jena.tdb.solver.stats;
 
 
+import java.util.ArrayList ;
 import java.util.HashMap ;
+import java.util.HashSet ;
+import java.util.List ;
 import java.util.Map ;
+import java.util.Set ;
 
 import com.hp.hpl.jena.graph.Node ;
 
 import org.apache.jena.atlas.lib.MapUtils ;
 
-/** Statistics collector, general purpose */
+/** Statistics collector, general purpose.
+ * <p>
+ * Characteristic sets are collected from runs of triples with the same subject
+ * (and graph), so the triples should be recorded grouped by subject, as an
+ * S-first index scan produces them. At most {@link #MaxCharacteristicSets}
+ * different sets are kept.
+ */
 abstract class StatsCollectorBase<T>
 {
+    /** Limit on the number of different characteristic sets */
+    public static final int MaxCharacteristicSets = 10000 ;
+    
     private long count = 0 ;
     private Map<T, Integer> predicates = new HashMap<T, Integer>(10000) ;
     private Map<T, Integer> types = new HashMap<T, Integer>(10000) ;
     private T typeTrigger ;
     
+    // The current subject and its predicates.
+    private T currentGraph = null ;
+    private T currentSubject = null ;
+    private Map<T, Integer> currentPredicates = new HashMap<T, Integer>() ;
+    // Characteristic set to [number of subjects, predicate counts] 
+    private Map<Set<T>, CharSet<T>> charSets = new HashMap<Set<T>, CharSet<T>>() ;
+    
+    private static class CharSet<T>
+    {
+        int count = 0 ;
+        Map<T, Integer> predicates = new HashMap<T, Integer>() ;
+    }
+    
     protected StatsCollectorBase(T typeTrigger)
     {
         this.typeTrigger = typeTrigger ;
@@ -45,12 +71,53 @@ abstract class StatsCollectorBase<T>
         MapUtils.increment(predicates, p) ;
         if ( typeTrigger != null && typeTrigger.equals(p) )
             MapUtils.increment(types, o) ;
+        if ( ! s.equals(currentSubject) || ! equals(g, currentGraph) )
+        {
+            finishSubject() ;
+            currentGraph = g ;
+            currentSubject = s ;
+        }
+        MapUtils.increment(currentPredicates, p) ;
     }
 
+    private static boolean equals(Object x, Object y)
+    {
+        return ( x == null ) ? y == null : x.equals(y) ;
+    }
+    
+    private void finishSubject()
+    {
+        if ( currentPredicates.isEmpty() )
+            return ;
+        Set<T> key = new HashSet<T>(currentPredicates.keySet()) ;
+        CharSet<T> cs = charSets.get(key) ;
+        if ( cs == null && charSets.size() < MaxCharacteristicSets )
+        {
+            cs = new CharSet<T>() ;
+            charSets.put(key, cs) ;
+        }
+        if ( cs != null )
+        {
+            cs.count++ ;
+            for ( Map.Entry<T, Integer> e : currentPredicates.entrySet() )
+            {
+                Integer x = cs.predicates.get(e.getKey()) ;
+                cs.predicates.put(e.getKey(), ( x == null ) ? e.getValue() : x+e.getValue()) ;
+            }
+        }
+        currentPredicates.clear() ;
+        currentSubject = null ;
+        currentGraph = null ;
+    }
+    
     protected abstract Map<Node, Integer> convert(Map<T, Integer> map) ;
     
     public StatsResults results()
     {
-        return new StatsResults(convert(predicates), convert(types), count) ;
+        finishSubject() ;
+        List<CharacteristicSet> x = new ArrayList<CharacteristicSet>(charSets.size()) ;
+        for ( CharSet<T> cs : charSets.values() )
+            x.add(new CharacteristicSet(cs.count, convert(cs.predicates))) ;
+        return new StatsResults(convert(predicates), convert(types), count, x) ;
     }
 }
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.solver.stats;
+
+import java.util.HashMap ;
+import java.util.Iterator ;
+import java.util.Map ;
+import java.util.Map.Entry ;
+
+import com.hp.hpl.jena.sparql.graph.NodeConst ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+
+/** Changes to the statistics of a dataset, as NodeIds.
+ *  For each predicate, the number of triples (or quads) and the number of
+ *  distinct subjects and objects; for rdf:type, the number of instances of
+ *  each class.  The counts may go negative - a delta records deletes as well as adds.
+ *  @see StatsLive
+ */
+public class StatsDelta
+{
+    // Per predicate: [count, distinct subjects, distinct objects]
+    static final int COUNT = 0 ;
+    static final int SUBJECTS = 1 ;
+    static final int OBJECTS = 2 ;
+    
+    private final NodeTable nodeTable ;
+    private NodeId rdfType = null ;
+    private long count = 0 ;
+    private boolean invalid = false ;
+    private final Map<NodeId, long[]> predicates = new HashMap<NodeId, long[]>() ;
+    private final Map<NodeId, long[]> types = new HashMap<NodeId, long[]>() ;
+    
+    /** The node table is used to find rdf:type, which may be allocated after the delta is created. */
+    public StatsDelta(NodeTable nodeTable)
+    {
+        this.nodeTable = nodeTable ;
+    }
+    
+    /** Record a new triple (or quad), whether it brings a new subject or new object for the predicate */  
+    public void added(NodeId p, NodeId o, boolean newSubject, boolean newObject)
+    {
+        change(p, o, 1, newSubject, newObject) ;
+    }
+    
+    /** Record a deleted triple (or quad), whether it was the last with its subject or object for the predicate */  
+    public void deleted(NodeId p, NodeId o, boolean lastSubject, boolean lastObject)
+    {
+        change(p, o, -1, lastSubject, lastObject) ;
+    }
+    
+    private synchronized void change(NodeId p, NodeId o, int delta, boolean subject, boolean object)
+    {
+        count += delta ;
+        long[] x = slot(predicates, p) ;
+        x[COUNT] += delta ;
+        if ( subject )
+            x[SUBJECTS] += delta ;
+        if ( object )
+            x[OBJECTS] += delta ;
+        if ( isType(p) )
+            slot(types, o)[COUNT] += delta ;
+    }
+
+    private boolean isType(NodeId p)
+    {
+        if ( rdfType == null )
+        {
+            NodeId id = nodeTable.getNodeIdForNode(NodeConst.nodeRDFType) ;
+            if ( NodeId.isDoesNotExist(id) )
+                return false ;
+            rdfType = id ;
+        }
+        return rdfType.equals(p) ;
+    }
+
+    /** Record a change that can not be tracked, such as clearing a table:
+     * the statistics will be recalculated when the delta is applied. */
+    public synchronized void invalidate()
+    {
+        invalid = true ;
+    }
+    
+    public synchronized boolean isInvalid()     { return invalid ; }
+    
+    /** Add another delta into this one, dropping anything that no longer occurs.
+     *  Used to apply a delta to the totals. */ 
+    synchronized void merge(StatsDelta other)
+    {
+        synchronized(other)
+        {
+            count += other.count ;
+            merge(predicates, other.predicates) ;
+            merge(types, other.types) ;
+        }
+    }
+    
+    private static void merge(Map<NodeId, long[]> map, Map<NodeId, long[]> other)
+    {
+        for ( Entry<NodeId, long[]> e : other.entrySet() )
+        {
+            long[] x = slot(map, e.getKey()) ;
+            long[] y = e.getValue() ;
+            for ( int i = 0 ; i < x.length ; i++ )
+                x[i] += y[i] ;
+        }
+        // Remove anything that has gone completely. 
+        Iterator<Entry<NodeId, long[]>> iter = map.entrySet().iterator() ;
+        while ( iter.hasNext() )
+        {
+            if ( iter.next().getValue()[COUNT] <= 0 )
+                iter.remove() ;
+        }
+    }
+    
+    private static long[] slot(Map<NodeId, long[]> map, NodeId key)
+    {
+        long[] x = map.get(key) ;
+        if ( x == null )
+        {
+            x = new long[3] ;
+            map.put(key, x) ;
+        }
+        return x ;
+    }
+    
+    synchronized void set(long count, Map<NodeId, long[]> predicates, Map<NodeId, long[]> types)
+    {
+        this.count = count ;
+        this.predicates.clear() ;
+        this.predicates.putAll(predicates) ;
+        this.types.clear() ;
+        this.types.putAll(types) ;
+    }
+    
+    public synchronized boolean isEmpty()       { return predicates.isEmpty() && types.isEmpty() && count == 0 && ! invalid ; }
+    
+    public synchronized void clear()
+    {
+        count = 0 ;
+        invalid = false ;
+        predicates.clear() ;
+        types.clear() ;
+    }
+    
+    /** Number of triples (or quads), or the change in the number */ 
+    public synchronized long getCount()         { return count ; }
+    
+    // Callers synchronize on the delta.
+    Map<NodeId, long[]> predicates()            { return predicates ; }
+    Map<NodeId, long[]> types()                 { return types ; }
+    
+    @Override
+    public synchronized String toString()
+    {
+        return "StatsDelta: count="+count+( invalid ? " (invalid)" : "" )+" predicates="+predicates.size()+" types="+types.size() ;
+    }
+}
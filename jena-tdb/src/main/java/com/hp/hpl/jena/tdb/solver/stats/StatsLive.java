@@ -0,0 +1,426 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.solver.stats;
+
+import java.io.File ;
+import java.io.FileOutputStream ;
+import java.io.IOException ;
+import java.io.OutputStream ;
+import java.util.HashMap ;
+import java.util.Iterator ;
+import java.util.Map ;
+import java.util.Map.Entry ;
+
+import org.apache.jena.atlas.lib.Tuple ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.sparql.engine.optimizer.Pattern ;
+import com.hp.hpl.jena.sparql.engine.optimizer.StatsMatcher ;
+import com.hp.hpl.jena.sparql.graph.NodeConst ;
+import com.hp.hpl.jena.sparql.sse.Item ;
+import com.hp.hpl.jena.sparql.sse.ItemList ;
+import com.hp.hpl.jena.sparql.sse.ItemWriter ;
+import com.hp.hpl.jena.sparql.sse.SSE ;
+import com.hp.hpl.jena.sparql.sse.SSEParseException ;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
+import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.index.TupleIndex ;
+import com.hp.hpl.jena.tdb.index.TupleTable ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+import com.hp.hpl.jena.tdb.sys.Names ;
+
+import static com.hp.hpl.jena.sparql.engine.optimizer.reorder.PatternElements.ANY ;
+import static com.hp.hpl.jena.sparql.engine.optimizer.reorder.PatternElements.TERM ;
+import static com.hp.hpl.jena.sparql.engine.optimizer.reorder.PatternElements.VAR ;
+
+/** Statistics for a dataset, kept up to date as changes are made and
+ *  persisted in the dataset directory ({@link Names#optStatsLive}).
+ *  <p>
+ *  Writers record their changes in a {@link StatsDelta} and apply it with
+ *  {@link #apply} when they commit. The statistics are the predicate counts,
+ *  the distinct subjects and objects for each predicate, and the
+ *  rdf:type class histogram. They are used for BGP reordering by {@link ReorderLive}
+ *  and as the {@link StatsResults} of the dataset.
+ *  <p>
+ *  File format:<pre>
+ *  (stats-live
+ *    (count N)
+ *    (predicate &lt;p&gt; count distinctSubjects distinctObjects)
+ *    (type &lt;class&gt; count)
+ *  )</pre>
+ */
+public class StatsLive
+{
+    private static Logger log = LoggerFactory.getLogger(StatsLive.class) ;
+    
+    private static final String tagStatsLive    = "stats-live" ;
+    private static final String tagCount        = "count" ;
+    private static final String tagPredicate    = "predicate" ;
+    private static final String tagType         = "type" ;
+    
+    private final Location location ;
+    private final NodeTable nodeTable ;
+    private final TupleTable triples ;
+    private final TupleTable quads ;
+    private final StatsDelta totals ;
+    
+    private long version = 0 ;
+    private StatsMatcher matcher = null ;
+    private StatsResults results = null ;
+    private long cacheVersion = -1 ;
+    
+    /** Statistics for the dataset at the location: read from the stats file, or
+     * recalculated from the tables if there is no file.  The stats file is written
+     * if it does not exist.
+     */
+    public static StatsLive open(Location location, NodeTable nodeTable, TupleTable triples, TupleTable quads)
+    {
+        StatsLive stats = new StatsLive(location, nodeTable, triples, quads) ;
+        if ( ! location.isMem() && location.exists(Names.optStatsLive) )
+        {
+            try {
+                stats.read(location.getPath(Names.optStatsLive)) ;
+                return stats ;
+            } catch (SSEParseException ex) { 
+                log.warn("Error in stats file: "+ex.getMessage()) ;
+            } catch (TDBException ex) { 
+                log.warn("Error in stats file: "+ex.getMessage()) ;
+            }
+        }
+        if ( ! triples.isEmpty() || ! quads.isEmpty() )
+        {
+            log.info("Calculating statistics: "+location.getDirectoryPath()) ;
+            stats.rebuild() ;
+        }
+        else
+            // Record that statistics are maintained.
+            stats.write() ;
+        return stats ;
+    }
+    
+    private StatsLive(Location location, NodeTable nodeTable, TupleTable triples, TupleTable quads)
+    {
+        this.location = location ;
+        this.nodeTable = nodeTable ;
+        this.triples = triples ;
+        this.quads = quads ;
+        this.totals = new StatsDelta(nodeTable) ;
+    }
+    
+    public Location getLocation()   { return location ; }
+
+    /** A delta for recording changes, to be given back to {@link #apply} */
+    public StatsDelta newDelta(NodeTable nodeTable)
+    {
+        return new StatsDelta(nodeTable) ;
+    }
+    
+    /** Incorporate the changes of a writer, and persist the statistics. */
+    public void apply(StatsDelta delta)
+    {
+        apply(delta, triples, quads) ;
+    }
+    
+    /** Incorporate the changes of a writer, and persist the statistics.
+     * If the changes can't be tracked, the statistics are recalculated
+     * from the tables given, which must include the changes.
+     */
+    public void apply(StatsDelta delta, TupleTable triples, TupleTable quads)
+    {
+        if ( delta.isEmpty() )
+            return ;
+        if ( delta.isInvalid() )
+        {
+            rebuild(triples, quads) ;
+            return ;
+        }
+        synchronized(this)
+        {
+            totals.merge(delta) ;
+            version++ ;
+            write() ;
+        }
+    }
+    
+    /** Recalculate the statistics by scanning the tables, and persist them. */
+    public void rebuild()
+    {
+        rebuild(triples, quads) ;
+    }
+    
+    private synchronized void rebuild(TupleTable triples, TupleTable quads)
+    {
+        Map<NodeId, long[]> predicates = new HashMap<NodeId, long[]>() ;
+        Map<NodeId, long[]> types = new HashMap<NodeId, long[]>() ;
+        NodeId rdfType = nodeTable.getNodeIdForNode(NodeConst.nodeRDFType) ;
+        long count = scan(triples, rdfType, predicates, types) + scan(quads, rdfType, predicates, types) ;
+        totals.set(count, predicates, types) ;
+        version++ ;
+        write() ;
+    }
+    
+    // Subjects of a predicate are counted from a [G]SP.. index, objects from a [G]PO.. index,
+    // looking for the start of each run of the same prefix.
+    private static long scan(TupleTable table, NodeId rdfType, Map<NodeId, long[]> predicates, Map<NodeId, long[]> types)
+    {
+        String primary = table.getIndex(0).getName() ;
+        boolean quads = ( table.getTupleLen() == 4 ) ;
+        String prefix = quads ? "G" : "" ;
+        int g = primary.indexOf('G') ;
+        int s = primary.indexOf('S') ;
+        int p = primary.indexOf('P') ;
+        int o = primary.indexOf('O') ;
+        
+        TupleIndex spIdx = findIndex(table, prefix+"SP") ;
+        TupleIndex poIdx = findIndex(table, prefix+"PO") ;
+        // No index to find the runs: assume distinct.
+        boolean spRuns = ( spIdx != null ) ;
+        if ( ! spRuns )
+            spIdx = table.getIndex(0) ;
+
+        long count = 0 ;
+        Tuple<NodeId> prev = null ;
+        Iterator<Tuple<NodeId>> iter = spIdx.all() ;
+        while ( iter.hasNext() )
+        {
+            Tuple<NodeId> t = iter.next() ;
+            count++ ;
+            long[] x = slot(predicates, t.get(p)) ;
+            x[StatsDelta.COUNT]++ ;
+            if ( ! spRuns || ! same(prev, t, g, s, p) )
+                x[StatsDelta.SUBJECTS]++ ;
+            if ( poIdx == null )
+                x[StatsDelta.OBJECTS]++ ;
+            if ( rdfType != null && rdfType.equals(t.get(p)) )
+                slot(types, t.get(o))[StatsDelta.COUNT]++ ;
+            prev = t ;
+        }
+        
+        if ( poIdx != null )
+        {
+            prev = null ;
+            iter = poIdx.all() ;
+            while ( iter.hasNext() )
+            {
+                Tuple<NodeId> t = iter.next() ;
+                if ( ! same(prev, t, g, p, o) )
+                    slot(predicates, t.get(p))[StatsDelta.OBJECTS]++ ;
+                prev = t ;
+            }
+        }
+        return count ;
+    }
+
+    private static TupleIndex findIndex(TupleTable table, String prefix)
+    {
+        for ( TupleIndex idx : table.getIndexes() )
+        {
+            if ( idx != null && idx.getName().startsWith(prefix) )
+                return idx ;
+        }
+        return null ;
+    }
+    
+    private static boolean same(Tuple<NodeId> t1, Tuple<NodeId> t2, int g, int x, int y)
+    {
+        if ( t1 == null )
+            return false ;
+        if ( g >= 0 && ! t1.get(g).equals(t2.get(g)) )
+            return false ;
+        return t1.get(x).equals(t2.get(x)) && t1.get(y).equals(t2.get(y)) ;
+    }
+    
+    private static long[] slot(Map<NodeId, long[]> map, NodeId key)
+    {
+        long[] x = map.get(key) ;
+        if ( x == null )
+        {
+            x = new long[3] ;
+            map.put(key, x) ;
+        }
+        return x ;
+    }
+    
+    /** Weights for BGP reordering, derived from the current statistics. */
+    public synchronized StatsMatcher getMatcher()
+    {
+        refresh() ;
+        return matcher ;
+    }
+    
+    /** The current statistics, as predicate and class counts. */
+    public synchronized StatsResults results()
+    {
+        refresh() ;
+        return results ;
+    }
+    
+    private void refresh()
+    {
+        if ( cacheVersion == version )
+            return ;
+        Map<Node, Integer> predicateCounts = new HashMap<Node, Integer>() ;
+        Map<Node, Integer> typeCounts = new HashMap<Node, Integer>() ;
+        StatsMatcher m = new StatsMatcher(defaultRules()) ;
+        synchronized(totals)
+        {
+            // Class-specific patterns first: the first match in the rdf:type patterns is used. 
+            for ( Entry<NodeId, long[]> e : totals.types().entrySet() )
+            {
+                Node type = nodeTable.getNodeForNodeId(e.getKey()) ;
+                if ( type == null )
+                    continue ;
+                long n = e.getValue()[StatsDelta.COUNT] ;
+                typeCounts.put(type, clamp(n)) ;
+                m.addPattern(new Pattern(n, VAR, Item.createNode(NodeConst.nodeRDFType), Item.createNode(type))) ;
+            }
+            for ( Entry<NodeId, long[]> e : totals.predicates().entrySet() )
+            {
+                Node p = nodeTable.getNodeForNodeId(e.getKey()) ;
+                if ( p == null || ! p.isURI() )
+                    continue ;
+                long[] x = e.getValue() ;
+                predicateCounts.put(p, clamp(x[StatsDelta.COUNT])) ;
+                Item pred = Item.createNode(p) ;
+                // Average number of triples for a given subject, or a given object.
+                m.addPattern(new Pattern(average(x, StatsDelta.SUBJECTS), TERM, pred, ANY)) ;
+                m.addPattern(new Pattern(average(x, StatsDelta.OBJECTS), ANY, pred, TERM)) ;
+                m.addPattern(new Pattern(x[StatsDelta.COUNT], ANY, pred, ANY)) ;
+            }
+            results = new StatsResults(predicateCounts, typeCounts, totals.getCount()) ;
+        }
+        matcher = m ;
+        cacheVersion = version ;
+    }
+
+    // Unknown predicates do not occur in the data.
+    private static Item defaultRules()
+    {
+        Item stats = Item.createTagged(StatsMatcher.STATS) ;
+        Item.addPair(stats.getList(), StatsMatcher.OTHER, Item.createNode(NodeFactoryExtra.intToNode(0))) ;
+        return stats ;
+    }
+
+    private static double average(long[] x, int idx)
+    {
+        if ( x[idx] <= 0 )
+            return x[StatsDelta.COUNT] ;
+        return ((double)x[StatsDelta.COUNT])/x[idx] ;
+    }
+    
+    private static int clamp(long n)
+    {
+        return (int)Math.min(n, Integer.MAX_VALUE) ;
+    }
+    
+    // ---- Persistence
+    
+    /** Write the statistics to the stats file (not for in-memory datasets). */
+    public synchronized void write()
+    {
+        if ( location.isMem() )
+            return ;
+        String filename = location.getPath(Names.optStatsLive) ;
+        String tmpFilename = filename+".tmp" ;
+        try {
+            OutputStream out = new FileOutputStream(tmpFilename) ;
+            try { ItemWriter.write(out, format()) ; }
+            finally { out.close() ; }
+            File file = new File(filename) ;
+            file.delete() ;
+            if ( ! new File(tmpFilename).renameTo(file) )
+                log.warn("Failed to rename stats file: "+tmpFilename) ;
+        } catch (IOException ex)
+        { log.warn("Problem when writing stats file", ex) ; }
+    }
+
+    private Item format()
+    {
+        Item item = Item.createTagged(tagStatsLive) ;
+        ItemList list = item.getList() ;
+        synchronized(totals)
+        {
+            ItemList x = new ItemList() ;
+            x.add(tagCount) ;
+            x.add(NodeFactoryExtra.intToNode(totals.getCount())) ;
+            list.add(Item.createList(x)) ;
+            for ( Entry<NodeId, long[]> e : totals.predicates().entrySet() )
+                add(list, tagPredicate, e.getKey(), e.getValue()) ;
+            for ( Entry<NodeId, long[]> e : totals.types().entrySet() )
+                add(list, tagType, e.getKey(), new long[]{e.getValue()[StatsDelta.COUNT]}) ;
+        }
+        return item ;
+    }
+    
+    private void add(ItemList list, String tag, NodeId nodeId, long[] values)
+    {
+        Node n = nodeTable.getNodeForNodeId(nodeId) ;
+        if ( n == null )
+            return ;
+        ItemList x = new ItemList() ;
+        x.add(tag) ;
+        x.add(n) ;
+        for ( long v : values )
+            x.add(NodeFactoryExtra.intToNode(v)) ;
+        list.add(Item.createList(x)) ;
+    }
+
+    private void read(String filename)
+    {
+        Item item = SSE.readFile(filename) ;
+        if ( ! item.isTagged(tagStatsLive) )
+            throw new TDBException("Not a tagged '"+tagStatsLive+"'") ;
+        long count = 0 ;
+        Map<NodeId, long[]> predicates = new HashMap<NodeId, long[]>() ;
+        Map<NodeId, long[]> types = new HashMap<NodeId, long[]>() ;
+        
+        for ( ItemList list = item.getList().cdr() ; ! list.isEmpty() ; list = list.cdr() )
+        {
+            Item elt = list.car() ;
+            if ( elt.isTagged(tagCount) )
+            {
+                count = elt.getList().get(1).asInteger() ;
+                continue ;
+            }
+            boolean isPredicate = elt.isTagged(tagPredicate) ;
+            if ( ! isPredicate && ! elt.isTagged(tagType) )
+                throw new TDBException("Unrecognized entry in stats file: "+elt) ;
+            NodeId nodeId = nodeTable.getNodeIdForNode(elt.getList().get(1).getNode()) ;
+            if ( NodeId.isDoesNotExist(nodeId) )
+                continue ;
+            long[] x = new long[3] ;
+            for ( int i = 2 ; i < elt.getList().size() ; i++ )
+                x[i-2] = elt.getList().get(i).asInteger() ;
+            ( isPredicate ? predicates : types ).put(nodeId, x) ;
+        }
+        totals.set(count, predicates, types) ;
+        version++ ;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "StatsLive: "+location.getDirectoryPath()+" : "+totals ;
+    }
+}
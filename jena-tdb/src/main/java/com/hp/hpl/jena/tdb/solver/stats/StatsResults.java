@@ -18,6 +18,8 @@
 
 package com.hp.hpl.jena.tdb.solver.stats;
 
+import java.util.Collections ;
+import java.util.List ;
 import java.util.Map ;
 
 import com.hp.hpl.jena.graph.Node ;
@@ -28,12 +30,19 @@ public class StatsResults
     private final Map<Node, Integer> predicates ;
     private final Map<Node, Integer> types ;
     private final long count ;
+    private final List<CharacteristicSet> charSets ;
 
     StatsResults(Map<Node, Integer> predicates, Map<Node, Integer> types, long count)
+    {
+        this(predicates, types, count, Collections.<CharacteristicSet>emptyList()) ;
+    }
+
+    StatsResults(Map<Node, Integer> predicates, Map<Node, Integer> types, long count, List<CharacteristicSet> charSets)
     {
         this.count = count ;
         this.predicates = predicates ;
         this.types = types ;
+        this.charSets = charSets ;
     }
 
     public Map<Node, Integer> getPredicates()
@@ -50,4 +59,10 @@ public class StatsResults
     {
         return count ;
     }
+
+    /** Characteristic sets, if collected (else an empty list) */
+    public List<CharacteristicSet> getCharacteristicSets()
+    {
+        return charSets ;
+    }
 }
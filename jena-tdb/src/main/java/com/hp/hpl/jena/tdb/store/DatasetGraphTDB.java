@@ -39,6 +39,9 @@ import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderTransformation ;
 import com.hp.hpl.jena.tdb.base.file.Location ;
 import com.hp.hpl.jena.tdb.lib.NodeLib ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTupleTable ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsDelta ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsLive ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsResults ;
 import com.hp.hpl.jena.tdb.sys.Session ;
 import com.hp.hpl.jena.tdb.transaction.DatasetGraphTransaction ;
 import com.hp.hpl.jena.tdb.transaction.DatasetGraphTxn ;
@@ -64,6 +67,9 @@ public class DatasetGraphTDB extends DatasetGraphCaching
     private final StorageConfig config ;
     
     private GraphTDB effectiveDefaultGraph ;
+    private StatsResults stats = null ;
+    private StatsLive statsLive = null ;
+    private StatsDelta statsDelta = null ;
     private boolean closed = false ;
 
     public DatasetGraphTDB(TripleTable tripleTable, QuadTable quadTable, DatasetPrefixesTDB prefixes, 
@@ -125,6 +131,7 @@ public class DatasetGraphTDB extends DatasetGraphCaching
             return ;
         closed = true ;
         
+        syncStats() ;
         tripleTable.close() ;
         quadTable.close() ;
         prefixes.close();
@@ -174,6 +181,37 @@ public class DatasetGraphTDB extends DatasetGraphCaching
     
     public ReorderTransformation getReorderTransform()      { return transform ; }
     
+    /** Statistics for the dataset, or null if none are available. */ 
+    public StatsResults getStats()
+    { 
+        if ( statsLive != null )
+            return statsLive.results() ;
+        return stats ;
+    }
+
+    public void setStats(StatsResults stats)                { this.stats = stats ; }
+    
+    public StatsLive getStatsLive()                         { return statsLive ; }
+    
+    /** Use statistics that are maintained as the data changes.
+     * If {@code recordChanges}, changes made through this dataset are recorded and applied
+     * to the statistics by {@link #sync}. A transaction records its own changes
+     * (see {@link #recordStats}) and applies them when it commits.
+     */
+    public void setStatsLive(StatsLive statsLive, boolean recordChanges)
+    {
+        this.statsLive = statsLive ;
+        this.statsDelta = recordChanges ? statsLive.newDelta(tripleTable.getNodeTupleTable().getNodeTable()) : null ;
+        recordStats(statsDelta) ;
+    }
+    
+    /** Record changes to the triples and quads in the delta (null to stop recording). */ 
+    public void recordStats(StatsDelta delta)
+    {
+        tripleTable.getNodeTupleTable().getTupleTable().setStats(delta) ;
+        quadTable.getNodeTupleTable().getTupleTable().setStats(delta) ;
+    }
+    
     public DatasetPrefixesTDB getPrefixes()                 { return prefixes ; }
 
     static private Transform<Tuple<NodeId>, NodeId> project0 = new Transform<Tuple<NodeId>, NodeId>()
@@ -269,6 +307,16 @@ public class DatasetGraphTDB extends DatasetGraphCaching
         tripleTable.sync() ;
         quadTable.sync() ;
         prefixes.sync() ;
+        syncStats() ;
+    }
+    
+    private void syncStats()
+    {
+        if ( statsDelta != null && ! statsDelta.isEmpty() )
+        {
+            statsLive.apply(statsDelta) ;
+            statsDelta.clear() ;
+        }
     }
     
     // --- GraphStore
@@ -198,8 +198,6 @@ public class DateTimeNode
         int minutes = (int)BitsLong.unpack(v, MINUTES, MINUTES+MINUTES_LEN) ; 
         int milliSeconds = (int)BitsLong.unpack(v, MILLI, MILLI+MILLI_LEN) ;
         
-        int tz = (int)BitsLong.unpack(v, TZ, TZ+TZ_LEN);
-        
         int sec = milliSeconds / 1000 ;
         int fractionSec = milliSeconds % 1000 ;
         
@@ -232,16 +230,61 @@ public class DateTimeNode
                 
             }
         }
+        unpackTZ(sb, v) ;
+        return sb.toString() ;
+    }
+    
+    // From string.  Assumed legal (xsd:gYear).
+    // Returns -1 for unpackable.
+    public static long packYear(String lex)
+    {
+        try { return packYear$(lex) ; }
+        catch (Exception ex) { return -1 ; }
+    }
+
+    private static long packYear$(String lex)
+    {
+        long v = 0 ;
+        lex = lex.trim() ;
+        boolean containsZ = (lex.indexOf('Z') > 0 ) ;
+        XMLGregorianCalendar xcal = datatypeFactory.newXMLGregorianCalendar(lex) ;
+        int y = xcal.getYear() ;
+        if ( y < 0 || y >= 8000 )
+            return -1 ;
+        // Month and day are zero.
+        v = date(v, y, 0, 0) ;
+        if ( containsZ )
+            return tz(v, TZ_Z) ;
+        int tz = xcal.getTimezone() ;
+        if ( tz == DatatypeConstants.FIELD_UNDEFINED )
+            return tz(v, TZ_NONE) ;
+        if ( tz%15 != 0 )
+            return -1 ;
+        return tz(v, tz/15) ;
+    }
+
+    public static String unpackYear(long v)
+    {
+        int years = (int)BitsLong.unpack(v, YEAR, YEAR+YEAR_LEN) ;
+        StringBuilder sb = new StringBuilder(10) ;
+        NumberUtils.formatInt(sb, years, 4) ;
+        unpackTZ(sb, v) ;
+        return sb.toString() ;
+    }
+
+    private static void unpackTZ(StringBuilder sb, long v)
+    {
+        int tz = (int)BitsLong.unpack(v, TZ, TZ+TZ_LEN);
         // tz in 15min units
         // Special values.
         if ( tz == TZ_Z )
         {
             sb.append("Z") ;
-            return sb.toString();
+            return ;
         }
         
         if ( tz == TZ_NONE )
-            return sb.toString() ; 
+            return ; 
             
         // Sign extend.
         if ( BitsLong.isSet(v, TZ+TZ_LEN-1) )
@@ -260,6 +303,5 @@ public class DateTimeNode
         NumberUtils.formatUnsignedInt(sb, tzH, 2) ;
         sb.append(':') ;
         NumberUtils.formatUnsignedInt(sb, tzM, 2) ;
-        return sb.toString();
     }
 }
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.store;
+
+import org.apache.jena.atlas.lib.BitsLong ;
+
+/** Inline xsd:double and xsd:float values. */
+public class FloatNode
+{
+    // Double: the 56 high bits of the IEEE 754 bits.
+    // Only doubles with the low 8 bits of the mantissa zero fit. 
+    // Float: the 32 bits of the IEEE 754 bits.
+    
+    public static long packDouble(double d)
+    {
+        long bits = Double.doubleToLongBits(d) ;
+        if ( (bits & 0xFF) != 0 )
+            return -1 ;
+        long v = bits >>> 8 ;
+        return NodeId.setType(v, NodeId.DOUBLE) ;
+    }
+    
+    public static double unpackDouble(long v)
+    {
+        long bits = BitsLong.clear(v, 56, 64) << 8 ;
+        return Double.longBitsToDouble(bits) ;
+    }
+    
+    public static long packFloat(float f)
+    {
+        long v = Float.floatToIntBits(f) & 0xFFFFFFFFL ;
+        return NodeId.setType(v, NodeId.FLOAT) ;
+    }
+    
+    public static float unpackFloat(long v)
+    {
+        return Float.intBitsToFloat((int)BitsLong.clear(v, 32, 64)) ;
+    }
+}
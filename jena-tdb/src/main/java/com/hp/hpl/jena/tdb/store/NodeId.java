@@ -138,6 +138,14 @@ public class NodeId
      *  Date format:
      *  DateTime format:
      *  Boolean format:
+     *  
+     *  Format 2 (see FormatV2) adds:
+     *  Double format: the high 56 bits of the IEEE 754 double (low 8 bits zero).
+     *  Float format: the 32 bits of the IEEE 754 float.
+     *  gYear format: as Date, with zero month and day.
+     *  Short string format: up to 7 bytes of UTF-8, plain literals only.
+     *  These are only inlined if the lexical form is exactly the one that
+     *  extract() produces, so the node is unchanged by inlining.
      */
     
     // Type codes.
@@ -150,10 +158,25 @@ public class NodeId
     public static final int DATETIME           = 4 ;
     public static final int BOOLEAN            = 5 ;
     public static final int SHORT_STRING       = 6 ;
+    public static final int DOUBLE             = 7 ;
+    public static final int FLOAT              = 8 ;
+    public static final int GYEAR              = 9 ;
     public static final int SPECIAL            = 0xFF ;
     
-    /** Encode a node as an inline literal.  Return null if it can't be done */
+    // On-disk NodeId formats.
+    /** Original NodeId format: inline integer, decimal, date, dateTime and boolean. */
+    public static final int FormatV1           = 1 ;
+    /** Adds inline double, float, gYear and short plain strings. */
+    public static final int FormatV2           = 2 ;
+    
+    /** Encode a node as an inline literal in NodeId format 1.  Return null if it can't be done */
     public static NodeId inline(Node node)
+    {
+        return inline(node, FormatV1) ;
+    }
+    
+    /** Encode a node as an inline literal, for a NodeId format.  Return null if it can't be done */
+    public static NodeId inline(Node node, int format)
     {
         if ( node == null )
         {
@@ -162,16 +185,66 @@ public class NodeId
         }
         
         if ( ! node.isLiteral() ) return null ;
-        if ( node.getLiteralDatatype() == null ) return null ;
-        
         if ( ! enableInlineLiterals ) return null ;
         
-        try { return inline$(node) ; }
+        try {
+            if ( format >= FormatV2 )
+            {
+                NodeId nodeId = inlineV2(node) ;
+                if ( nodeId != null )
+                    return nodeId ;
+            }
+            if ( node.getLiteralDatatype() == null ) return null ;
+            return inline$(node) ;
+        }
         catch (Throwable th) {
             Log.warn(NodeId.class, "Failed to process "+node) ;
             return null ; 
         }
     }
+    
+    private static NodeId inlineV2(Node node)
+    {
+        LiteralLabel lit = node.getLiteral() ;
+        String lex = lit.getLexicalForm() ;
+        long v = -1 ;
+        
+        if ( node.getLiteralDatatype() == null )
+        {
+            String lang = node.getLiteralLanguage() ;
+            if ( lang != null && ! lang.equals("") )
+                return null ;
+            v = StringNode.pack(lex) ;
+        }
+        else if ( node.getLiteralDatatype().equals(XSDDatatype.XSDdouble) )
+        {
+            if ( ! XSDDatatype.XSDdouble.isValidLiteral(lit) )
+                return null ;
+            v = FloatNode.packDouble(Double.parseDouble(lex)) ;
+        }
+        else if ( node.getLiteralDatatype().equals(XSDDatatype.XSDfloat) )
+        {
+            if ( ! XSDDatatype.XSDfloat.isValidLiteral(lit) )
+                return null ;
+            v = FloatNode.packFloat(Float.parseFloat(lex)) ;
+        }
+        else if ( node.getLiteralDatatype().equals(XSDDatatype.XSDgYear) )
+        {
+            if ( ! XSDDatatype.XSDgYear.isValidLiteral(lit) )
+                return null ;
+            v = DateTimeNode.packYear(lex) ;
+            if ( v != -1 )
+                v = setType(v, GYEAR) ;
+        }
+        
+        if ( v == -1 )
+            return null ;
+        NodeId nodeId = new NodeId(v) ;
+        // Only if nothing is lost.
+        if ( ! node.equals(extract(nodeId)) )
+            return null ;
+        return nodeId ;
+    }
      
     private static NodeId inline$(Node node)
     {
@@ -276,6 +349,10 @@ public class NodeId
             case DATETIME:
             case DATE:
             case BOOLEAN:
+            case SHORT_STRING:
+            case DOUBLE:
+            case FLOAT:
+            case GYEAR:
                 return true ;
             default:
                 throw new TDBException("Unrecognized node id type: "+type) ;
@@ -328,6 +405,27 @@ public class NodeId
                 if ( val == 1 ) return NodeConst.nodeTrue ;
                 throw new TDBException("Unrecognized boolean node id : "+val) ;
             }
+            case SHORT_STRING:
+            {
+                String str = StringNode.unpack(v) ;
+                return NodeFactory.createLiteral(str) ;
+            }
+            case DOUBLE:
+            {
+                double d = FloatNode.unpackDouble(v) ;
+                return NodeFactory.createLiteral(Double.toString(d), null, XSDDatatype.XSDdouble) ;
+            }
+            case FLOAT:
+            {
+                float f = FloatNode.unpackFloat(v) ;
+                return NodeFactory.createLiteral(Float.toString(f), null, XSDDatatype.XSDfloat) ;
+            }
+            case GYEAR:
+            {
+                long val = BitsLong.clear(v, 56, 64) ;
+                String lex = DateTimeNode.unpackYear(val) ;
+                return NodeFactory.createLiteral(lex, null, XSDDatatype.XSDgYear) ;
+            }
             default:
                 throw new TDBException("Unrecognized node id type: "+type) ;
         }
@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.store;
+
+import java.math.BigDecimal ;
+import java.math.BigInteger ;
+import java.math.RoundingMode ;
+import java.util.ArrayList ;
+import java.util.List ;
+
+import javax.xml.datatype.DatatypeConstants ;
+import javax.xml.datatype.XMLGregorianCalendar ;
+
+import org.apache.jena.atlas.lib.BitsLong ;
+
+/** The NodeIds of one type that may hold a value in a range of values.
+ * <p>
+ * The values of the type are split into groups by the bits from
+ * the "group bit" up to the type byte (e.g. the timezone of a dateTime,
+ * or the sign of an integer). Within one group, the order of the NodeIds
+ * is the order of the values, so the NodeIds for a range of values
+ * are one range of NodeIds for each group.
+ * <p>
+ * The ranges may include NodeIds of values outside the range of values
+ * (for example, all NodeIds that are not inline values are always included), 
+ * so the caller must still test the values. 
+ */
+public abstract class NodeIdRange
+{
+    private final int type ;
+    private final int groupBit ;
+
+    protected NodeIdRange(int type, int groupBit)
+    {
+        this.type = type ;
+        this.groupBit = groupBit ;
+    }
+    
+    /** The NodeId type */
+    public final int getType()                  { return type ; }
+    
+    /** The number of groups */ 
+    public final long numGroups()               { return 1L<<(56-groupBit) ; }
+    
+    /** The group of a NodeId of this type */
+    public final long group(NodeId nodeId)      { return BitsLong.unpack(nodeId.getId(), groupBit, 56) ; }
+    
+    /** The lowest NodeId value of a group; group numGroups() is the end of the type */
+    public final long groupStart(long group)    { return (((long)type)<<56) + (group<<groupBit) ; }
+
+    /** The NodeId values, low (inclusive) and high (exclusive), in the group that may
+     *  be in the range of values, or null for none.
+     */
+    public abstract long[] range(long group) ;
+    
+    @Override
+    public String toString()                    { return "NodeIdRange[type="+type+"]" ; }
+
+    /** The NodeIds that may be numbers in the range.  A null bound is unbounded. */
+    public static List<NodeIdRange> numeric(BigDecimal lower, boolean lowerInclusive, BigDecimal upper, boolean upperInclusive)
+    {
+        List<NodeIdRange> x = new ArrayList<NodeIdRange>() ;
+        x.add(pointers) ;
+        x.add(integers(lower, lowerInclusive, upper, upperInclusive)) ;
+        x.add(decimals(lower, lowerInclusive, upper, upperInclusive)) ;
+        // Doubles and floats compare as doubles and floats. Be generous.  
+        double dLo = ( lower == null ) ? Double.NEGATIVE_INFINITY : Math.nextAfter(lower.doubleValue(), Double.NEGATIVE_INFINITY) ;
+        double dHi = ( upper == null ) ? Double.POSITIVE_INFINITY : Math.nextAfter(upper.doubleValue(), Double.POSITIVE_INFINITY) ;
+        x.add(doubles(dLo, dHi)) ;
+        float fLo = ( lower == null ) ? Float.NEGATIVE_INFINITY : Math.nextAfter(lower.floatValue(), Double.NEGATIVE_INFINITY) ;
+        float fHi = ( upper == null ) ? Float.POSITIVE_INFINITY : Math.nextAfter(upper.floatValue(), Double.POSITIVE_INFINITY) ;
+        x.add(floats(fLo, fHi)) ;
+        return x ;
+    }
+
+    /** The NodeIds that may be xsd:dateTimes in the range.  A null bound is unbounded.
+     *  Bounds are inclusive. */
+    public static List<NodeIdRange> dateTime(XMLGregorianCalendar lower, XMLGregorianCalendar upper)
+    {
+        List<NodeIdRange> x = new ArrayList<NodeIdRange>() ;
+        x.add(pointers) ;
+        x.add(dateTimes(lower, upper)) ;
+        return x ;
+    }
+    
+    // ---- Not inline : any value.
+    
+    private static NodeIdRange pointers = new NodeIdRange(NodeId.NONE, 56) {
+        @Override
+        public long[] range(long group)
+        {
+            return new long[]{ groupStart(0), groupStart(1) } ;
+        }
+    } ;
+    
+    // ---- Integers : 56 bits, two's complement. Group on the sign bit.  
+    
+    private static NodeIdRange integers(BigDecimal lower, boolean lowerInclusive, BigDecimal upper, boolean upperInclusive)
+    {
+        final long lo = lowest(lower, lowerInclusive, IntegerNode.MIN, IntegerNode.MAX) ;
+        final long hi = highest(upper, upperInclusive, IntegerNode.MIN, IntegerNode.MAX) ;
+        return new NodeIdRange(NodeId.INTEGER, IntegerNode.LEN-1) {
+            @Override
+            public long[] range(long group)
+            {
+                long l = ( group == 0 ) ? Math.max(lo, 0) : Math.max(lo, IntegerNode.MIN) ;
+                long h = ( group == 0 ) ? Math.min(hi, IntegerNode.MAX) : Math.min(hi, -1) ;
+                if ( l > h )
+                    return null ;
+                return new long[]{ IntegerNode.pack(l), IntegerNode.pack(h)+1 } ;
+            }
+        } ;
+    }
+    
+    // ---- Decimals : 8 bits scale, 48 bits value (two's complement).  Group on scale and sign.
+
+    private static NodeIdRange decimals(final BigDecimal lower, final boolean lowerInclusive, 
+                                        final BigDecimal upper, final boolean upperInclusive)
+    {
+        return new NodeIdRange(NodeId.DECIMAL, DecimalNode.VALUE_LEN-1) {
+            @Override
+            public long[] range(long group)
+            {
+                int scale = (byte)(group>>>1) ;
+                boolean negative = ( (group & 1) != 0 ) ;
+                long lo = lowest(lower == null ? null : lower.movePointRight(scale), lowerInclusive, 
+                                 DecimalNode.MIN_VALUE, DecimalNode.MAX_VALUE) ;
+                long hi = highest(upper == null ? null : upper.movePointRight(scale), upperInclusive,
+                                  DecimalNode.MIN_VALUE, DecimalNode.MAX_VALUE) ;
+                if ( negative )
+                {
+                    lo = Math.max(lo, DecimalNode.MIN_VALUE) ;
+                    hi = Math.min(hi, -1) ;
+                }
+                else
+                {
+                    lo = Math.max(lo, 0) ;
+                    hi = Math.min(hi, DecimalNode.MAX_VALUE) ;
+                }
+                if ( lo > hi )
+                    return null ;
+                return new long[]{ DecimalNode.pack(lo, scale), DecimalNode.pack(hi, scale)+1 } ;
+            }
+        } ;
+    }
+
+    // ---- Doubles and floats : IEEE 754 bits.  Group on the sign bit; negative values are in reverse order.
+    
+    private static NodeIdRange doubles(final double lo, final double hi)
+    {
+        return new NodeIdRange(NodeId.DOUBLE, 55) {
+            @Override
+            public long[] range(long group)
+            {
+                if ( group == 0 )
+                {
+                    if ( hi < 0 )
+                        return null ;
+                    // -0.0 == +0.0
+                    long l = ( lo <= 0 ) ? 0 : Double.doubleToLongBits(lo)>>>8 ;
+                    long h = ( hi == 0 ) ? 0 : Double.doubleToLongBits(hi)>>>8 ;
+                    return new long[]{ NodeId.setType(l, NodeId.DOUBLE), NodeId.setType(h, NodeId.DOUBLE)+1 } ;
+                }
+                if ( lo > 0 )
+                    return null ;
+                long l = Double.doubleToLongBits(Math.min(hi, -0.0d))>>>8 ;
+                long h = Double.doubleToLongBits(Math.min(lo, -0.0d))>>>8 ;
+                return new long[]{ NodeId.setType(l, NodeId.DOUBLE), NodeId.setType(h, NodeId.DOUBLE)+1 } ;
+            }
+        } ;
+    }
+
+    private static NodeIdRange floats(final float lo, final float hi)
+    {
+        return new NodeIdRange(NodeId.FLOAT, 31) {
+            @Override
+            public long[] range(long group)
+            {
+                if ( group == 0 )
+                {
+                    if ( hi < 0 )
+                        return null ;
+                    long l = ( lo <= 0 ) ? 0 : Float.floatToIntBits(lo) & 0xFFFFFFFFL ;
+                    long h = ( hi == 0 ) ? 0 : Float.floatToIntBits(hi) & 0xFFFFFFFFL ;
+                    return new long[]{ NodeId.setType(l, NodeId.FLOAT), NodeId.setType(h, NodeId.FLOAT)+1 } ;
+                }
+                if ( group != 1 || lo > 0 )
+                    return null ;
+                long l = Float.floatToIntBits(Math.min(hi, -0.0f)) & 0xFFFFFFFFL ;
+                long h = Float.floatToIntBits(Math.min(lo, -0.0f)) & 0xFFFFFFFFL ;
+                return new long[]{ NodeId.setType(l, NodeId.FLOAT), NodeId.setType(h, NodeId.FLOAT)+1 } ;
+            }
+        } ;
+    }
+    
+    // ---- DateTimes : timezone, then local date and time.  Group on the timezone.
+
+    // Comparing with and without a timezone is determinate outside 14 hours.
+    private static final int MaxTZ = 14*60 ;
+    
+    private static NodeIdRange dateTimes(final XMLGregorianCalendar lower, final XMLGregorianCalendar upper)
+    {
+        return new NodeIdRange(NodeId.DATETIME, DateTimeNode.TZ) {
+            @Override
+            public long[] range(long group)
+            {
+                int tz = (int)group ;
+                long lo = groupStart(group) ;
+                long hi = groupStart(group+1) ;
+                if ( lower != null )
+                {
+                    long v = localTime(lower, tz, false) ;
+                    if ( v == Long.MAX_VALUE )
+                        return null ;
+                    if ( v != Long.MIN_VALUE )
+                        lo = NodeId.setType(DateTimeNode.tz(v, tz), NodeId.DATETIME) ;
+                }
+                if ( upper != null )
+                {
+                    long v = localTime(upper, tz, true) ;
+                    if ( v == Long.MIN_VALUE )
+                        return null ;
+                    if ( v != Long.MAX_VALUE )
+                        hi = NodeId.setType(DateTimeNode.tz(v, tz), NodeId.DATETIME)+1 ;
+                }
+                if ( lo >= hi )
+                    return null ;
+                return new long[]{ lo, hi } ;
+            }
+        } ;
+    }
+
+    /** The packed local date and time (no timezone, no type) of the bound, as seen in
+     *  timezone "tz", widened where the comparison is indeterminate.
+     *  Long.MIN_VALUE or Long.MAX_VALUE if before or after the years that can be inlined.
+     */
+    private static long localTime(XMLGregorianCalendar bound, int tz, boolean upper)
+    {
+        XMLGregorianCalendar x = bound ;
+        int widen = 0 ;
+        if ( x.getTimezone() == DatatypeConstants.FIELD_UNDEFINED )
+            widen = MaxTZ ;
+        else
+            x = x.normalize() ;
+        
+        int shift = 0 ;
+        if ( tz == DateTimeNode.TZ_NONE )
+            // Also -00:30
+            widen = MaxTZ ;
+        else if ( tz == DateTimeNode.TZ_Z )
+            // Also -00:15
+            widen = Math.max(widen, 15) ;
+        else
+            shift = ( ( tz & 0x40 ) != 0 ? tz-0x80 : tz ) * 15 ; 
+        
+        int minutes = upper ? shift+widen : shift-widen ;
+        if ( minutes != 0 )
+        {
+            x = (XMLGregorianCalendar)x.clone() ;
+            x.add(DateTimeNode.datatypeFactory.newDuration(minutes*60*1000L)) ;
+        }
+        if ( x.getYear() < 0 )
+            return Long.MIN_VALUE ;
+        if ( x.getYear() >= 8000 )
+            return Long.MAX_VALUE ;
+        int millis = ( x.getMillisecond() == DatatypeConstants.FIELD_UNDEFINED ) ? 0 : x.getMillisecond() ;
+        long v = DateTimeNode.date(0, x.getYear(), x.getMonth(), x.getDay()) ;
+        v = DateTimeNode.time(v, x.getHour(), x.getMinute(), x.getSecond()*1000+millis) ;
+        return v ;
+    }
+
+    // ---- Integer bounds : below min is min-1, above max is max+1.
+
+    private static long lowest(BigDecimal x, boolean inclusive, long min, long max)
+    {
+        if ( x == null )
+            return min ;
+        BigInteger v = inclusive ? x.setScale(0, RoundingMode.CEILING).toBigIntegerExact() 
+                                 : x.setScale(0, RoundingMode.FLOOR).toBigIntegerExact().add(BigInteger.ONE) ;
+        return clamp(v, min, max) ;
+    }
+    
+    private static long highest(BigDecimal x, boolean inclusive, long min, long max)
+    {
+        if ( x == null )
+            return max ;
+        BigInteger v = inclusive ? x.setScale(0, RoundingMode.FLOOR).toBigIntegerExact() 
+                                 : x.setScale(0, RoundingMode.CEILING).toBigIntegerExact().subtract(BigInteger.ONE) ;
+        return clamp(v, min, max) ;
+    }
+    
+    private static long clamp(BigInteger v, long min, long max)
+    {
+        if ( v.compareTo(BigInteger.valueOf(min)) < 0 )
+            return min-1 ;
+        if ( v.compareTo(BigInteger.valueOf(max)) > 0 )
+            return max+1 ;
+        return v.longValue() ;
+    }
+}
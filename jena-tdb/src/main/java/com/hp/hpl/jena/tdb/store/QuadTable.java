@@ -28,10 +28,13 @@ import org.apache.jena.atlas.lib.Tuple ;
 import com.hp.hpl.jena.graph.Node ;
 import com.hp.hpl.jena.graph.Triple ;
 import com.hp.hpl.jena.sparql.core.Quad ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.base.file.MetaFile ;
 import com.hp.hpl.jena.tdb.index.TupleIndex ;
 import com.hp.hpl.jena.tdb.lib.TupleLib ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
 import com.hp.hpl.jena.tdb.sys.DatasetControl ;
+import com.hp.hpl.jena.tdb.sys.Names ;
 
 
 /** Quad table - a collection of TupleIndexes for 4-tuples
@@ -40,10 +43,24 @@ import com.hp.hpl.jena.tdb.sys.DatasetControl ;
 
 public class QuadTable extends TableBase
 {
+    private final TripleTable unionTable ;
+    
     public QuadTable(TupleIndex[] indexes, NodeTable nodeTable, DatasetControl policy)
     {
         super(4, indexes, nodeTable, policy);
+        unionTable = null ;
+    }
+
+    /** Quad table that maintains the union of its named graphs in a triple table.
+     *  The tuple table is a {@link TupleTableUnion} over the tuple table of the union table. */
+    public QuadTable(TupleTableUnion tupleTable, TripleTable unionTable, NodeTable nodeTable, DatasetControl policy)
+    {
+        super(tupleTable, nodeTable, policy) ;
+        this.unionTable = unionTable ;
     }
+    
+    /** The union of the named graphs as triples, or null if it is not maintained */ 
+    public TripleTable getUnionTable()      { return unionTable ; }
 
     /** Add a quad - return true if it was added, false if it already existed */
     public boolean add( Quad quad ) 
@@ -101,4 +118,35 @@ public class QuadTable extends TableBase
     /** Clear - does not clear the associated node tuple table */
     public void clearQuads()
     { table.clear() ; }
+    
+    /** Whether the database at the location maintains the union of named graphs as triples. */
+    public static boolean hasUnionIndex(Location location)
+    {
+        if ( location == null )
+            return false ;
+        return location.getMetaFile().getProperty(Names.kUnionIndex, "false").equals("true") ;
+    }
+    
+    /**
+     * Set whether a new database at the location maintains the union of named graphs.
+     * An existing database keeps the setting it was created with.
+     * Returns the setting in use.
+     */
+    public static boolean initUnionIndex(Location location, boolean unionIndex)
+    {
+        if ( location == null )
+            return false ;
+        MetaFile mf = location.getMetaFile() ;
+        if ( mf.hasProperty(Names.kUnionIndex) )
+            return hasUnionIndex(location) ;
+        if ( ! unionIndex )
+            // Not maintained is the default when not recorded.
+            return false ;
+        if ( ! location.isMem() && location.exists(Names.indexId2Node, Names.extNodeData) )
+            // Existing database: the union index would start empty.
+            return false ;
+        mf.setProperty(Names.kUnionIndex, "true") ;
+        mf.flush() ;
+        return true ;
+    }
 }
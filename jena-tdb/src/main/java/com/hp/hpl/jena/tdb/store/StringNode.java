@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.store;
+
+import org.apache.jena.atlas.lib.StrUtils ;
+
+/** Inline short strings: up to 7 bytes of UTF-8, not including a zero byte. */
+public class StringNode
+{
+    public static final int MAXLEN = 7 ;
+    
+    // First byte in bits 48-55 and so on; unused bytes are zero.
+    public static long pack(String str)
+    {
+        if ( str.length() > MAXLEN )
+            return -1 ;
+        byte[] b = StrUtils.asUTF8bytes(str) ;
+        if ( b.length > MAXLEN )
+            return -1 ;
+        long v = 0 ;
+        for ( int i = 0 ; i < MAXLEN ; i++ )
+        {
+            int x = 0 ;
+            if ( i < b.length )
+            {
+                x = b[i] & 0xFF ;
+                if ( x == 0 )
+                    return -1 ;
+            }
+            v = (v << 8) | x ;
+        }
+        return NodeId.setType(v, NodeId.SHORT_STRING) ;
+    }
+    
+    public static String unpack(long v)
+    {
+        byte[] b = new byte[MAXLEN] ;
+        int len = 0 ;
+        for ( ; len < MAXLEN ; len++ )
+        {
+            int x = (int)((v >>> (8*(MAXLEN-1-len))) & 0xFF) ;
+            if ( x == 0 )
+                break ;
+            b[len] = (byte)x ;
+        }
+        byte[] b2 = new byte[len] ;
+        System.arraycopy(b, 0, b2, 0, len) ;
+        return StrUtils.fromUTF8bytes(b2) ;
+    }
+}
@@ -22,6 +22,7 @@ import org.apache.jena.atlas.lib.Closeable ;
 import org.apache.jena.atlas.lib.Sync ;
 
 import com.hp.hpl.jena.tdb.index.TupleIndex ;
+import com.hp.hpl.jena.tdb.index.TupleTable ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTupleTable ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTupleTableConcrete ;
@@ -35,6 +36,11 @@ public class TableBase implements Sync, Closeable
     {
         table = new NodeTupleTableConcrete(N, indexes, nodeTable, policy) ;
     }
+    
+    protected TableBase(TupleTable tupleTable, NodeTable nodeTable, DatasetControl policy)
+    {
+        table = new NodeTupleTableConcrete(tupleTable, nodeTable, policy) ;
+    }
 
     public NodeTupleTable getNodeTupleTable()   { return table ; }
     public DatasetControl getPolicy()           { return table.getPolicy() ; }
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.store;
+
+import java.util.Iterator ;
+
+import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.lib.Tuple ;
+
+import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.index.TupleIndex ;
+import com.hp.hpl.jena.tdb.index.TupleTable ;
+
+/** A quad TupleTable that also maintains the union of its graphs as a triple TupleTable.
+ *  A triple is in the union while at least one graph contains it:
+ *  it is added with its first quad, and removed when deleting a quad leaves
+ *  no other graph with the triple.
+ */
+public class TupleTableUnion extends TupleTable
+{
+    private final TupleTable union ;
+    // Slot in a quad tuple for each slot of a triple tuple, and the graph slot.
+    private final int[] tripleSlots ;
+    private final int graphSlot ;
+
+    /**
+     * @param quadIndexes   Indexes of the quads
+     * @param primaryQuads  Column order of quad tuples e.g. "GSPO"
+     * @param union         Triple table for the union
+     * @param primaryTriples Column order of triple tuples e.g. "SPO"
+     */
+    public TupleTableUnion(TupleIndex[] quadIndexes, String primaryQuads, TupleTable union, String primaryTriples)
+    {
+        super(4, quadIndexes) ;
+        if ( union.getTupleLen() != 3 )
+            throw new TDBException("Union table is not a table of triples") ;
+        this.union = union ;
+        this.graphSlot = primaryQuads.indexOf('G') ;
+        this.tripleSlots = new int[3] ;
+        for ( int i = 0 ; i < 3 ; i++ )
+        {
+            tripleSlots[i] = primaryQuads.indexOf(primaryTriples.charAt(i)) ;
+            if ( tripleSlots[i] < 0 || graphSlot < 0 )
+                throw new TDBException("Incompatible quad and triple orders: "+primaryQuads+" "+primaryTriples) ;
+        }
+    }
+    
+    public TupleTable getUnion()    { return union ; }
+
+    @Override
+    public boolean add(Tuple<NodeId> t)
+    {
+        if ( ! super.add(t) )
+            return false ;
+        // False if another graph already has the triple.
+        union.add(triple(t)) ;
+        return true ;
+    }
+
+    @Override
+    public boolean delete(Tuple<NodeId> t)
+    {
+        if ( ! super.delete(t) )
+            return false ;
+        // Is the triple still in some other graph?
+        NodeId[] pattern = new NodeId[4] ;
+        for ( int i = 0 ; i < 4 ; i++ )
+            pattern[i] = ( i == graphSlot ) ? NodeId.NodeIdAny : t.get(i) ;
+        Iterator<Tuple<NodeId>> iter = super.find(Tuple.create(pattern)) ;
+        boolean inOtherGraph ;
+        try { inOtherGraph = iter.hasNext() ; }
+        finally { Iter.close(iter) ; }
+        if ( ! inOtherGraph )
+            union.delete(triple(t)) ;
+        return true ;
+    }
+    
+    private Tuple<NodeId> triple(Tuple<NodeId> quad)
+    {
+        return Tuple.createTuple(quad.get(tripleSlots[0]), quad.get(tripleSlots[1]), quad.get(tripleSlots[2])) ;
+    }
+
+    @Override
+    public void clear()
+    {
+        super.clear() ;
+        union.clear() ;
+    }
+
+    @Override
+    public void sync()
+    {
+        super.sync() ;
+        union.sync() ;
+    }
+
+    @Override
+    public void close()
+    {
+        super.close() ;
+        union.close() ;
+    }
+}
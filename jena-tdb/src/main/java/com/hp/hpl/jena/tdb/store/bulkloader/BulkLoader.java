@@ -35,11 +35,13 @@ import com.hp.hpl.jena.sparql.core.Quad ;
 import com.hp.hpl.jena.sparql.util.Utils ;
 import com.hp.hpl.jena.tdb.TDB ;
 import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTupleTable ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTupleTableView ;
 import com.hp.hpl.jena.tdb.solver.stats.Stats ;
 import com.hp.hpl.jena.tdb.solver.stats.StatsCollector ;
 import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
 import com.hp.hpl.jena.tdb.sys.Names ;
 
 /** Overall framework for bulk loading */
@@ -54,6 +56,13 @@ public class BulkLoader {
     /** Number of ticks per super tick */
     public static int       superTick             = 10 ;
 
+    /**
+     * Number of threads looking up nodes when the data phase is pipelined
+     * (see {@link NodeIdPipeline}); 0 means no pipeline - nodes are converted
+     * to NodeIds on the parser thread.
+     */
+    public static int       PipelineThreads       = 0 ;
+
     // Events.
     // private static String baseNameGeneral = "http://openjena.org/TDB/event#"
     // ;
@@ -191,6 +200,7 @@ public class BulkLoader {
         final private boolean              showProgress ;
         private long                       count = 0 ;
         private StatsCollector             stats ;
+        private NodeIdPipeline             pipeline = null ;
 
         DestinationDSG(final DatasetGraphTDB dsg, boolean showProgress) {
             this.dsg = dsg ;
@@ -201,6 +211,20 @@ public class BulkLoader {
             loaderTriples = new LoaderNodeTupleTable(dsg.getTripleTable().getNodeTupleTable(), "triples", monitor1) ;
             loaderQuads = new LoaderNodeTupleTable(dsg.getQuadTable().getNodeTupleTable(), "quads", monitor2) ;
             this.showProgress = showProgress ;
+            NodeTable nodeTable = dsg.getTripleTable().getNodeTupleTable().getNodeTable() ;
+            // One pipeline, so only if triples and quads share a node table.
+            if ( PipelineThreads > 0 && nodeTable == dsg.getQuadTable().getNodeTupleTable().getNodeTable() ) {
+                NodeIdPipeline.Output output = new NodeIdPipeline.Output() {
+                    @Override
+                    public void row(NodeId[] ids) {
+                        if ( ids.length == 3 )
+                            loaderTriples.load(ids) ;
+                        else
+                            loaderQuads.load(ids) ;
+                    }
+                } ;
+                pipeline = new NodeIdPipeline(nodeTable, output, PipelineThreads) ;
+            }
         }
 
         @Override
@@ -211,6 +235,8 @@ public class BulkLoader {
             loaderTriples.loadDataStart() ;
             loaderQuads.loadDataStart() ;
             this.stats = new StatsCollector() ;
+            if ( pipeline != null )
+                pipeline.start() ;
         }
 
         @Override
@@ -234,7 +260,13 @@ public class BulkLoader {
         }
 
         private void process(Node g, Node s, Node p, Node o) {
-            if ( g == null )
+            if ( pipeline != null ) {
+                if ( g == null )
+                    pipeline.add(s, p, o) ;
+                else
+                    pipeline.add(g, s, p, o) ;
+            }
+            else if ( g == null )
                 loaderTriples.load(s, p, o) ;
             else
                 loaderQuads.load(g, s, p, o) ;
@@ -244,6 +276,8 @@ public class BulkLoader {
 
         @Override
         public void finishBulk() {
+            if ( pipeline != null )
+                pipeline.finish() ;
             loaderTriples.loadDataFinish() ;
             loaderQuads.loadDataFinish() ;
 
@@ -291,6 +325,7 @@ public class BulkLoader {
         final private boolean              startedEmpty ;
         private long                       count = 0 ;
         private StatsCollector             stats ;
+        private NodeIdPipeline             pipeline = null ;
 
         // Graph node is null for default graph.
         DestinationGraph(final DatasetGraphTDB dsg, Node graphNode, boolean showProgress) {
@@ -308,6 +343,15 @@ public class BulkLoader {
             startedEmpty = dsg.isEmpty() ;
             monitor = createLoadMonitor(dsg, "triples", showProgress) ;
             loaderTriples = new LoaderNodeTupleTable(nodeTupleTable, "triples", monitor) ;
+            if ( PipelineThreads > 0 ) {
+                NodeIdPipeline.Output output = new NodeIdPipeline.Output() {
+                    @Override
+                    public void row(NodeId[] ids) {
+                        loaderTriples.load(ids) ;
+                    }
+                } ;
+                pipeline = new NodeIdPipeline(nodeTupleTable.getNodeTable(), output, PipelineThreads) ;
+            }
         }
 
         @Override
@@ -316,6 +360,8 @@ public class BulkLoader {
             loaderTriples.loadDataStart() ;
 
             this.stats = new StatsCollector() ;
+            if ( pipeline != null )
+                pipeline.start() ;
         }
 
         @Override
@@ -324,13 +370,21 @@ public class BulkLoader {
             Node p = triple.getPredicate() ;
             Node o = triple.getObject() ;
 
-            loaderTriples.load(s, p, o) ;
+            if ( pipeline == null )
+                loaderTriples.load(s, p, o) ;
+            else if ( graphName == null || Quad.isDefaultGraph(graphName) )
+                pipeline.add(s, p, o) ;
+            else
+                // The row for the NodeTupleTableView.
+                pipeline.add(graphName, s, p, o) ;
             stats.record(null, s, p, o) ;
             count++ ;
         }
 
         @Override
         final public void finishBulk() {
+            if ( pipeline != null )
+                pipeline.finish() ;
             loaderTriples.loadDataFinish() ;
             loaderTriples.loadIndexStart() ;
             loaderTriples.loadIndexFinish() ;
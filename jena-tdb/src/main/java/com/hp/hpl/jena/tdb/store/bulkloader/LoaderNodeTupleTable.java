@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory ;
 import com.hp.hpl.jena.graph.Node ;
 import com.hp.hpl.jena.tdb.index.TupleIndex ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTupleTable ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsDelta ;
 import com.hp.hpl.jena.tdb.store.NodeId ;
 
 /** 
@@ -48,6 +49,7 @@ public class LoaderNodeTupleTable implements Closeable, Sync
     private NodeTupleTable nodeTupleTable ;
     
     private boolean dropAndRebuildIndexes ;
+    private StatsDelta stats = null ;
     //private Timer timer ;
     private long count = 0 ;
     private String itemsName ;
@@ -96,6 +98,9 @@ public class LoaderNodeTupleTable implements Closeable, Sync
     public void loadDataStart()
     {
         monitor.startDataPhase() ;
+        // Don't record statistics row by row - recalculate them at the end.
+        stats = nodeTupleTable.getTupleTable().getStats() ;
+        nodeTupleTable.getTupleTable().setStats(null) ;
         loadPrepare() ;
     }
     
@@ -107,6 +112,14 @@ public class LoaderNodeTupleTable implements Closeable, Sync
         nodeTupleTable.addRow(nodes) ;  
     }
     
+    /** Stream in items to load, already converted to NodeIds (for a view, including the view prefix). */
+    public void load(NodeId... ids)
+    {
+        count++ ;
+        monitor.dataItem() ;
+        nodeTupleTable.getTupleTable().add(Tuple.create(ids)) ;
+    }
+    
     /** Notify End of data to load - this operation may 
      * undertake a significant amount of work.
      */
@@ -129,6 +142,13 @@ public class LoaderNodeTupleTable implements Closeable, Sync
     {
         if ( count > 0 )
             monitor.finishIndexPhase() ;
+        if ( stats != null )
+        {
+            nodeTupleTable.getTupleTable().setStats(stats) ;
+            if ( count > 0 )
+                stats.invalidate() ;
+            stats = null ;
+        }
     }
     
     
@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.store.bulkloader;
+
+import java.util.ArrayList ;
+import java.util.HashMap ;
+import java.util.HashSet ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.Set ;
+import java.util.concurrent.ArrayBlockingQueue ;
+import java.util.concurrent.BlockingQueue ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.ExecutionException ;
+import java.util.concurrent.ExecutorService ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.Future ;
+import java.util.concurrent.TimeUnit ;
+import java.util.concurrent.atomic.AtomicReference ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+
+/**
+ * Pipelined conversion of rows of Nodes into rows of NodeIds for bulk loading.
+ * <p>
+ * The caller (normally the parser) adds rows, which are passed in batches
+ * through bounded queues to:
+ * <ul>
+ * <li>resolver threads, which look up nodes in a concurrent node-to-NodeId
+ * map, shared by all the threads, then probe the {@link NodeTable} for the
+ * nodes not in the map (hashing and index lookup), and collect the distinct
+ * nodes that are not in the node table;</li>
+ * <li>a single allocation thread, which allocates NodeIds for those nodes
+ * as one batch ({@link NodeTable#getAllocateNodeIds}), so new nodes are
+ * written to the object file together, and adds them to the map;</li>
+ * <li>a single output thread, which sends each row of NodeIds to the
+ * {@link Output}.</li>
+ * </ul>
+ * Rows are output in batches in the order that the resolver threads finish them,
+ * not necessarily the order they were added.
+ */
+public class NodeIdPipeline
+{
+    /** Receiver of rows of NodeIds; called on the output thread only. */
+    public interface Output
+    {
+        public void row(NodeId[] ids) ;
+    }
+
+    private static final int BatchSize = 1000 ;
+    private static final int QueueDepth = 8 ;
+    // The map is emptied when it reaches this size (the node table has its own caches).
+    private static final int MapSize = 1000*1000 ;
+
+    private static final Batch endMarker = new Batch(new ArrayList<Node[]>(0)) ;
+
+    private final NodeTable nodeTable ;
+    private final Output output ;
+    private final int numResolvers ;
+    private final Map<Node, NodeId> map ;
+
+    private final BlockingQueue<Batch> parsed ;
+    private final BlockingQueue<Batch> resolved ;
+    private final BlockingQueue<Batch> allocated ;
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>(null) ;
+
+    private ExecutorService executor = null ;
+    private List<Future<?>> stages = null ;
+    private List<Node[]> current = null ;
+
+    /**
+     * @param nodeTable     Node table to allocate NodeIds in.
+     * @param output        Where the rows of NodeIds go.
+     * @param numResolvers  Number of resolver threads.
+     */
+    public NodeIdPipeline(NodeTable nodeTable, Output output, int numResolvers)
+    {
+        if ( numResolvers < 1 )
+            throw new IllegalArgumentException("Number of resolver threads: "+numResolvers) ;
+        this.nodeTable = nodeTable ;
+        this.output = output ;
+        this.numResolvers = numResolvers ;
+        this.map = new ConcurrentHashMap<Node, NodeId>(10000, 0.75f, Math.max(16, 4*numResolvers)) ;
+        this.parsed = new ArrayBlockingQueue<Batch>(QueueDepth*numResolvers) ;
+        this.resolved = new ArrayBlockingQueue<Batch>(QueueDepth*numResolvers) ;
+        this.allocated = new ArrayBlockingQueue<Batch>(QueueDepth) ;
+    }
+
+    /** Start the pipeline threads. */
+    public void start()
+    {
+        if ( executor != null )
+            throw new TDBException("NodeIdPipeline already started") ;
+        executor = Executors.newFixedThreadPool(numResolvers+2) ;
+        stages = new ArrayList<Future<?>>() ;
+        for ( int i = 0 ; i < numResolvers ; i++ )
+            stages.add(executor.submit(new Resolver())) ;
+        stages.add(executor.submit(new Allocator())) ;
+        stages.add(executor.submit(new Emitter())) ;
+        current = new ArrayList<Node[]>(BatchSize) ;
+    }
+
+    /** Add a row (triple or quad) of nodes. */
+    public void add(Node... row)
+    {
+        current.add(row) ;
+        if ( current.size() >= BatchSize )
+        {
+            put(parsed, new Batch(current)) ;
+            current = new ArrayList<Node[]>(BatchSize) ;
+        }
+    }
+
+    /** Finish adding rows: wait until all rows have been output. */
+    public void finish()
+    {
+        try {
+            if ( current.size() > 0 )
+                put(parsed, new Batch(current)) ;
+            current = null ;
+            for ( int i = 0 ; i < numResolvers ; i++ )
+                put(parsed, endMarker) ;
+            for ( Future<?> f : stages )
+            {
+                try { f.get() ; }
+                catch (InterruptedException ex) { throw new TDBException(ex) ; }
+                catch (ExecutionException ex)   { failed(ex.getCause()) ; }
+            }
+            checkFailure() ;
+        } finally {
+            executor.shutdownNow() ;
+            executor = null ;
+        }
+    }
+
+    private void failed(Throwable th)
+    {
+        failure.compareAndSet(null, th) ;
+    }
+
+    private void checkFailure()
+    {
+        Throwable th = failure.get() ;
+        if ( th == null )
+            return ;
+        if ( th instanceof RuntimeException )
+            throw (RuntimeException)th ;
+        if ( th instanceof Error )
+            throw (Error)th ;
+        throw new TDBException("Pipeline failed", th) ;
+    }
+
+    // Put, giving up if some other stage has failed.
+    private void put(BlockingQueue<Batch> queue, Batch batch)
+    {
+        try {
+            while ( ! queue.offer(batch, 100, TimeUnit.MILLISECONDS) )
+                checkFailure() ;
+        } catch (InterruptedException ex) { throw new TDBException(ex) ; }
+    }
+
+    private Batch take(BlockingQueue<Batch> queue)
+    {
+        try {
+            for ( ;; )
+            {
+                Batch b = queue.poll(100, TimeUnit.MILLISECONDS) ;
+                if ( b != null )
+                    return b ;
+                checkFailure() ;
+            }
+        } catch (InterruptedException ex) { throw new TDBException(ex) ; }
+    }
+
+    private static final class Batch
+    {
+        final List<Node[]> rows ;
+        NodeId[][] ids = null ;
+        List<Node> missing = null ;
+
+        Batch(List<Node[]> rows) { this.rows = rows ; }
+    }
+
+    private abstract class Stage implements Runnable
+    {
+        @Override
+        public final void run()
+        {
+            try { exec() ; }
+            catch (Throwable th) { failed(th) ; }
+        }
+
+        protected abstract void exec() ;
+    }
+
+    /** Look up nodes in the map, then in the node table; collect the distinct nodes not found. */
+    private class Resolver extends Stage
+    {
+        @Override
+        protected void exec()
+        {
+            for ( ;; )
+            {
+                Batch batch = take(parsed) ;
+                if ( batch == endMarker )
+                {
+                    put(resolved, endMarker) ;
+                    return ;
+                }
+                NodeId[][] ids = new NodeId[batch.rows.size()][] ;
+                Set<Node> missing = new HashSet<Node>() ;
+                List<Node> missingList = new ArrayList<Node>() ;
+                for ( int i = 0 ; i < ids.length ; i++ )
+                {
+                    Node[] row = batch.rows.get(i) ;
+                    NodeId[] x = new NodeId[row.length] ;
+                    for ( int j = 0 ; j < row.length ; j++ )
+                    {
+                        x[j] = map.get(row[j]) ;
+                        if ( x[j] == null && missing.add(row[j]) )
+                            missingList.add(row[j]) ;
+                    }
+                    ids[i] = x ;
+                }
+                // Probe the node table for the nodes not in the map.
+                // Only nodes that are new, or became new since the probe, go to the allocator.
+                List<Node> newNodes = new ArrayList<Node>() ;
+                Map<Node, NodeId> found = new HashMap<Node, NodeId>() ;
+                for ( Node n : missingList )
+                {
+                    NodeId id = nodeTable.getNodeIdForNode(n) ;
+                    if ( NodeId.isDoesNotExist(id) )
+                        newNodes.add(n) ;
+                    else
+                    {
+                        map.put(n, id) ;
+                        found.put(n, id) ;
+                    }
+                }
+                if ( ! found.isEmpty() )
+                {
+                    for ( int i = 0 ; i < ids.length ; i++ )
+                    {
+                        NodeId[] x = ids[i] ;
+                        for ( int j = 0 ; j < x.length ; j++ )
+                        {
+                            if ( x[j] == null )
+                                x[j] = found.get(batch.rows.get(i)[j]) ;
+                        }
+                    }
+                }
+                missingList = newNodes ;
+                batch.ids = ids ;
+                batch.missing = missingList ;
+                put(resolved, batch) ;
+            }
+        }
+    }
+
+    /** Allocate NodeIds for new nodes, one batch at a time, in one thread. */
+    private class Allocator extends Stage
+    {
+        @Override
+        protected void exec()
+        {
+            int finished = 0 ;
+            for ( ;; )
+            {
+                Batch batch = take(resolved) ;
+                if ( batch == endMarker )
+                {
+                    finished++ ;
+                    if ( finished == numResolvers )
+                    {
+                        put(allocated, endMarker) ;
+                        return ;
+                    }
+                    continue ;
+                }
+                if ( batch.missing.isEmpty() )
+                {
+                    put(allocated, batch) ;
+                    continue ;
+                }
+                if ( map.size() > MapSize )
+                    map.clear() ;
+                Map<Node, NodeId> batchIds = new HashMap<Node, NodeId>() ;
+                List<Node> toAllocate = new ArrayList<Node>(batch.missing.size()) ;
+                for ( Node n : batch.missing )
+                {
+                    NodeId id = map.get(n) ;
+                    if ( id == null )
+                        toAllocate.add(n) ;
+                    else
+                        batchIds.put(n, id) ;
+                }
+                if ( ! toAllocate.isEmpty() )
+                {
+                    NodeId[] x = nodeTable.getAllocateNodeIds(toAllocate) ;
+                    for ( int i = 0 ; i < x.length ; i++ )
+                    {
+                        map.put(toAllocate.get(i), x[i]) ;
+                        batchIds.put(toAllocate.get(i), x[i]) ;
+                    }
+                }
+                for ( int i = 0 ; i < batch.ids.length ; i++ )
+                {
+                    NodeId[] x = batch.ids[i] ;
+                    for ( int j = 0 ; j < x.length ; j++ )
+                    {
+                        if ( x[j] == null )
+                            x[j] = batchIds.get(batch.rows.get(i)[j]) ;
+                    }
+                }
+                put(allocated, batch) ;
+            }
+        }
+    }
+
+    /** Send rows of NodeIds to the output, in one thread. */
+    private class Emitter extends Stage
+    {
+        @Override
+        protected void exec()
+        {
+            for ( ;; )
+            {
+                Batch batch = take(allocated) ;
+                if ( batch == endMarker )
+                    return ;
+                for ( NodeId[] row : batch.ids )
+                    output.row(row) ;
+            }
+        }
+    }
+}
@@ -49,9 +49,9 @@ public class CmdIndexBuild
         CmdTDB.init() ;
         // DATA IN S/P/O columns but sorted by index order.
         
-        if ( argv.length != 3 )
+        if ( argv.length != 3 && argv.length != 4 )
         {
-            System.err.println("Usage: Location Index dataFile") ;
+            System.err.println("Usage: Location Index dataFile [indexFile]") ;
             System.exit(1) ;
         }
         
@@ -66,6 +66,8 @@ public class CmdIndexBuild
 //        }
             
         String dataFile = argv[2] ;
+        // The index files, if not named after the index (e.g. the union of graphs).
+        String indexFile = ( argv.length == 4 ) ? argv[3] : indexName ;
         
         // Argument processing
         
@@ -74,30 +76,49 @@ public class CmdIndexBuild
         //InputStream input = System.in ;
         InputStream input = IO.openFile(dataFile) ;
         
-        int keyLength = SystemTDB.SizeOfNodeId * indexName.length() ;
-        int valueLength = 0 ;
-        
-        // The name is the order.
-        String primary = indexName ;  
-        
+        int rowBlock = 1000 ;
+        Iterator<Record> iter = new RecordsFromInput(input, indexName.length(), columnMap(indexName), rowBlock) ;
+        buildIndex(location, indexName, indexFile, iter) ;
+    }
+    
+    /** The column map from the data file order (S/P/O or G/S/P/O) to the order of the named index. */
+    public static ColumnMap columnMap(String indexName)
+    {
+        int tupleLength = indexName.length() ;
+        String primaryOrder ;
+        if ( tupleLength == 3 )
+            primaryOrder = Names.primaryIndexTriples ;
+        else if ( tupleLength == 4 )
+            primaryOrder = Names.primaryIndexQuads ;
+        else
+            throw new AtlasException("Index name: "+indexName) ;
+        return new ColumnMap(primaryOrder, indexName) ;
+    }
+    
+    /** Build a (packed) index from records that are already in index order. */
+    public static void buildIndex(Location location, String indexName, Iterator<Record> iter)
+    {
+        buildIndex(location, indexName, indexName, iter) ;
+    }
+    
+    /** Build a (packed) index, in the files named by indexFile, from records that are already in index order. */
+    public static void buildIndex(Location location, String indexName, String indexFile, Iterator<Record> iter)
+    {
         // Scope for optimization:
         // Null column map => no churn.
         // Do record -> record copy, not Tuple, Tuple copy.
 
-        String primaryOrder ;
         int dftKeyLength ;
         int dftValueLength ;
         int tupleLength = indexName.length() ;
 
         if ( tupleLength == 3 )
         {
-            primaryOrder = Names.primaryIndexTriples ;
             dftKeyLength = SystemTDB.LenIndexTripleRecord ;
             dftValueLength = 0 ;
         }
         else if ( tupleLength == 4 )
         {
-            primaryOrder = Names.primaryIndexQuads ;
             dftKeyLength = SystemTDB.LenIndexQuadRecord ;
             dftValueLength = 0 ;
         }
@@ -106,9 +127,6 @@ public class CmdIndexBuild
             throw new AtlasException("Index name: "+indexName) ;
         }
         
-        ColumnMap colMap = new ColumnMap(primaryOrder, indexName) ;
-
-
         // -1? Write only.
         // Also flush cache every so often => block writes (but not sequential so boring).
         int readCacheSize = 10 ;
@@ -123,13 +141,11 @@ public class CmdIndexBuild
         int blockSizeNodes = blockSize ;
         int blockSizeRecords = blockSize ;
 
-        FileSet destination = new FileSet(location, indexName) ;
+        FileSet destination = new FileSet(location, indexFile) ;
 
         BlockMgr blkMgrNodes = BlockMgrFactory.create(destination, Names.bptExtTree, blockSizeNodes, readCacheSize, writeCacheSize) ;
         BlockMgr blkMgrRecords = BlockMgrFactory.create(destination, Names.bptExtRecords, blockSizeRecords, readCacheSize, writeCacheSize) ;
         
-        int rowBlock = 1000 ;
-        Iterator<Record> iter = new RecordsFromInput(input, tupleLength, colMap, rowBlock) ;
         BPlusTree bpt2 = BPlusTreeRewriter.packIntoBPlusTree(iter, bptParams, recordFactory, blkMgrNodes, blkMgrRecords) ;
         bpt2.close() ;
     }
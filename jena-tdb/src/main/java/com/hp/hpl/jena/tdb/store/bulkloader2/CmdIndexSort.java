@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.store.bulkloader2;
+
+import java.io.File ;
+import java.io.InputStream ;
+import java.util.ArrayList ;
+import java.util.Iterator ;
+import java.util.List ;
+import java.util.concurrent.Callable ;
+import java.util.concurrent.ExecutionException ;
+import java.util.concurrent.ExecutorService ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.Future ;
+
+import org.apache.jena.atlas.io.IO ;
+import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.iterator.Transform ;
+import org.apache.jena.atlas.lib.ColumnMap ;
+import org.apache.jena.atlas.lib.FileOps ;
+import org.apache.jena.atlas.logging.LogCtl ;
+import org.slf4j.Logger ;
+import tdb.cmdline.CmdTDB ;
+import arq.cmd.CmdException ;
+import arq.cmdline.ArgDecl ;
+import arq.cmdline.CmdGeneral ;
+
+import com.hp.hpl.jena.tdb.TDB ;
+import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.base.record.Record ;
+import com.hp.hpl.jena.tdb.base.record.RecordFactory ;
+import com.hp.hpl.jena.tdb.store.QuadTable ;
+import com.hp.hpl.jena.tdb.sys.Names ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+/**
+ * Sort the triples/quads files written by {@link CmdNodeTableBuilder} (binary
+ * by default, {@code --text} for the hex files written for sort(1)) and
+ * build all the indexes from them, without an external sort program. Each
+ * index is sorted with a {@link RecordSorter} and packed with
+ * {@link CmdIndexBuild#buildIndex}; several indexes are built at the same time.
+ * If the database keeps the union of the named graphs as triples
+ * ({@link QuadTable#hasUnionIndex}), those indexes are built from the quads file.
+ */
+public class CmdIndexSort extends CmdGeneral
+{
+    static { LogCtl.setLog4j() ; }
+    private static Logger cmdLog = TDB.logLoader ;
+
+    private static ArgDecl argLocation  = new ArgDecl(ArgDecl.HasValue, "loc", "location") ;
+    private static ArgDecl argTriplesIn = new ArgDecl(ArgDecl.HasValue, "triples") ;
+    private static ArgDecl argQuadsIn   = new ArgDecl(ArgDecl.HasValue, "quads") ;
+    private static ArgDecl argParallel  = new ArgDecl(ArgDecl.HasValue, "parallel") ;
+    private static ArgDecl argThreads   = new ArgDecl(ArgDecl.HasValue, "threads") ;
+    private static ArgDecl argMemory    = new ArgDecl(ArgDecl.HasValue, "records") ;
+    private static ArgDecl argText      = new ArgDecl(ArgDecl.NoValue, "text") ;
+
+    private Location location ;
+    private String dataFileTriples ;
+    private String dataFileQuads ;
+    private int numIndexes ;
+    private int numThreads ;
+    private long maxRecordsInMemory ;
+    private boolean binary ;
+
+    public static void main(String...argv)
+    {
+        CmdTDB.init() ;
+        new CmdIndexSort(argv).mainRun() ;
+    }
+
+    public CmdIndexSort(String...argv)
+    {
+        super(argv) ;
+        super.add(argLocation,  "--loc",        "Location") ;
+        super.add(argTriplesIn, "--triples",    "Triples data file") ;
+        super.add(argQuadsIn,   "--quads",      "Quads data file") ;
+        super.add(argParallel,  "--parallel",   "Number of indexes to build at the same time (default: 3)") ;
+        super.add(argThreads,   "--threads",    "Sort threads for each index (default: processors / parallel)") ;
+        super.add(argMemory,    "--records",    "Records sorted in memory for each index before spilling (default: 2000000)") ;
+        super.add(argText,      "--text",       "The data files are text (hex), not binary") ;
+    }
+
+    @Override
+    protected void processModulesAndArgs()
+    {
+        if ( !super.contains(argLocation) ) throw new CmdException("Required: --loc DIR") ;
+        location = new Location(super.getValue(argLocation)) ;
+
+        dataFileTriples = super.getValue(argTriplesIn) ;
+        if ( dataFileTriples == null )
+            dataFileTriples = location.getPath("triples", "tmp") ;
+        dataFileQuads = super.getValue(argQuadsIn) ;
+        if ( dataFileQuads == null )
+            dataFileQuads = location.getPath("quads", "tmp") ;
+
+        numIndexes = intArg(argParallel, 3) ;
+        int processors = Runtime.getRuntime().availableProcessors() ;
+        numThreads = intArg(argThreads, Math.max(1, processors/numIndexes)) ;
+        maxRecordsInMemory = intArg(argMemory, 2*1000*1000) ;
+        binary = !super.contains(argText) ;
+    }
+
+    private int intArg(ArgDecl arg, int dft)
+    {
+        if ( !super.contains(arg) )
+            return dft ;
+        try {
+            int x = Integer.parseInt(super.getValue(arg)) ;
+            if ( x < 1 )
+                cmdError("Not a positive number: "+super.getValue(arg)) ;
+            return x ;
+        } catch (NumberFormatException ex) {
+            cmdError("Not a number: "+super.getValue(arg)) ;
+            return dft ;
+        }
+    }
+
+    @Override
+    protected void exec()
+    {
+        List<String> indexes = new ArrayList<String>() ;
+        if ( hasData(dataFileTriples) )
+        {
+            for ( String idx : Names.tripleIndexes )
+                indexes.add(idx) ;
+        }
+        if ( hasData(dataFileQuads) )
+        {
+            for ( String idx : Names.quadIndexes )
+                indexes.add(idx) ;
+            if ( QuadTable.hasUnionIndex(location) )
+            {
+                for ( String idx : Names.tripleIndexes )
+                    indexes.add(Names.unionIndexPrefix+idx) ;
+            }
+        }
+        buildIndexes(location, dataFileTriples, dataFileQuads, binary, indexes, numIndexes, numThreads, maxRecordsInMemory) ;
+    }
+
+    private static boolean hasData(String filename)
+    {
+        return FileOps.exists(filename) && new File(filename).length() > 0 ;
+    }
+
+    /**
+     * Build the named indexes at a location, sorting the data files (binary or hex rows). Up to
+     * {@code numIndexes} indexes are built at the same time, each using
+     * {@code numThreads} threads to sort.
+     */
+    public static void buildIndexes(final Location location, final String dataFileTriples, final String dataFileQuads, final boolean binary,
+                                    List<String> indexes, int numIndexes, final int numThreads, final long maxRecordsInMemory)
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(numIndexes, indexes.size()))) ;
+        try {
+            List<Future<?>> tasks = new ArrayList<Future<?>>() ;
+            for ( final String indexName : indexes )
+            {
+                Callable<Object> task = new Callable<Object>() {
+                    @Override
+                    public Object call()
+                    {
+                        String dataFile = ( indexName.length() == 3 ) ? dataFileTriples : dataFileQuads ;
+                        buildIndex(location, indexName, dataFile, binary, numThreads, maxRecordsInMemory) ;
+                        return null ;
+                    }
+                } ;
+                tasks.add(executor.submit(task)) ;
+            }
+            for ( Future<?> f : tasks )
+            {
+                try { f.get() ; }
+                catch (InterruptedException ex) { throw new TDBException(ex) ; }
+                catch (ExecutionException ex)   { throw new TDBException("Index build failed", ex.getCause()) ; }
+            }
+        } finally { executor.shutdownNow() ; }
+    }
+
+    /** The triple order of a union index name (the prefix and a triple index name), or null. */
+    private static String unionOrder(String indexName)
+    {
+        if ( indexName.length() == 4 && indexName.startsWith(Names.unionIndexPrefix) )
+            return indexName.substring(Names.unionIndexPrefix.length()) ;
+        return null ;
+    }
+
+    /** Sort the data file into index order and build the index.
+     *  A union index is built from the quads data file, dropping the graph. */
+    public static void buildIndex(Location location, String indexName, String dataFile, boolean binary, int numThreads, long maxRecordsInMemory)
+    {
+        cmdLog.info("Index "+indexName) ;
+        String unionOrder = unionOrder(indexName) ;
+        String order = ( unionOrder != null ) ? unionOrder : indexName ;
+        int tupleLength = order.length() ;
+        final RecordFactory recordFactory = new RecordFactory(tupleLength*SystemTDB.SizeOfNodeId, 0) ;
+        InputStream input = IO.openFile(dataFile) ;
+        RecordSorter sorter = new RecordSorter(recordFactory, numThreads, maxRecordsInMemory) ;
+        try {
+            Iterator<Record> records ;
+            if ( unionOrder == null )
+                records = new RecordsFromInput(input, tupleLength, CmdIndexBuild.columnMap(indexName), 1000, binary) ;
+            else
+            {
+                // Quads with the graph first, then the triple in index order; drop the graph.
+                ColumnMap colMap = new ColumnMap(Names.primaryIndexQuads, "G"+unionOrder) ;
+                Iterator<Record> quads = new RecordsFromInput(input, 4, colMap, 1000, binary) ;
+                Transform<Record, Record> dropGraph = new Transform<Record, Record>() {
+                    @Override
+                    public Record convert(Record quad)
+                    {
+                        Record r = recordFactory.create() ;
+                        System.arraycopy(quad.getKey(), SystemTDB.SizeOfNodeId, r.getKey(), 0, r.getKey().length) ;
+                        return r ;
+                    }
+                } ;
+                records = Iter.map(quads, dropGraph) ;
+            }
+            Iterator<Record> sorted = sorter.sortDistinct(records) ;
+            IO.close(input) ;
+            input = null ;
+            cmdLog.info("Build "+indexName) ;
+            // Remove the empty index made when the node table was built.
+            FileOps.deleteSilent(location.getPath(indexName, Names.bptExtTree)) ;
+            FileOps.deleteSilent(location.getPath(indexName, Names.bptExtRecords)) ;
+            CmdIndexBuild.buildIndex(location, order, indexName, sorted) ;
+        } finally {
+            sorter.close() ;
+            if ( input != null )
+                IO.close(input) ;
+        }
+    }
+
+    @Override
+    protected String getSummary()
+    {
+        return getCommandName()+" --loc=DIR [--triples=tmpFile1] [--quads=tmpFile2] [--parallel=N] [--threads=N] [--records=N] [--text]" ;
+    }
+
+    @Override
+    protected String getCommandName()
+    {
+        return this.getClass().getName() ;
+    }
+}
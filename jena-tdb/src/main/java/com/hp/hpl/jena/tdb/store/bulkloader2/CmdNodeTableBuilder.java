@@ -58,9 +58,10 @@ import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
 import com.hp.hpl.jena.tdb.store.NodeId ;
 import com.hp.hpl.jena.tdb.store.bulkloader.BulkLoader ;
 import com.hp.hpl.jena.tdb.store.bulkloader.BulkStreamRDF ;
+import com.hp.hpl.jena.tdb.store.bulkloader.NodeIdPipeline ;
 import com.hp.hpl.jena.tdb.sys.Names ;
 
-/** Build node table - write triples/quads as text file */
+/** Build node table - write triples/quads as text file, or binary file (--binary) */
 public class CmdNodeTableBuilder extends CmdGeneral
 {
     static { LogCtl.setLog4j() ; }
@@ -69,10 +70,14 @@ public class CmdNodeTableBuilder extends CmdGeneral
     private static ArgDecl argLocation = new ArgDecl(ArgDecl.HasValue, "loc", "location") ;
     private static ArgDecl argTriplesOut = new ArgDecl(ArgDecl.HasValue, "triples") ;
     private static ArgDecl argQuadsOut = new ArgDecl(ArgDecl.HasValue, "quads") ;
+    private static ArgDecl argThreads = new ArgDecl(ArgDecl.HasValue, "threads") ;
+    private static ArgDecl argBinary = new ArgDecl(ArgDecl.NoValue, "binary") ;
     private String locationString ;
     private String dataFileTriples ;
     private String dataFileQuads ;
     private List<String> datafiles ;
+    private int pipelineThreads = 0 ;
+    private boolean binary = false ;
     private Location location ;
     
     public static void main(String...argv)
@@ -88,6 +93,8 @@ public class CmdNodeTableBuilder extends CmdGeneral
         super.add(argLocation,      "--loc",        "Location") ;
         super.add(argTriplesOut,    "--triples",    "Output file for triples") ;
         super.add(argQuadsOut,      "--quads",      "Output file for quads") ;
+        super.add(argThreads,       "--threads",    "Pipeline the node table with this many lookup threads (default: 0, no pipeline)") ;
+        super.add(argBinary,        "--binary",     "Write the triples and quads files in binary, for CmdIndexSort, not text for sort(1)") ;
     }
         
     @Override
@@ -111,6 +118,16 @@ public class CmdNodeTableBuilder extends CmdGeneral
         if ( Lib.equal(dataFileTriples, dataFileQuads) )
             cmdError("Triples and Quads work files are the same") ;
         
+        if ( super.contains(argThreads) )
+        {
+            try { pipelineThreads = Integer.parseInt(super.getValue(argThreads)) ; }
+            catch (NumberFormatException ex) { cmdError("Not a number: "+super.getValue(argThreads)) ; }
+            if ( pipelineThreads < 0 )
+                cmdError("Negative number of threads: "+pipelineThreads) ;
+        }
+        
+        binary = super.contains(argBinary) ;
+        
         //datafiles  = getPositionalOrStdin() ;
         datafiles  = getPositional() ;
         if ( datafiles.isEmpty() )
@@ -154,7 +171,7 @@ public class CmdNodeTableBuilder extends CmdGeneral
         }
         catch (FileNotFoundException e) { throw new AtlasException(e) ; }
         
-        NodeTableBuilder sink = new NodeTableBuilder(dsg, monitor, outputTriples, outputQuads) ; 
+        NodeTableBuilder sink = new NodeTableBuilder(dsg, monitor, outputTriples, outputQuads, pipelineThreads, binary) ; 
         monitor.start() ;
         sink.startBulk() ;
         for( String filename : datafiles)
@@ -191,21 +208,39 @@ public class CmdNodeTableBuilder extends CmdGeneral
         private WriteRows writerQuads ;
         private ProgressLogger monitor ;
         private StatsCollectorNodeId stats ;
+        private NodeIdPipeline pipeline = null ;
 
-        NodeTableBuilder(DatasetGraphTDB dsg, ProgressLogger monitor, OutputStream outputTriples, OutputStream outputQuads)
+        NodeTableBuilder(DatasetGraphTDB dsg, ProgressLogger monitor, OutputStream outputTriples, OutputStream outputQuads, int pipelineThreads, boolean binary)
         {
             this.dsg = dsg ;
             this.monitor = monitor ;
             NodeTupleTable ntt = dsg.getTripleTable().getNodeTupleTable() ; 
             this.nodeTable = ntt.getNodeTable() ;
-            this.writerTriples = new WriteRows(outputTriples, 3, 20000) ; 
-            this.writerQuads = new WriteRows(outputQuads, 4, 20000) ; 
+            this.writerTriples = new WriteRows(outputTriples, 3, 20000, binary) ; 
+            this.writerQuads = new WriteRows(outputQuads, 4, 20000, binary) ; 
             this.stats = new StatsCollectorNodeId(nodeTable) ;
+            if ( pipelineThreads > 0 )
+            {
+                NodeIdPipeline.Output output = new NodeIdPipeline.Output() {
+                    @Override
+                    public void row(NodeId[] ids)
+                    {
+                        if ( ids.length == 4 )
+                            write(ids[0], ids[1], ids[2], ids[3]) ;
+                        else
+                            write(null, ids[0], ids[1], ids[2]) ;
+                    }
+                } ;
+                this.pipeline = new NodeIdPipeline(nodeTable, output, pipelineThreads) ;
+            }
         }
         
         @Override
         public void startBulk()
-        {}
+        {
+            if ( pipeline != null )
+                pipeline.start() ;
+        }
 
         @Override
         public void start()
@@ -218,6 +253,8 @@ public class CmdNodeTableBuilder extends CmdGeneral
         @Override
         public void finishBulk()
         {
+            if ( pipeline != null )
+                pipeline.finish() ;
             writerTriples.flush() ;
             writerQuads.flush() ;
             nodeTable.sync() ;
@@ -248,13 +285,26 @@ public class CmdNodeTableBuilder extends CmdGeneral
        
         private void process(Node g, Node s, Node p, Node o)
         {
+            if ( pipeline != null )
+            {
+                if ( g != null )
+                    pipeline.add(g, s, p, o) ;
+                else
+                    pipeline.add(s, p, o) ;
+                return ;
+            }
+            
             NodeId sId = nodeTable.getAllocateNodeId(s) ; 
             NodeId pId = nodeTable.getAllocateNodeId(p) ;
             NodeId oId = nodeTable.getAllocateNodeId(o) ;
-            
-            if ( g != null )
+            NodeId gId = ( g != null ) ? nodeTable.getAllocateNodeId(g) : null ;
+            write(gId, sId, pId, oId) ;
+        }
+        
+        private void write(NodeId gId, NodeId sId, NodeId pId, NodeId oId)
+        {
+            if ( gId != null )
             {
-                NodeId gId = nodeTable.getAllocateNodeId(g) ;
                 writerQuads.write(gId.getId()) ;
                 writerQuads.write(sId.getId()) ;
                 writerQuads.write(pId.getId()) ;
@@ -291,7 +341,7 @@ public class CmdNodeTableBuilder extends CmdGeneral
     @Override
     protected String getSummary()
     {
-        return getCommandName()+" --loc=DIR [--triples=tmpFile1] [--quads=tmpFile2] FILE ..." ;
+        return getCommandName()+" --loc=DIR [--triples=tmpFile1] [--quads=tmpFile2] [--threads=N] [--binary] FILE ..." ;
     }
 
     @Override
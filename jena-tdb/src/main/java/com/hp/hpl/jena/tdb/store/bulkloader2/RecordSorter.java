@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.store.bulkloader2;
+
+import java.io.DataInputStream ;
+import java.io.EOFException ;
+import java.io.IOException ;
+import java.io.InputStream ;
+import java.io.OutputStream ;
+import java.util.ArrayList ;
+import java.util.Comparator ;
+import java.util.Iterator ;
+import java.util.List ;
+import java.util.NoSuchElementException ;
+import java.util.PriorityQueue ;
+import java.util.concurrent.ArrayBlockingQueue ;
+import java.util.concurrent.BlockingQueue ;
+import java.util.concurrent.Callable ;
+import java.util.concurrent.ExecutionException ;
+import java.util.concurrent.ExecutorService ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.Future ;
+import java.util.concurrent.TimeUnit ;
+
+import org.apache.jena.atlas.AtlasException ;
+import org.apache.jena.atlas.data.SerializationFactory ;
+import org.apache.jena.atlas.data.SortedDataBag ;
+import org.apache.jena.atlas.data.ThresholdPolicyCount ;
+import org.apache.jena.atlas.lib.Closeable ;
+import org.apache.jena.atlas.lib.Sink ;
+
+import com.hp.hpl.jena.tdb.base.record.Record ;
+import com.hp.hpl.jena.tdb.base.record.RecordFactory ;
+
+/**
+ * External sort of fixed-width records, removing duplicates, for building
+ * indexes without an external "sort" program. Sorted runs are made in
+ * parallel: the input is handed out in blocks to a number of worker threads,
+ * each with its own {@link SortedDataBag} which spills sorted runs to disk,
+ * in a binary form, when it holds more than its share of the in-memory
+ * limit. The result is a k-way merge of the worker bags.
+ */
+public class RecordSorter implements Closeable
+{
+    private static final Comparator<Record> comparator = new Comparator<Record>() {
+        @Override
+        public int compare(Record r1, Record r2) { return Record.compareByKeyValue(r1, r2) ; }
+    } ;
+
+    private static final List<Record> endMarker = new ArrayList<Record>(0) ;
+
+    private final RecordFactory recordFactory ;
+    private final int numThreads ;
+    private final long maxRecordsInMemory ;
+    private final int blockSize ;
+    private final List<SortedDataBag<Record>> bags = new ArrayList<SortedDataBag<Record>>() ;
+
+    /**
+     * @param recordFactory       Record layout.
+     * @param numThreads          Number of threads making sorted runs.
+     * @param maxRecordsInMemory  Records held in memory, over all threads, before spilling.
+     */
+    public RecordSorter(RecordFactory recordFactory, int numThreads, long maxRecordsInMemory)
+    {
+        if ( numThreads < 1 )
+            throw new IllegalArgumentException("Number of threads: "+numThreads) ;
+        this.recordFactory = recordFactory ;
+        this.numThreads = numThreads ;
+        this.maxRecordsInMemory = maxRecordsInMemory ;
+        this.blockSize = (int)Math.max(1, Math.min(10000, maxRecordsInMemory/(4*numThreads))) ;
+    }
+
+    /** Sort the records, removing duplicates. Call {@link #close} when the iterator is finished with. */ 
+    public Iterator<Record> sortDistinct(Iterator<Record> input)
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads) ;
+        try {
+            BlockingQueue<List<Record>> queue = new ArrayBlockingQueue<List<Record>>(2*numThreads) ;
+            List<Future<Iterator<Record>>> workers = new ArrayList<Future<Iterator<Record>>>(numThreads) ;
+            long threshold = Math.max(1, maxRecordsInMemory/numThreads) ;
+            for ( int i = 0 ; i < numThreads ; i++ )
+            {
+                SortedDataBag<Record> bag = new SortedDataBag<Record>(new ThresholdPolicyCount<Record>(threshold),
+                                                                      serializationFactory(recordFactory), comparator) ;
+                bags.add(bag) ;
+                workers.add(executor.submit(new RunBuilder(queue, bag))) ;
+            }
+
+            List<Record> block = new ArrayList<Record>(blockSize) ;
+            while ( input.hasNext() )
+            {
+                block.add(input.next()) ;
+                if ( block.size() == blockSize )
+                {
+                    put(queue, block, workers) ;
+                    block = new ArrayList<Record>(blockSize) ;
+                }
+            }
+            if ( block.size() > 0 )
+                put(queue, block, workers) ;
+            for ( int i = 0 ; i < numThreads ; i++ )
+                put(queue, endMarker, workers) ;
+
+            List<Iterator<Record>> runs = new ArrayList<Iterator<Record>>(numThreads) ;
+            for ( Future<Iterator<Record>> f : workers )
+                runs.add(result(f)) ;
+            return new MergeDistinct(runs) ;
+        } finally { executor.shutdownNow() ; }
+    }
+
+    @Override
+    public void close()
+    {
+        for ( SortedDataBag<Record> bag : bags )
+            bag.close() ;
+        bags.clear() ;
+    }
+
+    private static void put(BlockingQueue<List<Record>> queue, List<Record> block, List<Future<Iterator<Record>>> workers)
+    {
+        try {
+            // Don't wait forever on a worker that has died.
+            while ( ! queue.offer(block, 100, TimeUnit.MILLISECONDS) )
+            {
+                for ( Future<Iterator<Record>> f : workers )
+                {
+                    if ( f.isDone() )
+                        result(f) ;
+                }
+            }
+        } catch (InterruptedException ex) { throw new AtlasException(ex) ; }
+    }
+
+    private static Iterator<Record> result(Future<Iterator<Record>> f)
+    {
+        try { return f.get() ; }
+        catch (InterruptedException ex) { throw new AtlasException(ex) ; }
+        catch (ExecutionException ex)   { throw new AtlasException("Sort failed", ex.getCause()) ; }
+    }
+
+    /** Adds blocks from the queue to a bag; returns the sorted contents of the bag. */
+    private static class RunBuilder implements Callable<Iterator<Record>>
+    {
+        private final BlockingQueue<List<Record>> queue ;
+        private final SortedDataBag<Record> bag ;
+
+        RunBuilder(BlockingQueue<List<Record>> queue, SortedDataBag<Record> bag)
+        {
+            this.queue = queue ;
+            this.bag = bag ;
+        }
+
+        @Override
+        public Iterator<Record> call() throws InterruptedException
+        {
+            for ( ;; )
+            {
+                List<Record> block = queue.take() ;
+                if ( block == endMarker )
+                    break ;
+                for ( Record r : block )
+                    bag.add(r) ;
+            }
+            // Sorts the in-memory part in this thread.
+            return bag.iterator() ;
+        }
+    }
+
+    /** Merge sorted iterators, dropping duplicates. */
+    private static class MergeDistinct implements Iterator<Record>
+    {
+        private static class Head
+        {
+            final Record record ;
+            final Iterator<Record> iter ;
+            Head(Record record, Iterator<Record> iter) { this.record = record ; this.iter = iter ; }
+        }
+
+        private final PriorityQueue<Head> heap ;
+        private Record slot = null ;
+        private Record last = null ;
+
+        MergeDistinct(List<Iterator<Record>> inputs)
+        {
+            heap = new PriorityQueue<Head>(Math.max(1, inputs.size()), new Comparator<Head>() {
+                @Override
+                public int compare(Head h1, Head h2) { return comparator.compare(h1.record, h2.record) ; }
+            }) ;
+            for ( Iterator<Record> iter : inputs )
+                advance(iter) ;
+        }
+
+        private void advance(Iterator<Record> iter)
+        {
+            if ( iter.hasNext() )
+                heap.add(new Head(iter.next(), iter)) ;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while ( slot == null && ! heap.isEmpty() )
+            {
+                Head h = heap.poll() ;
+                advance(h.iter) ;
+                if ( last == null || comparator.compare(last, h.record) != 0 )
+                    slot = h.record ;
+            }
+            return slot != null ;
+        }
+
+        @Override
+        public Record next()
+        {
+            if ( ! hasNext() ) throw new NoSuchElementException() ;
+            last = slot ;
+            slot = null ;
+            return last ;
+        }
+
+        @Override
+        public void remove()
+        { throw new UnsupportedOperationException() ; }
+    }
+
+    /** Records as fixed-width binary: the key bytes followed by the value bytes. */
+    public static SerializationFactory<Record> serializationFactory(final RecordFactory recordFactory)
+    {
+        return new SerializationFactory<Record>()
+        {
+            @Override
+            public Sink<Record> createSerializer(final OutputStream out)
+            {
+                return new Sink<Record>() {
+                    @Override
+                    public void send(Record record)
+                    {
+                        try {
+                            out.write(record.getKey()) ;
+                            if ( recordFactory.hasValue() )
+                                out.write(record.getValue()) ;
+                        } catch (IOException ex) { throw new AtlasException(ex) ; }
+                    }
+
+                    @Override
+                    public void flush()
+                    {
+                        try { out.flush() ; } catch (IOException ex) { throw new AtlasException(ex) ; }
+                    }
+
+                    @Override
+                    public void close()
+                    {
+                        try { out.close() ; } catch (IOException ex) { throw new AtlasException(ex) ; }
+                    }
+                } ;
+            }
+
+            @Override
+            public Iterator<Record> createDeserializer(InputStream in)
+            {
+                final DataInputStream input = new DataInputStream(in) ;
+                return new Iterator<Record>() {
+                    private Record slot = null ;
+                    private boolean finished = false ;
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        if ( finished ) return false ;
+                        if ( slot != null ) return true ;
+                        Record r = recordFactory.create() ;
+                        try {
+                            input.readFully(r.getKey()) ;
+                        } catch (EOFException ex) {
+                            finished = true ;
+                            return false ;
+                        } catch (IOException ex) { throw new AtlasException(ex) ; }
+                        try {
+                            if ( recordFactory.hasValue() )
+                                input.readFully(r.getValue()) ;
+                        } catch (IOException ex) { throw new AtlasException(ex) ; }
+                        slot = r ;
+                        return true ;
+                    }
+
+                    @Override
+                    public Record next()
+                    {
+                        if ( ! hasNext() ) throw new NoSuchElementException() ;
+                        Record r = slot ;
+                        slot = null ;
+                        return r ;
+                    }
+
+                    @Override
+                    public void remove()
+                    { throw new UnsupportedOperationException() ; }
+                } ;
+            }
+
+            @Override
+            public long getEstimatedMemorySize(Record item)
+            {
+                return recordFactory.recordLength() ;
+            }
+        } ;
+    }
+}
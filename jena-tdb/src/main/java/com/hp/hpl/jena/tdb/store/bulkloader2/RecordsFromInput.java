@@ -47,13 +47,23 @@ public class RecordsFromInput implements Iterator<Record>
     private final RecordFactory recordFactory ;
     private final int itemsPerRow ;
     private final ColumnMap colMap ;
+    private final boolean binary ;
 
+    /** Read rows of hex, as written by {@link WriteRows} and sorted by sort(1). */
     public RecordsFromInput(InputStream input, int itemsPerRow, ColumnMap colMap, int rowBlockSize)
+    {
+        this(input, itemsPerRow, colMap, rowBlockSize, false) ;
+    }
+    
+    /** Read rows of hex, or of binary longs, as written by {@link WriteRows} */
+    public RecordsFromInput(InputStream input, int itemsPerRow, ColumnMap colMap, int rowBlockSize, boolean binary)
     { 
         this.input = input ;
         this.itemsPerRow = itemsPerRow ;
         this.colMap = colMap ;
-        this.rowLength = itemsPerRow*16 + itemsPerRow ;   // Length in bytes of a row.
+        this.binary = binary ;
+        // Length in bytes of a row.
+        this.rowLength = binary ? itemsPerRow*SystemTDB.SizeOfLong : itemsPerRow*16 + itemsPerRow ;
         this.rowBlockSize = rowBlockSize ; 
         this.buffer = new byte[rowLength*rowBlockSize] ;
         this.idx = -1 ;
@@ -83,10 +93,19 @@ public class RecordsFromInput implements Iterator<Record>
 //        System.out.print("In:  ") ;
         for ( int i = 0 ; i < itemsPerRow ; i++ )
         {
-            long x = Hex.getLong(buffer, idx) ;
-            idx += 16 ;
-            // Separator or end-of-line.
-            idx++ ;     
+            long x ;
+            if ( binary )
+            {
+                x = Bytes.getLong(buffer, idx) ;
+                idx += SystemTDB.SizeOfLong ;
+            }
+            else
+            {
+                x = Hex.getLong(buffer, idx) ;
+                idx += 16 ;
+                // Separator or end-of-line.
+                idx++ ;
+            }
             int j = ( colMap == null ) ? i : colMap.mapSlotIdx(i) ; 
             int recordOffset = j*SystemTDB.SizeOfLong ;
             Bytes.setLong(x, record.getKey(), recordOffset) ;
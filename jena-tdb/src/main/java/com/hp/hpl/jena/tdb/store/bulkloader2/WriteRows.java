@@ -22,9 +22,13 @@ import java.io.IOException ;
 import java.io.OutputStream ;
 
 import org.apache.jena.atlas.AtlasException ;
+import org.apache.jena.atlas.lib.Bytes ;
 import org.apache.jena.atlas.lib.Hex ;
 
-/** Buffered writer of rows of longs, in hex. */
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+/** Buffered writer of rows of longs, in hex (one text line per row, for sort(1))
+ * or in binary (fixed-width rows of big-endian longs, read by {@link RecordsFromInput}). */
 public class WriteRows
 {
     private OutputStream output ;
@@ -35,12 +39,19 @@ public class WriteRows
     private int idx ;
     private int rows ;
     private int rowLength ;
+    private final boolean binary ;
 
     WriteRows (OutputStream output, int itemsPerRow, int rowBlock)
+    {
+        this(output, itemsPerRow, rowBlock, false) ;
+    }
+    
+    WriteRows (OutputStream output, int itemsPerRow, int rowBlock, boolean binary)
     {
         this.output = output ;
         this.itemsPerRow = itemsPerRow ;
-        this.rowLength = 16*itemsPerRow + itemsPerRow ;
+        this.binary = binary ;
+        this.rowLength = binary ? SystemTDB.SizeOfLong*itemsPerRow : 16*itemsPerRow + itemsPerRow ;
         this.rowBlock = rowBlock ;
         this.b = new byte[rowLength*rowBlock] ;
         this.idx = 0 ;
@@ -49,6 +60,12 @@ public class WriteRows
     
     public void write(long value)
     {
+        if ( binary )
+        {
+            Bytes.setLong(value, b, idx) ;
+            idx += SystemTDB.SizeOfLong ;
+            return ;
+        }
         if ( !atStartOfRow )
         {
             b[idx] = ' ' ;
@@ -61,8 +78,11 @@ public class WriteRows
     
     public void endOfRow()
     {
-        b[idx] = '\n' ;
-        idx++ ;
+        if ( !binary )
+        {
+            b[idx] = '\n' ;
+            idx++ ;
+        }
         atStartOfRow = true ;
         rows++ ;
         if ( rows == rowBlock )
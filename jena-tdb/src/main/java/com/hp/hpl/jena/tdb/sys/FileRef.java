@@ -104,6 +104,12 @@ public class FileRef
         file("node2id.dat") ;
         file("prefixIdx.idn") ;
         file("prefixIdx.dat") ;
+        file("USPO.idn") ;
+        file("USPO.dat") ;
+        file("UPOS.idn") ;
+        file("UPOS.dat") ;
+        file("UOSP.idn") ;
+        file("UOSP.dat") ;
         
         add(1000+idxOffset, "TEST") ;
         add(1001+idxOffset, "TEST1") ;
@@ -27,6 +27,9 @@ public class Names
     public static final String primaryIndexQuads        = "GSPO" ; 
     public static final String[] quadIndexes            = { primaryIndexQuads, "GPOS", "GOSP", "POSG", "OSPG", "SPOG"} ;
     
+    /** Optional union of the named graphs, as triples: index files are this prefix and a triple index name */
+    public static final String unionIndexPrefix         = "U" ;
+    
     public static final String primaryIndexPrefix       = "GPU" ;
     public static final String[] prefixIndexes          = { primaryIndexPrefix } ;
     
@@ -47,6 +50,7 @@ public class Names
     /** Node file */
     public static final String extNodeData              = "dat" ;           // Extension of node files
     public static final String extJournal               = "jrnl" ;          // Extension of node files.
+    public static final String extNodeNamespaces        = "ns" ;            // Extension of the namespace dictionary of a node file
     public static final String journalFileBase          = "journal" ;
     public static final String journalFile              = journalFileBase+"."+extJournal ;
     
@@ -64,6 +68,7 @@ public class Names
     public static final String optStats                 = "stats.opt" ;
     public static final String optFixed                 = "fixed.opt" ;
     public static final String optNone                  = "none.opt" ; 
+    public static final String optStatsLive             = "stats-live.opt" ;
     public static final String optDefault               = optFixed ;
     
     public static final String extMeta                  = "info" ;
@@ -100,6 +105,9 @@ public class Names
     
     public static final String elType                 = "type" ;
     public static final String elLayout               = "layout" ;
+    public static final String elEncoding             = "encoding" ;
+    public static final String elShards               = "shards" ;
+    public static final String elUnion                = "union" ;
     public static final String elVersion              = "version" ;
     public static final String elTimestamp            = "timestamp" ;
     public static final String elCreated              = "created" ;
@@ -116,6 +124,15 @@ public class Names
     // Node table metadata
     public static final String kNodeTableType         = makeName(keyNS, elNode, elType) ;
     public static final String kNodeTableLayout       = makeName(keyNS, elNode, elLayout) ;
+    public static final String kNodeTableEncoding     = makeName(keyNS, elNode, elEncoding) ;
+    public static final String kNodeTableIndex        = makeName(keyNS, elNode, elIndex, elType) ;
+    public static final String kNodeTableIndexShards  = makeName(keyNS, elNode, elIndex, elShards) ;
+
+    // Union graph index: "true" if the union of named graphs is maintained as triples.
+    public static final String kUnionIndex            = makeName(keyNS, elIndex, elUnion) ;
+
+    // B+Tree leaf layout, per index: add "."+index name. 
+    public static final String kBPlusTreeLayout       = makeName(keyNS, elBPlusTree, elLayout) ;
 
 //    // Object file
 //    public static final String kObjectTableType         = makeName(keyNS, elObject, elType) ;
@@ -41,7 +41,6 @@ import com.hp.hpl.jena.tdb.index.TupleIndexRecord ;
 import com.hp.hpl.jena.tdb.index.bplustree.BPlusTree ;
 import com.hp.hpl.jena.tdb.index.bplustree.BPlusTreeParams ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
-import com.hp.hpl.jena.tdb.nodetable.NodeTableCache ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTableFactory ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTableInline ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTableNative ;
@@ -213,10 +212,12 @@ public class SetupTDB
         // Make index of id to node (data table)
         
         // No caching at the index level - we use the internal caches of the node table.
-        Index nodeToId = makeIndex(location, indexNode2Id, LenNodeHash, SizeOfNodeId, -1 ,-1) ;
+        Index nodeToId = NodeTableFactory.isHashIndex(location)
+            ? NodeTableFactory.createHashIndex(new FileSet(location, indexNode2Id), makeRecordFactory(LenNodeHash, SizeOfNodeId))
+            : makeIndex(location, indexNode2Id, LenNodeHash, SizeOfNodeId, -1 ,-1) ;
         
         // -- Make the node table using the components established above.
-        NodeTable nodeTable = new NodeTableNative(nodeToId, stringFile) ;
+        NodeTable nodeTable = new NodeTableNative(nodeToId, stringFile, NodeTableFactory.createNodec(fsIdToNode)) ;
         return nodeTable ;
     }
 
@@ -236,8 +237,8 @@ public class SetupTDB
                                           int nodeMissCacheSize)
     {
         NodeTable nodeTable = makeNodeTableBase(location, indexNode2Id, indexId2Node) ;
-        nodeTable = NodeTableCache.create(nodeTable, nodeToIdCacheSize, idToNodeCacheSize, nodeMissCacheSize) ; 
-        nodeTable = NodeTableInline.create(nodeTable) ;
+        nodeTable = NodeTableFactory.createCache(nodeTable, nodeToIdCacheSize, idToNodeCacheSize, nodeMissCacheSize) ; 
+        nodeTable = NodeTableInline.create(nodeTable, location) ;
         return nodeTable ;
     }
 
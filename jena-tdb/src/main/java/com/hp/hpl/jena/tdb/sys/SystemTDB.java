@@ -34,6 +34,7 @@ import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderTransformation ;
 import com.hp.hpl.jena.sparql.util.Symbol ;
 import com.hp.hpl.jena.tdb.TDB ;
 import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.base.block.BlockCacheType ;
 import com.hp.hpl.jena.tdb.base.block.FileMode ;
 import com.hp.hpl.jena.tdb.base.record.RecordFactory ;
 import com.hp.hpl.jena.tdb.index.IndexType ;
@@ -112,12 +113,33 @@ public class SystemTDB
     /** File mode : one of "direct", "mapped", "default" */ 
     public static final Symbol symFileMode          = allocSymbol("fileMode") ;
 
+    /** Block cache for direct mode files : one of "lru", "striped", "pooled" */ 
+    public static final Symbol symBlockCache        = allocSymbol("blockCache") ;
+
+    /** Node table cache : one of "lru", "concurrent" */ 
+    public static final Symbol symNodeTableCache    = allocSymbol("nodeTableCache") ;
+
     /** Index type */
     public static final Symbol symIndexType         = allocSymbol("indexType") ;
 
     /** Experimental : triple and quad filtering at scan level */
     public static final Symbol symTupleFilter       = allocSymbol("tupleFilter") ;
 
+    /** Join algorithm for the steps of a basic graph pattern : one of "auto", "nested", "hash", "merge" */
+    public static final Symbol symJoinStrategy      = allocSymbol("joinStrategy") ;
+
+    /** Execute simple range FILTERs over numbers and dateTimes as index range scans : "true" (default) or "false" */
+    public static final Symbol symRangeFilter       = allocSymbol("rangeFilter") ;
+
+    /** Replace single-variable patterns of a BGP by semi-join filters on the NodeIds : "true" or "false" (default) */
+    public static final Symbol symSemiJoin          = allocSymbol("semiJoin") ;
+
+    /** Number of bindings per batch of sorted index probes in a BGP ; 0 for a probe per binding */
+    public static final Symbol symProbeBatchSize    = allocSymbol("probeBatchSize") ;
+
+    /** Divide the first index scan of a BGP into key ranges and evaluate the BGP for each range on a pool of threads : "true" or "false" (default) */
+    public static final Symbol symParallelScan      = allocSymbol("parallelScan") ;
+
     private static final String propertyFileKey1    = tdbPropertyRoot+".settings" ;
     private static final String propertyFileKey2    = tdbSymbolPrefix+":settings" ;
 
@@ -176,11 +198,67 @@ public class SystemTDB
     /** Size of Node lookup miss cache. */
     public static final int NodeMissCacheSize       = 100 ;
     
+    /** NodeId inline format for new databases (1 = original, 2 = also inline doubles, floats, gYears and short strings) */
+    public static final int NodeIdFormat            = intValue("NodeIdFormat", 1) ;
+    
+    /** Node table encoding for new databases ("sse" = Turtle-like term strings, "binary" = binary with an IRI namespace dictionary) */
+    public static final String NodeEncoding         = "sse" ;
+    
+    /** Maximum number of namespaces in the dictionary of a binary encoded node table.
+     *  IRIs with other namespaces are stored in full. */
+    public static final int NodeNamespacesMax       = intValue("NodeNamespacesMax", 100*1000) ;
+
+    /** Whether new databases maintain the union of the named graphs as a triple table */
+    public static final boolean UnionIndex          = false ;
+
+    /** Whether to maintain statistics for the BGP optimizer as the data changes.
+     *  A database with maintained statistics ({@link Names#optStatsLive}) always maintains them. */
+    public static final boolean MaintainStats       = false ;
+
+    /** Node to NodeId index for new databases ("BPlusTree", or "ExtHash" for a sharded extendible hash table) */
+    public static final String NodeIndexType        = SystemTDB.indexTypeBPlusTree ;
+
+    /** Number of shards of an "ExtHash" node to NodeId index for new databases */
+    public static final int NodeIndexShards         = intValue("NodeIndexShards", 8) ;
+    
+    /** Tuple indexes (by name, e.g. "POS") with compressed B+Tree leaves in new databases. None by default. */
+    public static final String[] CompressedIndexes  = {} ;
+    
     /** Size of the delayed-write block cache (32 bit systems only) (per file) */
     public static final int BlockWriteCacheSize     = intValue("BlockWriteCacheSize", 2*1000) ;
 
     /** Size of read block cache (32 bit systems only).  Increase JVM size as necessary. Per file. */
     public static final int BlockReadCacheSize      = intValue("BlockReadCacheSize", 10*1000) ;
+
+    /** Number of lock stripes of a striped block read cache (rounded down to a power of two). Per file. */
+    public static final int BlockCacheStripes       = intValue("BlockCacheStripes", 16) ;
+
+    /** Size, in megabytes, of the off-heap buffer pool of the "pooled" block cache. Per database. */
+    public static final int BufferPoolSize          = intValue("BufferPoolSize", 256) ;
+
+    /** Maximum number of blocks read ahead by the "pooled" block cache on sequential reads ; 0 for none */
+    public static final int BufferPoolReadAhead     = intValue("BufferPoolReadAhead", 8) ;
+    
+    // ---- BGP join choices
+    
+    /** Maximum number of tuples a BGP hash join will build into memory.
+     *  A smaller spill threshold in the query context (ARQ.spillToDiskThreshold) takes precedence. */
+    public static final int HashJoinMaxBuildSize    = intValue("HashJoinMaxBuildSize", 100*1000) ;
+
+    /** Estimated number of matches below which a BGP step is always executed as an index nested loop */
+    public static final int JoinScanThreshold       = intValue("JoinScanThreshold", 10*1000) ;
+
+    /** Maximum number of NodeIds in a BGP semi-join filter */
+    public static final int SemiJoinMaxSize         = intValue("SemiJoinMaxSize", 10*1000) ;
+
+    /** Default number of bindings per batch of sorted index probes in a BGP ; 0 for no batching */
+    public static final int ProbeBatchSize          = intValue("ProbeBatchSize", 0) ;
+
+    /** Number of key ranges for a parallel scan (about) */
+    public static final int ParallelScanPartitions  = intValue("ParallelScanPartitions", 4*Runtime.getRuntime().availableProcessors()) ;
+
+    /** Concurrent writers : maximum number of adds and deletes kept to replay a write-only transaction after a conflict */
+    public static final int ConcurrentWriterReplaySize = intValue("ConcurrentWriterReplaySize", 10*1000) ;
     
     // ---- Misc
     
@@ -372,6 +450,63 @@ public class SystemTDB
         throw new TDBException("Unrecognized file mode (not one of 'default', 'direct' or 'mapped': "+x) ;
     }
     
+    // ---- Block cache
+    
+    private static BlockCacheType blockCacheType = null ;
+    public static BlockCacheType blockCacheType()
+    { 
+        if ( blockCacheType == null )
+            blockCacheType = determineBlockCacheType() ;
+        return blockCacheType ;
+    }
+
+    public static void setBlockCacheType(BlockCacheType newBlockCacheType)
+    {
+        blockCacheType = newBlockCacheType ;
+    }
+    
+    private static BlockCacheType determineBlockCacheType()
+    {
+        String x = ARQ.getContext().getAsString(SystemTDB.symBlockCache, "lru") ;
+        for ( BlockCacheType t : BlockCacheType.values() )
+        {
+            if ( x.equalsIgnoreCase(t.name()) )
+            {
+                if ( t != BlockCacheType.lru )
+                    TDB.logInfo.info("Block cache: "+t) ;
+                return t ;
+            }
+        }
+        throw new TDBException("Unrecognized block cache (not one of 'lru', 'striped' or 'pooled'): "+x) ;
+    }
+    
+    // ---- Node table cache
+    
+    private static Boolean concurrentNodeTableCache = null ;
+    /** Whether node tables use {@link com.hp.hpl.jena.tdb.nodetable.NodeTableCacheConcurrent} */
+    public static boolean concurrentNodeTableCache()
+    { 
+        if ( concurrentNodeTableCache == null )
+        {
+            String x = ARQ.getContext().getAsString(SystemTDB.symNodeTableCache, "lru") ;
+            if ( x.equalsIgnoreCase("concurrent") )
+            {
+                TDB.logInfo.info("Node table cache: concurrent") ;
+                concurrentNodeTableCache = Boolean.TRUE ;
+            }
+            else if ( x.equalsIgnoreCase("lru") )
+                concurrentNodeTableCache = Boolean.FALSE ;
+            else
+                throw new TDBException("Unrecognized node table cache (not one of 'lru' or 'concurrent'): "+x) ;
+        }
+        return concurrentNodeTableCache.booleanValue() ;
+    }
+
+    public static void setConcurrentNodeTableCache(boolean concurrent)
+    {
+        concurrentNodeTableCache = Boolean.valueOf(concurrent) ;
+    }
+    
     // ---- Index type
     
     public static final String indexTypeBTree          = "BTree" ;
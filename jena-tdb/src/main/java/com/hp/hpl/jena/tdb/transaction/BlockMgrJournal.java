@@ -24,6 +24,7 @@ import java.util.HashSet ;
 import java.util.Iterator ;
 import java.util.Map ;
 import java.util.Set ;
+import java.util.concurrent.ConcurrentHashMap ;
 
 import org.apache.jena.atlas.logging.Log ;
 import org.slf4j.Logger ;
@@ -53,7 +54,8 @@ public class BlockMgrJournal implements BlockMgr, TransactionLifecycle
     
     private final Set<Long> readBlocks = new HashSet<Long>() ;
     private final Set<Long> iteratorBlocks = new HashSet<Long>() ;
-    private final Map<Long, Block> writeBlocks = new HashMap<Long, Block>() ;
+    // Concurrent: a committed journal is read by later transactions while being written back.
+    private final Map<Long, Block> writeBlocks = new ConcurrentHashMap<Long, Block>() ;
     private final Map<Long, Block> freedBlocks = new HashMap<Long, Block>() ;
     private boolean closed  = false ;
     private boolean active  = false ;   // In a transaction, or preparing.
@@ -142,7 +144,7 @@ public class BlockMgrJournal implements BlockMgr, TransactionLifecycle
         checkIfClosed() ;
         // Might as well allocate now. 
         // This allocates the id.
-        Block block = blockMgr.allocate(blockSize) ;
+        Block block = allocateUnderlying(blockSize) ;
         // [TxTDB:TODO]
         // But we "copy" it by allocating ByteBuffer space.
         if ( active ) 
@@ -153,10 +155,24 @@ public class BlockMgrJournal implements BlockMgr, TransactionLifecycle
         return block ;
     }
 
+    private Block allocateUnderlying(int blockSize)
+    {
+        TransactionManager txnMgr = transaction.getTxnMgr() ;
+        if ( txnMgr == null || ! txnMgr.isConcurrentWriters() )
+            return blockMgr.allocate(blockSize) ;
+        // Concurrent writers all allocate new block ids from the same base BlockMgr.
+        synchronized(txnMgr.allocationLock)
+        {
+            return blockMgr.allocate(blockSize) ;
+        }
+    }
+
     @Override
     public Block getRead(long id)
     {
         checkIfClosed() ;
+        if ( active )
+            transaction.noteRead() ;
         Block block = localBlock(id) ;
         if ( block != null )
             return block ;
@@ -171,6 +187,8 @@ public class BlockMgrJournal implements BlockMgr, TransactionLifecycle
     {
         //logState() ;
         checkIfClosed() ;
+        if ( active )
+            transaction.noteRead() ;
         Block block = localBlock(id) ;
         if ( block == null )
             block = blockMgr.getReadIterator(id) ;
@@ -193,10 +211,12 @@ public class BlockMgrJournal implements BlockMgr, TransactionLifecycle
             return block ;
         
         // Get-as-read.
-        block = blockMgr.getRead(id) ;
+        Block block0 = blockMgr.getRead(id) ;
         // If most blocks get modified, then a copy is needed
         // anyway so now is as good a time as any.
-        block = _promote(block) ;
+        block = _promote(block0) ;
+        // The caller only ever sees the copy.
+        blockMgr.release(block0) ;
         return block ;
     }
 
@@ -212,7 +232,10 @@ public class BlockMgrJournal implements BlockMgr, TransactionLifecycle
         checkIfClosed() ;
         if ( writeBlocks.containsKey(block.getId()) )
             return block ;
-        return _promote(block) ;
+        Block block2 = _promote(block) ;
+        // Later releases are of the copy.
+        blockMgr.release(block) ;
+        return block2 ;
     }
 
     private Block _promote(Block block)
@@ -331,6 +354,62 @@ public class BlockMgrJournal implements BlockMgr, TransactionLifecycle
         blockMgr.endRead() ;
     }
 
+    // ---- Support for concurrent writers.
+    
+    /*package*/ FileRef getFileRef()            { return fileRef ; }
+    
+    /** The ids of the blocks this transaction has changed or allocated */ 
+    /*package*/ Set<Long> getWriteSet()         { return new HashSet<Long>(writeBlocks.keySet()) ; }
+    
+    /** Whether any of the given blocks (written by another transaction) have been
+     *  read, iterated over or written by this transaction.
+     */
+    /*package*/ boolean conflicts(Set<Long> otherWrites)
+    {
+        for ( Long id : otherWrites )
+        {
+            if ( readBlocks.contains(id) || iteratorBlocks.contains(id) || writeBlocks.containsKey(id) )
+                return true ;
+        }
+        return false ;
+    }
+    
+    /** Forget the blocks read, written and freed, to make the changes again.
+     *  Blocks already allocated are not used, as if the transaction had aborted.  
+     */
+    /*package*/ void discard()
+    {
+        clear(transaction) ;
+    }
+    
+    /** Move this journal on top of a later committed state. Only safe if
+     *  the blocks changed between the old and new underlying BlockMgr
+     *  have not been seen by this transaction.
+     *  @see #conflicts
+     */
+    /*package*/ void rebase(BlockMgr underlyingBlockMgr)
+    {
+        this.blockMgr = underlyingBlockMgr ;
+    }
+    
+    /** Write the changed blocks of a committed transaction to the base BlockMgr.
+     *  Later transactions may still be reading the blocks.  
+     */
+    /*package*/ void writeBack(BlockMgr baseBlockMgr)
+    {
+        for ( Block blk : writeBlocks.values() )
+        {
+            ByteBuffer src = blk.getByteBuffer().duplicate() ;
+            src.clear() ;
+            ByteBuffer dst = ByteBuffer.allocate(src.capacity()) ;
+            dst.put(src) ;
+            dst.rewind() ;
+            Block copy = new Block(blk.getId(), dst) ;
+            copy.setModified(true) ;
+            baseBlockMgr.overwrite(copy) ;
+        }
+    }
+    
     private void writeJournalEntry(Block blk)
     {
         blk.getByteBuffer().rewind() ;
@@ -20,8 +20,10 @@ package com.hp.hpl.jena.tdb.transaction ;
 
 import java.util.Map ;
 
+import com.hp.hpl.jena.query.ARQ ;
 import com.hp.hpl.jena.query.ReadWrite ;
 import com.hp.hpl.jena.tdb.TDBException ;
+import com.hp.hpl.jena.tdb.base.block.BlockCodec ;
 import com.hp.hpl.jena.tdb.base.block.BlockMgr ;
 import com.hp.hpl.jena.tdb.base.block.BlockMgrLogger ;
 import com.hp.hpl.jena.tdb.base.block.BlockMgrReadonly ;
@@ -31,12 +33,15 @@ import com.hp.hpl.jena.tdb.base.objectfile.ObjectFile ;
 import com.hp.hpl.jena.tdb.base.record.RecordFactory ;
 import com.hp.hpl.jena.tdb.index.Index ;
 import com.hp.hpl.jena.tdb.index.IndexMap ;
+import com.hp.hpl.jena.tdb.index.TupleLog ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTableInline ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTableReadonly ;
 import com.hp.hpl.jena.tdb.setup.BlockMgrBuilder ;
 import com.hp.hpl.jena.tdb.setup.DatasetBuilderStd ;
 import com.hp.hpl.jena.tdb.setup.NodeTableBuilder ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsDelta ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsLive ;
 import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
 import com.hp.hpl.jena.tdb.sys.FileRef ;
 import com.hp.hpl.jena.tdb.sys.Names ;
@@ -74,6 +79,9 @@ public class DatasetBuilderTxn
         DatasetGraphTxn dsgTxn = new DatasetGraphTxn(dsgTDB, txn) ;
         // Copy context. Changes not propagated back to the base dataset. 
         dsgTxn.getContext().putAll(dsg.getContext()) ;
+        // The journal views of a write transaction are not safe for use by other threads.
+        // The base may be the view of an earlier write transaction.
+        dsgTxn.getContext().set(ARQ.singleThreadedDataset, mode == ReadWrite.WRITE) ;
         return dsgTxn ;
     }
     
@@ -83,7 +91,8 @@ public class DatasetBuilderTxn
         NodeTableBuilder nodeTableBuilder = new NodeTableBuilderReadonly() ;
         DatasetBuilderStd x = new DatasetBuilderStd(blockMgrBuilder, nodeTableBuilder) ;
         DatasetGraphTDB dsg2 = x._build(dsg.getLocation(), dsg.getConfig().params, false, dsg.getReorderTransform()) ;
-        
+        if ( dsg.getStatsLive() != null )
+            dsg2.setStatsLive(dsg.getStatsLive(), false) ;
         return dsg2 ;
     }
 
@@ -94,6 +103,25 @@ public class DatasetBuilderTxn
         DatasetBuilderStd x = new DatasetBuilderStd(blockMgrBuilder, nodeTableBuilder) ;
         DatasetGraphTDB dsg2 = x._build(dsg.getLocation(), dsg.getConfig().params, true, dsg.getReorderTransform()) ;
         dsg2.getContext().putAll(dsg.getContext()) ;
+        StatsLive stats = dsg.getStatsLive() ;
+        if ( stats != null )
+        {
+            // Record the changes of this transaction, to apply when it commits.
+            dsg2.setStatsLive(stats, false) ;
+            StatsDelta delta = stats.newDelta(dsg2.getTripleTable().getNodeTupleTable().getNodeTable()) ;
+            dsg2.recordStats(delta) ;
+            txn.addComponent(new StatsTrans(stats, delta, dsg2)) ;
+        }
+        if ( txnMgr.isConcurrentWriters() )
+        {
+            // Record the changes, to make them again if a concurrent commit
+            // changed the same blocks and this transaction did not read anything.
+            TupleLog log = new TupleLog(SystemTDB.ConcurrentWriterReplaySize) ;
+            dsg2.getTripleTable().getNodeTupleTable().getTupleTable().setChangeLog(log) ;
+            dsg2.getQuadTable().getNodeTupleTable().getTupleTable().setChangeLog(log) ;
+            dsg2.getPrefixes().getNodeTupleTable().getTupleTable().setChangeLog(log) ;
+            txn.setChangeLog(log) ;
+        }
         return dsg2 ;
     }
 
@@ -115,6 +143,14 @@ public class DatasetBuilderTxn
             blkMgr = new BlockMgrLogger(blkMgr.getLabel(), blkMgr, true) ;
             return blkMgr ;
         }
+        
+        @Override
+        public BlockMgr buildBlockMgr(FileSet fileSet, String ext, BlockCodec codec)
+        {
+            BlockMgr blkMgr = other.buildBlockMgr(fileSet, ext, codec) ;
+            blkMgr = new BlockMgrLogger(blkMgr.getLabel(), blkMgr, true) ;
+            return blkMgr ;
+        }
     }
     
     // ---- Build transactional versions for update.
@@ -130,21 +166,27 @@ public class DatasetBuilderTxn
             if ( ntBase == null )
                 throw new TDBException("No NodeTable for "+ref) ;
             
-            RecordFactory recordFactory = new RecordFactory(SystemTDB.LenNodeHash, SystemTDB.SizeOfNodeId) ;
-            Index idx = new IndexMap(recordFactory) ;
-            String objFilename = fsObjectFile.filename(Names.extNodeData+"-"+Names.extJournal) ;
-            ObjectFile objectFile ;
-            
-            if ( fsObjectFile.isMem() )
-                objectFile = FileFactory.createObjectFileMem(objFilename) ;
+            NodeTableTrans ntt ;
+            if ( txnMgr.isConcurrentWriters() )
+                // No journal : new nodes are allocated in the base node table.
+                ntt = new NodeTableTrans(txn ,fsObjectFile.getBasename(), ntBase) ;
             else
-                objectFile = FileFactory.createObjectFileDisk(objFilename) ;
-
-            NodeTableTrans ntt = new NodeTableTrans(txn ,fsObjectFile.getBasename(), ntBase, idx, objectFile) ;
+            {
+                RecordFactory recordFactory = new RecordFactory(SystemTDB.LenNodeHash, SystemTDB.SizeOfNodeId) ;
+                Index idx = new IndexMap(recordFactory) ;
+                String objFilename = fsObjectFile.filename(Names.extNodeData+"-"+Names.extJournal) ;
+                ObjectFile objectFile ;
+                
+                if ( fsObjectFile.isMem() )
+                    objectFile = FileFactory.createObjectFileMem(objFilename) ;
+                else
+                    objectFile = FileFactory.createObjectFileDisk(objFilename) ;
+                ntt = new NodeTableTrans(txn ,fsObjectFile.getBasename(), ntBase, idx, objectFile) ;
+            }
             txn.addComponent(ntt) ;
             
             // Add inline wrapper.
-            NodeTable nt = NodeTableInline.create(ntt) ;
+            NodeTable nt = NodeTableInline.create(ntt, fsObjectFile.getLocation()) ;
             return nt ;
         }
     }
@@ -153,6 +195,18 @@ public class DatasetBuilderTxn
     {
         @Override
         public BlockMgr buildBlockMgr(FileSet fileSet, String ext, int blockSize)
+        {
+            return buildBlockMgr(fileSet, ext) ;
+        }
+        
+        @Override
+        public BlockMgr buildBlockMgr(FileSet fileSet, String ext, BlockCodec codec)
+        {
+            // The base block manager already encodes and decodes.
+            return buildBlockMgr(fileSet, ext) ;
+        }
+        
+        private BlockMgr buildBlockMgr(FileSet fileSet, String ext)
         {
             // Find from file ref.
             FileRef ref = FileRef.create(fileSet, ext) ;
@@ -171,6 +225,17 @@ public class DatasetBuilderTxn
     {
         @Override
         public BlockMgr buildBlockMgr(FileSet fileSet, String ext, int blockSize)
+        {
+            return buildBlockMgr(fileSet, ext) ;
+        }
+        
+        @Override
+        public BlockMgr buildBlockMgr(FileSet fileSet, String ext, BlockCodec codec)
+        {
+            return buildBlockMgr(fileSet, ext) ;
+        }
+        
+        private BlockMgr buildBlockMgr(FileSet fileSet, String ext)
         {
             FileRef ref = FileRef.create(fileSet, ext) ;
             BlockMgr blockMgr = blockMgrs.get(ref) ;
@@ -20,6 +20,7 @@ package com.hp.hpl.jena.tdb.transaction;
 
 import static com.hp.hpl.jena.tdb.sys.SystemTDB.SizeOfInt ;
 
+import java.io.File ;
 import java.nio.ByteBuffer ;
 import java.util.Iterator ;
 import java.util.zip.Adler32 ;
@@ -60,6 +61,14 @@ class Journal implements Sync, Closeable
     
     private BufferChannel channel ;
     private long position ;
+    // Bytes removed from the front of the journal by compact.
+    // Positions from endPosition() count from the start of the first journal. 
+    private long dropped = 0 ;
+    // Sync and compact, which replaces the channel, exclude each other.
+    // Writes only exclude compact so they can happen during a sync. 
+    private final Object channelLock = new Object() ;
+    // Bytes copied at a time when compacting.
+    private static final int CopyChunk = 64*1024 ;
     // Length, type, fileRef, [block id]
     // Length is length of variable part.
     private static int Overhead = 4*SizeOfInt ;
@@ -286,7 +295,86 @@ class Journal implements Sync, Closeable
     }
 
     @Override
-    public void sync()  { channel.sync() ; }
+    public void sync()
+    {
+        synchronized(channelLock) { channel.sync() ; }
+    }
+    
+    /** The end of the journal, as a position that is not changed by {@link #compact} */ 
+    synchronized
+    public long endPosition()   { return dropped+channel.size() ; }
+    
+    /** Remove the journal up to a position from {@link #endPosition}; the entries
+     *  after it are kept.  A file journal is rewritten to a new file that replaces
+     *  the journal when complete so a crash leaves either the old or the new journal.
+     */
+    public void compact(long endPosition)
+    {
+        synchronized(channelLock)
+        {
+            synchronized(this)
+            {
+                long cut = endPosition-dropped ;
+                if ( cut <= 0 )
+                    return ;
+                long size = channel.size() ;
+                if ( cut > size )
+                    throw new TDBTransactionException("Journal compact point beyond the end: "+cut+" > "+size) ;
+                if ( cut == size )
+                    channel.truncate(0) ;
+                else if ( channel instanceof BufferChannelFile )
+                {
+                    String filename = channel.getFilename() ;
+                    boolean done = compactFile(channel, cut, size) ;
+                    channel = BufferChannelFile.create(filename) ;
+                    if ( ! done )
+                    {
+                        log.warn("Failed to replace the journal with a compacted copy: "+filename) ;
+                        channel.position(channel.size()) ;
+                        return ;
+                    }
+                }
+                else
+                {
+                    ByteBuffer bb = ByteBuffer.allocate((int)(size-cut)) ;
+                    channel.read(bb, cut) ;
+                    bb.flip() ;
+                    channel.truncate(0) ;
+                    channel.write(bb) ;
+                }
+                channel.position(channel.size()) ;
+                position = channel.size() ;
+                dropped = endPosition ;
+            }
+        }
+    }
+    
+    // Copy from start to the end into a new file then replace the journal file by it.
+    // The channel is closed; returns false if the journal could not be replaced.
+    private static boolean compactFile(BufferChannel chan, long start, long size)
+    {
+        String filename = chan.getFilename() ;
+        String tmpFilename = filename+".tmp" ;
+        BufferChannel out = BufferChannelFile.create(tmpFilename) ;
+        out.truncate(0) ;
+        ByteBuffer bb = ByteBuffer.allocate(CopyChunk) ;
+        for ( long posn = start ; posn < size ; )
+        {
+            bb.clear() ;
+            if ( size-posn < CopyChunk )
+                bb.limit((int)(size-posn)) ;
+            int len = chan.read(bb, posn) ;
+            if ( len <= 0 )
+                throw new TDBTransactionException("Failed to read the journal at "+posn) ;
+            bb.flip() ;
+            out.write(bb) ;
+            posn += len ;
+        }
+        out.sync() ;
+        out.close() ;
+        chan.close() ;
+        return new File(tmpFilename).renameTo(new File(filename)) ;
+    }
 
     @Override
     public void close() { channel.close() ; }
@@ -295,7 +383,12 @@ class Journal implements Sync, Closeable
     
     public boolean isEmpty()  { return channel.size() == 0 ; }
 
-    public void truncate(long size) { channel.truncate(size) ; }
+    synchronized
+    public void truncate(long size)
+    {
+        channel.truncate(size) ;
+        position = Math.min(position, size) ;
+    }
     
     public void append()    { position(size()) ; }
     
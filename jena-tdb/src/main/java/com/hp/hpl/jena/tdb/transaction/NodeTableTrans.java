@@ -23,6 +23,9 @@ import static org.apache.jena.atlas.logging.Log.warn ;
 
 import java.nio.ByteBuffer ;
 import java.util.Iterator ;
+import java.util.LinkedHashMap ;
+import java.util.List ;
+import java.util.Map ;
 
 import org.apache.jena.atlas.iterator.Iter ;
 import org.apache.jena.atlas.lib.ByteBufferLib ;
@@ -31,6 +34,7 @@ import org.slf4j.Logger ;
 import org.slf4j.LoggerFactory ;
 
 import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.query.ReadWrite ;
 import com.hp.hpl.jena.tdb.TDBException ;
 import com.hp.hpl.jena.tdb.base.objectfile.ObjectFile ;
 import com.hp.hpl.jena.tdb.base.record.Record ;
@@ -38,7 +42,10 @@ import com.hp.hpl.jena.tdb.index.Index ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTableCache ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTableInline ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTableLib ;
 import com.hp.hpl.jena.tdb.nodetable.NodeTableNative ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTableWrapper ;
+import com.hp.hpl.jena.tdb.nodetable.Nodec ;
 import com.hp.hpl.jena.tdb.store.NodeId ;
 
 public class NodeTableTrans implements NodeTable, TransactionLifecycle
@@ -51,9 +58,15 @@ public class NodeTableTrans implements NodeTable, TransactionLifecycle
     private NodeTable nodeTableJournal = null ;
     private static int CacheSize = 10000 ;      // [TxTDB:TODO] Make configurable 
     private boolean passthrough = false ;
+    // Concurrent writers : new nodes are written to the object file of the base
+    // when first allocated and only added to its index when the transaction commits.
+    private final NodeTableNative allocator ;
+    private Map<Node, NodeId> newNodes = null ;
     
     private Index nodeIndex ;
     private ObjectFile journalObjFile ;
+    // The journal encodes nodes as the base does so the ids match when appended.
+    private final Nodec nodec ;
     // Start of the journal file for this transaction.
     // Always zero currently but allows for future  
     private long journalObjFileStartOffset ; 
@@ -64,8 +77,10 @@ public class NodeTableTrans implements NodeTable, TransactionLifecycle
     {
         this.txn = txn ;
         this.base = sub ;
+        this.allocator = null ;
         this.nodeIndex = nodeIndex ;
         this.journalObjFile = objFile ;
+        this.nodec = baseNodec(sub) ;
         // Clear bytes from an old run
         // (a crash while writing means the old transaction did not commit
         //  any bytes in the file are junk)
@@ -74,6 +89,72 @@ public class NodeTableTrans implements NodeTable, TransactionLifecycle
         this.label = label ; 
     }
 
+    /** A node table for one of several active write transactions.  There is no journal:
+     *  a new node is written to the object file of the base node table when it is first
+     *  allocated, which gives it its final id (see {@link NodeTableNative#reserve}), and
+     *  it is added to the index of the base node table when the transaction commits.
+     *  Until then, other transactions do not find it, but a transaction that adds the
+     *  same node is given the same id, so overlapping writers that add new nodes do not
+     *  conflict.  The node is left unused in the object file if no transaction that
+     *  added it commits.
+     */
+    public NodeTableTrans(Transaction txn, String label, NodeTable sub)
+    {
+        this.txn = txn ;
+        this.base = sub ;
+        this.label = label ;
+        this.nodec = baseNodec(sub) ;
+        this.allocator = baseAllocator(sub) ;
+        if ( allocator == null )
+            throw new TDBTransactionException(label+": concurrent writers need a native node table") ;
+    }
+
+    // The node encoding of the base node table, which may be the node table of an earlier transaction.
+    private static Nodec baseNodec(NodeTable nodeTable)
+    {
+        for ( ;; )
+        {
+            if ( nodeTable instanceof NodeTableTrans )
+                return ((NodeTableTrans)nodeTable).nodec ;
+            if ( ! ( nodeTable instanceof NodeTableWrapper ) )
+                return NodeTableLib.getNodec(nodeTable) ;
+            nodeTable = ((NodeTableWrapper)nodeTable).getBaseNodeTable() ;
+        }
+    }
+
+    // The native node table under the base, through any earlier transactions.
+    private static NodeTableNative baseAllocator(NodeTable nodeTable)
+    {
+        for ( ;; )
+        {
+            if ( nodeTable instanceof NodeTableTrans )
+                nodeTable = ((NodeTableTrans)nodeTable).base ;
+            else if ( nodeTable instanceof NodeTableWrapper )
+                nodeTable = ((NodeTableWrapper)nodeTable).getBaseNodeTable() ;
+            else
+                return NodeTableLib.getNative(nodeTable) ;
+        }
+    }
+
+    /** Whether the node table, possibly wrapped, is the node table of an active write transaction.
+     *  The node table of a read transaction may be layered over that of an earlier, committed,
+     *  write transaction.
+     */
+    public static boolean isWriteTransaction(NodeTable nodeTable)
+    {
+        for ( ;; )
+        {
+            if ( nodeTable instanceof NodeTableTrans )
+            {
+                Transaction txn = ((NodeTableTrans)nodeTable).txn ;
+                return txn != null && txn.getMode() == ReadWrite.WRITE && txn.getState() == TxnState.ACTIVE ;
+            }
+            if ( ! ( nodeTable instanceof NodeTableWrapper ) )
+                return false ;
+            nodeTable = ((NodeTableWrapper)nodeTable).getBaseNodeTable() ;
+        }
+    }
+
     public void setPassthrough(boolean v)   { passthrough = v ; }
     public NodeTable getBaseNodeTable()     { return base ; }
     public NodeTable getJournalTable()      { return nodeTableJournal ; }
@@ -86,10 +167,26 @@ public class NodeTableTrans implements NodeTable, TransactionLifecycle
         NodeId nodeId = getNodeIdForNode(node) ;
         if ( ! NodeId.isDoesNotExist(nodeId) )
             return nodeId ;
+        if ( allocator != null )
+        {
+            nodeId = allocator.reserve(node) ;
+            newNodes.put(node, nodeId) ;
+            return nodeId ;
+        }
         // add to journal
         nodeId = allocate(node) ;
         return nodeId ;
     }
+
+    @Override
+    public NodeId[] getAllocateNodeIds(List<Node> nodes)
+    {
+        if ( passthrough ) return base.getAllocateNodeIds(nodes) ;
+        NodeId[] nodeIds = new NodeId[nodes.size()] ;
+        for ( int i = 0 ; i < nodeIds.length ; i++ )
+            nodeIds[i] = getAllocateNodeId(nodes.get(i)) ;
+        return nodeIds ;
+    }
     
     @Override
     public NodeId getNodeIdForNode(Node node)
@@ -97,6 +194,11 @@ public class NodeTableTrans implements NodeTable, TransactionLifecycle
         if ( node == Node.ANY )
             return NodeId.NodeIdAny ;
         if ( passthrough ) return base.getNodeIdForNode(node) ;
+        if ( allocator != null )
+        {
+            NodeId nodeId = newNodes.get(node) ;
+            return ( nodeId != null ) ? nodeId : base.getNodeIdForNode(node) ;
+        }
         NodeId nodeId = nodeTableJournal.getNodeIdForNode(node) ;
         if ( ! NodeId.isDoesNotExist(nodeId) )
             return mapFromJournal(nodeId) ;
@@ -110,6 +212,8 @@ public class NodeTableTrans implements NodeTable, TransactionLifecycle
         if ( NodeId.isAny(id) ) 
             return Node.ANY ;
         if ( passthrough ) return base.getNodeForNodeId(id) ;
+        // New nodes are in the base object file.
+        if ( allocator != null ) return base.getNodeForNodeId(id) ;
         long x = id.getId() ;
         if ( x < allocOffset )
             return base.getNodeForNodeId(id) ;
@@ -148,7 +252,7 @@ public class NodeTableTrans implements NodeTable, TransactionLifecycle
     @Override
     public NodeId allocOffset()
     {
-        if ( passthrough ) return base.allocOffset() ;
+        if ( passthrough || allocator != null ) return base.allocOffset() ;
         // If we have done the append stage, this is invalid as the base may change under our feet
         // Would need to track base operations.
         NodeId x1 = nodeTableJournal.allocOffset() ;
@@ -166,6 +270,11 @@ public class NodeTableTrans implements NodeTable, TransactionLifecycle
         if ( passthrough )
             throw new TDBException("Already active") ;
         passthrough = false ;
+        if ( allocator != null )
+        {
+            newNodes = new LinkedHashMap<Node, NodeId>() ;
+            return ;
+        }
         
         allocOffset = base.allocOffset().getId() ;
         // base node table empty e.g. first use.
@@ -176,7 +285,7 @@ public class NodeTableTrans implements NodeTable, TransactionLifecycle
             warn(log, "%s journalStartOffset not zero: %d/0x%02X",txn.getLabel(), journalObjFileStartOffset, journalObjFileStartOffset) ;
         allocOffset += journalObjFileStartOffset ;
         
-        this.nodeTableJournal = new NodeTableNative(nodeIndex, journalObjFile) ;
+        this.nodeTableJournal = new NodeTableNative(nodeIndex, journalObjFile, nodec) ;
         this.nodeTableJournal = NodeTableCache.create(nodeTableJournal, CacheSize, CacheSize, 100) ;
         // This class knows about non-mappable inline values.   mapToJournal(NodeId)/mapFromJournal. 
         this.nodeTableJournal = NodeTableInline.create(nodeTableJournal) ;
@@ -269,6 +378,13 @@ public class NodeTableTrans implements NodeTable, TransactionLifecycle
     public void commitPrepare(Transaction txn)
     {
         debug("commitPrepare") ;
+        if ( allocator != null )
+        {
+            if ( newNodes == null )
+                throw new TDBTransactionException(txn.getLabel()+": Not in a transaction for a commit to happen") ;
+            writeNewNodes() ;
+            return ;
+        }
         
         // The node table is append-only so it can be written during prepare.
         // The index isn't written (via the transaction journal) until enact.
@@ -294,6 +410,20 @@ public class NodeTableTrans implements NodeTable, TransactionLifecycle
         //writeJournal() ;
     }
 
+    // Concurrent writers : add the new nodes to the index of the base, with the ids they were given.
+    private void writeNewNodes()
+    {
+        for ( Map.Entry<Node, NodeId> e : newNodes.entrySet() )
+        {
+            NodeId nodeId = base.getAllocateNodeId(e.getKey()) ;
+            if ( ! nodeId.equals(e.getValue()) )
+                throw new TDBException(String.format("Different ids for %s: allocated: expected %s, got %s", e.getKey(), e.getValue(), nodeId)) ;
+        }
+        newNodes = null ;
+        base.sync() ;
+        passthrough = true ;
+    }
+
     private void writeNodeJournal()
     {
         long expected = base.allocOffset().getId() ;
@@ -325,6 +455,16 @@ public class NodeTableTrans implements NodeTable, TransactionLifecycle
     public void abort(Transaction txn)
     {
         debug("abort") ;
+        if ( allocator != null )
+        {
+            if ( newNodes == null )
+                throw new TDBTransactionException(txn.getLabel()+": Not in a transaction for a commit to happen") ;
+            for ( Node node : newNodes.keySet() )
+                allocator.release(node) ;
+            newNodes = null ;
+            finish() ;
+            return ;
+        }
         if ( nodeTableJournal == null )
             throw new TDBTransactionException(txn.getLabel()+": Not in a transaction for a commit to happen") ;
         // Ensure the cache does not flush.
@@ -344,18 +484,24 @@ public class NodeTableTrans implements NodeTable, TransactionLifecycle
         passthrough = true ;
         nodeTableJournal = null ;
         journalObjFile = null ;
+        newNodes = null ;
    }
 
     @Override
     public Iterator<Pair<NodeId, Node>> all()
     {
         // Better would be to convert the spill file format.
+        if ( passthrough ) return base.all() ;
+        // The object file of the base includes the new nodes.
+        if ( allocator != null ) return base.all() ;
         return Iter.concat(base.all(), nodeTableJournal.all()) ;
     }
 
     @Override
     public boolean isEmpty()
     {
+        if ( passthrough ) return base.isEmpty() ;
+        if ( allocator != null ) return newNodes.isEmpty() && base.isEmpty() ;
         return nodeTableJournal.isEmpty() && base.isEmpty() ;
     }
 
@@ -20,6 +20,7 @@ package com.hp.hpl.jena.tdb.transaction;
 
 import java.nio.ByteBuffer ;
 import java.util.Iterator ;
+import java.util.List ;
 
 import org.apache.jena.atlas.iterator.Iter ;
 import org.apache.jena.atlas.lib.Pair ;
@@ -190,6 +191,16 @@ public class ObjectFileTrans implements ObjectFile, TransactionLifecycle
         return mapFromOther(x) ;
     }
 
+    @Override
+    public long[] write(List<ByteBuffer> buffers)
+    {
+        if ( passthrough ) { return base.write(buffers) ; } 
+        long[] x = transObjects.write(buffers) ;
+        for ( int i = 0 ; i < x.length ; i++ )
+            x[i] = mapFromOther(x[i]) ;
+        return x ;
+    }
+
     @Override
     public ByteBuffer read(long id)
     {
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.transaction;
+
+import com.hp.hpl.jena.tdb.solver.stats.StatsDelta ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsLive ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+/** The changes to the statistics made by a write transaction.
+ *  They are applied to the dataset statistics at the commit point, so the
+ *  statistics follow the committed state without waiting for the changes
+ *  to be written back to the base dataset. They are dropped on abort.
+ */
+public class StatsTrans implements TransactionLifecycle
+{
+    private final StatsLive stats ;
+    private final StatsDelta delta ;
+    private final DatasetGraphTDB view ;
+
+    /**
+     * @param stats     Statistics of the dataset
+     * @param delta     Changes made by the transaction
+     * @param view      The transaction's dataset, used if the statistics need to be recalculated
+     */
+    public StatsTrans(StatsLive stats, StatsDelta delta, DatasetGraphTDB view)
+    {
+        this.stats = stats ;
+        this.delta = delta ;
+        this.view = view ;
+    }
+    
+    public StatsDelta getDelta()    { return delta ; }
+    
+    /** The transaction has committed. */
+    /*package*/ void commit(Transaction txn)
+    {
+        // Past the commit point: don't fail the transaction.
+        try {
+            stats.apply(delta,
+                        view.getTripleTable().getNodeTupleTable().getTupleTable(),
+                        view.getQuadTable().getNodeTupleTable().getTupleTable()) ;
+        } catch (RuntimeException ex)
+        { SystemTDB.errlog.warn("Exception updating the statistics", ex) ; }
+        delta.clear() ;
+    }
+
+    @Override
+    public void begin(Transaction txn)
+    { delta.clear() ; }
+
+    @Override
+    public void abort(Transaction txn)
+    { delta.clear() ; }
+
+    @Override
+    public void commitPrepare(Transaction txn)
+    {}
+
+    @Override
+    public void commitEnact(Transaction txn)
+    {}
+
+    @Override
+    public void commitClearup(Transaction txn)
+    { delta.clear() ; }
+    
+    @Override
+    public String toString()        { return "StatsTrans: "+delta ; }
+}
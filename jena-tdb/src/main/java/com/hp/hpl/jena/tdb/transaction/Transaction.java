@@ -22,10 +22,12 @@ import java.util.ArrayList ;
 import java.util.Collections ;
 import java.util.Iterator ;
 import java.util.List ;
+import java.util.concurrent.atomic.AtomicBoolean ;
 
 import org.apache.jena.atlas.logging.Log ;
 
 import com.hp.hpl.jena.query.ReadWrite ;
+import com.hp.hpl.jena.tdb.index.TupleLog ;
 import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
 import com.hp.hpl.jena.tdb.sys.FileRef ;
 import com.hp.hpl.jena.tdb.sys.SystemTDB ;
@@ -41,6 +43,7 @@ public class Transaction
     
     private final List<NodeTableTrans> nodeTableTrans = new ArrayList<NodeTableTrans>() ;
     private final List<BlockMgrJournal> blkMgrs = new ArrayList<BlockMgrJournal>() ;
+    private final List<StatsTrans> statsTrans = new ArrayList<StatsTrans>() ;
     // The dataset this is a transaction over - may be a commited, pending dataset.
     private final DatasetGraphTDB   basedsg ;
 
@@ -54,6 +57,18 @@ public class Transaction
     
     private boolean changesPending ;
     
+    // Group commit: the commit sequence number of the state this
+    // transaction started from, and the one it was given when it committed. 
+    private long beginCommitSeq = 0 ;
+    private long commitSeq = -1 ;
+    private long commitTime = -1 ;
+    // Journal position after the commit record (see Journal.endPosition). 
+    private long journalEnd = -1 ;
+    // Single writer : whether this transaction still holds the writer permit.
+    private final AtomicBoolean writerPermit = new AtomicBoolean(false) ;
+    // Concurrent writers : the changes made, to replay on top of a concurrent commit.
+    private TupleLog changeLog = null ;
+    
     public Transaction(DatasetGraphTDB dsg, ReadWrite mode, long id, String label, TransactionManager txnMgr)
     {
         this.id = id ;
@@ -110,9 +125,20 @@ public class Transaction
                 case WRITE:
                     if ( state != TxnState.ACTIVE )
                         throw new TDBTransactionException("Transaction has already committed or aborted") ;
+                    boolean groupCommit = txnMgr.isGroupCommit() ;
                     // ---- Prepare
                     try {
-                        prepare() ;
+                        if ( groupCommit )
+                            // Validate, prepare and write the commit record in commit order.
+                            txnMgr.prepareCommit(this) ;
+                        else
+                            prepare() ;
+                    } catch (TransactionAbort ex)
+                    {
+                        // Conflict with a concurrent writer - nothing has been written.
+                        state = TxnState.ACTIVE ;
+                        abort() ;
+                        throw ex ;
                     } catch (RuntimeException ex)
                     {
                         if ( isIOException(ex) )
@@ -132,8 +158,15 @@ public class Transaction
                     // ---- end prepare
                     
                     try {
-                        journal.write(JournalEntryType.Commit, FileRef.Journal, null) ;
-                        journal.sync() ;        // Commit point.
+                        if ( groupCommit )
+                            txnMgr.syncCommit(this) ;   // Commit point, shared with other writers.
+                        else
+                        {
+                            journal.write(JournalEntryType.Commit, FileRef.Journal, null) ;
+                            journalEnd = journal.endPosition() ;
+                            journal.sync() ;        // Commit point.
+                            txnMgr.noteJournalSync(1) ;
+                        }
                     } catch (RuntimeException ex) {
                         // It either did all commit or didn't but we don't know which.
                         // Some low level system error - probably a sign of something
@@ -142,9 +175,13 @@ public class Transaction
                             SystemTDB.errlog.warn("IOException during 'commit' : transaction status not known (but not a partial commit): "+ex.getMessage()) ;
                         else
                             SystemTDB.errlog.warn("Exception during 'commit' : transaction status not known (but not a partial commit): ",ex) ;
+                        txnMgr.commitFailed(this, ex) ;
                         throw new TDBTransactionException("Exception at commit point", ex) ;
                     }
                     outcome = TxnOutcome.W_COMMITED ;
+                    // The statistics follow the committed state.
+                    for ( StatsTrans x : statsTrans )
+                        x.commit(this) ;
                     break ;
             }
 
@@ -176,13 +213,15 @@ public class Transaction
         return false ;
     }
 
-    private void prepare()
+    /*package*/ void prepare()
     {
         state = TxnState.PREPARING ;
         for ( BlockMgrJournal x : blkMgrs )
             x.commitPrepare(this) ;
         for ( NodeTableTrans x : nodeTableTrans )
             x.commitPrepare(this) ;
+        for ( StatsTrans x : statsTrans )
+            x.commitPrepare(this) ;
     }
 
     public void abort()
@@ -205,6 +244,9 @@ public class Transaction
     
                         for ( NodeTableTrans x : nodeTableTrans )
                             x.abort(this) ;
+                        
+                        for ( StatsTrans x : statsTrans )
+                            x.abort(this) ;
                     } catch (RuntimeException ex)
                     {
                         if ( isIOException(ex) )
@@ -303,6 +345,46 @@ public class Transaction
 
     public Journal getJournal()                     { return journal ; }
 
+    /*package*/ long getBeginCommitSeq()            { return beginCommitSeq ; }
+    /*package*/ void setBeginCommitSeq(long seq)    { beginCommitSeq = seq ; }
+    /*package*/ long getCommitSeq()                 { return commitSeq ; }
+    /*package*/ void setCommitSeq(long seq)         { commitSeq = seq ; }
+    /*package*/ long getCommitTime()                { return commitTime ; }
+    /*package*/ void setCommitTime(long millis)     { commitTime = millis ; }
+    /*package*/ long getJournalEnd()                { return journalEnd ; }
+    /*package*/ void setJournalEnd(long posn)       { journalEnd = posn ; }
+    /*package*/ List<BlockMgrJournal> blockMgrs()   { return blkMgrs ; }
+    /*package*/ List<NodeTableTrans> nodeTables()   { return nodeTableTrans ; }
+    /*package*/ void setWriterPermit()              { writerPermit.set(true) ; }
+    /** Give up the writer permit; returns true if this transaction was holding it */ 
+    /*package*/ boolean releaseWriterPermit()       { return writerPermit.compareAndSet(true, false) ; }
+    /*package*/ void setChangeLog(TupleLog log)     { changeLog = log ; }
+    /*package*/ TupleLog getChangeLog()             { return changeLog ; }
+    
+    /** Note that the transaction has read data from a block */
+    /*package*/ void noteRead()
+    {
+        if ( changeLog != null )
+            changeLog.read() ;
+    }
+    
+    /** Whether the transaction's changes can be made again on a later committed state */ 
+    /*package*/ boolean isReplayable()
+    {
+        return changeLog != null && changeLog.isReplayable() ;
+    }
+    
+    /** Make the transaction's changes again, after the blocks have been discarded
+     *  and moved on top of a later committed state. 
+     */
+    /*package*/ void redoChanges()
+    {
+        // The statistics are recalculated as the changes are made.
+        for ( StatsTrans x : statsTrans )
+            x.getDelta().clear() ;
+        changeLog.replay() ;
+    }
+
     public List<Iterator<?>> iterators()            { return Collections.unmodifiableList(iterators) ; }
     
     public void addIterator(Iterator<?> iter)       { iterators.add(iter) ; }
@@ -344,6 +426,7 @@ public class Transaction
         List<TransactionLifecycle> x = new ArrayList<TransactionLifecycle>() ;
         x.addAll(nodeTableTrans) ;
         x.addAll(blkMgrs) ;
+        x.addAll(statsTrans) ;
         return x ;
     }
     
@@ -357,6 +440,11 @@ public class Transaction
         blkMgrs.add(blkMgr) ;
     }
 
+    public void addComponent(StatsTrans stats)
+    {
+        statsTrans.add(stats) ;
+    }
+
     public DatasetGraphTDB getBaseDataset()
     {
         return basedsg ;
@@ -66,4 +66,42 @@ public class TransactionInfo implements TransactionInfoMBean {
 		return transactionManager.activeReaders.get() ;
 	}
 
+	@Override
+	public long getGroupCommitWindow() {
+		return transactionManager.getGroupCommitWindow() ;
+	}
+
+	@Override
+	public long getJournalSyncCount() {
+		return transactionManager.journalSyncs.get() ;
+	}
+
+	@Override
+	public double getJournalSyncAverageBatchSize() {
+		long syncs = transactionManager.journalSyncs.get() ;
+		if ( syncs == 0 )
+			return 0 ;
+		return (double)transactionManager.journalSyncedCommits.get() / syncs ;
+	}
+
+	@Override
+	public long getJournalSyncMaxBatchSize() {
+		return transactionManager.maxSyncBatch.get() ;
+	}
+
+	@Override
+	public long getReplayQueueDepth() {
+		return transactionManager.getReplayQueueDepth() ;
+	}
+
+	@Override
+	public long getReplayLagCommits() {
+		return transactionManager.getReplayLagCommits() ;
+	}
+
+	@Override
+	public long getReplayLagMillis() {
+		return transactionManager.getReplayLagMillis() ;
+	}
+
 }
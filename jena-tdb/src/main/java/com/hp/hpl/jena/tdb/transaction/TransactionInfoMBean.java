@@ -44,4 +44,25 @@ public interface TransactionInfoMBean
 
     /** Number of read transactions executing */
     long getCurrentReadTransactionCount() ; 
+
+    /** Group commit window in milliseconds (-1 if group commit is off) */
+    long getGroupCommitWindow() ;
+
+    /** Number of journal syncs for committing write transactions */
+    long getJournalSyncCount() ;
+
+    /** Average number of write transactions committed by one journal sync */
+    double getJournalSyncAverageBatchSize() ;
+
+    /** Largest number of write transactions committed by one journal sync */
+    long getJournalSyncMaxBatchSize() ;
+
+    /** Number of committed write transactions waiting to be written back to the database */
+    long getReplayQueueDepth() ;
+
+    /** Number of commits the database files are behind the latest committed state */
+    long getReplayLagCommits() ;
+
+    /** Age in milliseconds of the oldest commit not yet written back to the database */
+    long getReplayLagMillis() ;
 }
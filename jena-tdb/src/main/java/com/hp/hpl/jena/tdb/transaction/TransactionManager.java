@@ -25,8 +25,11 @@ import static java.lang.String.format ;
 
 import java.io.File ;
 import java.util.ArrayList ;
+import java.util.HashMap ;
 import java.util.HashSet ;
+import java.util.Iterator ;
 import java.util.List ;
+import java.util.Map ;
 import java.util.Set ;
 import java.util.concurrent.BlockingQueue ;
 import java.util.concurrent.LinkedBlockingDeque ;
@@ -41,7 +44,10 @@ import org.slf4j.LoggerFactory ;
 
 import com.hp.hpl.jena.query.ReadWrite ;
 import com.hp.hpl.jena.shared.Lock ;
+import com.hp.hpl.jena.tdb.TDB ;
+import com.hp.hpl.jena.tdb.base.block.BlockMgr ;
 import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.sys.FileRef ;
 import com.hp.hpl.jena.tdb.sys.SystemTDB ;
 
 public class TransactionManager
@@ -95,7 +101,7 @@ public class TransactionManager
     
     // Accessed by SysTxnState
     AtomicLong activeReaders = new AtomicLong(0) ; 
-    AtomicLong activeWriters = new AtomicLong(0) ; // 0 or 1
+    AtomicLong activeWriters = new AtomicLong(0) ; // 0 or 1, unless concurrent writers
     
     public long getCountActiveReaders()     { return activeReaders.get() ; }
     public long getCountActiveWriters()     { return activeWriters.get() ; }
@@ -114,6 +120,46 @@ public class TransactionManager
     
     // Ensure single writer.
     private Semaphore writersWaiting = new Semaphore(1, true) ;
+    
+    // Concurrent writers : optimistic, validated at commit.
+    private boolean concurrentWriters = false ;
+    // Group commit : milliseconds to wait for more commits before syncing the journal; -1 for off. 
+    private long groupCommitWindow = -1 ;
+    // Serializes validate-prepare-commit record of group committed writers.
+    private final Object commitLock = new Object() ;
+    // Serializes allocation of new blocks from the shared base BlockMgrs.
+    /*package*/ final Object allocationLock = new Object() ;
+    // Sequence number of the last commit record written to the journal (commitLock) 
+    private long commitSeq = 0 ;
+    // The view including the last commit record written; null means the base dataset. (commitLock)  
+    private DatasetGraphTDB lastCommitView = null ;
+    // Blocks written by recent commits, for validating writers that started before them. (commitLock)
+    private List<CommitRecord> recentCommits = new ArrayList<CommitRecord>() ;
+    // Journal sync covers all commits up to here (syncLock).
+    private final Object syncLock = new Object() ;
+    private long syncedSeq = 0 ;
+    // Last commit made visible to new transactions (this). 
+    private long publishedSeq = 0 ;
+    // Set if a writer fails at the commit point : its outcome is not known 
+    // and later commits are built on it so no more writers are allowed (this).
+    private volatile RuntimeException commitFailure = null ;
+    private long commitFailureSeq = Long.MAX_VALUE ;
+    
+    // Background replay : write committed transactions back to the base dataset
+    // as soon as no active transaction can see the state before them. 
+    private boolean backgroundReplay = false ;
+    private Thread replayThread = null ;
+    private final Object replayLock = new Object() ;     // One replay at a time.
+    private final Object replaySignal = new Object() ;
+    private boolean replayRequested = false ;           // (replaySignal) 
+    private volatile boolean replayStopping = false ;
+    // Last commit written back to the base dataset (this).
+    private long replayedSeq = 0 ;
+    
+    // Group commit stats.
+    AtomicLong journalSyncs = new AtomicLong(0) ;
+    AtomicLong journalSyncedCommits = new AtomicLong(0) ;
+    AtomicLong maxSyncBatch = new AtomicLong(0) ;
     // Delayes enacting transactions.
     private BlockingQueue<Transaction> queue = new LinkedBlockingDeque<Transaction>() ;
 
@@ -269,6 +315,11 @@ public class TransactionManager
     {
         this.baseDataset = dsg ; 
         this.journal = Journal.create(dsg.getLocation()) ;
+        this.concurrentWriters = dsg.getContext().isTrue(TDB.transactionConcurrentWriters) ||
+                                 TDB.getContext().isTrue(TDB.transactionConcurrentWriters) ; 
+        this.groupCommitWindow = determineGroupCommitWindow(dsg) ;
+        if ( dsg.getContext().isTrue(TDB.transactionBackgroundReplay) || TDB.getContext().isTrue(TDB.transactionBackgroundReplay) )
+            setBackgroundReplay(true) ;
         // LATER
 //        Committer c = new Committer() ;
 //        this.committerThread = new Thread(c) ;
@@ -278,7 +329,8 @@ public class TransactionManager
 
     public void closedown()
     {
-        processDelayedReplayQueue(null) ;
+        stopReplayThread() ;
+        synchronized(this) { processDelayedReplayQueue(null) ; }
         journal.close() ;
     }
 
@@ -298,8 +350,10 @@ public class TransactionManager
         // Not synchronized (else blocking on semaphore will never wake up
         // because Semaphore.release is inside synchronized.
         // Allow only one active writer. 
-        if ( mode == ReadWrite.WRITE )
+        boolean permit = false ;
+        if ( mode == ReadWrite.WRITE && ! concurrentWriters )
         {
+            checkCommitFailure() ;
             // Writers take a WRITE permit from the semaphore to ensure there
             // is at most one active writer, else the attempt to start the
             // transaction blocks.
@@ -309,9 +363,17 @@ public class TransactionManager
                 log.error(label, e) ;
                 throw new TDBTransactionException(e) ;
             }
+            permit = true ;
         }
         // entry synchronized part
-        return begin$(mode, label) ;
+        try { return begin$(mode, label, permit) ; }
+        catch (RuntimeException ex)
+        {
+            // No transaction was returned so no commit or abort will hand the permit back.
+            if ( permit )
+                writersWaiting.release() ;
+            throw ex ;
+        }
     }
         
     // If DatasetGraphTransaction has a sync lock on sConn, this
@@ -319,9 +381,12 @@ public class TransactionManager
     // of the low level object directly so we'll play safe.  
     
     synchronized
-    private DatasetGraphTxn begin$(ReadWrite mode, String label)
+    private DatasetGraphTxn begin$(ReadWrite mode, String label, boolean permit)
     {
-        if ( mode == ReadWrite.WRITE && activeWriters.get() > 0 )    // Guard
+        if ( mode == ReadWrite.WRITE )
+            checkCommitFailure() ;
+        // With group commit, the previous writer may not have finished its journal sync.
+        if ( mode == ReadWrite.WRITE && activeWriters.get() > 0 && ! isGroupCommit() )    // Guard
             throw new TDBTransactionException("Existing active write transaction") ;
 
         if ( DEBUG ) 
@@ -342,7 +407,22 @@ public class TransactionManager
         {
             if ( DEBUG ) System.out.print('_') ;
         }
+        long beginSeq = publishedSeq ;
+        if ( mode == ReadWrite.WRITE && isGroupCommit() )
+        {
+            // Writers start from the last commit in the journal, which may not
+            // yet be synced and visible to readers.
+            synchronized(commitLock)
+            {
+                if ( lastCommitView != null )
+                    dsg = lastCommitView ;
+                beginSeq = commitSeq ;
+            }
+        }
         Transaction txn = createTransaction(dsg, mode, label) ;
+        txn.setBeginCommitSeq(beginSeq) ;
+        if ( permit )
+            txn.setWriterPermit() ;
         
         log("begin$", txn) ;
         
@@ -412,6 +492,21 @@ public class TransactionManager
         if ( ! activeTransactions.contains(transaction) )
             SystemTDB.errlog.warn("Transaction not active: "+transaction.getTxnId()) ;
         
+        if ( transaction.getMode() == ReadWrite.WRITE )
+        {
+            if ( isGroupCommit() )
+                awaitPublishTurn(transaction) ;
+            else
+            {
+                synchronized(commitLock)
+                {
+                    commitSeq++ ;
+                    transaction.setCommitSeq(commitSeq) ;
+                }
+            }
+            transaction.setCommitTime(System.currentTimeMillis()) ;
+        }
+        
         noteTxnCommit(transaction) ;
 
         switch ( transaction.getMode() )
@@ -419,7 +514,15 @@ public class TransactionManager
             case READ: break ;
             case WRITE:
                 currentReaderView.set(null) ;       // Clear the READ transaction cache.
-                writersWaiting.release() ;          // Single writer: let another (waiting?) writer have a turn.
+                publishedSeq = transaction.getCommitSeq() ;
+                if ( isGroupCommit() )
+                {
+                    // Any single writer semaphore was released when the commit record was written.
+                    pruneCommitRecords() ;
+                    notifyAll() ;                   // Wake up any later commits waiting their turn.
+                }
+                else
+                    releaseWriterPermit(transaction) ;  // Single writer: let another (waiting?) writer have a turn.
         }
     }
 
@@ -435,7 +538,11 @@ public class TransactionManager
         switch ( transaction.getMode() )
         {
             case READ: break ;
-            case WRITE: writersWaiting.release() ;
+            case WRITE:
+                if ( concurrentWriters )
+                    pruneCommitRecords() ;
+                else
+                    releaseWriterPermit(transaction) ;
         }
     }
     
@@ -451,11 +558,17 @@ public class TransactionManager
         transaction.signalEnacted() ;
     }
 
-    /** Try to flush the delayed write queue - only happens if there are no active transactions */ 
-    synchronized
+    /** Try to flush the delayed write queue - only happens if there are no active transactions.
+     *  With background replay, write back all the transactions that can be, now.
+     */ 
     public void flush()
     {
-        processDelayedReplayQueue(null) ;
+        if ( backgroundReplay )
+        {
+            replayEligible() ;
+            return ;
+        }
+        synchronized(this) { processDelayedReplayQueue(null) ; }
     }
     
     // -- The main operations to undertake when a transaction finishes.
@@ -464,19 +577,33 @@ public class TransactionManager
     
     private void readerFinishesWorker(Transaction txn)
     {
+        if ( backgroundReplay )
+        {
+            // May have been holding back write back.
+            if ( queue.size() > 0 )
+                requestReplay() ;
+            return ;
+        }
         if ( queue.size() >= QueueBatchSize )
-            processDelayedReplayQueue(txn) ;
+            flushDelayedReplayQueue(txn) ;
     }
     
     private void writerAbortsWorker(Transaction txn)
     {
+        if ( backgroundReplay )
+        {
+            if ( queue.size() > 0 )
+                requestReplay() ;
+            return ;
+        }
         if ( queue.size() >= QueueBatchSize )
-            processDelayedReplayQueue(txn) ;
+            flushDelayedReplayQueue(txn) ;
     }
     
     private void writerCommitsWorker(Transaction txn)
     {
-        if ( activeReaders.get() == 0 && queue.size() >= QueueBatchSize )
+        // activeWriters is only non-zero here with concurrent writers.
+        if ( ! backgroundReplay && activeReaders.get() == 0 && activeWriters.get() == 0 && queue.size() >= QueueBatchSize )
         {
             // Can commit immediately.
             // Ensure the queue is empty though.
@@ -492,6 +619,8 @@ public class TransactionManager
             processDelayedReplayQueue(txn) ;
             enactTransaction(txn) ;
             JournalControl.replay(txn) ;
+            replayedSeq = txn.getCommitSeq() ;
+            resetLastCommitView() ;
         }
         else
         {
@@ -500,10 +629,24 @@ public class TransactionManager
             maxQueue = Math.max(commitedAwaitingFlush.size(), maxQueue) ;
             if ( log() ) log("Add to pending queue", txn) ; 
             queue.add(txn) ;
+            if ( backgroundReplay )
+                requestReplay() ;
+            else if ( queue.size() >= QueueBatchSize )
+                flushDelayedReplayQueue(txn) ;
         }
 
     }
     
+    private void flushDelayedReplayQueue(Transaction txn)
+    {
+        if ( concurrentWriters )
+            // There may always be an active writer : write back the commits
+            // that no active transaction started before.
+            replayEligible() ;
+        else
+            processDelayedReplayQueue(txn) ;
+    }
+    
     private void processDelayedReplayQueue(Transaction txn)
     {
         // Can we do work?
@@ -558,6 +701,8 @@ public class TransactionManager
 
         // Whole journal to base database
         JournalControl.replay(journal, baseDataset) ;
+        replayedSeq = publishedSeq ;
+        resetLastCommitView() ;
 
         if ( DEBUG ) checkNodesDatJrnl("4", txn) ;
         
@@ -569,6 +714,422 @@ public class TransactionManager
         
     }
 
+    // ---- Group commit and concurrent writers
+    
+    /** Whether several write transactions may be active at the same time */ 
+    public boolean isConcurrentWriters()    { return concurrentWriters ; }
+    
+    /** Allow, or disallow, several active write transactions.
+     *  Can only be changed when there are no active transactions.
+     *  @see TDB#transactionConcurrentWriters
+     */
+    synchronized
+    public void setConcurrentWriters(boolean flag)
+    {
+        if ( ! activeTransactions.isEmpty() )
+            throw new TDBTransactionException("Can't change the writer policy with active transactions") ;
+        concurrentWriters = flag ;
+    }
+    
+    /** Whether commits go through the group commit stage, where one journal
+     *  sync can cover the commits of several writers.  Concurrent writers
+     *  always use group commit.
+     */
+    public boolean isGroupCommit()          { return concurrentWriters || groupCommitWindow >= 0 ; }
+    
+    /** Milliseconds a commit waits for other commits to join its journal sync; -1 if group commit is off */  
+    public long getGroupCommitWindow()      { return groupCommitWindow ; }
+    
+    /** Set the group commit window in milliseconds, 0 for no wait, or -1 to turn group commit off.
+     *  Can only be changed when there are no active transactions.
+     *  @see TDB#transactionGroupCommitWindow
+     */
+    synchronized
+    public void setGroupCommitWindow(long millis)
+    {
+        if ( ! activeTransactions.isEmpty() )
+            throw new TDBTransactionException("Can't change the commit policy with active transactions") ;
+        groupCommitWindow = ( millis < 0 ) ? -1 : millis ;
+    }
+    
+    private static long determineGroupCommitWindow(DatasetGraphTDB dsg)
+    {
+        Object x = dsg.getContext().get(TDB.transactionGroupCommitWindow) ;
+        if ( x == null )
+            x = TDB.getContext().get(TDB.transactionGroupCommitWindow) ;
+        if ( x == null )
+            return -1 ;
+        try {
+            long millis = Long.parseLong(x.toString().trim()) ;
+            return ( millis < 0 ) ? -1 : millis ;
+        } catch (NumberFormatException ex)
+        {
+            throw new TDBTransactionException("Bad group commit window: "+x) ;
+        }
+    }
+    
+    /** The blocks written by one committed transaction */
+    private static class CommitRecord
+    {
+        final long seq ;
+        final Map<FileRef, Set<Long>> writes ;
+        CommitRecord(long seq, Map<FileRef, Set<Long>> writes) { this.seq = seq ; this.writes = writes ; }
+    }
+    
+    /** Group commit: check the transaction against the writers that
+     *  committed after it started, then move it on top of the latest commit, 
+     *  prepare it and write the commit record to the journal. 
+     *  A transaction that conflicts but has only added and deleted tuples
+     *  has its changes made again on top of the latest commit instead of aborting.
+     *  The journal is not synced - see {@link #syncCommit}.
+     */
+    /*package*/ void prepareCommit(Transaction txn)
+    {
+        synchronized(commitLock)
+        {
+            boolean conflict = false ;
+            for ( CommitRecord r : recentCommits )
+            {
+                if ( r.seq <= txn.getBeginCommitSeq() )
+                    continue ;
+                for ( BlockMgrJournal blkMgr : txn.blockMgrs() )
+                {
+                    Set<Long> writes = r.writes.get(blkMgr.getFileRef()) ;
+                    if ( writes != null && blkMgr.conflicts(writes) )
+                    {
+                        // A transaction that only wrote can make its changes again. 
+                        if ( ! txn.isReplayable() )
+                            throw new TransactionAbort(txn.getLabel()+": conflict with a concurrent commit on "+blkMgr.getLabel()) ;
+                        conflict = true ;
+                    }
+                }
+            }
+            if ( conflict )
+            {
+                for ( BlockMgrJournal blkMgr : txn.blockMgrs() )
+                    blkMgr.discard() ;
+            }
+            
+            DatasetGraphTDB view = ( lastCommitView == null ) ? baseDataset : lastCommitView ;
+            if ( view != txn.getBaseDataset() )
+            {
+                Map<FileRef, BlockMgr> blockMgrs = view.getConfig().blockMgrs ;
+                for ( BlockMgrJournal blkMgr : txn.blockMgrs() )
+                {
+                    BlockMgr underlying = blockMgrs.get(blkMgr.getFileRef()) ;
+                    if ( underlying == null )
+                        throw new TDBTransactionException("No BlockMgr for "+blkMgr.getFileRef()) ;
+                    blkMgr.rebase(underlying) ;
+                }
+            }
+            if ( conflict )
+                txn.redoChanges() ;
+            
+            Map<FileRef, Set<Long>> writes = new HashMap<FileRef, Set<Long>>() ;
+            for ( BlockMgrJournal blkMgr : txn.blockMgrs() )
+                writes.put(blkMgr.getFileRef(), blkMgr.getWriteSet()) ;
+            
+            txn.prepare() ;
+            journal.write(JournalEntryType.Commit, FileRef.Journal, null) ;
+            txn.setJournalEnd(journal.endPosition()) ;
+            
+            commitSeq++ ;
+            txn.setCommitSeq(commitSeq) ;
+            if ( concurrentWriters )
+                recentCommits.add(new CommitRecord(commitSeq, writes)) ;
+            lastCommitView = txn.getActiveDataset().getView() ;
+        }
+        // Single writer: the next writer can start from this commit
+        // while the journal sync happens.
+        if ( ! concurrentWriters )
+            releaseWriterPermit(txn) ;
+    }
+    
+    /** Single writer : hand back the permit the transaction took in {@link #begin}.
+     *  A transaction can release it from several places (the commit record is written,
+     *  commit, abort, a failed commit) so only the first one does anything. 
+     */ 
+    private void releaseWriterPermit(Transaction txn)
+    {
+        if ( txn.releaseWriterPermit() )
+            writersWaiting.release() ;
+    }
+    
+    /** A write transaction failed at the commit point.  It is not known whether
+     *  the commit record reached the disk, and later commits have been built on
+     *  top of it, so no further writers are allowed and commits waiting to be
+     *  published after it fail rather than wait for ever.
+     */
+    synchronized
+    /*package*/ void commitFailed(Transaction txn, RuntimeException ex)
+    {
+        if ( commitFailure == null )
+            commitFailure = ex ;
+        // Group commit has a commit sequence number by now; single writer does not.  
+        if ( txn.getCommitSeq() > 0 )
+            commitFailureSeq = Math.min(commitFailureSeq, txn.getCommitSeq()) ;
+        releaseWriterPermit(txn) ;
+        notifyAll() ;
+    }
+    
+    private void checkCommitFailure()
+    {
+        if ( commitFailure != null )
+            throw new TDBTransactionException("A previous commit failed at the commit point - no more write transactions", commitFailure) ;
+    }
+    
+    /** Group commit: sync the journal so the transaction's commit record is on disk.
+     *  One sync covers all the commit records written so far, so writers that
+     *  commit within the group commit window share it.
+     */ 
+    /*package*/ void syncCommit(Transaction txn)
+    {
+        synchronized(syncLock)
+        {
+            if ( syncedSeq >= txn.getCommitSeq() )
+                return ;
+            // Later commits write their commit records, then wait for this sync.   
+            if ( groupCommitWindow > 0 )
+            {
+                try { Thread.sleep(groupCommitWindow) ; }
+                catch (InterruptedException ex) { Thread.currentThread().interrupt() ; }
+            }
+            long seq ;
+            synchronized(commitLock) { seq = commitSeq ; }
+            journal.sync() ;
+            noteJournalSync(seq-syncedSeq) ;
+            syncedSeq = seq ;
+        }
+    }
+    
+    /** Record a journal sync covering a number of commits */ 
+    /*package*/ void noteJournalSync(long commits)
+    {
+        inc(journalSyncs) ;
+        journalSyncedCommits.addAndGet(commits) ;
+        for(;;)
+        {
+            long max = maxSyncBatch.get() ;
+            if ( commits <= max || maxSyncBatch.compareAndSet(max, commits) )
+                break ;
+        }
+    }
+    
+    // Commits are made visible in commit record order, so that the view
+    // a new transaction starts from includes exactly the commits up to its
+    // begin sequence number.
+    private void awaitPublishTurn(Transaction txn)
+    {
+        while ( publishedSeq != txn.getCommitSeq()-1 )
+        {
+            if ( txn.getCommitSeq() > commitFailureSeq )
+                throw new TDBTransactionException(txn.getLabel()+": an earlier commit failed at the commit point", commitFailure) ;
+            try { wait() ; }
+            catch (InterruptedException ex)
+            { throw new TDBTransactionException("Interrupted waiting for earlier commits", ex) ; }
+        }
+    }
+    
+    // Drop the commit records no active writer can conflict with. 
+    private void pruneCommitRecords()
+    {
+        long minSeq = Long.MAX_VALUE ;
+        for ( Transaction txn : activeTransactions )
+        {
+            if ( txn.getMode() == ReadWrite.WRITE )
+                minSeq = Math.min(minSeq, txn.getBeginCommitSeq()) ;
+        }
+        synchronized(commitLock)
+        {
+            Iterator<CommitRecord> iter = recentCommits.iterator() ;
+            while ( iter.hasNext() )
+            {
+                if ( iter.next().seq <= minSeq )
+                    iter.remove() ;
+            }
+        }
+    }
+    
+    private void resetLastCommitView()
+    {
+        synchronized(commitLock) { lastCommitView = null ; }
+    }
+    
+    // ---- Background replay
+    
+    /** Whether committed transactions are written back to the base dataset by a background thread */
+    public boolean isBackgroundReplay()     { return backgroundReplay ; }
+    
+    /** Turn background replay on or off.
+     *  Can only be changed when there are no active transactions.
+     *  @see TDB#transactionBackgroundReplay
+     */
+    public void setBackgroundReplay(boolean flag)
+    {
+        synchronized(this)
+        {
+            if ( ! activeTransactions.isEmpty() )
+                throw new TDBTransactionException("Can't change the replay policy with active transactions") ;
+            if ( flag == backgroundReplay )
+                return ;
+            if ( flag )
+            {
+                backgroundReplay = true ;
+                replayStopping = false ;
+                replayThread = new Thread(new Replayer(), "TDB replay: "+baseDataset.getLocation().getDirectoryPath()) ;
+                replayThread.setDaemon(true) ;
+                replayThread.start() ;
+                return ;
+            }
+        }
+        // Wait for the thread to finish outside the lock : it may be replaying.
+        stopReplayThread() ;
+    }
+    
+    /** Number of committed transactions not yet written back to the base dataset */
+    public long getReplayQueueDepth()       { return queue.size() ; }
+    
+    /** Number of commits between the latest state and the base dataset */ 
+    synchronized
+    public long getReplayLagCommits()       { return publishedSeq - replayedSeq ; }
+    
+    /** Age, in milliseconds, of the oldest commit not yet written back to the base dataset */
+    public long getReplayLagMillis()
+    {
+        Transaction txn = queue.peek() ;
+        if ( txn == null )
+            return 0 ;
+        return System.currentTimeMillis()-txn.getCommitTime() ;
+    }
+    
+    private void requestReplay()
+    {
+        synchronized(replaySignal)
+        {
+            replayRequested = true ;
+            replaySignal.notifyAll() ;
+        }
+    }
+    
+    private void stopReplayThread()
+    {
+        Thread t ;
+        synchronized(this)
+        {
+            t = replayThread ;
+            replayThread = null ;
+        }
+        if ( t == null )
+            return ;
+        replayStopping = true ;
+        requestReplay() ;
+        try { t.join() ; }
+        catch (InterruptedException ex) { Thread.currentThread().interrupt() ; }
+        // Only now can other ways of writing back start.  
+        synchronized(this) { backgroundReplay = false ; }
+    }
+    
+    class Replayer implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            for(;;)
+            {
+                synchronized(replaySignal)
+                {
+                    while ( ! replayRequested && ! replayStopping )
+                    {
+                        try { replaySignal.wait() ; }
+                        catch (InterruptedException ex) { return ; }
+                    }
+                    replayRequested = false ;
+                }
+                if ( replayStopping )
+                    return ;
+                try { replayEligible() ; }
+                catch (RuntimeException ex)
+                { syslog.error("Exception during background replay", ex) ; }
+            }
+        }
+    }
+    
+    /** Write back, in commit order, the committed transactions that no active
+     *  transaction started before.  Active transactions that started after such
+     *  a commit see its changes in its journal blocks, so they are unaffected by
+     *  the base dataset changing underneath.  The journal is then compacted
+     *  to the end of the last commit written back.
+     */
+    private void replayEligible()
+    {
+        synchronized(replayLock)
+        {
+            List<Transaction> batch = new ArrayList<Transaction>() ;
+            synchronized(this)
+            {
+                long minSeq = Long.MAX_VALUE ;
+                for ( Transaction txn : activeTransactions )
+                {
+                    // Transactions finishing now no longer read their starting view.
+                    if ( txn.getState() == TxnState.COMMITED || txn.getState() == TxnState.ABORTED )
+                        continue ;
+                    minSeq = Math.min(minSeq, txn.getBeginCommitSeq()) ;
+                }
+                for ( Transaction txn : queue )
+                {
+                    if ( txn.getCommitSeq() > minSeq )
+                        break ;
+                    batch.add(txn) ;
+                }
+            }
+            if ( batch.isEmpty() )
+                return ;
+            
+            Map<FileRef, BlockMgr> baseBlockMgrs = baseDataset.getConfig().blockMgrs ;
+            for ( Transaction txn : batch )
+            {
+                if ( log() ) log("Background replay", txn) ;
+                for ( BlockMgrJournal blkMgr : txn.blockMgrs() )
+                    blkMgr.writeBack(baseBlockMgrs.get(blkMgr.getFileRef())) ;
+            }
+            for ( BlockMgr blkMgr : baseBlockMgrs.values() )
+                blkMgr.syncForce() ;
+            
+            synchronized(this)
+            {
+                for ( Transaction txn : batch )
+                {
+                    queue.remove(txn) ;
+                    commitedAwaitingFlush.remove(txn) ;
+                    enactTransaction(txn) ;
+                    replayedSeq = txn.getCommitSeq() ;
+                }
+                // The next commit can read the base dataset directly, 
+                // rather than through the emptied journals of the commits before it. 
+                Transaction next = queue.peek() ;
+                if ( next != null )
+                {
+                    for ( BlockMgrJournal blkMgr : next.blockMgrs() )
+                        blkMgr.rebase(baseBlockMgrs.get(blkMgr.getFileRef())) ;
+                }
+                if ( commitedAwaitingFlush.isEmpty() )
+                {
+                    currentReaderView.set(null) ;
+                    synchronized(commitLock)
+                    {
+                        if ( commitSeq == replayedSeq )
+                            lastCommitView = null ;
+                    }
+                }
+            }
+            // The base files now hold everything up to the end of the batch
+            // so the journal before that point is not needed for recovery.
+            long journalEnd = batch.get(batch.size()-1).getJournalEnd() ;
+            if ( journalEnd > 0 )
+                journal.compact(journalEnd) ;
+        }
+    }
+    
     private void checkNodesDatJrnl(String label, Transaction txn)
     {
         if (txn != null)
@@ -665,6 +1226,12 @@ public class TransactionManager
     {
         return journal ;
     }
+    
+    /** Replace the journal; only when there are no active transactions */ 
+    /*package*//*testing*/ void setJournal(Journal journal)
+    {
+        this.journal = journal ;
+    }
 
     // ---- Logging
     // Choose log output once when this object is created.
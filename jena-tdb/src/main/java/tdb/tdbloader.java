@@ -25,11 +25,14 @@ import org.apache.jena.riot.RDFLanguages ;
 import tdb.cmdline.CmdTDB ;
 import tdb.cmdline.CmdTDBGraph ;
 import tdb.cmdline.ModModel ;
+import arq.cmd.CmdException ;
+import arq.cmdline.ArgDecl ;
 
 import com.hp.hpl.jena.query.ARQ ;
 import com.hp.hpl.jena.tdb.TDB ;
 import com.hp.hpl.jena.tdb.TDBLoader ;
 import com.hp.hpl.jena.tdb.store.GraphTDB ;
+import com.hp.hpl.jena.tdb.store.bulkloader.BulkLoader ;
 
 public class tdbloader extends CmdTDBGraph {
     // private static final ArgDecl argParallel = new ArgDecl(ArgDecl.NoValue,
@@ -37,6 +40,8 @@ public class tdbloader extends CmdTDBGraph {
     // private static final ArgDecl argIncremental = new
     // ArgDecl(ArgDecl.NoValue, "incr", "incremental") ;
 
+    private static final ArgDecl  argPipeline   = new ArgDecl(ArgDecl.HasValue, "pipeline") ;
+
     private static final ModModel modRDFS       = new ModModel("rdfs") ;
 
     // private String rdfsVocabFilename = null ;
@@ -62,6 +67,7 @@ public class tdbloader extends CmdTDBGraph {
         // super.add(argStats, "--stats",
         // "Generate statistics while loading (new graph only)") ;
         // addModule(modRDFS) ;
+        super.add(argPipeline, "--pipeline=N", "Look up nodes in N threads, pipelined with parsing") ;
     }
 
     @Override
@@ -69,6 +75,13 @@ public class tdbloader extends CmdTDBGraph {
         super.processModulesAndArgs() ;
         // doInParallel = super.contains(argParallel) ;
         // doIncremental = super.contains(argIncremental) ;
+        if ( super.contains(argPipeline) ) {
+            try {
+                BulkLoader.PipelineThreads = Integer.parseInt(super.getValue(argPipeline)) ;
+            } catch (NumberFormatException ex) {
+                throw new CmdException("Not a number: " + super.getValue(argPipeline)) ;
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tdb;
+
+import tdb.cmdline.CmdTDB ;
+import arq.cmd.CmdException ;
+import arq.cmdline.ArgDecl ;
+
+import com.hp.hpl.jena.tdb.TDBMigrate ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTableFactory ;
+import com.hp.hpl.jena.tdb.setup.SystemParams ;
+
+/** Copy a database to a new location with a chosen node table encoding. */ 
+public class tdbmigrate extends CmdTDB
+{
+    private static final ArgDecl argDest     = new ArgDecl(ArgDecl.HasValue, "dest") ;
+    private static final ArgDecl argEncoding = new ArgDecl(ArgDecl.HasValue, "encoding") ;
+    
+    private String destination = null ;
+    private String encoding = NodeTableFactory.EncodingBinary ;
+    
+    static public void main(String... argv)
+    { 
+        CmdTDB.init() ;
+        new tdbmigrate(argv).mainRun() ;
+    }
+
+    protected tdbmigrate(String[] argv)
+    {
+        super(argv) ;
+        super.add(argDest, "--dest=DIR", "Location of the new database") ;
+        super.add(argEncoding, "--encoding=binary|sse", "Node table encoding of the new database (default: binary)") ;
+    }
+    
+    @Override
+    protected void processModulesAndArgs()
+    {
+        super.processModulesAndArgs() ;
+        if ( ! super.contains(argDest) )
+            throw new CmdException("No destination (--dest)") ;
+        destination = super.getValue(argDest) ;
+        if ( super.contains(argEncoding) )
+            encoding = super.getValue(argEncoding) ;
+        if ( ! encoding.equals(NodeTableFactory.EncodingBinary) && ! encoding.equals(NodeTableFactory.EncodingSSE) )
+            throw new CmdException("Unknown node table encoding: "+encoding) ;
+    }
+    
+    @Override
+    protected String getSummary()
+    {
+        return getCommandName()+" --loc=DIR --dest=DIR [--encoding=binary|sse]" ;
+    }
+
+    @Override
+    protected void exec()
+    {
+        SystemParams params = SystemParams.getStdSystemParams() ;
+        params.nodeEncoding = encoding ;
+        TDBMigrate.migrate(getLocation(), new Location(destination), params) ;
+    }
+}
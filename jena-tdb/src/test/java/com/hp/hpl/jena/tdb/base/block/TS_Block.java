@@ -25,8 +25,10 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses( {
     TestBlockMgrMem.class
     , TestBlockMgrDirect.class
+    , TestBlockMgrPooled.class
     , TestBlockMgrMapped.class
     , TestBlockMgrTracked.class
+    , TestBlockMgrCacheStriped.class
 })
 
 
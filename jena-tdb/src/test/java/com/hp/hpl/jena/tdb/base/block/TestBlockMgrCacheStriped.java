@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.base.block;
+
+import static org.apache.jena.atlas.lib.ByteBufferLib.fill ;
+
+import java.util.concurrent.atomic.AtomicInteger ;
+
+import org.apache.jena.atlas.lib.FileOps ;
+import org.junit.AfterClass ;
+import org.junit.BeforeClass ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.tdb.ConfigTest ;
+
+public class TestBlockMgrCacheStriped extends AbstractTestBlockMgr
+{
+    static final String filename = ConfigTest.getTestingDir()+"/block-mgr-striped" ;
+    
+    @BeforeClass static public void remove1() { FileOps.delete(filename) ; } 
+    @AfterClass  static public void remove2() { FileOps.delete(filename) ; }
+    
+    @Override
+    protected BlockMgr make()
+    { 
+        return make(4, 2, 2) ;
+    }
+    
+    private static BlockMgr make(int readSlots, int writeSlots, int stripes)
+    { 
+        FileOps.delete(filename) ;
+        BlockMgr mgr = BlockMgrFactory.createStdFileNoCache(filename, BlkSize) ;
+        return BlockMgrCacheStriped.create("test", readSlots, writeSlots, stripes, mgr) ;
+    }
+
+    private static long[] writeBlocks(BlockMgr mgr, int N)
+    {
+        long[] ids = new long[N] ;
+        for ( int i = 0 ; i < N ; i++ )
+        {
+            Block block = mgr.allocate(BlkSize) ;
+            fill(block.getByteBuffer(), (byte)i) ;
+            ids[i] = block.getId() ;
+            mgr.write(block) ;
+            mgr.release(block) ;
+        }
+        return ids ;
+    }
+    
+    private static BlockMgrCacheStriped cache(BlockMgr mgr)
+    {
+        return (BlockMgrCacheStriped)mgr ;
+    }
+    
+    // More blocks than either cache holds : spill the write cache and cycle the read cache.  
+    @Test public void striped_01()
+    {
+        int N = 20 ;
+        long[] ids = writeBlocks(blockMgr, N) ;
+        blockMgr.sync() ;
+        for ( int j = 0 ; j < 3 ; j++ )
+            for ( int i = 0 ; i < N ; i++ )
+            {
+                Block block = blockMgr.getRead(ids[i]) ;
+                contains(block.getByteBuffer(), (byte)i) ;
+                blockMgr.release(block) ;
+            }
+        BlockMgrCacheStriped c = cache(blockMgr) ;
+        assertTrue(c.getReadCacheSize() <= 4) ;
+        assertTrue(c.getCacheMisses() > 0) ;
+    }
+
+    // Repeated reads of a small working set are hits.
+    @Test public void striped_02()
+    {
+        long[] ids = writeBlocks(blockMgr, 2) ;
+        blockMgr.sync() ;
+        BlockMgrCacheStriped c = cache(blockMgr) ;
+        long misses = c.getCacheMisses() ;
+        long hits = c.getCacheReadHits() ;
+        for ( int j = 0 ; j < 10 ; j++ )
+        {
+            Block block = blockMgr.getRead(ids[j%2]) ;
+            blockMgr.release(block) ;
+        }
+        assertEquals(misses, c.getCacheMisses()) ;
+        assertEquals(hits+10, c.getCacheReadHits()) ;
+    }
+
+    // A block read, then promoted and changed, is seen changed.
+    @Test public void striped_03()
+    {
+        long[] ids = writeBlocks(blockMgr, 3) ;
+        blockMgr.sync() ;
+        Block block = blockMgr.getRead(ids[1]) ;
+        blockMgr.release(block) ;
+        Block block2 = blockMgr.getWrite(ids[1]) ;
+        fill(block2.getByteBuffer(), 0, BlkSize, (byte)99) ;
+        blockMgr.write(block2) ;
+        blockMgr.release(block2) ;
+        Block block3 = blockMgr.getRead(ids[1]) ;
+        contains(block3.getByteBuffer(), (byte)99) ;
+        blockMgr.release(block3) ;
+        blockMgr.sync() ;
+        Block block4 = blockMgr.getRead(ids[1]) ;
+        contains(block4.getByteBuffer(), (byte)99) ;
+        blockMgr.release(block4) ;
+    }
+
+    // Concurrent readers.
+    @Test public void striped_04() throws Exception
+    {
+        blockMgr.endUpdate() ;
+        blockMgr.close() ;
+        blockMgr = make(16, 4, 4) ;
+        blockMgr.beginUpdate() ;
+        
+        final int N = 100 ;
+        final long[] ids = writeBlocks(blockMgr, N) ;
+        blockMgr.sync() ;
+        final AtomicInteger errors = new AtomicInteger(0) ;
+        Thread[] threads = new Thread[4] ;
+        for ( int t = 0 ; t < threads.length ; t++ )
+        {
+            final int seed = t ;
+            threads[t] = new Thread() {
+                @Override public void run()
+                {
+                    for ( int j = 0 ; j < 2000 ; j++ )
+                    {
+                        int i = (j*7+seed*13) % N ;
+                        Block block = blockMgr.getRead(ids[i]) ;
+                        if ( block.getByteBuffer().get(0) != (byte)i || block.getByteBuffer().get(BlkSize-1) != (byte)i )
+                            errors.incrementAndGet() ;
+                        blockMgr.release(block) ;
+                    }
+                }
+            } ;
+        }
+        for ( Thread t : threads ) t.start() ;
+        for ( Thread t : threads ) t.join() ;
+        assertEquals(0, errors.get()) ;
+        assertTrue(cache(blockMgr).getReadCacheSize() <= 16) ;
+    }
+}
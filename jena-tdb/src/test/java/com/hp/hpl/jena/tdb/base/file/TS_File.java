@@ -29,6 +29,7 @@ import org.junit.runners.Suite ;
     , TestBlockAccessMem.class
     , TestBlockAccessByteArray.class
     , TestBlockAccessDirect.class
+    , TestBlockAccessPooled.class
     , TestBlockAccessMapped.class
 })
 
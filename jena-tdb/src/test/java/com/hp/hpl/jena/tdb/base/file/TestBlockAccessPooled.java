@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.base.file;
+
+import java.nio.ByteBuffer ;
+
+import org.apache.jena.atlas.lib.FileOps ;
+import org.junit.AfterClass ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.tdb.ConfigTest ;
+import com.hp.hpl.jena.tdb.base.block.Block ;
+
+public class TestBlockAccessPooled extends AbstractTestBlockAccessFixedSize
+{
+    static String filename = ConfigTest.getTestingDir()+"/test-file-access-pooled" ;
+    
+    static final int BlockSize = 50 ;
+    public TestBlockAccessPooled()
+    {
+        super(BlockSize) ;
+    }
+
+    @AfterClass public static void cleanup() { FileOps.deleteSilent(filename) ; } 
+    
+    @Override
+    protected BlockAccess make()
+    {
+        FileOps.deleteSilent(filename) ;
+        return new BlockAccessPooled(filename, BlockSize, new BufferPool(4, 64, 3)) ;
+    }
+    
+    private static BlockAccess fill(BufferPool pool, int N)
+    {
+        FileOps.deleteSilent(filename) ;
+        BlockAccess file = new BlockAccessPooled(filename, BlockSize, pool) ;
+        for ( int i = 0 ; i < N ; i++ )
+        {
+            Block b = file.allocate(BlockSize) ;
+            b.getByteBuffer().put(0, (byte)b.getId().intValue()) ;
+            file.write(b) ;
+            file.release(b) ;
+        }
+        file.sync() ;
+        return file ;
+    }
+    
+    private static int value(Block b) { return b.getByteBuffer().get(0) ; }
+    
+    private static int read(BlockAccess file, long id)
+    {
+        Block b = file.read(id) ;
+        try { return value(b) ; } finally { file.release(b) ; }
+    }
+    
+    @Test public void pooled_01()
+    {
+        // More blocks than frames : a few hot blocks among the others.
+        BufferPool pool = new BufferPool(5, BlockSize, 0) ;
+        BlockAccess file = fill(pool, 20) ;
+        for ( int i = 0 ; i < 200 ; i++ )
+        {
+            int id = ( i%2 == 0 ) ? (i/2)%3 : (i*7)%20 ;
+            assertEquals(id, read(file, id)) ;
+        }
+        assertEquals(0, pool.getPinned()) ;
+        assertTrue(pool.size() <= 5) ;
+        assertTrue(pool.getHits() > 0) ;
+        file.close() ;
+        assertEquals(0, pool.size()) ;
+    }
+
+    @Test public void pooled_02()
+    {
+        // Sequential reads are read ahead.
+        BufferPool pool = new BufferPool(10, BlockSize, 4) ;
+        fill(pool, 20).close() ;
+        BlockAccessPooled file = new BlockAccessPooled(filename, BlockSize, pool) ;
+        for ( int id = 0 ; id < 20 ; id++ )
+            assertEquals(id, read(file, id)) ;
+        assertTrue(file.getFileReads() < 10) ;
+        file.close() ;
+    }
+    
+    @Test public void pooled_03()
+    {
+        // Writes of other space update the pool.
+        BufferPool pool = new BufferPool(10, BlockSize, 0) ;
+        BlockAccess file = fill(pool, 5) ;
+        assertEquals(3, read(file, 3)) ;
+        Block b = new Block(3, ByteBuffer.allocate(BlockSize)) ;
+        b.getByteBuffer().put(0, (byte)99) ;
+        file.write(b) ;
+        assertEquals(99, read(file, 3)) ;
+        file.close() ;
+    }
+    
+    @Test(expected=FileException.class)
+    public void pooled_04()
+    {
+        // Frames too small.
+        FileOps.deleteSilent(filename) ;
+        new BlockAccessPooled(filename, BlockSize, new BufferPool(10, BlockSize-1, 0)) ;
+    }
+    
+    @Test public void pooled_05()
+    {
+        // Blocks are over the frames and pin them until released.
+        BufferPool pool = new BufferPool(10, BlockSize, 0) ;
+        BlockAccess file = fill(pool, 5) ;
+        Block b1 = file.read(2) ;
+        Block b2 = file.read(2) ;
+        assertTrue(b1.getByteBuffer().isDirect()) ;
+        assertEquals(1, pool.getPinned()) ;
+        b1.getByteBuffer().put(0, (byte)77) ;
+        assertEquals(77, value(b2)) ;
+        file.release(b1) ;
+        assertEquals(1, pool.getPinned()) ;
+        // Releasing twice does nothing.
+        file.release(b1) ;
+        assertEquals(1, pool.getPinned()) ;
+        file.release(b2) ;
+        assertEquals(0, pool.getPinned()) ;
+        file.close() ;
+    }
+    
+    @Test public void pooled_06()
+    {
+        // A block changed in place and written reaches the file.
+        BufferPool pool = new BufferPool(10, BlockSize, 0) ;
+        BlockAccess file = fill(pool, 5) ;
+        Block b = file.read(4) ;
+        b.getByteBuffer().put(0, (byte)88) ;
+        file.write(b) ;
+        file.release(b) ;
+        Block b2 = file.allocate(BlockSize) ;
+        assertEquals(0, value(b2)) ;
+        b2.getByteBuffer().put(0, (byte)55) ;
+        file.write(b2) ;
+        file.release(b2) ;
+        file.close() ;
+        assertEquals(0, pool.getPinned()) ;
+        
+        BlockAccess file2 = new BlockAccessPooled(filename, BlockSize, new BufferPool(10, BlockSize, 0)) ;
+        assertEquals(88, read(file2, 4)) ;
+        assertEquals(55, read(file2, 5)) ;
+        file2.close() ;
+    }
+    
+    @Test public void pooled_07()
+    {
+        // Every frame pinned : reads are into heap space.
+        BufferPool pool = new BufferPool(2, BlockSize, 0) ;
+        BlockAccessPooled file = (BlockAccessPooled)fill(pool, 5) ;
+        Block b0 = file.read(0) ;
+        Block b1 = file.read(1) ;
+        Block b2 = file.read(2) ;
+        assertEquals(2, pool.getPinned()) ;
+        assertFalse(b2.getByteBuffer().isDirect()) ;
+        assertEquals(2, value(b2)) ;
+        // The heap space is shared while the block is out.
+        Block b2a = file.read(2) ;
+        b2.getByteBuffer().put(0, (byte)66) ;
+        assertEquals(66, value(b2a)) ;
+        assertEquals(4, file.getPinnedBlocks()) ;
+        file.release(b2a) ;
+        file.release(b2) ;
+        file.release(b0) ;
+        assertEquals(3, read(file, 3)) ;
+        file.release(b1) ;
+        assertEquals(0, pool.getPinned()) ;
+        assertEquals(0, file.getPinnedBlocks()) ;
+        file.close() ;
+    }
+    
+    @Test public void pooled_08()
+    {
+        // Closing gives back the frames of unreleased blocks.
+        BufferPool pool = new BufferPool(4, BlockSize, 0) ;
+        BlockAccess file = fill(pool, 5) ;
+        file.read(1) ;
+        file.read(2) ;
+        assertEquals(2, pool.getPinned()) ;
+        file.close() ;
+        assertEquals(0, pool.getPinned()) ;
+        assertEquals(0, pool.size()) ;
+    }
+}
@@ -22,6 +22,8 @@ import static com.hp.hpl.jena.tdb.base.BufferTestLib.sameValue ;
 import static com.hp.hpl.jena.tdb.base.objectfile.AbstractTestObjectFile.fill ;
 
 import java.nio.ByteBuffer ;
+import java.util.ArrayList ;
+import java.util.List ;
 
 import org.apache.jena.atlas.junit.BaseTest ;
 import org.junit.Test ;
@@ -83,6 +85,40 @@ public class TestObjectFileBuffering extends BaseTest
         }
     }
 
+
+    // One write, then the rest as a batch write. 
+    private void writeBatch(int sizeOfBuffer, int first, int... sizes)
+    {
+        ObjectFile file = make(sizeOfBuffer) ;
+        ByteBuffer bb0 = ByteBuffer.allocate(first) ;
+        fill(bb0) ;
+        long loc0 = file.write(bb0) ;
+        
+        int N = sizes.length ;
+        List<ByteBuffer> bb = new ArrayList<ByteBuffer>() ;
+        for ( int i = 0 ; i < N ; i++ )
+        {
+            ByteBuffer b = ByteBuffer.allocate(sizes[i]) ;
+            fill(b) ;
+            bb.add(b) ;
+        }
+        long loc[] = file.write(bb) ;
+        assertEquals(N, loc.length) ;
+        
+        sameValue(bb0, file.read(loc0)) ;
+        for ( int i = 0 ; i < N ; i++ )
+        {
+            ByteBuffer read = file.read(loc[i]) ;
+            assertNotSame(bb.get(i), read) ;
+            sameValue(bb.get(i), read) ;
+        }
+        // Appends continue after the batch. 
+        ByteBuffer bb9 = ByteBuffer.allocate(3) ;
+        fill(bb9) ;
+        long loc9 = file.write(bb9) ;
+        assertTrue(loc9 > ( N == 0 ? loc0 : loc[N-1] )) ;
+        sameValue(bb9, file.read(loc9)) ;
+    }
     
     @Test public void objectfile_50()       { write(5, 10) ; }
     @Test public void objectfile_51()       { writePrealloc(5, 10) ; }
@@ -98,4 +134,9 @@ public class TestObjectFileBuffering extends BaseTest
     @Test public void objectfile_60()       { write(20, 4, 4, 8) ; }
     @Test public void objectfile_61()       { writePrealloc(20, 4, 4, 8) ; }
 
+    @Test public void objectfile_62()       { writeBatch(40, 4, 4, 4, 8) ; }    // Fits
+    @Test public void objectfile_63()       { writeBatch(30, 10, 4, 4, 6) ; }   // Fits after a flush
+    @Test public void objectfile_64()       { writeBatch(20, 4, 10, 10, 10) ; } // Bigger than the buffer
+    @Test public void objectfile_65()       { writeBatch(20, 4) ; }             // Empty batch
+
 }
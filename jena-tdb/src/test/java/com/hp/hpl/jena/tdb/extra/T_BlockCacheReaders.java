@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.extra ;
+
+import static java.lang.String.format ;
+
+import java.util.Random ;
+import java.util.concurrent.CountDownLatch ;
+
+import org.apache.jena.atlas.lib.FileOps ;
+
+import com.hp.hpl.jena.tdb.ConfigTest ;
+import com.hp.hpl.jena.tdb.base.block.Block ;
+import com.hp.hpl.jena.tdb.base.block.BlockCacheType ;
+import com.hp.hpl.jena.tdb.base.block.BlockMgr ;
+import com.hp.hpl.jena.tdb.base.block.BlockMgrFactory ;
+import com.hp.hpl.jena.tdb.base.file.BufferPool ;
+
+/** Multi-threaded read throughput of the block caches (direct mode files, and the buffer pool).
+ *  Arguments (optional): threads, blocks in file, read cache size, reads per thread.
+ */
+public class T_BlockCacheReaders
+{
+    static final int BlockSize = 8*1024 ;
+    
+    public static void main(String... argv) throws Exception
+    {
+        int maxThreads   = argv.length > 0 ? Integer.parseInt(argv[0]) : 8 ;
+        int numBlocks    = argv.length > 1 ? Integer.parseInt(argv[1]) : 20*1000 ;
+        int cacheSize    = argv.length > 2 ? Integer.parseInt(argv[2]) : 10*1000 ;
+        int readsPerThread = argv.length > 3 ? Integer.parseInt(argv[3]) : 1000*1000 ;
+        
+        String filename = ConfigTest.getTestingDir()+"/block-cache-readers" ;
+        FileOps.ensureDir(ConfigTest.getTestingDir()) ;
+        FileOps.delete(filename) ;
+        
+        // Build the file.
+        BlockMgr mgr = BlockMgrFactory.createStdFileNoCache(filename, BlockSize) ;
+        mgr.beginUpdate() ;
+        for ( int i = 0 ; i < numBlocks ; i++ )
+        {
+            Block block = mgr.allocate(BlockSize) ;
+            block.getByteBuffer().putInt(0, i) ;
+            mgr.write(block) ;
+        }
+        mgr.endUpdate() ;
+        mgr.sync() ;
+        mgr.close() ;
+        
+        System.out.printf("Blocks=%d CacheSize=%d Reads/thread=%d\n", numBlocks, cacheSize, readsPerThread) ;
+        for ( BlockCacheType cacheType : BlockCacheType.values() )
+        {
+            for ( int threads = 1 ; threads <= maxThreads ; threads = 2*threads )
+            {
+                BlockMgr blockMgr = ( cacheType == BlockCacheType.pooled )
+                    ? BlockMgrFactory.createPooledFile(filename, BlockSize, new BufferPool(cacheSize, BlockSize, 0))
+                    : BlockMgrFactory.createStdFile(filename, BlockSize, cacheSize, 0, cacheType) ;
+                // Warm up and JIT.
+                run(blockMgr, threads, numBlocks, readsPerThread/10) ;
+                long ms = run(blockMgr, threads, numBlocks, readsPerThread) ;
+                long total = (long)threads*readsPerThread ;
+                System.out.println(format("%-8s threads=%-3d %6d ms  %,12d reads/s", cacheType, threads, ms, (1000*total)/Math.max(1, ms))) ;
+                blockMgr.close() ;
+            }
+        }
+        FileOps.delete(filename) ;
+    }
+
+    private static long run(final BlockMgr blockMgr, int threads, final int numBlocks, final int reads) throws InterruptedException
+    {
+        final CountDownLatch start = new CountDownLatch(1) ;
+        final CountDownLatch finish = new CountDownLatch(threads) ;
+        for ( int t = 0 ; t < threads ; t++ )
+        {
+            final Random random = new Random(t) ;
+            new Thread() {
+                @Override public void run()
+                {
+                    try {
+                        start.await() ;
+                        blockMgr.beginRead() ;
+                        for ( int i = 0 ; i < reads ; i++ )
+                        {
+                            // Skewed : most reads go to a small part of the file, as B+Tree upper levels do.
+                            int id = random.nextInt(8) == 0 ? random.nextInt(numBlocks) : random.nextInt(numBlocks/10+1) ;
+                            Block block = blockMgr.getRead(id) ;
+                            if ( block.getByteBuffer().getInt(0) != id )
+                                throw new RuntimeException("Wrong block: "+id) ;
+                            blockMgr.release(block) ;
+                        }
+                        blockMgr.endRead() ;
+                    } catch (InterruptedException ex) {}
+                    finally { finish.countDown() ; }
+                }
+            }.start() ;
+        }
+        long startTime = System.currentTimeMillis() ;
+        start.countDown() ;
+        finish.await() ;
+        return System.currentTimeMillis()-startTime ;
+    }
+}
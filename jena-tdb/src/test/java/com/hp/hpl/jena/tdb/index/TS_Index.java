@@ -23,8 +23,11 @@ import org.junit.runners.Suite;
 
 import com.hp.hpl.jena.tdb.index.bplustree.TestBPTreeRecords;
 import com.hp.hpl.jena.tdb.index.bplustree.TestBPlusTree;
+import com.hp.hpl.jena.tdb.index.bplustree.TestBPlusTreeCompressed ;
+import com.hp.hpl.jena.tdb.index.bplustree.TestBPlusTreePooled ;
 import com.hp.hpl.jena.tdb.index.bplustree.TestBPlusTreeRewriter ;
 import com.hp.hpl.jena.tdb.index.ext.TestExtHash;
+import com.hp.hpl.jena.tdb.index.ext.TestExtHashSharded;
 
 
 @RunWith(Suite.class)
@@ -32,11 +35,15 @@ import com.hp.hpl.jena.tdb.index.ext.TestExtHash;
     TestBPlusTree.class,
     TestBPTreeRecords.class,
     TestBPlusTreeRewriter.class,
+    TestBPlusTreeCompressed.class,
+    TestBPlusTreePooled.class,
     
     TestExtHash.class,
+    TestExtHashSharded.class,
     TestTupleIndexRecord.class,
     TestTupleIndexRecordDirect.class,
-    TestTupleTable.class
+    TestTupleTable.class,
+    TestCompressedIndexes.class
 } )
 
 public class TS_Index
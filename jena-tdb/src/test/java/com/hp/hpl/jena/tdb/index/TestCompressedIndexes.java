@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.index;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.FileOps ;
+import org.junit.After ;
+import org.junit.Before ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Graph ;
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
+import com.hp.hpl.jena.tdb.ConfigTest ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.index.bplustree.BPlusTree ;
+import com.hp.hpl.jena.tdb.index.bplustree.BPlusTreeParams ;
+import com.hp.hpl.jena.tdb.setup.DatasetBuilderStd ;
+import com.hp.hpl.jena.tdb.setup.SystemParams ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.sys.Names ;
+
+public class TestCompressedIndexes extends BaseTest
+{
+    private String DIR ;
+    
+    static Node p = NodeFactoryExtra.parseNode("<http://example/p>") ;
+    
+    @Before public void before()    { DIR = ConfigTest.getCleanDir() ; }
+    @After  public void after()     { FileOps.clearDirectory(DIR) ; }
+
+    @Test public void compressed_indexes_new_db()
+    {
+        DatasetGraphTDB dsg = build(new String[]{"POS"}) ;
+        assertTrue(isCompressed(dsg, "POS")) ;
+        assertFalse(isCompressed(dsg, "SPO")) ;
+        load(dsg.getDefaultGraph(), 2000) ;
+        check(dsg.getDefaultGraph(), 2000) ;
+        dsg.close() ;
+
+        Location loc = new Location(DIR) ;
+        assertEquals(BPlusTreeParams.LeafLayoutCompressed, loc.getMetaFile().getProperty(Names.kBPlusTreeLayout+".POS")) ;
+        assertFalse(loc.getMetaFile().hasProperty(Names.kBPlusTreeLayout+".SPO")) ;
+        
+        // Reopen, with no indexes selected: the recorded layout is used.
+        dsg = build(new String[]{}) ;
+        assertTrue(isCompressed(dsg, "POS")) ;
+        check(dsg.getDefaultGraph(), 2000) ;
+        dsg.close() ;
+    }
+    
+    @Test public void compressed_indexes_existing_db()
+    {
+        // Indexes created with the fixed layout stay fixed.
+        DatasetGraphTDB dsg = build(new String[]{}) ;
+        load(dsg.getDefaultGraph(), 100) ;
+        dsg.close() ;
+        
+        dsg = build(new String[]{"POS"}) ;
+        assertFalse(isCompressed(dsg, "POS")) ;
+        check(dsg.getDefaultGraph(), 100) ;
+        dsg.close() ;
+    }
+    
+    private static void load(Graph graph, int N)
+    {
+        for ( int i = 0 ; i < N ; i++ )
+            graph.add(triple(i)) ;
+    }
+    
+    private static void check(Graph graph, int N)
+    {
+        assertEquals(N, graph.size()) ;
+        for ( int i = 0 ; i < N ; i++ )
+            assertTrue(graph.contains(triple(i))) ;
+        // By POS
+        assertEquals(N/10, graph.find(Node.ANY, p, NodeFactoryExtra.intToNode(7)).toList().size()) ;
+    }
+    
+    private static Triple triple(int i)
+    {
+        Node s = NodeFactoryExtra.parseNode("<http://example/s"+i+">") ;
+        return new Triple(s, p, NodeFactoryExtra.intToNode(i%10)) ;
+    }
+    
+    private static boolean isCompressed(DatasetGraphTDB dsg, String name)
+    {
+        TupleIndex[] indexes = dsg.getTripleTable().getNodeTupleTable().getTupleTable().getIndexes() ;
+        for ( TupleIndex index : indexes )
+        {
+            if ( ! index.getName().equals(name) )
+                continue ;
+            RangeIndex rIndex = ((TupleIndexRecord)index).getRangeIndex() ;
+            return ((BPlusTree)rIndex).getLeafCodec() != null ;
+        }
+        fail("No such index: "+name) ;
+        return false ;
+    }
+    
+    private DatasetGraphTDB build(String[] compressedIndexes)
+    {
+        SystemParams params = new SystemParams() ;
+        params.compressedIndexes = compressedIndexes ;
+        return DatasetBuilderStd.stdBuilder().build(new Location(DIR), params) ;
+    }
+}
@@ -25,6 +25,8 @@ import static com.hp.hpl.jena.tdb.index.IndexTestLib.randTest;
 import static com.hp.hpl.jena.tdb.index.IndexTestLib.testInsert;
 import static com.hp.hpl.jena.tdb.index.IndexTestLib.testInsertDelete;
 
+import java.util.ArrayList ;
+import java.util.Arrays ;
 import java.util.List;
 
 
@@ -32,6 +34,8 @@ import org.apache.jena.atlas.junit.BaseTest ;
 import org.junit.After;
 import org.junit.Test;
 
+import com.hp.hpl.jena.tdb.base.record.Record ;
+import com.hp.hpl.jena.tdb.base.record.RecordCursor ;
 import com.hp.hpl.jena.tdb.base.record.RecordLib;
 
 public abstract class TestRangeIndex extends BaseTest 
@@ -397,6 +401,140 @@ public abstract class TestRangeIndex extends BaseTest
     }
     
     
+    @Test public void tree_cursor_2_01()
+    {
+        int[] keys = {0, 2, 4, 6, 8, 1, 3, 5, 7, 9} ;
+        rIndex = makeRangeIndex(2) ;
+        add(rIndex, keys) ;
+        List<Integer> x = cursorToIntList(rIndex.cursor(r(4), r(8))) ;
+        List<Integer> expected = toIntList(4,5,6,7) ;
+        assertEquals(expected, x) ;
+    }
+    
+    @Test public void tree_cursor_2_02()
+    {
+        int[] keys = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9} ;
+        rIndex = makeRangeIndex(2) ;
+        add(rIndex, keys) ;
+        List<Integer> x = cursorToIntList(rIndex.cursor(null, null)) ;
+        List<Integer> expected = toIntList(keys) ;
+        assertEquals(expected, x) ;
+    }
+    
+    @Test public void tree_cursor_2_03()
+    {
+        int[] keys = {1, 2, 3, 4, /*5, 6,*/ 7, 8, 9, 10 ,11} ;
+        rIndex = makeRangeIndex(2) ;
+        add(rIndex, keys) ;
+        assertEquals(toIntList(), cursorToIntList(rIndex.cursor(r(5), r(7)))) ;
+        assertEquals(toIntList(), cursorToIntList(rIndex.cursor(r(7), r(5)))) ;
+        assertEquals(toIntList(9,10,11), cursorToIntList(rIndex.cursor(r(9), null))) ;
+        assertEquals(toIntList(1,2), cursorToIntList(rIndex.cursor(null, r(3)))) ;
+    }
+
+    @Test public void tree_cursor_0_01()
+    {
+        rIndex = makeRangeIndex(2) ;
+        RecordCursor cursor = rIndex.cursor(null, null) ;
+        assertFalse(cursor.advance()) ;
+        cursor.close() ;
+    }
+
+    @Test public void tree_cursor_2_04()
+    {
+        // Stop early, then read again.
+        int[] keys = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9} ;
+        rIndex = makeRangeIndex(2) ;
+        add(rIndex, keys) ;
+        RecordCursor cursor = rIndex.cursor(r(2), null) ;
+        assertTrue(cursor.advance()) ;
+        assertEquals(2, r(cursor.getRecord())) ;
+        cursor.close() ;
+        cursor.close() ;
+        assertFalse(cursor.advance()) ;
+        assertEquals(toIntList(8,9), cursorToIntList(rIndex.cursor(r(8), null))) ;
+    }
+
+    @Test public void tree_cursor_3_N()
+    {
+        // Cursor and iterator agree.
+        int[] keys = new int[500] ;
+        for ( int i = 0 ; i < keys.length ; i++ )
+            keys[i] = 3*i ;
+        rIndex = makeRangeIndex(3) ;
+        add(rIndex, keys) ;
+        for ( int lo = -2 ; lo < 1500 ; lo += 97 )
+        {
+            int hi = lo+200 ;
+            List<Integer> x1 = cursorToIntList(rIndex.cursor(r(lo), r(hi))) ;
+            List<Integer> x2 = toIntList(rIndex.iterator(r(lo), r(hi))) ;
+            assertEquals(x2, x1) ;
+        }
+    }
+
+    @Test public void tree_cursor_seek_3_N()
+    {
+        // Seek forward through a series of ranges agrees with separate iterators.
+        int[] keys = new int[500] ;
+        for ( int i = 0 ; i < keys.length ; i++ )
+            keys[i] = 3*i ;
+        rIndex = makeRangeIndex(3) ;
+        add(rIndex, keys) ;
+        RecordCursor cursor = rIndex.cursor(r(0), r(1)) ;
+        assertEquals(toIntList(0), cursorToIntList(cursor)) ;
+        int seeks = 0 ;
+        int ranges = 0 ;
+        for ( int lo = 1 ; lo < 1600 ; lo += 7 )
+        {
+            int hi = lo+1+(lo%11) ;
+            ranges++ ;
+            // Seek is allowed to decline; the caller then starts a new cursor.
+            if ( cursor.seek(r(lo), r(hi)) )
+                seeks++ ;
+            else
+                cursor = rIndex.cursor(r(lo), r(hi)) ;
+            List<Integer> x1 = cursorToIntList(cursor) ;
+            List<Integer> x2 = toIntList(rIndex.iterator(r(lo), r(hi))) ;
+            assertEquals(x2, x1) ;
+        }
+        // Small steps forward stay within the current or next leaf.
+        assertTrue(seeks > ranges/2) ;
+    }
+    
+    @Test public void tree_cursor_seek_2_01()
+    {
+        int[] keys = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9} ;
+        rIndex = makeRangeIndex(2) ;
+        add(rIndex, keys) ;
+        RecordCursor cursor = rIndex.cursor(r(2), r(4)) ;
+        assertTrue(cursor.advance()) ;
+        // Not read to the end of the range.
+        assertTrue(cursor.seek(r(4), r(6))) ;
+        assertEquals(toIntList(4, 5), cursorToIntList(cursor)) ;
+        // Backwards
+        assertFalse(cursor.seek(r(1), r(3))) ;
+        assertFalse(cursor.advance()) ;
+        // Unbounded
+        cursor = rIndex.cursor(r(2), null) ;
+        assertFalse(cursor.seek(r(7), r(8))) ;
+    }
+    
+    private static List<Integer> cursorToIntList(RecordCursor cursor)
+    {
+        List<Integer> x = new ArrayList<Integer>() ;
+        while ( cursor.advance() )
+        {
+            Record rec = cursor.getRecord() ;
+            byte[] key = new byte[rec.getKey().length] ;
+            cursor.getKey(key) ;
+            assertTrue(Arrays.equals(rec.getKey(), key)) ;
+            x.add(r(rec)) ;
+        }
+        // Finished - closing is a no-op.
+        cursor.close() ;
+        return x ;
+    }
+    
     @Test public void tree_2_N()
     {
         for ( int i = 0 ; i < 10 ; i++ )
@@ -18,8 +18,7 @@
 
 package com.hp.hpl.jena.tdb.index;
 
-import java.util.Iterator ;
-import java.util.Set ;
+import java.util.* ;
 
 import org.apache.jena.atlas.iterator.Iter ;
 import org.apache.jena.atlas.junit.BaseTest ;
@@ -312,5 +311,71 @@ public class TestTupleIndexRecordDirect extends BaseTest
         assertFalse(iter.hasNext()) ;
    }
 
+    @Test public void TupleIndexRecordProber_1()
+    {
+        TupleIndexRecord index = create("POS") ;
+        for ( int i = 0 ; i < 1000 ; i++ )
+            add(index, new NodeId(i), new NodeId(i%7), new NodeId(i%13)) ;
+        
+        List<Tuple<NodeId>> patterns = new ArrayList<Tuple<NodeId>>() ;
+        for ( int p = 0 ; p < 8 ; p++ )
+        {
+            patterns.add(createTuple(null, new NodeId(p), null)) ;
+            for ( int o = 0 ; o < 14 ; o += 3 )
+                patterns.add(createTuple(null, new NodeId(p), new NodeId(o))) ;
+            patterns.add(createTuple(new NodeId(7*p+p), new NodeId(p), new NodeId((7*p+p)%13))) ;
+        }
+        Collections.shuffle(patterns, new Random(99)) ;
+        Collections.sort(patterns, index.keyOrder) ;
+        
+        TupleIndexRecord.Prober prober = index.prober() ;
+        for ( Tuple<NodeId> pattern : patterns )
+        {
+            Set<Tuple<NodeId>> x1 = Iter.toSet(prober.find(pattern)) ;
+            Set<Tuple<NodeId>> x2 = Iter.toSet(index.find(pattern)) ;
+            assertEquals(pattern.toString(), x2, x1) ;
+        }
+        // Not in order, and not a prefix of the index.
+        Set<Tuple<NodeId>> x1 = Iter.toSet(prober.find(createTuple(null, new NodeId(0), new NodeId(0)))) ;
+        assertEquals(Iter.toSet(index.find(createTuple(null, new NodeId(0), new NodeId(0)))), x1) ;
+        x1 = Iter.toSet(prober.find(createTuple(new NodeId(5), null, null))) ;
+        assertEquals(1, x1.size()) ;
+        prober.close() ;
+    }
+
+    @Test public void TupleIndexRecord_partitions_1()
+    {
+        TupleIndexRecord index = create("POS") ;
+        add(index, n1, n2, n3) ;
+        // Not enough to divide.
+        assertNull(index.partitions(createTuple(n1, n2, n3), 4)) ;
+        List<TupleIndexRecord.ScanPartition> parts = index.partitions(createTuple(null, n2, null), 4) ;
+        assertTrue(parts == null || parts.size() <= 4) ;
+    }
+    
+    @Test public void TupleIndexRecord_partitions_2()
+    {
+        TupleIndexRecord index = create("POS") ;
+        for ( int i = 0 ; i < 5000 ; i++ )
+            add(index, new NodeId(i), new NodeId(i%7), new NodeId(i%13)) ;
+        testPartitions(index, Tuple.<NodeId>createTuple(null, null, null)) ;
+        testPartitions(index, createTuple(null, new NodeId(3), null)) ;
+        testPartitions(index, createTuple(null, new NodeId(3), new NodeId(5))) ;
+        // Not a prefix of the index : the rest is checked per tuple.
+        testPartitions(index, createTuple(null, null, new NodeId(5))) ;
+    }
     
+    private static void testPartitions(TupleIndexRecord index, Tuple<NodeId> pattern)
+    {
+        List<TupleIndexRecord.ScanPartition> parts = index.partitions(pattern, 8) ;
+        assertNotNull(parts) ;
+        assertTrue(parts.size() > 1) ;
+        List<Tuple<NodeId>> x = new ArrayList<Tuple<NodeId>>() ;
+        for ( TupleIndexRecord.ScanPartition part : parts )
+            x.addAll(Iter.toList(part.find())) ;
+        List<Tuple<NodeId>> expected = Iter.toList(index.find(pattern)) ;
+        // No duplicates, nothing missing.
+        assertEquals(expected.size(), x.size()) ;
+        assertEquals(new HashSet<Tuple<NodeId>>(expected), new HashSet<Tuple<NodeId>>(x)) ;
+    }
 }
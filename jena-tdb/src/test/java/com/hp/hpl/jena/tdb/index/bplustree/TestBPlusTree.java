@@ -18,9 +18,16 @@
 
 package com.hp.hpl.jena.tdb.index.bplustree;
 
+import static com.hp.hpl.jena.tdb.base.record.RecordLib.intToRecord ;
+import static com.hp.hpl.jena.tdb.base.record.RecordLib.r ;
+
+import java.util.List ;
+
 import org.junit.AfterClass ;
 import org.junit.BeforeClass ;
+import org.junit.Test ;
 
+import com.hp.hpl.jena.tdb.base.record.Record ;
 import com.hp.hpl.jena.tdb.base.record.RecordLib ;
 import com.hp.hpl.jena.tdb.index.RangeIndex ;
 import com.hp.hpl.jena.tdb.index.TestRangeIndex ;
@@ -56,4 +63,50 @@ public class TestBPlusTree extends TestRangeIndex
         }
         return bpt ; 
     }
+
+    @Test public void bpt_splitKeys_1()
+    {
+        BPlusTree bpt = BPlusTree.makeMem(2, 2, RecordLib.TestRecordLength, 0) ;
+        List<Record> keys = bpt.splitKeys(null, null, 4) ;
+        assertTrue(keys.isEmpty()) ;
+    }
+    
+    @Test public void bpt_splitKeys_2()
+    {
+        BPlusTree bpt = BPlusTree.makeMem(2, 2, RecordLib.TestRecordLength, 0) ;
+        for ( int i = 0 ; i < 1000 ; i++ )
+            bpt.add(intToRecord(i)) ;
+        testSplitKeys(bpt, null, null, 4) ;
+        testSplitKeys(bpt, null, null, 50) ;
+        testSplitKeys(bpt, 100, 200, 4) ;
+        testSplitKeys(bpt, 0, 999, 8) ;
+    }
+    
+    @Test public void bpt_splitKeys_3()
+    {
+        BPlusTree bpt = BPlusTree.makeMem(2, 2, RecordLib.TestRecordLength, 0) ;
+        for ( int i = 0 ; i < 1000 ; i++ )
+            bpt.add(intToRecord(i)) ;
+        // Too narrow for any split.
+        List<Record> keys = bpt.splitKeys(r(500), r(501), 4) ;
+        assertTrue(keys.isEmpty()) ;
+    }
+    
+    private static void testSplitKeys(BPlusTree bpt, Integer from, Integer to, int n)
+    {
+        Record fromRec = ( from == null ) ? null : r(from) ;
+        Record toRec = ( to == null ) ? null : r(to) ;
+        List<Record> keys = bpt.splitKeys(fromRec, toRec, n) ;
+        assertFalse(keys.isEmpty()) ;
+        assertTrue(keys.size() <= n-1) ;
+        int last = ( from == null ) ? Integer.MIN_VALUE : from ;
+        for ( Record k : keys )
+        {
+            int x = r(k) ;
+            assertTrue(x > last) ;
+            if ( to != null )
+                assertTrue(x < to) ;
+            last = x ;
+        }
+    }
 }
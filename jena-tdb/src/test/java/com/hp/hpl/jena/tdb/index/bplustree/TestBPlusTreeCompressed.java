@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.index.bplustree;
+
+import java.util.ArrayList ;
+import java.util.Collections ;
+import java.util.Comparator ;
+import java.util.Iterator ;
+import java.util.List ;
+import java.util.Random ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.Bytes ;
+import org.junit.AfterClass ;
+import org.junit.BeforeClass ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.tdb.base.block.BlockMgr ;
+import com.hp.hpl.jena.tdb.base.block.BlockMgrFactory ;
+import com.hp.hpl.jena.tdb.base.file.FileSet ;
+import com.hp.hpl.jena.tdb.base.record.Record ;
+import com.hp.hpl.jena.tdb.base.record.RecordCursor ;
+import com.hp.hpl.jena.tdb.base.record.RecordFactory ;
+import com.hp.hpl.jena.tdb.base.recordbuffer.RecordBlockCodec ;
+import com.hp.hpl.jena.tdb.base.recordbuffer.RecordBufferPage ;
+import com.hp.hpl.jena.tdb.sys.Names ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+public class TestBPlusTreeCompressed extends BaseTest
+{
+    static final int Columns = 3 ;
+    static final int BlockSize = 256 ;
+    static RecordFactory factory = new RecordFactory(Columns*SystemTDB.SizeOfLong, 0) ;
+    
+    static Comparator<Record> keyOrder = new Comparator<Record>() {
+        @Override
+        public int compare(Record r1, Record r2) { return Record.compareByKey(r1, r2) ; }
+    } ;
+    
+    static boolean originalCheckingNode ;
+    @BeforeClass static public void beforeClass()
+    {
+        originalCheckingNode = BPlusTreeParams.CheckingNode ;
+        BPlusTreeParams.CheckingNode = true ;
+    }
+    
+    @AfterClass static public void afterClass()
+    {
+        BPlusTreeParams.CheckingNode = originalCheckingNode ;
+    }
+
+    @Test public void codec_1()
+    {
+        assertTrue(RecordBlockCodec.canCompress(factory)) ;
+        assertFalse(RecordBlockCodec.canCompress(new RecordFactory(24, 8))) ;
+        assertFalse(RecordBlockCodec.canCompress(new RecordFactory(4, 0))) ;
+        RecordBlockCodec codec = new RecordBlockCodec(factory, BlockSize) ;
+        assertEquals(BlockSize, codec.encodedBlockSize()) ;
+        assertTrue(codec.decodedBlockSize() > BlockSize) ;
+    }
+
+    // Dense keys: many more records in a leaf than the uncompressed layout. 
+    @Test public void compressed_tree_1()
+    {
+        BPlusTree bpt = makeTree() ;
+        List<Record> records = new ArrayList<Record>() ;
+        for ( int i = 0 ; i < 1000 ; i++ )
+            records.add(record(i/100, (i/10)%10, i)) ;
+        Collections.shuffle(records, new Random(1)) ;
+        for ( Record r : records )
+            assertTrue(bpt.add(r)) ;
+        Collections.sort(records, keyOrder) ;
+        check(bpt, records) ;
+        
+        int maxRecords = RecordBufferPage.calcRecordSize(factory, BlockSize) ;
+        assertTrue(countLeaves(bpt)*maxRecords < records.size()) ;
+    }
+
+    // Keys that do not compress: full width values.
+    @Test public void compressed_tree_2()
+    {
+        BPlusTree bpt = makeTree() ;
+        Random random = new Random(2) ;
+        List<Record> records = new ArrayList<Record>() ;
+        for ( int i = 0 ; i < 500 ; i++ )
+        {
+            Record r = record(random.nextLong(), random.nextLong(), random.nextLong()) ;
+            if ( bpt.add(r) )
+                records.add(r) ;
+        }
+        Collections.sort(records, keyOrder) ;
+        check(bpt, records) ;
+    }
+    
+    @Test public void compressed_tree_delete()
+    {
+        BPlusTree bpt = makeTree() ;
+        Random random = new Random(3) ;
+        List<Record> records = new ArrayList<Record>() ;
+        for ( int i = 0 ; i < 2000 ; i++ )
+        {
+            Record r = record(random.nextInt(5), random.nextInt(1000), ( i%2 == 0 ) ? random.nextInt(50) : random.nextLong()) ;
+            if ( bpt.add(r) )
+                records.add(r) ;
+        }
+        Collections.shuffle(records, random) ;
+        List<Record> deleted = new ArrayList<Record>(records.subList(0, records.size()/2+100)) ;
+        List<Record> remaining = new ArrayList<Record>(records.subList(deleted.size(), records.size())) ;
+        for ( Record r : deleted )
+            assertTrue(bpt.delete(r)) ;
+        for ( Record r : deleted )
+            assertFalse(bpt.contains(r)) ;
+        Collections.sort(remaining, keyOrder) ;
+        check(bpt, remaining) ;
+        
+        for ( Record r : remaining )
+            assertTrue(bpt.delete(r)) ;
+        assertTrue(bpt.isEmpty()) ;
+    }
+    
+    @Test public void compressed_tree_cursor()
+    {
+        BPlusTree bpt = makeTree() ;
+        for ( int i = 0 ; i < 500 ; i++ )
+            bpt.add(record(i%7, i, 0)) ;
+        RecordCursor cursor = bpt.cursor(record(3, 0, 0), record(4, 0, 0)) ;
+        long last = -1 ;
+        int count = 0 ;
+        while ( cursor.advance() )
+        {
+            assertEquals(3, cursor.getKeyLong(0)) ;
+            assertTrue(cursor.getKeyLong(SystemTDB.SizeOfLong) > last) ;
+            last = cursor.getKeyLong(SystemTDB.SizeOfLong) ;
+            count++ ;
+        }
+        cursor.close() ;
+        assertEquals(71, count) ;
+    }
+
+    private static void check(BPlusTree bpt, List<Record> expected)
+    {
+        bpt.check() ;
+        assertEquals(expected.size(), bpt.size()) ;
+        Iterator<Record> iter = bpt.iterator() ;
+        for ( Record r : expected )
+        {
+            assertTrue(iter.hasNext()) ;
+            assertEquals(r, iter.next()) ;
+            assertTrue(bpt.contains(r)) ;
+        }
+        assertFalse(iter.hasNext()) ;
+    }
+    
+    // Leaf blocks are allocated in order and, without deletes, not freed.
+    private static int countLeaves(BPlusTree bpt)
+    {
+        BlockMgr blkMgr = bpt.getRecordsMgr().getBlockMgr() ;
+        int count = 0 ;
+        while ( blkMgr.valid(count) )
+            count++ ;
+        return count ;
+    }
+
+    private static BPlusTree makeTree()
+    {
+        BPlusTreeParams params = new BPlusTreeParams(5, factory) ;
+        RecordBlockCodec codec = new RecordBlockCodec(factory, BlockSize) ;
+        BlockMgr mgr1 = BlockMgrFactory.createMem("nodes", params.getCalcBlockSize()) ;
+        BlockMgr mgr2 = BlockMgrFactory.create(FileSet.mem(), Names.bptExtRecords, codec, -1, -1, null) ;
+        return BPlusTree.create(params, mgr1, mgr2, codec) ;
+    }
+    
+    private static Record record(long... values)
+    {
+        byte[] key = new byte[Columns*SystemTDB.SizeOfLong] ;
+        for ( int i = 0 ; i < values.length ; i++ )
+            Bytes.setLong(values[i], key, i*SystemTDB.SizeOfLong) ;
+        return factory.create(key) ;
+    }
+}
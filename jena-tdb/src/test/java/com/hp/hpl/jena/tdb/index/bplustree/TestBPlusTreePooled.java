@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.index.bplustree;
+
+import static com.hp.hpl.jena.tdb.base.record.RecordLib.intToRecord ;
+
+import java.util.List ;
+
+import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.lib.FileOps ;
+import org.junit.After ;
+import org.junit.AfterClass ;
+import org.junit.BeforeClass ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.tdb.ConfigTest ;
+import com.hp.hpl.jena.tdb.base.block.BlockMgr ;
+import com.hp.hpl.jena.tdb.base.block.BlockMgrFactory ;
+import com.hp.hpl.jena.tdb.base.file.BufferPool ;
+import com.hp.hpl.jena.tdb.base.record.Record ;
+import com.hp.hpl.jena.tdb.base.record.RecordLib ;
+import com.hp.hpl.jena.tdb.base.recordbuffer.RecordBufferPage ;
+import com.hp.hpl.jena.tdb.index.RangeIndex ;
+import com.hp.hpl.jena.tdb.index.TestRangeIndex ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+/** B+Trees over files of the pooled block cache, with few frames.
+ *  Every block taken from the pool must be given back.
+ */
+public class TestBPlusTreePooled extends TestRangeIndex
+{
+    static final String filename = ConfigTest.getTestingDir()+"/bpt-pooled" ;
+    // Some tests make several trees and do not close them ; files are shared by name.
+    static int counter = 0 ;
+    
+    static boolean originalNullOut ; 
+    @BeforeClass static public void beforeClass()
+    {
+        BPlusTreeParams.CheckingNode = true ;
+        originalNullOut = SystemTDB.NullOut ;
+        SystemTDB.NullOut = true ;    
+    }
+    
+    @AfterClass static public void afterClass()
+    {
+        SystemTDB.NullOut = originalNullOut ;    
+        for ( int i = 0 ; i < counter ; i++ )
+        {
+            FileOps.deleteSilent(filename+"-nodes-"+i) ;
+            FileOps.deleteSilent(filename+"-records-"+i) ;
+        }
+    }
+    
+    private BufferPool pool = null ;
+    
+    @After public void released()
+    {
+        if ( pool != null )
+            assertEquals(0, pool.getPinned()) ;
+        pool = null ;
+    }
+    
+    @Override
+    protected RangeIndex makeRangeIndex(int order, int minRecords)
+    {
+        BPlusTreeParams params = new BPlusTreeParams(order, RecordLib.TestRecordLength, 0) ;
+        int blkSize ;
+        if ( minRecords > 0 )
+            blkSize = RecordBufferPage.calcBlockSize(params.getRecordFactory(), 2*minRecords) ;
+        else
+            blkSize = params.getCalcBlockSize() ;
+        String fnNodes = filename+"-nodes-"+counter ;
+        String fnRecords = filename+"-records-"+counter ;
+        counter++ ;
+        FileOps.deleteSilent(fnNodes) ;
+        FileOps.deleteSilent(fnRecords) ;
+        pool = new BufferPool(8, Math.max(blkSize, params.getCalcBlockSize()), 2) ;
+        BlockMgr mgr1 = BlockMgrFactory.createPooledFile(fnNodes, params.getCalcBlockSize(), pool) ;
+        BlockMgr mgr2 = BlockMgrFactory.createPooledFile(fnRecords, blkSize, pool) ;
+        return BPlusTree.create(params, mgr1, mgr2) ;
+    }
+    
+    @Test public void bpt_pooled_01()
+    {
+        // More blocks than frames.
+        RangeIndex index = makeRangeIndex(3, 2) ;
+        for ( int i = 0 ; i < 500 ; i++ )
+            index.add(intToRecord((i*37)%500)) ;
+        assertEquals(0, pool.getPinned()) ;
+        List<Record> x = Iter.toList(index.iterator()) ;
+        assertEquals(500, x.size()) ;
+        for ( int i = 0 ; i < 500 ; i++ )
+            assertEquals(intToRecord(i), x.get(i)) ;
+        for ( int i = 0 ; i < 500 ; i += 2 )
+            index.delete(intToRecord(i)) ;
+        assertEquals(250, index.size()) ;
+        assertTrue(index.contains(intToRecord(499))) ;
+        assertFalse(index.contains(intToRecord(498))) ;
+        assertTrue(pool.getMisses() > 0) ;
+        assertEquals(0, pool.getPinned()) ;
+        index.close() ;
+    }
+}
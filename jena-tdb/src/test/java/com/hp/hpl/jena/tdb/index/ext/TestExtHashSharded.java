@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.index.ext;
+
+import org.apache.jena.atlas.lib.Bytes ;
+import org.apache.jena.atlas.lib.FileOps ;
+import org.junit.AfterClass ;
+import org.junit.BeforeClass ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.tdb.ConfigTest ;
+import com.hp.hpl.jena.tdb.base.block.BlockMgrFactory ;
+import com.hp.hpl.jena.tdb.base.file.FileSet ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.base.record.Record ;
+import com.hp.hpl.jena.tdb.base.record.RecordFactory ;
+import com.hp.hpl.jena.tdb.index.Index ;
+import com.hp.hpl.jena.tdb.index.TestIndex ;
+import com.hp.hpl.jena.tdb.sys.Names ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+public class TestExtHashSharded extends TestIndex
+{
+    static boolean originalNullOut ; 
+    static boolean b ; 
+
+    @BeforeClass static public void setup()
+    {
+        originalNullOut = SystemTDB.NullOut ;
+        SystemTDB.NullOut = true ;
+        ExtHash.Checking = true ;
+        b = BlockMgrFactory.AddTracker ;
+        BlockMgrFactory.AddTracker = false ;
+    }
+    
+    @AfterClass static public void teardown()
+    {
+        BlockMgrFactory.AddTracker = b  ;
+        SystemTDB.NullOut = originalNullOut ;
+        ExtHash.Checking = false ;
+    }
+
+    @Override
+    protected Index makeIndex(int kLen, int vLen)
+    {
+        RecordFactory factory = new RecordFactory(kLen, vLen) ;
+        return ExtHashSharded.create(FileSet.mem(), factory, 3, 32) ;
+    }
+    
+    @Test public void sharded_disk_reopen()
+    {
+        String dir = ConfigTest.getCleanDir() ;
+        FileSet fs = new FileSet(new Location(dir), "hash") ;
+        RecordFactory factory = new RecordFactory(8, 8) ;
+        int N = 2000 ;
+        
+        ExtHashSharded index = ExtHashSharded.create(fs, factory, 4, 256) ;
+        for ( int i = 0 ; i < N ; i++ )
+            assertTrue(index.add(record(factory, i))) ;
+        index.sync() ;
+        index.close() ;
+        assertTrue(FileOps.exists(new FileSet(new Location(dir), "hash-3").filename(Names.extHashExt))) ;
+
+        // Reopen: dictionaries and buckets come back from disk.
+        index = ExtHashSharded.create(fs, factory, 4, 256) ;
+        assertEquals(N, index.size()) ;
+        for ( int i = 0 ; i < N ; i++ )
+        {
+            Record r = index.find(factory.create(record(factory, i).getKey())) ;
+            assertNotNull(r) ;
+            assertEquals(i, Bytes.getLong(r.getValue())) ;
+        }
+        assertNull(index.find(record(factory, N))) ;
+        index.check() ;
+        index.close() ;
+        FileOps.clearDirectory(dir) ;
+    }
+    
+    private static Record record(RecordFactory factory, long i)
+    {
+        byte[] k = new byte[8] ;
+        byte[] v = new byte[8] ;
+        // Spread the keys.
+        Bytes.setLong(i*0x9E3779B97F4A7C15L, k) ;
+        Bytes.setLong(i, v) ;
+        return factory.create(k, v) ;
+    }
+}
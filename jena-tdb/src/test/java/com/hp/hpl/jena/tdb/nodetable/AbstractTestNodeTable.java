@@ -18,6 +18,9 @@
 
 package com.hp.hpl.jena.tdb.nodetable;
 
+import java.util.ArrayList ;
+import java.util.List ;
+
 import org.apache.jena.atlas.junit.BaseTest ;
 import org.junit.Test ;
 
@@ -82,6 +85,34 @@ public abstract class AbstractTestNodeTable extends BaseTest
     @Test public void nodetable_06()    { testNode("'x'^^<http://example/dt>") ; }
     @Test public void nodetable_07()    { testNode("'نواف'") ; }
     
+    @Test public void nodetable_batch_01()
+    {
+        NodeTable nt = createEmptyNodeTable() ;
+        NodeId id1 = nt.getAllocateNodeId(n1) ;
+        List<Node> nodes = new ArrayList<Node>() ;
+        nodes.add(NodeFactoryExtra.parseNode("<http://example/a>")) ;
+        nodes.add(n1) ;
+        nodes.add(NodeFactoryExtra.parseNode("'abc'")) ;
+        nodes.add(NodeFactoryExtra.parseNode("<http://example/a>")) ;
+        nodes.add(NodeFactoryExtra.parseNode("_:b")) ;
+        nodes.add(n2) ;
+        
+        NodeId[] ids = nt.getAllocateNodeIds(nodes) ;
+        assertEquals(nodes.size(), ids.length) ;
+        assertEquals(id1, ids[1]) ;
+        assertEquals(ids[0], ids[3]) ;
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            assertNotEquals(NodeId.NodeDoesNotExist, ids[i]) ;
+            assertEquals(nodes.get(i), nt.getNodeForNodeId(ids[i])) ;
+            assertEquals(ids[i], nt.getNodeIdForNode(nodes.get(i))) ;
+        }
+        // Again - all present.
+        NodeId[] ids2 = nt.getAllocateNodeIds(nodes) ;
+        for ( int i = 0 ; i < ids.length ; i++ )
+            assertEquals(ids[i], ids2[i]) ;
+    }
+    
     static Node badNode1 = com.hp.hpl.jena.graph.NodeFactory.createLiteral("abc", "99bad", null) ;
     
     @Test public void nodetable_bad_01()    { testNodeBad(badNode1) ; }
@@ -26,6 +26,10 @@ import org.junit.runners.Suite ;
     TestCodec.class
     , TestNodeTableStored.class
     , TestNodeTable.class
+    , TestNodeTableCacheConcurrent.class
+    , TestNodeTableInline.class
+    , TestNodeTableEncoding.class
+    , TestNodeTableHashIndex.class
 })
 public class TS_NodeTable
 {
@@ -32,6 +32,7 @@ import org.junit.runners.Parameterized.Parameters ;
 import com.hp.hpl.jena.graph.Node ;
 import com.hp.hpl.jena.rdf.model.AnonId ;
 import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
+import com.hp.hpl.jena.tdb.base.file.FileFactory ;
 
 @RunWith(Parameterized.class)
 public class TestCodec extends BaseTest 
@@ -51,7 +52,8 @@ public class TestCodec extends BaseTest
     @Parameters public static Collection<Object[]> data()
     { 
         return Arrays.asList(new Object[][]
-                                        { { new NodecSSE() } } 
+                                        { { new NodecSSE() } , 
+                                          { new NodecBinary(new NamespaceDictionary(FileFactory.createObjectFileMem("ns"), 2)) } } 
                                         ) ;                                        
     }
 
@@ -95,6 +97,13 @@ public class TestCodec extends BaseTest
     
     @Test public void nodec_uri_01()    { test ("<>") ; }
     @Test public void nodec_uri_02()    { test ("<http://example/>") ; }
+    @Test public void nodec_uri_03()    { test ("<http://example/ns#local>") ; }
+    @Test public void nodec_uri_04()    { test ("<http://example/ns/a/b>") ; }
+    @Test public void nodec_uri_05()    { test ("<urn:x:y>") ; }
+    @Test public void nodec_uri_06()    { test (com.hp.hpl.jena.graph.NodeFactory.createURI("http://example/a b")) ; }
+    // More namespaces than the dictionary holds.
+    @Test public void nodec_uri_07()    { test ("<http://example/ns1/a>") ; test ("<http://example/ns2/a>") ; test ("<http://example/ns3/a>") ; }
+    @Test public void nodec_lit_23()    { test ("'abc'^^<http://example/ns#type>") ; }
     
     // Jena anon ids can have a string form including ":"
     @Test public void nodec_blank_01()  { test (com.hp.hpl.jena.graph.NodeFactory.createAnon(new AnonId("a"))) ; }
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.nodetable;
+
+import java.util.concurrent.atomic.AtomicInteger ;
+
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+import com.hp.hpl.jena.tdb.sys.Names ;
+import com.hp.hpl.jena.tdb.sys.SetupTDB ;
+
+public class TestNodeTableCacheConcurrent extends AbstractTestNodeTable
+{
+    @Override
+    protected NodeTable createEmptyNodeTable()
+    {
+        return createEmptyNodeTable(10) ;
+    }
+    
+    private static NodeTable createEmptyNodeTable(int size)
+    {
+        NodeTable nodeTable = SetupTDB.makeNodeTableBase(Location.mem(), Names.indexNode2Id, Names.indexId2Node) ;
+        nodeTable = NodeTableCacheConcurrent.create(nodeTable, size, size, size) ;
+        return NodeTableInline.create(nodeTable) ;
+    }
+    
+    // Miss, then allocate : the miss cache must not hide the node.
+    @Test public void nodetable_concurrent_01()
+    {
+        NodeTable nt = createEmptyNodeTable() ;
+        Node n = NodeFactoryExtra.parseNode("<http://example/z>") ;
+        assertEquals(NodeId.NodeDoesNotExist, nt.getNodeIdForNode(n)) ;
+        assertEquals(NodeId.NodeDoesNotExist, nt.getNodeIdForNode(n)) ;
+        NodeId id = nt.getAllocateNodeId(n) ;
+        assertEquals(id, nt.getNodeIdForNode(n)) ;
+        assertEquals(n, nt.getNodeForNodeId(id)) ;
+    }
+
+    // More nodes than the caches hold.
+    @Test public void nodetable_concurrent_02()
+    {
+        NodeTable nt = createEmptyNodeTable(5) ;
+        NodeId[] ids = new NodeId[50] ;
+        for ( int i = 0 ; i < ids.length ; i++ )
+            ids[i] = nt.getAllocateNodeId(NodeFactoryExtra.parseNode("<http://example/n"+i+">")) ;
+        for ( int i = ids.length-1 ; i >= 0 ; i-- )
+        {
+            Node n = NodeFactoryExtra.parseNode("<http://example/n"+i+">") ;
+            assertEquals(n, nt.getNodeForNodeId(ids[i])) ;
+            assertEquals(ids[i], nt.getNodeIdForNode(n)) ;
+        }
+    }
+
+    // Readers and a writer at the same time : a node, once allocated, is always found.
+    @Test public void nodetable_concurrent_03() throws InterruptedException
+    {
+        final NodeTable nt = createEmptyNodeTable(20) ;
+        final int N = 200 ;
+        final Node[] nodes = new Node[N] ;
+        for ( int i = 0 ; i < N ; i++ )
+            nodes[i] = NodeFactoryExtra.parseNode("<http://example/n"+i+">") ;
+        final AtomicInteger allocated = new AtomicInteger(0) ;
+        final AtomicInteger errors = new AtomicInteger(0) ;
+        
+        Thread writer = new Thread() {
+            @Override public void run()
+            {
+                for ( int i = 0 ; i < N ; i++ )
+                {
+                    nt.getAllocateNodeId(nodes[i]) ;
+                    allocated.set(i+1) ;
+                }
+            }
+        } ;
+        Thread[] readers = new Thread[3] ;
+        for ( int t = 0 ; t < readers.length ; t++ )
+        {
+            final int seed = t ;
+            readers[t] = new Thread() {
+                @Override public void run()
+                {
+                    for ( int j = 0 ; j < 5000 ; j++ )
+                    {
+                        int known = allocated.get() ;
+                        int i = (j*7+seed) % N ;
+                        NodeId id = nt.getNodeIdForNode(nodes[i]) ;
+                        if ( i < known && NodeId.isDoesNotExist(id) )
+                            errors.incrementAndGet() ;
+                        if ( ! NodeId.isDoesNotExist(id) && ! nodes[i].equals(nt.getNodeForNodeId(id)) )
+                            errors.incrementAndGet() ;
+                    }
+                }
+            } ;
+        }
+        for ( Thread t : readers ) t.start() ;
+        writer.start() ;
+        writer.join() ;
+        for ( Thread t : readers ) t.join() ;
+        assertEquals(0, errors.get()) ;
+        for ( int i = 0 ; i < N ; i++ )
+            assertFalse(NodeId.isDoesNotExist(nt.getNodeIdForNode(nodes[i]))) ;
+    }
+}
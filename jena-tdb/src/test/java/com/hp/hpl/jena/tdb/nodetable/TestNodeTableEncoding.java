@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.nodetable;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.FileOps ;
+import org.junit.After ;
+import org.junit.Before ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Graph ;
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.query.ReadWrite ;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
+import com.hp.hpl.jena.tdb.ConfigTest ;
+import com.hp.hpl.jena.tdb.StoreConnection ;
+import com.hp.hpl.jena.tdb.TDBMigrate ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.setup.DatasetBuilderStd ;
+import com.hp.hpl.jena.tdb.setup.SystemParams ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.sys.Names ;
+import com.hp.hpl.jena.tdb.transaction.DatasetGraphTxn ;
+
+public class TestNodeTableEncoding extends BaseTest
+{
+    private String DIR ;
+    
+    @Before public void before()    { DIR = ConfigTest.getCleanDir() ; }
+    @After  public void after()     { FileOps.clearDirectory(DIR) ; }
+
+    @Test public void encoding_new_db()
+    {
+        DatasetGraphTDB dsg = build(NodeTableFactory.EncodingBinary) ;
+        assertTrue(getNodec(dsg) instanceof NodecBinary) ;
+        load(dsg.getDefaultGraph(), 0, 100) ;
+        dsg.close() ;
+        
+        Location loc = new Location(DIR) ;
+        assertEquals(NodeTableFactory.EncodingBinary, NodeTableFactory.encoding(loc)) ;
+        assertTrue(loc.exists(Names.indexId2Node, Names.extNodeNamespaces)) ;
+        
+        // Reopen, with the default encoding: the recorded encoding is used.
+        dsg = build(NodeTableFactory.EncodingSSE) ;
+        assertTrue(getNodec(dsg) instanceof NodecBinary) ;
+        check(dsg.getDefaultGraph(), 0, 100) ;
+        dsg.close() ;
+    }
+    
+    @Test public void encoding_existing_db()
+    {
+        // A database created with SSE encoding stays SSE.
+        DatasetGraphTDB dsg = build(NodeTableFactory.EncodingSSE) ;
+        load(dsg.getDefaultGraph(), 0, 10) ;
+        dsg.close() ;
+        
+        dsg = build(NodeTableFactory.EncodingBinary) ;
+        assertFalse(new Location(DIR).getMetaFile().hasProperty(Names.kNodeTableEncoding)) ;
+        assertTrue(getNodec(dsg) instanceof NodecSSE) ;
+        check(dsg.getDefaultGraph(), 0, 10) ;
+        dsg.close() ;
+    }
+    
+    @Test public void encoding_transaction()
+    {
+        DatasetGraphTDB dsg = build(NodeTableFactory.EncodingBinary) ;
+        load(dsg.getDefaultGraph(), 0, 10) ;
+        dsg.close() ;
+        
+        Location loc = new Location(DIR) ;
+        StoreConnection sConn = StoreConnection.make(loc) ;
+        // New namespaces, in a transaction that commits and one that aborts.
+        DatasetGraphTxn dsgTxn = sConn.begin(ReadWrite.WRITE) ;
+        load(dsgTxn.getDefaultGraph(), 10, 20) ;
+        dsgTxn.commit() ;
+        dsgTxn.end() ;
+        dsgTxn = sConn.begin(ReadWrite.WRITE) ;
+        load(dsgTxn.getDefaultGraph(), 20, 30) ;
+        dsgTxn.abort() ;
+        dsgTxn.end() ;
+        dsgTxn = sConn.begin(ReadWrite.WRITE) ;
+        load(dsgTxn.getDefaultGraph(), 30, 40) ;
+        dsgTxn.commit() ;
+        dsgTxn.end() ;
+        
+        dsgTxn = sConn.begin(ReadWrite.READ) ;
+        check(dsgTxn.getDefaultGraph(), 0, 20) ;
+        check(dsgTxn.getDefaultGraph(), 30, 40) ;
+        assertEquals(30, dsgTxn.getDefaultGraph().size()) ;
+        dsgTxn.end() ;
+        StoreConnection.release(loc) ;
+        
+        dsg = build(NodeTableFactory.EncodingSSE) ;
+        check(dsg.getDefaultGraph(), 30, 40) ;
+        dsg.close() ;
+    }
+    
+    @Test public void encoding_migrate()
+    {
+        Location src = new Location(DIR) ;
+        StoreConnection sConn = StoreConnection.make(src) ;
+        DatasetGraphTxn dsgTxn = sConn.begin(ReadWrite.WRITE) ;
+        load(dsgTxn.getDefaultGraph(), 0, 50) ;
+        Node g = NodeFactoryExtra.parseNode("<http://example/graph>") ;
+        load(dsgTxn.getGraph(g), 50, 60) ;
+        dsgTxn.getDefaultGraph().getPrefixMapping().setNsPrefix("ex", "http://example/") ;
+        dsgTxn.commit() ;
+        dsgTxn.end() ;
+        
+        String DEST = ConfigTest.getTestingDir()+"/Migrate" ;
+        FileOps.ensureDir(DEST) ;
+        FileOps.clearDirectory(DEST) ;
+        try {
+            SystemParams params = new SystemParams() ;
+            params.nodeEncoding = NodeTableFactory.EncodingBinary ;
+            TDBMigrate.migrate(src, new Location(DEST), params) ;
+            StoreConnection.release(src) ;
+
+            DatasetGraphTDB dsg = DatasetBuilderStd.stdBuilder().build(new Location(DEST), new SystemParams()) ;
+            assertTrue(getNodec(dsg) instanceof NodecBinary) ;
+            check(dsg.getDefaultGraph(), 0, 50) ;
+            check(dsg.getGraph(g), 50, 60) ;
+            assertEquals(50, dsg.getDefaultGraph().size()) ;
+            assertEquals("http://example/", dsg.getDefaultGraph().getPrefixMapping().getNsPrefixURI("ex")) ;
+            dsg.close() ;
+        } finally { FileOps.clearDirectory(DEST) ; }
+    }
+    
+    private static void load(Graph graph, int start, int finish)
+    {
+        for ( int i = start ; i < finish ; i++ )
+            graph.add(triple(i)) ;
+    }
+    
+    private static void check(Graph graph, int start, int finish)
+    {
+        for ( int i = start ; i < finish ; i++ )
+            assertTrue(graph.contains(triple(i))) ;
+    }
+
+    // Different namespaces, lang tags and datatypes.
+    private static Triple triple(int i)
+    {
+        Node s = NodeFactoryExtra.parseNode("<http://example/ns"+(i%7)+"/s"+i+">") ;
+        Node p = NodeFactoryExtra.parseNode("<http://example/vocab#p"+(i%3)+">") ;
+        Node o ;
+        switch (i%3)
+        {
+            case 0:  o = NodeFactoryExtra.parseNode("'value "+i+"'@en") ; break ;
+            case 1:  o = NodeFactoryExtra.parseNode("'"+i+"'^^<http://example/dt"+i+"#type>") ; break ;
+            default: o = NodeFactoryExtra.parseNode("_:b"+i) ; break ;
+        }
+        return new Triple(s, p, o) ;
+    }
+    
+    private static Nodec getNodec(DatasetGraphTDB dsg)
+    {
+        return NodeTableLib.getNodec(dsg.getTripleTable().getNodeTupleTable().getNodeTable()) ;
+    }
+    
+    private DatasetGraphTDB build(String encoding)
+    {
+        SystemParams params = new SystemParams() ;
+        params.nodeEncoding = encoding ;
+        return DatasetBuilderStd.stdBuilder().build(new Location(DIR), params) ;
+    }
+}
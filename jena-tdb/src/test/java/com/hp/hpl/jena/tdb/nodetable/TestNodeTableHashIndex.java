@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.nodetable;
+
+import java.util.ArrayList ;
+import java.util.List ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.FileOps ;
+import org.junit.After ;
+import org.junit.Before ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Graph ;
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.query.ReadWrite ;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
+import com.hp.hpl.jena.tdb.ConfigTest ;
+import com.hp.hpl.jena.tdb.StoreConnection ;
+import com.hp.hpl.jena.tdb.base.file.FileSet ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.index.IndexType ;
+import com.hp.hpl.jena.tdb.setup.DatasetBuilderStd ;
+import com.hp.hpl.jena.tdb.setup.SystemParams ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+import com.hp.hpl.jena.tdb.sys.Names ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+import com.hp.hpl.jena.tdb.transaction.DatasetGraphTxn ;
+
+public class TestNodeTableHashIndex extends BaseTest
+{
+    private String DIR ;
+    
+    @Before public void before()    { DIR = ConfigTest.getCleanDir() ; }
+    @After  public void after()     { FileOps.clearDirectory(DIR) ; }
+
+    @Test public void hash_index_new_db()
+    {
+        DatasetGraphTDB dsg = build(SystemTDB.indexTypeExtHash) ;
+        load(dsg.getDefaultGraph(), 0, 500) ;
+        dsg.close() ;
+        
+        Location loc = new Location(DIR) ;
+        assertEquals(IndexType.ExtHash, NodeTableFactory.nodeIndexType(loc)) ;
+        assertEquals(3, NodeTableFactory.nodeIndexShards(loc)) ;
+        assertTrue(loc.exists(Names.indexNode2Id+"-2", Names.extHashExt)) ;
+        assertFalse(loc.exists(Names.indexNode2Id, Names.bptExtTree)) ;
+        
+        // Reopen, with the default index type: the recorded index type is used.
+        dsg = build(SystemTDB.indexTypeBPlusTree) ;
+        check(dsg.getDefaultGraph(), 0, 500) ;
+        assertEquals(500, dsg.getDefaultGraph().size()) ;
+        dsg.close() ;
+    }
+    
+    @Test public void hash_index_existing_db()
+    {
+        // A database created with a B+Tree node index stays that way.
+        DatasetGraphTDB dsg = build(SystemTDB.indexTypeBPlusTree) ;
+        load(dsg.getDefaultGraph(), 0, 10) ;
+        dsg.close() ;
+        
+        dsg = build(SystemTDB.indexTypeExtHash) ;
+        assertFalse(new Location(DIR).getMetaFile().hasProperty(Names.kNodeTableIndex)) ;
+        check(dsg.getDefaultGraph(), 0, 10) ;
+        dsg.close() ;
+        assertFalse(new Location(DIR).exists(Names.indexNode2Id+"-0", Names.extHashExt)) ;
+    }
+    
+    @Test public void hash_index_transaction()
+    {
+        DatasetGraphTDB dsg = build(SystemTDB.indexTypeExtHash) ;
+        load(dsg.getDefaultGraph(), 0, 10) ;
+        dsg.close() ;
+        
+        Location loc = new Location(DIR) ;
+        StoreConnection sConn = StoreConnection.make(loc) ;
+        DatasetGraphTxn dsgTxn = sConn.begin(ReadWrite.WRITE) ;
+        load(dsgTxn.getDefaultGraph(), 10, 20) ;
+        dsgTxn.commit() ;
+        dsgTxn.end() ;
+        dsgTxn = sConn.begin(ReadWrite.WRITE) ;
+        load(dsgTxn.getDefaultGraph(), 20, 30) ;
+        dsgTxn.abort() ;
+        dsgTxn.end() ;
+        
+        dsgTxn = sConn.begin(ReadWrite.READ) ;
+        check(dsgTxn.getDefaultGraph(), 0, 20) ;
+        assertEquals(20, dsgTxn.getDefaultGraph().size()) ;
+        dsgTxn.end() ;
+        StoreConnection.release(loc) ;
+        
+        dsg = build(SystemTDB.indexTypeBPlusTree) ;
+        check(dsg.getDefaultGraph(), 0, 20) ;
+        dsg.close() ;
+    }
+    
+    @Test public void hash_index_concurrent_lookup() throws Exception
+    {
+        Location loc = new Location(DIR) ;
+        NodeTableFactory.initNodeIndex(loc, SystemTDB.indexTypeExtHash, 4) ;
+        final NodeTable nodeTable = NodeTableFactory.create(null,
+                                                            new FileSet(loc, Names.indexId2Node),
+                                                            new FileSet(loc, Names.indexNode2Id),
+                                                            10, 10, 10) ;
+        final int N = 200 ;
+        final NodeId[] ids = new NodeId[N] ;
+        for ( int i = 0 ; i < N ; i++ )
+            ids[i] = nodeTable.getAllocateNodeId(node(i)) ;
+        
+        // Readers look up existing nodes while a writer adds new ones.
+        final List<Throwable> errors = new ArrayList<Throwable>() ;
+        List<Thread> threads = new ArrayList<Thread>() ;
+        for ( int t = 0 ; t < 4 ; t++ )
+        {
+            Thread thread = new Thread() {
+                @Override public void run()
+                {
+                    try {
+                        for ( int j = 0 ; j < 5 ; j++ )
+                            for ( int i = 0 ; i < N ; i++ )
+                                assertEquals(ids[i], nodeTable.getNodeIdForNode(node(i))) ;
+                    } catch (Throwable th) { synchronized(errors) { errors.add(th) ; } }
+                }
+            } ;
+            threads.add(thread) ;
+        }
+        for ( Thread thread : threads )
+            thread.start() ;
+        for ( int i = N ; i < 2*N ; i++ )
+            nodeTable.getAllocateNodeId(node(i)) ;
+        for ( Thread thread : threads )
+            thread.join() ;
+        
+        assertTrue(errors.toString(), errors.isEmpty()) ;
+        for ( int i = N ; i < 2*N ; i++ )
+            assertFalse(NodeId.isDoesNotExist(nodeTable.getNodeIdForNode(node(i)))) ;
+        nodeTable.close() ;
+    }
+    
+    private static void load(Graph graph, int start, int finish)
+    {
+        for ( int i = start ; i < finish ; i++ )
+            graph.add(triple(i)) ;
+    }
+    
+    private static void check(Graph graph, int start, int finish)
+    {
+        for ( int i = start ; i < finish ; i++ )
+            assertTrue(graph.contains(triple(i))) ;
+    }
+
+    private static Triple triple(int i)
+    {
+        Node s = node(i) ;
+        Node p = NodeFactoryExtra.parseNode("<http://example/p"+(i%5)+">") ;
+        Node o = NodeFactoryExtra.parseNode("'value "+i+"'") ;
+        return new Triple(s, p, o) ;
+    }
+    
+    private static Node node(int i)
+    {
+        return NodeFactoryExtra.parseNode("<http://example/s"+i+">") ;
+    }
+    
+    private DatasetGraphTDB build(String indexType)
+    {
+        SystemParams params = new SystemParams() ;
+        params.nodeIndexType = indexType ;
+        params.nodeIndexShards = 3 ;
+        return DatasetBuilderStd.stdBuilder().build(new Location(DIR), params) ;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.nodetable;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.FileOps ;
+import org.junit.After ;
+import org.junit.Before ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
+import com.hp.hpl.jena.tdb.ConfigTest ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.setup.DatasetBuilderStd ;
+import com.hp.hpl.jena.tdb.setup.SystemParams ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+import com.hp.hpl.jena.tdb.sys.Names ;
+import com.hp.hpl.jena.tdb.sys.SetupTDB ;
+
+public class TestNodeTableInline extends BaseTest
+{
+    private String DIR ;
+    
+    static Node s = NodeFactoryExtra.parseNode("<http://example/s>") ;
+    static Node p = NodeFactoryExtra.parseNode("<http://example/p>") ;
+    static Node o = NodeFactoryExtra.parseNode("'abc'") ;
+    
+    @Before public void before()    { DIR = ConfigTest.getCleanDir() ; }
+    @After  public void after()     { FileOps.clearDirectory(DIR) ; }
+
+    @Test public void inline_format_mem()
+    {
+        NodeTable nt = NodeTableInline.create(SetupTDB.makeNodeTableBase(Location.mem(), Names.indexNode2Id, Names.indexId2Node), Location.mem()) ;
+        assertEquals(NodeId.FormatV1, ((NodeTableInline)nt).getFormat()) ;
+        NodeId id = nt.getAllocateNodeId(o) ;
+        assertFalse(NodeId.isInline(id)) ;
+    }
+    
+    @Test public void inline_format_new_db()
+    {
+        DatasetGraphTDB dsg = build(NodeId.FormatV2) ;
+        NodeTable nt = dsg.getTripleTable().getNodeTupleTable().getNodeTable() ;
+        NodeId id = nt.getAllocateNodeId(o) ;
+        assertTrue(NodeId.isInline(id)) ;
+        dsg.getDefaultGraph().add(new Triple(s, p, o)) ;
+        dsg.close() ;
+        
+        Location loc = new Location(DIR) ;
+        assertEquals(NodeId.FormatV2, NodeTableInline.format(loc)) ;
+        
+        // Reopen, with the default format: the recorded format is used.
+        dsg = build(NodeId.FormatV1) ;
+        assertTrue(dsg.getDefaultGraph().contains(s, p, o)) ;
+        nt = dsg.getTripleTable().getNodeTupleTable().getNodeTable() ;
+        assertTrue(NodeId.isInline(nt.getNodeIdForNode(o))) ;
+        dsg.close() ;
+    }
+    
+    @Test public void inline_format_existing_db()
+    {
+        // A database created with format 1 stays format 1.
+        DatasetGraphTDB dsg = build(NodeId.FormatV1) ;
+        dsg.getDefaultGraph().add(new Triple(s, p, o)) ;
+        dsg.close() ;
+        
+        dsg = build(NodeId.FormatV2) ;
+        Location loc = new Location(DIR) ;
+        assertFalse(loc.getMetaFile().hasProperty(Names.kNodeTableLayout)) ;
+        assertTrue(dsg.getDefaultGraph().contains(s, p, o)) ;
+        NodeTable nt = dsg.getTripleTable().getNodeTupleTable().getNodeTable() ;
+        assertFalse(NodeId.isInline(nt.getNodeIdForNode(o))) ;
+        dsg.close() ;
+    }
+    
+    private DatasetGraphTDB build(int format)
+    {
+        SystemParams params = new SystemParams() ;
+        params.nodeIdFormat = format ;
+        return DatasetBuilderStd.stdBuilder().build(new Location(DIR), params) ;
+    }
+}
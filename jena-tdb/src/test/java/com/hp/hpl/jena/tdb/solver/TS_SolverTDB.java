@@ -25,6 +25,12 @@ import org.junit.runners.Suite ;
 @Suite.SuiteClasses( {
     TestSolverTDB.class     // Tests the TDB connectivity
     , TestStats.class
+    , TestStatsLive.class
+    , TestCharacteristicSets.class
+    , TestJoinStrategy.class
+    , TestRangeFilter.class
+    , TestSemiJoin.class
+    , TestParallelScan.class
 })
 
 public class TS_SolverTDB
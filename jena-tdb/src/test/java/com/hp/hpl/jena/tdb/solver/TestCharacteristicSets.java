@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.solver;
+
+import java.io.ByteArrayOutputStream ;
+import java.util.Arrays ;
+import java.util.List ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.StrUtils ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Graph ;
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.NodeFactory ;
+import com.hp.hpl.jena.sparql.core.BasicPattern ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.optimizer.StatsMatcher ;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderTransformation ;
+import com.hp.hpl.jena.sparql.sse.Item ;
+import com.hp.hpl.jena.sparql.sse.SSE ;
+import com.hp.hpl.jena.tdb.solver.stats.CharacteristicSet ;
+import com.hp.hpl.jena.tdb.solver.stats.ReorderCharacteristicSets ;
+import com.hp.hpl.jena.tdb.solver.stats.Stats ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsResults ;
+
+public class TestCharacteristicSets extends BaseTest
+{
+    // :a1, :a2 have :name and :age ; :b1, :b2, :b3 have :name and :email ; :c1 has :name only.
+    static Graph graph = SSE.parseGraph(StrUtils.strjoinNL(
+        "(graph",
+        "  (<a1> <name> 'A1') (<a1> <age> 1)",
+        "  (<a2> <name> 'A2') (<a2> <age> 2)",
+        "  (<b1> <name> 'B1') (<b1> <email> 'b1@') (<b1> <email> 'b1@x')",
+        "  (<b2> <name> 'B2') (<b2> <email> 'b2@')",
+        "  (<b3> <name> 'B3') (<b3> <email> 'b3@')",
+        "  (<c1> <name> 'C1')",
+        ")")) ;
+    
+    static Node name = NodeFactory.createURI("name") ;
+    static Node age = NodeFactory.createURI("age") ;
+    static Node email = NodeFactory.createURI("email") ;
+    
+    private static CharacteristicSet find(List<CharacteristicSet> charSets, Node... predicates)
+    {
+        for ( CharacteristicSet cs : charSets )
+        {
+            if ( cs.getPredicates().size() == predicates.length && cs.containsAll(Arrays.asList(predicates)) )
+                return cs ;
+        }
+        return null ;
+    }
+    
+    @Test public void charsets_01()
+    {
+        StatsResults r = Stats.gather(graph).results() ;
+        List<CharacteristicSet> charSets = r.getCharacteristicSets() ;
+        assertEquals(3, charSets.size()) ;
+        
+        CharacteristicSet cs1 = find(charSets, name, age) ;
+        assertNotNull(cs1) ;
+        assertEquals(2, cs1.getCount()) ;
+        
+        CharacteristicSet cs2 = find(charSets, name, email) ;
+        assertNotNull(cs2) ;
+        assertEquals(3, cs2.getCount()) ;
+        assertEquals(4, cs2.getPredicates().get(email).intValue()) ;
+        
+        CharacteristicSet cs3 = find(charSets, name) ;
+        assertNotNull(cs3) ;
+        assertEquals(1, cs3.getCount()) ;
+    }
+    
+    @Test public void charsets_02()
+    {
+        // Round trip through the stats file format.
+        StatsResults r = Stats.gather(graph).results() ;
+        ByteArrayOutputStream out = new ByteArrayOutputStream() ;
+        Stats.write(out, r) ;
+        Item item = SSE.parse(out.toString()) ;
+        StatsResults r2 = Stats.read(item) ;
+        assertEquals(r.getCount(), r2.getCount()) ;
+        assertEquals(3, r2.getCharacteristicSets().size()) ;
+        CharacteristicSet cs = find(r2.getCharacteristicSets(), name, email) ;
+        assertNotNull(cs) ;
+        assertEquals(3, cs.getCount()) ;
+        assertEquals(4, cs.getPredicates().get(email).intValue()) ;
+        
+        // The matcher ignores the characteristic sets.
+        StatsMatcher matcher = new StatsMatcher(item) ;
+        assertEquals(6, matcher.match(SSE.parseTriple("(?x <name> ?v)")), 0) ;
+    }
+    
+    @Test public void charsets_03()
+    {
+        // Star estimates: ?x (:name, :age) is 2, ?y (:name, :email) is 4.
+        StatsResults r = Stats.gather(graph).results() ;
+        StatsMatcher matcher = new StatsMatcher(Stats.format(r)) ;
+        ReorderTransformation reorder = new ReorderCharacteristicSets(matcher, r.getCharacteristicSets()) ;
+        
+        BasicPattern bgp = SSE.parseBGP("(bgp (?x <name> ?n) (?y <email> ?e) (?x <age> ?a) (?y <name> ?m))") ;
+        BasicPattern bgp2 = reorder.reorder(bgp) ;
+        assertEquals(Var.alloc("x"), bgp2.get(0).getSubject()) ;
+        assertEquals(Var.alloc("x"), bgp2.get(1).getSubject()) ;
+        assertEquals(Var.alloc("y"), bgp2.get(2).getSubject()) ;
+        assertEquals(Var.alloc("y"), bgp2.get(3).getSubject()) ;
+    }
+    
+    @Test public void charsets_04()
+    {
+        // No subject has both :age and :email.
+        StatsResults r = Stats.gather(graph).results() ;
+        StatsMatcher matcher = new StatsMatcher(Stats.format(r)) ;
+        ReorderTransformation reorder = new ReorderCharacteristicSets(matcher, r.getCharacteristicSets()) ;
+        
+        BasicPattern bgp = SSE.parseBGP("(bgp (?y <name> ?n) (?x <name> ?m) (?x <age> ?a) (?x <email> ?e))") ;
+        BasicPattern bgp2 = reorder.reorder(bgp) ;
+        assertEquals(Var.alloc("x"), bgp2.get(0).getSubject()) ;
+        assertEquals(Var.alloc("y"), bgp2.get(3).getSubject()) ;
+    }
+    }
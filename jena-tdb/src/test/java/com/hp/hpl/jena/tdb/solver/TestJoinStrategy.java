@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.solver;
+
+import java.util.ArrayList ;
+import java.util.List ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.StrUtils ;
+import org.apache.jena.atlas.lib.Tuple ;
+import org.junit.BeforeClass ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.NodeFactory ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.query.* ;
+import com.hp.hpl.jena.sparql.core.BasicPattern ;
+import com.hp.hpl.jena.sparql.core.Quad ;
+import com.hp.hpl.jena.sparql.graph.NodeConst ;
+import com.hp.hpl.jena.sparql.resultset.ResultSetCompare ;
+import com.hp.hpl.jena.sparql.sse.SSE ;
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.tdb.TDBFactory ;
+import com.hp.hpl.jena.tdb.index.TupleTable ;
+import com.hp.hpl.jena.tdb.solver.stats.Stats ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsResults ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+import com.hp.hpl.jena.tdb.sys.TDBInternal ;
+
+public class TestJoinStrategy extends BaseTest
+{
+    static Dataset dataset ;
+    static DatasetGraphTDB dsg ;
+    
+    static final String PREFIX = "PREFIX : <http://example/> PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n" ;
+    
+    @BeforeClass static public void beforeClass()
+    {
+        dataset = TDBFactory.createDataset() ;
+        dsg = TDBInternal.getBaseDatasetGraphTDB(dataset.asDatasetGraph()) ;
+        Node p = node(":p") ;
+        Node q = node(":q") ;
+        Node label = node(":label") ;
+        Node T = node(":T") ;
+        Node U = node(":U") ;
+        for ( int i = 0 ; i < 100 ; i++ )
+        {
+            Node s = node(":s"+i) ;
+            Node x = node(":x"+(i%7)) ;
+            add(s, NodeConst.nodeRDFType, T) ;
+            if ( i % 3 == 0 )
+                add(s, NodeConst.nodeRDFType, U) ;
+            add(s, label, NodeFactory.createLiteral("label"+i)) ;
+            if ( i % 2 == 0 )
+                add(s, p, x) ;
+            else
+                add(s, q, x) ;
+        }
+    }
+    
+    private static void add(Node s, Node p, Node o)
+    {
+        dsg.add(Quad.defaultGraphIRI, s, p, o) ;
+        // Also in two named graphs for the union graph.
+        dsg.add(node(":g1"), s, p, o) ;
+        dsg.add(node(":g2"), s, p, o) ;
+    }
+    
+    private static Node node(String str)
+    {
+        return SSE.parseNode(str) ;
+    }
+    
+    @Test public void join_star()       { test("SELECT * { ?s a :T . ?s :label ?l }") ; }
+
+    @Test public void join_types()      { test("SELECT * { ?s a :T . ?s a :U }") ; }
+
+    @Test public void join_object()     { test("SELECT * { ?a :p ?x . ?b :q ?x }") ; }
+
+    @Test public void join_chain()      { test("SELECT * { ?a :p ?x . ?b :q ?x . ?b :label ?l }") ; }
+
+    @Test public void join_input()      { test("SELECT * { VALUES ?x { :x1 :x2 :x99 } ?a :p ?x . ?b :q ?x }") ; }
+
+    @Test public void join_none()       { test("SELECT * { ?s a :U . ?s :q :x0 }") ; }
+
+    @Test public void join_graph()      { test("SELECT * { GRAPH :g1 { ?s a :T . ?s a :U } }") ; }
+
+    @Test public void join_union()      { test("SELECT * { GRAPH <"+Quad.unionGraph.getURI()+"> { ?a :p ?x . ?b :q ?x } }") ; }
+    
+    @Test public void join_graphVar()   { test("SELECT * { GRAPH ?g { ?s a :T . ?s :label ?l } }") ; }
+
+    private static void test(String queryString)
+    {
+        ResultSetRewindable rs0 = exec(queryString, JoinStrategy.nested) ;
+        assertTrue(rs0.size() > 0 || queryString.contains(":x0")) ;
+        for ( JoinStrategy strategy : JoinStrategy.values() )
+        {
+            ResultSetRewindable rs = exec(queryString, strategy) ;
+            rs0.reset() ;
+            assertTrue("Strategy: "+strategy, ResultSetCompare.equalsByTerm(rs0, rs)) ;
+        }
+        // Batched index probes.
+        for ( int batchSize : new int[]{2, 7, 1000} )
+        {
+            ResultSetRewindable rs = exec(queryString, JoinStrategy.nested, batchSize) ;
+            rs0.reset() ;
+            assertTrue("Batch: "+batchSize, ResultSetCompare.equalsByTerm(rs0, rs)) ;
+        }
+    }
+
+    private static ResultSetRewindable exec(String queryString, JoinStrategy strategy)
+    {
+        return exec(queryString, strategy, 0) ;
+    }
+    
+    private static ResultSetRewindable exec(String queryString, JoinStrategy strategy, int batchSize)
+    {
+        Query query = QueryFactory.create(PREFIX+queryString) ;
+        QueryExecution qExec = QueryExecutionFactory.create(query, dataset) ;
+        qExec.getContext().set(SystemTDB.symJoinStrategy, strategy.name()) ;
+        qExec.getContext().set(SystemTDB.symProbeBatchSize, batchSize) ;
+        ResultSetRewindable rs = ResultSetFactory.makeRewindable(qExec.execSelect()) ;
+        qExec.close() ;
+        return rs ;
+    }
+    
+    // ---- Planning 
+    
+    static StatsResults stats = Stats.read(SSE.parse(StrUtils.strjoinNL(
+        "(stats (meta (count 200000))",
+        "  (:p 50000) (:q 40000) (:r 20)",
+        "  ((VAR rdf:type :T) 80000)",
+        "  (other 0))"))) ;
+    
+    @Test public void stats_read()
+    {
+        assertEquals(200000, stats.getCount()) ;
+        assertEquals(Integer.valueOf(50000), stats.getPredicates().get(node(":p"))) ;
+        assertEquals(Integer.valueOf(80000), stats.getTypes().get(node(":T"))) ;
+    }
+    
+    @Test public void plan_01()     { plan(JoinStrategy.auto, "(bgp (?a :p ?x) (?b :q ?x))", JoinStrategy.merge) ; }
+
+    @Test public void plan_02()     { plan(JoinStrategy.auto, "(bgp (?s :p ?x) (?s :q ?y))", JoinStrategy.hash) ; }
+
+    // Subject constant : selective.
+    @Test public void plan_03()     { plan(JoinStrategy.auto, "(bgp (:a :p ?x) (?x :q ?y))", JoinStrategy.nested) ; }
+
+    // Small predicate.
+    @Test public void plan_04()     { plan(JoinStrategy.auto, "(bgp (?s :p ?x) (?s :r ?y))", JoinStrategy.nested) ; }
+
+    // No shared variable.
+    @Test public void plan_05()     { plan(JoinStrategy.auto, "(bgp (?s :p ?x) (?a :q ?b))", JoinStrategy.nested) ; }
+
+    @Test public void plan_06()     { plan(JoinStrategy.auto, "(bgp (?s rdf:type :T) (?s :q ?y) (?y :p ?z))", 
+                                           JoinStrategy.hash, JoinStrategy.hash) ; }
+
+    @Test public void plan_07()     { plan(JoinStrategy.nested, "(bgp (?a :p ?x) (?b :q ?x))", JoinStrategy.nested) ; }
+
+    @Test public void plan_08()     { plan(JoinStrategy.hash, "(bgp (:a :p ?x) (?x :q ?y))", JoinStrategy.hash) ; }
+    
+    @Test public void plan_09()     { plan(JoinStrategy.merge, "(bgp (?s :p ?x) (?s :q ?y))", JoinStrategy.nested) ; }
+    
+    // Build side too large for a hash join.
+    @Test public void plan_10()     { plan(20000, "(bgp (?s :p ?x) (?s :q ?y))", JoinStrategy.nested) ; }
+
+    // Merge join only for the first two patterns.
+    @Test public void plan_11()     { plan(JoinStrategy.merge, "(bgp (?a :p ?x) (?b :q ?x) (?c :p ?b))", 
+                                           JoinStrategy.merge, JoinStrategy.nested) ; }
+    
+    @Test public void maxBuildSize_01()
+    {
+        Context cxt = new Context() ;
+        assertEquals(SystemTDB.HashJoinMaxBuildSize, JoinPlanner.maxBuildSize(cxt)) ;
+        cxt.set(ARQ.spillToDiskThreshold, 1000L) ;
+        assertEquals(1000, JoinPlanner.maxBuildSize(cxt)) ;
+        cxt.set(ARQ.spillToDiskThreshold, SystemTDB.HashJoinMaxBuildSize+1000L) ;
+        assertEquals(SystemTDB.HashJoinMaxBuildSize, JoinPlanner.maxBuildSize(cxt)) ;
+    }
+    
+    private static void plan(JoinStrategy requested, String bgpStr, JoinStrategy... expected)
+    {
+        plan(requested, SystemTDB.HashJoinMaxBuildSize, bgpStr, expected) ;
+    }
+    
+    private static void plan(long maxBuildSize, String bgpStr, JoinStrategy... expected)
+    {
+        plan(JoinStrategy.auto, maxBuildSize, bgpStr, expected) ;
+    }
+    
+    private static void plan(JoinStrategy requested, long maxBuildSize, String bgpStr, JoinStrategy... expected)
+    {
+        BasicPattern bgp = SSE.parseBGP(bgpStr) ;
+        List<Tuple<Node>> tuples = new ArrayList<Tuple<Node>>() ;
+        for ( Triple t : bgp )
+            tuples.add(Tuple.createTuple(t.getSubject(), t.getPredicate(), t.getObject())) ;
+        TupleTable table = dsg.getTripleTable().getNodeTupleTable().getTupleTable() ;
+        JoinStrategy[] plan = new JoinPlanner(stats, requested, maxBuildSize).plan(tuples, table, false) ;
+        assertEquals(JoinStrategy.nested, plan[0]) ;
+        for ( int i = 0 ; i < expected.length ; i++ )
+            assertEquals("Step "+(i+1), expected[i], plan[i+1]) ;
+    }
+}
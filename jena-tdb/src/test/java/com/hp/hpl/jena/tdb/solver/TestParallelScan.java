@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.solver;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.junit.BeforeClass ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype ;
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.NodeFactory ;
+import com.hp.hpl.jena.query.* ;
+import com.hp.hpl.jena.sparql.core.DatasetGraph ;
+import com.hp.hpl.jena.sparql.core.Quad ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.main.iterator.QueryIterParallel ;
+import com.hp.hpl.jena.sparql.graph.NodeConst ;
+import com.hp.hpl.jena.sparql.resultset.ResultSetCompare ;
+import com.hp.hpl.jena.sparql.sse.SSE ;
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.tdb.TDBFactory ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTupleTable ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+import com.hp.hpl.jena.tdb.sys.TDBInternal ;
+
+public class TestParallelScan extends BaseTest
+{
+    static Dataset dataset ;
+    static DatasetGraphTDB dsg ;
+    
+    static final String PREFIX = "PREFIX : <http://example/>\n" ;
+    
+    @BeforeClass static public void beforeClass()
+    {
+        dataset = TDBFactory.createDataset() ;
+        dsg = TDBInternal.getBaseDatasetGraphTDB(dataset.asDatasetGraph()) ;
+        Node p = node(":p") ;
+        Node label = node(":label") ;
+        Node T = node(":T") ;
+        // Enough for the indexes to have several levels.
+        for ( int i = 0 ; i < 3000 ; i++ )
+        {
+            Node s = node(":s"+i) ;
+            add(s, NodeConst.nodeRDFType, T) ;
+            add(s, label, NodeFactory.createLiteral("label"+i)) ;
+            add(s, p, node(":s"+((i*7)%3000))) ;
+            add(s, node(":v"), NodeFactory.createLiteral(Integer.toString(i), null, XSDDatatype.XSDinteger)) ;
+        }
+    }
+    
+    private static void add(Node s, Node p, Node o)
+    {
+        dsg.add(Quad.defaultGraphIRI, s, p, o) ;
+        dsg.add(node(":g"), s, p, o) ;
+    }
+    
+    private static Node node(String str)
+    {
+        return SSE.parseNode(str) ;
+    }
+    
+    @Test public void parallelScan_01()     { test("SELECT * { ?s ?p ?o }") ; }
+
+    @Test public void parallelScan_02()     { test("SELECT * { ?s a :T . ?s :label ?l }") ; }
+
+    @Test public void parallelScan_03()     { test("SELECT * { ?s :p ?x . ?x :p ?y . ?y :label ?l }") ; }
+
+    @Test public void parallelScan_04()     { test("SELECT * { ?s :v ?v FILTER(?v < 100) ?s :label ?l }") ; }
+
+    @Test public void parallelScan_05()     { test("SELECT * { GRAPH :g { ?s a :T . ?s :p ?x } }") ; }
+
+    @Test public void parallelScan_06()     { test("SELECT * { ?s :p :s7 . ?s :label ?l }") ; }
+
+    @Test public void parallelScan_07()     { test("SELECT * { ?s :noSuchProperty ?o }") ; }
+
+    @Test public void parallelScan_08()     { test("SELECT (count(*) AS ?c) { ?s ?p ?o . ?o ?q ?z }") ; }
+
+    @Test public void parallelScan_limit()
+    {
+        // Not all of the parts are read.
+        ResultSetRewindable rs = exec("SELECT * { ?s a :T . ?s :label ?l } LIMIT 10", true) ;
+        assertEquals(10, rs.size()) ;
+    }
+    
+    @Test public void parallelScan_txn_01()
+    {
+        Dataset ds = TDBFactory.createDataset() ;
+        Context cxt = new Context() ;
+        cxt.set(SystemTDB.symParallelScan, true) ;
+        ds.begin(ReadWrite.WRITE) ;
+        try {
+            // No parallel scan in a write transaction.
+            assertFalse(SolverLib.isParallelScan(nodeTupleTable(ds), execCxt(ds, cxt))) ;
+            ds.commit() ;
+        } finally { ds.end() ; }
+        ds.begin(ReadWrite.READ) ;
+        try {
+            assertTrue(SolverLib.isParallelScan(nodeTupleTable(ds), execCxt(ds, cxt))) ;
+        } finally { ds.end() ; }
+    }
+    
+    @Test public void parallelScan_txn_02()
+    {
+        // Queries in a write transaction see the uncommitted changes.
+        Dataset ds = TDBFactory.createDataset() ;
+        ds.begin(ReadWrite.WRITE) ;
+        try {
+            DatasetGraph dsgTxn = ds.asDatasetGraph() ;
+            for ( int i = 0 ; i < 3000 ; i++ )
+                dsgTxn.add(Quad.defaultGraphIRI, node(":s"+i), NodeConst.nodeRDFType, node(":T")) ;
+            ResultSetRewindable rs0 = exec(ds, "SELECT * { ?s a :T }", false) ;
+            ResultSetRewindable rs = exec(ds, "SELECT * { ?s a :T }", true) ;
+            assertEquals(3000, rs0.size()) ;
+            assertEquals(3000, rs.size()) ;
+            rs0.reset() ;
+            assertTrue(ResultSetCompare.equalsByTerm(rs0, rs)) ;
+            ds.abort() ;
+        } finally { ds.end() ; }
+    }
+    
+    @Test public void parallelExec_txn_01()
+    {
+        // UNION arms and join inputs are not evaluated in parallel in a write transaction.
+        Dataset ds = TDBFactory.createDataset() ;
+        Context cxt = new Context() ;
+        cxt.set(ARQ.parallelExecution, true) ;
+        ds.begin(ReadWrite.WRITE) ;
+        try {
+            assertFalse(QueryIterParallel.isEnabled(execCxt(ds, cxt))) ;
+            ds.commit() ;
+        } finally { ds.end() ; }
+        ds.begin(ReadWrite.READ) ;
+        try {
+            assertTrue(QueryIterParallel.isEnabled(execCxt(ds, cxt))) ;
+        } finally { ds.end() ; }
+    }
+    
+    private static NodeTupleTable nodeTupleTable(Dataset ds)
+    {
+        return TDBInternal.getDatasetGraphTDB(ds.asDatasetGraph()).getTripleTable().getNodeTupleTable() ;
+    }
+    
+    private static ExecutionContext execCxt(Dataset ds, Context cxt)
+    {
+        DatasetGraph dsgTxn = TDBInternal.getDatasetGraphTDB(ds.asDatasetGraph()) ;
+        return new ExecutionContext(cxt, dsgTxn.getDefaultGraph(), dsgTxn, null) ;
+    }
+    
+    private static void test(String queryString)
+    {
+        ResultSetRewindable rs0 = exec(queryString, false) ;
+        ResultSetRewindable rs = exec(queryString, true) ;
+        assertEquals(rs0.size(), rs.size()) ;
+        rs0.reset() ;
+        assertTrue(ResultSetCompare.equalsByTerm(rs0, rs)) ;
+    }
+
+    private static ResultSetRewindable exec(String queryString, boolean parallel)
+    {
+        return exec(dataset, queryString, parallel) ;
+    }
+
+    private static ResultSetRewindable exec(Dataset ds, String queryString, boolean parallel)
+    {
+        Query query = QueryFactory.create(PREFIX+queryString) ;
+        QueryExecution qExec = QueryExecutionFactory.create(query, ds) ;
+        qExec.getContext().set(SystemTDB.symParallelScan, parallel) ;
+        ResultSetRewindable rs = ResultSetFactory.makeRewindable(qExec.execSelect()) ;
+        qExec.close() ;
+        return rs ;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.solver;
+
+import java.util.List ;
+import java.util.Map ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.junit.BeforeClass ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.query.* ;
+import com.hp.hpl.jena.sparql.core.DatasetGraph ;
+import com.hp.hpl.jena.sparql.core.Quad ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory ;
+import com.hp.hpl.jena.sparql.expr.Expr ;
+import com.hp.hpl.jena.sparql.expr.ExprList ;
+import com.hp.hpl.jena.sparql.expr.NodeValue ;
+import com.hp.hpl.jena.sparql.resultset.ResultSetCompare ;
+import com.hp.hpl.jena.sparql.sse.SSE ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.setup.DatasetBuilderStd ;
+import com.hp.hpl.jena.tdb.setup.SystemParams ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+import com.hp.hpl.jena.tdb.store.NodeIdRange ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+public class TestRangeFilter extends BaseTest
+{
+    static final String PREFIX = "PREFIX : <http://example/> PREFIX xsd: <http://www.w3.org/2001/XMLSchema#>\n" ;
+    
+    static String[] values = {
+        "-1000", "-1", "0", "1", "5", "99", "100", "101", "1000000000000000", "-1000000000000000",
+        "123456789012345678901234567890",
+        "-1.5", "0.0", "99.99", "100.0", "100.01", "123456.789", "1.5e0",
+        "'-2.5'^^xsd:double", "'0.5'^^xsd:double", "'100.0'^^xsd:double", "'1.0E10'^^xsd:double", "'0.1'^^xsd:double",
+        "'-0.0'^^xsd:double", "'100.5'^^xsd:float", "'-0.5'^^xsd:float", "'99.9'^^xsd:float",
+        "'0100'^^xsd:integer", "'100'^^xsd:int", "'100'", "'abc'", "<http://example/x>", "true",
+        "'2012-01-01T00:00:00Z'^^xsd:dateTime", "'2012-01-01T10:00:00+05:00'^^xsd:dateTime",
+        "'2011-12-31T23:00:00-02:00'^^xsd:dateTime", "'2012-01-01T00:00:00'^^xsd:dateTime",
+        "'2012-06-15T12:30:00.5Z'^^xsd:dateTime", "'2011-12-31T20:00:00-14:00'^^xsd:dateTime",
+        "'1999-01-01T00:00:00Z'^^xsd:dateTime", "'2012-01-01T00:00:00.123+01:00'^^xsd:dateTime",
+        "'2012-01-01'^^xsd:date", "'2012'^^xsd:gYear",
+    } ;
+    
+    static String[] filters = {
+        "(>= ?o 100)", "(> ?o 100)", "(< ?o 0)", "(<= ?o -1.5)", "(< 99 ?o)", 
+        "(&& (> ?o 99.5) (< ?o 100.5))", "(> ?o 99.5)", "(>= ?o 100.0e0)", "(< ?o 1.0E10)",
+        "(> ?o '99.9'^^xsd:float)", "(<= ?o '0.1'^^xsd:double)", "(>= ?o -0.0e0)", "(<= ?o 0)",
+        "(> ?o 1000000000000000)", "(&& (> ?o 0) (> ?o 5))",
+        "(>= ?o '2012-01-01T00:00:00Z'^^xsd:dateTime)",
+        "(< ?o '2012-01-01T00:00:00Z'^^xsd:dateTime)",
+        "(&& (>= ?o '2011-12-31T00:00:00Z'^^xsd:dateTime) (< ?o '2012-01-02T00:00:00Z'^^xsd:dateTime))",
+        "(> ?o '2012-01-01T00:00:00'^^xsd:dateTime)",
+        "(<= ?o '2012-01-01T05:00:00+05:00'^^xsd:dateTime)",
+        "(&& (> ?o 1) (< ?o '2012-01-01T00:00:00Z'^^xsd:dateTime))",
+    } ;
+    
+    static Dataset dataset1 ;
+    static Dataset dataset2 ;
+    
+    @BeforeClass static public void beforeClass()
+    {
+        dataset1 = create(NodeId.FormatV1) ;
+        dataset2 = create(NodeId.FormatV2) ;
+    }
+    
+    private static Dataset create(int format)
+    {
+        SystemParams params = new SystemParams() ;
+        params.nodeIdFormat = format ;
+        DatasetGraph dsg = DatasetBuilderStd.stdBuilder().build(Location.mem(), params) ;
+        load(dsg) ;
+        return DatasetFactory.create(dsg) ;
+    }
+
+    private static void load(DatasetGraph dsg)
+    {
+        Node p = SSE.parseNode(":p") ;
+        Node q = SSE.parseNode(":q") ;
+        for ( int i = 0 ; i < values.length ; i++ )
+        {
+            Node s = SSE.parseNode(":s"+i) ;
+            Node o = node(values[i]) ;
+            dsg.add(Quad.defaultGraphIRI, s, p, o) ;
+            dsg.add(Quad.defaultGraphIRI, s, q, SSE.parseNode(":x"+(i%3))) ;
+            dsg.add(SSE.parseNode(":g"+(i%2)), s, p, o) ;
+        }
+    }
+
+    private static Node node(String str)
+    {
+        return SSE.parseNode(str, SSE.getDefaultPrefixMapRead()) ;
+    }
+    
+    // ---- Key ranges cover all the values that pass the filter.
+    
+    @Test public void range_cover()
+    {
+        for ( String f : filters )
+        {
+            Expr expr = SSE.parseExpr(f) ;
+            Map<Var, RangeFilter> ranges = RangeFilter.extract(new ExprList(expr)) ;
+            RangeFilter range = ranges.get(Var.alloc("o")) ;
+            assertNotNull(f, range) ;
+            List<NodeIdRange> x = range.getRanges() ;
+            if ( x == null )
+                continue ;
+            for ( String v : values )
+            {
+                Node n = node(v) ;
+                NodeId nodeId = NodeId.inline(n, NodeId.FormatV2) ;
+                if ( nodeId == null )
+                    // Always in the pointer range.
+                    continue ;
+                if ( passes(expr, n) )
+                    assertTrue(f+" : "+v, covers(x, nodeId)) ;
+            }
+        }
+    }
+    
+    @Test public void range_exclude()
+    {
+        Expr expr = SSE.parseExpr("(&& (> ?o 99.5) (< ?o 100.5))") ;
+        List<NodeIdRange> x = RangeFilter.extract(new ExprList(expr)).get(Var.alloc("o")).getRanges() ;
+        assertFalse(covers(x, NodeId.inline(node("5")))) ;
+        assertFalse(covers(x, NodeId.inline(node("-100")))) ;
+        assertFalse(covers(x, NodeId.inline(node("99.49")))) ;
+        assertTrue(covers(x, NodeId.inline(node("100")))) ;
+        assertFalse(covers(x, NodeId.inline(node("'2012-01-01'^^xsd:date")))) ;
+        
+        expr = SSE.parseExpr("(>= ?o '2012-01-01T00:00:00Z'^^xsd:dateTime)") ;
+        x = RangeFilter.extract(new ExprList(expr)).get(Var.alloc("o")).getRanges() ;
+        assertFalse(covers(x, NodeId.inline(node("'1999-01-01T00:00:00Z'^^xsd:dateTime")))) ;
+        assertFalse(covers(x, NodeId.inline(node("'2011-12-31T20:00:00+01:00'^^xsd:dateTime")))) ;
+        assertFalse(covers(x, NodeId.inline(node("100")))) ;
+    }
+
+    @Test public void range_none()
+    {
+        Map<Var, RangeFilter> x = RangeFilter.extract(new ExprList(SSE.parseExpr("(|| (> ?o 1) (< ?o 0))"))) ;
+        assertTrue(x.isEmpty()) ;
+        x = RangeFilter.extract(new ExprList(SSE.parseExpr("(> ?o 'abc')"))) ;
+        assertTrue(x.isEmpty()) ;
+        x = RangeFilter.extract(new ExprList(SSE.parseExpr("(> ?o ?z)"))) ;
+        assertTrue(x.isEmpty()) ;
+        RangeFilter r = RangeFilter.extract(new ExprList(SSE.parseExpr("(&& (> ?o 1) (> ?o '2012-01-01T00:00:00Z'^^xsd:dateTime))"))).get(Var.alloc("o")) ;
+        assertNull(r.getRanges()) ;
+    }
+
+    private static boolean passes(Expr expr, Node n)
+    {
+        Binding b = BindingFactory.binding(Var.alloc("o"), n) ;
+        return expr.isSatisfied(b, null) ;
+    }
+
+    private static boolean covers(List<NodeIdRange> ranges, NodeId nodeId)
+    {
+        for ( NodeIdRange range : ranges )
+        {
+            if ( range.getType() != nodeId.type() )
+                continue ;
+            long[] r = range.range(range.group(nodeId)) ;
+            if ( r != null && r[0] <= nodeId.getId() && nodeId.getId() < r[1] )
+                return true ;
+        }
+        return false ;
+    }
+    
+    // ---- Query results are the same with and without range scans.
+    
+    @Test public void range_query_01()  { test("SELECT * { ?s :p ?o FILTER(?o >= 100) }") ; }
+    @Test public void range_query_02()  { test("SELECT * { ?s :p ?o FILTER(?o > 99.5 && ?o < 100.5) }") ; }
+    @Test public void range_query_03()  { test("SELECT * { ?s :p ?o FILTER(?o < 0) }") ; }
+    @Test public void range_query_04()  { test("SELECT * { ?s :p ?o FILTER(?o >= '2012-01-01T00:00:00Z'^^xsd:dateTime) }") ; }
+    @Test public void range_query_05()  { test("SELECT * { ?s :p ?o FILTER(?o >= '2011-12-31T00:00:00Z'^^xsd:dateTime && ?o < '2012-01-02T00:00:00Z'^^xsd:dateTime) }") ; }
+    @Test public void range_query_06()  { test("SELECT * { ?s ?p ?o FILTER(?o > 1) }") ; }
+    @Test public void range_query_07()  { test("SELECT * { ?s :q ?x . ?s :p ?o FILTER(?o > 1) }") ; }
+    @Test public void range_query_08()  { test("SELECT * { GRAPH :g1 { ?s :p ?o FILTER(?o <= 100) } }") ; }
+    @Test public void range_query_09()  { test("SELECT * { GRAPH ?g { ?s :p ?o FILTER(?o <= 100) } }") ; }
+    @Test public void range_query_10()  { test("SELECT * { GRAPH <"+Quad.unionGraph.getURI()+"> { ?s :p ?o FILTER(?o <= 100) } }") ; }
+    @Test public void range_query_11()  { test("SELECT * { VALUES ?o { 5 100 } ?s :p ?o FILTER(?o > 1) }") ; }
+    @Test public void range_query_12()  { test("SELECT * { ?s :p ?o FILTER(?o > 1.0e0) }") ; }
+    @Test public void range_query_13()  { test("SELECT * { ?s :p ?o FILTER(?o > '2012-01-01T00:00:00'^^xsd:dateTime) }") ; }
+
+    private static void test(String queryString)
+    {
+        for ( Dataset ds : new Dataset[]{dataset1, dataset2} )
+        {
+            ResultSetRewindable rs0 = exec(ds, queryString, false) ;
+            ResultSetRewindable rs1 = exec(ds, queryString, true) ;
+            assertTrue(queryString, rs0.size() > 0) ;
+            assertTrue(queryString, ResultSetCompare.equalsByTerm(rs0, rs1)) ;
+        }
+    }
+
+    private static ResultSetRewindable exec(Dataset ds, String queryString, boolean rangeFilter)
+    {
+        Query query = QueryFactory.create(PREFIX+queryString) ;
+        QueryExecution qExec = QueryExecutionFactory.create(query, ds) ;
+        qExec.getContext().set(SystemTDB.symRangeFilter, rangeFilter) ;
+        ResultSetRewindable rs = ResultSetFactory.makeRewindable(qExec.execSelect()) ;
+        qExec.close() ;
+        return rs ;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.solver;
+
+import java.util.ArrayList ;
+import java.util.List ;
+
+import org.apache.jena.atlas.iterator.Filter ;
+import org.apache.jena.atlas.lib.Tuple ;
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.junit.BeforeClass ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.query.* ;
+import com.hp.hpl.jena.sparql.algebra.Op ;
+import com.hp.hpl.jena.sparql.core.Quad ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext ;
+import com.hp.hpl.jena.sparql.engine.binding.Binding ;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory ;
+import com.hp.hpl.jena.sparql.resultset.ResultSetCompare ;
+import com.hp.hpl.jena.sparql.sse.SSE ;
+import com.hp.hpl.jena.sparql.util.Context ;
+import com.hp.hpl.jena.tdb.TDBFactory ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTupleTable ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+import com.hp.hpl.jena.tdb.sys.TDBInternal ;
+
+public class TestSemiJoin extends BaseTest
+{
+    static final String PREFIX = "PREFIX : <http://example/> PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n" ;
+    
+    static Dataset dataset ;
+    static DatasetGraphTDB dsg ;
+    
+    @BeforeClass static public void beforeClass()
+    {
+        dataset = TDBFactory.createDataset() ;
+        dsg = TDBInternal.getBaseDatasetGraphTDB(dataset.asDatasetGraph()) ;
+        Node p = SSE.parseNode(":p") ;
+        Node q = SSE.parseNode(":q") ;
+        Node type = SSE.parseNode("rdf:type") ;
+        for ( int i = 0 ; i < 100 ; i++ )
+        {
+            Node s = SSE.parseNode(":s"+i) ;
+            Node o = SSE.parseNode(":o"+(i%20)) ;
+            dsg.add(Quad.defaultGraphIRI, s, p, o) ;
+            dsg.add(SSE.parseNode(":g"+(i%2)), s, p, o) ;
+            if ( i%20 == 0 )
+                dsg.add(Quad.defaultGraphIRI, o, q, SSE.parseNode(""+i)) ;
+            if ( i%10 == 0 )
+            {
+                dsg.add(Quad.defaultGraphIRI, s, type, SSE.parseNode(":A")) ;
+                dsg.add(SSE.parseNode(":g"+(i%3)), s, type, SSE.parseNode(":A")) ;
+            }
+        }
+    }
+    
+    private static List<Tuple<Node>> tuples(String... patterns)
+    {
+        List<Tuple<Node>> x = new ArrayList<Tuple<Node>>() ;
+        for ( String p : patterns )
+        {
+            Triple t = SSE.parseTriple(p) ;
+            x.add(Tuple.createTuple(t.getSubject(), t.getPredicate(), t.getObject())) ;
+        }
+        return x ;
+    }
+    
+    @Test public void semijoin_enabled()
+    {
+        // Off unless asked for.
+        Context cxt = new Context() ;
+        assertFalse(SemiJoin.isEnabled(cxt)) ;
+        cxt.set(SystemTDB.symSemiJoin, true) ;
+        assertTrue(SemiJoin.isEnabled(cxt)) ;
+        cxt.set(SystemTDB.symSemiJoin, false) ;
+        assertFalse(SemiJoin.isEnabled(cxt)) ;
+    }
+    
+    @Test public void semijoin_reduce_01()
+    {
+        NodeTupleTable ntt = dsg.getTripleTable().getNodeTupleTable() ;
+        List<Tuple<Node>> tuples = tuples("(?s :p ?o)", "(?o :q ?v)", "(?s rdf:type :A)") ;
+        List<Filter<Tuple<NodeId>>> filters = SemiJoin.reduce(ntt, tuples, false, null, null) ;
+        assertEquals(2, tuples.size()) ;
+        assertEquals(2, filters.size()) ;
+        assertNotNull(filters.get(0)) ;
+        assertNull(filters.get(1)) ;
+    }
+    
+    @Test public void semijoin_reduce_02()
+    {
+        // Only one variable, but not bound by an earlier step.
+        NodeTupleTable ntt = dsg.getTripleTable().getNodeTupleTable() ;
+        List<Tuple<Node>> tuples = tuples("(?s rdf:type :A)", "(?s :p ?o)") ;
+        SemiJoin.reduce(ntt, tuples, false, null, null) ;
+        assertEquals(2, tuples.size()) ;
+    }
+    
+    @Test public void semijoin_values()
+    {
+        NodeTupleTable ntt = dsg.getTripleTable().getNodeTupleTable() ;
+        Tuple<Node> pattern = tuples("(?s rdf:type :A)").get(0) ;
+        assertEquals(10, SemiJoin.values(ntt, pattern, 0, false, null, 100).size()) ;
+        assertNull(SemiJoin.values(ntt, pattern, 0, false, null, 5)) ;
+        Tuple<Node> pattern2 = tuples("(?s rdf:type :Z)").get(0) ;
+        assertEquals(0, SemiJoin.values(ntt, pattern2, 0, false, null, 100).size()) ;
+    }
+    
+    @Test public void semijoin_mayMatch()
+    {
+        Op op = SSE.parseOp("(bgp (?s rdf:type :A))") ;
+        ExecutionContext execCxt = new ExecutionContext(dataset.getContext(), dsg.getDefaultGraphTDB(), dsg, OpExecutorTDB1.OpExecFactoryTDB) ;
+        Filter<Binding> mayMatch = SemiJoin.mayMatch(op, execCxt) ;
+        assertNotNull(mayMatch) ;
+        assertTrue(mayMatch.accept(BindingFactory.binding(Var.alloc("s"), SSE.parseNode("<http://example/s10>")))) ;
+        assertFalse(mayMatch.accept(BindingFactory.binding(Var.alloc("s"), SSE.parseNode("<http://example/s11>")))) ;
+        assertFalse(mayMatch.accept(BindingFactory.binding(Var.alloc("s"), SSE.parseNode("<http://example/unknown>")))) ;
+        assertTrue(mayMatch.accept(BindingFactory.binding(Var.alloc("z"), SSE.parseNode("<http://example/s11>")))) ;
+    }
+    
+    // ---- Query results are the same with and without semi-joins.
+    
+    @Test public void semijoin_query_01()  { test("SELECT * { ?s :p ?o . ?o :q ?v . ?s rdf:type :A }") ; }
+    @Test public void semijoin_query_02()  { test("SELECT * { ?s :p ?o OPTIONAL { ?o :q ?v } }") ; }
+    @Test public void semijoin_query_03()  { test("SELECT * { ?s :p ?o OPTIONAL { ?s rdf:type ?t } }") ; }
+    @Test public void semijoin_query_04()  { test("SELECT * { GRAPH ?g { ?s :p ?o . ?s rdf:type :A } }") ; }
+    @Test public void semijoin_query_05()  { test("SELECT * { GRAPH :g0 { ?s :p ?o OPTIONAL { ?s rdf:type :A } } }") ; }
+    @Test public void semijoin_query_06()  { test("SELECT * { GRAPH <"+Quad.unionGraph.getURI()+"> { ?s :p ?o . ?s rdf:type :A } }") ; }
+    @Test public void semijoin_query_07()  { test("SELECT * { ?s :p ?o . ?s rdf:type :Z }", 0) ; }
+    @Test public void semijoin_query_08()  { test("SELECT * { ?s :p ?o OPTIONAL { ?s rdf:type ?t . ?o :q ?v } }") ; }
+
+    private static void test(String queryString)
+    {
+        test(queryString, -1) ;
+    }
+    
+    private static void test(String queryString, int expected)
+    {
+        ResultSetRewindable rs0 = exec(queryString, false) ;
+        ResultSetRewindable rs1 = exec(queryString, true) ;
+        if ( expected >= 0 )
+            assertEquals(queryString, expected, rs0.size()) ;
+        else
+            assertTrue(queryString, rs0.size() > 0) ;
+        assertTrue(queryString, ResultSetCompare.equalsByTerm(rs0, rs1)) ;
+    }
+
+    private static ResultSetRewindable exec(String queryString, boolean semiJoin)
+    {
+        Query query = QueryFactory.create(PREFIX+queryString) ;
+        QueryExecution qExec = QueryExecutionFactory.create(query, dataset) ;
+        qExec.getContext().set(SystemTDB.symSemiJoin, semiJoin) ;
+        ResultSetRewindable rs = ResultSetFactory.makeRewindable(qExec.execSelect()) ;
+        qExec.close() ;
+        return rs ;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.solver;
+
+import java.io.ByteArrayInputStream ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.FileOps ;
+import org.apache.jena.atlas.lib.StrUtils ;
+import org.junit.After ;
+import org.junit.Before ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.query.ReadWrite ;
+import com.hp.hpl.jena.sparql.core.Quad ;
+import com.hp.hpl.jena.sparql.core.Var ;
+import com.hp.hpl.jena.sparql.engine.optimizer.StatsMatcher ;
+import com.hp.hpl.jena.sparql.graph.NodeConst ;
+import com.hp.hpl.jena.sparql.sse.SSE ;
+import com.hp.hpl.jena.tdb.ConfigTest ;
+import com.hp.hpl.jena.tdb.StoreConnection ;
+import com.hp.hpl.jena.tdb.TDBLoader ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.setup.DatasetBuilderStd ;
+import com.hp.hpl.jena.tdb.setup.SystemParams ;
+import com.hp.hpl.jena.tdb.solver.stats.ReorderLive ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsLive ;
+import com.hp.hpl.jena.tdb.solver.stats.StatsResults ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.sys.Names ;
+import com.hp.hpl.jena.tdb.transaction.DatasetGraphTxn ;
+
+public class TestStatsLive extends BaseTest
+{
+    private static Node p = SSE.parseNode("<http://example/p>") ;
+    private static Node q = SSE.parseNode("<http://example/q>") ;
+    private static Node r = SSE.parseNode("<http://example/r>") ;
+    private static Node C = SSE.parseNode("<http://example/C>") ;
+    
+    private String DIR ;
+    
+    @Before public void before()    { DIR = ConfigTest.getCleanDir() ; }
+    @After  public void after()     { FileOps.clearDirectory(DIR) ; }
+    
+    @Test public void stats_live_01()
+    {
+        DatasetGraphTDB dsg = build(true) ;
+        assertTrue(dsg.getReorderTransform() instanceof ReorderLive) ;
+        load(dsg) ;
+        check(dsg.getStatsLive()) ;
+        StatsResults r = dsg.getStats() ;
+        assertEquals(7, r.getCount()) ;
+        assertEquals(4, r.getPredicates().get(p).intValue()) ;
+        assertEquals(2, r.getTypes().get(C).intValue()) ;
+        
+        // Delete the only triple with object 3: one fewer distinct object.
+        dsg.delete(Quad.defaultGraphIRI, s(1), p, o(3)) ;
+        dsg.sync() ;
+        assertEquals(3, weight(dsg.getStatsLive(), Var.alloc("x"), p, Var.alloc("y")), 0) ;
+        assertEquals(1.5, weight(dsg.getStatsLive(), s(1), p, Var.alloc("y")), 0) ;
+        assertEquals(1.5, weight(dsg.getStatsLive(), Var.alloc("x"), p, o(1)), 0) ;
+        dsg.close() ;
+        
+        assertTrue(new Location(DIR).exists(Names.optStatsLive)) ;
+        dsg = build(true) ;
+        assertEquals(6, dsg.getStats().getCount()) ;
+        assertEquals(1.5, weight(dsg.getStatsLive(), s(1), p, Var.alloc("y")), 0) ;
+        dsg.close() ;
+    }
+    
+    @Test public void stats_live_02()
+    {
+        // Statistics calculated for an existing database.
+        DatasetGraphTDB dsg = build(false) ;
+        assertNull(dsg.getStatsLive()) ;
+        load(dsg) ;
+        dsg.close() ;
+        
+        dsg = build(true) ;
+        check(dsg.getStatsLive()) ;
+        dsg.close() ;
+    }
+    
+    @Test public void stats_live_03()
+    {
+        // Bulk loads recalculate the statistics.
+        DatasetGraphTDB dsg = build(true) ;
+        String data = "<http://example/s1> <http://example/q> <http://example/o> <http://example/g> .\n" ;
+        TDBLoader.load(dsg, new ByteArrayInputStream(StrUtils.asUTF8bytes(data)), false) ;
+        assertEquals(1, dsg.getStats().getCount()) ;
+        load(dsg) ;
+        TDBLoader.load(dsg, new ByteArrayInputStream(StrUtils.asUTF8bytes(data.replace("/o>", "/o2>"))), false) ;
+        StatsResults r = dsg.getStats() ;
+        assertEquals(9, r.getCount()) ;
+        assertEquals(4, r.getPredicates().get(p).intValue()) ;
+        assertEquals(3, r.getPredicates().get(q).intValue()) ;
+        // (s1 q 1) (s1 q o) (s1 q o2) 
+        assertEquals(3, weight(dsg.getStatsLive(), s(1), q, Var.alloc("y")), 0) ;
+        assertEquals(1, weight(dsg.getStatsLive(), Var.alloc("x"), q, o(1)), 0) ;
+        // Still tracking changes.
+        dsg.deleteAny(Node.ANY, Node.ANY, q, Node.ANY) ;
+        dsg.sync() ;
+        assertNull(dsg.getStats().getPredicates().get(q)) ;
+        dsg.close() ;
+    }
+    
+    @Test public void stats_live_04()
+    {
+        // Duplicate adds, and deletes of missing triples, do not change the statistics.
+        DatasetGraphTDB dsg = build(true) ;
+        load(dsg) ;
+        dsg.add(Quad.defaultGraphIRI, s(1), p, o(1)) ;
+        dsg.add(Quad.defaultGraphIRI, s(1), p, o(3)) ;
+        dsg.delete(Quad.defaultGraphIRI, s(9), p, o(9)) ;
+        check(dsg.getStatsLive()) ;
+        dsg.close() ;
+    }
+    
+    @Test public void stats_live_txn()
+    {
+        build(true).close() ;
+        Location loc = new Location(DIR) ;
+        StoreConnection.release(loc) ;
+        // Statistics are maintained because there is a stats file.
+        StoreConnection sConn = StoreConnection.make(loc) ;
+        assertNotNull(sConn.getBaseDataset().getStatsLive()) ;
+        
+        DatasetGraphTxn dsgTxn = sConn.begin(ReadWrite.WRITE) ;
+        load(dsgTxn.getView()) ;
+        dsgTxn.commit() ;
+        dsgTxn.end() ;
+        
+        dsgTxn = sConn.begin(ReadWrite.WRITE) ;
+        dsgTxn.add(Quad.defaultGraphIRI, s(9), r, o(9)) ;
+        dsgTxn.abort() ;
+        dsgTxn.end() ;
+        
+        dsgTxn = sConn.begin(ReadWrite.READ) ;
+        check(dsgTxn.getView().getStatsLive()) ;
+        assertNull(dsgTxn.getView().getStats().getPredicates().get(r)) ;
+        dsgTxn.end() ;
+        StoreConnection.release(loc) ;
+    }
+    
+    // (s1 p 1) (s1 p 2) (s1 p 3) (s2 p 1) in the default graph and in <g>, and rdf:type C for s1 and s2.  
+    private static void load(DatasetGraphTDB dsg)
+    {
+        dsg.add(Quad.defaultGraphIRI, s(1), p, o(1)) ;
+        dsg.add(Quad.defaultGraphIRI, s(1), p, o(2)) ;
+        dsg.add(Quad.defaultGraphIRI, s(1), p, o(3)) ;
+        dsg.add(Quad.defaultGraphIRI, s(2), p, o(1)) ;
+        dsg.add(Quad.defaultGraphIRI, s(1), NodeConst.nodeRDFType, C) ;
+        dsg.add(Quad.defaultGraphIRI, s(2), NodeConst.nodeRDFType, C) ;
+        dsg.add(SSE.parseNode("<http://example/g>"), s(1), q, o(1)) ;
+        // Duplicate: no change.
+        dsg.add(Quad.defaultGraphIRI, s(2), p, o(1)) ;
+        dsg.sync() ;
+    }
+    
+    private static void check(StatsLive stats)
+    {
+        assertNotNull(stats) ;
+        assertEquals(7, stats.results().getCount()) ;
+        // 4 triples, 2 subjects, 3 objects.
+        assertEquals(4, weight(stats, Var.alloc("x"), p, Var.alloc("y")), 0) ;
+        assertEquals(2, weight(stats, s(1), p, Var.alloc("y")), 0) ;
+        assertEquals(4.0/3, weight(stats, Var.alloc("x"), p, o(1)), 0.001) ;
+        assertEquals(2, weight(stats, Var.alloc("x"), NodeConst.nodeRDFType, C), 0) ;
+        assertEquals(1, weight(stats, Var.alloc("x"), q, Var.alloc("y")), 0) ;
+        // Unknown predicate.
+        assertEquals(0, weight(stats, Var.alloc("x"), SSE.parseNode("<http://example/other>"), Var.alloc("y")), 0) ;
+    }
+    
+    private static double weight(StatsLive stats, Node s, Node p, Node o)
+    {
+        StatsMatcher matcher = stats.getMatcher() ;
+        return matcher.match(new Triple(s, p, o)) ;
+    }
+    
+    private static Node s(int i)    { return SSE.parseNode("<http://example/s"+i+">") ; }
+    private static Node o(int i)    { return SSE.parseNode(Integer.toString(i)) ; }
+    
+    private DatasetGraphTDB build(boolean maintainStats)
+    {
+        SystemParams params = new SystemParams() ;
+        params.maintainStats = maintainStats ;
+        return DatasetBuilderStd.stdBuilder().build(new Location(DIR), params) ;
+    }
+}
@@ -24,6 +24,8 @@ import org.junit.runner.RunWith ;
 import org.junit.runners.Suite ;
 
 import com.hp.hpl.jena.tdb.base.block.FileMode ;
+import com.hp.hpl.jena.tdb.store.bulkloader.TestNodeIdPipeline ;
+import com.hp.hpl.jena.tdb.store.bulkloader2.TestRecordSorter ;
 import com.hp.hpl.jena.tdb.sys.SystemTDB ;
 import com.hp.hpl.jena.tdb.sys.TestOps ;
 
@@ -36,6 +38,8 @@ import com.hp.hpl.jena.tdb.sys.TestOps ;
     , TestDatasetTDBPersist.class
     , TestDatasetTDB.class
     , TestLoader.class
+    , TestLoaderPipeline.class
+    , TestNodeIdPipeline.class
     // The script suite
     , TestSuiteGraphTDB.class
     , Test_SPARQL_TDB.class
@@ -43,6 +47,8 @@ import com.hp.hpl.jena.tdb.sys.TestOps ;
     , TestDynamicDatasetTDB.class
     , TestStoreConnectionsDirect.class
     , TestStoreConnectionsMapped.class
+    , TestRecordSorter.class
+    , TestUnionIndex.class
 } )
 public class TS_Store
 { 
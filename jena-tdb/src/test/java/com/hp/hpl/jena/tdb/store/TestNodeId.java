@@ -217,6 +217,93 @@ public class TestNodeId extends BaseTest
         test(x, x) ;
     }
     
+    // Format 2 inlines
+    
+    @Test public void nodeId_v2_double_01()
+    { test2("'1.5'^^xsd:double", "'1.5'^^xsd:double") ; }
+
+    @Test public void nodeId_v2_double_02()
+    { test2("'-2.0'^^xsd:double", "'-2.0'^^xsd:double") ; }
+
+    @Test public void nodeId_v2_double_03()
+    // Not the canonical Java form.
+    { test2("1.5e0", (Node)null) ; }
+
+    @Test public void nodeId_v2_double_04()
+    // Needs more than 56 bits.
+    { test2("'0.1'^^xsd:double", (Node)null) ; }
+
+    @Test public void nodeId_v2_float_01()
+    { test2("'1.5'^^xsd:float", "'1.5'^^xsd:float") ; }
+
+    @Test public void nodeId_v2_float_02()
+    { test2("'0.1'^^xsd:float", "'0.1'^^xsd:float") ; }
+
+    @Test public void nodeId_v2_gYear_01()
+    { test2("'2012'^^xsd:gYear", "'2012'^^xsd:gYear") ; }
+
+    @Test public void nodeId_v2_gYear_02()
+    { test2("'2012Z'^^xsd:gYear", "'2012Z'^^xsd:gYear") ; }
+
+    @Test public void nodeId_v2_gYear_03()
+    { test2("'2012-05:00'^^xsd:gYear", "'2012-05:00'^^xsd:gYear") ; }
+
+    @Test public void nodeId_v2_string_01()
+    { test2("'ab'", "'ab'") ; }
+
+    @Test public void nodeId_v2_string_02()
+    { test2("''", "''") ; }
+
+    @Test public void nodeId_v2_string_03()
+    { test2("'1234567'", "'1234567'") ; }
+
+    @Test public void nodeId_v2_string_04()
+    // Too long
+    { test2("'12345678'", (Node)null) ; }
+
+    @Test public void nodeId_v2_string_05()
+    // Language tags are not inlined.
+    { test2("'ab'@en", (Node)null) ; }
+
+    @Test public void nodeId_v2_string_06()
+    { test2("'\u00E9t\u00E9'", "'\u00E9t\u00E9'") ; }
+
+    @Test public void nodeId_v2_format1()
+    {
+        // Format 1 does not inline the new types.
+        test("'1.5'^^xsd:double", (Node)null) ;
+        test("'2012'^^xsd:gYear", (Node)null) ;
+        test("'ab'", (Node)null) ;
+    }
+    
+    @Test public void nodeId_v2_format2_compatible()
+    {
+        // Format 2 is a superset of format 1.
+        test2("1", "1") ;
+        test2("'2012-01-01'^^xsd:date", "'2012-01-01'^^xsd:date") ;
+        test2("true", "true") ;
+    }
+
+    private void test2(String x, String expected)
+    {
+        test2(x, NodeFactoryExtra.parseNode(expected)) ;
+    }
+
+    private void test2(String x, Node correct)
+    {
+        Node n = NodeFactoryExtra.parseNode(x) ;
+        NodeId nodeId = NodeId.inline(n, NodeId.FormatV2) ;
+        if ( correct == null )
+        {
+            assertNull("Expected no encoding: got: "+nodeId, nodeId) ;
+            return ;
+        }
+        assertNotNull("Expected inlining: "+n, nodeId) ;
+        assertTrue(NodeId.isInline(nodeId)) ;
+        Node n2 = NodeId.extract(nodeId) ;
+        assertEquals("Not same term", correct, n2) ;
+    }
+
     private void test(String x, String expected)
     {
         test(x, NodeFactoryExtra.parseNode(expected)) ;
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hp.hpl.jena.tdb.store;
+
+import java.io.File ;
+import java.io.PrintWriter ;
+import java.util.Iterator ;
+
+import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.FileOps ;
+import org.junit.After ;
+import org.junit.Before ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Graph ;
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.query.* ;
+import com.hp.hpl.jena.sparql.core.Quad ;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
+import com.hp.hpl.jena.tdb.ConfigTest ;
+import com.hp.hpl.jena.tdb.StoreConnection ;
+import com.hp.hpl.jena.tdb.TDB ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.setup.DatasetBuilderStd ;
+import com.hp.hpl.jena.tdb.setup.SystemParams ;
+import com.hp.hpl.jena.tdb.store.bulkloader2.CmdIndexSort ;
+import com.hp.hpl.jena.tdb.store.bulkloader2.CmdNodeTableBuilder ;
+import com.hp.hpl.jena.tdb.sys.Names ;
+import com.hp.hpl.jena.tdb.transaction.DatasetGraphTxn ;
+
+public class TestUnionIndex extends BaseTest
+{
+    private static Node g1 = NodeFactoryExtra.parseNode("<http://example/g1>") ;
+    private static Node g2 = NodeFactoryExtra.parseNode("<http://example/g2>") ;
+    private static Triple t1 = triple("<http://example/s> <http://example/p> 1") ;
+    private static Triple t2 = triple("<http://example/s> <http://example/p> 2") ;
+    private static Triple t3 = triple("<http://example/s> <http://example/q> 3") ;
+    
+    private String DIR ;
+    
+    @Before public void before()    { DIR = ConfigTest.getCleanDir() ; }
+    @After  public void after()     { FileOps.clearDirectory(DIR) ; }
+
+    @Test public void union_index_maintained()
+    {
+        DatasetGraphTDB dsg = build(true) ;
+        assertNotNull(dsg.getQuadTable().getUnionTable()) ;
+        assertTrue(QuadTable.hasUnionIndex(new Location(DIR))) ;
+        assertTrue(new Location(DIR).exists(Names.unionIndexPrefix+Names.primaryIndexTriples, Names.bptExtTree)) ;
+        
+        dsg.add(g1, t1.getSubject(), t1.getPredicate(), t1.getObject()) ;
+        dsg.add(g1, t2.getSubject(), t2.getPredicate(), t2.getObject()) ;
+        dsg.add(g2, t1.getSubject(), t1.getPredicate(), t1.getObject()) ;
+        dsg.add(g2, t3.getSubject(), t3.getPredicate(), t3.getObject()) ;
+        Graph union = dsg.getGraph(Quad.unionGraph) ;
+        assertEquals(3, union.size()) ;
+        assertEquals(2, Iter.count(union.find(t1.getSubject(), t1.getPredicate(), Node.ANY))) ;
+        
+        // Still in g2.
+        dsg.delete(g1, t1.getSubject(), t1.getPredicate(), t1.getObject()) ;
+        assertTrue(union.contains(t1)) ;
+        dsg.delete(g2, t1.getSubject(), t1.getPredicate(), t1.getObject()) ;
+        assertFalse(union.contains(t1)) ;
+        // Not there at all.
+        dsg.delete(g2, t1.getSubject(), t1.getPredicate(), t1.getObject()) ;
+        assertEquals(2, union.size()) ;
+        
+        dsg.deleteAny(g2, Node.ANY, Node.ANY, Node.ANY) ;
+        assertFalse(union.contains(t3)) ;
+        assertTrue(union.contains(t2)) ;
+        dsg.close() ;
+        
+        // Reopen: the recorded setting is used.
+        dsg = build(false) ;
+        assertNotNull(dsg.getQuadTable().getUnionTable()) ;
+        assertEquals(1, dsg.getGraph(Quad.unionGraph).size()) ;
+        dsg.close() ;
+    }
+    
+    @Test public void union_index_query()
+    {
+        DatasetGraphTDB dsg = build(true) ;
+        load(dsg) ;
+        String qs = "SELECT * { ?s ?p ?o . ?s ?p ?o2 }" ;
+        assertEquals(5, count(dsg, qs, true)) ;
+        assertEquals(5, count(dsg, "SELECT * { GRAPH <"+Quad.unionGraph.getURI()+"> { ?s ?p ?o . ?s ?p ?o2 } }", false)) ;
+        dsg.close() ;
+        
+        // Same answers without the union index.
+        FileOps.clearDirectory(DIR) ;
+        dsg = build(false) ;
+        assertNull(dsg.getQuadTable().getUnionTable()) ;
+        load(dsg) ;
+        assertEquals(5, count(dsg, qs, true)) ;
+        dsg.close() ;
+    }
+    
+    @Test public void union_index_existing_db()
+    {
+        DatasetGraphTDB dsg = build(false) ;
+        load(dsg) ;
+        dsg.close() ;
+        
+        // Not added to a database with data.
+        dsg = build(true) ;
+        assertNull(dsg.getQuadTable().getUnionTable()) ;
+        assertFalse(new Location(DIR).getMetaFile().hasProperty(Names.kUnionIndex)) ;
+        assertEquals(3, dsg.getGraph(Quad.unionGraph).size()) ;
+        dsg.close() ;
+    }
+    
+    @Test public void union_index_transaction()
+    {
+        DatasetGraphTDB dsg = build(true) ;
+        dsg.close() ;
+        
+        Location loc = new Location(DIR) ;
+        StoreConnection.release(loc) ;
+        StoreConnection sConn = StoreConnection.make(loc) ;
+        DatasetGraphTxn dsgTxn = sConn.begin(ReadWrite.WRITE) ;
+        load(dsgTxn.getView()) ;
+        dsgTxn.commit() ;
+        dsgTxn.end() ;
+        dsgTxn = sConn.begin(ReadWrite.WRITE) ;
+        dsgTxn.deleteAny(g1, Node.ANY, Node.ANY, Node.ANY) ;
+        dsgTxn.abort() ;
+        dsgTxn.end() ;
+        
+        dsgTxn = sConn.begin(ReadWrite.READ) ;
+        assertNotNull(dsgTxn.getView().getQuadTable().getUnionTable()) ;
+        Graph union = dsgTxn.getGraph(Quad.unionGraph) ;
+        assertEquals(3, union.size()) ;
+        assertTrue(union.contains(t2)) ;
+        dsgTxn.end() ;
+        StoreConnection.release(loc) ;
+    }
+    
+    // tdbloader2, with the Java sort: the union indexes are built from the quads.
+    @Test public void union_index_bulkloader2() throws Exception
+    {
+        Location loc = new Location(DIR) ;
+        loc.getMetaFile().setProperty(Names.kUnionIndex, "true") ;
+        loc.getMetaFile().flush() ;
+        File data = File.createTempFile("union", ".nq") ;
+        try {
+            PrintWriter out = new PrintWriter(data, "UTF-8") ;
+            out.println("<http://example/s> <http://example/p> \"1\"^^<http://www.w3.org/2001/XMLSchema#integer> <http://example/g1> .") ;
+            out.println("<http://example/s> <http://example/p> \"2\"^^<http://www.w3.org/2001/XMLSchema#integer> <http://example/g1> .") ;
+            out.println("<http://example/s> <http://example/p> \"1\"^^<http://www.w3.org/2001/XMLSchema#integer> <http://example/g2> .") ;
+            out.println("<http://example/s> <http://example/q> \"3\"^^<http://www.w3.org/2001/XMLSchema#integer> <http://example/g2> .") ;
+            out.close() ;
+            assertEquals(0, new CmdNodeTableBuilder("--loc="+DIR, "--binary", data.getPath()).mainRun(false, false)) ;
+            assertEquals(0, new CmdIndexSort("--loc="+DIR, "--threads=1").mainRun(false, false)) ;
+        } finally { data.delete() ; }
+        
+        DatasetGraphTDB dsg = DatasetBuilderStd.build(new Location(DIR)) ;
+        assertNotNull(dsg.getQuadTable().getUnionTable()) ;
+        assertEquals(3, Iter.count(dsg.getQuadTable().getUnionTable().find(Node.ANY, Node.ANY, Node.ANY))) ;
+        Graph union = dsg.getGraph(Quad.unionGraph) ;
+        assertEquals(3, union.size()) ;
+        assertTrue(union.contains(t1)) ;
+        assertTrue(union.contains(t3)) ;
+        dsg.close() ;
+    }
+    
+    private static void load(DatasetGraphTDB dsg)
+    {
+        dsg.add(g1, t1.getSubject(), t1.getPredicate(), t1.getObject()) ;
+        dsg.add(g1, t2.getSubject(), t2.getPredicate(), t2.getObject()) ;
+        dsg.add(g2, t1.getSubject(), t1.getPredicate(), t1.getObject()) ;
+        dsg.add(g2, t3.getSubject(), t3.getPredicate(), t3.getObject()) ;
+    }
+    
+    private static long count(DatasetGraphTDB dsg, String qs, boolean unionDefaultGraph)
+    {
+        Query query = QueryFactory.create(qs) ;
+        QueryExecution qExec = QueryExecutionFactory.create(query, dsg.toDataset()) ;
+        if ( unionDefaultGraph )
+            qExec.getContext().set(TDB.symUnionDefaultGraph, true) ;
+        try {
+            Iterator<QuerySolution> iter = qExec.execSelect() ;
+            return Iter.count(iter) ;
+        } finally { qExec.close() ; }
+    }
+    
+    private static Triple triple(String str)
+    {
+        String[] x = str.split(" ") ;
+        return new Triple(NodeFactoryExtra.parseNode(x[0]), NodeFactoryExtra.parseNode(x[1]), NodeFactoryExtra.parseNode(x[2])) ;
+    }
+    
+    private DatasetGraphTDB build(boolean unionIndex)
+    {
+        SystemParams params = new SystemParams() ;
+        params.unionIndex = unionIndex ;
+        return DatasetBuilderStd.stdBuilder().build(new Location(DIR), params) ;
+    }
+}
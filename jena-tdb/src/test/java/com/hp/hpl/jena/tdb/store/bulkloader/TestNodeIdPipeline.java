@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.store.bulkloader ;
+
+import java.util.ArrayList ;
+import java.util.HashMap ;
+import java.util.List ;
+import java.util.Map ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.NodeFactory ;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
+import com.hp.hpl.jena.tdb.setup.DatasetBuilderStd ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+
+public class TestNodeIdPipeline extends BaseTest {
+    static class Collect implements NodeIdPipeline.Output {
+        List<NodeId[]> rows = new ArrayList<NodeId[]>() ;
+
+        @Override
+        public void row(NodeId[] ids) {
+            rows.add(ids) ;
+        }
+    }
+
+    private static Node node(int i) {
+        if ( i % 5 == 0 )
+            // Inline.
+            return NodeFactoryExtra.intToNode(i) ;
+        return NodeFactory.createURI("http://example/n" + i) ;
+    }
+
+    private static void test(int numRows, int numNodes, int threads) {
+        DatasetGraphTDB dsg = DatasetBuilderStd.build() ;
+        NodeTable nodeTable = dsg.getTripleTable().getNodeTupleTable().getNodeTable() ;
+        Collect output = new Collect() ;
+        NodeIdPipeline pipeline = new NodeIdPipeline(nodeTable, output, threads) ;
+        pipeline.start() ;
+        for ( int i = 0 ; i < numRows ; i++ ) {
+            if ( i % 3 == 0 )
+                pipeline.add(node(i % numNodes), node((i + 1) % numNodes), node((i * 7) % numNodes), node(i % 11)) ;
+            else
+                pipeline.add(node(i % numNodes), node((i + 1) % numNodes), node((i * 7) % numNodes)) ;
+        }
+        pipeline.finish() ;
+
+        assertEquals(numRows, output.rows.size()) ;
+        // Every node has one NodeId, and the NodeIds are the node table's.
+        Map<NodeId, Node> seen = new HashMap<NodeId, Node>() ;
+        for ( NodeId[] row : output.rows ) {
+            for ( NodeId id : row ) {
+                assertNotNull(id) ;
+                Node n = nodeTable.getNodeForNodeId(id) ;
+                assertNotNull(n) ;
+                assertEquals(id, nodeTable.getNodeIdForNode(n)) ;
+                Node n2 = seen.put(id, n) ;
+                if ( n2 != null )
+                    assertEquals(n2, n) ;
+            }
+        }
+        dsg.close() ;
+    }
+
+    @Test
+    public void pipeline_01() {
+        test(0, 10, 1) ;
+    }
+
+    @Test
+    public void pipeline_02() {
+        test(10, 5, 1) ;
+    }
+
+    @Test
+    public void pipeline_03() {
+        test(5000, 300, 1) ;
+    }
+
+    @Test
+    public void pipeline_04() {
+        test(5000, 300, 3) ;
+    }
+
+    @Test
+    public void pipeline_06() {
+        // Nodes already in the node table are found by the resolvers, not allocated.
+        DatasetGraphTDB dsg = DatasetBuilderStd.build() ;
+        NodeTable nodeTable = dsg.getTripleTable().getNodeTupleTable().getNodeTable() ;
+        NodeId[] ids = new NodeId[50] ;
+        for ( int i = 0 ; i < ids.length ; i++ )
+            ids[i] = nodeTable.getAllocateNodeId(node(i)) ;
+        NodeId offset = nodeTable.allocOffset() ;
+
+        Collect output = new Collect() ;
+        NodeIdPipeline pipeline = new NodeIdPipeline(nodeTable, output, 2) ;
+        pipeline.start() ;
+        for ( int i = 0 ; i < 3000 ; i++ )
+            pipeline.add(node(i % 50), node((i * 7) % 50), node((i + 1) % 50)) ;
+        pipeline.finish() ;
+
+        assertEquals(offset, nodeTable.allocOffset()) ;
+        assertEquals(3000, output.rows.size()) ;
+        for ( NodeId[] row : output.rows ) {
+            for ( NodeId id : row )
+                assertEquals(id, nodeTable.getNodeIdForNode(nodeTable.getNodeForNodeId(id))) ;
+        }
+        dsg.close() ;
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void pipeline_05() {
+        // A failure in the output stage is passed back to the caller.
+        DatasetGraphTDB dsg = DatasetBuilderStd.build() ;
+        NodeTable nodeTable = dsg.getTripleTable().getNodeTupleTable().getNodeTable() ;
+        NodeIdPipeline.Output output = new NodeIdPipeline.Output() {
+            @Override
+            public void row(NodeId[] ids) {
+                throw new RuntimeException("Output failure") ;
+            }
+        } ;
+        NodeIdPipeline pipeline = new NodeIdPipeline(nodeTable, output, 2) ;
+        pipeline.start() ;
+        try {
+            for ( int i = 0 ; i < 100000 ; i++ )
+                pipeline.add(node(i), node(i + 1), node(i + 2)) ;
+        } finally {
+            pipeline.finish() ;
+        }
+    }
+}
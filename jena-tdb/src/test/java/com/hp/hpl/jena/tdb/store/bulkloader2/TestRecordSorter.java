@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.store.bulkloader2;
+
+import java.io.ByteArrayInputStream ;
+import java.io.ByteArrayOutputStream ;
+import java.util.ArrayList ;
+import java.util.Collections ;
+import java.util.Iterator ;
+import java.util.List ;
+import java.util.Random ;
+import java.util.TreeSet ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.Bytes ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.tdb.base.record.Record ;
+import com.hp.hpl.jena.tdb.base.record.RecordFactory ;
+
+public class TestRecordSorter extends BaseTest
+{
+    static RecordFactory recordFactory = new RecordFactory(2*8, 0) ;
+
+    static Record record(long a, long b)
+    {
+        Record r = recordFactory.create() ;
+        Bytes.setLong(a, r.getKey(), 0) ;
+        Bytes.setLong(b, r.getKey(), 8) ;
+        return r ;
+    }
+
+    // Encode as a long for checking results.
+    static long code(Record r)
+    {
+        return Bytes.getLong(r.getKey(), 0)*1000 + Bytes.getLong(r.getKey(), 8) ;
+    }
+
+    private static void test(List<Record> input, int threads, long memory)
+    {
+        TreeSet<Long> expected = new TreeSet<Long>() ;
+        for ( Record r : input )
+            expected.add(code(r)) ;
+
+        RecordSorter sorter = new RecordSorter(recordFactory, threads, memory) ;
+        try {
+            List<Long> results = new ArrayList<Long>() ;
+            Iterator<Record> iter = sorter.sortDistinct(input.iterator()) ;
+            while ( iter.hasNext() )
+                results.add(code(iter.next())) ;
+            assertEquals(new ArrayList<Long>(expected), results) ;
+        } finally { sorter.close() ; }
+    }
+
+    private static List<Record> data(int N, int seed)
+    {
+        Random random = new Random(seed) ;
+        List<Record> x = new ArrayList<Record>() ;
+        for ( int i = 0 ; i < N ; i++ )
+            // Small range of values so there are duplicates.
+            x.add(record(random.nextInt(50), random.nextInt(20))) ;
+        return x ;
+    }
+
+    @Test public void sort_01()
+    {
+        test(new ArrayList<Record>(), 1, 100) ;
+    }
+
+    @Test public void sort_02()
+    {
+        List<Record> x = new ArrayList<Record>() ;
+        x.add(record(2,1)) ;
+        x.add(record(1,2)) ;
+        x.add(record(2,1)) ;
+        x.add(record(1,1)) ;
+        test(x, 1, 100) ;
+    }
+
+    // In memory only.
+    @Test public void sort_03()
+    {
+        test(data(500, 1), 1, 10000) ;
+    }
+
+    // Spills to disk.
+    @Test public void sort_04()
+    {
+        test(data(2000, 2), 1, 50) ;
+    }
+
+    // Several threads, spilling.
+    @Test public void sort_05()
+    {
+        test(data(5000, 3), 4, 200) ;
+    }
+
+    // Already sorted input, with every record duplicated.
+    @Test public void sort_06()
+    {
+        List<Record> x = new ArrayList<Record>() ;
+        for ( int i = 0 ; i < 300 ; i++ )
+        {
+            x.add(record(i, i)) ;
+            x.add(record(i, i)) ;
+        }
+        test(x, 3, 40) ;
+        Collections.reverse(x) ;
+        test(x, 3, 40) ;
+    }
+
+    private static List<Record> roundTrip(boolean binary, String indexName, long[][] rows)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream() ;
+        WriteRows writer = new WriteRows(out, 3, 2, binary) ;
+        for ( long[] row : rows )
+        {
+            for ( long x : row )
+                writer.write(x) ;
+            writer.endOfRow() ;
+        }
+        writer.close() ;
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray()) ;
+        List<Record> records = new ArrayList<Record>() ;
+        Iterator<Record> iter = new RecordsFromInput(in, 3, CmdIndexBuild.columnMap(indexName), 2, binary) ;
+        while ( iter.hasNext() )
+            records.add(iter.next()) ;
+        return records ;
+    }
+
+    // Binary rows read back the same as hex rows.
+    @Test public void rows_01()
+    {
+        long[][] rows = { {1, 2, 3}, {0x10, 0xFFFFFFFFFFL, 5}, {7, 8, 9} } ;
+        for ( String idx : new String[]{"SPO", "POS", "OSP"} )
+        {
+            List<Record> hex = roundTrip(false, idx, rows) ;
+            List<Record> bin = roundTrip(true, idx, rows) ;
+            assertEquals(rows.length, bin.size()) ;
+            assertEquals(hex, bin) ;
+        }
+        List<Record> spo = roundTrip(true, "SPO", rows) ;
+        assertEquals(0xFFFFFFFFFFL, Bytes.getLong(spo.get(1).getKey(), 8)) ;
+    }
+}
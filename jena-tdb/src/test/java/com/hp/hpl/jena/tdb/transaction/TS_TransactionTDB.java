@@ -39,6 +39,9 @@ import org.junit.runners.Suite ;
     , TestTransRestart.class
     , TestTransactionTDB.class
     , TestTransactionUnionGraph.class
+    , TestTransConcurrentWriters.class
+    , TestTransGroupCommit.class
+    , TestTransBackgroundReplay.class
 })
 public class TS_TransactionTDB
 {
@@ -26,9 +26,11 @@ import org.apache.jena.atlas.lib.Bytes ;
 import org.junit.Before ;
 import org.junit.Test ;
 
+import com.hp.hpl.jena.tdb.ConfigTest ;
 import com.hp.hpl.jena.tdb.base.block.Block ;
 import com.hp.hpl.jena.tdb.base.file.BufferChannel ;
 import com.hp.hpl.jena.tdb.base.file.BufferChannelMem ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
 import com.hp.hpl.jena.tdb.sys.FileRef ;
 
 public class TestJournal extends BaseTest
@@ -162,6 +164,49 @@ public class TestJournal extends BaseTest
         assertFalse(equal(entry1a, entry2a)) ;
     }
 
+    @Test public void journal_07()
+    {
+        compact(journal) ;
+    }
+
+    @Test public void journal_08()
+    {
+        Journal jrnl = Journal.create(new Location(ConfigTest.getCleanDir())) ;
+        try { compact(jrnl) ; }
+        finally { jrnl.close() ; }
+    }
+
+    private static void compact(Journal jrnl)
+    {
+        JournalEntry entry1 = new JournalEntry(JournalEntryType.Block, testRef, blk1) ;
+        JournalEntry entry2 = new JournalEntry(JournalEntryType.Block, testRef, blk2) ;
+        jrnl.writeJournal(entry1) ;
+        long end1 = jrnl.endPosition() ;
+        jrnl.writeJournal(entry2) ;
+        long end2 = jrnl.endPosition() ;
+        
+        // Drop the first entry.
+        jrnl.compact(end1) ;
+        assertEquals(end2, jrnl.endPosition()) ;
+        assertEquals(end2-end1, jrnl.size()) ;
+        Iterator<JournalEntry> iter = jrnl.entries() ;
+        assertTrue(equal(entry2, iter.next())) ;
+        assertFalse(iter.hasNext()) ;
+        
+        // Writes continue after the kept entries.
+        JournalEntry entry3 = new JournalEntry(JournalEntryType.Block, testRef, blk3) ;
+        jrnl.writeJournal(entry3) ;
+        long end3 = jrnl.endPosition() ;
+        jrnl.compact(end2) ;
+        iter = jrnl.entries() ;
+        assertTrue(equal(entry3, iter.next())) ;
+        assertFalse(iter.hasNext()) ;
+        
+        jrnl.compact(end3) ;
+        assertTrue(jrnl.isEmpty()) ;
+        assertEquals(end3, jrnl.endPosition()) ;
+    }
+
     private static boolean equal(JournalEntry entry1, JournalEntry entry2)
     {
         if ( entry1.getType() != entry2.getType())
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.transaction;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.junit.After ;
+import org.junit.Before ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.NodeFactory ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.query.ReadWrite ;
+import com.hp.hpl.jena.tdb.setup.DatasetBuilderStd ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+
+public class TestTransBackgroundReplay extends BaseTest
+{
+    private DatasetGraphTDB base ;
+    private TransactionManager txnMgr ;
+    
+    @Before public void before()
+    {
+        base = DatasetBuilderStd.build() ;
+        txnMgr = new TransactionManager(base) ;
+        txnMgr.setBackgroundReplay(true) ;
+    }
+    
+    @After public void after()
+    {
+        txnMgr.closedown() ;
+    }
+    
+    private static Triple triple(int i)
+    {
+        return Triple.create(NodeFactory.createURI("http://example/s"+i), 
+                             NodeFactory.createURI("http://example/p"),
+                             NodeFactory.createURI("http://example/o"+i)) ;
+    }
+    
+    private void add(Triple t)
+    {
+        DatasetGraphTxn dsg = txnMgr.begin(ReadWrite.WRITE) ;
+        try {
+            dsg.getDefaultGraph().add(t) ;
+            dsg.commit() ;
+        } finally { dsg.end() ; }
+    }
+    
+    @Test public void backgroundReplay_01()
+    {
+        // A reader that started later does not hold up write back.
+        DatasetGraphTxn r0 = txnMgr.begin(ReadWrite.READ) ;
+        add(triple(1)) ;
+        DatasetGraphTxn r1 = txnMgr.begin(ReadWrite.READ) ;
+        txnMgr.flush() ;
+        assertEquals(1, txnMgr.getReplayQueueDepth()) ;
+        assertEquals(1, txnMgr.getReplayLagCommits()) ;
+        assertFalse(base.getDefaultGraph().contains(triple(1))) ;
+        r0.end() ;
+        
+        txnMgr.flush() ;
+        assertEquals(0, txnMgr.getReplayQueueDepth()) ;
+        assertEquals(0, txnMgr.getReplayLagCommits()) ;
+        assertTrue(base.getDefaultGraph().contains(triple(1))) ;
+        assertTrue(r1.getDefaultGraph().contains(triple(1))) ;
+        r1.end() ;
+    }
+    
+    @Test public void backgroundReplay_02()
+    {
+        // Write back in commit order, keeping the reader's view.
+        add(triple(1)) ;
+        DatasetGraphTxn r1 = txnMgr.begin(ReadWrite.READ) ;
+        add(triple(2)) ;
+        txnMgr.flush() ;
+        assertEquals(1, txnMgr.getReplayQueueDepth()) ;
+        assertTrue(base.getDefaultGraph().contains(triple(1))) ;
+        assertFalse(base.getDefaultGraph().contains(triple(2))) ;
+        assertTrue(r1.getDefaultGraph().contains(triple(1))) ;
+        assertFalse(r1.getDefaultGraph().contains(triple(2))) ;
+        assertEquals(1, r1.getDefaultGraph().size()) ;
+        
+        DatasetGraphTxn r2 = txnMgr.begin(ReadWrite.READ) ;
+        assertEquals(2, r2.getDefaultGraph().size()) ;
+        r1.end() ;
+        txnMgr.flush() ;
+        assertEquals(0, txnMgr.getReplayQueueDepth()) ;
+        assertEquals(2, base.getDefaultGraph().size()) ;
+        assertEquals(2, r2.getDefaultGraph().size()) ;
+        r2.end() ;
+        assertEquals(0, txnMgr.getJournal().size()) ;
+    }
+
+    @Test public void backgroundReplay_03() throws InterruptedException
+    {
+        // The background thread writes back without a flush.
+        DatasetGraphTxn r0 = txnMgr.begin(ReadWrite.READ) ;
+        for ( int i = 0 ; i < 5 ; i++ )
+            add(triple(i)) ;
+        assertEquals(5, txnMgr.getReplayQueueDepth()) ;
+        r0.end() ;
+        for ( int i = 0 ; i < 100 && txnMgr.getReplayQueueDepth() > 0 ; i++ )
+            Thread.sleep(20) ;
+        assertEquals(0, txnMgr.getReplayQueueDepth()) ;
+        assertEquals(0, txnMgr.getReplayLagMillis()) ;
+        assertEquals(5, base.getDefaultGraph().size()) ;
+    }
+    
+    @Test public void backgroundReplay_04()
+    {
+        // There is always an active reader : the journal is still reclaimed.
+        DatasetGraphTxn r0 = txnMgr.begin(ReadWrite.READ) ;
+        add(triple(0)) ;
+        long maxSize = 0 ;
+        for ( int i = 1 ; i < 50 ; i++ )
+        {
+            DatasetGraphTxn r1 = txnMgr.begin(ReadWrite.READ) ;
+            r0.end() ;
+            r0 = r1 ;
+            add(triple(i)) ;
+            txnMgr.flush() ;
+            maxSize = Math.max(maxSize, txnMgr.getJournal().size()) ;
+        }
+        assertTrue(txnMgr.getReplayQueueDepth() <= 1) ;
+        // One commit still to write back, and one that has gone.  
+        assertTrue(txnMgr.getJournal().size() > 0) ;
+        assertTrue(maxSize < 3*txnMgr.getJournal().size()) ;
+        r0.end() ;
+        txnMgr.flush() ;
+        assertEquals(0, txnMgr.getJournal().size()) ;
+        assertEquals(50, base.getDefaultGraph().size()) ;
+    }
+}
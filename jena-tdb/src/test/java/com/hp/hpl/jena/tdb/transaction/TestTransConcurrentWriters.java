@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.transaction;
+
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.concurrent.Callable ;
+import java.util.concurrent.ExecutorService ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.Future ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.logging.LogCtl ;
+import org.junit.After ;
+import org.junit.AfterClass ;
+import org.junit.Before ;
+import org.junit.BeforeClass ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.Node ;
+import com.hp.hpl.jena.graph.NodeFactory ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.query.ReadWrite ;
+import com.hp.hpl.jena.sparql.core.Quad ;
+import com.hp.hpl.jena.sparql.sse.SSE ;
+import com.hp.hpl.jena.tdb.StoreConnection ;
+import com.hp.hpl.jena.tdb.TDB ;
+import com.hp.hpl.jena.tdb.base.file.Location ;
+import com.hp.hpl.jena.tdb.nodetable.NodeTable ;
+import com.hp.hpl.jena.tdb.store.DatasetGraphTDB ;
+import com.hp.hpl.jena.tdb.store.NodeId ;
+import com.hp.hpl.jena.tdb.sys.SystemTDB ;
+
+/** Write transactions that are active at the same time */
+public class TestTransConcurrentWriters extends BaseTest
+{
+    @BeforeClass public static void beforeClassLoggingOff() { LogCtl.disable(SystemTDB.errlog.getName()) ; } 
+    @AfterClass public static void afterClassLoggingOn()    { LogCtl.setInfo(SystemTDB.errlog.getName()) ; }
+    
+    private static Quad q1 = SSE.parseQuad("(<g> <s> <p> 1)") ;
+    private static Quad q2 = SSE.parseQuad("(<g> <s> <p> 2)") ;
+    private static Node p = NodeFactory.createURI("http://example/p") ;
+    
+    private StoreConnection sConn ;
+    
+    @Before public void before()
+    {
+        StoreConnection.reset() ;
+        TDB.getContext().set(TDB.transactionConcurrentWriters, true) ;
+        sConn = StoreConnection.make(Location.mem()) ;
+    }
+    
+    @After public void after()
+    {
+        TDB.getContext().unset(TDB.transactionConcurrentWriters) ;
+        StoreConnection.reset() ;
+    }
+    
+    private static Triple triple(int s, int o)
+    {
+        return Triple.create(NodeFactory.createURI("http://example/s"+s), p, NodeFactory.createURI("http://example/o"+o)) ;
+    }
+    
+    // Enough data to spread the indexes over several blocks.
+    private void load(int N)
+    {
+        DatasetGraphTxn dsg = sConn.begin(ReadWrite.WRITE) ;
+        for ( int i = 0 ; i < N ; i++ )
+            dsg.getDefaultGraph().add(triple(i, i)) ;
+        dsg.commit() ;
+        dsg.end() ;
+    }
+    
+    private long count()
+    {
+        DatasetGraphTxn dsg = sConn.begin(ReadWrite.READ) ;
+        try { return dsg.getDefaultGraph().size() ; }
+        finally { dsg.end() ; }
+    }
+    
+    @Test public void concurrentWriters_01()
+    {
+        // Two active writers; the second does not touch anything the first changes.
+        DatasetGraphTxn dsg1 = sConn.begin(ReadWrite.WRITE) ;
+        DatasetGraphTxn dsg2 = sConn.begin(ReadWrite.WRITE) ;
+        assertEquals(2, sConn.getTransMgrState().activeWriters) ;
+        dsg1.add(q1) ;
+        dsg1.commit() ;
+        dsg1.end() ;
+        dsg2.commit() ;
+        dsg2.end() ;
+        
+        DatasetGraphTxn dsg = sConn.begin(ReadWrite.READ) ;
+        assertTrue(dsg.contains(q1)) ;
+        dsg.end() ;
+    }
+    
+    @Test public void concurrentWriters_02()
+    {
+        // Both writers change the same blocks and the second read data
+        // before changing it: the second to commit is aborted.
+        DatasetGraphTxn dsg1 = sConn.begin(ReadWrite.WRITE) ;
+        DatasetGraphTxn dsg2 = sConn.begin(ReadWrite.WRITE) ;
+        dsg1.add(q1) ;
+        if ( dsg2.isEmpty() )
+            dsg2.add(q2) ;
+        dsg1.commit() ;
+        dsg1.end() ;
+        try {
+            dsg2.commit() ;
+            fail("Expected a conflict") ;
+        } catch (TransactionAbort ex) {}
+        dsg2.end() ;
+        
+        DatasetGraphTxn dsg = sConn.begin(ReadWrite.READ) ;
+        assertTrue(dsg.contains(q1)) ;
+        assertFalse(dsg.contains(q2)) ;
+        dsg.end() ;
+        
+        // Retry.
+        DatasetGraphTxn dsg3 = sConn.begin(ReadWrite.WRITE) ;
+        dsg3.add(q2) ;
+        dsg3.commit() ;
+        dsg3.end() ;
+        dsg = sConn.begin(ReadWrite.READ) ;
+        assertTrue(dsg.contains(q1)) ;
+        assertTrue(dsg.contains(q2)) ;
+        dsg.end() ;
+    }
+
+    @Test public void concurrentWriters_03()
+    {
+        // Writers on different parts of the indexes both commit
+        // and the second sees the changes of the first.
+        int N = 500 ;
+        load(N) ;
+        DatasetGraphTxn dsg1 = sConn.begin(ReadWrite.WRITE) ;
+        DatasetGraphTxn dsg2 = sConn.begin(ReadWrite.WRITE) ;
+        Triple t1 = triple(10, 20) ;
+        Triple t2 = triple(N-10, N-20) ;
+        dsg1.getDefaultGraph().add(t1) ;
+        dsg2.getDefaultGraph().add(t2) ;
+        dsg1.commit() ;
+        dsg1.end() ;
+        dsg2.commit() ;
+        dsg2.end() ;
+        
+        DatasetGraphTxn dsg = sConn.begin(ReadWrite.READ) ;
+        assertTrue(dsg.getDefaultGraph().contains(t1)) ;
+        assertTrue(dsg.getDefaultGraph().contains(t2)) ;
+        assertEquals(N+2, dsg.getDefaultGraph().size()) ;
+        dsg.end() ;
+        
+        sConn.flush() ;
+        assertTrue(sConn.getBaseDataset().getDefaultGraph().contains(t1)) ;
+        assertTrue(sConn.getBaseDataset().getDefaultGraph().contains(t2)) ;
+    }
+    
+    @Test public void concurrentWriters_04()
+    {
+        // Aborting one writer does not affect another.
+        DatasetGraphTxn dsg1 = sConn.begin(ReadWrite.WRITE) ;
+        DatasetGraphTxn dsg2 = sConn.begin(ReadWrite.WRITE) ;
+        dsg1.add(q1) ;
+        dsg2.add(q2) ;
+        dsg1.abort() ;
+        dsg1.end() ;
+        dsg2.commit() ;
+        dsg2.end() ;
+        
+        DatasetGraphTxn dsg = sConn.begin(ReadWrite.READ) ;
+        assertFalse(dsg.contains(q1)) ;
+        assertTrue(dsg.contains(q2)) ;
+        dsg.end() ;
+    }
+    
+    @Test public void concurrentWriters_05() throws Exception
+    {
+        // Threads committing small updates, retrying on conflict.
+        load(200) ;
+        final int Threads = 4 ;
+        final int Commits = 25 ;
+        ExecutorService exec = Executors.newFixedThreadPool(Threads) ;
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>() ;
+        for ( int i = 0 ; i < Threads ; i++ )
+        {
+            final int base = 1000*(i+1) ;
+            results.add(exec.submit(new Callable<Integer>() {
+                @Override
+                public Integer call()
+                {
+                    int aborts = 0 ;
+                    for ( int j = 0 ; j < Commits ; )
+                    {
+                        DatasetGraphTxn dsg = sConn.begin(ReadWrite.WRITE) ;
+                        try {
+                            dsg.getDefaultGraph().add(triple(base+j, j)) ;
+                            dsg.commit() ;
+                            j++ ;
+                        } catch (TransactionAbort ex) { aborts++ ; }
+                        finally { dsg.end() ; }
+                    }
+                    return aborts ;
+                }})) ;
+        }
+        exec.shutdown() ;
+        for ( Future<Integer> f : results )
+            f.get() ;
+        assertEquals(200+Threads*Commits, count()) ;
+        assertEquals(0, sConn.getTransMgrState().activeWriters) ;
+    }
+    
+    private static NodeTable nodeTable(DatasetGraphTDB dsg)
+    {
+        return dsg.getTripleTable().getNodeTupleTable().getNodeTable() ;
+    }
+    
+    @Test public void concurrentWriters_06()
+    {
+        // New nodes are private to the writer until it commits.
+        Node n = NodeFactory.createURI("http://example/new") ;
+        DatasetGraphTxn dsg1 = sConn.begin(ReadWrite.WRITE) ;
+        DatasetGraphTxn dsg2 = sConn.begin(ReadWrite.WRITE) ;
+        NodeId id = nodeTable(dsg1.getView()).getAllocateNodeId(n) ;
+        assertFalse(NodeId.isDoesNotExist(id)) ;
+        assertTrue(NodeId.isDoesNotExist(nodeTable(dsg2.getView()).getNodeIdForNode(n))) ;
+        assertTrue(NodeId.isDoesNotExist(nodeTable(sConn.getBaseDataset()).getNodeIdForNode(n))) ;
+        dsg1.abort() ;
+        dsg1.end() ;
+        dsg2.abort() ;
+        dsg2.end() ;
+        // Nothing left behind by the aborted writer.
+        assertTrue(NodeId.isDoesNotExist(nodeTable(sConn.getBaseDataset()).getNodeIdForNode(n))) ;
+    }
+    
+    @Test public void concurrentWriters_07()
+    {
+        // Both writers add nodes: both commit, with different ids.
+        Node n1 = NodeFactory.createURI("http://example/new1") ;
+        Node n2 = NodeFactory.createURI("http://example/new2") ;
+        DatasetGraphTxn dsg1 = sConn.begin(ReadWrite.WRITE) ;
+        DatasetGraphTxn dsg2 = sConn.begin(ReadWrite.WRITE) ;
+        NodeId id1 = nodeTable(dsg1.getView()).getAllocateNodeId(n1) ;
+        NodeId id2 = nodeTable(dsg2.getView()).getAllocateNodeId(n2) ;
+        assertFalse(id1.equals(id2)) ;
+        dsg1.commit() ;
+        dsg1.end() ;
+        dsg2.commit() ;
+        dsg2.end() ;
+        NodeTable nt = nodeTable(sConn.getBaseDataset()) ;
+        assertEquals(id1, nt.getNodeIdForNode(n1)) ;
+        assertEquals(id2, nt.getNodeIdForNode(n2)) ;
+        assertEquals(n1, nt.getNodeForNodeId(id1)) ;
+        assertEquals(n2, nt.getNodeForNodeId(id2)) ;
+    }
+    
+    @Test public void concurrentWriters_07a()
+    {
+        // Both writers add the same new node: it gets one id.
+        Node n = NodeFactory.createURI("http://example/new") ;
+        DatasetGraphTxn dsg1 = sConn.begin(ReadWrite.WRITE) ;
+        DatasetGraphTxn dsg2 = sConn.begin(ReadWrite.WRITE) ;
+        NodeId id1 = nodeTable(dsg1.getView()).getAllocateNodeId(n) ;
+        NodeId id2 = nodeTable(dsg2.getView()).getAllocateNodeId(n) ;
+        assertEquals(id1, id2) ;
+        dsg1.commit() ;
+        dsg1.end() ;
+        dsg2.commit() ;
+        dsg2.end() ;
+        NodeTable nt = nodeTable(sConn.getBaseDataset()) ;
+        assertEquals(id1, nt.getNodeIdForNode(n)) ;
+        assertEquals(n, nt.getNodeForNodeId(id1)) ;
+    }
+    
+    @Test public void concurrentWriters_08()
+    {
+        // There is always an active writer but commits are still written back.
+        load(10) ;
+        DatasetGraphTxn other = null ;
+        TransactionManager txnMgr = null ;
+        int N = 5*TransactionManager.QueueBatchSize+5 ;
+        for ( int i = 0 ; i < N ; i++ )
+        {
+            DatasetGraphTxn dsg = sConn.begin(ReadWrite.WRITE) ;
+            txnMgr = dsg.getTransaction().getTxnMgr() ;
+            dsg.getDefaultGraph().add(triple(100+i, i)) ;
+            // Another writer overlaps this one and the next one.
+            DatasetGraphTxn otherNext = sConn.begin(ReadWrite.WRITE) ;
+            dsg.commit() ;
+            dsg.end() ;
+            if ( other != null )
+            {
+                other.abort() ;
+                other.end() ;
+            }
+            other = otherNext ;
+            assertTrue(txnMgr.getReplayQueueDepth() <= TransactionManager.QueueBatchSize+1) ;
+        }
+        assertTrue(sConn.getBaseDataset().getDefaultGraph().contains(triple(100+N/2, N/2))) ;
+        other.abort() ;
+        other.end() ;
+        assertEquals(10+N, count()) ;
+    }
+    
+    @Test public void concurrentWriters_09()
+    {
+        // Both writers change the same blocks without reading: both commit.
+        DatasetGraphTxn dsg1 = sConn.begin(ReadWrite.WRITE) ;
+        DatasetGraphTxn dsg2 = sConn.begin(ReadWrite.WRITE) ;
+        dsg1.add(q1) ;
+        dsg2.add(q2) ;
+        dsg1.commit() ;
+        dsg1.end() ;
+        dsg2.commit() ;
+        dsg2.end() ;
+        
+        DatasetGraphTxn dsg = sConn.begin(ReadWrite.READ) ;
+        assertTrue(dsg.contains(q1)) ;
+        assertTrue(dsg.contains(q2)) ;
+        dsg.end() ;
+    }
+    
+    @Test public void concurrentWriters_10()
+    {
+        // Two writers adding triples with new terms both commit.
+        int N = 500 ;
+        load(N) ;
+        DatasetGraphTxn dsg1 = sConn.begin(ReadWrite.WRITE) ;
+        DatasetGraphTxn dsg2 = sConn.begin(ReadWrite.WRITE) ;
+        for ( int i = 0 ; i < 10 ; i++ )
+        {
+            dsg1.getDefaultGraph().add(triple(N+i, N+i)) ;
+            dsg2.getDefaultGraph().add(triple(2*N+i, 2*N+i)) ;
+        }
+        dsg1.commit() ;
+        dsg1.end() ;
+        dsg2.commit() ;
+        dsg2.end() ;
+        
+        DatasetGraphTxn dsg = sConn.begin(ReadWrite.READ) ;
+        for ( int i = 0 ; i < 10 ; i++ )
+        {
+            assertTrue(dsg.getDefaultGraph().contains(triple(N+i, N+i))) ;
+            assertTrue(dsg.getDefaultGraph().contains(triple(2*N+i, 2*N+i))) ;
+        }
+        assertEquals(N+20, dsg.getDefaultGraph().size()) ;
+        dsg.end() ;
+        
+        sConn.flush() ;
+        assertEquals(N+20, sConn.getBaseDataset().getDefaultGraph().size()) ;
+        assertTrue(sConn.getBaseDataset().getDefaultGraph().contains(triple(2*N+9, 2*N+9))) ;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.hpl.jena.tdb.transaction;
+
+import java.nio.ByteBuffer ;
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.concurrent.Callable ;
+import java.util.concurrent.ExecutorService ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.Future ;
+import java.util.concurrent.TimeUnit ;
+import java.util.concurrent.atomic.AtomicInteger ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.junit.After ;
+import org.junit.Before ;
+import org.junit.Test ;
+
+import com.hp.hpl.jena.graph.NodeFactory ;
+import com.hp.hpl.jena.graph.Triple ;
+import com.hp.hpl.jena.query.ReadWrite ;
+import com.hp.hpl.jena.tdb.base.file.BufferChannel ;
+import com.hp.hpl.jena.tdb.base.file.BufferChannelMem ;
+import com.hp.hpl.jena.tdb.setup.DatasetBuilderStd ;
+
+public class TestTransGroupCommit extends BaseTest
+{
+    private TransactionManager txnMgr ;
+    private TransactionInfo info ;
+    
+    @Before public void before()
+    {
+        txnMgr = new TransactionManager(DatasetBuilderStd.build()) ;
+        info = new TransactionInfo(txnMgr) ;
+    }
+    
+    @After public void after()
+    {
+        txnMgr.closedown() ;
+    }
+    
+    private static Triple triple(int s, int o)
+    {
+        return Triple.create(NodeFactory.createURI("http://example/s"+s), 
+                             NodeFactory.createURI("http://example/p"),
+                             NodeFactory.createURI("http://example/o"+o)) ;
+    }
+    
+    private void add(Triple t)
+    {
+        DatasetGraphTxn dsg = txnMgr.begin(ReadWrite.WRITE) ;
+        try {
+            dsg.getDefaultGraph().add(t) ;
+            dsg.commit() ;
+        } finally { dsg.end() ; }
+    }
+    
+    private long count()
+    {
+        DatasetGraphTxn dsg = txnMgr.begin(ReadWrite.READ) ;
+        try { return dsg.getDefaultGraph().size() ; }
+        finally { dsg.end() ; }
+    }
+    
+    @Test public void groupCommit_01()
+    {
+        // Off: one sync per commit.
+        assertFalse(txnMgr.isGroupCommit()) ;
+        add(triple(1,1)) ;
+        add(triple(2,2)) ;
+        assertEquals(2, info.getJournalSyncCount()) ;
+        assertEquals(1, info.getJournalSyncMaxBatchSize()) ;
+        assertEquals(2, count()) ;
+    }
+    
+    @Test public void groupCommit_02()
+    {
+        // On, one thread : nothing to share a sync with.
+        txnMgr.setGroupCommitWindow(0) ;
+        assertTrue(txnMgr.isGroupCommit()) ;
+        for ( int i = 0 ; i < 5 ; i++ )
+            add(triple(i,i)) ;
+        assertEquals(5, info.getJournalSyncCount()) ;
+        assertEquals(1.0, info.getJournalSyncAverageBatchSize(), 0.0) ;
+        assertEquals(5, count()) ;
+        txnMgr.flush() ;
+        assertEquals(5, count()) ;
+    }
+    
+    @Test public void groupCommit_03()
+    {
+        // Aborts with group commit on release the writer.
+        txnMgr.setGroupCommitWindow(0) ;
+        DatasetGraphTxn dsg = txnMgr.begin(ReadWrite.WRITE) ;
+        dsg.getDefaultGraph().add(triple(1,1)) ;
+        dsg.abort() ;
+        dsg.end() ;
+        add(triple(2,2)) ;
+        assertEquals(1, count()) ;
+        assertEquals(1, info.getJournalSyncCount()) ;
+    }
+
+    @Test public void groupCommit_04() throws Exception
+    {
+        // Writers in several threads, each commit waits for others to join it.
+        txnMgr.setGroupCommitWindow(5) ;
+        final int Threads = 4 ;
+        final int Commits = 10 ;
+        ExecutorService exec = Executors.newFixedThreadPool(Threads) ;
+        List<Future<?>> results = new ArrayList<Future<?>>() ;
+        for ( int i = 0 ; i < Threads ; i++ )
+        {
+            final int base = 1000*(i+1) ;
+            results.add(exec.submit(new Runnable() {
+                @Override
+                public void run()
+                {
+                    for ( int j = 0 ; j < Commits ; j++ )
+                        add(triple(base+j, j)) ;
+                }})) ;
+        }
+        exec.shutdown() ;
+        for ( Future<?> f : results )
+            f.get() ;
+        assertEquals(Threads*Commits, count()) ;
+        assertTrue(info.getJournalSyncCount() <= Threads*Commits) ;
+        assertEquals(Threads*Commits, Math.round(info.getJournalSyncCount()*info.getJournalSyncAverageBatchSize())) ;
+        assertEquals(Threads*Commits, info.getWriteCommitTransactionCount()) ;
+    }
+    
+    @Test(timeout=10000) public void groupCommit_05() throws Exception
+    {
+        // Single writer : a commit then an abort hand back the writer permit once each.
+        txnMgr.setGroupCommitWindow(0) ;
+        add(triple(1,1)) ;
+        DatasetGraphTxn dsg = txnMgr.begin(ReadWrite.WRITE) ;
+        dsg.getDefaultGraph().add(triple(2,2)) ;
+        dsg.abort() ;
+        dsg.end() ;
+        
+        DatasetGraphTxn dsg1 = txnMgr.begin(ReadWrite.WRITE) ;
+        final AtomicInteger started = new AtomicInteger(0) ;
+        ExecutorService exec = Executors.newSingleThreadExecutor() ;
+        Future<?> f = exec.submit(new Runnable() {
+            @Override
+            public void run()
+            {
+                DatasetGraphTxn dsg2 = txnMgr.begin(ReadWrite.WRITE) ;
+                started.incrementAndGet() ;
+                dsg2.getDefaultGraph().add(triple(4,4)) ;
+                dsg2.commit() ;
+                dsg2.end() ;
+            }}) ;
+        exec.shutdown() ;
+        // The second writer waits for the first.
+        Thread.sleep(200) ;
+        assertEquals(0, started.get()) ;
+        dsg1.getDefaultGraph().add(triple(3,3)) ;
+        dsg1.commit() ;
+        dsg1.end() ;
+        f.get() ;
+        assertEquals(1, started.get()) ;
+        assertEquals(3, count()) ;
+    }
+    
+    @Test(timeout=10000) public void groupCommit_06() throws Exception
+    {
+        // A failed journal sync stops writers instead of leaving them waiting.
+        txnMgr.setGroupCommitWindow(0) ;
+        FailingSyncChannel chan = failingJournal() ;
+        chan.failures.set(1) ;
+        try {
+            add(triple(1,1)) ;
+            fail("Commit did not fail") ;
+        } catch (TDBTransactionException ex) {}
+        
+        ExecutorService exec = Executors.newSingleThreadExecutor() ;
+        Future<Boolean> f = exec.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call()
+            {
+                try { txnMgr.begin(ReadWrite.WRITE) ; return true ; }
+                catch (TDBTransactionException ex) { return false ; }
+            }}) ;
+        exec.shutdown() ;
+        assertFalse(f.get(5, TimeUnit.SECONDS)) ;
+        assertEquals(0, count()) ;
+    }
+    
+    @Test(timeout=10000) public void groupCommit_07()
+    {
+        // Concurrent writers : a commit after one with a failed journal sync
+        // fails instead of waiting for ever to be published.
+        txnMgr.setConcurrentWriters(true) ;
+        FailingSyncChannel chan = failingJournal() ;
+        DatasetGraphTxn dsg1 = txnMgr.begin(ReadWrite.WRITE) ;
+        DatasetGraphTxn dsg2 = txnMgr.begin(ReadWrite.WRITE) ;
+        dsg1.getDefaultGraph().add(triple(1,1)) ;
+        dsg2.getDefaultGraph().add(triple(2,2)) ;
+        chan.failures.set(1) ;
+        try {
+            dsg1.commit() ;
+            fail("Commit did not fail") ;
+        } catch (TDBTransactionException ex) {}
+        try {
+            dsg2.commit() ;
+            fail("Commit after a failed commit was published") ;
+        } catch (TDBTransactionException ex) {}
+        try {
+            txnMgr.begin(ReadWrite.WRITE) ;
+            fail("Writer started after a failed commit") ;
+        } catch (TDBTransactionException ex) {}
+    }
+    
+    private FailingSyncChannel failingJournal()
+    {
+        FailingSyncChannel chan = new FailingSyncChannel(BufferChannelMem.create("journal")) ;
+        txnMgr.getJournal().close() ;
+        txnMgr.setJournal(new Journal(chan)) ;
+        return chan ;
+    }
+    
+    /** A BufferChannel where sync fails a given number of times */ 
+    static class FailingSyncChannel implements BufferChannel
+    {
+        final AtomicInteger failures = new AtomicInteger(0) ;
+        private final BufferChannel chan ;
+        
+        FailingSyncChannel(BufferChannel chan) { this.chan = chan ; }
+
+        @Override
+        public void sync()
+        {
+            if ( failures.getAndDecrement() > 0 )
+                throw new RuntimeException("Sync failure") ;
+            chan.sync() ;
+        }
+        
+        @Override public BufferChannel duplicate()                  { return chan.duplicate() ; }
+        @Override public long position()                            { return chan.position() ; }
+        @Override public void position(long pos)                    { chan.position(pos) ; }
+        @Override public int read(ByteBuffer buffer)                { return chan.read(buffer) ; }
+        @Override public int read(ByteBuffer buffer, long loc)      { return chan.read(buffer, loc) ; }
+        @Override public int write(ByteBuffer buffer)               { return chan.write(buffer) ; }
+        @Override public int write(ByteBuffer buffer, long loc)     { return chan.write(buffer, loc) ; }
+        @Override public void truncate(long size)                   { chan.truncate(size) ; }
+        @Override public long size()                                { return chan.size() ; }
+        @Override public boolean isEmpty()                          { return chan.isEmpty() ; }
+        @Override public String getLabel()                          { return chan.getLabel() ; }
+        @Override public String getFilename()                       { return chan.getFilename() ; }
+        @Override public void close()                               { chan.close() ; }
+    }
+}